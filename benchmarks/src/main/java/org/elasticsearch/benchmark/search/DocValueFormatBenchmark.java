@@ -0,0 +1,116 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.benchmark.search;
+
+import org.apache.lucene.document.InetAddressPoint;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.index.mapper.DateFieldMapper;
+import org.elasticsearch.search.DocValueFormat;
+import org.joda.time.DateTimeZone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast the {@link DocValueFormat}s that are used to render sort values and bucket keys format values.
+ */
+@Fork(3)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class DocValueFormatBenchmark {
+
+    // e.g. the bucket keys of a large terms or histogram aggregation
+    private static final int NUM_VALUES = 1000;
+
+    private long[] longs;
+    private double[] doubles;
+    private BytesRef[] ips;
+    private DocValueFormat dateTime;
+    private DocValueFormat decimal;
+
+    @Setup
+    public void setUp() throws UnknownHostException {
+        Random random = new Random(42);
+        longs = new long[NUM_VALUES];
+        doubles = new double[NUM_VALUES];
+        ips = new BytesRef[NUM_VALUES];
+        long now = 1546300800000L;
+        for (int i = 0; i < NUM_VALUES; i++) {
+            longs[i] = now + random.nextInt(Integer.MAX_VALUE);
+            doubles[i] = random.nextDouble() * 1_000_000;
+            byte[] address = new byte[4];
+            random.nextBytes(address);
+            ips[i] = new BytesRef(InetAddressPoint.encode(InetAddress.getByAddress(address)));
+        }
+        dateTime = new DocValueFormat.DateTime(DateFieldMapper.DEFAULT_DATE_TIME_FORMATTER, DateTimeZone.UTC);
+        decimal = new DocValueFormat.Decimal("###,###.##");
+    }
+
+    @Benchmark
+    public void formatRawLong(Blackhole bh) {
+        for (long value : longs) {
+            bh.consume(DocValueFormat.RAW.format(value));
+        }
+    }
+
+    @Benchmark
+    public void formatRawDouble(Blackhole bh) {
+        for (double value : doubles) {
+            bh.consume(DocValueFormat.RAW.format(value));
+        }
+    }
+
+    @Benchmark
+    public void formatDateTime(Blackhole bh) {
+        for (long value : longs) {
+            bh.consume(dateTime.format(value));
+        }
+    }
+
+    @Benchmark
+    public void formatDecimal(Blackhole bh) {
+        for (double value : doubles) {
+            bh.consume(decimal.format(value));
+        }
+    }
+
+    @Benchmark
+    public void formatIp(Blackhole bh) {
+        for (BytesRef value : ips) {
+            bh.consume(DocValueFormat.IP.format(value));
+        }
+    }
+}
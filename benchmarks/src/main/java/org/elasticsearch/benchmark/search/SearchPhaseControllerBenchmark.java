@@ -0,0 +1,140 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.benchmark.search;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.action.search.SearchPhaseController;
+import org.elasticsearch.common.lucene.search.TopDocsAndMaxScore;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.SearchShardTarget;
+import org.elasticsearch.search.aggregations.BucketOrder;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.bucket.terms.LongTerms;
+import org.elasticsearch.search.query.QuerySearchResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the final reduction of shard query results on the coordinating node: merging the top docs of all shards
+ * and, if buckets are requested, reducing a terms aggregation.
+ */
+@Fork(3)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class SearchPhaseControllerBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int numShards;
+
+    @Param({"10", "1000"})
+    public int size;
+
+    // the number of terms buckets every shard returns, 0 disables aggregations
+    @Param({"0", "100", "10000"})
+    public int numBuckets;
+
+    private SearchPhaseController controller;
+    private TopDocsAndMaxScore[] topDocs;
+    private InternalAggregations[] aggregations;
+
+    @Setup
+    public void setUp() {
+        controller = new SearchPhaseController(
+            isFinalReduce -> new InternalAggregation.ReduceContext(BigArrays.NON_RECYCLING_INSTANCE, null, isFinalReduce));
+        Random random = new Random(42);
+        topDocs = new TopDocsAndMaxScore[numShards];
+        aggregations = new InternalAggregations[numShards];
+        for (int shardIndex = 0; shardIndex < numShards; shardIndex++) {
+            ScoreDoc[] scoreDocs = new ScoreDoc[size];
+            float score = 100f;
+            for (int i = 0; i < size; i++) {
+                score -= random.nextFloat() * 0.1f;
+                scoreDocs[i] = new ScoreDoc(random.nextInt(1_000_000), score);
+            }
+            TopDocs shardTopDocs = new TopDocs(new TotalHits(size * 10, TotalHits.Relation.EQUAL_TO), scoreDocs);
+            topDocs[shardIndex] = new TopDocsAndMaxScore(shardTopDocs, size == 0 ? Float.NaN : scoreDocs[0].score);
+            if (numBuckets > 0) {
+                aggregations[shardIndex] = new InternalAggregations(Collections.singletonList(terms(random, shardIndex)));
+            }
+        }
+    }
+
+    /**
+     * The results of a shard can only be consumed once, so every invocation wraps the top docs and aggregations of the
+     * trial in new results. The reduction reads them without modifying them, and wrapping them is negligible next to it.
+     */
+    private List<QuerySearchResult> newResults() {
+        List<QuerySearchResult> results = new ArrayList<>(numShards);
+        for (int shardIndex = 0; shardIndex < numShards; shardIndex++) {
+            QuerySearchResult result = new QuerySearchResult(shardIndex,
+                new SearchShardTarget("node", new Index("index", "_na_"), shardIndex, null));
+            result.topDocs(topDocs[shardIndex], new DocValueFormat[0]);
+            if (aggregations[shardIndex] != null) {
+                result.aggregations(aggregations[shardIndex]);
+            }
+            result.setShardIndex(shardIndex);
+            result.from(0);
+            result.size(size);
+            results.add(result);
+        }
+        return results;
+    }
+
+    private LongTerms terms(Random random, int shardIndex) {
+        List<LongTerms.Bucket> buckets = new ArrayList<>(numBuckets);
+        long docCount = 1_000_000;
+        for (int i = 0; i < numBuckets; i++) {
+            docCount -= random.nextInt(10);
+            // shards mostly agree on the top terms but each returns some terms the others don't have
+            long term = random.nextInt(10) == 0 ? (shardIndex + 1L) * numBuckets + i : i;
+            buckets.add(new LongTerms.Bucket(term, docCount, InternalAggregations.EMPTY, false, 0, DocValueFormat.RAW));
+        }
+        return new LongTerms("terms", BucketOrder.count(false), 10, 1, Collections.emptyList(), Collections.emptyMap(),
+            DocValueFormat.RAW, numBuckets, false, 0, buckets, 0);
+    }
+
+    @Benchmark
+    public SearchPhaseController.ReducedQueryPhase reducedQueryPhase() {
+        return controller.reducedQueryPhase(newResults(), false, true);
+    }
+}
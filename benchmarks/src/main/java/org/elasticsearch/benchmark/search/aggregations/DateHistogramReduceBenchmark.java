@@ -0,0 +1,94 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.benchmark.search.aggregations;
+
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramShardResults;
+import org.elasticsearch.search.aggregations.bucket.histogram.InternalDateHistogram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the reduction of the date histogram aggregation results of many shards on the coordinating node.
+ */
+@Fork(3)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class DateHistogramReduceBenchmark {
+
+    private static final long INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    @Param({"10", "100", "1000"})
+    public int numShards;
+
+    // e.g. a day at a minute interval or a week at an hourly interval
+    @Param({"168", "1440", "10080"})
+    public int numBuckets;
+
+    @Param({"true", "false"})
+    public boolean isFinalReduce;
+
+    private List<InternalAggregation> shardResults;
+    private InternalAggregation.ReduceContext reduceContext;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        long start = 1546300800000L;
+        shardResults = new ArrayList<>(numShards);
+        for (int shard = 0; shard < numShards; shard++) {
+            List<InternalDateHistogram.Bucket> buckets = new ArrayList<>(numBuckets);
+            for (int i = 0; i < numBuckets; i++) {
+                // some shards don't have documents in every bucket
+                if (random.nextInt(20) != 0) {
+                    buckets.add(new InternalDateHistogram.Bucket(start + i * INTERVAL, 1 + random.nextInt(1000), false,
+                        DocValueFormat.RAW, InternalAggregations.EMPTY));
+                }
+            }
+            shardResults.add(DateHistogramShardResults.create("histo", buckets, DocValueFormat.RAW));
+        }
+        reduceContext = new InternalAggregation.ReduceContext(BigArrays.NON_RECYCLING_INSTANCE, null, isFinalReduce);
+    }
+
+    @Benchmark
+    public InternalAggregation reduce() {
+        return shardResults.get(0).reduce(shardResults, reduceContext);
+    }
+}
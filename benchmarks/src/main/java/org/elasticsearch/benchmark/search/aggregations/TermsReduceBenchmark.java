@@ -0,0 +1,99 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.benchmark.search.aggregations;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.aggregations.BucketOrder;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.bucket.terms.StringTerms;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the reduction of the terms aggregation results of many shards on the coordinating node.
+ */
+@Fork(3)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class TermsReduceBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int numShards;
+
+    // the number of buckets every shard returns, which is the shard_size of the request
+    @Param({"100", "1000", "10000"})
+    public int numBuckets;
+
+    // the fraction of the buckets of a shard that other shards don't return
+    @Param({"0.1", "0.5"})
+    public double uniqueRatio;
+
+    @Param({"true", "false"})
+    public boolean isFinalReduce;
+
+    private List<InternalAggregation> shardResults;
+    private InternalAggregation.ReduceContext reduceContext;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        shardResults = new ArrayList<>(numShards);
+        for (int shard = 0; shard < numShards; shard++) {
+            List<StringTerms.Bucket> buckets = new ArrayList<>(numBuckets);
+            long docCount = 10_000_000;
+            for (int i = 0; i < numBuckets; i++) {
+                docCount -= random.nextInt(100);
+                String term = random.nextDouble() < uniqueRatio ? "shard-" + shard + "-term-" + i : "term-" + i;
+                buckets.add(new StringTerms.Bucket(new BytesRef(term), docCount, InternalAggregations.EMPTY, false, 0,
+                    DocValueFormat.RAW));
+            }
+            // the reduction doesn't modify the shard results in a way that changes the outcome of later reductions
+            shardResults.add(new StringTerms("terms", BucketOrder.count(false), 10, 1, Collections.emptyList(),
+                Collections.emptyMap(), DocValueFormat.RAW, numBuckets, false, 0, buckets, 0));
+        }
+        reduceContext = new InternalAggregation.ReduceContext(BigArrays.NON_RECYCLING_INSTANCE, null, isFinalReduce);
+    }
+
+    @Benchmark
+    public InternalAggregation reduce() {
+        return shardResults.get(0).reduce(shardResults, reduceContext);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.benchmark.search.fetch;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.elasticsearch.core.internal.io.IOUtils;
+import org.elasticsearch.index.fieldvisitor.FieldsVisitor;
+import org.elasticsearch.index.mapper.IdFieldMapper;
+import org.elasticsearch.index.mapper.SourceFieldMapper;
+import org.elasticsearch.index.mapper.Uid;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how the fetch phase loads the <code>_id</code> and <code>_source</code> stored fields of the hits of a shard. The doc ids
+ * are visited in the order of the hits, like the fetch phase does, rather than in doc id order.
+ */
+@Fork(3)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class StoredFieldsLoadingBenchmark {
+
+    private static final int NUM_DOCS = 200_000;
+
+    @Param({"10", "100", "1000"})
+    public int numHits;
+
+    @Param({"256", "4096"})
+    public int sourceSize;
+
+    private Path path;
+    private Directory directory;
+    private DirectoryReader reader;
+    private int[] docIds;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        path = Files.createTempDirectory("fetch");
+        directory = FSDirectory.open(path);
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig())) {
+            for (int i = 0; i < NUM_DOCS; i++) {
+                Document doc = new Document();
+                doc.add(new StoredField(IdFieldMapper.NAME, Uid.encodeId(Integer.toString(i))));
+                doc.add(new StoredField(SourceFieldMapper.NAME, source(random)));
+                writer.addDocument(doc);
+            }
+            writer.commit();
+        }
+        reader = DirectoryReader.open(directory);
+        docIds = new int[numHits];
+        for (int i = 0; i < numHits; i++) {
+            docIds[i] = random.nextInt(NUM_DOCS);
+        }
+    }
+
+    private byte[] source(Random random) {
+        StringBuilder source = new StringBuilder("{");
+        int field = 0;
+        while (source.length() < sourceSize) {
+            source.append(field == 0 ? "" : ",").append("\"field").append(field++).append("\":\"");
+            for (int i = random.nextInt(20); i >= 0; i--) {
+                source.append((char) ('a' + random.nextInt(26)));
+            }
+            source.append('"');
+        }
+        return source.append('}').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        IOUtils.close(reader, directory);
+        IOUtils.rm(path);
+    }
+
+    @Benchmark
+    public void loadStoredFields(Blackhole bh) throws IOException {
+        List<LeafReaderContext> leaves = reader.leaves();
+        FieldsVisitor fieldsVisitor = new FieldsVisitor(true);
+        for (int docId : docIds) {
+            LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+            fieldsVisitor.reset();
+            leaf.reader().document(docId - leaf.docBase, fieldsVisitor);
+            bh.consume(fieldsVisitor.source());
+        }
+    }
+}
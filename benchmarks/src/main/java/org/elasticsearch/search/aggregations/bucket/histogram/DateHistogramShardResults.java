@@ -0,0 +1,42 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.search.aggregations.bucket.histogram;
+
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.aggregations.BucketOrder;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Creates the date histogram results of shards for benchmarks, {@link InternalDateHistogram} can only be created by
+ * its aggregator or from this package.
+ */
+public final class DateHistogramShardResults {
+
+    private DateHistogramShardResults() {}
+
+    /**
+     * Creates the result of a shard with the provided buckets, sorted by key and without empty buckets.
+     */
+    public static InternalDateHistogram create(String name, List<InternalDateHistogram.Bucket> buckets, DocValueFormat format) {
+        return new InternalDateHistogram(name, buckets, BucketOrder.key(true), 1, 0, null, format, false,
+            Collections.emptyList(), Collections.emptyMap());
+    }
+}
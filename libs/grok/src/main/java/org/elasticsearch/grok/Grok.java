@@ -37,10 +37,12 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 public final class Grok {
 
@@ -76,21 +78,24 @@ public final class Grok {
     private final Map<String, String> patternBank;
     private final boolean namedCaptures;
     private final Regex compiledExpression;
+    // matches ASCII texts in linear time, null if the expression uses syntax that needs backtracking
+    private final LinearRegex linearExpression;
     private final ThreadWatchdog threadWatchdog;
 
     public Grok(Map<String, String> patternBank, String grokPattern) {
-        this(patternBank, grokPattern, true, ThreadWatchdog.noop());
+        this(patternBank, grokPattern, true, ThreadWatchdog.noop(), true);
     }
 
     public Grok(Map<String, String> patternBank, String grokPattern, ThreadWatchdog threadWatchdog) {
-        this(patternBank, grokPattern, true, threadWatchdog);
+        this(patternBank, grokPattern, true, threadWatchdog, true);
     }
 
     Grok(Map<String, String> patternBank, String grokPattern, boolean namedCaptures) {
-        this(patternBank, grokPattern, namedCaptures, ThreadWatchdog.noop());
+        this(patternBank, grokPattern, namedCaptures, ThreadWatchdog.noop(), true);
     }
 
-    private Grok(Map<String, String> patternBank, String grokPattern, boolean namedCaptures, ThreadWatchdog threadWatchdog) {
+    Grok(Map<String, String> patternBank, String grokPattern, boolean namedCaptures, ThreadWatchdog threadWatchdog,
+         boolean linearMatching) {
         this.patternBank = patternBank;
         this.namedCaptures = namedCaptures;
         this.threadWatchdog = threadWatchdog;
@@ -104,6 +109,14 @@ public final class Grok {
         String expression = toRegex(grokPattern);
         byte[] expressionBytes = expression.getBytes(StandardCharsets.UTF_8);
         this.compiledExpression = new Regex(expressionBytes, 0, expressionBytes.length, Option.DEFAULT, UTF8Encoding.INSTANCE);
+        this.linearExpression = linearMatching ? LinearRegex.compile(expression) : null;
+    }
+
+    /**
+     * Returns {@code true} if ASCII texts are matched in linear time rather than with a backtracking engine.
+     */
+    public boolean isLinear() {
+        return linearExpression != null;
     }
 
     /**
@@ -220,6 +233,9 @@ public final class Grok {
      * @return true if grok expression matches text, false otherwise.
      */
     public boolean match(String text) {
+        if (linearExpression != null && LinearRegex.isAscii(text)) {
+            return linearExpression.search(text) != null;
+        }
         Matcher matcher = compiledExpression.matcher(text.getBytes(StandardCharsets.UTF_8));
         int result;
         try {
@@ -239,6 +255,9 @@ public final class Grok {
      * @return a map containing field names and their respective coerced values that matched.
      */
     public Map<String, Object> captures(String text) {
+        if (linearExpression != null && LinearRegex.isAscii(text)) {
+            return linearCaptures(text);
+        }
         byte[] textAsBytes = text.getBytes(StandardCharsets.UTF_8);
         Map<String, Object> fields = new HashMap<>();
         Matcher matcher = compiledExpression.matcher(textAsBytes);
@@ -274,6 +293,27 @@ public final class Grok {
         return fields;
     }
 
+    private Map<String, Object> linearCaptures(String text) {
+        int[] slots = linearExpression.search(text);
+        if (slots == null) {
+            return null;
+        }
+        Map<String, Object> fields = new HashMap<>();
+        List<String> groupNames = linearExpression.groupNames();
+        // like with Joni, a name that is used by several groups gets the value of the first group that participated in the match
+        Set<String> capturedNames = new HashSet<>();
+        for (int group = 0; group < groupNames.size(); group++) {
+            String groupName = groupNames.get(group);
+            int begin = slots[group * 2];
+            int end = slots[group * 2 + 1];
+            if (begin >= 0 && end >= 0 && capturedNames.add(groupName)) {
+                GrokMatchGroup match = new GrokMatchGroup(groupName, text.substring(begin, end));
+                fields.put(match.getName(), match.getValue());
+            }
+        }
+        return fields;
+    }
+
     public static Map<String, String> getBuiltinPatterns() {
         return builtinPatterns;
     }
@@ -0,0 +1,1001 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.grok;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A regular expression that is matched in time linear to the length of the text, by simulating all the paths of its automaton
+ * at once rather than backtracking (a "Pike VM"). Threads are kept in priority order, so the match and its captures are the
+ * same as the ones of a backtracking engine like Joni.
+ *
+ * Only the syntax that can't require backtracking is supported: literals, character classes, groups, alternations, greedy and
+ * lazy quantifiers, anchors, word boundaries, lookarounds of a fixed sequence of characters and atomic groups that can only match
+ * in one way. {@link #compile(String)} returns {@code null} for expressions with other atomic groups, possessive quantifiers,
+ * back references, options or other lookarounds.
+ * Texts are matched as ASCII, callers must use another engine for texts with other characters.
+ */
+final class LinearRegex {
+
+    /**
+     * The maximum number of instructions of a compiled expression, counted repetitions are unrolled.
+     */
+    static final int MAX_PROGRAM_SIZE = 20_000;
+
+    // instructions
+    private static final int CHAR_SET = 0;
+    private static final int SPLIT = 1;
+    private static final int JUMP = 2;
+    private static final int SAVE = 3;
+    private static final int ASSERT = 4;
+    private static final int MATCH = 5;
+
+    // assertions
+    private static final int BEGIN_LINE = 0;
+    private static final int END_LINE = 1;
+    private static final int BEGIN_TEXT = 2;
+    private static final int END_TEXT = 3;
+    private static final int END_TEXT_OR_NEWLINE = 4;
+    private static final int WORD_BOUNDARY = 5;
+    private static final int NOT_WORD_BOUNDARY = 6;
+    private static final int LOOKAHEAD = 7;
+    private static final int NEGATIVE_LOOKAHEAD = 8;
+    private static final int LOOKBEHIND = 9;
+    private static final int NEGATIVE_LOOKBEHIND = 10;
+
+    private final int[] ops;
+    private final int[] args1;
+    private final int[] args2;
+    private final long[] setsLow;
+    private final long[] setsHigh;
+    // the sets of the characters that lookarounds look for
+    private final int[][] sequences;
+    private final List<String> groupNames;
+
+    private LinearRegex(int[] ops, int[] args1, int[] args2, long[] setsLow, long[] setsHigh, int[][] sequences,
+                        List<String> groupNames) {
+        this.ops = ops;
+        this.args1 = args1;
+        this.args2 = args2;
+        this.setsLow = setsLow;
+        this.setsHigh = setsHigh;
+        this.sequences = sequences;
+        this.groupNames = groupNames;
+    }
+
+    /**
+     * Compiles an expression, or returns {@code null} if it uses syntax that can't be matched in linear time.
+     */
+    static LinearRegex compile(String expression) {
+        try {
+            Parser parser = new Parser(expression);
+            Node node = parser.parse();
+            Compiler compiler = new Compiler();
+            compiler.emit(node);
+            compiler.add(MATCH, 0, 0);
+            return compiler.build(parser.groupNames);
+        } catch (UnsupportedSyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The name of every named group, by group number.
+     */
+    List<String> groupNames() {
+        return groupNames;
+    }
+
+    static boolean isAscii(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 128) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Searches the first match of the expression in {@code text}, which must only contain ASCII characters.
+     *
+     * @return the start and end of every group, {@code -1} for groups that didn't participate, or {@code null} if there is no match
+     */
+    int[] search(CharSequence text) {
+        final int length = text.length();
+        final int size = ops.length;
+        final int[] start = new int[groupNames.size() * 2];
+        Arrays.fill(start, -1);
+
+        ThreadList current = new ThreadList(size);
+        ThreadList next = new ThreadList(size);
+        // marks[pc] is set to position + 1 once the instruction was added to the list of a position
+        final int[] marks = new int[size];
+        final int[] stackPcs = new int[2 * size + 1];
+        final int[][] stackSlots = new int[2 * size + 1][];
+        int[] matched = null;
+
+        for (int position = 0; position <= length; position++) {
+            if (matched == null) {
+                // a new attempt starts at every position until there is a match, with the lowest priority
+                addThread(current, 0, start, position, text, marks, stackPcs, stackSlots);
+            }
+            if (current.size == 0 && matched != null) {
+                break;
+            }
+            next.size = 0;
+            for (int i = 0; i < current.size; i++) {
+                int pc = current.pcs[i];
+                int[] slots = current.slots[i];
+                if (ops[pc] == MATCH) {
+                    // threads of lower priority can't produce a better match
+                    matched = slots;
+                    break;
+                }
+                if (position < length && inSet(args1[pc], text.charAt(position))) {
+                    addThread(next, pc + 1, slots, position + 1, text, marks, stackPcs, stackSlots);
+                }
+            }
+            ThreadList tmp = current;
+            current = next;
+            next = tmp;
+        }
+        return matched;
+    }
+
+    /**
+     * Follows the instructions that don't consume a character from {@code pc} and adds the threads that reach a character or a
+     * match to {@code list}, in priority order.
+     */
+    private void addThread(ThreadList list, int pc, int[] slots, int position, CharSequence text,
+                           int[] marks, int[] stackPcs, int[][] stackSlots) {
+        int stackSize = 0;
+        stackPcs[stackSize] = pc;
+        stackSlots[stackSize++] = slots;
+        while (stackSize > 0) {
+            pc = stackPcs[--stackSize];
+            slots = stackSlots[stackSize];
+            while (marks[pc] != position + 1) {
+                marks[pc] = position + 1;
+                switch (ops[pc]) {
+                    case JUMP:
+                        pc = args1[pc];
+                        break;
+                    case SPLIT:
+                        stackPcs[stackSize] = args2[pc];
+                        stackSlots[stackSize++] = slots;
+                        pc = args1[pc];
+                        break;
+                    case SAVE:
+                        slots = slots.clone();
+                        slots[args1[pc]] = position;
+                        pc++;
+                        break;
+                    case ASSERT:
+                        if (check(args1[pc], args2[pc], position, text) == false) {
+                            // the thread dies, the next instruction must not be marked
+                            pc = -1;
+                        } else {
+                            pc++;
+                        }
+                        break;
+                    default:
+                        list.pcs[list.size] = pc;
+                        list.slots[list.size++] = slots;
+                        pc = -1;
+                        break;
+                }
+                if (pc == -1) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private boolean check(int assertion, int sequence, int position, CharSequence text) {
+        int length = text.length();
+        switch (assertion) {
+            case BEGIN_LINE:
+                return position == 0 || text.charAt(position - 1) == '\n';
+            case END_LINE:
+                return position == length || text.charAt(position) == '\n';
+            case BEGIN_TEXT:
+                return position == 0;
+            case END_TEXT:
+                return position == length;
+            case END_TEXT_OR_NEWLINE:
+                return position == length || (position == length - 1 && text.charAt(position) == '\n');
+            case WORD_BOUNDARY:
+            case NOT_WORD_BOUNDARY:
+                boolean before = position > 0 && isWordChar(text.charAt(position - 1));
+                boolean after = position < length && isWordChar(text.charAt(position));
+                return (before != after) == (assertion == WORD_BOUNDARY);
+            case LOOKAHEAD:
+                return matchesSequence(sequences[sequence], position, text);
+            case NEGATIVE_LOOKAHEAD:
+                return matchesSequence(sequences[sequence], position, text) == false;
+            case LOOKBEHIND:
+                return matchesSequence(sequences[sequence], position - sequences[sequence].length, text);
+            case NEGATIVE_LOOKBEHIND:
+                return matchesSequence(sequences[sequence], position - sequences[sequence].length, text) == false;
+            default:
+                throw new IllegalStateException("unknown assertion [" + assertion + "]");
+        }
+    }
+
+    private boolean matchesSequence(int[] sets, int from, CharSequence text) {
+        if (from < 0 || from + sets.length > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < sets.length; i++) {
+            if (inSet(sets[i], text.charAt(from + i)) == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean inSet(int set, char c) {
+        if (c < 64) {
+            return (setsLow[set] & (1L << c)) != 0;
+        } else if (c < 128) {
+            return (setsHigh[set] & (1L << (c - 64))) != 0;
+        }
+        return false;
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    private static final class ThreadList {
+        final int[] pcs;
+        final int[][] slots;
+        int size;
+
+        ThreadList(int capacity) {
+            pcs = new int[capacity];
+            slots = new int[capacity][];
+        }
+    }
+
+    private static final class UnsupportedSyntaxException extends RuntimeException {
+        UnsupportedSyntaxException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A set of ASCII characters.
+     */
+    private static final class CharSet {
+        long low;
+        long high;
+
+        CharSet add(int c) {
+            if (c < 64) {
+                low |= 1L << c;
+            } else if (c < 128) {
+                high |= 1L << (c - 64);
+            }
+            // other characters can't be part of the text
+            return this;
+        }
+
+        CharSet addRange(int from, int to) {
+            for (int c = from; c <= Math.min(to, 127); c++) {
+                add(c);
+            }
+            return this;
+        }
+
+        CharSet addAll(CharSet other) {
+            low |= other.low;
+            high |= other.high;
+            return this;
+        }
+
+        int size() {
+            return Long.bitCount(low) + Long.bitCount(high);
+        }
+
+        CharSet negate() {
+            low = ~low;
+            high = ~high;
+            return this;
+        }
+
+        static CharSet of(int c) {
+            return new CharSet().add(c);
+        }
+    }
+
+    private abstract static class Node {
+    }
+
+    private static final class CharSetNode extends Node {
+        final CharSet set;
+
+        CharSetNode(CharSet set) {
+            this.set = set;
+        }
+    }
+
+    private static final class ConcatNode extends Node {
+        final List<Node> nodes;
+
+        ConcatNode(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+    }
+
+    private static final class AlternationNode extends Node {
+        final List<Node> nodes;
+
+        AlternationNode(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+    }
+
+    private static final class RepeatNode extends Node {
+        final Node node;
+        final int min;
+        final int max; // -1 for unbounded
+        final boolean greedy;
+
+        RepeatNode(Node node, int min, int max, boolean greedy) {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+            this.greedy = greedy;
+        }
+    }
+
+    private static final class GroupNode extends Node {
+        final Node node;
+        final int group;
+
+        GroupNode(Node node, int group) {
+            this.node = node;
+            this.group = group;
+        }
+    }
+
+    private static final class AssertionNode extends Node {
+        final int assertion;
+        final List<CharSet> sequence;
+
+        AssertionNode(int assertion, List<CharSet> sequence) {
+            this.assertion = assertion;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Parses the Ruby syntax that Joni uses by default.
+     */
+    private static final class Parser {
+        private final String expression;
+        private final List<String> groupNames = new ArrayList<>();
+        private int position = 0;
+
+        Parser(String expression) {
+            this.expression = expression;
+        }
+
+        Node parse() {
+            Node node = parseAlternation();
+            if (position != expression.length()) {
+                throw new UnsupportedSyntaxException("unexpected [" + expression.charAt(position) + "]");
+            }
+            return node;
+        }
+
+        private boolean more() {
+            return position < expression.length();
+        }
+
+        private char peek() {
+            return expression.charAt(position);
+        }
+
+        private boolean lookingAt(String prefix) {
+            return expression.startsWith(prefix, position);
+        }
+
+        private Node parseAlternation() {
+            List<Node> alternatives = new ArrayList<>();
+            alternatives.add(parseConcatenation());
+            while (more() && peek() == '|') {
+                position++;
+                alternatives.add(parseConcatenation());
+            }
+            return alternatives.size() == 1 ? alternatives.get(0) : new AlternationNode(alternatives);
+        }
+
+        private Node parseConcatenation() {
+            List<Node> nodes = new ArrayList<>();
+            while (more() && peek() != '|' && peek() != ')') {
+                nodes.add(parseQuantified(parseAtom()));
+            }
+            return nodes.size() == 1 ? nodes.get(0) : new ConcatNode(nodes);
+        }
+
+        private Node parseQuantified(Node node) {
+            while (more()) {
+                int min;
+                int max;
+                char c = peek();
+                if (c == '*') {
+                    min = 0;
+                    max = -1;
+                    position++;
+                } else if (c == '+') {
+                    min = 1;
+                    max = -1;
+                    position++;
+                } else if (c == '?') {
+                    min = 0;
+                    max = 1;
+                    position++;
+                } else if (c == '{') {
+                    int[] interval = parseInterval();
+                    if (interval == null) {
+                        // not an interval, the brace is a literal
+                        return node;
+                    }
+                    min = interval[0];
+                    max = interval[1];
+                } else {
+                    return node;
+                }
+                if (node instanceof AssertionNode) {
+                    throw new UnsupportedSyntaxException("quantified assertion");
+                }
+                if (max == -1 && canBeEmpty(node)) {
+                    // backtracking engines leave loops after an empty iteration while the automaton would drop the thread
+                    throw new UnsupportedSyntaxException("unbounded repetition of an expression that can be empty");
+                }
+                boolean greedy = true;
+                if (more() && peek() == '?') {
+                    greedy = false;
+                    position++;
+                } else if (more() && peek() == '+') {
+                    throw new UnsupportedSyntaxException("possessive quantifier");
+                }
+                node = new RepeatNode(node, min, max, greedy);
+            }
+            return node;
+        }
+
+        /**
+         * Parses {@code {n}}, {@code {n,}}, {@code {,m}} or {@code {n,m}}, or returns {@code null} without consuming anything if the
+         * brace doesn't start an interval.
+         */
+        private int[] parseInterval() {
+            int end = expression.indexOf('}', position);
+            if (end == -1) {
+                return null;
+            }
+            String interval = expression.substring(position + 1, end);
+            if (interval.isEmpty() || interval.equals(",")) {
+                return null;
+            }
+            int comma = interval.indexOf(',');
+            try {
+                int min;
+                int max;
+                if (comma == -1) {
+                    min = max = parseBound(interval, 0);
+                } else {
+                    min = parseBound(interval.substring(0, comma), 0);
+                    max = parseBound(interval.substring(comma + 1), -1);
+                }
+                if (max != -1 && max < min) {
+                    return null;
+                }
+                position = end + 1;
+                return new int[] { min, max };
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private static int parseBound(String bound, int missing) {
+            if (bound.isEmpty()) {
+                return missing;
+            }
+            for (int i = 0; i < bound.length(); i++) {
+                if (Character.isDigit(bound.charAt(i)) == false) {
+                    throw new NumberFormatException(bound);
+                }
+            }
+            int value = Integer.parseInt(bound);
+            if (value > 1000) {
+                throw new UnsupportedSyntaxException("repetition too large");
+            }
+            return value;
+        }
+
+        private Node parseAtom() {
+            char c = peek();
+            switch (c) {
+                case '(':
+                    return parseGroup();
+                case '[':
+                    position++;
+                    return new CharSetNode(parseClass());
+                case '.':
+                    position++;
+                    return new CharSetNode(CharSet.of('\n').negate());
+                case '^':
+                    position++;
+                    return new AssertionNode(BEGIN_LINE, null);
+                case '$':
+                    position++;
+                    return new AssertionNode(END_LINE, null);
+                case '\\':
+                    position++;
+                    return parseEscape();
+                case '*':
+                case '+':
+                case '?':
+                    throw new UnsupportedSyntaxException("nothing to repeat");
+                default:
+                    position++;
+                    return new CharSetNode(CharSet.of(c));
+            }
+        }
+
+        private Node parseGroup() {
+            position++;
+            Node node;
+            if (lookingAt("?:")) {
+                position += 2;
+                node = parseAlternation();
+            } else if (lookingAt("?>")) {
+                position += 2;
+                node = parseAlternation();
+                if (isDeterministic(node) == false) {
+                    // backtracking into the group could find another match, which atomic groups prevent
+                    throw new UnsupportedSyntaxException("atomic group");
+                }
+            } else if (lookingAt("?=") || lookingAt("?!") || lookingAt("?<=") || lookingAt("?<!")) {
+                boolean behind = lookingAt("?<");
+                boolean negated = expression.charAt(position + (behind ? 2 : 1)) == '!';
+                position += behind ? 3 : 2;
+                int assertion = behind ? (negated ? NEGATIVE_LOOKBEHIND : LOOKBEHIND) : (negated ? NEGATIVE_LOOKAHEAD : LOOKAHEAD);
+                node = new AssertionNode(assertion, toSequence(parseAlternation()));
+            } else if (lookingAt("?<")) {
+                int end = expression.indexOf('>', position);
+                if (end == -1) {
+                    throw new UnsupportedSyntaxException("unterminated group name");
+                }
+                String name = expression.substring(position + 2, end);
+                position = end + 1;
+                int group = groupNames.size();
+                groupNames.add(name);
+                node = new GroupNode(parseAlternation(), group);
+            } else if (lookingAt("?")) {
+                throw new UnsupportedSyntaxException("group options");
+            } else {
+                // plain groups don't capture when an expression has named groups, and only named groups are returned
+                node = parseAlternation();
+            }
+            if (more() == false || peek() != ')') {
+                throw new UnsupportedSyntaxException("unterminated group");
+            }
+            position++;
+            return node;
+        }
+
+        private static boolean canBeEmpty(Node node) {
+            if (node instanceof CharSetNode) {
+                return false;
+            } else if (node instanceof AssertionNode) {
+                return true;
+            } else if (node instanceof ConcatNode) {
+                return ((ConcatNode) node).nodes.stream().allMatch(Parser::canBeEmpty);
+            } else if (node instanceof AlternationNode) {
+                return ((AlternationNode) node).nodes.stream().anyMatch(Parser::canBeEmpty);
+            } else if (node instanceof GroupNode) {
+                return canBeEmpty(((GroupNode) node).node);
+            } else {
+                RepeatNode repeat = (RepeatNode) node;
+                return repeat.min == 0 || canBeEmpty(repeat.node);
+            }
+        }
+
+        /**
+         * Returns {@code true} if the node can match at most one string at a given position.
+         */
+        private static boolean isDeterministic(Node node) {
+            if (node instanceof CharSetNode || node instanceof AssertionNode) {
+                return true;
+            } else if (node instanceof ConcatNode) {
+                return ((ConcatNode) node).nodes.stream().allMatch(Parser::isDeterministic);
+            } else if (node instanceof GroupNode) {
+                return isDeterministic(((GroupNode) node).node);
+            } else if (node instanceof RepeatNode) {
+                RepeatNode repeat = (RepeatNode) node;
+                return repeat.min == repeat.max && isDeterministic(repeat.node);
+            }
+            return false;
+        }
+
+        /**
+         * Returns the sets of characters of a lookaround, which must be a fixed sequence of characters.
+         */
+        private static List<CharSet> toSequence(Node node) {
+            List<CharSet> sequence = new ArrayList<>();
+            List<Node> nodes = node instanceof ConcatNode ? ((ConcatNode) node).nodes : Collections.singletonList(node);
+            for (Node child : nodes) {
+                if (child instanceof CharSetNode == false) {
+                    throw new UnsupportedSyntaxException("lookaround that isn't a sequence of characters");
+                }
+                sequence.add(((CharSetNode) child).set);
+            }
+            return sequence;
+        }
+
+        private Node parseEscape() {
+            if (more() == false) {
+                throw new UnsupportedSyntaxException("trailing backslash");
+            }
+            char c = peek();
+            switch (c) {
+                case 'b':
+                    position++;
+                    return new AssertionNode(WORD_BOUNDARY, null);
+                case 'B':
+                    position++;
+                    return new AssertionNode(NOT_WORD_BOUNDARY, null);
+                case 'A':
+                    position++;
+                    return new AssertionNode(BEGIN_TEXT, null);
+                case 'z':
+                    position++;
+                    return new AssertionNode(END_TEXT, null);
+                case 'Z':
+                    position++;
+                    return new AssertionNode(END_TEXT_OR_NEWLINE, null);
+                default:
+                    return new CharSetNode(parseCharEscape());
+            }
+        }
+
+        /**
+         * Parses an escape that stands for one or a set of characters, after the backslash.
+         */
+        private CharSet parseCharEscape() {
+            char c = expression.charAt(position++);
+            switch (c) {
+                case 'd':
+                    return digits();
+                case 'D':
+                    return digits().negate();
+                case 'w':
+                    return word();
+                case 'W':
+                    return word().negate();
+                case 's':
+                    return spaces();
+                case 'S':
+                    return spaces().negate();
+                case 't':
+                    return CharSet.of('\t');
+                case 'n':
+                    return CharSet.of('\n');
+                case 'r':
+                    return CharSet.of('\r');
+                case 'f':
+                    return CharSet.of('\f');
+                case 'v':
+                    return CharSet.of(0x0B);
+                case 'a':
+                    return CharSet.of(0x07);
+                case 'e':
+                    return CharSet.of(0x1B);
+                case 'x':
+                    if (position + 2 <= expression.length()) {
+                        String hex = expression.substring(position, position + 2);
+                        if (hex.chars().allMatch(h -> Character.digit(h, 16) != -1)) {
+                            position += 2;
+                            return CharSet.of(Integer.parseInt(hex, 16));
+                        }
+                    }
+                    throw new UnsupportedSyntaxException("hexadecimal escape");
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        throw new UnsupportedSyntaxException("escape [\\" + c + "]");
+                    }
+                    return CharSet.of(c);
+            }
+        }
+
+        private CharSet parseClass() {
+            boolean negated = false;
+            if (more() && peek() == '^') {
+                negated = true;
+                position++;
+            }
+            CharSet set = new CharSet();
+            boolean first = true;
+            while (true) {
+                if (more() == false) {
+                    throw new UnsupportedSyntaxException("unterminated character class");
+                }
+                char c = peek();
+                if (c == ']' && first == false) {
+                    position++;
+                    break;
+                }
+                first = false;
+                if (lookingAt("[:")) {
+                    set.addAll(parsePosixClass());
+                    continue;
+                }
+                if (c == '[' || lookingAt("&&")) {
+                    throw new UnsupportedSyntaxException("nested character class");
+                }
+                int from;
+                if (c == '\\') {
+                    position++;
+                    if (more() && peek() == 'b') {
+                        position++;
+                        from = '\b';
+                    } else {
+                        CharSet escaped = parseCharEscape();
+                        if (escaped.size() != 1) {
+                            set.addAll(escaped);
+                            continue;
+                        }
+                        from = singleChar(escaped);
+                    }
+                } else {
+                    position++;
+                    from = c;
+                }
+                if (lookingAt("-") && position + 1 < expression.length() && expression.charAt(position + 1) != ']') {
+                    position++;
+                    int to = expression.charAt(position++);
+                    if (to == '[') {
+                        throw new UnsupportedSyntaxException("nested character class");
+                    } else if (to == '\\') {
+                        to = singleChar(parseCharEscape());
+                    }
+                    if (to < from) {
+                        throw new UnsupportedSyntaxException("invalid range");
+                    }
+                    set.addRange(from, to);
+                } else {
+                    set.add(from);
+                }
+            }
+            return negated ? set.negate() : set;
+        }
+
+        private static int singleChar(CharSet set) {
+            if (set.size() != 1) {
+                throw new UnsupportedSyntaxException("range of character sets");
+            }
+            return set.low != 0 ? Long.numberOfTrailingZeros(set.low) : 64 + Long.numberOfTrailingZeros(set.high);
+        }
+
+        private CharSet parsePosixClass() {
+            int end = expression.indexOf(":]", position + 2);
+            if (end == -1) {
+                throw new UnsupportedSyntaxException("unterminated posix class");
+            }
+            String name = expression.substring(position + 2, end);
+            position = end + 2;
+            boolean negated = name.startsWith("^");
+            if (negated) {
+                name = name.substring(1);
+            }
+            CharSet set = new CharSet();
+            switch (name.toLowerCase(Locale.ROOT)) {
+                case "alnum":
+                    set.addRange('a', 'z').addRange('A', 'Z').addRange('0', '9');
+                    break;
+                case "alpha":
+                    set.addRange('a', 'z').addRange('A', 'Z');
+                    break;
+                case "digit":
+                    set.addRange('0', '9');
+                    break;
+                case "xdigit":
+                    set.addAll(hexDigits());
+                    break;
+                case "upper":
+                    set.addRange('A', 'Z');
+                    break;
+                case "lower":
+                    set.addRange('a', 'z');
+                    break;
+                case "space":
+                    set.addAll(spaces());
+                    break;
+                case "blank":
+                    set.add(' ').add('\t');
+                    break;
+                case "word":
+                    set.addAll(word());
+                    break;
+                case "punct":
+                    set.addRange('!', '/').addRange(':', '@').addRange('[', '`').addRange('{', '~');
+                    break;
+                case "cntrl":
+                    set.addRange(0, 0x1F).add(0x7F);
+                    break;
+                case "graph":
+                    set.addRange('!', '~');
+                    break;
+                case "print":
+                    set.addRange(' ', '~');
+                    break;
+                default:
+                    throw new UnsupportedSyntaxException("posix class [" + name + "]");
+            }
+            return negated ? set.negate() : set;
+        }
+
+        private static CharSet digits() {
+            return new CharSet().addRange('0', '9');
+        }
+
+        private static CharSet hexDigits() {
+            return new CharSet().addRange('0', '9').addRange('a', 'f').addRange('A', 'F');
+        }
+
+        private static CharSet word() {
+            return new CharSet().addRange('a', 'z').addRange('A', 'Z').addRange('0', '9').add('_');
+        }
+
+        private static CharSet spaces() {
+            return new CharSet().add(' ').add('\t').add('\n').add(0x0B).add('\f').add('\r');
+        }
+    }
+
+    private static final class Compiler {
+        private final List<int[]> instructions = new ArrayList<>();
+        private final List<CharSet> sets = new ArrayList<>();
+        private final List<int[]> sequences = new ArrayList<>();
+
+        int add(int op, int arg1, int arg2) {
+            if (instructions.size() >= MAX_PROGRAM_SIZE) {
+                throw new UnsupportedSyntaxException("expression too large");
+            }
+            instructions.add(new int[] { op, arg1, arg2 });
+            return instructions.size() - 1;
+        }
+
+        private int addSet(CharSet set) {
+            sets.add(set);
+            return sets.size() - 1;
+        }
+
+        private int addSequence(List<CharSet> sequence) {
+            int[] sets = new int[sequence.size()];
+            for (int i = 0; i < sets.length; i++) {
+                sets[i] = addSet(sequence.get(i));
+            }
+            sequences.add(sets);
+            return sequences.size() - 1;
+        }
+
+        private void patch(int pc, int arg1, int arg2) {
+            instructions.get(pc)[1] = arg1;
+            instructions.get(pc)[2] = arg2;
+        }
+
+        private int next() {
+            return instructions.size();
+        }
+
+        void emit(Node node) {
+            if (node instanceof CharSetNode) {
+                add(CHAR_SET, addSet(((CharSetNode) node).set), 0);
+            } else if (node instanceof ConcatNode) {
+                for (Node child : ((ConcatNode) node).nodes) {
+                    emit(child);
+                }
+            } else if (node instanceof AlternationNode) {
+                List<Node> alternatives = ((AlternationNode) node).nodes;
+                List<Integer> jumps = new ArrayList<>();
+                for (int i = 0; i < alternatives.size(); i++) {
+                    if (i < alternatives.size() - 1) {
+                        int split = add(SPLIT, 0, 0);
+                        emit(alternatives.get(i));
+                        jumps.add(add(JUMP, 0, 0));
+                        patch(split, split + 1, next());
+                    } else {
+                        emit(alternatives.get(i));
+                    }
+                }
+                for (int jump : jumps) {
+                    patch(jump, next(), 0);
+                }
+            } else if (node instanceof RepeatNode) {
+                RepeatNode repeat = (RepeatNode) node;
+                for (int i = 0; i < repeat.min; i++) {
+                    emit(repeat.node);
+                }
+                if (repeat.max == -1) {
+                    int split = add(SPLIT, 0, 0);
+                    emit(repeat.node);
+                    add(JUMP, split, 0);
+                    splitTo(split, split + 1, next(), repeat.greedy);
+                } else {
+                    List<Integer> splits = new ArrayList<>();
+                    for (int i = repeat.min; i < repeat.max; i++) {
+                        splits.add(add(SPLIT, 0, 0));
+                        emit(repeat.node);
+                    }
+                    int end = next();
+                    for (int split : splits) {
+                        splitTo(split, split + 1, end, repeat.greedy);
+                    }
+                }
+            } else if (node instanceof GroupNode) {
+                GroupNode group = (GroupNode) node;
+                add(SAVE, group.group * 2, 0);
+                emit(group.node);
+                add(SAVE, group.group * 2 + 1, 0);
+            } else if (node instanceof AssertionNode) {
+                AssertionNode assertion = (AssertionNode) node;
+                add(ASSERT, assertion.assertion, assertion.sequence == null ? 0 : addSequence(assertion.sequence));
+            } else {
+                throw new IllegalStateException("unknown node [" + node + "]");
+            }
+        }
+
+        private void splitTo(int split, int body, int exit, boolean greedy) {
+            if (greedy) {
+                patch(split, body, exit);
+            } else {
+                patch(split, exit, body);
+            }
+        }
+
+        LinearRegex build(List<String> groupNames) {
+            int size = instructions.size();
+            int[] ops = new int[size];
+            int[] args1 = new int[size];
+            int[] args2 = new int[size];
+            for (int i = 0; i < size; i++) {
+                int[] instruction = instructions.get(i);
+                ops[i] = instruction[0];
+                args1[i] = instruction[1];
+                args2[i] = instruction[2];
+            }
+            long[] setsLow = new long[sets.size()];
+            long[] setsHigh = new long[sets.size()];
+            for (int i = 0; i < sets.size(); i++) {
+                setsLow[i] = sets.get(i).low;
+                setsHigh[i] = sets.get(i).high;
+            }
+            return new LinearRegex(ops, args1, args2, setsLow, setsHigh, sequences.toArray(new int[0][]), new ArrayList<>(groupNames));
+        }
+    }
+}
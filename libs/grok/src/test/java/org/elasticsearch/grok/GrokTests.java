@@ -432,10 +432,19 @@ public class GrokTests extends ESTestCase {
             t.start();
             return null;
         };
-        Grok grok = new Grok(basePatterns, grokPattern, ThreadWatchdog.newInstance(10, 200, System::currentTimeMillis, scheduler));
+        // the expression can be matched in linear time, the backtracking engine is forced to check that the watchdog interrupts it
+        Grok grok = new Grok(basePatterns, grokPattern, true,
+            ThreadWatchdog.newInstance(10, 200, System::currentTimeMillis, scheduler), false);
         Exception e = expectThrows(RuntimeException.class, () -> grok.captures(logLine));
         run.set(false);
         assertThat(e.getMessage(), equalTo("grok pattern matching was interrupted after [200] ms"));
+
+        Grok linearGrok = new Grok(basePatterns, grokPattern);
+        assertThat(linearGrok.isLinear(), is(true));
+        Map<String, Object> matches = linearGrok.captures(logLine);
+        assertThat(matches.get("param2"), equalTo("EINGESCHRAENKTER_VERKAUF"));
+        assertThat(matches.get("param5"), equalTo(" VERKAUF, NACHERFASSUNG"));
+        assertThat(matches.get("param11"), equalTo("Mon Jan 08 00:00:00 UTC 2018"));
     }
 
     public void testAtInFieldName() {
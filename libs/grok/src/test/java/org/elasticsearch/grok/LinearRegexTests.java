@@ -0,0 +1,156 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.grok;
+
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class LinearRegexTests extends ESTestCase {
+
+    public void testCaptures() {
+        LinearRegex regex = LinearRegex.compile("(?<first>\\w+) (?:(?<number>\\d+)|(?<word>[a-z]+))");
+        assertThat(regex, notNullValue());
+        assertThat(regex.groupNames(), equalTo(Arrays.asList("first", "number", "word")));
+        assertThat(regex.search("-- hello 42"), equalTo(new int[] { 3, 8, 9, 11, -1, -1 }));
+        assertThat(regex.search("hello world"), equalTo(new int[] { 0, 5, -1, -1, 6, 11 }));
+        assertThat(regex.search("hello"), nullValue());
+    }
+
+    public void testLeftmostFirstPriority() {
+        assertSearch("(?<a>a|ab)(?<b>c|bcd)", "abcd", 0, 1, 1, 4);
+        assertSearch("(?<a>a*)(?<b>a*)", "aaa", 0, 3, 3, 3);
+        assertSearch("(?<a>a*?)(?<b>a*)", "aaa", 0, 0, 0, 3);
+        assertSearch("(?<a>a{2,3}?)(?<b>a+)", "aaaa", 0, 2, 2, 4);
+        assertSearch("(?<a>.*?)(?<b>\\d+)", "abc123", 0, 3, 3, 6);
+        assertSearch("(?<a>.*)(?<b>\\d+)", "abc123", 0, 5, 5, 6);
+    }
+
+    public void testAssertions() {
+        assertSearch("^(?<a>\\w+)$", "-\nfoo\nbar", 2, 5);
+        assertSearch("\\A(?<a>\\w+)", "foo bar", 0, 3);
+        assertThat(LinearRegex.compile("\\A(?<a>\\w+)").search(" foo"), nullValue());
+        assertSearch("(?<a>\\w+)\\Z", "foo bar\n", 4, 7);
+        assertSearch("(?<a>\\w+)\\z", "foo bar", 4, 7);
+        assertSearch("\\b(?<a>o\\w*)", "foo oops", 4, 8);
+        assertSearch("\\B(?<a>o+)", "foo oops", 1, 3);
+    }
+
+    public void testLookarounds() {
+        assertSearch("(?<![0-9])(?<a>[0-9]{2})(?![0-9])", "123 45 678", 4, 6);
+        assertSearch("(?<=\\$)(?<a>\\d+)", "1 $2", 3, 4);
+        assertSearch("(?!<[0-9])(?<a><\\w+)", "<12 <ab", 4, 7);
+        assertSearch("(?<a>\\w+)(?=, )", "a,b, c", 2, 3);
+    }
+
+    public void testCharacterClasses() {
+        assertSearch("(?<a>[[:alpha:]_-]+)", "12 ab_-c 3", 3, 8);
+        assertSearch("(?<a>[^\\s\\d]+)", "12 ab_-c 3", 3, 8);
+        assertSearch("(?<a>[\\x21-\\x2f]+)", "ab!#/c", 2, 5);
+        assertSearch("(?<a>[a-]+)", "b-a-", 1, 4);
+        assertSearch("(?<a>.+)", "ab\ncd", 0, 2);
+    }
+
+    public void testDeterministicAtomicGroups() {
+        assertSearch("(?<a>(?>\\d\\d){1,2})", "x123", 1, 3);
+        assertSearch("(?<a>(?>\\d\\d){1,2})", "x12345", 1, 5);
+        assertThat(LinearRegex.compile("(?>\\d+)"), nullValue());
+        assertThat(LinearRegex.compile("(?>a|b)"), nullValue());
+    }
+
+    public void testUnsupportedSyntax() {
+        for (String expression : Arrays.asList("(?<a>a)\\k<a>", "(a)\\1", "a++", "(?i)a", "(?m:a)", "(?=ab|c)", "[a[bc]]",
+            "\\p{Alpha}", "\\h", "(?<a>x*)*", "(?:a|)+", "a{1001}")) {
+            assertThat(expression, LinearRegex.compile(expression), nullValue());
+        }
+    }
+
+    public void testMaxProgramSize() {
+        assertThat(LinearRegex.compile("(?:a{1000}){10}"), notNullValue());
+        assertThat(LinearRegex.compile("(?:a{1000}){30}"), nullValue());
+    }
+
+    public void testSameCapturesAsJoni() {
+        List<String> expressions = Arrays.asList(
+            "(?<a>a|ab)(?<b>c|bcd)(?<c>d*)",
+            "(?<a>(?:a|b)+?)b",
+            "(?<a>[^a-c]+)$",
+            "(?<a>\\d+)\\.?(?<b>\\d*)",
+            "(?<a>(?:x|(?<b>y))+)",
+            "(?<a>a?){3}(?<b>a{3})",
+            "(?<a>[-a.]+)(?<b>@\\w+)?",
+            "^(?<a>\\w+)\\b",
+            "(?<a>\\S+)\\s+(?<a>\\S+)"
+        );
+        for (String expression : expressions) {
+            Grok linear = new Grok(Collections.emptyMap(), expression);
+            Grok joni = new Grok(Collections.emptyMap(), expression, true, ThreadWatchdog.noop(), false);
+            assertThat(expression, linear.isLinear(), is(true));
+            assertThat(joni.isLinear(), is(false));
+            for (int i = 0; i < 100; i++) {
+                StringBuilder text = new StringBuilder();
+                int length = randomIntBetween(0, 12);
+                for (int j = 0; j < length; j++) {
+                    text.append(randomFrom('a', 'b', 'c', 'd', 'x', 'y', '0', '1', ' ', '.', '@', '-', '\n', '_'));
+                }
+                assertThat(expression + " on [" + text + "]", linear.captures(text.toString()), equalTo(joni.captures(text.toString())));
+            }
+        }
+    }
+
+    public void testBuiltinPatterns() {
+        Map<String, String> patterns = Grok.getBuiltinPatterns();
+        assertThat(new Grok(patterns, "%{SYSLOGLINE}").isLinear(), is(true));
+        assertThat(new Grok(patterns, "%{TIMESTAMP_ISO8601:timestamp} %{IP:ip} %{URI:uri}").isLinear(), is(true));
+        // atomic groups with alternations or repetitions need backtracking
+        assertThat(new Grok(patterns, "%{NUMBER:number}").isLinear(), is(false));
+        assertThat(new Grok(patterns, "%{QS:quoted}").isLinear(), is(false));
+
+        String text = "2018-01-08T10:11:12.345Z 10.0.0.1 http://user@example.com:8080/a/b?c=d";
+        String pattern = "%{TIMESTAMP_ISO8601:timestamp} %{IP:ip} %{URI:uri}";
+        Map<String, Object> captures = new Grok(patterns, pattern).captures(text);
+        assertThat(captures, equalTo(new Grok(patterns, pattern, true, ThreadWatchdog.noop(), false).captures(text)));
+        assertThat(captures.get("timestamp"), equalTo("2018-01-08T10:11:12.345Z"));
+        assertThat(captures.get("ip"), equalTo("10.0.0.1"));
+        assertThat(captures.get("uri"), equalTo("http://user@example.com:8080/a/b?c=d"));
+    }
+
+    public void testNonAsciiTextUsesJoni() {
+        Grok grok = new Grok(Collections.emptyMap(), "(?<word>\\w+) (?<rest>.+)");
+        assertThat(grok.isLinear(), is(true));
+        Map<String, Object> captures = grok.captures("foo bär");
+        assertThat(captures.get("word"), equalTo("foo"));
+        assertThat(captures.get("rest"), equalTo("bär"));
+    }
+
+    private static void assertSearch(String expression, String text, int... expected) {
+        LinearRegex regex = LinearRegex.compile(expression);
+        assertThat(expression, regex, notNullValue());
+        assertThat(expression + " on [" + text + "]", regex.search(text), equalTo(expected));
+    }
+}
@@ -19,6 +19,9 @@
 
 package org.elasticsearch.ingest.common;
 
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.grok.Grok;
 import org.elasticsearch.grok.ThreadWatchdog;
 import org.elasticsearch.ingest.AbstractProcessor;
@@ -26,9 +29,11 @@ import org.elasticsearch.ingest.ConfigurationUtils;
 import org.elasticsearch.ingest.IngestDocument;
 import org.elasticsearch.ingest.Processor;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 import static org.elasticsearch.ingest.ConfigurationUtils.newConfigurationException;
 
@@ -45,10 +50,15 @@ public final class GrokProcessor extends AbstractProcessor {
 
     GrokProcessor(String tag, Map<String, String> patternBank, List<String> matchPatterns, String matchField,
                   boolean traceMatch, boolean ignoreMissing, ThreadWatchdog threadWatchdog) {
+        this(tag, new Grok(patternBank, combinePatterns(matchPatterns, traceMatch), threadWatchdog), matchPatterns, matchField,
+            traceMatch, ignoreMissing);
+    }
+
+    GrokProcessor(String tag, Grok grok, List<String> matchPatterns, String matchField, boolean traceMatch, boolean ignoreMissing) {
         super(tag);
         this.matchField = matchField;
         this.matchPatterns = matchPatterns;
-        this.grok = new Grok(patternBank, combinePatterns(matchPatterns, traceMatch), threadWatchdog);
+        this.grok = grok;
         this.traceMatch = traceMatch;
         this.ignoreMissing = ignoreMissing;
     }
@@ -132,12 +142,23 @@ public final class GrokProcessor extends AbstractProcessor {
 
     public static final class Factory implements Processor.Factory {
 
+        /**
+         * The maximum number of compiled expressions that are kept to be shared by processors with the same patterns.
+         */
+        static final int MAX_CACHED_EXPRESSIONS = 1000;
+
         private final Map<String, String> builtinPatterns;
         private final ThreadWatchdog threadWatchdog;
+        // compiled expressions by combined pattern and custom pattern definitions, processors of different pipelines that use the
+        // same patterns share the same expression
+        private final Cache<Tuple<String, Map<String, String>>, Grok> cache;
 
         public Factory(Map<String, String> builtinPatterns, ThreadWatchdog threadWatchdog) {
             this.builtinPatterns = builtinPatterns;
             this.threadWatchdog = threadWatchdog;
+            this.cache = CacheBuilder.<Tuple<String, Map<String, String>>, Grok>builder()
+                .setMaximumWeight(MAX_CACHED_EXPRESSIONS)
+                .build();
         }
 
         @Override
@@ -152,19 +173,27 @@ public final class GrokProcessor extends AbstractProcessor {
                 throw newConfigurationException(TYPE, processorTag, "patterns", "List of patterns must not be empty");
             }
             Map<String, String> customPatternBank = ConfigurationUtils.readOptionalMap(TYPE, processorTag, config, "pattern_definitions");
-            Map<String, String> patternBank = new HashMap<>(builtinPatterns);
-            if (customPatternBank != null) {
-                patternBank.putAll(customPatternBank);
-            }
+            String combinedPattern = combinePatterns(matchPatterns, traceMatch);
+            Map<String, String> customPatterns = customPatternBank == null ? Collections.emptyMap() : new HashMap<>(customPatternBank);
+            Tuple<String, Map<String, String>> key = new Tuple<>(combinedPattern, customPatterns);
 
+            Grok grok;
             try {
-                return new GrokProcessor(processorTag, patternBank, matchPatterns, matchField, traceMatch, ignoreMissing,
-                    threadWatchdog);
+                grok = cache.computeIfAbsent(key, k -> {
+                    Map<String, String> patternBank = new HashMap<>(builtinPatterns);
+                    patternBank.putAll(k.v2());
+                    return new Grok(patternBank, k.v1(), threadWatchdog);
+                });
             } catch (Exception e) {
+                Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
                 throw newConfigurationException(TYPE, processorTag, "patterns",
-                    "Invalid regex pattern found in: " + matchPatterns + ". " + e.getMessage());
+                    "Invalid regex pattern found in: " + matchPatterns + ". " + cause.getMessage());
             }
+            return new GrokProcessor(processorTag, grok, matchPatterns, matchField, traceMatch, ignoreMissing);
+        }
 
+        int cachedExpressions() {
+            return cache.count();
         }
     }
 }
@@ -29,7 +29,9 @@ import java.util.Map;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
 
 public class GrokProcessorFactoryTests extends ESTestCase {
 
@@ -100,6 +102,29 @@ public class GrokProcessorFactoryTests extends ESTestCase {
         assertThat(processor.getGrok().match("foo!"), equalTo(true));
     }
 
+    public void testProcessorsShareCompiledExpressions() throws Exception {
+        GrokProcessor.Factory factory = new GrokProcessor.Factory(Collections.emptyMap(), ThreadWatchdog.noop());
+        GrokProcessor first = factory.create(null, null, grokConfig("%{MY_PATTERN:name}!", "foo"));
+        GrokProcessor second = factory.create(null, null, grokConfig("%{MY_PATTERN:name}!", "foo"));
+        assertThat(second.getGrok(), sameInstance(first.getGrok()));
+        assertThat(factory.cachedExpressions(), equalTo(1));
+
+        GrokProcessor otherDefinition = factory.create(null, null, grokConfig("%{MY_PATTERN:name}!", "bar"));
+        assertThat(otherDefinition.getGrok(), not(sameInstance(first.getGrok())));
+        assertThat(otherDefinition.getGrok().match("bar!"), equalTo(true));
+        GrokProcessor otherPattern = factory.create(null, null, grokConfig("%{MY_PATTERN:name}?", "foo"));
+        assertThat(otherPattern.getGrok(), not(sameInstance(first.getGrok())));
+        assertThat(factory.cachedExpressions(), equalTo(3));
+    }
+
+    private static Map<String, Object> grokConfig(String pattern, String definition) {
+        Map<String, Object> config = new HashMap<>();
+        config.put("field", "_field");
+        config.put("patterns", Collections.singletonList(pattern));
+        config.put("pattern_definitions", Collections.singletonMap("MY_PATTERN", definition));
+        return config;
+    }
+
     public void testCreateWithInvalidPattern() throws Exception {
         GrokProcessor.Factory factory = new GrokProcessor.Factory(Collections.emptyMap(), ThreadWatchdog.noop());
         Map<String, Object> config = new HashMap<>();
@@ -108,7 +108,7 @@ public class DenseVectorFieldMapper extends FieldMapper implements ArrayValueMap
 
         @Override
         public DocValueFormat docValueFormat(String format, DateTimeZone timeZone) {
-            throw new UnsupportedOperationException(
+            throw new IllegalArgumentException(
                 "Field [" + name() + "] of type [" + typeName() + "] doesn't support docvalue_fields or aggregations");
         }
 
@@ -119,13 +119,19 @@ public class DenseVectorFieldMapper extends FieldMapper implements ArrayValueMap
 
         @Override
         public IndexFieldData.Builder fielddataBuilder(String fullyQualifiedIndexName) {
-            throw new UnsupportedOperationException(
-                "Field [" + name() + "] of type [" + typeName() + "] doesn't support sorting, scripting or aggregating");
+            // the field data of dense vectors is the graph used by knn queries, it doesn't support sorting, scripting or aggregating
+            return new DenseVectorIndexFieldData.Builder();
+        }
+
+        @Override
+        public boolean eagerFieldData() {
+            // graphs are built by the warmer when segments are opened rather than by the first knn query
+            return true;
         }
 
         @Override
         public Query termQuery(Object value, QueryShardContext context) {
-            throw new UnsupportedOperationException(
+            throw new IllegalArgumentException(
                 "Field [" + name() + "] of type [" + typeName() + "] doesn't support queries");
         }
     }
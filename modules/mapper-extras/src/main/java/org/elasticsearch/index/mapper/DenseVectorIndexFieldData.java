@@ -0,0 +1,182 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.mapper;
+
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.fielddata.AtomicFieldData;
+import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.index.fielddata.IndexFieldDataCache;
+import org.elasticsearch.index.fielddata.ScriptDocValues;
+import org.elasticsearch.index.fielddata.SortedBinaryDocValues;
+import org.elasticsearch.index.fielddata.plain.AbstractIndexFieldData;
+import org.elasticsearch.indices.breaker.CircuitBreakerService;
+import org.elasticsearch.search.MultiValueMode;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Field data for <code>dense_vector</code> fields, which holds a {@link HnswGraph} per segment so that the approximate
+ * nearest neighbours of a query vector can be found without scoring every document. Graphs are built by the warmer when a
+ * segment is opened, or on first use if the warmer did not build them, and cached in the field data cache until the segment
+ * goes away, their memory is accounted on the field data circuit breaker while they are built.
+ */
+public class DenseVectorIndexFieldData extends AbstractIndexFieldData<DenseVectorIndexFieldData.DenseVectorAtomicFieldData> {
+
+    // graphs are built with a fixed seed so that all copies of a segment get the same graph and return the same hits
+    private static final long GRAPH_SEED = 0x9E3779B97F4A7C15L;
+
+    public static class Builder implements IndexFieldData.Builder {
+        @Override
+        public IndexFieldData<?> build(IndexSettings indexSettings, MappedFieldType fieldType, IndexFieldDataCache cache,
+                                       CircuitBreakerService breakerService, MapperService mapperService) {
+            return new DenseVectorIndexFieldData(indexSettings, fieldType.name(), cache, breakerService);
+        }
+    }
+
+    private final CircuitBreakerService breakerService;
+
+    DenseVectorIndexFieldData(IndexSettings indexSettings, String fieldName, IndexFieldDataCache cache,
+                              CircuitBreakerService breakerService) {
+        super(indexSettings, fieldName, cache);
+        this.breakerService = breakerService;
+    }
+
+    @Override
+    public DenseVectorAtomicFieldData loadDirect(LeafReaderContext context) throws Exception {
+        final LeafReader reader = context.reader();
+        final BinaryDocValues values = DocValues.getBinary(reader, getFieldName());
+        final CircuitBreaker breaker = breakerService.getBreaker(CircuitBreaker.FIELDDATA);
+        // every array is accounted on the breaker before it is allocated, so that loading the vectors or building the graph
+        // of a large segment trips the breaker rather than running out of memory
+        final long[] accounted = new long[1];
+        final LongConsumer allocations = bytes -> {
+            breaker.addEstimateBytesAndMaybeBreak(bytes, getFieldName());
+            accounted[0] += bytes;
+        };
+        boolean success = false;
+        try {
+            int[] docs = new int[0];
+            float[] vectors = new float[0];
+            int count = 0;
+            int dims = -1;
+            for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
+                final BytesRef encoded = values.binaryValue();
+                final float[] vector = VectorEncoderDecoder.decodeDenseVector(encoded);
+                if (dims == -1) {
+                    dims = vector.length;
+                } else if (dims != vector.length) {
+                    throw new IllegalArgumentException("Field [" + getFieldName() + "] of type [" + DenseVectorFieldMapper.CONTENT_TYPE
+                        + "] can't build an approximate nearest neighbours graph over vectors with different dimensions: ["
+                        + dims + "] and [" + vector.length + "]");
+                }
+                if (count == docs.length) {
+                    final int capacity = ArrayUtil.oversize(count + 1, Integer.BYTES);
+                    allocations.accept((long) (capacity - count) * (Integer.BYTES + Float.BYTES * dims));
+                    docs = Arrays.copyOf(docs, capacity);
+                    vectors = Arrays.copyOf(vectors, capacity * dims);
+                }
+                docs[count] = doc;
+                System.arraycopy(vector, 0, vectors, count * dims, dims);
+                count++;
+            }
+            if (count == 0) {
+                return empty(reader.maxDoc());
+            }
+
+            allocations.accept((long) count * (Integer.BYTES + Float.BYTES * dims));
+            final HnswGraph graph = HnswGraph.build(ArrayUtil.copyOfSubArray(docs, 0, count),
+                ArrayUtil.copyOfSubArray(vectors, 0, count * dims), dims,
+                HnswGraph.DEFAULT_MAX_CONNECTIONS, HnswGraph.DEFAULT_BEAM_WIDTH, GRAPH_SEED, allocations);
+            // only the graph remains once it is built, the cache releases its size from the breaker when it is evicted
+            breaker.addWithoutBreaking(graph.ramBytesUsed() - accounted[0]);
+            success = true;
+            return new DenseVectorAtomicFieldData(graph);
+        } finally {
+            if (success == false) {
+                breaker.addWithoutBreaking(-accounted[0]);
+            }
+        }
+    }
+
+    @Override
+    protected DenseVectorAtomicFieldData empty(int maxDoc) {
+        return new DenseVectorAtomicFieldData(null);
+    }
+
+    @Override
+    public SortField sortField(@Nullable Object missingValue, MultiValueMode sortMode, XFieldComparatorSource.Nested nested,
+                               boolean reverse) {
+        throw new IllegalArgumentException("Field [" + getFieldName() + "] of type [" + DenseVectorFieldMapper.CONTENT_TYPE
+            + "] doesn't support sorting");
+    }
+
+    /**
+     * The per-segment graph of a <code>dense_vector</code> field.
+     */
+    public static final class DenseVectorAtomicFieldData implements AtomicFieldData {
+
+        @Nullable
+        private final HnswGraph graph;
+
+        DenseVectorAtomicFieldData(@Nullable HnswGraph graph) {
+            this.graph = graph;
+        }
+
+        /**
+         * Returns the graph of the segment, or <code>null</code> if no document of the segment has a vector.
+         */
+        @Nullable
+        HnswGraph graph() {
+            return graph;
+        }
+
+        @Override
+        public ScriptDocValues<?> getScriptValues() {
+            throw new IllegalArgumentException("Field of type [" + DenseVectorFieldMapper.CONTENT_TYPE
+                + "] doesn't support scripting");
+        }
+
+        @Override
+        public SortedBinaryDocValues getBytesValues() {
+            throw new IllegalArgumentException("Field of type [" + DenseVectorFieldMapper.CONTENT_TYPE
+                + "] doesn't support docvalue_fields or aggregations");
+        }
+
+        @Override
+        public long ramBytesUsed() {
+            return graph == null ? 0 : graph.ramBytesUsed();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,548 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.mapper;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.InPlaceMergeSorter;
+import org.apache.lucene.util.NumericUtils;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.SparseFixedBitSet;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.function.LongConsumer;
+
+/**
+ * A hierarchical navigable small world (HNSW) graph over the dense vectors of a single segment. Each vector is a node
+ * that is linked to its most similar neighbours on the bottom layer and on a random number of sparser upper layers,
+ * which allows to find the approximate nearest neighbours of a query vector by visiting a logarithmic number of nodes.
+ *
+ * Vectors are normalized at build time so that the similarity between two nodes is the cosine of their angle.
+ */
+final class HnswGraph implements Accountable {
+
+    /** The maximum number of neighbours of a node on the upper layers, the bottom layer allows twice as many. */
+    static final int DEFAULT_MAX_CONNECTIONS = 16;
+    /** The number of candidates that are tracked when looking for the neighbours of a node being inserted. */
+    static final int DEFAULT_BEAM_WIDTH = 100;
+
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(HnswGraph.class);
+
+    private final int dims;
+    private final int[] docs;
+    private final float[] vectors;
+    // neighbours[level][node] holds the number of neighbours of the node on the level followed by the neighbours,
+    // or null if the node is not on the level
+    private final int[][][] neighbours;
+    private final int entryPoint;
+
+    private HnswGraph(int dims, int[] docs, float[] vectors, int[][][] neighbours, int entryPoint) {
+        this.dims = dims;
+        this.docs = docs;
+        this.vectors = vectors;
+        this.neighbours = neighbours;
+        this.entryPoint = entryPoint;
+    }
+
+    /**
+     * Returns the number of dimensions of the vectors of this graph.
+     */
+    int dims() {
+        return dims;
+    }
+
+    /**
+     * Returns the number of vectors of this graph.
+     */
+    int size() {
+        return docs.length;
+    }
+
+    /**
+     * Builds a graph over the provided vectors.
+     * @param docs the doc id of each vector, in ascending order
+     * @param vectors the vectors, <code>dims</code> consecutive values per doc
+     * @param dims the number of dimensions of the vectors
+     * @param maxConnections the maximum number of neighbours of a node on the upper layers
+     * @param beamWidth the number of candidates that are tracked when inserting a node
+     * @param seed the seed used to draw the layers of the nodes, so that the graph of a segment is reproducible
+     * @param allocations called with the number of bytes of the layers and of the neighbours of every node before they are
+     *                    allocated, so that they can be accounted on a circuit breaker which may abort the build
+     */
+    static HnswGraph build(int[] docs, float[] vectors, int dims, int maxConnections, int beamWidth, long seed,
+                           LongConsumer allocations) {
+        if (vectors.length != docs.length * dims) {
+            throw new IllegalArgumentException("expected [" + docs.length * dims + "] values but got [" + vectors.length + "]");
+        }
+        for (int node = 0; node < docs.length; node++) {
+            normalize(vectors, node * dims, dims);
+        }
+        return new Builder(docs, vectors, dims, maxConnections, beamWidth, seed, allocations).build();
+    }
+
+    private static void normalize(float[] vectors, int offset, int dims) {
+        double norm = 0;
+        for (int i = offset; i < offset + dims; i++) {
+            norm += vectors[i] * vectors[i];
+        }
+        if (norm > 0) {
+            final float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = offset; i < offset + dims; i++) {
+                vectors[i] *= scale;
+            }
+        }
+    }
+
+    /**
+     * Returns the cosine similarity between the provided <code>query</code> vector and the vector of the provided node.
+     */
+    private static float similarity(float[] vectors, int node, float[] query, int queryOffset, int dims) {
+        float dot = 0;
+        final int offset = node * dims;
+        for (int i = 0; i < dims; i++) {
+            dot += vectors[offset + i] * query[queryOffset + i];
+        }
+        return dot;
+    }
+
+    /**
+     * Finds the approximate <code>k</code> nearest neighbours of the provided <code>query</code> vector.
+     * @param query the query vector, which must have {@link #dims()} dimensions
+     * @param k the number of nearest neighbours to return
+     * @param numCandidates the number of candidates to track on the bottom layer, higher values give more accurate results
+     * @param liveDocs the live docs of the segment, deleted docs are never returned
+     * @return the neighbours, sorted by doc id
+     */
+    TopNeighbours search(float[] query, int k, int numCandidates, Bits liveDocs) {
+        if (query.length != dims) {
+            throw new IllegalArgumentException("the query vector has [" + query.length + "] dimensions but the indexed vectors have ["
+                + dims + "] dimensions");
+        }
+        if (docs.length == 0) {
+            return new TopNeighbours(new int[0], new float[0]);
+        }
+        final float[] normalized = Arrays.copyOf(query, dims);
+        normalize(normalized, 0, dims);
+
+        int node = entryPoint;
+        for (int level = neighbours.length - 1; level > 0; level--) {
+            node = greedySearch(vectors, dims, neighbours[level], normalized, 0, node);
+        }
+        final NeighbourQueue results = new NeighbourQueue(Math.max(k, numCandidates), false);
+        searchLayer(vectors, dims, neighbours[0], normalized, 0, new int[] { node }, results, new SparseFixedBitSet(docs.length));
+
+        final NeighbourQueue top = new NeighbourQueue(k, false);
+        while (results.size() > 0) {
+            final long entry = results.pop();
+            final int candidate = NeighbourQueue.node(entry);
+            if (liveDocs == null || liveDocs.get(docs[candidate])) {
+                top.insertWithOverflow(entry);
+            }
+        }
+        final int[] nodes = new int[top.size()];
+        final float[] scores = new float[top.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            final long entry = top.pop();
+            nodes[i] = NeighbourQueue.node(entry);
+            scores[i] = NeighbourQueue.score(entry);
+        }
+        // nodes are in doc id order, so sorting by node sorts by doc id
+        new InPlaceMergeSorter() {
+            @Override
+            protected void swap(int i, int j) {
+                final int tmpNode = nodes[i];
+                nodes[i] = nodes[j];
+                nodes[j] = tmpNode;
+                final float tmpScore = scores[i];
+                scores[i] = scores[j];
+                scores[j] = tmpScore;
+            }
+
+            @Override
+            protected int compare(int i, int j) {
+                return Integer.compare(nodes[i], nodes[j]);
+            }
+        }.sort(0, nodes.length);
+        final int[] topDocs = new int[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            topDocs[i] = docs[nodes[i]];
+        }
+        return new TopNeighbours(topDocs, scores);
+    }
+
+    /**
+     * Walks the provided layer from the <code>entry</code> node towards the node that is the most similar to the query.
+     */
+    private static int greedySearch(float[] vectors, int dims, int[][] layer, float[] query, int queryOffset, int entry) {
+        int node = entry;
+        float best = similarity(vectors, node, query, queryOffset, dims);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            final int[] nodeNeighbours = layer[node];
+            for (int i = 1; i <= nodeNeighbours[0]; i++) {
+                final int neighbour = nodeNeighbours[i];
+                final float score = similarity(vectors, neighbour, query, queryOffset, dims);
+                if (score > best) {
+                    best = score;
+                    node = neighbour;
+                    changed = true;
+                }
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Best-first search of the provided layer that keeps the {@link NeighbourQueue#maxSize()} most similar nodes in
+     * <code>results</code>.
+     */
+    private static void searchLayer(float[] vectors, int dims, int[][] layer, float[] query, int queryOffset, int[] entries,
+                                    NeighbourQueue results, SparseFixedBitSet visited) {
+        final NeighbourQueue candidates = new NeighbourQueue(Integer.MAX_VALUE, true);
+        for (int entry : entries) {
+            if (visited.get(entry) == false) {
+                visited.set(entry);
+                final long encoded = NeighbourQueue.encode(entry, similarity(vectors, entry, query, queryOffset, dims));
+                candidates.add(encoded);
+                results.insertWithOverflow(encoded);
+            }
+        }
+        while (candidates.size() > 0) {
+            final long candidate = candidates.pop();
+            if (results.size() >= results.maxSize() && NeighbourQueue.score(candidate) < NeighbourQueue.score(results.top())) {
+                // the closest candidate is farther than all results, no candidate can improve them
+                break;
+            }
+            final int[] candidateNeighbours = layer[NeighbourQueue.node(candidate)];
+            for (int i = 1; i <= candidateNeighbours[0]; i++) {
+                final int neighbour = candidateNeighbours[i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                final long encoded = NeighbourQueue.encode(neighbour, similarity(vectors, neighbour, query, queryOffset, dims));
+                if (results.size() < results.maxSize() || NeighbourQueue.score(encoded) > NeighbourQueue.score(results.top())) {
+                    candidates.add(encoded);
+                    results.insertWithOverflow(encoded);
+                }
+            }
+        }
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        long size = BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(docs) + RamUsageEstimator.sizeOf(vectors);
+        for (int[][] layer : neighbours) {
+            size += RamUsageEstimator.shallowSizeOf(layer);
+            for (int[] nodeNeighbours : layer) {
+                if (nodeNeighbours != null) {
+                    size += RamUsageEstimator.sizeOf(nodeNeighbours);
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * The nearest neighbours of a query vector, sorted by doc id.
+     */
+    static final class TopNeighbours {
+        final int[] docs;
+        final float[] scores;
+
+        TopNeighbours(int[] docs, float[] scores) {
+            this.docs = docs;
+            this.scores = scores;
+        }
+    }
+
+    /**
+     * Inserts the nodes one by one, linking each of them to its closest nodes among those that have already been inserted.
+     */
+    private static final class Builder {
+        private final int[] docs;
+        private final float[] vectors;
+        private final int dims;
+        private final int maxConnections;
+        private final int beamWidth;
+        private final SplittableRandom random;
+        private final LongConsumer allocations;
+        private final double levelMultiplier;
+        private int[][][] neighbours = new int[0][][];
+        private int entryPoint = -1;
+
+        Builder(int[] docs, float[] vectors, int dims, int maxConnections, int beamWidth, long seed, LongConsumer allocations) {
+            this.docs = docs;
+            this.vectors = vectors;
+            this.dims = dims;
+            this.maxConnections = maxConnections;
+            this.beamWidth = beamWidth;
+            this.random = new SplittableRandom(seed);
+            this.allocations = allocations;
+            this.levelMultiplier = 1 / Math.log(Math.max(2, maxConnections));
+        }
+
+        private int maxConnections(int level) {
+            return level == 0 ? 2 * maxConnections : maxConnections;
+        }
+
+        HnswGraph build() {
+            for (int node = 0; node < docs.length; node++) {
+                insert(node);
+            }
+            return new HnswGraph(dims, docs, vectors, neighbours, Math.max(0, entryPoint));
+        }
+
+        private void insert(int node) {
+            final int nodeLevel = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+            final int topLevel = neighbours.length - 1;
+            if (nodeLevel > topLevel) {
+                neighbours = Arrays.copyOf(neighbours, nodeLevel + 1);
+                for (int level = topLevel + 1; level <= nodeLevel; level++) {
+                    allocations.accept(RamUsageEstimator.alignObjectSize(
+                        RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + (long) RamUsageEstimator.NUM_BYTES_OBJECT_REF * docs.length));
+                    neighbours[level] = new int[docs.length][];
+                }
+            }
+            long nodeBytes = 0;
+            for (int level = 0; level <= nodeLevel; level++) {
+                nodeBytes += RamUsageEstimator.alignObjectSize(
+                    RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + (long) Integer.BYTES * (1 + maxConnections(level)));
+            }
+            allocations.accept(nodeBytes);
+            for (int level = 0; level <= nodeLevel; level++) {
+                neighbours[level][node] = new int[1 + maxConnections(level)];
+            }
+            if (entryPoint == -1) {
+                entryPoint = node;
+                return;
+            }
+
+            final int offset = node * dims;
+            int entry = entryPoint;
+            for (int level = topLevel; level > nodeLevel; level--) {
+                entry = greedySearch(vectors, dims, neighbours[level], vectors, offset, entry);
+            }
+            int[] entries = new int[] { entry };
+            for (int level = Math.min(topLevel, nodeLevel); level >= 0; level--) {
+                final NeighbourQueue candidates = new NeighbourQueue(beamWidth, false);
+                searchLayer(vectors, dims, neighbours[level], vectors, offset, entries, candidates,
+                    new SparseFixedBitSet(docs.length));
+                final long[] sorted = candidates.drainDescending();
+                final int[] selected = selectNeighbours(sorted, maxConnections(level));
+                for (int neighbour : selected) {
+                    link(level, node, neighbour);
+                    link(level, neighbour, node);
+                }
+                entries = new int[sorted.length];
+                for (int i = 0; i < sorted.length; i++) {
+                    entries[i] = NeighbourQueue.node(sorted[i]);
+                }
+            }
+            if (nodeLevel > topLevel) {
+                entryPoint = node;
+            }
+        }
+
+        /**
+         * Selects up to <code>max</code> neighbours among the candidates, sorted by descending similarity, preferring candidates
+         * that are closer to the inserted node than to the neighbours selected so far so that links span different directions.
+         */
+        private int[] selectNeighbours(long[] candidates, int max) {
+            final int[] selected = new int[Math.min(max, candidates.length)];
+            final boolean[] used = new boolean[candidates.length];
+            int count = 0;
+            for (int i = 0; i < candidates.length && count < selected.length; i++) {
+                final int candidate = NeighbourQueue.node(candidates[i]);
+                final float score = NeighbourQueue.score(candidates[i]);
+                boolean diverse = true;
+                for (int j = 0; j < count; j++) {
+                    if (similarity(vectors, selected[j], vectors, candidate * dims, dims) > score) {
+                        diverse = false;
+                        break;
+                    }
+                }
+                if (diverse) {
+                    selected[count++] = candidate;
+                    used[i] = true;
+                }
+            }
+            // fill the remaining slots with the closest discarded candidates
+            for (int i = 0; i < candidates.length && count < selected.length; i++) {
+                if (used[i] == false) {
+                    selected[count++] = NeighbourQueue.node(candidates[i]);
+                }
+            }
+            return selected;
+        }
+
+        /**
+         * Adds <code>neighbour</code> to the neighbours of <code>node</code>, dropping the least similar neighbour of
+         * <code>node</code> if it already has the maximum number of neighbours.
+         */
+        private void link(int level, int node, int neighbour) {
+            int[] nodeNeighbours = neighbours[level][node];
+            final int count = nodeNeighbours[0];
+            for (int i = 1; i <= count; i++) {
+                if (nodeNeighbours[i] == neighbour) {
+                    return;
+                }
+            }
+            if (count < maxConnections(level)) {
+                nodeNeighbours[count + 1] = neighbour;
+                nodeNeighbours[0] = count + 1;
+                return;
+            }
+            final int offset = node * dims;
+            int worst = -1;
+            float worstScore = similarity(vectors, neighbour, vectors, offset, dims);
+            for (int i = 1; i <= count; i++) {
+                final float score = similarity(vectors, nodeNeighbours[i], vectors, offset, dims);
+                if (score < worstScore) {
+                    worstScore = score;
+                    worst = i;
+                }
+            }
+            if (worst != -1) {
+                nodeNeighbours[worst] = neighbour;
+            }
+        }
+    }
+
+    /**
+     * A bounded binary heap of (node, similarity) pairs that are encoded in a single long, the similarity in the upper
+     * 32 bits as a sortable int and the node in the lower 32 bits.
+     */
+    static final class NeighbourQueue {
+        private final int maxSize;
+        private final boolean maxHeap;
+        private long[] heap = new long[16];
+        private int size;
+
+        NeighbourQueue(int maxSize, boolean maxHeap) {
+            this.maxSize = maxSize;
+            this.maxHeap = maxHeap;
+        }
+
+        static long encode(int node, float score) {
+            return (((long) NumericUtils.floatToSortableInt(score)) << 32) | (node & 0xFFFFFFFFL);
+        }
+
+        static int node(long encoded) {
+            return (int) encoded;
+        }
+
+        static float score(long encoded) {
+            return NumericUtils.sortableIntToFloat((int) (encoded >> 32));
+        }
+
+        int size() {
+            return size;
+        }
+
+        int maxSize() {
+            return maxSize;
+        }
+
+        long top() {
+            assert size > 0;
+            return heap[0];
+        }
+
+        private boolean lessThan(long a, long b) {
+            return maxHeap ? a > b : a < b;
+        }
+
+        void add(long value) {
+            if (size == heap.length) {
+                heap = ArrayUtil.grow(heap, size + 1);
+            }
+            int i = size++;
+            heap[i] = value;
+            while (i > 0) {
+                final int parent = (i - 1) >>> 1;
+                if (lessThan(heap[i], heap[parent]) == false) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        /**
+         * Adds the value if the queue is not full or if the value is greater than the least value of the queue, which is
+         * then dropped. Only valid on min heaps.
+         */
+        void insertWithOverflow(long value) {
+            assert maxHeap == false;
+            if (size < maxSize) {
+                add(value);
+            } else if (value > heap[0]) {
+                heap[0] = value;
+                siftDown(0);
+            }
+        }
+
+        long pop() {
+            assert size > 0;
+            final long result = heap[0];
+            heap[0] = heap[--size];
+            siftDown(0);
+            return result;
+        }
+
+        /**
+         * Empties the queue and returns its values by descending similarity. Only valid on min heaps.
+         */
+        long[] drainDescending() {
+            assert maxHeap == false;
+            final long[] values = new long[size];
+            for (int i = values.length - 1; i >= 0; i--) {
+                values[i] = pop();
+            }
+            return values;
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                final int left = 2 * i + 1;
+                if (left >= size) {
+                    break;
+                }
+                final int right = left + 1;
+                final int child = right < size && lessThan(heap[right], heap[left]) ? right : left;
+                if (lessThan(heap[child], heap[i]) == false) {
+                    break;
+                }
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        private void swap(int i, int j) {
+            final long tmp = heap[i];
+            heap[i] = heap[j];
+            heap[j] = tmp;
+        }
+    }
+}
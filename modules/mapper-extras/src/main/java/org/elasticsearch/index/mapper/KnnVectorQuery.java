@@ -0,0 +1,291 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.mapper;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.InPlaceMergeSorter;
+import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.index.mapper.DenseVectorIndexFieldData.DenseVectorAtomicFieldData;
+import org.elasticsearch.search.internal.ContextIndexSearcher;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A query that matches the approximate <code>k</code> nearest neighbours of a query vector among the vectors of a
+ * <code>dense_vector</code> field. The neighbours of every segment are found with the {@link HnswGraph} of the segment and
+ * the <code>k</code> best ones across all segments are kept. Documents are scored with <code>(1 + cosine) / 2</code> so
+ * that scores are positive.
+ */
+public final class KnnVectorQuery extends Query {
+
+    private final IndexFieldData<DenseVectorAtomicFieldData> fieldData;
+    private final String field;
+    private final float[] vector;
+    private final int k;
+    private final int numCandidates;
+
+    @SuppressWarnings("unchecked")
+    public KnnVectorQuery(IndexFieldData<?> fieldData, float[] vector, int k, int numCandidates) {
+        if (k < 1) {
+            throw new IllegalArgumentException("[k] must be greater than 0 but was [" + k + "]");
+        }
+        if (numCandidates < k) {
+            throw new IllegalArgumentException("[num_candidates] must be greater than or equal to [k] but was [" + numCandidates + "]");
+        }
+        this.fieldData = (IndexFieldData<DenseVectorAtomicFieldData>) fieldData;
+        this.field = fieldData.getFieldName();
+        this.vector = Objects.requireNonNull(vector);
+        this.k = k;
+        this.numCandidates = numCandidates;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public float[] getVector() {
+        return vector;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public int getNumCandidates() {
+        return numCandidates;
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) throws IOException {
+        final List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        // graphs are usually built by the warmer, the ones that are not are built here, so cancellation is checked per segment
+        final Runnable checkCancelled = searcher instanceof ContextIndexSearcher
+            ? ((ContextIndexSearcher) searcher)::checkSegmentCancelled : () -> {};
+        int[] docs = new int[0];
+        float[] scores = new float[0];
+        for (LeafReaderContext leaf : leaves) {
+            checkCancelled.run();
+            final HnswGraph graph = fieldData.load(leaf).graph();
+            if (graph == null) {
+                continue;
+            }
+            checkCancelled.run();
+            final HnswGraph.TopNeighbours neighbours = graph.search(vector, k, numCandidates, leaf.reader().getLiveDocs());
+            final int offset = docs.length;
+            docs = Arrays.copyOf(docs, offset + neighbours.docs.length);
+            scores = Arrays.copyOf(scores, offset + neighbours.docs.length);
+            for (int i = 0; i < neighbours.docs.length; i++) {
+                docs[offset + i] = leaf.docBase + neighbours.docs[i];
+                scores[offset + i] = boost * (1 + neighbours.scores[i]) / 2;
+            }
+        }
+        if (docs.length > k) {
+            // keep the k best neighbours across segments
+            sort(docs, scores, true);
+            docs = Arrays.copyOf(docs, k);
+            scores = Arrays.copyOf(scores, k);
+            sort(docs, scores, false);
+        }
+        return new KnnWeight(this, docs, scores);
+    }
+
+    /**
+     * Sorts docs and their scores by descending score or by ascending doc id.
+     */
+    private static void sort(int[] docs, float[] scores, boolean byScore) {
+        new InPlaceMergeSorter() {
+            @Override
+            protected void swap(int i, int j) {
+                final int tmpDoc = docs[i];
+                docs[i] = docs[j];
+                docs[j] = tmpDoc;
+                final float tmpScore = scores[i];
+                scores[i] = scores[j];
+                scores[j] = tmpScore;
+            }
+
+            @Override
+            protected int compare(int i, int j) {
+                if (byScore) {
+                    final int cmp = Float.compare(scores[j], scores[i]);
+                    return cmp != 0 ? cmp : Integer.compare(docs[i], docs[j]);
+                }
+                return Integer.compare(docs[i], docs[j]);
+            }
+        }.sort(0, docs.length);
+    }
+
+    /**
+     * Matches the top documents that have been computed when the weight was created, docs are top-level doc ids.
+     */
+    private static final class KnnWeight extends Weight {
+        private final int[] docs;
+        private final float[] scores;
+
+        KnnWeight(Query query, int[] docs, float[] scores) {
+            super(query);
+            this.docs = docs;
+            this.scores = scores;
+        }
+
+        @Override
+        public void extractTerms(Set<Term> terms) {
+        }
+
+        @Override
+        public Explanation explain(LeafReaderContext context, int doc) throws IOException {
+            final int index = Arrays.binarySearch(docs, context.docBase + doc);
+            if (index < 0) {
+                return Explanation.noMatch("not in the top nearest neighbours");
+            }
+            return Explanation.match(scores[index], "within the top nearest neighbours, score computed as (1 + cosine) / 2");
+        }
+
+        @Override
+        public Scorer scorer(LeafReaderContext context) throws IOException {
+            int from = Arrays.binarySearch(docs, context.docBase);
+            from = from < 0 ? -1 - from : from;
+            int to = Arrays.binarySearch(docs, context.docBase + context.reader().maxDoc());
+            to = to < 0 ? -1 - to : to;
+            if (from == to) {
+                return null;
+            }
+            return new KnnScorer(this, docs, scores, from, to, context.docBase);
+        }
+
+        @Override
+        public boolean isCacheable(LeafReaderContext ctx) {
+            // matches depend on the other segments of the reader
+            return false;
+        }
+    }
+
+    private static final class KnnScorer extends Scorer {
+        private final int[] docs;
+        private final float[] scores;
+        private final int from;
+        private final int to;
+        private final int docBase;
+        private int index;
+
+        KnnScorer(Weight weight, int[] docs, float[] scores, int from, int to, int docBase) {
+            super(weight);
+            this.docs = docs;
+            this.scores = scores;
+            this.from = from;
+            this.to = to;
+            this.docBase = docBase;
+            this.index = from - 1;
+        }
+
+        @Override
+        public DocIdSetIterator iterator() {
+            return new DocIdSetIterator() {
+                @Override
+                public int docID() {
+                    return KnnScorer.this.docID();
+                }
+
+                @Override
+                public int nextDoc() {
+                    index++;
+                    return docID();
+                }
+
+                @Override
+                public int advance(int target) {
+                    index = Arrays.binarySearch(docs, Math.max(index + 1, from), to, docBase + target);
+                    if (index < 0) {
+                        index = -1 - index;
+                    }
+                    return docID();
+                }
+
+                @Override
+                public long cost() {
+                    return to - from;
+                }
+            };
+        }
+
+        @Override
+        public int docID() {
+            if (index < from) {
+                return -1;
+            } else if (index >= to) {
+                return DocIdSetIterator.NO_MORE_DOCS;
+            }
+            return docs[index] - docBase;
+        }
+
+        @Override
+        public float score() {
+            return scores[index];
+        }
+
+        @Override
+        public float getMaxScore(int upTo) {
+            float max = 0;
+            for (int i = from; i < to; i++) {
+                max = Math.max(max, scores[i]);
+            }
+            return max;
+        }
+    }
+
+    @Override
+    public String toString(String field) {
+        final StringBuilder builder = new StringBuilder("KnnVectorQuery(");
+        if (this.field.equals(field) == false) {
+            builder.append(this.field).append(':');
+        }
+        builder.append(Arrays.toString(vector)).append(", k=").append(k).append(", num_candidates=").append(numCandidates);
+        return builder.append(')').toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (sameClassAs(obj) == false) {
+            return false;
+        }
+        final KnnVectorQuery that = (KnnVectorQuery) obj;
+        return field.equals(that.field)
+            && Arrays.equals(vector, that.vector)
+            && k == that.k
+            && numCandidates == that.numCandidates;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(classHash(), field, Arrays.hashCode(vector), k, numCandidates);
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.query;
+
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ConstructingObjectParser;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.mapper.DenseVectorFieldMapper;
+import org.elasticsearch.index.mapper.DenseVectorFieldMapper.DenseVectorFieldType;
+import org.elasticsearch.index.mapper.KnnVectorQuery;
+import org.elasticsearch.index.mapper.MappedFieldType;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Query that finds the approximate k nearest neighbours of a vector in a [dense_vector] field.
+ */
+public final class KnnQueryBuilder extends AbstractQueryBuilder<KnnQueryBuilder> {
+
+    public static final String NAME = "knn";
+
+    /** The default number of candidates that are tracked per segment, if it is greater than k. */
+    public static final int DEFAULT_NUM_CANDIDATES = 100;
+    public static final int MAX_NUM_CANDIDATES = 10000;
+
+    private static final ParseField FIELD_FIELD = new ParseField("field");
+    private static final ParseField QUERY_VECTOR_FIELD = new ParseField("query_vector");
+    private static final ParseField K_FIELD = new ParseField("k");
+    private static final ParseField NUM_CANDIDATES_FIELD = new ParseField("num_candidates");
+
+    @SuppressWarnings("unchecked")
+    public static ConstructingObjectParser<KnnQueryBuilder, Void> PARSER = new ConstructingObjectParser<>(
+            NAME, args -> {
+                final List<Float> values = (List<Float>) args[1];
+                final float[] vector = new float[values.size()];
+                for (int i = 0; i < vector.length; i++) {
+                    vector[i] = values.get(i);
+                }
+                final int k = (Integer) args[2];
+                final int numCandidates = args[3] == null ? Math.max(k, DEFAULT_NUM_CANDIDATES) : (Integer) args[3];
+                final KnnQueryBuilder query = new KnnQueryBuilder((String) args[0], vector, k, numCandidates);
+                query.boost(args[4] == null ? DEFAULT_BOOST : (Float) args[4]);
+                query.queryName((String) args[5]);
+                return query;
+            });
+    static {
+        PARSER.declareString(ConstructingObjectParser.constructorArg(), FIELD_FIELD);
+        PARSER.declareFloatArray(ConstructingObjectParser.constructorArg(), QUERY_VECTOR_FIELD);
+        PARSER.declareInt(ConstructingObjectParser.constructorArg(), K_FIELD);
+        PARSER.declareInt(ConstructingObjectParser.optionalConstructorArg(), NUM_CANDIDATES_FIELD);
+        PARSER.declareFloat(ConstructingObjectParser.optionalConstructorArg(), BOOST_FIELD);
+        PARSER.declareString(ConstructingObjectParser.optionalConstructorArg(), NAME_FIELD);
+    }
+
+    private final String field;
+    private final float[] queryVector;
+    private final int k;
+    private final int numCandidates;
+
+    public KnnQueryBuilder(String field, float[] queryVector, int k) {
+        this(field, queryVector, k, Math.max(k, DEFAULT_NUM_CANDIDATES));
+    }
+
+    public KnnQueryBuilder(String field, float[] queryVector, int k, int numCandidates) {
+        this.field = Objects.requireNonNull(field);
+        this.queryVector = Objects.requireNonNull(queryVector);
+        if (queryVector.length == 0 || queryVector.length > DenseVectorFieldMapper.MAX_DIMS_COUNT) {
+            throw new IllegalArgumentException("[" + QUERY_VECTOR_FIELD.getPreferredName() + "] must have between 1 and ["
+                + DenseVectorFieldMapper.MAX_DIMS_COUNT + "] dimensions but had [" + queryVector.length + "]");
+        }
+        if (k < 1) {
+            throw new IllegalArgumentException("[" + K_FIELD.getPreferredName() + "] must be greater than 0 but was [" + k + "]");
+        }
+        if (numCandidates < k || numCandidates > MAX_NUM_CANDIDATES) {
+            throw new IllegalArgumentException("[" + NUM_CANDIDATES_FIELD.getPreferredName() + "] must be between [k] and ["
+                + MAX_NUM_CANDIDATES + "] but was [" + numCandidates + "]");
+        }
+        this.k = k;
+        this.numCandidates = numCandidates;
+    }
+
+    public KnnQueryBuilder(StreamInput in) throws IOException {
+        super(in);
+        this.field = in.readString();
+        this.queryVector = in.readFloatArray();
+        this.k = in.readVInt();
+        this.numCandidates = in.readVInt();
+    }
+
+    public String fieldName() {
+        return field;
+    }
+
+    public float[] queryVector() {
+        return queryVector;
+    }
+
+    public int k() {
+        return k;
+    }
+
+    public int numCandidates() {
+        return numCandidates;
+    }
+
+    @Override
+    public String getWriteableName() {
+        return NAME;
+    }
+
+    @Override
+    protected void doWriteTo(StreamOutput out) throws IOException {
+        out.writeString(field);
+        out.writeFloatArray(queryVector);
+        out.writeVInt(k);
+        out.writeVInt(numCandidates);
+    }
+
+    @Override
+    protected void doXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(getName());
+        builder.field(FIELD_FIELD.getPreferredName(), field);
+        builder.array(QUERY_VECTOR_FIELD.getPreferredName(), queryVector);
+        builder.field(K_FIELD.getPreferredName(), k);
+        builder.field(NUM_CANDIDATES_FIELD.getPreferredName(), numCandidates);
+        printBoostAndQueryName(builder);
+        builder.endObject();
+    }
+
+    @Override
+    protected Query doToQuery(QueryShardContext context) throws IOException {
+        final MappedFieldType ft = context.fieldMapper(field);
+        if (ft == null) {
+            return new MatchNoDocsQuery(); // unmapped field
+        } else if (ft instanceof DenseVectorFieldType == false) {
+            throw new IllegalArgumentException("[" + NAME + "] query only works on [" + DenseVectorFieldMapper.CONTENT_TYPE
+                + "] fields, not [" + ft.typeName() + "]");
+        }
+        return new KnnVectorQuery(context.getForField(ft), queryVector, k, numCandidates);
+    }
+
+    @Override
+    protected boolean doEquals(KnnQueryBuilder other) {
+        return Objects.equals(field, other.field)
+            && Arrays.equals(queryVector, other.queryVector)
+            && k == other.k
+            && numCandidates == other.numCandidates;
+    }
+
+    @Override
+    protected int doHashCode() {
+        return Objects.hash(field, Arrays.hashCode(queryVector), k, numCandidates);
+    }
+}
@@ -25,4 +25,17 @@ public class DenseVectorFieldTypeTests extends FieldTypeTestCase {
     protected MappedFieldType createDefaultFieldType() {
         return new DenseVectorFieldMapper.DenseVectorFieldType();
     }
+
+    public void testDocValueFormat() {
+        MappedFieldType fieldType = createDefaultFieldType();
+        fieldType.setName("field");
+        // a bad request rather than an internal error
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> fieldType.docValueFormat(null, null));
+        assertEquals("Field [field] of type [dense_vector] doesn't support docvalue_fields or aggregations", e.getMessage());
+    }
+
+    public void testEagerFieldData() {
+        // the graphs of knn queries are built by the warmer
+        assertTrue(createDefaultFieldType().eagerFieldData());
+    }
 }
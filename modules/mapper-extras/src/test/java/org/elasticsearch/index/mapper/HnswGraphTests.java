@@ -0,0 +1,156 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.index.mapper;
+
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class HnswGraphTests extends ESTestCase {
+
+    public void testRecall() {
+        final int numVectors = randomIntBetween(500, 2000);
+        final int dims = randomIntBetween(2, 16);
+        final int[] docs = new int[numVectors];
+        final float[] vectors = new float[numVectors * dims];
+        int doc = 0;
+        for (int i = 0; i < numVectors; i++) {
+            doc += randomIntBetween(1, 3);
+            docs[i] = doc;
+            for (int d = 0; d < dims; d++) {
+                vectors[i * dims + d] = randomFloat() * 2 - 1;
+            }
+        }
+        final float[] copy = Arrays.copyOf(vectors, vectors.length);
+        final AtomicLong allocated = new AtomicLong();
+        final HnswGraph graph = HnswGraph.build(docs, vectors, dims, HnswGraph.DEFAULT_MAX_CONNECTIONS,
+            HnswGraph.DEFAULT_BEAM_WIDTH, randomLong(), allocated::addAndGet);
+        assertEquals(numVectors, graph.size());
+        assertEquals(dims, graph.dims());
+        // everything the graph holds on top of the provided arrays is reported before it is allocated
+        assertEquals(RamUsageEstimator.shallowSizeOfInstance(HnswGraph.class) + RamUsageEstimator.sizeOf(docs)
+            + RamUsageEstimator.sizeOf(vectors) + allocated.get(), graph.ramBytesUsed());
+
+        final int k = 10;
+        final int numQueries = 20;
+        int found = 0;
+        for (int q = 0; q < numQueries; q++) {
+            final float[] query = new float[dims];
+            for (int d = 0; d < dims; d++) {
+                query[d] = randomFloat() * 2 - 1;
+            }
+            final HnswGraph.TopNeighbours neighbours = graph.search(query, k, 100, null);
+            assertEquals(k, neighbours.docs.length);
+            for (int i = 1; i < neighbours.docs.length; i++) {
+                assertThat(neighbours.docs[i - 1], lessThanOrEqualTo(neighbours.docs[i]));
+            }
+            final Set<Integer> expected = exactNeighbours(docs, copy, dims, query, k);
+            for (int neighbour : neighbours.docs) {
+                if (expected.contains(neighbour)) {
+                    found++;
+                }
+            }
+        }
+        final double recall = (double) found / (k * numQueries);
+        assertThat(recall, greaterThanOrEqualTo(0.9));
+    }
+
+    public void testDeletedDocsAreSkipped() {
+        final int numVectors = randomIntBetween(10, 200);
+        final int dims = randomIntBetween(1, 8);
+        final int[] docs = new int[numVectors];
+        final float[] vectors = new float[numVectors * dims];
+        for (int i = 0; i < numVectors; i++) {
+            docs[i] = i;
+            for (int d = 0; d < dims; d++) {
+                vectors[i * dims + d] = randomFloat();
+            }
+        }
+        final HnswGraph graph = HnswGraph.build(docs, vectors, dims, HnswGraph.DEFAULT_MAX_CONNECTIONS,
+            HnswGraph.DEFAULT_BEAM_WIDTH, randomLong(), bytes -> {});
+        final FixedBitSet liveDocs = new FixedBitSet(numVectors);
+        for (int i = 0; i < numVectors; i++) {
+            if (randomBoolean()) {
+                liveDocs.set(i);
+            }
+        }
+        final float[] query = Arrays.copyOf(vectors, dims);
+        final HnswGraph.TopNeighbours neighbours = graph.search(query, numVectors, numVectors, liveDocs);
+        // every node is a candidate, so all live docs are returned
+        assertEquals(liveDocs.cardinality(), neighbours.docs.length);
+        for (int neighbour : neighbours.docs) {
+            assertTrue(liveDocs.get(neighbour));
+        }
+    }
+
+    public void testDimensionMismatch() {
+        final HnswGraph graph = HnswGraph.build(new int[] { 0, 1 }, new float[] { 1, 0, 0, 1 }, 2,
+            HnswGraph.DEFAULT_MAX_CONNECTIONS, HnswGraph.DEFAULT_BEAM_WIDTH, randomLong(), bytes -> {});
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+            () -> graph.search(new float[] { 1, 2, 3 }, 1, 10, null));
+        assertEquals("the query vector has [3] dimensions but the indexed vectors have [2] dimensions", e.getMessage());
+    }
+
+    public void testNeighbourQueue() {
+        final HnswGraph.NeighbourQueue queue = new HnswGraph.NeighbourQueue(3, false);
+        final float[] scores = new float[] { 0.5f, -0.25f, 0.75f, 0.1f, 1f };
+        for (int i = 0; i < scores.length; i++) {
+            queue.insertWithOverflow(HnswGraph.NeighbourQueue.encode(i, scores[i]));
+        }
+        final long[] top = queue.drainDescending();
+        assertEquals(3, top.length);
+        assertEquals(4, HnswGraph.NeighbourQueue.node(top[0]));
+        assertEquals(1f, HnswGraph.NeighbourQueue.score(top[0]), 0f);
+        assertEquals(2, HnswGraph.NeighbourQueue.node(top[1]));
+        assertEquals(0, HnswGraph.NeighbourQueue.node(top[2]));
+    }
+
+    private static Set<Integer> exactNeighbours(int[] docs, float[] vectors, int dims, float[] query, int k) {
+        final Integer[] order = new Integer[docs.length];
+        final double[] scores = new double[docs.length];
+        for (int i = 0; i < docs.length; i++) {
+            order[i] = i;
+            double dot = 0;
+            double norm = 0;
+            double queryNorm = 0;
+            for (int d = 0; d < dims; d++) {
+                dot += vectors[i * dims + d] * query[d];
+                norm += vectors[i * dims + d] * vectors[i * dims + d];
+                queryNorm += query[d] * query[d];
+            }
+            scores[i] = dot / Math.sqrt(norm * queryNorm);
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+        final Set<Integer> neighbours = new HashSet<>();
+        for (int i = 0; i < k; i++) {
+            neighbours.add(docs[order[i]]);
+        }
+        return neighbours;
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.index.mapper;
+
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.fielddata.IndexFieldDataCache;
+import org.elasticsearch.indices.breaker.CircuitBreakerService;
+import org.elasticsearch.indices.breaker.NoneCircuitBreakerService;
+import org.elasticsearch.search.internal.ContextIndexSearcher;
+import org.elasticsearch.tasks.TaskCancelledException;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.test.IndexSettingsModule;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class KnnVectorQueryTests extends ESTestCase {
+
+    private static final String FIELD = "vector";
+
+    public void testExactWhenAllDocsAreCandidates() throws IOException {
+        final int numDocs = randomIntBetween(1, 200);
+        final int dims = randomIntBetween(1, 8);
+        final float[][] vectors = new float[numDocs][dims];
+        try (Directory dir = newDirectory();
+             IndexWriter w = new IndexWriter(dir, newIndexWriterConfig().setMaxBufferedDocs(randomIntBetween(5, 50)))) {
+            for (int i = 0; i < numDocs; i++) {
+                Document doc = new Document();
+                doc.add(new StringField("id", Integer.toString(i), Field.Store.YES));
+                if (i == 0 || randomInt(9) != 0) {
+                    for (int d = 0; d < dims; d++) {
+                        vectors[i][d] = randomFloat() * 2 - 1;
+                    }
+                    doc.add(new BinaryDocValuesField(FIELD, encode(vectors[i])));
+                } else {
+                    vectors[i] = null;
+                }
+                w.addDocument(doc);
+            }
+            final int deleted = randomInt(numDocs - 1);
+            if (randomBoolean()) {
+                w.deleteDocuments(new Term("id", Integer.toString(deleted)));
+                vectors[deleted] = null;
+            }
+            try (DirectoryReader reader = DirectoryReader.open(w)) {
+                final IndexSearcher searcher = newSearcher(reader, false);
+                final float[] query = new float[dims];
+                for (int d = 0; d < dims; d++) {
+                    query[d] = randomFloat() * 2 - 1;
+                }
+                final int k = randomIntBetween(1, 20);
+                final KnnVectorQuery knnQuery = new KnnVectorQuery(fieldData(new NoneCircuitBreakerService()), query, k, numDocs);
+                final TopDocs topDocs = searcher.search(knnQuery, numDocs);
+
+                int expectedHits = 0;
+                for (float[] vector : vectors) {
+                    if (vector != null) {
+                        expectedHits++;
+                    }
+                }
+                expectedHits = Math.min(expectedHits, k);
+                assertEquals(expectedHits, topDocs.totalHits.value);
+                // with as many candidates as docs the graph is searched exhaustively
+                for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                    final int id = Integer.parseInt(searcher.doc(scoreDoc.doc).get("id"));
+                    assertNotNull(vectors[id]);
+                    assertEquals((1 + cosine(vectors[id], query)) / 2, scoreDoc.score, 1e-5);
+                }
+                final float minScore = topDocs.scoreDocs[topDocs.scoreDocs.length - 1].score;
+                int better = 0;
+                for (float[] vector : vectors) {
+                    if (vector != null && (1 + cosine(vector, query)) / 2 > minScore + 1e-5) {
+                        better++;
+                    }
+                }
+                assertThat(expectedHits, greaterThanOrEqualTo(better));
+            }
+        }
+    }
+
+    public void testCircuitBreaker() throws IOException {
+        try (Directory dir = newDirectory();
+             IndexWriter w = new IndexWriter(dir, newIndexWriterConfig())) {
+            for (int i = 0; i < 10; i++) {
+                Document doc = new Document();
+                doc.add(new BinaryDocValuesField(FIELD, encode(new float[] { randomFloat(), randomFloat() })));
+                w.addDocument(doc);
+            }
+            try (DirectoryReader reader = DirectoryReader.open(w)) {
+                final CircuitBreaker breaker = mock(CircuitBreaker.class);
+                when(breaker.addEstimateBytesAndMaybeBreak(org.mockito.Matchers.anyLong(), org.mockito.Matchers.anyString()))
+                    .thenThrow(new CircuitBreakingException("boom", CircuitBreaker.Durability.PERMANENT));
+                final CircuitBreakerService breakerService = mock(CircuitBreakerService.class);
+                when(breakerService.getBreaker(CircuitBreaker.FIELDDATA)).thenReturn(breaker);
+                final KnnVectorQuery knnQuery = new KnnVectorQuery(fieldData(breakerService), new float[] { 1, 1 }, 1, 10);
+                expectThrows(CircuitBreakingException.class, () -> newSearcher(reader, false).search(knnQuery, 1));
+            }
+        }
+    }
+
+    public void testCancellation() throws IOException {
+        try (Directory dir = newDirectory();
+             IndexWriter w = new IndexWriter(dir, newIndexWriterConfig())) {
+            for (int i = 0; i < 10; i++) {
+                Document doc = new Document();
+                doc.add(new BinaryDocValuesField(FIELD, encode(new float[] { randomFloat(), randomFloat() })));
+                w.addDocument(doc);
+            }
+            try (DirectoryReader reader = DirectoryReader.open(w)) {
+                final Engine.Searcher engineSearcher = new Engine.Searcher("test", new IndexSearcher(reader), () -> {});
+                final ContextIndexSearcher searcher = new ContextIndexSearcher(engineSearcher, null,
+                    IndexSearcher.getDefaultQueryCachingPolicy());
+                searcher.setCheckSegmentCancelled(() -> {
+                    throw new TaskCancelledException("cancelled");
+                });
+                final KnnVectorQuery knnQuery = new KnnVectorQuery(fieldData(new NoneCircuitBreakerService()), new float[] { 1, 1 }, 1, 10);
+                expectThrows(TaskCancelledException.class, () -> searcher.search(knnQuery, 1));
+            }
+        }
+    }
+
+    public void testEqualsAndHashCode() {
+        final DenseVectorIndexFieldData fieldData = fieldData(new NoneCircuitBreakerService());
+        final KnnVectorQuery query = new KnnVectorQuery(fieldData, new float[] { 1, 2 }, 5, 10);
+        assertEquals(query, new KnnVectorQuery(fieldData, new float[] { 1, 2 }, 5, 10));
+        assertEquals(query.hashCode(), new KnnVectorQuery(fieldData, new float[] { 1, 2 }, 5, 10).hashCode());
+        assertNotEquals(query, new KnnVectorQuery(fieldData, new float[] { 1, 3 }, 5, 10));
+        assertNotEquals(query, new KnnVectorQuery(fieldData, new float[] { 1, 2 }, 6, 10));
+        assertNotEquals(query, new KnnVectorQuery(fieldData, new float[] { 1, 2 }, 5, 11));
+    }
+
+    private static DenseVectorIndexFieldData fieldData(CircuitBreakerService breakerService) {
+        final IndexSettings indexSettings = IndexSettingsModule.newIndexSettings("test", Settings.EMPTY);
+        return new DenseVectorIndexFieldData(indexSettings, FIELD, new IndexFieldDataCache.None(), breakerService);
+    }
+
+    private static BytesRef encode(float[] vector) {
+        final ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES);
+        for (float value : vector) {
+            buffer.putFloat(value);
+        }
+        return new BytesRef(buffer.array());
+    }
+
+    private static float cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return (float) (dot / Math.sqrt(normA * normB));
+    }
+}
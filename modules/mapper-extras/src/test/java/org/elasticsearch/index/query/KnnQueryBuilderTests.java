@@ -0,0 +1,120 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.query;
+
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.elasticsearch.action.admin.indices.mapping.put.PutMappingRequest;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.compress.CompressedXContent;
+import org.elasticsearch.index.mapper.KnnVectorQuery;
+import org.elasticsearch.index.mapper.MapperExtrasPlugin;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.test.AbstractQueryTestCase;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+
+public class KnnQueryBuilderTests extends AbstractQueryTestCase<KnnQueryBuilder> {
+
+    private static final String VECTOR_FIELD = "my_vector_field";
+
+    @Override
+    protected void initializeAdditionalMappings(MapperService mapperService) throws IOException {
+        mapperService.merge("_doc", new CompressedXContent(Strings.toString(PutMappingRequest.buildFromSimplifiedDef("_doc",
+            VECTOR_FIELD, "type=dense_vector"))), MapperService.MergeReason.MAPPING_UPDATE);
+    }
+
+    @Override
+    protected Collection<Class<? extends Plugin>> getPlugins() {
+        return Collections.singleton(MapperExtrasPlugin.class);
+    }
+
+    @Override
+    protected KnnQueryBuilder doCreateTestQueryBuilder() {
+        final String field = randomFrom(VECTOR_FIELD, "unmapped_field");
+        final float[] vector = new float[randomIntBetween(1, 10)];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = randomFloat();
+        }
+        final int k = randomIntBetween(1, 100);
+        if (randomBoolean()) {
+            return new KnnQueryBuilder(field, vector, k);
+        }
+        return new KnnQueryBuilder(field, vector, k, randomIntBetween(k, KnnQueryBuilder.MAX_NUM_CANDIDATES));
+    }
+
+    @Override
+    protected void doAssertLuceneQuery(KnnQueryBuilder queryBuilder, Query query, SearchContext context) throws IOException {
+        if (queryBuilder.fieldName().equals(VECTOR_FIELD)) {
+            assertThat(query, instanceOf(KnnVectorQuery.class));
+            KnnVectorQuery knnQuery = (KnnVectorQuery) query;
+            assertEquals(VECTOR_FIELD, knnQuery.getField());
+            assertArrayEquals(queryBuilder.queryVector(), knnQuery.getVector(), 0f);
+            assertEquals(queryBuilder.k(), knnQuery.getK());
+            assertEquals(queryBuilder.numCandidates(), knnQuery.getNumCandidates());
+        } else {
+            assertThat(query, instanceOf(MatchNoDocsQuery.class));
+        }
+    }
+
+    public void testDefaultNumCandidates() throws IOException {
+        String query = "{\n" +
+                "    \"knn\" : {\n" +
+                "        \"field\": \"" + VECTOR_FIELD + "\",\n" +
+                "        \"query_vector\": [0.5, 1.5, -2],\n" +
+                "        \"k\": 5\n" +
+                "    }\n" +
+                "}";
+        KnnQueryBuilder builder = (KnnQueryBuilder) parseQuery(query);
+        assertEquals(5, builder.k());
+        assertEquals(KnnQueryBuilder.DEFAULT_NUM_CANDIDATES, builder.numCandidates());
+        assertArrayEquals(new float[] { 0.5f, 1.5f, -2f }, builder.queryVector(), 0f);
+    }
+
+    public void testIllegalField() throws IOException {
+        String query = "{\n" +
+                "    \"knn\" : {\n" +
+                "        \"field\": \"" + STRING_FIELD_NAME + "\",\n" +
+                "        \"query_vector\": [0.5, 1.5, -2],\n" +
+                "        \"k\": 5\n" +
+                "    }\n" +
+                "}";
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> parseQuery(query).toQuery(createShardContext()));
+        assertEquals("[knn] query only works on [dense_vector] fields, not [text]", e.getMessage());
+    }
+
+    public void testIllegalParameters() {
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+            () -> new KnnQueryBuilder(VECTOR_FIELD, new float[] { 1f }, 0));
+        assertEquals("[k] must be greater than 0 but was [0]", e.getMessage());
+
+        e = expectThrows(IllegalArgumentException.class, () -> new KnnQueryBuilder(VECTOR_FIELD, new float[] { 1f }, 10, 5));
+        assertEquals("[num_candidates] must be between [k] and [10000] but was [5]", e.getMessage());
+
+        e = expectThrows(IllegalArgumentException.class, () -> new KnnQueryBuilder(VECTOR_FIELD, new float[0], 10));
+        assertEquals("[query_vector] must have between 1 and [500] dimensions but had [0]", e.getMessage());
+    }
+}
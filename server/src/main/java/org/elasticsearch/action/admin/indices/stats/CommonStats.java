@@ -199,6 +199,7 @@ public class CommonStats implements Writeable, ToXContentFragment {
                         break;
                     case QueryCache:
                         queryCache = indicesQueryCache.getStats(indexShard.shardId());
+                        queryCache.addFilters(indexShard.queryCacheFilterStats());
                         break;
                     case FieldData:
                         fieldData = indexShard.fieldDataStats(flags.fieldDataFields());
@@ -0,0 +1,326 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.bulk;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.support.ActiveShardCount;
+import org.elasticsearch.action.support.ContextPreservingActionListener;
+import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * Merges the shard level requests of concurrent bulk requests that target the same shard on the coordinating node.
+ *
+ * A shard request is sent right away when no other request for its shard is in flight, so that producers that are alone do not
+ * wait. Otherwise it is held back, together with the requests for the shard that arrive in the meantime, until
+ * {@link #WINDOW_SETTING} elapses or {@link #MAX_ITEMS_SETTING} items are collected, and all of them are sent as a single
+ * {@link BulkShardRequest}. The response of the merged request is then split into a response per original request.
+ *
+ * Only requests with the same refresh policy, wait for active shards, timeout and thread context headers are merged. The merged
+ * request is executed with the thread context of the first of them and the listener of every request is called with its own
+ * context. Coalescing is disabled when the window is zero, which is the default.
+ */
+public final class BulkShardRequestCoalescer {
+
+    public static final Setting<TimeValue> WINDOW_SETTING =
+        Setting.timeSetting("action.bulk.coalesce.window", TimeValue.ZERO, TimeValue.ZERO, Property.Dynamic, Property.NodeScope);
+    public static final Setting<Integer> MAX_ITEMS_SETTING =
+        Setting.intSetting("action.bulk.coalesce.max_items", 1000, 1, Property.Dynamic, Property.NodeScope);
+
+    private final ClusterService clusterService;
+    private final ThreadPool threadPool;
+    private final BiConsumer<BulkShardRequest, ActionListener<BulkShardResponse>> shardBulkAction;
+    private final Map<Key, Shard> shards = new HashMap<>();
+
+    BulkShardRequestCoalescer(ClusterService clusterService, ThreadPool threadPool,
+                              BiConsumer<BulkShardRequest, ActionListener<BulkShardResponse>> shardBulkAction) {
+        this.clusterService = clusterService;
+        this.threadPool = threadPool;
+        this.shardBulkAction = shardBulkAction;
+    }
+
+    /**
+     * Executes the shard request, possibly merged with other requests for the same shard.
+     */
+    void execute(BulkShardRequest request, ActionListener<BulkShardResponse> listener) {
+        final ClusterSettings clusterSettings = clusterService.getClusterSettings();
+        final TimeValue window = clusterSettings.get(WINDOW_SETTING);
+        if (window.nanos() == 0) {
+            shardBulkAction.accept(request, listener);
+            return;
+        }
+        final int maxItems = clusterSettings.get(MAX_ITEMS_SETTING);
+        final ThreadContext threadContext = threadPool.getThreadContext();
+        final Key key = new Key(request, threadContext.getHeaders());
+        final ActionListener<BulkShardResponse> contextPreservingListener =
+            ContextPreservingActionListener.wrapPreservingContext(listener, threadContext);
+        final boolean sendNow;
+        final Batch newBatch;
+        final Batch fullBatch;
+        synchronized (this) {
+            Shard shard = shards.computeIfAbsent(key, k -> new Shard());
+            sendNow = shard.inFlight == 0 && shard.batch == null;
+            if (sendNow) {
+                shard.inFlight++;
+                newBatch = null;
+                fullBatch = null;
+            } else {
+                if (shard.batch == null) {
+                    shard.batch = new Batch(threadContext.newStoredContext(false));
+                    newBatch = shard.batch;
+                } else {
+                    newBatch = null;
+                }
+                shard.batch.add(request, contextPreservingListener);
+                if (shard.batch.items >= maxItems) {
+                    fullBatch = shard.batch;
+                    shard.batch = null;
+                    shard.inFlight++;
+                } else {
+                    fullBatch = null;
+                }
+            }
+        }
+        if (sendNow) {
+            shardBulkAction.accept(request, new InFlightListener(key, contextPreservingListener));
+            return;
+        }
+        if (newBatch != null && newBatch != fullBatch) {
+            try {
+                threadPool.schedule(window, ThreadPool.Names.GENERIC, () -> flush(key, newBatch));
+            } catch (EsRejectedExecutionException e) {
+                // the node is shutting down, send the batch right away rather than leaving its requests unanswered
+                flush(key, newBatch);
+            }
+        }
+        if (fullBatch != null) {
+            send(key, fullBatch);
+        }
+    }
+
+    private void flush(Key key, Batch batch) {
+        synchronized (this) {
+            Shard shard = shards.get(key);
+            if (shard == null || shard.batch != batch) {
+                // the batch was already sent because it was full
+                return;
+            }
+            shard.batch = null;
+            shard.inFlight++;
+        }
+        send(key, batch);
+    }
+
+    private void send(Key key, Batch batch) {
+        final ThreadContext threadContext = threadPool.getThreadContext();
+        try (ThreadContext.StoredContext ignore = threadContext.stashContext()) {
+            batch.context.restore();
+            if (batch.requests.size() == 1) {
+                shardBulkAction.accept(batch.requests.get(0), new InFlightListener(key, batch.listeners.get(0)));
+            } else {
+                final BulkShardRequest merged = merge(batch.requests);
+                shardBulkAction.accept(merged, new InFlightListener(key, new ActionListener<BulkShardResponse>() {
+                    @Override
+                    public void onResponse(BulkShardResponse response) {
+                        BulkShardResponse[] responses = split(batch.requests, response);
+                        for (int i = 0; i < responses.length; i++) {
+                            batch.listeners.get(i).onResponse(responses[i]);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        for (ActionListener<BulkShardResponse> listener : batch.listeners) {
+                            listener.onFailure(e);
+                        }
+                    }
+                }));
+            }
+        }
+    }
+
+    private synchronized void onDone(Key key) {
+        Shard shard = shards.get(key);
+        assert shard != null && shard.inFlight > 0 : "no request in flight for " + key.shardId;
+        shard.inFlight--;
+        if (shard.inFlight == 0 && shard.batch == null) {
+            shards.remove(key);
+        }
+    }
+
+    /**
+     * Returns the number of shards that have requests in flight or waiting to be sent, used by tests.
+     */
+    synchronized int activeShards() {
+        return shards.size();
+    }
+
+    /**
+     * Merges requests with the same shard level parameters into a single request whose items are numbered in the order of the requests.
+     */
+    static BulkShardRequest merge(List<BulkShardRequest> requests) {
+        final BulkShardRequest first = requests.get(0);
+        final List<BulkItemRequest> items = new ArrayList<>();
+        for (BulkShardRequest request : requests) {
+            for (BulkItemRequest item : request.items()) {
+                items.add(new BulkItemRequest(items.size(), item.request()));
+            }
+        }
+        final BulkShardRequest merged = new BulkShardRequest(first.shardId(), first.getRefreshPolicy(),
+            items.toArray(new BulkItemRequest[items.size()]));
+        merged.waitForActiveShards(first.waitForActiveShards());
+        merged.timeout(first.timeout());
+        merged.setParentTask(first.getParentTask());
+        return merged;
+    }
+
+    /**
+     * Splits the response of a request built by {@link #merge(List)} into a response per original request, with the item ids of
+     * that request.
+     */
+    static BulkShardResponse[] split(List<BulkShardRequest> requests, BulkShardResponse response) {
+        final BulkItemResponse[] itemResponses = new BulkItemResponse[response.getResponses().length];
+        for (BulkItemResponse itemResponse : response.getResponses()) {
+            itemResponses[itemResponse.getItemId()] = itemResponse;
+        }
+        final BulkShardResponse[] responses = new BulkShardResponse[requests.size()];
+        int offset = 0;
+        for (int i = 0; i < requests.size(); i++) {
+            final BulkItemRequest[] items = requests.get(i).items();
+            final BulkItemResponse[] shardResponses = new BulkItemResponse[items.length];
+            for (int j = 0; j < items.length; j++) {
+                final BulkItemResponse itemResponse = itemResponses[offset + j];
+                final int id = items[j].id();
+                if (itemResponse.isFailed()) {
+                    shardResponses[j] = new BulkItemResponse(id, itemResponse.getOpType(), itemResponse.getFailure());
+                } else {
+                    shardResponses[j] = new BulkItemResponse(id, itemResponse.getOpType(), (DocWriteResponse) itemResponse.getResponse());
+                }
+            }
+            offset += items.length;
+            responses[i] = new BulkShardResponse(response.getShardId(), shardResponses);
+            responses[i].setShardInfo(response.getShardInfo());
+        }
+        return responses;
+    }
+
+    /**
+     * Marks the request of a shard as done before it notifies the listener.
+     */
+    private final class InFlightListener implements ActionListener<BulkShardResponse> {
+        private final Key key;
+        private final ActionListener<BulkShardResponse> delegate;
+
+        InFlightListener(Key key, ActionListener<BulkShardResponse> delegate) {
+            this.key = key;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onResponse(BulkShardResponse response) {
+            onDone(key);
+            delegate.onResponse(response);
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            onDone(key);
+            delegate.onFailure(e);
+        }
+    }
+
+    /**
+     * The requests of a shard that are in flight and the batch of requests that wait to be sent.
+     */
+    private static final class Shard {
+        private int inFlight = 0;
+        private Batch batch = null;
+    }
+
+    private static final class Batch {
+        private final ThreadContext.StoredContext context;
+        private final List<BulkShardRequest> requests = new ArrayList<>();
+        private final List<ActionListener<BulkShardResponse>> listeners = new ArrayList<>();
+        private int items = 0;
+
+        Batch(ThreadContext.StoredContext context) {
+            this.context = context;
+        }
+
+        void add(BulkShardRequest request, ActionListener<BulkShardResponse> listener) {
+            requests.add(request);
+            listeners.add(listener);
+            items += request.items().length;
+        }
+    }
+
+    /**
+     * The shard and the parameters that must be equal for requests to be merged.
+     */
+    private static final class Key {
+        private final ShardId shardId;
+        private final RefreshPolicy refreshPolicy;
+        private final ActiveShardCount waitForActiveShards;
+        private final TimeValue timeout;
+        private final Map<String, String> headers;
+
+        Key(BulkShardRequest request, Map<String, String> headers) {
+            this.shardId = request.shardId();
+            this.refreshPolicy = request.getRefreshPolicy();
+            this.waitForActiveShards = request.waitForActiveShards();
+            this.timeout = request.timeout();
+            this.headers = headers;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return shardId.equals(key.shardId) && refreshPolicy == key.refreshPolicy
+                && waitForActiveShards.equals(key.waitForActiveShards) && timeout.equals(key.timeout) && headers.equals(key.headers);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(shardId, refreshPolicy, waitForActiveShards, timeout, headers);
+        }
+    }
+}
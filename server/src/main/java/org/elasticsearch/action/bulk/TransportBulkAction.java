@@ -93,6 +93,7 @@ public class TransportBulkAction extends HandledTransportAction<BulkRequest, Bul
     private final ClusterService clusterService;
     private final IngestService ingestService;
     private final TransportShardBulkAction shardBulkAction;
+    private final BulkShardRequestCoalescer shardRequestCoalescer;
     private final LongSupplier relativeTimeProvider;
     private final IngestActionForwarder ingestForwarder;
     private final NodeClient client;
@@ -119,6 +120,8 @@ public class TransportBulkAction extends HandledTransportAction<BulkRequest, Bul
         this.clusterService = clusterService;
         this.ingestService = ingestService;
         this.shardBulkAction = shardBulkAction;
+        this.shardRequestCoalescer = new BulkShardRequestCoalescer(clusterService, threadPool,
+            (request, listener) -> shardBulkAction.execute(request, listener));
         this.autoCreateIndex = autoCreateIndex;
         this.relativeTimeProvider = relativeTimeProvider;
         this.ingestForwarder = new IngestActionForwarder(transportService);
@@ -410,7 +413,7 @@ public class TransportBulkAction extends HandledTransportAction<BulkRequest, Bul
                 if (task != null) {
                     bulkShardRequest.setParentTask(nodeId, task.getId());
                 }
-                shardBulkAction.execute(bulkShardRequest, new ActionListener<BulkShardResponse>() {
+                shardRequestCoalescer.execute(bulkShardRequest, new ActionListener<BulkShardResponse>() {
                     @Override
                     public void onResponse(BulkShardResponse bulkShardResponse) {
                         for (BulkItemResponse bulkItemResponse : bulkShardResponse.getResponses()) {
@@ -561,7 +564,7 @@ public class TransportBulkAction extends HandledTransportAction<BulkRequest, Bul
             (indexRequest, exception) -> {
                 logger.debug(() -> new ParameterizedMessage("failed to execute pipeline [{}] for document [{}/{}/{}]",
                     indexRequest.getPipeline(), indexRequest.index(), indexRequest.type(), indexRequest.id()), exception);
-                bulkRequestModifier.markCurrentItemAsFailed(exception);
+                bulkRequestModifier.markItemAsFailed(indexRequest, exception);
             }, (exception) -> {
                 if (exception != null) {
                     logger.error("failed to execute pipeline for a bulk request", exception);
@@ -581,7 +584,7 @@ public class TransportBulkAction extends HandledTransportAction<BulkRequest, Bul
                     }
                 }
             },
-            indexRequest -> bulkRequestModifier.markCurrentItemAsDropped());
+            bulkRequestModifier::markItemAsDropped);
     }
 
     static final class BulkRequestModifier implements Iterator<DocWriteRequest<?>> {
@@ -591,6 +594,7 @@ public class TransportBulkAction extends HandledTransportAction<BulkRequest, Bul
         final List<BulkItemResponse> itemResponses;
 
         int currentSlot = -1;
+        int lastMarkedSlot = -1;
         int[] originalSlots;
 
         BulkRequestModifier(BulkRequest bulkRequest) {
@@ -644,10 +648,19 @@ public class TransportBulkAction extends HandledTransportAction<BulkRequest, Bul
         }
 
         void markCurrentItemAsDropped() {
-            IndexRequest indexRequest = getIndexWriteRequest(bulkRequest.requests().get(currentSlot));
-            failedSlots.set(currentSlot);
+            markItemAsDropped(currentSlot);
+        }
+
+        void markItemAsDropped(IndexRequest indexRequest) {
+            markItemAsDropped(slotOf(indexRequest));
+        }
+
+        private void markItemAsDropped(int slot) {
+            IndexRequest indexRequest = getIndexWriteRequest(bulkRequest.requests().get(slot));
+            failedSlots.set(slot);
+            lastMarkedSlot = slot;
             itemResponses.add(
-                new BulkItemResponse(currentSlot, indexRequest.opType(),
+                new BulkItemResponse(slot, indexRequest.opType(),
                     new UpdateResponse(
                         new ShardId(indexRequest.index(), IndexMetaData.INDEX_UUID_NA_VALUE, 0),
                         indexRequest.type(), indexRequest.id(), indexRequest.version(), DocWriteResponse.Result.NOOP
@@ -657,15 +670,41 @@ public class TransportBulkAction extends HandledTransportAction<BulkRequest, Bul
         }
 
         void markCurrentItemAsFailed(Exception e) {
-            IndexRequest indexRequest = getIndexWriteRequest(bulkRequest.requests().get(currentSlot));
+            markItemAsFailed(currentSlot, e);
+        }
+
+        void markItemAsFailed(IndexRequest indexRequest, Exception e) {
+            markItemAsFailed(slotOf(indexRequest), e);
+        }
+
+        private void markItemAsFailed(int slot, Exception e) {
+            IndexRequest indexRequest = getIndexWriteRequest(bulkRequest.requests().get(slot));
             // We hit a error during preprocessing a request, so we:
             // 1) Remember the request item slot from the bulk, so that we're done processing all requests we know what failed
             // 2) Add a bulk item failure for this request
             // 3) Continue with the next request in the bulk.
-            failedSlots.set(currentSlot);
+            failedSlots.set(slot);
+            lastMarkedSlot = slot;
             BulkItemResponse.Failure failure = new BulkItemResponse.Failure(indexRequest.index(), indexRequest.type(),
                 indexRequest.id(), e);
-            itemResponses.add(new BulkItemResponse(currentSlot, indexRequest.opType(), failure));
+            itemResponses.add(new BulkItemResponse(slot, indexRequest.opType(), failure));
+        }
+
+        /**
+         * Returns the slot of an index request. Items are marked in order, either while they are the current item or, if their
+         * pipelines were executed concurrently, after all items were iterated, so the slot is searched after the last marked one.
+         */
+        private int slotOf(IndexRequest indexRequest) {
+            List<DocWriteRequest<?>> requests = bulkRequest.requests();
+            if (currentSlot >= 0 && currentSlot < requests.size() && getIndexWriteRequest(requests.get(currentSlot)) == indexRequest) {
+                return currentSlot;
+            }
+            for (int slot = lastMarkedSlot + 1; slot < requests.size(); slot++) {
+                if (getIndexWriteRequest(requests.get(slot)) == indexRequest) {
+                    return slot;
+                }
+            }
+            throw new IllegalArgumentException("index request [" + indexRequest + "] is not part of the bulk request");
         }
 
     }
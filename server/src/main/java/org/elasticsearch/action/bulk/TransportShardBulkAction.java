@@ -74,6 +74,7 @@ import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 
 /** Performs shard-level bulk (index, delete or update) operations */
 public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequest, BulkShardRequest, BulkShardResponse> {
@@ -98,6 +99,20 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
         this.mappingUpdatedAction = mappingUpdatedAction;
     }
 
+    @Override
+    protected void registerRequestHandlers(String actionName, TransportService transportService, Supplier<BulkShardRequest> request,
+                                           Supplier<BulkShardRequest> replicaRequest, String executor) {
+        // the sources of the documents are read as slices of a single copy of the message rather than copied one by one, the
+        // request is then executed on the primary and sent to the replicas without copying them again
+        transportService.registerRequestHandler(actionName, request, ThreadPool.Names.SAME, false, true, true,
+            new OperationTransportHandler());
+        transportService.registerRequestHandler(transportPrimaryAction, () -> new ConcreteShardRequest<>(request), executor,
+            false, true, true, new PrimaryOperationTransportHandler());
+        // we must never reject because of thread pool capacity on replicas
+        transportService.registerRequestHandler(transportReplicaAction, () -> new ConcreteReplicaRequest<>(replicaRequest), executor,
+            true, true, true, new ReplicaOperationTransportHandler());
+    }
+
     @Override
     protected TransportRequestOptions transportOptions(Settings settings) {
         return BulkAction.INSTANCE.transportOptions(settings);
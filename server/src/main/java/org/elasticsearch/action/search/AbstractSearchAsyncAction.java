@@ -29,6 +29,8 @@ import org.elasticsearch.action.ShardOperationFailedException;
 import org.elasticsearch.action.support.TransportActions;
 import org.elasticsearch.cluster.routing.GroupShardsIterator;
 import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.util.concurrent.AtomicArray;
 import org.elasticsearch.search.SearchPhaseResult;
 import org.elasticsearch.search.SearchShardTarget;
@@ -37,12 +39,14 @@ import org.elasticsearch.search.internal.InternalSearchResponse;
 import org.elasticsearch.search.internal.ShardSearchTransportRequest;
 import org.elasticsearch.transport.Transport;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 import java.util.stream.Collectors;
@@ -71,6 +75,9 @@ abstract class AbstractSearchAsyncAction<Result extends SearchPhaseResult> exten
     private final AtomicInteger skippedOps = new AtomicInteger();
     private final TransportSearchAction.SearchTimeProvider timeProvider;
     private final SearchResponse.Clusters clusters;
+    private final List<Releasable> releasables = new ArrayList<>();
+    // set once the search failed, the shard results that arrive afterwards are released rather than moved to the next phase
+    private final AtomicBoolean requestFailed = new AtomicBoolean();
 
     AbstractSearchAsyncAction(String name, Logger logger, SearchTransportService searchTransportService,
                                         BiFunction<String, String, Transport.Connection> nodeIdToConnection,
@@ -96,6 +103,7 @@ abstract class AbstractSearchAsyncAction<Result extends SearchPhaseResult> exten
         this.indexRoutings = indexRoutings;
         this.results = resultConsumer;
         this.clusters = clusters;
+        addReleasable(resultConsumer);
     }
 
     /**
@@ -125,6 +133,10 @@ abstract class AbstractSearchAsyncAction<Result extends SearchPhaseResult> exten
         /* This is the main search phase transition where we move to the next phase. At this point we check if there is
          * at least one successful operation left and if so we move to the next phase. If not we immediately fail the
          * search phase as "all shards failed"*/
+        if (requestFailed.get()) {
+            // the listener has already been notified of the failure
+            return;
+        }
         if (successfulOps.get() == 0) { // we have 0 successful results that means we shortcut stuff and return a failure
             final ShardOperationFailedException[] shardSearchFailures = ExceptionsHelper.groupBy(buildShardFailures());
             Throwable cause = shardSearchFailures.length == 0 ? null :
@@ -220,23 +232,42 @@ abstract class AbstractSearchAsyncAction<Result extends SearchPhaseResult> exten
      * @param exception the exception explaining or causing the phase failure
      */
     private void raisePhaseFailure(SearchPhaseExecutionException exception) {
-        results.getSuccessfulResults().forEach((entry) -> {
-            try {
-                SearchShardTarget searchShardTarget = entry.getSearchShardTarget();
-                Transport.Connection connection = getConnection(null, searchShardTarget.getNodeId());
-                sendReleaseSearchContext(entry.getRequestId(), connection, searchShardTarget.getOriginalIndices());
-            } catch (Exception inner) {
-                inner.addSuppressed(exception);
-                logger.trace("failed to release context", inner);
+        if (requestFailed.compareAndSet(false, true) == false) {
+            logger.trace("search already failed", exception);
+            return;
+        }
+        results.getSuccessfulResults().forEach((entry) -> releaseSearchContext(entry, exception));
+        onFailure(exception);
+    }
+
+    private void releaseSearchContext(Result result, @Nullable Exception cause) {
+        try {
+            SearchShardTarget searchShardTarget = result.getSearchShardTarget();
+            Transport.Connection connection = getConnection(null, searchShardTarget.getNodeId());
+            sendReleaseSearchContext(result.getRequestId(), connection, searchShardTarget.getOriginalIndices());
+        } catch (Exception inner) {
+            if (cause != null) {
+                inner.addSuppressed(cause);
             }
-        });
-        listener.onFailure(exception);
+            logger.trace("failed to release context", inner);
+        }
     }
 
     @Override
     public final void onShardSuccess(Result result) {
         successfulOps.incrementAndGet();
-        results.consumeResult(result);
+        try {
+            results.consumeResult(result);
+        } catch (Exception e) {
+            // the results can't be reduced anymore, for instance because buffering them tripped the circuit breaker, so the
+            // search fails right away rather than once all shards responded
+            onPhaseFailure(this, "", e);
+        }
+        if (requestFailed.get()) {
+            // the search context of this shard might have been created after the others were released
+            releaseSearchContext(result, null);
+            return;
+        }
         if (logger.isTraceEnabled()) {
             logger.trace("got first-phase result from {}", result != null ? result.getSearchShardTarget() : null);
         }
@@ -308,14 +339,36 @@ abstract class AbstractSearchAsyncAction<Result extends SearchPhaseResult> exten
         executor.execute(command);
     }
 
+    @Override
+    public final void addReleasable(Releasable releasable) {
+        synchronized (releasables) {
+            releasables.add(releasable);
+        }
+    }
+
+    private void releaseResources() {
+        synchronized (releasables) {
+            Releasables.close(releasables);
+            releasables.clear();
+        }
+    }
+
     @Override
     public final void onResponse(SearchResponse response) {
-        listener.onResponse(response);
+        try {
+            releaseResources();
+        } finally {
+            listener.onResponse(response);
+        }
     }
 
     @Override
     public final void onFailure(Exception e) {
-        listener.onFailure(e);
+        try {
+            releaseResources();
+        } finally {
+            listener.onFailure(e);
+        }
     }
 
     public final ShardSearchTransportRequest buildShardSearchRequest(SearchShardIterator shardIt) {
@@ -58,6 +58,7 @@ final class DfsQueryPhase extends SearchPhase {
         this.nextPhaseFactory = nextPhaseFactory;
         this.context = context;
         this.searchTransportService = context.getSearchTransport();
+        context.addReleasable(queryResult);
     }
 
     @Override
@@ -80,7 +81,13 @@ final class DfsQueryPhase extends SearchPhase {
 
                     @Override
                     protected void innerOnResponse(QuerySearchResult response) {
-                        counter.onResult(response);
+                        try {
+                            counter.onResult(response);
+                        } catch (Exception e) {
+                            // the results can't be reduced anymore, for instance because buffering them tripped the circuit
+                            // breaker, so the search fails right away rather than once all shards responded
+                            context.onPhaseFailure(DfsQueryPhase.this, "", e);
+                        }
                     }
 
                     @Override
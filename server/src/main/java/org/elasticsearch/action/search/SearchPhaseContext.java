@@ -22,6 +22,7 @@ import org.apache.logging.log4j.Logger;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.OriginalIndices;
 import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.search.SearchShardTarget;
 import org.elasticsearch.search.internal.InternalSearchResponse;
 import org.elasticsearch.search.internal.ShardSearchTransportRequest;
@@ -102,6 +103,11 @@ interface SearchPhaseContext extends ActionListener<SearchResponse>, Executor {
         }
     }
 
+    /**
+     * Registers a {@link Releasable} that is released once the search request completes, either successfully or with a failure.
+     */
+    void addReleasable(Releasable releasable);
+
     /**
      * Builds an request for the initial search phase.
      */
@@ -33,8 +33,14 @@ import org.apache.lucene.search.TopFieldDocs;
 import org.apache.lucene.search.TotalHits;
 import org.apache.lucene.search.TotalHits.Relation;
 import org.apache.lucene.search.grouping.CollapseTopFieldDocs;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
 import org.elasticsearch.common.collect.HppcMaps;
+import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.lucene.search.TopDocsAndMaxScore;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.indices.breaker.CircuitBreakerService;
+import org.elasticsearch.indices.breaker.NoneCircuitBreakerService;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
@@ -56,6 +62,8 @@ import org.elasticsearch.search.suggest.Suggest.Suggestion;
 import org.elasticsearch.search.suggest.Suggest.Suggestion.Entry;
 import org.elasticsearch.search.suggest.completion.CompletionSuggestion;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -72,14 +80,31 @@ public final class SearchPhaseController {
 
     private static final ScoreDoc[] EMPTY_DOCS = new ScoreDoc[0];
 
+    /**
+     * Buffered aggregation results are reduced ahead of time once they take more than this many bytes and more than the
+     * already reduced result, regardless of the batched reduce size of the request.
+     */
+    static final long EAGER_REDUCE_THRESHOLD_BYTES = ByteSizeUnit.MB.toBytes(1);
+
     private final Function<Boolean, ReduceContext> reduceContextFunction;
+    private final CircuitBreakerService circuitBreakerService;
 
     /**
      * Constructor.
      * @param reduceContextFunction A function that builds a context for the reduce of an {@link InternalAggregation}
      */
     public SearchPhaseController(Function<Boolean, ReduceContext> reduceContextFunction) {
+        this(reduceContextFunction, new NoneCircuitBreakerService());
+    }
+
+    /**
+     * Constructor.
+     * @param reduceContextFunction A function that builds a context for the reduce of an {@link InternalAggregation}
+     * @param circuitBreakerService the service that provides the request circuit breaker buffered aggregations are accounted on
+     */
+    public SearchPhaseController(Function<Boolean, ReduceContext> reduceContextFunction, CircuitBreakerService circuitBreakerService) {
         this.reduceContextFunction = reduceContextFunction;
+        this.circuitBreakerService = circuitBreakerService;
     }
 
     public AggregatedDfs aggregateDfs(Collection<DfsSearchResult> results) {
@@ -605,10 +630,16 @@ public final class SearchPhaseController {
      * A {@link InitialSearchPhase.ArraySearchPhaseResults} implementation
      * that incrementally reduces aggregation results as shard results are consumed.
      * This implementation can be configured to batch up a certain amount of results and only reduce them
-     * iff the buffer is exhausted.
+     * iff the buffer is exhausted. Aggregation results are also reduced ahead of time as soon as the buffered, not yet reduced
+     * results take more memory than the already reduced result so that coordinating many shards with large aggregation results
+     * needs memory in the order of a single result. The size of the buffered aggregations is accounted on the request circuit
+     * breaker until this consumer is closed, see {@link #estimateSize(SearchPhaseResult, InternalAggregations)}. A result that
+     * trips the breaker fails the consumer: {@link #consumeResult(SearchPhaseResult)} throws the breaker exception once so that
+     * the search fails right away, and all later results are dropped.
      */
     static final class QueryPhaseResultConsumer extends InitialSearchPhase.ArraySearchPhaseResults<SearchPhaseResult> {
         private final InternalAggregations[] aggsBuffer;
+        private final long[] aggsBufferBytes;
         private final TopDocs[] topDocsBuffer;
         private final boolean hasAggs;
         private final boolean hasTopDocs;
@@ -617,6 +648,12 @@ public final class SearchPhaseController {
         private final SearchPhaseController controller;
         private int numReducePhases = 0;
         private final TopDocsStats topDocsStats = new TopDocsStats();
+        private final CircuitBreaker breaker;
+        private final long eagerReduceThresholdBytes;
+        // the bytes that are currently accounted on the circuit breaker for all buffered aggregations
+        private long accountedBytes;
+        private CircuitBreakingException failure;
+        private boolean closed;
 
         /**
          * Creates a new {@link QueryPhaseResultConsumer}
@@ -624,9 +661,12 @@ public final class SearchPhaseController {
          * @param expectedResultSize the expected number of query results. Corresponds to the number of shards queried
          * @param bufferSize the size of the reduce buffer. if the buffer size is smaller than the number of expected results
          *                   the buffer is used to incrementally reduce aggregation results before all shards responded.
+         * @param breaker the circuit breaker the size of the buffered aggregations is accounted on
+         * @param eagerReduceThresholdBytes the number of bytes that buffered aggregations must exceed in order to be reduced before
+         *                                  the buffer is exhausted
          */
-        private QueryPhaseResultConsumer(SearchPhaseController controller, int expectedResultSize, int bufferSize,
-                                         boolean hasTopDocs, boolean hasAggs) {
+        QueryPhaseResultConsumer(SearchPhaseController controller, int expectedResultSize, int bufferSize,
+                                         boolean hasTopDocs, boolean hasAggs, CircuitBreaker breaker, long eagerReduceThresholdBytes) {
             super(expectedResultSize);
             if (expectedResultSize != 1 && bufferSize < 2) {
                 throw new IllegalArgumentException("buffer size must be >= 2 if there is more than one expected result");
@@ -640,39 +680,51 @@ public final class SearchPhaseController {
             this.controller = controller;
             // no need to buffer anything if we have less expected results. in this case we don't consume any results ahead of time.
             this.aggsBuffer = new InternalAggregations[hasAggs ? bufferSize : 0];
+            this.aggsBufferBytes = new long[hasAggs ? bufferSize : 0];
             this.topDocsBuffer = new TopDocs[hasTopDocs ? bufferSize : 0];
             this.hasTopDocs = hasTopDocs;
             this.hasAggs = hasAggs;
             this.bufferSize = bufferSize;
+            this.breaker = breaker;
+            this.eagerReduceThresholdBytes = eagerReduceThresholdBytes;
         }
 
         @Override
         public void consumeResult(SearchPhaseResult result) {
             super.consumeResult(result);
             QuerySearchResult queryResult = result.queryResult();
-            consumeInternal(queryResult);
+            InternalAggregations aggs = null;
+            long aggsBytes = 0;
+            if (hasAggs) {
+                aggs = (InternalAggregations) queryResult.consumeAggs();
+                // computed outside of the lock since it may need to walk the entire aggregation tree
+                aggsBytes = estimateSize(result, aggs);
+            }
+            consumeInternal(queryResult, aggs, aggsBytes);
         }
 
-        private synchronized void consumeInternal(QuerySearchResult querySearchResult) {
-            if (index == bufferSize) {
-                if (hasAggs) {
-                    InternalAggregations reducedAggs = controller.reduceAggsIncrementally(Arrays.asList(aggsBuffer));
-                    Arrays.fill(aggsBuffer, null);
-                    aggsBuffer[0] = reducedAggs;
-                }
-                if (hasTopDocs) {
-                    TopDocs reducedTopDocs = mergeTopDocs(Arrays.asList(topDocsBuffer),
-                        // we have to merge here in the same way we collect on a shard
-                        querySearchResult.from() + querySearchResult.size(), 0);
-                    Arrays.fill(topDocsBuffer, null);
-                    topDocsBuffer[0] = reducedTopDocs;
+        private synchronized void consumeInternal(QuerySearchResult querySearchResult, InternalAggregations aggs, long aggsBytes) {
+            if (failure != null || closed) {
+                // the search has already failed or is done, drop the result to release memory early
+                return;
+            }
+            if (hasAggs) {
+                try {
+                    breaker.addEstimateBytesAndMaybeBreak(aggsBytes, "<reduce_aggs>");
+                } catch (CircuitBreakingException e) {
+                    failure = e;
+                    releaseBuffers();
+                    throw e;
                 }
-                numReducePhases++;
-                index = 1;
+                accountedBytes += aggsBytes;
+            }
+            if (index == bufferSize) {
+                partialReduce(querySearchResult);
             }
             final int i = index++;
             if (hasAggs) {
-                aggsBuffer[i] = (InternalAggregations) querySearchResult.consumeAggs();
+                aggsBuffer[i] = aggs;
+                aggsBufferBytes[i] = aggsBytes;
             }
             if (hasTopDocs) {
                 final TopDocsAndMaxScore topDocs = querySearchResult.consumeTopDocs(); // can't be null
@@ -680,6 +732,46 @@ public final class SearchPhaseController {
                 setShardIndex(topDocs.topDocs, querySearchResult.getShardIndex());
                 topDocsBuffer[i] = topDocs.topDocs;
             }
+            if (hasAggs && index > 1) {
+                // slot 0 holds the result of the previous partial reduce, if any, all other slots are raw shard results
+                final long reducedBytes = numReducePhases > 0 ? aggsBufferBytes[0] : 0;
+                final long pendingBytes = accountedBytes - reducedBytes;
+                if (pendingBytes >= eagerReduceThresholdBytes && pendingBytes >= reducedBytes) {
+                    partialReduce(querySearchResult);
+                }
+            }
+        }
+
+        private void partialReduce(QuerySearchResult querySearchResult) {
+            assert Thread.holdsLock(this);
+            if (hasAggs) {
+                InternalAggregations reducedAggs = controller.reduceAggsIncrementally(Arrays.asList(aggsBuffer).subList(0, index));
+                Arrays.fill(aggsBuffer, null);
+                Arrays.fill(aggsBufferBytes, 0);
+                aggsBuffer[0] = reducedAggs;
+                // a partial reduce merges the buckets of its inputs without pruning any of them, so the reduced result is
+                // estimated with the size of all the results it replaces and the accounted bytes are kept as is
+                aggsBufferBytes[0] = accountedBytes;
+            }
+            if (hasTopDocs) {
+                TopDocs reducedTopDocs = mergeTopDocs(Arrays.asList(topDocsBuffer).subList(0, index),
+                    // we have to merge here in the same way we collect on a shard
+                    querySearchResult.from() + querySearchResult.size(), 0);
+                Arrays.fill(topDocsBuffer, null);
+                topDocsBuffer[0] = reducedTopDocs;
+            }
+            numReducePhases++;
+            index = 1;
+        }
+
+        private void releaseBuffers() {
+            assert Thread.holdsLock(this);
+            breaker.addWithoutBreaking(-accountedBytes);
+            accountedBytes = 0;
+            Arrays.fill(aggsBuffer, null);
+            Arrays.fill(aggsBufferBytes, 0);
+            Arrays.fill(topDocsBuffer, null);
+            index = 0;
         }
 
         private synchronized List<InternalAggregations> getRemainingAggs() {
@@ -692,8 +784,25 @@ public final class SearchPhaseController {
 
         @Override
         public ReducedQueryPhase reduce() {
-            return controller.reducedQueryPhase(results.asList(), getRemainingAggs(), getRemainingTopDocs(), topDocsStats,
-                numReducePhases, false);
+            synchronized (this) {
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+            try {
+                return controller.reducedQueryPhase(results.asList(), getRemainingAggs(), getRemainingTopDocs(), topDocsStats,
+                    numReducePhases, false);
+            } finally {
+                close();
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed == false) {
+                closed = true;
+                releaseBuffers();
+            }
         }
 
         /**
@@ -704,6 +813,63 @@ public final class SearchPhaseController {
         }
 
         int getNumReducePhases() { return numReducePhases; }
+
+        /**
+         * Returns the number of bytes that are currently accounted on the circuit breaker
+         */
+        synchronized long getAccountedBytes() {
+            return accountedBytes;
+        }
+    }
+
+    /**
+     * Estimates the memory that the aggregations of the given shard result take with their serialized size, which does not
+     * depend on JVM specifics. The results of remote shards are estimated with the size of the transport message they were
+     * read from, only the results of local shards that were never serialized are measured.
+     */
+    static long estimateSize(SearchPhaseResult result, InternalAggregations aggregations) {
+        if (aggregations == null) {
+            return 0;
+        }
+        if (result.messageSize() >= 0) {
+            return result.messageSize();
+        }
+        try (CountingStreamOutput out = new CountingStreamOutput()) {
+            aggregations.writeTo(out);
+            return out.size;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A {@link StreamOutput} that only counts the bytes that are written to it.
+     */
+    private static final class CountingStreamOutput extends StreamOutput {
+        private long size;
+
+        @Override
+        public void writeByte(byte b) {
+            size++;
+        }
+
+        @Override
+        public void writeBytes(byte[] b, int offset, int length) {
+            size += length;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void reset() {
+            size = 0;
+        }
     }
 
     /**
@@ -720,7 +886,8 @@ public final class SearchPhaseController {
             // no incremental reduce if scroll is used - we only hit a single shard or sometimes more...
             if (request.getBatchedReduceSize() < numShards) {
                 // only use this if there are aggs and if there are more shards than we should reduce at once
-                return new QueryPhaseResultConsumer(this, numShards, request.getBatchedReduceSize(), hasTopDocs, hasAggs);
+                return new QueryPhaseResultConsumer(this, numShards, request.getBatchedReduceSize(), hasTopDocs, hasAggs,
+                    circuitBreakerService.getBreaker(CircuitBreaker.REQUEST), EAGER_REDUCE_THRESHOLD_BYTES);
             }
         }
         return new InitialSearchPhase.ArraySearchPhaseResults<SearchPhaseResult>(numShards) {
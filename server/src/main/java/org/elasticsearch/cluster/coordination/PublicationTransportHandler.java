@@ -31,6 +31,7 @@ import org.elasticsearch.cluster.IncompatibleClusterStateVersionException;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.node.DiscoveryNodes;
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.compress.CompressionScheme;
 import org.elasticsearch.common.compress.Compressor;
 import org.elasticsearch.common.compress.CompressorFactory;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
@@ -38,6 +39,8 @@ import org.elasticsearch.common.io.stream.NamedWriteableAwareStreamInput;
 import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.util.concurrent.AbstractRunnable;
 import org.elasticsearch.core.internal.io.IOUtils;
 import org.elasticsearch.discovery.zen.PublishClusterStateAction;
@@ -69,9 +72,15 @@ public class PublicationTransportHandler {
     public static final String PUBLISH_STATE_ACTION_NAME = "internal:cluster/coordination/publish_state";
     public static final String COMMIT_STATE_ACTION_NAME = "internal:cluster/coordination/commit_state";
 
+    // the compression scheme of published cluster states, nodes that don't support it receive states compressed with deflate
+    public static final Setting<CompressionScheme> PUBLISH_COMPRESSION_SCHEME_SETTING =
+        new Setting<>("cluster.publish.compression_scheme", CompressionScheme.DEFLATE.toString(), CompressionScheme::fromString,
+            Setting.Property.NodeScope);
+
     private final TransportService transportService;
     private final NamedWriteableRegistry namedWriteableRegistry;
     private final Function<PublishRequest, PublishWithJoinResponse> handlePublishRequest;
+    private final CompressionScheme compressionScheme;
 
     private AtomicReference<ClusterState> lastSeenClusterState = new AtomicReference<>();
 
@@ -83,12 +92,14 @@ public class PublicationTransportHandler {
     private final TransportRequestOptions stateRequestOptions = TransportRequestOptions.builder()
         .withType(TransportRequestOptions.Type.STATE).build();
 
-    public PublicationTransportHandler(TransportService transportService, NamedWriteableRegistry namedWriteableRegistry,
+    public PublicationTransportHandler(Settings settings, TransportService transportService,
+                                       NamedWriteableRegistry namedWriteableRegistry,
                                        Function<PublishRequest, PublishWithJoinResponse> handlePublishRequest,
                                        BiConsumer<ApplyCommitRequest, ActionListener<Void>> handleApplyCommit) {
         this.transportService = transportService;
         this.namedWriteableRegistry = namedWriteableRegistry;
         this.handlePublishRequest = handlePublishRequest;
+        this.compressionScheme = PUBLISH_COMPRESSION_SCHEME_SETTING.get(settings);
 
         transportService.registerRequestHandler(PUBLISH_STATE_ACTION_NAME, BytesTransportRequest::new, ThreadPool.Names.GENERIC,
             false, false, (request, channel, task) -> channel.sendResponse(handleIncomingPublishRequest(request)));
@@ -309,9 +320,9 @@ public class PublicationTransportHandler {
         }
     }
 
-    private static void buildDiffAndSerializeStates(ClusterState clusterState, ClusterState previousState, DiscoveryNodes discoveryNodes,
-                                                    boolean sendFullVersion, Map<Version, BytesReference> serializedStates,
-                                                    Map<Version, BytesReference> serializedDiffs) {
+    private void buildDiffAndSerializeStates(ClusterState clusterState, ClusterState previousState, DiscoveryNodes discoveryNodes,
+                                             boolean sendFullVersion, Map<Version, BytesReference> serializedStates,
+                                             Map<Version, BytesReference> serializedDiffs) {
         Diff<ClusterState> diff = null;
         for (DiscoveryNode node : discoveryNodes) {
             if (node.equals(discoveryNodes.getLocalNode())) {
@@ -320,13 +331,15 @@ public class PublicationTransportHandler {
             }
             try {
                 if (sendFullVersion || !previousState.nodes().nodeExists(node)) {
-                    serializedStates.putIfAbsent(node.getVersion(), serializeFullClusterState(clusterState, node.getVersion()));
+                    serializedStates.putIfAbsent(node.getVersion(), serializeFullClusterState(clusterState, node.getVersion(),
+                        compressionScheme.compressor(node.getVersion())));
                 } else {
                     // will send a diff
                     if (diff == null) {
                         diff = clusterState.diff(previousState);
                     }
-                    serializedDiffs.putIfAbsent(node.getVersion(), serializeDiffClusterState(diff, node.getVersion()));
+                    serializedDiffs.putIfAbsent(node.getVersion(), serializeDiffClusterState(diff, node.getVersion(),
+                        compressionScheme.compressor(node.getVersion())));
                 }
             } catch (IOException e) {
                 throw new ElasticsearchException("failed to serialize cluster state for publishing to node {}", e, node);
@@ -339,7 +352,7 @@ public class PublicationTransportHandler {
         BytesReference bytes = serializedStates.get(node.getVersion());
         if (bytes == null) {
             try {
-                bytes = serializeFullClusterState(clusterState, node.getVersion());
+                bytes = serializeFullClusterState(clusterState, node.getVersion(), compressionScheme.compressor(node.getVersion()));
                 serializedStates.put(node.getVersion(), bytes);
             } catch (Exception e) {
                 logger.warn(() -> new ParameterizedMessage("failed to serialize cluster state before publishing it to node {}", node), e);
@@ -359,8 +372,13 @@ public class PublicationTransportHandler {
     }
 
     public static BytesReference serializeFullClusterState(ClusterState clusterState, Version nodeVersion) throws IOException {
+        return serializeFullClusterState(clusterState, nodeVersion, CompressorFactory.COMPRESSOR);
+    }
+
+    static BytesReference serializeFullClusterState(ClusterState clusterState, Version nodeVersion,
+                                                    Compressor compressor) throws IOException {
         final BytesStreamOutput bStream = new BytesStreamOutput();
-        try (StreamOutput stream = CompressorFactory.COMPRESSOR.streamOutput(bStream)) {
+        try (StreamOutput stream = compressor.streamOutput(bStream)) {
             stream.setVersion(nodeVersion);
             stream.writeBoolean(true);
             clusterState.writeTo(stream);
@@ -369,8 +387,12 @@ public class PublicationTransportHandler {
     }
 
     public static BytesReference serializeDiffClusterState(Diff diff, Version nodeVersion) throws IOException {
+        return serializeDiffClusterState(diff, nodeVersion, CompressorFactory.COMPRESSOR);
+    }
+
+    static BytesReference serializeDiffClusterState(Diff diff, Version nodeVersion, Compressor compressor) throws IOException {
         final BytesStreamOutput bStream = new BytesStreamOutput();
-        try (StreamOutput stream = CompressorFactory.COMPRESSOR.streamOutput(bStream)) {
+        try (StreamOutput stream = compressor.streamOutput(bStream)) {
             stream.setVersion(nodeVersion);
             stream.writeBoolean(false);
             diff.writeTo(stream);
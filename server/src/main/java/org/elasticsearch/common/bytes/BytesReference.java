@@ -79,7 +79,15 @@ public abstract class BytesReference implements Comparable<BytesReference>, ToXC
      * A stream input of the bytes.
      */
     public StreamInput streamInput() throws IOException {
-        return new MarkSupportingStreamInputWrapper(this);
+        return new MarkSupportingStreamInputWrapper(this, false);
+    }
+
+    /**
+     * Returns a stream input of these bytes whose {@link StreamInput#readBytesReference(int)} returns slices of this reference
+     * rather than copies. The bytes must not be released or modified as long as the slices that were read are in use.
+     */
+    public StreamInput slicingStreamInput() throws IOException {
+        return new MarkSupportingStreamInputWrapper(this, true);
     }
 
     /**
@@ -280,14 +288,27 @@ public abstract class BytesReference implements Comparable<BytesReference>, ToXC
     private static final class MarkSupportingStreamInputWrapper extends StreamInput {
         // can't use FilterStreamInput it needs to reset the delegate
         private final BytesReference reference;
+        private final boolean slicing;
         private BytesReferenceStreamInput input;
         private int mark = 0;
 
-        private MarkSupportingStreamInputWrapper(BytesReference reference) throws IOException {
+        private MarkSupportingStreamInputWrapper(BytesReference reference, boolean slicing) throws IOException {
             this.reference = reference;
+            this.slicing = slicing;
             this.input = new BytesReferenceStreamInput(reference.iterator(), reference.length());
         }
 
+        @Override
+        public BytesReference readBytesReference(int length) throws IOException {
+            if (slicing == false || length == 0) {
+                return super.readBytesReference(length);
+            }
+            input.ensureCanReadBytes(length);
+            BytesReference slice = reference.slice(input.getOffset(), length);
+            input.skip(length);
+            return slice;
+        }
+
         @Override
         public byte readByte() throws IOException {
             return input.readByte();
@@ -29,6 +29,8 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -52,17 +54,20 @@ import java.util.function.ToLongBiFunction;
  * if they are reading a segment that a writer is writing to).
  * <p>
  * The LRU functionality is backed by a single doubly-linked list chaining the entries in order of insertion. This
- * LRU list is protected by a lock that serializes all writes to it. There are opportunities for improvements
- * here if write throughput is a concern.
+ * LRU list is protected by a lock that serializes all writes to it. Reads don't take this lock: a cache hit records
+ * the entry in one of several striped, bounded read buffers and the recorded promotions are replayed in order by the
+ * thread that next holds the lock. A read only drains the buffers if it can acquire the lock without waiting, and a
+ * read that finds its buffer full or contended drops its promotion, so under heavy concurrent reads the LRU order is
+ * approximate. Expiration is not affected by dropped promotions since the access time of an entry is updated on
+ * every read. There are opportunities for improvements here if write throughput is a concern.
  * <ol>
  * <li>LRU list mutations could be inserted into a blocking queue that a single thread is reading from
  * and applying to the LRU list.</li>
- * <li>Promotions could be deferred for entries that were "recently" promoted.</li>
  * <li>Locks on the list could be taken per node being modified instead of globally.</li>
  * </ol>
  * <p>
- * Evictions only occur after a mutation to the cache (meaning an entry promotion, a cache insertion, or a manual
- * invalidation) or an explicit call to {@link #refresh()}.
+ * Evictions only occur after a mutation to the cache (meaning a drain of the read buffers, a cache insertion, or a
+ * manual invalidation) or an explicit call to {@link #refresh()}.
  *
  * @param <K> The type of the keys
  * @param <V> The type of the values
@@ -350,6 +355,74 @@ public class Cache<K, V> {
     // lock protecting mutations to the LRU list
     private final ReleasableLock lruLock = new ReleasableLock(new ReentrantLock());
 
+    // the number of read buffers, a power of two that is at least the number of processors
+    static final int NUMBER_OF_READ_BUFFERS = Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+    @SuppressWarnings("unchecked") private final ReadBuffer<K, V>[] readBuffers = new ReadBuffer[NUMBER_OF_READ_BUFFERS];
+
+    {
+        for (int i = 0; i < readBuffers.length; i++) {
+            readBuffers[i] = new ReadBuffer<>();
+        }
+    }
+
+    /**
+     * A bounded buffer of entries that were read since the last drain. Any thread can add entries to the buffer, but
+     * only the thread holding the LRU lock removes them.
+     *
+     * @param <K> the type of the keys
+     * @param <V> the type of the values
+     */
+    static final class ReadBuffer<K, V> {
+        static final int SIZE = 16;
+        static final int DRAIN_THRESHOLD = SIZE / 2;
+        private static final int MASK = SIZE - 1;
+
+        private final AtomicReferenceArray<Entry<K, V>> slots = new AtomicReferenceArray<>(SIZE);
+        private final AtomicLong writeCounter = new AtomicLong();
+        // only written while holding the LRU lock
+        private volatile long readCounter;
+
+        /**
+         * add an entry to the buffer; the entry is dropped if the buffer is full or another thread is concurrently adding to it
+         *
+         * @param entry the entry that was read
+         * @return true if the buffer should be drained
+         */
+        boolean offer(Entry<K, V> entry) {
+            final long tail = writeCounter.get();
+            final long pending = tail - readCounter;
+            if (pending >= SIZE) {
+                return true;
+            }
+            if (writeCounter.compareAndSet(tail, tail + 1)) {
+                slots.lazySet((int) (tail & MASK), entry);
+                return pending + 1 >= DRAIN_THRESHOLD;
+            }
+            return false;
+        }
+
+        /**
+         * remove the entries from the buffer in the order they were added
+         *
+         * @param consumer the callback for each removed entry
+         */
+        void drain(Consumer<Entry<K, V>> consumer) {
+            final long tail = writeCounter.get();
+            long head = readCounter;
+            for (; head < tail; head++) {
+                final int index = (int) (head & MASK);
+                final Entry<K, V> entry = slots.get(index);
+                if (entry == null) {
+                    // the slot was claimed but the entry is not published yet, it will be drained next time
+                    break;
+                }
+                slots.lazySet(index, null);
+                consumer.accept(entry);
+            }
+            readCounter = head;
+        }
+    }
+
     /**
      * Returns the value to which the specified key is mapped, or null if this map contains no mapping for the key.
      *
@@ -366,11 +439,38 @@ public class Cache<K, V> {
         if (entry == null) {
             return null;
         } else {
-            promote(entry, now);
+            afterRead(entry, now);
             return entry.value;
         }
     }
 
+    private void afterRead(Entry<K, V> entry, long now) {
+        final ReadBuffer<K, V> readBuffer = readBuffers[(int) Thread.currentThread().getId() & (NUMBER_OF_READ_BUFFERS - 1)];
+        if (readBuffer.offer(entry)) {
+            // never wait for the LRU lock on reads, whoever holds it will drain the buffers anyway
+            final ReleasableLock lock = lruLock.tryAcquire();
+            if (lock != null) {
+                try (ReleasableLock ignored = lock) {
+                    drainReadBuffers();
+                    evict(now);
+                }
+            }
+        }
+    }
+
+    private void drainReadBuffers() {
+        assert lruLock.isHeldByCurrentThread();
+
+        for (ReadBuffer<K, V> readBuffer : readBuffers) {
+            readBuffer.drain(entry -> {
+                // new entries are linked by the thread that added them, deleted entries must stay unlinked
+                if (entry.state == State.EXISTING) {
+                    relinkAtHead(entry);
+                }
+            });
+        }
+    }
+
     /**
      * If the specified key is not already associated with a value (or is mapped to null), attempts to compute its
      * value using the given mapping function and enters it into this map unless null. The load method for a given key
@@ -481,6 +581,10 @@ public class Cache<K, V> {
                 if (unlink(tuple.v2())) {
                     replaced = true;
                 }
+            } else if (tuple.v2() != null && tuple.v2().state == State.NEW) {
+                // the replaced entry is not linked yet, make sure that the concurrent put or load that added it doesn't link it
+                tuple.v2().state = State.DELETED;
+                replaced = true;
             }
             promote(tuple.v1(), now);
         }
@@ -541,6 +645,8 @@ public class Cache<K, V> {
                 haveSegmentLock[i] = true;
             }
             try (ReleasableLock ignored = lruLock.acquire()) {
+                // release the references to the entries that are about to be invalidated
+                drainReadBuffers();
                 h = head;
                 Arrays.stream(segments).forEach(segment -> segment.map = new HashMap<>());
                 Entry<K, V> current = head;
@@ -571,6 +677,7 @@ public class Cache<K, V> {
     public void refresh() {
         long now = now();
         try (ReleasableLock ignored = lruLock.acquire()) {
+            drainReadBuffers();
             evict(now);
         }
     }
@@ -729,6 +836,8 @@ public class Cache<K, V> {
     private boolean promote(Entry<K, V> entry, long now) {
         boolean promoted = true;
         try (ReleasableLock ignored = lruLock.acquire()) {
+            // replay the reads that happened before this promotion first to keep the LRU order
+            drainReadBuffers();
             switch (entry.state) {
                 case DELETED:
                     promoted = false;
@@ -0,0 +1,68 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.compress;
+
+import org.elasticsearch.Version;
+
+import java.util.Locale;
+
+/**
+ * The compression algorithms that can be used to compress data that is sent to other nodes. Compressed bytes are always
+ * detected by their header when they are read, so the scheme only needs to be picked when writing and must be supported by
+ * the version of the node that reads the bytes.
+ */
+public enum CompressionScheme {
+
+    DEFLATE(CompressorFactory.COMPRESSOR, Version.V_6_0_0),
+    LZ4(CompressorFactory.LZ4, Version.V_7_0_0);
+
+    private final Compressor compressor;
+    private final Version minimumVersion;
+
+    CompressionScheme(Compressor compressor, Version minimumVersion) {
+        this.compressor = compressor;
+        this.minimumVersion = minimumVersion;
+    }
+
+    public Compressor compressor() {
+        return compressor;
+    }
+
+    /**
+     * Returns the compressor of this scheme if a node of the provided version can read its output, or the
+     * {@link CompressorFactory#COMPRESSOR default compressor} otherwise.
+     */
+    public Compressor compressor(Version version) {
+        return version.onOrAfter(minimumVersion) ? compressor : DEFLATE.compressor;
+    }
+
+    public static CompressionScheme fromString(String scheme) {
+        try {
+            return valueOf(scheme.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown compression scheme [" + scheme + "], must be one of [deflate, lz4]");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
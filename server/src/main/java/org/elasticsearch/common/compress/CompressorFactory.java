@@ -28,11 +28,20 @@ import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.core.internal.io.Streams;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 public class CompressorFactory {
 
+    /** The default compressor, used to compress data that may be read by any node of the cluster. */
     public static final Compressor COMPRESSOR = new DeflateCompressor();
+    /** A faster compressor whose output can only be read by nodes that support {@link CompressionScheme#LZ4}. */
+    public static final Compressor LZ4 = new LZ4Compressor();
+
+    // all compressors that compressed bytes are checked against, compressors are identified by the header of their output
+    private static final List<Compressor> COMPRESSORS = Collections.unmodifiableList(Arrays.asList(COMPRESSOR, LZ4));
 
     public static boolean isCompressed(BytesReference bytes) {
         return compressor(bytes) != null;
@@ -40,13 +49,15 @@ public class CompressorFactory {
 
     @Nullable
     public static Compressor compressor(BytesReference bytes) {
-            if (COMPRESSOR.isCompressed(bytes)) {
+        for (Compressor compressor : COMPRESSORS) {
+            if (compressor.isCompressed(bytes)) {
                 // bytes should be either detected as compressed or as xcontent,
                 // if we have bytes that can be either detected as compressed or
                 // as a xcontent, we have a problem
                 assert XContentHelper.xContentType(bytes) == null;
-                return COMPRESSOR;
+                return compressor;
             }
+        }
 
         XContentType contentType = XContentHelper.xContentType(bytes);
         if (contentType == null) {
@@ -0,0 +1,434 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.compress;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.InputStreamStreamInput;
+import org.elasticsearch.common.io.stream.OutputStreamStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * {@link Compressor} implementation based on the LZ4 block format. LZ4 only looks for repetitions and doesn't entropy-code
+ * its output, so it compresses less than DEFLATE but is several times faster to compress and to decompress, which makes it
+ * a better fit for data that is compressed once and sent over a fast network.
+ *
+ * The stream is made of the header followed by independent blocks of up to {@link #BLOCK_SIZE} bytes, each block being
+ * written as its uncompressed length, a flag that tells whether it is compressed, and the compressed length and bytes if it
+ * is or the raw bytes otherwise. An uncompressed length of 0 marks the end of the stream.
+ */
+public class LZ4Compressor implements Compressor {
+
+    // An arbitrary header that we use to identify compressed streams
+    // It needs to be different from other compressors and to not be specific
+    // enough so that no stream starting with these bytes could be detected as
+    // a XContent
+    private static final byte[] HEADER = new byte[]{'L', 'Z', '4', '\0'};
+    // Blocks need to be small enough to be cheap to allocate and large enough
+    // for repetitions to be found, 64KB is also the maximum match distance of LZ4
+    static final int BLOCK_SIZE = 1 << 16;
+
+    private static final byte RAW_BLOCK = 0;
+    private static final byte COMPRESSED_BLOCK = 1;
+
+    @Override
+    public boolean isCompressed(BytesReference bytes) {
+        if (bytes.length() < HEADER.length) {
+            return false;
+        }
+        for (int i = 0; i < HEADER.length; ++i) {
+            if (bytes.get(i) != HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public StreamInput streamInput(StreamInput in) throws IOException {
+        final byte[] headerBytes = new byte[HEADER.length];
+        int len = 0;
+        while (len < headerBytes.length) {
+            final int read = in.read(headerBytes, len, headerBytes.length - len);
+            if (read == -1) {
+                break;
+            }
+            len += read;
+        }
+        if (len != HEADER.length || Arrays.equals(headerBytes, HEADER) == false) {
+            throw new IllegalArgumentException("Input stream is not compressed with LZ4!");
+        }
+        return new InputStreamStreamInput(new LZ4BlockInputStream(in));
+    }
+
+    @Override
+    public StreamOutput streamOutput(StreamOutput out) throws IOException {
+        out.writeBytes(HEADER);
+        return new OutputStreamStreamOutput(new LZ4BlockOutputStream(out));
+    }
+
+    /**
+     * Buffers writes and compresses them a block at a time. Flushing writes the pending bytes as a block so that whatever was
+     * written so far can be decompressed by the reader.
+     */
+    private static final class LZ4BlockOutputStream extends OutputStream {
+        private final StreamOutput out;
+        private final byte[] buffer = new byte[BLOCK_SIZE];
+        private final byte[] compressed = new byte[LZ4.maxCompressedLength(BLOCK_SIZE)];
+        private final int[] hashTable = new int[LZ4.HASH_TABLE_SIZE];
+        private int pending;
+        private boolean closed;
+
+        LZ4BlockOutputStream(StreamOutput out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (pending == buffer.length) {
+                writeBlock();
+            }
+            buffer[pending++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (pending == buffer.length) {
+                    writeBlock();
+                }
+                final int toCopy = Math.min(len, buffer.length - pending);
+                System.arraycopy(b, off, buffer, pending, toCopy);
+                pending += toCopy;
+                off += toCopy;
+                len -= toCopy;
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            if (pending == 0) {
+                return;
+            }
+            out.writeVInt(pending);
+            final int compressedLength = LZ4.compress(buffer, 0, pending, compressed, 0, hashTable);
+            if (compressedLength < pending) {
+                out.writeByte(COMPRESSED_BLOCK);
+                out.writeVInt(compressedLength);
+                out.writeBytes(compressed, 0, compressedLength);
+            } else {
+                // incompressible data, storing it as-is is smaller and faster to read
+                out.writeByte(RAW_BLOCK);
+                out.writeBytes(buffer, 0, pending);
+            }
+            pending = 0;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeBlock();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed == false) {
+                closed = true;
+                try {
+                    writeBlock();
+                    out.writeVInt(0);
+                } finally {
+                    out.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads and decompresses a block at a time.
+     */
+    private static final class LZ4BlockInputStream extends InputStream {
+        private final StreamInput in;
+        private byte[] buffer = new byte[0];
+        private byte[] compressed = new byte[0];
+        private int position;
+        private int length;
+        private boolean eof;
+
+        LZ4BlockInputStream(StreamInput in) {
+            this.in = in;
+        }
+
+        /**
+         * Reads the next block if the current one is exhausted, returns false if the end of the stream is reached.
+         */
+        private boolean ensureAvailable() throws IOException {
+            if (position < length) {
+                return true;
+            }
+            if (eof) {
+                return false;
+            }
+            final int uncompressedLength = in.readVInt();
+            if (uncompressedLength == 0) {
+                eof = true;
+                return false;
+            }
+            if (uncompressedLength < 0 || uncompressedLength > BLOCK_SIZE) {
+                throw new IOException("Invalid LZ4 block length [" + uncompressedLength + "]");
+            }
+            if (buffer.length < uncompressedLength) {
+                buffer = new byte[BLOCK_SIZE];
+            }
+            final byte type = in.readByte();
+            if (type == COMPRESSED_BLOCK) {
+                final int compressedLength = in.readVInt();
+                if (compressedLength < 0 || compressedLength > LZ4.maxCompressedLength(BLOCK_SIZE)) {
+                    throw new IOException("Invalid LZ4 compressed block length [" + compressedLength + "]");
+                }
+                if (compressed.length < compressedLength) {
+                    compressed = new byte[LZ4.maxCompressedLength(BLOCK_SIZE)];
+                }
+                in.readBytes(compressed, 0, compressedLength);
+                LZ4.decompress(compressed, 0, compressedLength, buffer, 0, uncompressedLength);
+            } else if (type == RAW_BLOCK) {
+                in.readBytes(buffer, 0, uncompressedLength);
+            } else {
+                throw new IOException("Invalid LZ4 block type [" + type + "]");
+            }
+            position = 0;
+            length = uncompressedLength;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (ensureAvailable() == false) {
+                return -1;
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            try {
+                if (ensureAvailable() == false) {
+                    return -1;
+                }
+            } catch (EOFException e) {
+                throw new EOFException("Unexpected end of LZ4 stream");
+            }
+            final int toCopy = Math.min(len, length - position);
+            System.arraycopy(buffer, position, b, off, toCopy);
+            position += toCopy;
+            return toCopy;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return length - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Compression and decompression of a single block in the LZ4 block format: a sequence of literals followed by a match,
+     * ie. a copy of bytes that occurred earlier, at most 64KB before. Matches are found through a hash table of the positions
+     * of the last occurrences of 4-bytes sequences.
+     */
+    static final class LZ4 {
+
+        private static final int MIN_MATCH = 4;
+        private static final int HASH_LOG = 14;
+        static final int HASH_TABLE_SIZE = 1 << HASH_LOG;
+        private static final int MAX_DISTANCE = (1 << 16) - 1;
+        // the last 5 bytes are always literals and the last match must start 12 bytes before the end of the block
+        private static final int LAST_LITERALS = 5;
+        private static final int MF_LIMIT = 12;
+
+        private LZ4() {}
+
+        static int maxCompressedLength(int length) {
+            return length + length / 255 + 16;
+        }
+
+        private static int readInt(byte[] bytes, int offset) {
+            return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+        }
+
+        private static int hash(int i) {
+            return (i * -1640531535) >>> (32 - HASH_LOG);
+        }
+
+        /**
+         * Compresses <code>src[srcOff:srcOff+srcLen]</code> into <code>dest</code>, which must have room for
+         * {@link #maxCompressedLength(int)} bytes, and returns the number of bytes written.
+         */
+        static int compress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff, int[] hashTable) {
+            final int srcEnd = srcOff + srcLen;
+            int anchor = srcOff;
+            int destPos = destOff;
+            if (srcLen > MF_LIMIT) {
+                Arrays.fill(hashTable, -1);
+                final int matchLimit = srcEnd - LAST_LITERALS;
+                final int limit = srcEnd - MF_LIMIT;
+                int pos = srcOff;
+                while (pos <= limit) {
+                    final int value = readInt(src, pos);
+                    final int h = hash(value);
+                    int ref = hashTable[h];
+                    hashTable[h] = pos;
+                    if (ref == -1 || pos - ref > MAX_DISTANCE || readInt(src, ref) != value) {
+                        pos++;
+                        continue;
+                    }
+                    // extend the match backwards over the pending literals, then forwards
+                    while (pos > anchor && ref > srcOff && src[pos - 1] == src[ref - 1]) {
+                        pos--;
+                        ref--;
+                    }
+                    int matchLength = MIN_MATCH;
+                    while (pos + matchLength < matchLimit && src[ref + matchLength] == src[pos + matchLength]) {
+                        matchLength++;
+                    }
+                    destPos = writeSequence(src, anchor, pos - anchor, pos - ref, matchLength, dest, destPos);
+                    pos += matchLength;
+                    anchor = pos;
+                }
+            }
+            destPos = writeLiterals(src, anchor, srcEnd - anchor, dest, destPos);
+            return destPos - destOff;
+        }
+
+        private static int writeLength(int length, byte[] dest, int destPos) {
+            while (length >= 0xFF) {
+                dest[destPos++] = (byte) 0xFF;
+                length -= 0xFF;
+            }
+            dest[destPos++] = (byte) length;
+            return destPos;
+        }
+
+        private static int writeSequence(byte[] src, int literalsOff, int literalsLength, int offset, int matchLength,
+                                         byte[] dest, int destPos) {
+            final int tokenPos = destPos;
+            destPos = writeLiterals(src, literalsOff, literalsLength, dest, destPos);
+            dest[destPos++] = (byte) offset;
+            dest[destPos++] = (byte) (offset >>> 8);
+            final int extraMatchLength = matchLength - MIN_MATCH;
+            if (extraMatchLength >= 0x0F) {
+                dest[tokenPos] |= 0x0F;
+                destPos = writeLength(extraMatchLength - 0x0F, dest, destPos);
+            } else {
+                dest[tokenPos] |= extraMatchLength;
+            }
+            return destPos;
+        }
+
+        private static int writeLiterals(byte[] src, int literalsOff, int literalsLength, byte[] dest, int destPos) {
+            final int tokenPos = destPos++;
+            if (literalsLength >= 0x0F) {
+                dest[tokenPos] = (byte) 0xF0;
+                destPos = writeLength(literalsLength - 0x0F, dest, destPos);
+            } else {
+                dest[tokenPos] = (byte) (literalsLength << 4);
+            }
+            System.arraycopy(src, literalsOff, dest, destPos, literalsLength);
+            return destPos + literalsLength;
+        }
+
+        /**
+         * Decompresses <code>src[srcOff:srcOff+srcLen]</code>, which must decompress to exactly <code>destLen</code> bytes,
+         * into <code>dest</code>.
+         */
+        static void decompress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff, int destLen) throws IOException {
+            final int srcEnd = srcOff + srcLen;
+            final int destEnd = destOff + destLen;
+            int srcPos = srcOff;
+            int destPos = destOff;
+            try {
+                while (true) {
+                    final int token = src[srcPos++] & 0xFF;
+                    int literalsLength = token >>> 4;
+                    if (literalsLength == 0x0F) {
+                        int b;
+                        do {
+                            b = src[srcPos++] & 0xFF;
+                            literalsLength += b;
+                        } while (b == 0xFF);
+                    }
+                    if (literalsLength > srcEnd - srcPos || literalsLength > destEnd - destPos) {
+                        throw new IOException("Corrupted LZ4 block: literals overflow");
+                    }
+                    System.arraycopy(src, srcPos, dest, destPos, literalsLength);
+                    srcPos += literalsLength;
+                    destPos += literalsLength;
+                    if (srcPos == srcEnd) {
+                        // the last sequence only has literals
+                        break;
+                    }
+
+                    final int offset = (src[srcPos] & 0xFF) | ((src[srcPos + 1] & 0xFF) << 8);
+                    srcPos += 2;
+                    int matchLength = token & 0x0F;
+                    if (matchLength == 0x0F) {
+                        int b;
+                        do {
+                            b = src[srcPos++] & 0xFF;
+                            matchLength += b;
+                        } while (b == 0xFF);
+                    }
+                    matchLength += MIN_MATCH;
+                    final int ref = destPos - offset;
+                    if (offset == 0 || ref < destOff || matchLength > destEnd - destPos) {
+                        throw new IOException("Corrupted LZ4 block: invalid match");
+                    }
+                    if (offset >= matchLength) {
+                        System.arraycopy(dest, ref, dest, destPos, matchLength);
+                    } else {
+                        // overlapping copy, which repeats the last offset bytes
+                        for (int i = 0; i < matchLength; i++) {
+                            dest[destPos + i] = dest[ref + i];
+                        }
+                    }
+                    destPos += matchLength;
+                }
+            } catch (ArrayIndexOutOfBoundsException e) {
+                throw new IOException("Corrupted LZ4 block", e);
+            }
+            if (destPos != destEnd) {
+                throw new IOException("Corrupted LZ4 block: expected [" + destLen + "] bytes but got [" + (destPos - destOff) + "]");
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.lucene.uid;
+
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.hash.MurmurHash3;
+
+import java.io.IOException;
+
+/**
+ * A bloom filter over the terms of the uid field of a single segment. It never returns a false negative, so a lookup of an id
+ * that the filter reports as absent can skip the terms dictionary of the segment entirely. With {@link #BITS_PER_TERM} bits
+ * per term and {@link #NUM_HASHES} hash functions the false positive probability is a bit less than 1%.
+ */
+public final class IdBloomFilter implements Accountable {
+
+    static final int BITS_PER_TERM = 10;
+    static final int NUM_HASHES = 7;
+    private static final long SEED = 0x5DEECE66DL;
+
+    private final long[] bits;
+    private final long numBits;
+    private final MurmurHash3.Hash128 hash = new MurmurHash3.Hash128();
+
+    private IdBloomFilter(long numBits) {
+        this.numBits = numBits;
+        this.bits = new long[Math.toIntExact((numBits + 63) >>> 6)];
+    }
+
+    /**
+     * Builds a filter from all the terms of the given uid terms.
+     * @param terms the terms of the uid field of a segment
+     * @param maxNumTerms an upper bound of the number of terms, used if the terms don't know their size
+     */
+    public static IdBloomFilter build(Terms terms, long maxNumTerms) throws IOException {
+        final long size = terms.size();
+        final long numTerms = size == -1 ? maxNumTerms : size;
+        final IdBloomFilter filter = new IdBloomFilter(Math.max(Long.SIZE, numTerms * BITS_PER_TERM));
+        final TermsEnum termsEnum = terms.iterator();
+        for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+            filter.add(term);
+        }
+        return filter;
+    }
+
+    private void add(BytesRef term) {
+        MurmurHash3.hash128(term.bytes, term.offset, term.length, SEED, hash);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            final long bit = Math.floorMod(hash.h1 + i * hash.h2, numBits);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Returns <code>false</code> if the segment doesn't contain the given id, and <code>true</code> if it might contain it.
+     * This method is thread-safe.
+     */
+    public boolean mightContain(BytesRef id) {
+        final MurmurHash3.Hash128 hash = MurmurHash3.hash128(id.bytes, id.offset, id.length, SEED, new MurmurHash3.Hash128());
+        for (int i = 0; i < NUM_HASHES; i++) {
+            final long bit = Math.floorMod(hash.h1 + i * hash.h2, numBits);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        return RamUsageEstimator.shallowSizeOfInstance(IdBloomFilter.class) + RamUsageEstimator.sizeOf(bits);
+    }
+}
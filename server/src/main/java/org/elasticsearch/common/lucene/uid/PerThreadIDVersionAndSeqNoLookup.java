@@ -59,6 +59,9 @@ final class PerThreadIDVersionAndSeqNoLookup {
     /** Reused for iteration (when the term exists) */
     private PostingsEnum docsEnum;
 
+    /** membership filter of the uid terms, if it has been loaded for this segment */
+    private final IdBloomFilter idFilter;
+
     /** used for assertions to make sure class usage meets assumptions */
     private final Object readerKey;
 
@@ -83,6 +86,7 @@ final class PerThreadIDVersionAndSeqNoLookup {
         if (reader.getNumericDocValues(VersionFieldMapper.NAME) == null) {
             throw new IllegalArgumentException("reader misses the [" + VersionFieldMapper.NAME + "] field; _uid terms [" + terms + "]");
         }
+        idFilter = VersionsAndSeqNoResolver.getIdFilter(reader);
         Object readerKey = null;
         assert (readerKey = reader.getCoreCacheHelper().getKey()) != null;
         this.readerKey = readerKey;
@@ -141,7 +145,7 @@ final class PerThreadIDVersionAndSeqNoLookup {
      * */
     private int getDocID(BytesRef id, Bits liveDocs) throws IOException {
         // termsEnum can possibly be null here if this leaf contains only no-ops.
-        if (termsEnum != null && termsEnum.seekExact(id)) {
+        if (termsEnum != null && mightContain(id) && termsEnum.seekExact(id)) {
             int docID = DocIdSetIterator.NO_MORE_DOCS;
             // there may be more than one matching docID, in the case of nested docs, so we want the last one:
             docsEnum = termsEnum.postings(docsEnum, 0);
@@ -157,12 +161,17 @@ final class PerThreadIDVersionAndSeqNoLookup {
         }
     }
 
+    /** Returns false if the id is known not to be in this segment, which saves a lookup in the terms dictionary. */
+    private boolean mightContain(BytesRef id) {
+        return idFilter == null || idFilter.mightContain(id);
+    }
+
     /** Return null if id is not found. */
     DocIdAndSeqNo lookupSeqNo(BytesRef id, LeafReaderContext context) throws IOException {
         assert context.reader().getCoreCacheHelper().getKey().equals(readerKey) :
             "context's reader is not the same as the reader class was initialized on.";
         // termsEnum can possibly be null here if this leaf contains only no-ops.
-        if (termsEnum != null && termsEnum.seekExact(id)) {
+        if (termsEnum != null && mightContain(id) && termsEnum.seekExact(id)) {
             docsEnum = termsEnum.postings(docsEnum, 0);
             final Bits liveDocs = context.reader().getLiveDocs();
             DocIdAndSeqNo result = null;
@@ -23,6 +23,7 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
 import org.apache.lucene.util.CloseableThreadLocal;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 
@@ -45,6 +46,49 @@ public final class VersionsAndSeqNoResolver {
         }
     };
 
+    static final ConcurrentMap<IndexReader.CacheKey, IdBloomFilter> idFilters =
+        ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency();
+
+    // Evict this segment's core from idFilters once it's closed:
+    private static final IndexReader.ClosedListener removeIdFilter = idFilters::remove;
+
+    /**
+     * Loads the {@link IdBloomFilter} of the given segment, building it if it doesn't exist yet. Filters are shared by all
+     * readers of the same segment core and are used to skip segments that can't contain an id when resolving versions and
+     * sequence numbers. Returns <code>null</code> if the segment has no uid terms or can't be cached.
+     */
+    public static IdBloomFilter loadIdFilter(LeafReader reader, String uidField) throws IOException {
+        final IndexReader.CacheHelper cacheHelper = reader.getCoreCacheHelper();
+        if (cacheHelper == null) {
+            return null;
+        }
+        IdBloomFilter filter = idFilters.get(cacheHelper.getKey());
+        if (filter == null) {
+            final Terms terms = reader.terms(uidField);
+            if (terms == null) {
+                return null;
+            }
+            // building the filter might take a while on large segments, we don't want to do this while holding a lock of the map
+            filter = IdBloomFilter.build(terms, reader.maxDoc());
+            IdBloomFilter other = idFilters.putIfAbsent(cacheHelper.getKey(), filter);
+            if (other == null) {
+                // Our filter won, we must remove it when the segment is closed:
+                cacheHelper.addClosedListener(removeIdFilter);
+            } else {
+                filter = other;
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Returns the {@link IdBloomFilter} of the given segment if it has been loaded, <code>null</code> otherwise.
+     */
+    public static IdBloomFilter getIdFilter(LeafReader reader) {
+        final IndexReader.CacheHelper cacheHelper = reader.getCoreCacheHelper();
+        return cacheHelper == null ? null : idFilters.get(cacheHelper.getKey());
+    }
+
     private static PerThreadIDVersionAndSeqNoLookup[] getLookupState(IndexReader reader, String uidField) throws IOException {
         // We cache on the top level
         // This means cache entries have a shorter lifetime, maybe as low as 1s with the
@@ -32,6 +32,7 @@ import org.elasticsearch.index.MergePolicyConfig;
 import org.elasticsearch.index.MergeSchedulerConfig;
 import org.elasticsearch.index.SearchSlowLog;
 import org.elasticsearch.index.cache.bitset.BitsetFilterCache;
+import org.elasticsearch.index.cache.rollup.SegmentRollupCache;
 import org.elasticsearch.index.engine.EngineConfig;
 import org.elasticsearch.index.fielddata.IndexFieldDataService;
 import org.elasticsearch.index.mapper.FieldMapper;
@@ -133,7 +134,12 @@ public final class IndexScopedSettings extends AbstractScopedSettings {
         IndexSettings.INDEX_GC_DELETES_SETTING,
         IndexSettings.INDEX_SOFT_DELETES_SETTING,
         IndexSettings.INDEX_SOFT_DELETES_RETENTION_OPERATIONS_SETTING,
+        IndexSettings.INDEX_ID_BLOOM_FILTER_SETTING,
+        IndexSettings.INDEX_PAGED_VERSION_MAP_SETTING,
+        IndexSettings.INDEX_INCREMENTAL_GLOBAL_ORDINALS_SETTING,
+        IndexSettings.INDEX_TRANSLOG_MMAP_SETTING,
         IndicesRequestCache.INDEX_CACHE_REQUEST_ENABLED_SETTING,
+        IndicesRequestCache.INDEX_CACHE_REQUEST_SEGMENT_AGGREGATIONS_SETTING,
         UnassignedInfo.INDEX_DELAYED_NODE_LEFT_TIMEOUT_SETTING,
         EnableAllocationDecider.INDEX_ROUTING_REBALANCE_ENABLE_SETTING,
         EnableAllocationDecider.INDEX_ROUTING_ALLOCATION_ENABLE_SETTING,
@@ -153,6 +159,12 @@ public final class IndexScopedSettings extends AbstractScopedSettings {
         MapperService.INDEX_MAPPING_TOTAL_FIELDS_LIMIT_SETTING,
         MapperService.INDEX_MAPPING_DEPTH_LIMIT_SETTING,
         BitsetFilterCache.INDEX_LOAD_RANDOM_ACCESS_FILTERS_EAGERLY_SETTING,
+        BitsetFilterCache.INDEX_OFF_HEAP_FIXED_BITSET_FILTERS_SETTING,
+        SegmentRollupCache.INDEX_SEGMENT_ROLLUP_DATE_FIELD_SETTING,
+        SegmentRollupCache.INDEX_SEGMENT_ROLLUP_INTERVAL_SETTING,
+        SegmentRollupCache.INDEX_SEGMENT_ROLLUP_METRICS_SETTING,
+        SegmentRollupCache.INDEX_SEGMENT_ROLLUP_MAX_ROWS_SETTING,
+        SegmentRollupCache.INDEX_SEGMENT_ROLLUP_CACHE_SIZE_SETTING,
         IndexModule.INDEX_STORE_TYPE_SETTING,
         IndexModule.INDEX_STORE_PRE_LOAD_SETTING,
         IndexModule.INDEX_QUERY_CACHE_ENABLED_SETTING,
@@ -31,6 +31,7 @@ import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.routing.ShardRouting;
 import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.breaker.CircuitBreaker;
 import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
 import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.settings.Setting;
@@ -49,6 +50,8 @@ import org.elasticsearch.index.analysis.AnalysisRegistry;
 import org.elasticsearch.index.analysis.IndexAnalyzers;
 import org.elasticsearch.index.cache.IndexCache;
 import org.elasticsearch.index.cache.bitset.BitsetFilterCache;
+import org.elasticsearch.index.cache.bitset.OffHeapFixedBitSet;
+import org.elasticsearch.index.cache.rollup.SegmentRollupCache;
 import org.elasticsearch.index.cache.query.QueryCache;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.engine.EngineFactory;
@@ -70,11 +73,13 @@ import org.elasticsearch.index.store.DirectoryService;
 import org.elasticsearch.index.store.IndexStore;
 import org.elasticsearch.index.store.Store;
 import org.elasticsearch.index.translog.Translog;
+import org.elasticsearch.indices.TranslogGroupCommitService;
 import org.elasticsearch.indices.breaker.CircuitBreakerService;
 import org.elasticsearch.indices.cluster.IndicesClusterStateService;
 import org.elasticsearch.indices.fielddata.cache.IndicesFieldDataCache;
 import org.elasticsearch.indices.mapper.MapperRegistry;
 import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeSpillCache;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.Closeable;
@@ -132,6 +137,7 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
     private final ScriptService scriptService;
     private final Client client;
     private final CircuitBreakerService circuitBreakerService;
+    private final TranslogGroupCommitService translogGroupCommitService;
     private Supplier<Sort> indexSortSupplier;
 
     public IndexService(
@@ -155,13 +161,16 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
             IndicesFieldDataCache indicesFieldDataCache,
             List<SearchOperationListener> searchOperationListeners,
             List<IndexingOperationListener> indexingOperationListeners,
-            NamedWriteableRegistry namedWriteableRegistry) throws IOException {
+            NamedWriteableRegistry namedWriteableRegistry,
+            TranslogGroupCommitService translogGroupCommitService,
+            CompositeSpillCache compositeSpillCache) throws IOException {
         super(indexSettings);
         this.indexSettings = indexSettings;
         this.xContentRegistry = xContentRegistry;
         this.similarityService = similarityService;
         this.namedWriteableRegistry = namedWriteableRegistry;
         this.circuitBreakerService = circuitBreakerService;
+        this.translogGroupCommitService = translogGroupCommitService;
         this.mapperService = new MapperService(indexSettings, registry.build(indexSettings), xContentRegistry, similarityService,
             mapperRegistry,
             // we parse all percolator queries as they would be parsed on shard 0
@@ -186,9 +195,13 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
         this.nodeEnv = nodeEnv;
         this.indexStore = indexStore;
         indexFieldData.setListener(new FieldDataCacheListener(this));
-        this.bitsetFilterCache = new BitsetFilterCache(indexSettings, new BitsetCacheListener(this));
-        this.warmer = new IndexWarmer(threadPool, indexFieldData, bitsetFilterCache.createListener(threadPool));
-        this.indexCache = new IndexCache(indexSettings, queryCache, bitsetFilterCache);
+        this.bitsetFilterCache = new BitsetFilterCache(indexSettings, new BitsetCacheListener(this),
+            circuitBreakerService.getBreaker(CircuitBreaker.ACCOUNTING));
+        final SegmentRollupCache segmentRollupCache =
+            new SegmentRollupCache(indexSettings, mapperService, indexFieldData::getForField, circuitBreakerService);
+        this.warmer = new IndexWarmer(threadPool, indexFieldData, bitsetFilterCache.createListener(threadPool),
+            segmentRollupCache.createListener(threadPool));
+        this.indexCache = new IndexCache(indexSettings, queryCache, bitsetFilterCache, segmentRollupCache, compositeSpillCache);
         this.engineFactory = Objects.requireNonNull(engineFactory);
         // initialize this last -- otherwise if the wrapper requires any other member to be non-null we fail with an NPE
         this.searcherWrapper = wrapperFactory.newWrapper(this);
@@ -386,7 +399,7 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
                 indexCache, mapperService, similarityService, engineFactory,
                 eventListener, searcherWrapper, threadPool, bigArrays, engineWarmer,
                 searchOperationListeners, indexingOperationListeners, () -> globalCheckpointSyncer.accept(shardId),
-                circuitBreakerService);
+                circuitBreakerService, translogGroupCommitService);
             eventListener.indexShardStateChanged(indexShard, null, indexShard.state(), "shard created");
             eventListener.afterIndexShardCreated(indexShard);
             shards = newMapBuilder(shards).put(shardId.id(), indexShard).immutableMap();
@@ -567,7 +580,7 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
                 final IndexShard shard = indexService.getShardOrNull(shardId.id());
                 if (shard != null) {
                     long ramBytesUsed = accountable != null ? accountable.ramBytesUsed() : 0L;
-                    shard.shardBitsetFilterCache().onCached(ramBytesUsed);
+                    shard.shardBitsetFilterCache().onCached(ramBytesUsed, offHeapBytesUsed(accountable));
                 }
             }
         }
@@ -578,10 +591,14 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
                 final IndexShard shard = indexService.getShardOrNull(shardId.id());
                 if (shard != null) {
                     long ramBytesUsed = accountable != null ? accountable.ramBytesUsed() : 0L;
-                    shard.shardBitsetFilterCache().onRemoval(ramBytesUsed);
+                    shard.shardBitsetFilterCache().onRemoval(ramBytesUsed, offHeapBytesUsed(accountable));
                 }
             }
         }
+
+        private static long offHeapBytesUsed(Accountable accountable) {
+            return accountable instanceof OffHeapFixedBitSet ? ((OffHeapFixedBitSet) accountable).offHeapBytesUsed() : 0L;
+        }
     }
 
     private final class FieldDataCacheListener implements IndexFieldDataCache.Listener {
@@ -204,6 +204,13 @@ public final class IndexSettings {
         Setting.timeSetting("index.translog.retention.age", TimeValue.timeValueHours(12), TimeValue.timeValueMillis(-1),
             Property.Dynamic, Property.IndexScope);
 
+    /**
+     * Specifies if translog generations that are no longer written to should be memory mapped so that snapshots used by
+     * peer recoveries and operation based replays read them without a system call per operation.
+     */
+    public static final Setting<Boolean> INDEX_TRANSLOG_MMAP_SETTING =
+        Setting.boolSetting("index.translog.mmap", false, Property.IndexScope);
+
     /**
      * Controls how many translog files that are no longer needed for persistence reasons
      * will be kept around before being deleted. Keeping more files is useful to increase
@@ -247,6 +254,27 @@ public final class IndexSettings {
     public static final Setting<Boolean> INDEX_SOFT_DELETES_SETTING =
         Setting.boolSetting("index.soft_deletes.enabled", true, Property.IndexScope, Property.Final);
 
+    /**
+     * Specifies if a bloom filter of the document ids should be kept in memory for every segment so that id lookups for
+     * updates and realtime gets can skip segments that don't contain the id.
+     */
+    public static final Setting<Boolean> INDEX_ID_BLOOM_FILTER_SETTING =
+        Setting.boolSetting("index.id_bloom_filter.enabled", false, Property.IndexScope);
+
+    /**
+     * Specifies if the live version map should keep the versions of recently indexed documents in paged primitive arrays
+     * rather than in a hash map of objects, which reduces the garbage created by update-heavy workloads.
+     */
+    public static final Setting<Boolean> INDEX_PAGED_VERSION_MAP_SETTING =
+        Setting.boolSetting("index.version_map.paged", false, Property.IndexScope);
+
+    /**
+     * Specifies if the global ordinals of a shard should be built incrementally from the global ordinals of the previous reader
+     * when a refresh only added segments, instead of being rebuilt from scratch.
+     */
+    public static final Setting<Boolean> INDEX_INCREMENTAL_GLOBAL_ORDINALS_SETTING =
+        Setting.boolSetting("index.global_ordinals.incremental", false, Property.IndexScope);
+
     /**
      * Controls how many soft-deleted documents will be kept around before being merged away. Keeping more deleted
      * documents increases the chance of operation-based recoveries and allows querying a longer history of documents.
@@ -315,6 +343,10 @@ public final class IndexSettings {
     private final IndexScopedSettings scopedSettings;
     private long gcDeletesInMillis = DEFAULT_GC_DELETES.millis();
     private final boolean softDeleteEnabled;
+    private final boolean idBloomFilterEnabled;
+    private final boolean pagedVersionMapEnabled;
+    private final boolean incrementalGlobalOrdinalsEnabled;
+    private final boolean translogMMapEnabled;
     private volatile long softDeleteRetentionOperations;
     private volatile boolean warmerEnabled;
     private volatile int maxResultWindow;
@@ -430,6 +462,10 @@ public final class IndexSettings {
         mergeSchedulerConfig = new MergeSchedulerConfig(this);
         gcDeletesInMillis = scopedSettings.get(INDEX_GC_DELETES_SETTING).getMillis();
         softDeleteEnabled = version.onOrAfter(Version.V_6_5_0) && scopedSettings.get(INDEX_SOFT_DELETES_SETTING);
+        idBloomFilterEnabled = scopedSettings.get(INDEX_ID_BLOOM_FILTER_SETTING);
+        pagedVersionMapEnabled = scopedSettings.get(INDEX_PAGED_VERSION_MAP_SETTING);
+        incrementalGlobalOrdinalsEnabled = scopedSettings.get(INDEX_INCREMENTAL_GLOBAL_ORDINALS_SETTING);
+        translogMMapEnabled = scopedSettings.get(INDEX_TRANSLOG_MMAP_SETTING);
         softDeleteRetentionOperations = scopedSettings.get(INDEX_SOFT_DELETES_RETENTION_OPERATIONS_SETTING);
         warmerEnabled = scopedSettings.get(INDEX_WARMER_ENABLED_SETTING);
         maxResultWindow = scopedSettings.get(MAX_RESULT_WINDOW_SETTING);
@@ -904,6 +940,34 @@ public final class IndexSettings {
         return softDeleteEnabled;
     }
 
+    /**
+     * Returns <code>true</code> if the segments of this index keep a bloom filter of their document ids.
+     */
+    public boolean isIdBloomFilterEnabled() {
+        return idBloomFilterEnabled;
+    }
+
+    /**
+     * Returns <code>true</code> if the live version map of the shards of this index uses paged primitive arrays.
+     */
+    public boolean isPagedVersionMapEnabled() {
+        return pagedVersionMapEnabled;
+    }
+
+    /**
+     * Returns <code>true</code> if the global ordinals of the shards of this index are built incrementally on refresh.
+     */
+    public boolean isIncrementalGlobalOrdinalsEnabled() {
+        return incrementalGlobalOrdinalsEnabled;
+    }
+
+    /**
+     * Returns <code>true</code> if the translog generations of the shards of this index are memory mapped once they are complete.
+     */
+    public boolean isTranslogMMapEnabled() {
+        return translogMMapEnabled;
+    }
+
     private void setSoftDeleteRetentionOperations(long ops) {
         this.softDeleteRetentionOperations = ops;
     }
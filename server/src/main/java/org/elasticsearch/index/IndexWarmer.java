@@ -23,6 +23,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.message.ParameterizedMessage;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.fielddata.IndexFieldData;
@@ -53,6 +54,7 @@ public final class IndexWarmer {
         ArrayList<Listener> list = new ArrayList<>();
         final Executor executor = threadPool.executor(ThreadPool.Names.WARMER);
         list.add(new FieldDataWarmer(executor, indexFieldDataService));
+        list.add(new SegmentFieldDataWarmer(executor, indexFieldDataService));
 
         Collections.addAll(list, listeners);
         this.listeners = Collections.unmodifiableList(list);
@@ -159,4 +161,54 @@ public final class IndexWarmer {
         }
     }
 
+    /**
+     * Loads the per-segment field data of the fields that ask for it with {@link MappedFieldType#eagerFieldData()}, one task per
+     * field and segment. Segments whose field data is already cached are skipped by the field data cache.
+     */
+    private static class SegmentFieldDataWarmer implements IndexWarmer.Listener {
+
+        private final Executor executor;
+        private final IndexFieldDataService indexFieldDataService;
+
+        SegmentFieldDataWarmer(Executor executor, IndexFieldDataService indexFieldDataService) {
+            this.executor = executor;
+            this.indexFieldDataService = indexFieldDataService;
+        }
+
+        @Override
+        public TerminationHandle warmReader(final IndexShard indexShard, final Engine.Searcher searcher) {
+            final List<MappedFieldType> warmUpFieldData = new ArrayList<>();
+            for (MappedFieldType fieldType : indexShard.mapperService().fieldTypes()) {
+                if (fieldType.eagerFieldData()) {
+                    warmUpFieldData.add(fieldType);
+                }
+            }
+            final List<LeafReaderContext> leaves = searcher.reader().leaves();
+            final CountDownLatch latch = new CountDownLatch(warmUpFieldData.size() * leaves.size());
+            for (final MappedFieldType fieldType : warmUpFieldData) {
+                for (final LeafReaderContext ctx : leaves) {
+                    executor.execute(() -> {
+                        try {
+                            final long start = System.nanoTime();
+                            indexFieldDataService.getForField(fieldType).load(ctx);
+                            if (indexShard.warmerService().logger().isTraceEnabled()) {
+                                indexShard.warmerService().logger().trace(
+                                    "warmed field data for [{}], took [{}]",
+                                    fieldType.name(),
+                                    TimeValue.timeValueNanos(System.nanoTime() - start));
+                            }
+                        } catch (Exception e) {
+                            indexShard
+                                .warmerService()
+                                .logger()
+                                .warn(() -> new ParameterizedMessage("failed to warm-up field data for [{}]", fieldType.name()), e);
+                        } finally {
+                            latch.countDown();
+                        }
+                    });
+                }
+            }
+            return () -> latch.await();
+        }
+    }
 }
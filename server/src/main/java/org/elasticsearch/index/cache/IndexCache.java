@@ -24,6 +24,8 @@ import org.elasticsearch.index.AbstractIndexComponent;
 import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.cache.bitset.BitsetFilterCache;
 import org.elasticsearch.index.cache.query.QueryCache;
+import org.elasticsearch.index.cache.rollup.SegmentRollupCache;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeSpillCache;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -32,11 +34,16 @@ public class IndexCache extends AbstractIndexComponent implements Closeable {
 
     private final QueryCache queryCache;
     private final BitsetFilterCache bitsetFilterCache;
+    private final SegmentRollupCache segmentRollupCache;
+    private final CompositeSpillCache compositeSpillCache;
 
-    public IndexCache(IndexSettings indexSettings, QueryCache queryCache, BitsetFilterCache bitsetFilterCache) {
+    public IndexCache(IndexSettings indexSettings, QueryCache queryCache, BitsetFilterCache bitsetFilterCache,
+                      SegmentRollupCache segmentRollupCache, CompositeSpillCache compositeSpillCache) {
         super(indexSettings);
         this.queryCache = queryCache;
         this.bitsetFilterCache = bitsetFilterCache;
+        this.segmentRollupCache = segmentRollupCache;
+        this.compositeSpillCache = compositeSpillCache;
     }
 
     public QueryCache query() {
@@ -50,9 +57,23 @@ public class IndexCache extends AbstractIndexComponent implements Closeable {
         return bitsetFilterCache;
     }
 
+    /**
+     * Return the {@link SegmentRollupCache} for this index.
+     */
+    public SegmentRollupCache segmentRollupCache() {
+        return segmentRollupCache;
+    }
+
+    /**
+     * Return the {@link CompositeSpillCache} of the node, which is shared by all indices and not closed with this cache.
+     */
+    public CompositeSpillCache compositeSpillCache() {
+        return compositeSpillCache;
+    }
+
     @Override
     public void close() throws IOException {
-        IOUtils.close(queryCache, bitsetFilterCache);
+        IOUtils.close(queryCache, bitsetFilterCache, segmentRollupCache);
     }
 
     public void clear(String reason) {
@@ -24,6 +24,7 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexReaderContext;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreMode;
@@ -34,6 +35,8 @@ import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.BitDocIdSet;
 import org.apache.lucene.util.BitSet;
 import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.NoopCircuitBreaker;
 import org.elasticsearch.common.cache.Cache;
 import org.elasticsearch.common.cache.CacheBuilder;
 import org.elasticsearch.common.cache.RemovalListener;
@@ -76,17 +79,37 @@ public final class BitsetFilterCache extends AbstractIndexComponent
 
     public static final Setting<Boolean> INDEX_LOAD_RANDOM_ACCESS_FILTERS_EAGERLY_SETTING =
         Setting.boolSetting("index.load_fixed_bitset_filters_eagerly", true, Property.IndexScope);
+    /**
+     * Whether dense bitsets are kept in direct memory rather than on the heap. Sparse bitsets always stay on the heap since
+     * they are compressed.
+     */
+    public static final Setting<Boolean> INDEX_OFF_HEAP_FIXED_BITSET_FILTERS_SETTING =
+        Setting.boolSetting("index.fixed_bitset_filters.off_heap", false, Property.IndexScope);
+
+    // the direct memory that is kept for the off heap bitsets of new segments once the segments they were built for are closed
+    private static final int MAX_FREE_PAGES = (16 * 1024 * 1024) / DirectPagePool.PAGE_SIZE_IN_BYTES;
 
     private final boolean loadRandomAccessFiltersEagerly;
+    // null if bitsets are kept on heap
+    private final DirectPagePool pagePool;
     private final Cache<IndexReader.CacheKey, Cache<Query, Value>> loadedFilters;
     private final Listener listener;
 
     public BitsetFilterCache(IndexSettings indexSettings, Listener listener) {
+        this(indexSettings, listener, new NoopCircuitBreaker(CircuitBreaker.ACCOUNTING));
+    }
+
+    /**
+     * @param breaker the breaker that accounts for the direct memory of off heap bitsets
+     */
+    public BitsetFilterCache(IndexSettings indexSettings, Listener listener, CircuitBreaker breaker) {
         super(indexSettings);
         if (listener == null) {
             throw new IllegalArgumentException("listener must not be null");
         }
         this.loadRandomAccessFiltersEagerly = this.indexSettings.getValue(INDEX_LOAD_RANDOM_ACCESS_FILTERS_EAGERLY_SETTING);
+        final boolean offHeap = this.indexSettings.getValue(INDEX_OFF_HEAP_FIXED_BITSET_FILTERS_SETTING);
+        this.pagePool = offHeap ? new DirectPagePool(breaker, MAX_FREE_PAGES) : null;
         this.loadedFilters = CacheBuilder.<IndexReader.CacheKey, Cache<Query, Value>>builder().removalListener(this).build();
         this.listener = listener;
     }
@@ -102,12 +125,24 @@ public final class BitsetFilterCache extends AbstractIndexComponent
 
     @Override
     public void onClose(IndexReader.CacheKey ownerCoreCacheKey) {
+        final Cache<Query, Value> filters = loadedFilters.get(ownerCoreCacheKey);
+        if (filters != null) {
+            // the segment is closed so nothing can read its bitsets anymore, their direct memory can be reused
+            for (Value value : filters.values()) {
+                if (value.bitset instanceof OffHeapFixedBitSet) {
+                    ((OffHeapFixedBitSet) value.bitset).recycle();
+                }
+            }
+        }
         loadedFilters.invalidate(ownerCoreCacheKey);
     }
 
     @Override
     public void close() {
         clear("close");
+        if (pagePool != null) {
+            pagePool.close();
+        }
     }
 
     public void clear(String reason) {
@@ -142,7 +177,7 @@ public final class BitsetFilterCache extends AbstractIndexComponent
             if (s == null) {
                 bitSet = null;
             } else {
-                bitSet = BitSet.of(s.iterator(), context.reader().maxDoc());
+                bitSet = bitSetOf(s.iterator(), context.reader().maxDoc());
             }
 
             Value value = new Value(bitSet, shardId);
@@ -151,6 +186,14 @@ public final class BitsetFilterCache extends AbstractIndexComponent
         }).bitset;
     }
 
+    private BitSet bitSetOf(DocIdSetIterator iterator, int maxDoc) throws IOException {
+        // the same threshold that BitSet#of uses to pick a sparse bit set
+        if (pagePool != null && iterator.cost() >= maxDoc >>> 7) {
+            return OffHeapFixedBitSet.of(iterator, maxDoc, pagePool);
+        }
+        return BitSet.of(iterator, maxDoc);
+    }
+
     @Override
     public void onRemoval(RemovalNotification<IndexReader.CacheKey, Cache<Query, Value>> notification) {
         if (notification.getKey() == null) {
@@ -163,6 +206,10 @@ public final class BitsetFilterCache extends AbstractIndexComponent
         }
 
         for (Value value : valueCache.values()) {
+            if (value.bitset instanceof OffHeapFixedBitSet) {
+                // unless the segment was closed, searches might still read the bitset so its memory is left to the garbage collector
+                ((OffHeapFixedBitSet) value.bitset).discard();
+            }
             listener.onRemoval(value.shardId, value.bitset);
             // if null then this means the shard has already been removed and the stats are 0 anyway for the shard this key belongs to
         }
@@ -283,6 +330,10 @@ public final class BitsetFilterCache extends AbstractIndexComponent
         return loadedFilters;
     }
 
+    DirectPagePool getPagePool() {
+        return pagePool;
+    }
+
     /**
      *  A listener interface that is executed for each onCache / onRemoval event
      */
@@ -290,13 +341,13 @@ public final class BitsetFilterCache extends AbstractIndexComponent
         /**
          * Called for each cached bitset on the cache event.
          * @param shardId the shard id the bitset was cached for. This can be <code>null</code>
-         * @param accountable the bitsets ram representation
+         * @param accountable the bitsets ram representation, an {@link OffHeapFixedBitSet} if the bits are kept off heap
          */
         void onCache(ShardId shardId, Accountable accountable);
         /**
          * Called for each cached bitset on the removal event.
          * @param shardId the shard id the bitset was cached for. This can be <code>null</code>
-         * @param accountable the bitsets ram representation
+         * @param accountable the bitsets ram representation, an {@link OffHeapFixedBitSet} if the bits are kept off heap
          */
         void onRemoval(ShardId shardId, Accountable accountable);
     }
@@ -0,0 +1,139 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.cache.bitset;
+
+import org.elasticsearch.common.breaker.CircuitBreaker;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A pool of fixed size pages of direct memory that {@link OffHeapFixedBitSet}s keep their bits in. Direct memory is only freed
+ * once the buffer that holds it is garbage collected, so the pages of bit sets that can't be read anymore are kept for the next
+ * bit sets instead. Every page that the pool allocated and still references, whether it is in use or free, is accounted on the
+ * circuit breaker of the pool.
+ */
+final class DirectPagePool implements Closeable {
+
+    static final int PAGE_SIZE_IN_BYTES = 1 << 12;
+    static final int LONGS_PER_PAGE = PAGE_SIZE_IN_BYTES / Long.BYTES;
+    static final int PAGE_SHIFT = Integer.numberOfTrailingZeros(LONGS_PER_PAGE);
+    static final int PAGE_MASK = LONGS_PER_PAGE - 1;
+
+    private static final String LABEL = "<off_heap_bitset>";
+
+    private final CircuitBreaker breaker;
+    private final int maxFreePages;
+    private final Deque<LongBuffer> freePages = new ArrayDeque<>();
+    private boolean closed = false;
+
+    /**
+     * @param breaker the breaker that accounts for the pages of the pool
+     * @param maxFreePages the maximum number of free pages to keep, the others are left to the garbage collector
+     */
+    DirectPagePool(CircuitBreaker breaker, int maxFreePages) {
+        this.breaker = breaker;
+        this.maxFreePages = maxFreePages;
+    }
+
+    /**
+     * Returns the number of pages that hold the given number of longs.
+     */
+    static int numPages(int numLongs) {
+        return (numLongs + LONGS_PER_PAGE - 1) >>> PAGE_SHIFT;
+    }
+
+    /**
+     * Returns the given number of pages, reusing free pages first. The content of the pages is undefined.
+     */
+    synchronized LongBuffer[] obtain(int numPages) {
+        final LongBuffer[] pages = new LongBuffer[numPages];
+        int i = 0;
+        while (i < numPages && freePages.isEmpty() == false) {
+            pages[i++] = freePages.pop();
+        }
+        boolean success = false;
+        try {
+            if (i < numPages) {
+                breaker.addEstimateBytesAndMaybeBreak((long) (numPages - i) * PAGE_SIZE_IN_BYTES, LABEL);
+                try {
+                    for (; i < numPages; i++) {
+                        pages[i] = ByteBuffer.allocateDirect(PAGE_SIZE_IN_BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+                    }
+                } finally {
+                    // the pages that could not be allocated
+                    breaker.addWithoutBreaking(-(long) (numPages - i) * PAGE_SIZE_IN_BYTES);
+                }
+            }
+            success = true;
+        } finally {
+            if (success == false) {
+                // the pages are not handed out, they are free and still accounted
+                for (int j = 0; j < i; j++) {
+                    freePages.push(pages[j]);
+                }
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * Returns pages that nothing reads anymore to the pool.
+     */
+    synchronized void release(LongBuffer[] pages) {
+        int dropped = 0;
+        for (LongBuffer page : pages) {
+            if (closed == false && freePages.size() < maxFreePages) {
+                freePages.push(page);
+            } else {
+                dropped++;
+            }
+        }
+        breaker.addWithoutBreaking(-(long) dropped * PAGE_SIZE_IN_BYTES);
+    }
+
+    /**
+     * Drops pages that might still be read, they are left to the garbage collector.
+     */
+    void discard(LongBuffer[] pages) {
+        breaker.addWithoutBreaking(-(long) pages.length * PAGE_SIZE_IN_BYTES);
+    }
+
+    /**
+     * Returns the number of free pages in the pool.
+     */
+    synchronized int freePages() {
+        return freePages.size();
+    }
+
+    /**
+     * Drops the free pages, pages that are released after the pool is closed are dropped too.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        breaker.addWithoutBreaking(-(long) freePages.size() * PAGE_SIZE_IN_BYTES);
+        freePages.clear();
+    }
+}
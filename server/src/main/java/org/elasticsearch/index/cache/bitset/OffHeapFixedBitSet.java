@@ -0,0 +1,227 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.cache.bitset;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.BitSet;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A read-only dense {@link BitSet} like {@link FixedBitSet} that keeps its bits in pages of direct memory from a
+ * {@link DirectPagePool} instead of on the heap. The pages go back to the pool with {@link #recycle()} once nothing can read
+ * the bit set anymore.
+ */
+public final class OffHeapFixedBitSet extends BitSet {
+
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(OffHeapFixedBitSet.class)
+        + RamUsageEstimator.shallowSizeOfInstance(AtomicBoolean.class);
+    // the direct buffer of a page and its long view
+    private static final long PAGE_RAM_BYTES_USED = 2 * RamUsageEstimator.shallowSizeOfInstance(ByteBuffer.class);
+
+    private final DirectPagePool pool;
+    private final LongBuffer[] pages;
+    private final int numWords;
+    private final int numBits;
+    private final int cardinality;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private OffHeapFixedBitSet(DirectPagePool pool, LongBuffer[] pages, int numWords, int numBits, int cardinality) {
+        this.pool = pool;
+        this.pages = pages;
+        this.numWords = numWords;
+        this.numBits = numBits;
+        this.cardinality = cardinality;
+    }
+
+    /**
+     * Builds a bit set of the given length that contains all documents of the given unpositioned iterator, with pages of the
+     * given pool.
+     */
+    static OffHeapFixedBitSet of(DocIdSetIterator it, int numBits, DirectPagePool pool) throws IOException {
+        if (it.docID() != -1) {
+            throw new IllegalStateException("This operation only works with an unpositioned iterator, got current position = "
+                + it.docID());
+        }
+        final int numWords = FixedBitSet.bits2words(numBits);
+        final LongBuffer[] pages = pool.obtain(DirectPagePool.numPages(numWords));
+        boolean success = false;
+        try {
+            int cardinality = 0;
+            // doc ids come in order, so every word is written once, pages might be reused so words without bits are cleared
+            int wordIndex = -1;
+            long word = 0;
+            int nextWord = 0;
+            for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+                assert doc < numBits : "doc [" + doc + "] is out of bounds [" + numBits + "]";
+                final int i = doc >> 6;
+                if (i != wordIndex) {
+                    if (wordIndex != -1) {
+                        put(pages, wordIndex, word);
+                        nextWord = wordIndex + 1;
+                    }
+                    while (nextWord < i) {
+                        put(pages, nextWord++, 0L);
+                    }
+                    wordIndex = i;
+                    word = 0;
+                }
+                word |= 1L << doc;
+                cardinality++;
+            }
+            if (wordIndex != -1) {
+                put(pages, wordIndex, word);
+                nextWord = wordIndex + 1;
+            }
+            while (nextWord < numWords) {
+                put(pages, nextWord++, 0L);
+            }
+            success = true;
+            return new OffHeapFixedBitSet(pool, pages, numWords, numBits, cardinality);
+        } finally {
+            if (success == false) {
+                pool.release(pages);
+            }
+        }
+    }
+
+    private static void put(LongBuffer[] pages, int index, long word) {
+        pages[index >>> DirectPagePool.PAGE_SHIFT].put(index & DirectPagePool.PAGE_MASK, word);
+    }
+
+    private long word(int index) {
+        return pages[index >>> DirectPagePool.PAGE_SHIFT].get(index & DirectPagePool.PAGE_MASK);
+    }
+
+    /**
+     * Gives the pages of this bit set back to the pool for other bit sets. Must only be called once nothing can read this bit
+     * set anymore.
+     */
+    void recycle() {
+        if (released.compareAndSet(false, true)) {
+            pool.release(pages);
+        }
+    }
+
+    /**
+     * Stops accounting for the pages of this bit set in the pool without reusing them, since the bit set might still be read.
+     * Its memory is freed once the bit set is garbage collected.
+     */
+    void discard() {
+        if (released.compareAndSet(false, true)) {
+            pool.discard(pages);
+        }
+    }
+
+    @Override
+    public boolean get(int index) {
+        assert index >= 0 && index < numBits : "index=" + index + ", numBits=" + numBits;
+        // signed shift will keep a negative index and force an IndexOutOfBoundsException
+        final int i = index >> 6;
+        return (word(i) & (1L << index)) != 0;
+    }
+
+    @Override
+    public int length() {
+        return numBits;
+    }
+
+    @Override
+    public int cardinality() {
+        return cardinality;
+    }
+
+    @Override
+    public int nextSetBit(int index) {
+        assert index >= 0 && index < numBits : "index=" + index + ", numBits=" + numBits;
+        int i = index >> 6;
+        // skip all the bits to the right of index
+        long word = word(i) >> index;
+        if (word != 0) {
+            return index + Long.numberOfTrailingZeros(word);
+        }
+        while (++i < numWords) {
+            word = word(i);
+            if (word != 0) {
+                return (i << 6) + Long.numberOfTrailingZeros(word);
+            }
+        }
+        return DocIdSetIterator.NO_MORE_DOCS;
+    }
+
+    @Override
+    public int prevSetBit(int index) {
+        assert index >= 0 && index < numBits : "index=" + index + ", numBits=" + numBits;
+        int i = index >> 6;
+        final int subIndex = index & 0x3f;
+        // skip all the bits to the left of index
+        long word = word(i) << (63 - subIndex);
+        if (word != 0) {
+            return (i << 6) + subIndex - Long.numberOfLeadingZeros(word);
+        }
+        while (--i >= 0) {
+            word = word(i);
+            if (word != 0) {
+                return (i << 6) + 63 - Long.numberOfLeadingZeros(word);
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void set(int i) {
+        throw new UnsupportedOperationException("off heap bit sets are read-only");
+    }
+
+    @Override
+    public void clear(int i) {
+        throw new UnsupportedOperationException("off heap bit sets are read-only");
+    }
+
+    @Override
+    public void clear(int startIndex, int endIndex) {
+        throw new UnsupportedOperationException("off heap bit sets are read-only");
+    }
+
+    /**
+     * The heap memory used by this bit set, the bits themselves are accounted by {@link #offHeapBytesUsed()}.
+     */
+    @Override
+    public long ramBytesUsed() {
+        return BASE_RAM_BYTES_USED + RamUsageEstimator.shallowSizeOf(pages) + pages.length * PAGE_RAM_BYTES_USED;
+    }
+
+    /**
+     * The direct memory used by the pages of this bit set.
+     */
+    public long offHeapBytesUsed() {
+        return (long) pages.length * DirectPagePool.PAGE_SIZE_IN_BYTES;
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapFixedBitSet(numBits=" + numBits + ", cardinality=" + cardinality + ")";
+    }
+}
@@ -27,21 +27,34 @@ import org.elasticsearch.index.shard.ShardId;
 public class ShardBitsetFilterCache extends AbstractIndexShardComponent {
 
     private final CounterMetric totalMetric = new CounterMetric();
+    private final CounterMetric offHeapMetric = new CounterMetric();
 
     public ShardBitsetFilterCache(ShardId shardId, IndexSettings indexSettings) {
         super(shardId, indexSettings);
     }
 
-    public void onCached(long sizeInBytes) {
+    public void onCached(long sizeInBytes, long offHeapSizeInBytes) {
         totalMetric.inc(sizeInBytes);
+        offHeapMetric.inc(offHeapSizeInBytes);
     }
 
-    public void onRemoval(long sizeInBytes) {
+    public void onRemoval(long sizeInBytes, long offHeapSizeInBytes) {
         totalMetric.dec(sizeInBytes);
+        offHeapMetric.dec(offHeapSizeInBytes);
     }
 
+    /**
+     * The heap memory used by the cached bitsets of the shard.
+     */
     public long getMemorySizeInBytes() {
         return totalMetric.count();
     }
 
+    /**
+     * The direct memory used by the cached bitsets of the shard.
+     */
+    public long getOffHeapMemorySizeInBytes() {
+        return offHeapMetric.count();
+    }
+
 }
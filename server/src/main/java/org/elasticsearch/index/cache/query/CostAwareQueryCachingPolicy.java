@@ -0,0 +1,190 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.cache.query;
+
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.UsageTrackingQueryCachingPolicy;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link UsageTrackingQueryCachingPolicy} that also takes the measured cost of caching a filter into account. The query
+ * cache reports the time it took to build the {@link org.apache.lucene.search.DocIdSet} of a filter, the memory it uses and
+ * the number of hits it served via {@link #onCache} and {@link #onHit}. Filters whose benefit per byte, the build time per
+ * byte weighted by the hits per build, is at least the average of all filters cached on the shard are cached after
+ * {@link #MIN_FREQUENCY_TO_CACHE_VALUABLE} uses, while cheaper filters need twice as many uses as the usage tracking policy
+ * requires. Filters that have not been cached yet are estimated by the filters of the same type that have been cached, and
+ * are cached based on their usage only if there are none. The totals that filters are compared against are halved every
+ * {@link #DECAY_INTERVAL} cached filters so that they follow the recent workload of the shard.
+ */
+public final class CostAwareQueryCachingPolicy extends UsageTrackingQueryCachingPolicy {
+
+    // the same as the number of recent uses that the usage tracking policy keeps track of
+    static final int MAX_TRACKED_FILTERS = 256;
+    static final int MIN_FREQUENCY_TO_CACHE_VALUABLE = 2;
+    static final int DECAY_INTERVAL = 1024;
+    // query strings can be arbitrarily large, e.g. terms queries with many terms
+    static final int MAX_FILTER_LENGTH = 256;
+
+    private final Cache<Query, FilterCost> costs =
+        CacheBuilder.<Query, FilterCost>builder().setMaximumWeight(MAX_TRACKED_FILTERS).build();
+    // the totals per type of query, which estimate the cost of filters that have not been cached yet
+    private final Map<Class<? extends Query>, FilterCost> typeCosts = new ConcurrentHashMap<>();
+    // the totals of all filters that have been cached on the shard, decayed over time
+    private final FilterCost total = new FilterCost(null);
+    private final AtomicLong cachesSinceDecay = new AtomicLong();
+
+    @Override
+    protected int minFrequencyToCache(Query query) {
+        final int minFrequency = super.minFrequencyToCache(query);
+        FilterCost cost = costs.get(query);
+        if (cost == null) {
+            cost = typeCosts.get(query.getClass());
+            if (cost == null) {
+                return minFrequency;
+            }
+        }
+        if (cost.benefitPerByte() >= total.benefitPerByte()) {
+            return Math.min(minFrequency, MIN_FREQUENCY_TO_CACHE_VALUABLE);
+        }
+        return minFrequency * 2;
+    }
+
+    /**
+     * Records that a {@link org.apache.lucene.search.DocIdSet} has been built and cached for the given filter.
+     *
+     * @param query            the cached filter
+     * @param buildTimeInNanos the time it took to build the doc id set
+     * @param ramBytesUsed     the memory the doc id set uses
+     */
+    public void onCache(Query query, long buildTimeInNanos, long ramBytesUsed) {
+        final FilterCost cost;
+        try {
+            cost = costs.computeIfAbsent(query, FilterCost::new);
+        } catch (ExecutionException e) {
+            throw new AssertionError("creating the cost of a filter can't fail", e);
+        }
+        cost.onCache(buildTimeInNanos, ramBytesUsed);
+        typeCosts.computeIfAbsent(query.getClass(), type -> new FilterCost(null)).onCache(buildTimeInNanos, ramBytesUsed);
+        total.onCache(buildTimeInNanos, ramBytesUsed);
+        if (cachesSinceDecay.incrementAndGet() % DECAY_INTERVAL == 0) {
+            total.decay();
+            for (FilterCost typeCost : typeCosts.values()) {
+                typeCost.decay();
+            }
+        }
+    }
+
+    /**
+     * Records that the given filter has been served from the cache.
+     */
+    public void onHit(Query query) {
+        final FilterCost cost = costs.get(query);
+        if (cost != null) {
+            cost.hitCount.increment();
+            final FilterCost typeCost = typeCosts.get(query.getClass());
+            if (typeCost != null) {
+                typeCost.hitCount.increment();
+            }
+            total.hitCount.increment();
+        }
+    }
+
+    /**
+     * Returns the decayed average benefit per byte of the filters cached on the shard.
+     */
+    double averageBenefitPerByte() {
+        return total.benefitPerByte();
+    }
+
+    /**
+     * Returns the stats of the tracked filters that saved the most time, at most {@link QueryCacheStats#MAX_FILTERS}.
+     */
+    public List<FilterCacheStats> filterStats() {
+        final List<FilterCacheStats> filters = new ArrayList<>();
+        for (FilterCost cost : costs.values()) {
+            filters.add(cost.toFilterCacheStats());
+        }
+        final QueryCacheStats stats = new QueryCacheStats();
+        stats.addFilters(filters);
+        return stats.getFilters();
+    }
+
+    /**
+     * Returns the string representation of the given filter, truncated to {@link #MAX_FILTER_LENGTH} characters.
+     */
+    static String describe(Query query) {
+        final String description = query.toString();
+        if (description.length() <= MAX_FILTER_LENGTH) {
+            return description;
+        }
+        return description.substring(0, MAX_FILTER_LENGTH) + "...";
+    }
+
+    private static final class FilterCost {
+        final Query query;
+        final LongAdder hitCount = new LongAdder();
+        final LongAdder cacheCount = new LongAdder();
+        final LongAdder buildTimeInNanos = new LongAdder();
+        final LongAdder ramBytesUsed = new LongAdder();
+
+        FilterCost(Query query) {
+            this.query = query;
+        }
+
+        void onCache(long buildTimeInNanos, long ramBytesUsed) {
+            this.cacheCount.increment();
+            this.buildTimeInNanos.add(buildTimeInNanos);
+            this.ramBytesUsed.add(ramBytesUsed);
+        }
+
+        /**
+         * Halves the counters, so that the costs that are recorded next weigh as much as all the previous ones. The counters
+         * are not halved atomically, which only skews the estimations slightly.
+         */
+        void decay() {
+            for (LongAdder counter : new LongAdder[] { hitCount, cacheCount, buildTimeInNanos, ramBytesUsed }) {
+                counter.add(-(counter.sum() / 2));
+            }
+        }
+
+        double benefitPerByte() {
+            final long cacheCount = this.cacheCount.sum();
+            if (cacheCount == 0) {
+                return 0;
+            }
+            final double buildTimePerByte = (double) buildTimeInNanos.sum() / Math.max(1, ramBytesUsed.sum());
+            return buildTimePerByte * (1 + (double) hitCount.sum() / cacheCount);
+        }
+
+        FilterCacheStats toFilterCacheStats() {
+            return new FilterCacheStats(describe(query), hitCount.sum(), cacheCount.sum(), buildTimeInNanos.sum(),
+                ramBytesUsed.sum());
+        }
+    }
+}
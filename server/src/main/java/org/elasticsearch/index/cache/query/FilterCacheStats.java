@@ -0,0 +1,178 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.cache.query;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The hits and the cost of caching a single filter in the query cache.
+ */
+public class FilterCacheStats implements Writeable, ToXContentObject {
+
+    private final String filter;
+    private final long hitCount;
+    private final long cacheCount;
+    private final long buildTimeInNanos;
+    private final long ramBytesUsed;
+
+    public FilterCacheStats(String filter, long hitCount, long cacheCount, long buildTimeInNanos, long ramBytesUsed) {
+        this.filter = Objects.requireNonNull(filter);
+        this.hitCount = hitCount;
+        this.cacheCount = cacheCount;
+        this.buildTimeInNanos = buildTimeInNanos;
+        this.ramBytesUsed = ramBytesUsed;
+    }
+
+    public FilterCacheStats(StreamInput in) throws IOException {
+        filter = in.readString();
+        hitCount = in.readVLong();
+        cacheCount = in.readVLong();
+        buildTimeInNanos = in.readVLong();
+        ramBytesUsed = in.readVLong();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeString(filter);
+        out.writeVLong(hitCount);
+        out.writeVLong(cacheCount);
+        out.writeVLong(buildTimeInNanos);
+        out.writeVLong(ramBytesUsed);
+    }
+
+    /**
+     * Merges the stats of the same filter.
+     */
+    FilterCacheStats merge(FilterCacheStats other) {
+        assert filter.equals(other.filter);
+        return new FilterCacheStats(filter, hitCount + other.hitCount, cacheCount + other.cacheCount,
+            buildTimeInNanos + other.buildTimeInNanos, ramBytesUsed + other.ramBytesUsed);
+    }
+
+    /**
+     * The string representation of the filter.
+     */
+    public String getFilter() {
+        return filter;
+    }
+
+    /**
+     * The number of lookups of the filter that were served from the cache.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * The number of times a {@link org.apache.lucene.search.DocIdSet} has been built and cached for the filter.
+     */
+    public long getCacheCount() {
+        return cacheCount;
+    }
+
+    /**
+     * The total time spent building the cached {@link org.apache.lucene.search.DocIdSet}s of the filter.
+     */
+    public TimeValue getBuildTime() {
+        return new TimeValue(buildTimeInNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getBuildTimeInNanos() {
+        return buildTimeInNanos;
+    }
+
+    /**
+     * The total size of the {@link org.apache.lucene.search.DocIdSet}s that have been built for the filter.
+     */
+    public ByteSizeValue getMemorySize() {
+        return new ByteSizeValue(ramBytesUsed);
+    }
+
+    public long getMemorySizeInBytes() {
+        return ramBytesUsed;
+    }
+
+    /**
+     * An estimation of the time that the cache saved for this filter, assuming that each hit would have had to build the
+     * {@link org.apache.lucene.search.DocIdSet} again.
+     */
+    public long getSavedTimeInNanos() {
+        return cacheCount == 0 ? 0 : hitCount * (buildTimeInNanos / cacheCount);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.field(Fields.FILTER, filter);
+        builder.field(Fields.HIT_COUNT, hitCount);
+        builder.field(Fields.CACHE_COUNT, cacheCount);
+        builder.humanReadableField(Fields.BUILD_TIME_IN_MILLIS, Fields.BUILD_TIME, getBuildTime());
+        builder.humanReadableField(Fields.MEMORY_SIZE_IN_BYTES, Fields.MEMORY_SIZE, getMemorySize());
+        builder.endObject();
+        return builder;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        FilterCacheStats that = (FilterCacheStats) o;
+        return hitCount == that.hitCount &&
+            cacheCount == that.cacheCount &&
+            buildTimeInNanos == that.buildTimeInNanos &&
+            ramBytesUsed == that.ramBytesUsed &&
+            filter.equals(that.filter);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(filter, hitCount, cacheCount, buildTimeInNanos, ramBytesUsed);
+    }
+
+    @Override
+    public String toString() {
+        return "FilterCacheStats{filter=" + filter + ", hitCount=" + hitCount + ", cacheCount=" + cacheCount +
+            ", buildTimeInNanos=" + buildTimeInNanos + ", ramBytesUsed=" + ramBytesUsed + "}";
+    }
+
+    static final class Fields {
+        static final String FILTER = "filter";
+        static final String HIT_COUNT = "hit_count";
+        static final String CACHE_COUNT = "cache_count";
+        static final String BUILD_TIME = "build_time";
+        static final String BUILD_TIME_IN_MILLIS = "build_time_in_millis";
+        static final String MEMORY_SIZE = "memory_size";
+        static final String MEMORY_SIZE_IN_BYTES = "memory_size_in_bytes";
+    }
+}
@@ -20,6 +20,7 @@
 package org.elasticsearch.index.cache.query;
 
 import org.apache.lucene.search.DocIdSet;
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
@@ -29,6 +30,12 @@ import org.elasticsearch.common.xcontent.ToXContentFragment;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class QueryCacheStats implements Streamable, ToXContentFragment {
 
@@ -37,6 +44,13 @@ public class QueryCacheStats implements Streamable, ToXContentFragment {
     long missCount;
     long cacheCount;
     long cacheSize;
+    // the filters that saved the most time, sorted by decreasing saved time
+    List<FilterCacheStats> filters = Collections.emptyList();
+
+    /**
+     * The maximum number of filters whose stats are reported.
+     */
+    public static final int MAX_FILTERS = 10;
 
     public QueryCacheStats() {
     }
@@ -55,6 +69,26 @@ public class QueryCacheStats implements Streamable, ToXContentFragment {
         missCount += stats.missCount;
         cacheCount += stats.cacheCount;
         cacheSize += stats.cacheSize;
+        addFilters(stats.filters);
+    }
+
+    /**
+     * Adds the stats of individual filters, the stats of the same filter are merged.
+     */
+    public void addFilters(List<FilterCacheStats> filters) {
+        if (filters.isEmpty()) {
+            return;
+        }
+        final Map<String, FilterCacheStats> merged = new LinkedHashMap<>();
+        for (FilterCacheStats filter : this.filters) {
+            merged.put(filter.getFilter(), filter);
+        }
+        for (FilterCacheStats filter : filters) {
+            merged.merge(filter.getFilter(), filter, FilterCacheStats::merge);
+        }
+        final List<FilterCacheStats> sorted = new ArrayList<>(merged.values());
+        sorted.sort(Comparator.comparingLong(FilterCacheStats::getSavedTimeInNanos).reversed());
+        this.filters = Collections.unmodifiableList(new ArrayList<>(sorted.subList(0, Math.min(MAX_FILTERS, sorted.size()))));
     }
 
     public long getMemorySizeInBytes() {
@@ -107,6 +141,13 @@ public class QueryCacheStats implements Streamable, ToXContentFragment {
         return cacheCount - cacheSize;
     }
 
+    /**
+     * The hits and costs of the filters that saved the most time, at most {@link #MAX_FILTERS}.
+     */
+    public List<FilterCacheStats> getFilters() {
+        return filters;
+    }
+
     @Override
     public void readFrom(StreamInput in) throws IOException {
         ramBytesUsed = in.readLong();
@@ -114,6 +155,9 @@ public class QueryCacheStats implements Streamable, ToXContentFragment {
         missCount = in.readLong();
         cacheCount = in.readLong();
         cacheSize = in.readLong();
+        if (in.getVersion().onOrAfter(Version.V_7_0_0)) {
+            filters = Collections.unmodifiableList(in.readList(FilterCacheStats::new));
+        }
     }
 
     @Override
@@ -123,6 +167,9 @@ public class QueryCacheStats implements Streamable, ToXContentFragment {
         out.writeLong(missCount);
         out.writeLong(cacheCount);
         out.writeLong(cacheSize);
+        if (out.getVersion().onOrAfter(Version.V_7_0_0)) {
+            out.writeList(filters);
+        }
     }
 
     @Override
@@ -135,6 +182,13 @@ public class QueryCacheStats implements Streamable, ToXContentFragment {
         builder.field(Fields.CACHE_SIZE, getCacheSize());
         builder.field(Fields.CACHE_COUNT, getCacheCount());
         builder.field(Fields.EVICTIONS, getEvictions());
+        if (filters.isEmpty() == false) {
+            builder.startArray(Fields.FILTERS);
+            for (FilterCacheStats filter : filters) {
+                filter.toXContent(builder, params);
+            }
+            builder.endArray();
+        }
         builder.endObject();
         return builder;
     }
@@ -149,6 +203,7 @@ public class QueryCacheStats implements Streamable, ToXContentFragment {
         static final String CACHE_SIZE = "cache_size";
         static final String CACHE_COUNT = "cache_count";
         static final String EVICTIONS = "evictions";
+        static final String FILTERS = "filters";
     }
 
 }
@@ -0,0 +1,267 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.cache.rollup;
+
+import com.carrotsearch.hppc.LongObjectHashMap;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.index.fielddata.IndexNumericFieldData;
+import org.elasticsearch.index.fielddata.SortedNumericDoubleValues;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Summaries of the documents of a single segment per fixed date interval: the number of documents whose date falls into
+ * every interval, and the number, sum, minimum and maximum of the values of some numeric fields of these documents.
+ * <p>
+ * Summaries cover all the documents of the segment, including deleted ones, so they can only be used in place of the
+ * documents of a segment that has no deletions.
+ */
+public final class SegmentRollup implements Accountable {
+
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(SegmentRollup.class);
+
+    private final long interval;
+    private final long[] keys;
+    private final long[] docCounts;
+    private final Map<String, Metric> metrics;
+
+    private SegmentRollup(long interval, long[] keys, long[] docCounts, Map<String, Metric> metrics) {
+        this.interval = interval;
+        this.keys = keys;
+        this.docCounts = docCounts;
+        this.metrics = Collections.unmodifiableMap(metrics);
+    }
+
+    /**
+     * The length of the intervals in milliseconds.
+     */
+    public long interval() {
+        return interval;
+    }
+
+    /**
+     * The number of intervals that contain at least one document.
+     */
+    public int numRows() {
+        return keys.length;
+    }
+
+    /**
+     * The start of the interval of the given row, rows are sorted by ascending key.
+     */
+    public long key(int row) {
+        return keys[row];
+    }
+
+    /**
+     * The number of documents whose date falls into the interval of the given row.
+     */
+    public long docCount(int row) {
+        return docCounts[row];
+    }
+
+    /**
+     * The summaries of the values of the given field, or {@code null} if the field is not summarized.
+     */
+    public Metric metric(String field) {
+        return metrics.get(field);
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        long size = BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(keys) + RamUsageEstimator.sizeOf(docCounts);
+        for (Metric metric : metrics.values()) {
+            size += metric.ramBytesUsed();
+        }
+        return size;
+    }
+
+    /**
+     * The summaries of the values of a numeric field per row.
+     */
+    public static final class Metric implements Accountable {
+
+        private final long[] valueCounts;
+        private final double[] sums;
+        private final double[] mins;
+        private final double[] maxs;
+
+        private Metric(int numRows) {
+            this.valueCounts = new long[numRows];
+            this.sums = new double[numRows];
+            this.mins = new double[numRows];
+            this.maxs = new double[numRows];
+        }
+
+        public long valueCount(int row) {
+            return valueCounts[row];
+        }
+
+        public double sum(int row) {
+            return sums[row];
+        }
+
+        /**
+         * The minimum value of the given row, {@link Double#POSITIVE_INFINITY} if the row has no value.
+         */
+        public double min(int row) {
+            return mins[row];
+        }
+
+        /**
+         * The maximum value of the given row, {@link Double#NEGATIVE_INFINITY} if the row has no value.
+         */
+        public double max(int row) {
+            return maxs[row];
+        }
+
+        @Override
+        public long ramBytesUsed() {
+            return RamUsageEstimator.sizeOf(valueCounts) + RamUsageEstimator.sizeOf(sums) + RamUsageEstimator.sizeOf(mins)
+                + RamUsageEstimator.sizeOf(maxs);
+        }
+    }
+
+    /**
+     * Builds the summaries of a segment by reading the values of all its documents.
+     *
+     * @param context the segment
+     * @param interval the length of the intervals in milliseconds
+     * @param maxRows the maximum number of intervals that may contain documents
+     * @param dateFieldData the field data of the date field
+     * @param metricFieldData the field data of the numeric fields to summarize per field name
+     * @return the summaries or {@code null} if a document has more than one date, since such documents couldn't be
+     *         counted once per bucket of a histogram, or if the dates of the segment span more than {@code maxRows} intervals
+     */
+    public static SegmentRollup build(LeafReaderContext context, long interval, int maxRows, IndexNumericFieldData dateFieldData,
+                                      Map<String, IndexNumericFieldData> metricFieldData) throws IOException {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval must be positive, got [" + interval + "]");
+        }
+        final String[] fields = metricFieldData.keySet().toArray(new String[0]);
+        final SortedNumericDoubleValues[] values = new SortedNumericDoubleValues[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            values[i] = metricFieldData.get(fields[i]).load(context).getDoubleValues();
+        }
+        final SortedNumericDocValues dates = dateFieldData.load(context).getLongValues();
+        final LongObjectHashMap<Row> rows = new LongObjectHashMap<>();
+        // documents are usually indexed in date order so consecutive documents tend to fall into the same interval
+        long currentKey = Long.MIN_VALUE;
+        Row current = null;
+        for (int doc = dates.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = dates.nextDoc()) {
+            if (dates.docValueCount() != 1) {
+                return null;
+            }
+            final long key = Math.floorDiv(dates.nextValue(), interval) * interval;
+            if (current == null || key != currentKey) {
+                current = rows.get(key);
+                if (current == null) {
+                    if (rows.size() >= maxRows) {
+                        // the rollup wouldn't be much smaller than the documents it summarizes
+                        return null;
+                    }
+                    current = new Row(fields.length);
+                    rows.put(key, current);
+                }
+                currentKey = key;
+            }
+            current.docCount++;
+            for (int i = 0; i < fields.length; i++) {
+                if (values[i].advanceExact(doc)) {
+                    current.collect(i, values[i]);
+                }
+            }
+        }
+
+        final long[] keys = rows.keys().toArray();
+        Arrays.sort(keys);
+        final long[] docCounts = new long[keys.length];
+        final Metric[] metrics = new Metric[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            metrics[i] = new Metric(keys.length);
+        }
+        for (int row = 0; row < keys.length; row++) {
+            final Row r = rows.get(keys[row]);
+            docCounts[row] = r.docCount;
+            for (int i = 0; i < fields.length; i++) {
+                metrics[i].valueCounts[row] = r.valueCounts[i];
+                metrics[i].sums[row] = r.sums[i];
+                metrics[i].mins[row] = r.mins[i];
+                metrics[i].maxs[row] = r.maxs[i];
+            }
+        }
+        final Map<String, Metric> metricsByField = new HashMap<>();
+        for (int i = 0; i < fields.length; i++) {
+            metricsByField.put(fields[i], metrics[i]);
+        }
+        return new SegmentRollup(interval, keys, docCounts, metricsByField);
+    }
+
+    private static final class Row {
+
+        long docCount;
+        final long[] valueCounts;
+        final double[] sums;
+        final double[] compensations;
+        final double[] mins;
+        final double[] maxs;
+
+        Row(int numFields) {
+            valueCounts = new long[numFields];
+            sums = new double[numFields];
+            compensations = new double[numFields];
+            mins = new double[numFields];
+            maxs = new double[numFields];
+            Arrays.fill(mins, Double.POSITIVE_INFINITY);
+            Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+        }
+
+        void collect(int field, SortedNumericDoubleValues values) throws IOException {
+            final int valueCount = values.docValueCount();
+            valueCounts[field] += valueCount;
+            // Kahan summation, like the sum aggregation does
+            double sum = sums[field];
+            double compensation = compensations[field];
+            for (int i = 0; i < valueCount; i++) {
+                final double value = values.nextValue();
+                mins[field] = Math.min(mins[field], value);
+                maxs[field] = Math.max(maxs[field], value);
+                if (Double.isFinite(value) == false) {
+                    sum += value;
+                } else if (Double.isFinite(sum)) {
+                    double corrected = value - compensation;
+                    double newSum = sum + corrected;
+                    compensation = (newSum - sum) - corrected;
+                    sum = newSum;
+                }
+            }
+            sums[field] = sum;
+            compensations[field] = compensation;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.cache.rollup;
+
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.index.AbstractIndexComponent;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.IndexWarmer;
+import org.elasticsearch.index.IndexWarmer.TerminationHandle;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.index.fielddata.IndexNumericFieldData;
+import org.elasticsearch.index.mapper.DateFieldMapper;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.index.mapper.NumberFieldMapper;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.indices.breaker.CircuitBreakerService;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Holds the {@link SegmentRollup} of every segment of the index, if a date field to roll up is configured. Rollups are
+ * built when new segments are warmed, after refreshes and merges, or lazily when they are first needed, and are dropped
+ * when their segment is closed or when the cache exceeds {@link #INDEX_SEGMENT_ROLLUP_CACHE_SIZE_SETTING}. Their memory is
+ * accounted on the accounting circuit breaker, like other memory that segments hold independently of requests.
+ */
+public final class SegmentRollupCache extends AbstractIndexComponent implements IndexReader.ClosedListener, Closeable {
+
+    /**
+     * The date field that documents are rolled up by, rollups are disabled if empty.
+     */
+    public static final Setting<String> INDEX_SEGMENT_ROLLUP_DATE_FIELD_SETTING =
+        Setting.simpleString("index.segment_rollup.date_field", Property.IndexScope);
+    public static final Setting<TimeValue> INDEX_SEGMENT_ROLLUP_INTERVAL_SETTING =
+        Setting.timeSetting("index.segment_rollup.interval", TimeValue.timeValueHours(1), TimeValue.timeValueSeconds(1),
+            Property.IndexScope);
+    public static final Setting<List<String>> INDEX_SEGMENT_ROLLUP_METRICS_SETTING =
+        Setting.listSetting("index.segment_rollup.metrics", Collections.emptyList(), Function.identity(), Property.IndexScope);
+    /**
+     * The maximum number of intervals of a segment, segments whose dates span more intervals are not rolled up.
+     */
+    public static final Setting<Integer> INDEX_SEGMENT_ROLLUP_MAX_ROWS_SETTING =
+        Setting.intSetting("index.segment_rollup.max_rows", 10000, 1, Property.IndexScope);
+    /**
+     * The maximum memory that the rollups of the segments of the index may use, the least recently used ones are evicted
+     * beyond that and rebuilt when they are needed again.
+     */
+    public static final Setting<ByteSizeValue> INDEX_SEGMENT_ROLLUP_CACHE_SIZE_SETTING =
+        Setting.byteSizeSetting("index.segment_rollup.cache.size", new ByteSizeValue(64, ByteSizeUnit.MB), Property.IndexScope);
+
+    private final String dateField;
+    private final long interval;
+    private final List<String> metrics;
+    private final int maxRows;
+    private final MapperService mapperService;
+    private final Function<MappedFieldType, IndexFieldData<?>> fieldDataLookup;
+    private final CircuitBreaker breaker;
+    private final Cache<IndexReader.CacheKey, Value> loadedRollups;
+    // the segments whose closed listener is registered, rollups may be evicted and rebuilt while their segment is open
+    private final Set<IndexReader.CacheKey> listenedSegments = ConcurrentCollections.newConcurrentSet();
+
+    public SegmentRollupCache(IndexSettings indexSettings, MapperService mapperService,
+                              Function<MappedFieldType, IndexFieldData<?>> fieldDataLookup, CircuitBreakerService circuitBreakerService) {
+        super(indexSettings);
+        this.dateField = indexSettings.getValue(INDEX_SEGMENT_ROLLUP_DATE_FIELD_SETTING);
+        this.interval = indexSettings.getValue(INDEX_SEGMENT_ROLLUP_INTERVAL_SETTING).millis();
+        this.metrics = indexSettings.getValue(INDEX_SEGMENT_ROLLUP_METRICS_SETTING);
+        this.maxRows = indexSettings.getValue(INDEX_SEGMENT_ROLLUP_MAX_ROWS_SETTING);
+        this.mapperService = mapperService;
+        this.fieldDataLookup = fieldDataLookup;
+        this.breaker = circuitBreakerService.getBreaker(CircuitBreaker.ACCOUNTING);
+        this.loadedRollups = CacheBuilder.<IndexReader.CacheKey, Value>builder()
+            .setMaximumWeight(indexSettings.getValue(INDEX_SEGMENT_ROLLUP_CACHE_SIZE_SETTING).getBytes())
+            .weigher((key, value) -> value.ramBytesUsed)
+            // rollups outlive the requests that build them, they are accounted on the accounting breaker for as long as they are cached
+            .removalListener(notification -> breaker.addWithoutBreaking(-notification.getValue().ramBytesUsed))
+            .build();
+    }
+
+    /**
+     * Whether segments are rolled up at all.
+     */
+    public boolean enabled() {
+        return Strings.isEmpty(dateField) == false;
+    }
+
+    /**
+     * The date field that documents are rolled up by.
+     */
+    public String dateField() {
+        return dateField;
+    }
+
+    public IndexWarmer.Listener createListener(ThreadPool threadPool) {
+        return new RollupWarmer(threadPool);
+    }
+
+    /**
+     * Returns the rollup of the given segment, building it if needed, or {@code null} if the segment can't be rolled up.
+     */
+    public SegmentRollup getRollup(LeafReaderContext context) throws IOException {
+        if (enabled() == false) {
+            return null;
+        }
+        final IndexReader.CacheHelper cacheHelper = context.reader().getCoreCacheHelper();
+        if (cacheHelper == null) {
+            return null;
+        }
+        try {
+            return loadedRollups.computeIfAbsent(cacheHelper.getKey(), key -> {
+                if (listenedSegments.add(key)) {
+                    cacheHelper.addClosedListener(SegmentRollupCache.this);
+                }
+                final SegmentRollup rollup = build(context);
+                final long ramBytesUsed = rollup == null ? 0 : rollup.ramBytesUsed();
+                breaker.addEstimateBytesAndMaybeBreak(ramBytesUsed, "segment_rollup");
+                return new Value(rollup, ramBytesUsed);
+            }).rollup;
+        } catch (ExecutionException e) {
+            throw ExceptionsHelper.convertToElastic(e);
+        }
+    }
+
+    private SegmentRollup build(LeafReaderContext context) throws IOException {
+        final MappedFieldType dateFieldType = mapperService.fullName(dateField);
+        if (dateFieldType instanceof DateFieldMapper.DateFieldType == false) {
+            return null;
+        }
+        final Map<String, IndexNumericFieldData> metricFieldData = new HashMap<>();
+        for (String metric : metrics) {
+            final MappedFieldType fieldType = mapperService.fullName(metric);
+            if (fieldType instanceof NumberFieldMapper.NumberFieldType) {
+                metricFieldData.put(metric, (IndexNumericFieldData) fieldDataLookup.apply(fieldType));
+            }
+        }
+        return SegmentRollup.build(context, interval, maxRows,
+            (IndexNumericFieldData) fieldDataLookup.apply(dateFieldType), metricFieldData);
+    }
+
+    @Override
+    public void onClose(IndexReader.CacheKey ownerCoreCacheKey) {
+        listenedSegments.remove(ownerCoreCacheKey);
+        loadedRollups.invalidate(ownerCoreCacheKey);
+    }
+
+    @Override
+    public void close() {
+        loadedRollups.invalidateAll();
+    }
+
+    private static final class Value {
+
+        final SegmentRollup rollup;
+        final long ramBytesUsed;
+
+        Value(SegmentRollup rollup, long ramBytesUsed) {
+            this.rollup = rollup;
+            this.ramBytesUsed = ramBytesUsed;
+        }
+    }
+
+    final class RollupWarmer implements IndexWarmer.Listener {
+
+        private final Executor executor;
+
+        RollupWarmer(ThreadPool threadPool) {
+            this.executor = threadPool.executor(ThreadPool.Names.WARMER);
+        }
+
+        @Override
+        public TerminationHandle warmReader(IndexShard indexShard, Engine.Searcher searcher) {
+            if (enabled() == false || indexSettings.getIndex().equals(indexShard.indexSettings().getIndex()) == false) {
+                return TerminationHandle.NO_WAIT;
+            }
+            final CountDownLatch latch = new CountDownLatch(searcher.reader().leaves().size());
+            for (final LeafReaderContext ctx : searcher.reader().leaves()) {
+                executor.execute(() -> {
+                    try {
+                        final long start = System.nanoTime();
+                        getRollup(ctx);
+                        if (indexShard.warmerService().logger().isTraceEnabled()) {
+                            indexShard.warmerService().logger().trace("warmed segment rollup, took [{}]",
+                                TimeValue.timeValueNanos(System.nanoTime() - start));
+                        }
+                    } catch (Exception e) {
+                        indexShard.warmerService().logger().warn(
+                            () -> new ParameterizedMessage("failed to roll up segment by [{}]", dateField), e);
+                    } finally {
+                        latch.countDown();
+                    }
+                });
+            }
+            return () -> latch.await();
+        }
+    }
+}
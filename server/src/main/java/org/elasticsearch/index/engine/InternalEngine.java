@@ -126,7 +126,7 @@ public class InternalEngine extends Engine {
 
     // A uid (in the form of BytesRef) to the version map
     // we use the hashed variant since we iterate over it and check removal and additions on existing keys
-    private final LiveVersionMap versionMap = new LiveVersionMap();
+    private final LiveVersionMap versionMap;
 
     private volatile SegmentInfos lastCommittedSegmentInfos;
 
@@ -169,6 +169,7 @@ public class InternalEngine extends Engine {
             final EngineConfig engineConfig,
             final BiFunction<Long, Long, LocalCheckpointTracker> localCheckpointTrackerSupplier) {
         super(engineConfig);
+        this.versionMap = new LiveVersionMap(engineConfig.getIndexSettings().isPagedVersionMapEnabled());
         if (engineConfig.isAutoGeneratedIDsOptimizationEnabled() == false) {
             updateAutoIdTimestamp(Long.MAX_VALUE, true);
         }
@@ -577,7 +578,8 @@ public class InternalEngine extends Engine {
             try {
                 final DirectoryReader directoryReader = ElasticsearchDirectoryReader.wrap(DirectoryReader.open(indexWriter), shardId);
                 internalSearcherManager = new SearcherManager(directoryReader,
-                        new RamAccountingSearcherFactory(engineConfig.getCircuitBreakerService()));
+                        new RamAccountingSearcherFactory(engineConfig.getCircuitBreakerService(),
+                            engineConfig.getIndexSettings().isIdBloomFilterEnabled()));
                 lastCommittedSegmentInfos = store.readLastCommittedSegmentsInfo();
                 ExternalSearcherManager externalSearcherManager = new ExternalSearcherManager(internalSearcherManager,
                     externalSearcherFactory);
@@ -2140,6 +2142,10 @@ public class InternalEngine extends Engine {
         if (config().getIndexSort() != null) {
             iwc.setIndexSort(config().getIndexSort());
         }
+        if (config().getIndexSettings().isIdBloomFilterEnabled()) {
+            // build the id filter of merged segments on the merge thread rather than when the merged segment is first refreshed
+            iwc.setMergedSegmentWarmer(leaf -> VersionsAndSeqNoResolver.loadIdFilter(leaf, IdFieldMapper.NAME));
+        }
         return iwc;
     }
 
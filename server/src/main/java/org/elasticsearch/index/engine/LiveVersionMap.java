@@ -47,6 +47,7 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
 
         private static final VersionLookup EMPTY = new VersionLookup(Collections.emptyMap());
         private final Map<BytesRef, VersionValue> map;
+        private final boolean paged;
 
         // each version map has a notion of safe / unsafe which allows us to apply certain optimization in the auto-generated ID usecase
         // where we know that documents can't have any duplicates so we can skip the version map entirely. This reduces
@@ -66,6 +67,31 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
 
         private VersionLookup(Map<BytesRef, VersionValue> map) {
             this.map = map;
+            this.paged = map instanceof PagedVersionMap;
+        }
+
+        /**
+         * Creates a new empty lookup that uses the same kind of map as this lookup
+         */
+        VersionLookup newLookup(int expectedSize) {
+            return newLookup(paged, expectedSize);
+        }
+
+        static VersionLookup newLookup(boolean paged, int expectedSize) {
+            if (paged) {
+                return new VersionLookup(new PagedVersionMap(expectedSize));
+            }
+            return new VersionLookup(ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency(expectedSize));
+        }
+
+        /**
+         * Returns the number of bytes the given entry takes in this lookup
+         */
+        long ramBytesUsed(BytesRef uid, VersionValue value) {
+            if (paged) {
+                return PagedVersionMap.BYTES_PER_ENTRY + uid.length;
+            }
+            return BASE_BYTES_PER_CHM_ENTRY + value.ramBytesUsed() + BASE_BYTES_PER_BYTESREF + uid.bytes.length;
         }
 
         VersionValue get(BytesRef key) {
@@ -123,9 +149,8 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
             this.previousMapsNeededSafeAccess = previousMapsNeededSafeAccess;
         }
 
-        Maps() {
-            this(new VersionLookup(ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency()),
-                VersionLookup.EMPTY, false);
+        Maps(boolean paged) {
+            this(VersionLookup.newLookup(paged, 16), VersionLookup.EMPTY, false);
         }
 
         boolean isSafeAccessMode() {
@@ -143,8 +168,7 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
          * Builds a new map for the refresh transition this should be called in beforeRefresh()
          */
         Maps buildTransitionMap() {
-            return new Maps(new VersionLookup(ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency(current.size())), current,
-                shouldInheritSafeAccess());
+            return new Maps(current.newLookup(current.size()), current, shouldInheritSafeAccess());
         }
 
         /**
@@ -155,10 +179,9 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
         }
 
         void put(BytesRef uid, VersionValue version) {
-            long uidRAMBytesUsed = BASE_BYTES_PER_BYTESREF + uid.bytes.length;
-            long ramAccounting = BASE_BYTES_PER_CHM_ENTRY + version.ramBytesUsed() + uidRAMBytesUsed;
+            long ramAccounting = current.ramBytesUsed(uid, version);
             VersionValue previousValue = current.put(uid, version);
-            ramAccounting += previousValue == null ? 0 : -(BASE_BYTES_PER_CHM_ENTRY + previousValue.ramBytesUsed() + uidRAMBytesUsed);
+            ramAccounting -= previousValue == null ? 0 : current.ramBytesUsed(uid, previousValue);
             adjustRam(ramAccounting);
         }
 
@@ -173,8 +196,7 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
             VersionValue previousValue = current.remove(uid);
             current.updateMinDeletedTimestamp(deleted);
             if (previousValue != null) {
-                long uidRAMBytesUsed = BASE_BYTES_PER_BYTESREF + uid.bytes.length;
-                adjustRam(-(BASE_BYTES_PER_CHM_ENTRY + previousValue.ramBytesUsed() + uidRAMBytesUsed));
+                adjustRam(-current.ramBytesUsed(uid, previousValue));
             }
             if (old != VersionLookup.EMPTY) {
                 // we also need to remove it from the old map here to make sure we don't read this stale value while
@@ -191,10 +213,27 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
     // All deletes also go here, and delete "tombstones" are retained after refresh:
     private final Map<BytesRef, DeleteVersionValue> tombstones = ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency();
 
-    private volatile Maps maps = new Maps();
+    // whether the live maps store versions in paged primitive arrays rather than in a concurrent hash map of objects
+    private final boolean paged;
+
+    private volatile Maps maps;
     // we maintain a second map that only receives the updates that we skip on the actual map (unsafe ops)
     // this map is only maintained if assertions are enabled
-    private volatile Maps unsafeKeysMap = new Maps();
+    private volatile Maps unsafeKeysMap;
+
+    LiveVersionMap() {
+        this(false);
+    }
+
+    /**
+     * @param paged if <code>true</code> the versions of the uids that were indexed since the last refresh are kept in a
+     *              {@link PagedVersionMap}, which creates far fewer objects than the default concurrent hash map
+     */
+    LiveVersionMap(boolean paged) {
+        this.paged = paged;
+        this.maps = new Maps(paged);
+        this.unsafeKeysMap = new Maps(paged);
+    }
 
     /**
      * Bytes consumed for each BytesRef UID:
@@ -415,7 +454,7 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
      * Called when this index is closed.
      */
     synchronized void clear() {
-        maps = new Maps();
+        maps = new Maps(paged);
         tombstones.clear();
         // NOTE: we can't zero this here, because a refresh thread could be calling InternalEngine.pruneDeletedTombstones at the same time,
         // and this will lead to an assert trip.  Presumably it's fine if our ramBytesUsedTombstones is non-zero after clear since the
@@ -0,0 +1,227 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.engine;
+
+import com.carrotsearch.hppc.BitMixer;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.ByteArray;
+import org.elasticsearch.common.util.BytesRefHash;
+import org.elasticsearch.common.util.LongArray;
+import org.elasticsearch.index.translog.Translog;
+
+import java.util.AbstractMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A map from uid to {@link VersionValue} that stores the uids and the fields of the version values in paged primitive arrays
+ * instead of using a hash entry, a {@link BytesRef} and one or two value objects per uid. Version values are materialized
+ * when they are read. Removed uids keep their slot until the map is discarded, which is fine since the maps of the
+ * {@link LiveVersionMap} only live until the next refresh.
+ * The map is split into segments that are guarded by their own lock so that operations on different uids don't contend much.
+ */
+final class PagedVersionMap extends AbstractMap<BytesRef, VersionValue> {
+
+    /**
+     * Bytes used per uid in addition to the uid bytes: 6 longs and a type per value, the id table of the hash at its
+     * average load factor plus the start offset and the cached hash of the uid.
+     */
+    static final long BYTES_PER_ENTRY = 6 * Long.BYTES + 1 + 18 + Long.BYTES + Integer.BYTES;
+
+    private static final BigArrays BIG_ARRAYS = BigArrays.NON_RECYCLING_INSTANCE;
+    private static final int NUM_SEGMENTS_BITS = 5;
+    private static final int LONGS_PER_ENTRY = 6;
+
+    private static final byte REMOVED = 0;
+    private static final byte INDEX = 1;
+    private static final byte DELETE = 2;
+
+    private final Segment[] segments = new Segment[1 << NUM_SEGMENTS_BITS];
+
+    PagedVersionMap(int expectedSize) {
+        final int expectedSegmentSize = Math.max(16, expectedSize >> NUM_SEGMENTS_BITS);
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(expectedSegmentSize);
+        }
+    }
+
+    private Segment segment(int code) {
+        // use the high bits, the hash of the segment uses the low bits to find a slot
+        return segments[BitMixer.mix32(code) >>> (Integer.SIZE - NUM_SEGMENTS_BITS)];
+    }
+
+    @Override
+    public VersionValue get(Object key) {
+        final BytesRef uid = (BytesRef) key;
+        final int code = uid.hashCode();
+        return segment(code).get(uid, code);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public VersionValue put(BytesRef uid, VersionValue value) {
+        final int code = uid.hashCode();
+        return segment(code).put(uid, code, value);
+    }
+
+    @Override
+    public VersionValue remove(Object key) {
+        final BytesRef uid = (BytesRef) key;
+        final int code = uid.hashCode();
+        return segment(code).remove(uid, code);
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Segment segment : segments) {
+            if (segment.size() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a point in time snapshot of the entries of this map. This materializes all keys and values so it should only
+     * be used for testing and assertions.
+     */
+    @Override
+    public Set<Entry<BytesRef, VersionValue>> entrySet() {
+        final Set<Entry<BytesRef, VersionValue>> entries = new HashSet<>();
+        for (Segment segment : segments) {
+            segment.collect(entries);
+        }
+        return entries;
+    }
+
+    private static final class Segment {
+        private final BytesRefHash uids;
+        private ByteArray types;
+        private LongArray values;
+        private int size;
+
+        Segment(int expectedSize) {
+            uids = new BytesRefHash(expectedSize, BIG_ARRAYS);
+            types = BIG_ARRAYS.newByteArray(expectedSize, false);
+            values = BIG_ARRAYS.newLongArray(expectedSize * LONGS_PER_ENTRY, false);
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized VersionValue get(BytesRef uid, int code) {
+            final long id = uids.find(uid, code);
+            return id < 0 ? null : read(id);
+        }
+
+        synchronized VersionValue put(BytesRef uid, int code, VersionValue value) {
+            long id = uids.add(uid, code);
+            final VersionValue previous;
+            if (id < 0) {
+                id = -1 - id;
+                previous = read(id);
+            } else {
+                types = BIG_ARRAYS.grow(types, id + 1);
+                values = BIG_ARRAYS.grow(values, (id + 1) * LONGS_PER_ENTRY);
+                previous = null;
+            }
+            if (previous == null) {
+                size++;
+            }
+            write(id, value);
+            return previous;
+        }
+
+        synchronized VersionValue remove(BytesRef uid, int code) {
+            final long id = uids.find(uid, code);
+            if (id < 0) {
+                return null;
+            }
+            final VersionValue previous = read(id);
+            if (previous != null) {
+                types.set(id, REMOVED);
+                size--;
+            }
+            return previous;
+        }
+
+        synchronized void collect(Set<Entry<BytesRef, VersionValue>> entries) {
+            final BytesRef spare = new BytesRef();
+            for (long id = 0; id < uids.size(); id++) {
+                final VersionValue value = read(id);
+                if (value != null) {
+                    entries.add(new SimpleImmutableEntry<>(BytesRef.deepCopyOf(uids.get(id, spare)), value));
+                }
+            }
+        }
+
+        private void write(long id, VersionValue value) {
+            final long offset = id * LONGS_PER_ENTRY;
+            values.set(offset, value.version);
+            values.set(offset + 1, value.seqNo);
+            values.set(offset + 2, value.term);
+            if (value.isDelete()) {
+                types.set(id, DELETE);
+                values.set(offset + 3, ((DeleteVersionValue) value).time);
+            } else {
+                types.set(id, INDEX);
+                final Translog.Location location = value.getLocation();
+                // generations are never negative so -1 marks a missing location
+                values.set(offset + 3, location == null ? -1 : location.generation);
+                values.set(offset + 4, location == null ? 0 : location.translogLocation);
+                values.set(offset + 5, location == null ? 0 : location.size);
+            }
+        }
+
+        private VersionValue read(long id) {
+            final byte type = types.get(id);
+            if (type == REMOVED) {
+                return null;
+            }
+            final long offset = id * LONGS_PER_ENTRY;
+            final long version = values.get(offset);
+            final long seqNo = values.get(offset + 1);
+            final long term = values.get(offset + 2);
+            if (type == DELETE) {
+                return new DeleteVersionValue(version, seqNo, term, values.get(offset + 3));
+            }
+            assert type == INDEX : "unexpected type [" + type + "]";
+            final long generation = values.get(offset + 3);
+            final Translog.Location location = generation == -1 ? null
+                : new Translog.Location(generation, values.get(offset + 4), (int) values.get(offset + 5));
+            return new IndexVersionValue(location, version, seqNo, term);
+        }
+    }
+}
@@ -26,6 +26,9 @@ import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.SearcherFactory;
 import org.elasticsearch.common.breaker.CircuitBreaker;
 import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.lucene.uid.IdBloomFilter;
+import org.elasticsearch.common.lucene.uid.VersionsAndSeqNoResolver;
+import org.elasticsearch.index.mapper.IdFieldMapper;
 import org.elasticsearch.indices.breaker.CircuitBreakerService;
 
 import java.io.IOException;
@@ -37,17 +40,32 @@ import java.util.Set;
 /**
  * Searcher factory extending {@link EngineSearcherFactory} that tracks the
  * amount of memory used by segments in the accounting circuit breaker.
+ * It optionally loads the {@link IdBloomFilter} of new segments before they
+ * become visible, their memory is tracked together with the segment memory.
  */
 final class RamAccountingSearcherFactory extends SearcherFactory {
 
     private final CircuitBreakerService breakerService;
+    private final boolean loadIdFilters;
 
     RamAccountingSearcherFactory(CircuitBreakerService breakerService) {
+        this(breakerService, false);
+    }
+
+    RamAccountingSearcherFactory(CircuitBreakerService breakerService, boolean loadIdFilters) {
         this.breakerService = breakerService;
+        this.loadIdFilters = loadIdFilters;
     }
 
     @Override
     public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) throws IOException {
+        if (loadIdFilters) {
+            for (LeafReaderContext lrc : reader.leaves()) {
+                // merged segments already got their filter from the merged segment warmer, this only builds the
+                // filters of flushed segments and of segments that existed when the engine was opened
+                VersionsAndSeqNoResolver.loadIdFilter(lrc.reader(), IdFieldMapper.NAME);
+            }
+        }
         processReaders(reader, previousReader);
         return super.newSearcher(reader, previousReader);
     }
@@ -76,7 +94,8 @@ final class RamAccountingSearcherFactory extends SearcherFactory {
             // don't add the segment's memory unless it is not referenced by the previous reader
             // (only new segments)
             if (prevReaders.contains(segmentReader.getCoreCacheHelper().getKey()) == false) {
-                final long ramBytesUsed = segmentReader.ramBytesUsed();
+                final IdBloomFilter idFilter = VersionsAndSeqNoResolver.getIdFilter(segmentReader);
+                final long ramBytesUsed = segmentReader.ramBytesUsed() + (idFilter == null ? 0 : idFilter.ramBytesUsed());
                 // add the segment memory to the breaker (non-breaking)
                 breaker.addWithoutBreaking(ramBytesUsed);
                 // and register a listener for when the segment is closed to decrement the
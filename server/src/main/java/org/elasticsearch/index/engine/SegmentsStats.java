@@ -21,6 +21,7 @@ package org.elasticsearch.index.engine;
 
 import com.carrotsearch.hppc.cursors.ObjectObjectCursor;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.collect.ImmutableOpenMap;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -47,6 +48,7 @@ public class SegmentsStats implements Streamable, ToXContentFragment {
     private long versionMapMemoryInBytes;
     private long maxUnsafeAutoIdTimestamp = Long.MIN_VALUE;
     private long bitsetMemoryInBytes;
+    private long bitsetOffHeapMemoryInBytes;
     private ImmutableOpenMap<String, Long> fileSizes = ImmutableOpenMap.of();
 
     /*
@@ -124,6 +126,10 @@ public class SegmentsStats implements Streamable, ToXContentFragment {
         this.bitsetMemoryInBytes += bitsetMemoryInBytes;
     }
 
+    public void addBitsetOffHeapMemoryInBytes(long bitsetOffHeapMemoryInBytes) {
+        this.bitsetOffHeapMemoryInBytes += bitsetOffHeapMemoryInBytes;
+    }
+
     public void addFileSizes(ImmutableOpenMap<String, Long> fileSizes) {
         ImmutableOpenMap.Builder<String, Long> map = ImmutableOpenMap.builder(this.fileSizes);
 
@@ -155,6 +161,7 @@ public class SegmentsStats implements Streamable, ToXContentFragment {
         addIndexWriterMemoryInBytes(mergeStats.indexWriterMemoryInBytes);
         addVersionMapMemoryInBytes(mergeStats.versionMapMemoryInBytes);
         addBitsetMemoryInBytes(mergeStats.bitsetMemoryInBytes);
+        addBitsetOffHeapMemoryInBytes(mergeStats.bitsetOffHeapMemoryInBytes);
         addFileSizes(mergeStats.fileSizes);
     }
 
@@ -275,6 +282,17 @@ public class SegmentsStats implements Streamable, ToXContentFragment {
         return new ByteSizeValue(bitsetMemoryInBytes);
     }
 
+    /**
+     * Estimation of how much direct memory the cached bit sets that are kept off heap are taking.
+     */
+    public long getBitsetOffHeapMemoryInBytes() {
+        return bitsetOffHeapMemoryInBytes;
+    }
+
+    public ByteSizeValue getBitsetOffHeapMemory() {
+        return new ByteSizeValue(bitsetOffHeapMemoryInBytes);
+    }
+
     public ImmutableOpenMap<String, Long> getFileSizes() {
         return fileSizes;
     }
@@ -301,6 +319,8 @@ public class SegmentsStats implements Streamable, ToXContentFragment {
         builder.humanReadableField(Fields.INDEX_WRITER_MEMORY_IN_BYTES, Fields.INDEX_WRITER_MEMORY, getIndexWriterMemory());
         builder.humanReadableField(Fields.VERSION_MAP_MEMORY_IN_BYTES, Fields.VERSION_MAP_MEMORY, getVersionMapMemory());
         builder.humanReadableField(Fields.FIXED_BIT_SET_MEMORY_IN_BYTES, Fields.FIXED_BIT_SET, getBitsetMemory());
+        builder.humanReadableField(Fields.FIXED_BIT_SET_OFF_HEAP_MEMORY_IN_BYTES, Fields.FIXED_BIT_SET_OFF_HEAP,
+            getBitsetOffHeapMemory());
         builder.field(Fields.MAX_UNSAFE_AUTO_ID_TIMESTAMP, maxUnsafeAutoIdTimestamp);
         builder.startObject(Fields.FILE_SIZES);
         for (Iterator<ObjectObjectCursor<String, Long>> it = fileSizes.iterator(); it.hasNext();) {
@@ -339,6 +359,8 @@ public class SegmentsStats implements Streamable, ToXContentFragment {
         static final String MAX_UNSAFE_AUTO_ID_TIMESTAMP = "max_unsafe_auto_id_timestamp";
         static final String FIXED_BIT_SET = "fixed_bit_set";
         static final String FIXED_BIT_SET_MEMORY_IN_BYTES = "fixed_bit_set_memory_in_bytes";
+        static final String FIXED_BIT_SET_OFF_HEAP = "fixed_bit_set_off_heap";
+        static final String FIXED_BIT_SET_OFF_HEAP_MEMORY_IN_BYTES = "fixed_bit_set_off_heap_memory_in_bytes";
         static final String FILE_SIZES = "file_sizes";
         static final String SIZE = "size";
         static final String SIZE_IN_BYTES = "size_in_bytes";
@@ -358,6 +380,9 @@ public class SegmentsStats implements Streamable, ToXContentFragment {
         indexWriterMemoryInBytes = in.readLong();
         versionMapMemoryInBytes = in.readLong();
         bitsetMemoryInBytes = in.readLong();
+        if (in.getVersion().onOrAfter(Version.V_7_0_0)) {
+            bitsetOffHeapMemoryInBytes = in.readVLong();
+        }
         maxUnsafeAutoIdTimestamp = in.readLong();
 
         int size = in.readVInt();
@@ -383,6 +408,9 @@ public class SegmentsStats implements Streamable, ToXContentFragment {
         out.writeLong(indexWriterMemoryInBytes);
         out.writeLong(versionMapMemoryInBytes);
         out.writeLong(bitsetMemoryInBytes);
+        if (out.getVersion().onOrAfter(Version.V_7_0_0)) {
+            out.writeVLong(bitsetOffHeapMemoryInBytes);
+        }
         out.writeLong(maxUnsafeAutoIdTimestamp);
 
         out.writeVInt(fileSizes.size());
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.index.fielddata;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.FieldMemoryStats;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
@@ -42,6 +43,9 @@ public class FieldDataStats implements Streamable, ToXContentFragment {
     long evictions;
     @Nullable
     FieldMemoryStats fields;
+    // null if no global ordinals were built
+    @Nullable
+    GlobalOrdinalsStats globalOrdinals;
 
     public FieldDataStats() {
 
@@ -53,6 +57,12 @@ public class FieldDataStats implements Streamable, ToXContentFragment {
         this.fields = fields;
     }
 
+    public FieldDataStats(long memorySize, long evictions, @Nullable FieldMemoryStats fields,
+                          @Nullable GlobalOrdinalsStats globalOrdinals) {
+        this(memorySize, evictions, fields);
+        this.globalOrdinals = globalOrdinals;
+    }
+
     public void add(FieldDataStats stats) {
         this.memorySize += stats.memorySize;
         this.evictions += stats.evictions;
@@ -63,6 +73,9 @@ public class FieldDataStats implements Streamable, ToXContentFragment {
                 fields.add(stats.fields);
             }
         }
+        if (stats.globalOrdinals != null) {
+            globalOrdinals = stats.globalOrdinals.merge(globalOrdinals);
+        }
     }
 
     public long getMemorySizeInBytes() {
@@ -82,11 +95,22 @@ public class FieldDataStats implements Streamable, ToXContentFragment {
         return fields;
     }
 
+    /**
+     * Returns the time spent building global ordinals, or <code>null</code> if no global ordinals were built.
+     */
+    @Nullable
+    public GlobalOrdinalsStats getGlobalOrdinals() {
+        return globalOrdinals;
+    }
+
     @Override
     public void readFrom(StreamInput in) throws IOException {
         memorySize = in.readVLong();
         evictions = in.readVLong();
         fields = in.readOptionalWriteable(FieldMemoryStats::new);
+        if (in.getVersion().onOrAfter(Version.V_7_0_0)) {
+            globalOrdinals = in.readOptionalWriteable(GlobalOrdinalsStats::new);
+        }
     }
 
     @Override
@@ -94,6 +118,9 @@ public class FieldDataStats implements Streamable, ToXContentFragment {
         out.writeVLong(memorySize);
         out.writeVLong(evictions);
         out.writeOptionalWriteable(fields);
+        if (out.getVersion().onOrAfter(Version.V_7_0_0)) {
+            out.writeOptionalWriteable(globalOrdinals);
+        }
     }
 
     @Override
@@ -104,6 +131,9 @@ public class FieldDataStats implements Streamable, ToXContentFragment {
         if (fields != null) {
             fields.toXContent(builder, FIELDS, MEMORY_SIZE_IN_BYTES, MEMORY_SIZE);
         }
+        if (globalOrdinals != null) {
+            globalOrdinals.toXContent(builder, params);
+        }
         builder.endObject();
         return builder;
     }
@@ -115,11 +145,12 @@ public class FieldDataStats implements Streamable, ToXContentFragment {
         FieldDataStats that = (FieldDataStats) o;
         return memorySize == that.memorySize &&
             evictions == that.evictions &&
-            Objects.equals(fields, that.fields);
+            Objects.equals(fields, that.fields) &&
+            Objects.equals(globalOrdinals, that.globalOrdinals);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(memorySize, evictions, fields);
+        return Objects.hash(memorySize, evictions, fields, globalOrdinals);
     }
 }
@@ -0,0 +1,157 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.fielddata;
+
+import com.carrotsearch.hppc.ObjectLongHashMap;
+import com.carrotsearch.hppc.cursors.ObjectLongCursor;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * The time spent building global ordinals, in total and per field if fields were requested.
+ */
+public final class GlobalOrdinalsStats implements Writeable, ToXContentFragment {
+
+    private static final String GLOBAL_ORDINALS = "global_ordinals";
+    private static final String BUILD_TIME = "build_time";
+    private static final String BUILD_TIME_IN_MILLIS = "build_time_in_millis";
+    private static final String FIELDS = "fields";
+
+    private final long buildTimeInMillis;
+    @Nullable
+    private final ObjectLongHashMap<String> fieldBuildTimesInMillis;
+
+    public GlobalOrdinalsStats(long buildTimeInMillis, @Nullable ObjectLongHashMap<String> fieldBuildTimesInMillis) {
+        this.buildTimeInMillis = buildTimeInMillis;
+        this.fieldBuildTimesInMillis = fieldBuildTimesInMillis;
+    }
+
+    public GlobalOrdinalsStats(StreamInput in) throws IOException {
+        buildTimeInMillis = in.readVLong();
+        if (in.readBoolean()) {
+            int size = in.readVInt();
+            fieldBuildTimesInMillis = new ObjectLongHashMap<>(size);
+            for (int i = 0; i < size; i++) {
+                fieldBuildTimesInMillis.put(in.readString(), in.readVLong());
+            }
+        } else {
+            fieldBuildTimesInMillis = null;
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVLong(buildTimeInMillis);
+        out.writeBoolean(fieldBuildTimesInMillis != null);
+        if (fieldBuildTimesInMillis != null) {
+            out.writeVInt(fieldBuildTimesInMillis.size());
+            for (ObjectLongCursor<String> entry : fieldBuildTimesInMillis) {
+                out.writeString(entry.key);
+                out.writeVLong(entry.value);
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of these stats with the given stats added to it.
+     */
+    GlobalOrdinalsStats merge(@Nullable GlobalOrdinalsStats other) {
+        ObjectLongHashMap<String> fields = fieldBuildTimesInMillis == null ? null : fieldBuildTimesInMillis.clone();
+        if (other == null) {
+            return new GlobalOrdinalsStats(buildTimeInMillis, fields);
+        }
+        if (other.fieldBuildTimesInMillis != null) {
+            if (fields == null) {
+                fields = other.fieldBuildTimesInMillis.clone();
+            } else {
+                for (ObjectLongCursor<String> entry : other.fieldBuildTimesInMillis) {
+                    fields.addTo(entry.key, entry.value);
+                }
+            }
+        }
+        return new GlobalOrdinalsStats(buildTimeInMillis + other.buildTimeInMillis, fields);
+    }
+
+    /**
+     * Returns the total time spent building global ordinals.
+     */
+    public TimeValue getBuildTime() {
+        return new TimeValue(buildTimeInMillis);
+    }
+
+    public long getBuildTimeInMillis() {
+        return buildTimeInMillis;
+    }
+
+    /**
+     * Returns the time spent building the global ordinals of the given field in milliseconds, or <code>0</code> if the field
+     * is not in the stats.
+     */
+    public long getFieldBuildTimeInMillis(String field) {
+        return fieldBuildTimesInMillis == null ? 0 : fieldBuildTimesInMillis.get(field);
+    }
+
+    /**
+     * Returns the time spent building global ordinals in milliseconds per field, if fields were requested.
+     */
+    @Nullable
+    public ObjectLongHashMap<String> getFieldBuildTimesInMillis() {
+        return fieldBuildTimesInMillis;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(GLOBAL_ORDINALS);
+        builder.humanReadableField(BUILD_TIME_IN_MILLIS, BUILD_TIME, getBuildTime());
+        if (fieldBuildTimesInMillis != null) {
+            builder.startObject(FIELDS);
+            for (ObjectLongCursor<String> field : fieldBuildTimesInMillis) {
+                builder.startObject(field.key);
+                builder.humanReadableField(BUILD_TIME_IN_MILLIS, BUILD_TIME, new TimeValue(field.value));
+                builder.endObject();
+            }
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        GlobalOrdinalsStats that = (GlobalOrdinalsStats) o;
+        return buildTimeInMillis == that.buildTimeInMillis &&
+            Objects.equals(fieldBuildTimesInMillis, that.fieldBuildTimesInMillis);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(buildTimeInMillis, fieldBuildTimesInMillis);
+    }
+}
@@ -25,19 +25,24 @@ import org.elasticsearch.common.FieldMemoryStats;
 import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.regex.Regex;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.index.fielddata.ordinals.GlobalOrdinalsIndexFieldData;
 import org.elasticsearch.index.shard.ShardId;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 public class ShardFieldData implements IndexFieldDataCache.Listener {
 
     private final CounterMetric evictionsMetric = new CounterMetric();
     private final CounterMetric totalMetric = new CounterMetric();
     private final ConcurrentMap<String, CounterMetric> perFieldTotals = ConcurrentCollections.newConcurrentMap();
+    private final CounterMetric globalOrdinalsBuildTimeMetric = new CounterMetric();
+    private final ConcurrentMap<String, CounterMetric> perFieldGlobalOrdinalsBuildTimes = ConcurrentCollections.newConcurrentMap();
 
     public FieldDataStats stats(String... fields) {
         ObjectLongHashMap<String> fieldTotals = null;
+        ObjectLongHashMap<String> fieldBuildTimes = null;
         if (fields != null && fields.length > 0) {
             fieldTotals = new ObjectLongHashMap<>();
             for (Map.Entry<String, CounterMetric> entry : perFieldTotals.entrySet()) {
@@ -45,9 +50,18 @@ public class ShardFieldData implements IndexFieldDataCache.Listener {
                     fieldTotals.put(entry.getKey(), entry.getValue().count());
                 }
             }
+            fieldBuildTimes = new ObjectLongHashMap<>();
+            for (Map.Entry<String, CounterMetric> entry : perFieldGlobalOrdinalsBuildTimes.entrySet()) {
+                if (Regex.simpleMatch(fields, entry.getKey())) {
+                    fieldBuildTimes.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(entry.getValue().count()));
+                }
+            }
         }
+        // every build of global ordinals adds its field, global ordinals stats are omitted until there is one
+        final GlobalOrdinalsStats globalOrdinals = perFieldGlobalOrdinalsBuildTimes.isEmpty() ? null :
+            new GlobalOrdinalsStats(TimeUnit.NANOSECONDS.toMillis(globalOrdinalsBuildTimeMetric.count()), fieldBuildTimes);
         return new FieldDataStats(totalMetric.count(), evictionsMetric.count(), fieldTotals == null ? null :
-            new FieldMemoryStats(fieldTotals));
+            new FieldMemoryStats(fieldTotals), globalOrdinals);
     }
 
     @Override
@@ -64,6 +78,11 @@ public class ShardFieldData implements IndexFieldDataCache.Listener {
                 prev.inc(ramUsage.ramBytesUsed());
             }
         }
+        if (ramUsage instanceof GlobalOrdinalsIndexFieldData) {
+            final long buildTimeInNanos = ((GlobalOrdinalsIndexFieldData) ramUsage).getBuildTimeInNanos();
+            globalOrdinalsBuildTimeMetric.inc(buildTimeInNanos);
+            perFieldGlobalOrdinalsBuildTimes.computeIfAbsent(fieldName, k -> new CounterMetric()).inc(buildTimeInNanos);
+        }
     }
 
     @Override
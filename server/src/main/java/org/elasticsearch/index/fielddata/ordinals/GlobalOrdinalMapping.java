@@ -19,7 +19,6 @@
 
 package org.elasticsearch.index.fielddata.ordinals;
 
-import org.apache.lucene.index.OrdinalMap;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.LongValues;
@@ -32,11 +31,11 @@ import java.io.IOException;
 final class GlobalOrdinalMapping extends SortedSetDocValues {
 
     private final SortedSetDocValues values;
-    private final OrdinalMap ordinalMap;
+    private final IncrementalOrdinalMap ordinalMap;
     private final LongValues mapping;
     private final SortedSetDocValues[] bytesValues;
 
-    GlobalOrdinalMapping(OrdinalMap ordinalMap, SortedSetDocValues[] bytesValues, int segmentIndex) {
+    GlobalOrdinalMapping(IncrementalOrdinalMap ordinalMap, SortedSetDocValues[] bytesValues, int segmentIndex) {
         super();
         this.values = bytesValues[segmentIndex];
         this.bytesValues = bytesValues;
@@ -70,9 +69,7 @@ final class GlobalOrdinalMapping extends SortedSetDocValues {
 
     @Override
     public BytesRef lookupOrd(long globalOrd) throws IOException {
-        final long segmentOrd = ordinalMap.getFirstSegmentOrd(globalOrd);
-        int readerIndex = ordinalMap.getFirstSegmentNumber(globalOrd);
-        return bytesValues[readerIndex].lookupOrd(segmentOrd);
+        return ordinalMap.lookupOrd(globalOrd, bytesValues);
     }
 
     @Override
@@ -20,12 +20,13 @@
 package org.elasticsearch.index.fielddata.ordinals;
 
 import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.OrdinalMap;
+import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.util.Accountable;
-import org.apache.lucene.util.packed.PackedInts;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.breaker.CircuitBreaker;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.IndexSettings;
@@ -53,29 +54,60 @@ public enum GlobalOrdinalsBuilder {
     public static IndexOrdinalsFieldData build(final IndexReader indexReader, IndexOrdinalsFieldData indexFieldData,
             IndexSettings indexSettings, CircuitBreakerService breakerService, Logger logger,
             Function<SortedSetDocValues, ScriptDocValues<?>> scriptFunction) throws IOException {
+        return doBuild(indexReader, indexFieldData, indexSettings, breakerService, logger, scriptFunction, null);
+    }
+
+    /**
+     * Build global ordinals for the provided {@link DirectoryReader}, incrementally from the global ordinals that were
+     * built for a previous reader of the same shard if possible.
+     * @param previousGlobalOrdinals the global ordinals that were built for previous readers, or <code>null</code> to always
+     *                               build global ordinals from scratch
+     */
+    public static IndexOrdinalsFieldData build(final DirectoryReader indexReader, IndexOrdinalsFieldData indexFieldData,
+            IndexSettings indexSettings, CircuitBreakerService breakerService, Logger logger,
+            Function<SortedSetDocValues, ScriptDocValues<?>> scriptFunction,
+            @Nullable PreviousGlobalOrdinals previousGlobalOrdinals) throws IOException {
+        final IndexOrdinalsFieldData fieldData = doBuild(indexReader, indexFieldData, indexSettings, breakerService, logger,
+            scriptFunction, previousGlobalOrdinals == null ? null : previousGlobalOrdinals.get(indexReader));
+        if (previousGlobalOrdinals != null) {
+            previousGlobalOrdinals.put(indexReader, ((GlobalOrdinalsIndexFieldData) fieldData).getIncrementalOrdinalMap());
+        }
+        return fieldData;
+    }
+
+    private static IndexOrdinalsFieldData doBuild(final IndexReader indexReader, IndexOrdinalsFieldData indexFieldData,
+            IndexSettings indexSettings, CircuitBreakerService breakerService, Logger logger,
+            Function<SortedSetDocValues, ScriptDocValues<?>> scriptFunction,
+            @Nullable IncrementalOrdinalMap previous) throws IOException {
         assert indexReader.leaves().size() > 1;
         long startTimeNS = System.nanoTime();
 
         final AtomicOrdinalsFieldData[] atomicFD = new AtomicOrdinalsFieldData[indexReader.leaves().size()];
         final SortedSetDocValues[] subs = new SortedSetDocValues[indexReader.leaves().size()];
+        final Object[] segmentKeys = new Object[indexReader.leaves().size()];
         for (int i = 0; i < indexReader.leaves().size(); ++i) {
+            final LeafReader reader = indexReader.leaves().get(i).reader();
             atomicFD[i] = indexFieldData.load(indexReader.leaves().get(i));
             subs[i] = atomicFD[i].getOrdinalsValues();
+            segmentKeys[i] = reader.getCoreCacheHelper() == null ? null : reader.getCoreCacheHelper().getKey();
         }
-        final OrdinalMap ordinalMap = OrdinalMap.build(null, subs, PackedInts.DEFAULT);
+        final IncrementalOrdinalMap ordinalMap = IncrementalOrdinalMap.build(subs, segmentKeys, previous);
         final long memorySizeInBytes = ordinalMap.ramBytesUsed();
-        breakerService.getBreaker(CircuitBreaker.FIELDDATA).addWithoutBreaking(memorySizeInBytes);
+        final CircuitBreaker breaker = breakerService.getBreaker(CircuitBreaker.FIELDDATA);
+        breaker.addWithoutBreaking(memorySizeInBytes);
+        final long buildTimeInNanos = System.nanoTime() - startTimeNS;
 
         if (logger.isDebugEnabled()) {
             logger.debug(
-                    "global-ordinals [{}][{}] took [{}]",
+                    "global-ordinals [{}][{}] took [{}] (incremental [{}])",
                     indexFieldData.getFieldName(),
                     ordinalMap.getValueCount(),
-                    new TimeValue(System.nanoTime() - startTimeNS, TimeUnit.NANOSECONDS)
+                    new TimeValue(buildTimeInNanos, TimeUnit.NANOSECONDS),
+                    ordinalMap.isIncremental()
             );
         }
         return new GlobalOrdinalsIndexFieldData(indexSettings, indexFieldData.getFieldName(),
-                atomicFD, ordinalMap, memorySizeInBytes, scriptFunction
+                atomicFD, ordinalMap, memorySizeInBytes, buildTimeInNanos, scriptFunction, breaker, indexReader.getReaderCacheHelper()
         );
     }
 
@@ -108,9 +140,9 @@ public enum GlobalOrdinalsBuilder {
             };
             subs[i] = atomicFD[i].getOrdinalsValues();
         }
-        final OrdinalMap ordinalMap = OrdinalMap.build(null, subs, PackedInts.DEFAULT);
+        final IncrementalOrdinalMap ordinalMap = IncrementalOrdinalMap.build(subs, new Object[subs.length], null);
         return new GlobalOrdinalsIndexFieldData(indexSettings, indexFieldData.getFieldName(),
-                atomicFD, ordinalMap, 0, AbstractAtomicOrdinalsFieldData.DEFAULT_SCRIPT_FUNCTION
+                atomicFD, ordinalMap, 0, 0, AbstractAtomicOrdinalsFieldData.DEFAULT_SCRIPT_FUNCTION, null, null
         );
     }
 
@@ -19,12 +19,16 @@
 package org.elasticsearch.index.fielddata.ordinals;
 
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.OrdinalMap;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.packed.PackedInts;
 import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.breaker.CircuitBreaker;
 import org.elasticsearch.index.AbstractIndexComponent;
 import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.fielddata.AtomicOrdinalsFieldData;
@@ -35,6 +39,8 @@ import org.elasticsearch.index.fielddata.ScriptDocValues;
 import org.elasticsearch.index.fielddata.plain.AbstractAtomicOrdinalsFieldData;
 import org.elasticsearch.search.MultiValueMode;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.function.Function;
@@ -46,18 +52,29 @@ public class GlobalOrdinalsIndexFieldData extends AbstractIndexComponent impleme
 
     private final String fieldName;
     private final long memorySizeInBytes;
+    private final long buildTimeInNanos;
 
-    private final OrdinalMap ordinalMap;
+    private final IncrementalOrdinalMap ordinalMap;
     private final Atomic[] atomicReaders;
     private final Function<SortedSetDocValues, ScriptDocValues<?>> scriptFunction;
-
+    // lazily built if the global ordinals were built incrementally and a caller needs an OrdinalMap
+    private volatile OrdinalMap luceneOrdinalMap;
+    // accounts for the lazily built OrdinalMap until the reader of the global ordinals is closed
+    @Nullable
+    private final CircuitBreaker breaker;
+    @Nullable
+    private final IndexReader.CacheHelper readerCacheHelper;
 
     protected GlobalOrdinalsIndexFieldData(IndexSettings indexSettings, String fieldName, AtomicOrdinalsFieldData[] segmentAfd,
-                                           OrdinalMap ordinalMap, long memorySizeInBytes, Function<SortedSetDocValues,
-                                           ScriptDocValues<?>> scriptFunction) {
+                                           IncrementalOrdinalMap ordinalMap, long memorySizeInBytes, long buildTimeInNanos,
+                                           Function<SortedSetDocValues, ScriptDocValues<?>> scriptFunction,
+                                           @Nullable CircuitBreaker breaker, @Nullable IndexReader.CacheHelper readerCacheHelper) {
         super(indexSettings);
+        this.breaker = breaker;
+        this.readerCacheHelper = readerCacheHelper;
         this.fieldName = fieldName;
         this.memorySizeInBytes = memorySizeInBytes;
+        this.buildTimeInNanos = buildTimeInNanos;
         this.ordinalMap = ordinalMap;
         this.atomicReaders = new Atomic[segmentAfd.length];
         for (int i = 0; i < segmentAfd.length; i++) {
@@ -112,18 +129,70 @@ public class GlobalOrdinalsIndexFieldData extends AbstractIndexComponent impleme
         return atomicReaders[context.ord];
     }
 
+    /**
+     * Returns the global ordinals as an {@link OrdinalMap}. If the global ordinals were built incrementally the
+     * {@link OrdinalMap} is built from scratch on the first call, which is as costly as building the global ordinals
+     * without the previous build. Prefer {@link #getGlobalOrds(int)} to map segment ordinals to global ordinals.
+     * The {@link OrdinalMap} is accounted on the fielddata circuit breaker until the reader is closed, which is also when
+     * the cached global ordinals are released.
+     */
     @Override
     public OrdinalMap getOrdinalMap() {
+        if (ordinalMap.isOrdinalMap()) {
+            return ordinalMap.getOrdinalMap();
+        }
+        OrdinalMap map = luceneOrdinalMap;
+        if (map == null) {
+            synchronized (this) {
+                map = luceneOrdinalMap;
+                if (map == null) {
+                    final SortedSetDocValues[] values = new SortedSetDocValues[atomicReaders.length];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = atomicReaders[i].afd.getOrdinalsValues();
+                    }
+                    try {
+                        map = OrdinalMap.build(null, values, PackedInts.DEFAULT);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    if (breaker != null && readerCacheHelper != null) {
+                        final long bytes = map.ramBytesUsed();
+                        // the map is not kept if it breaks, the next call builds it again
+                        breaker.addEstimateBytesAndMaybeBreak(bytes, fieldName);
+                        readerCacheHelper.addClosedListener(key -> breaker.addWithoutBreaking(-bytes));
+                    }
+                    luceneOrdinalMap = map;
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Returns the mapping from the ordinals of the given segment to global ordinals.
+     */
+    public LongValues getGlobalOrds(int segmentIndex) {
+        return ordinalMap.getGlobalOrds(segmentIndex);
+    }
+
+    IncrementalOrdinalMap getIncrementalOrdinalMap() {
         return ordinalMap;
     }
 
+    /**
+     * Returns the time it took to build these global ordinals, in nanoseconds.
+     */
+    public long getBuildTimeInNanos() {
+        return buildTimeInNanos;
+    }
+
     private final class Atomic extends AbstractAtomicOrdinalsFieldData {
 
         private final AtomicOrdinalsFieldData afd;
-        private final OrdinalMap ordinalMap;
+        private final IncrementalOrdinalMap ordinalMap;
         private final int segmentIndex;
 
-        private Atomic(AtomicOrdinalsFieldData afd, OrdinalMap ordinalMap, int segmentIndex) {
+        private Atomic(AtomicOrdinalsFieldData afd, IncrementalOrdinalMap ordinalMap, int segmentIndex) {
             super(scriptFunction);
             this.afd = afd;
             this.ordinalMap = ordinalMap;
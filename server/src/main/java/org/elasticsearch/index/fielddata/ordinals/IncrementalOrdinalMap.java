@@ -0,0 +1,348 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.index.fielddata.ordinals;
+
+import org.apache.lucene.index.OrdinalMap;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.packed.PackedInts;
+import org.apache.lucene.util.packed.PackedLongValues;
+import org.elasticsearch.common.Nullable;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps the ordinals of the segments of a reader to global ordinals. The map is either built from scratch with an
+ * {@link OrdinalMap} over all segments, or it extends the map that was fully built for a previous reader of the same shard
+ * if that reader had a subset of the segments of this reader, which is the common case after a refresh. In the latter case
+ * only the terms of the new segments are merged with an {@link OrdinalMap}, and the terms that they add are inserted between
+ * the global ordinals of the previous build. Ordinals of the new terms are resolved with binary searches, which is why this
+ * is only done as long as the new segments have few terms compared to the previous build, see {@link #MAX_DELTA_RATIO}. The
+ * ordinals of the segments of the previous build are shifted by the new terms once, when the map is built, so that looking up
+ * a global ordinal is a single read for every segment.
+ */
+public final class IncrementalOrdinalMap implements Accountable {
+
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(IncrementalOrdinalMap.class);
+
+    /**
+     * The map is fully rebuilt once the new segments have more than one term for every <code>MAX_DELTA_RATIO</code> terms
+     * of the last full build.
+     */
+    static final int MAX_DELTA_RATIO = 8;
+
+    // the full build that this map extends, and the core cache keys of the segments it was built on
+    private final OrdinalMap base;
+    private final Object[] baseKeys;
+    private final int[] baseToSegment;
+    private final int[] segmentToBase;
+    // the map of the segments that are not part of the base, null if there are none
+    @Nullable
+    private final OrdinalMap delta;
+    private final int[] deltaToSegment;
+    private final int[] segmentToDelta;
+    // the global ordinal of every ordinal of the delta map
+    private final PackedLongValues deltaToGlobalOrds;
+    // the global ordinal of every ordinal of the segments of the base, null if the delta has no new terms
+    private final PackedLongValues[] baseToGlobalOrds;
+    // for every term that doesn't exist in the base: its global ordinal and its delta ordinal
+    private final PackedLongValues newTermGlobalOrds;
+    private final PackedLongValues newTermDeltaOrds;
+    private final long valueCount;
+
+    private IncrementalOrdinalMap(OrdinalMap base, Object[] baseKeys, int[] baseToSegment, int[] segmentToBase,
+                                  @Nullable OrdinalMap delta, int[] deltaToSegment, int[] segmentToDelta,
+                                  @Nullable PackedLongValues deltaToGlobalOrds, @Nullable PackedLongValues[] baseToGlobalOrds,
+                                  @Nullable PackedLongValues newTermGlobalOrds, @Nullable PackedLongValues newTermDeltaOrds) {
+        this.base = base;
+        this.baseKeys = baseKeys;
+        this.baseToSegment = baseToSegment;
+        this.segmentToBase = segmentToBase;
+        this.delta = delta;
+        this.deltaToSegment = deltaToSegment;
+        this.segmentToDelta = segmentToDelta;
+        this.deltaToGlobalOrds = deltaToGlobalOrds;
+        this.baseToGlobalOrds = baseToGlobalOrds;
+        this.newTermGlobalOrds = newTermGlobalOrds;
+        this.newTermDeltaOrds = newTermDeltaOrds;
+        this.valueCount = base.getValueCount() + (newTermGlobalOrds == null ? 0 : newTermGlobalOrds.size());
+    }
+
+    /**
+     * Builds the global ordinals of the given segment values.
+     * @param values the values of every segment of the reader, in reader order
+     * @param segmentKeys the core cache key of every segment of the reader, or <code>null</code> for segments that have none
+     * @param previous the map that was built for a previous reader of the same shard, or <code>null</code> to build from scratch
+     */
+    public static IncrementalOrdinalMap build(SortedSetDocValues[] values, Object[] segmentKeys,
+                                              @Nullable IncrementalOrdinalMap previous) throws IOException {
+        assert values.length == segmentKeys.length;
+        if (previous != null) {
+            final IncrementalOrdinalMap map = extend(previous, values, segmentKeys);
+            if (map != null) {
+                return map;
+            }
+        }
+        final int[] identity = new int[values.length];
+        Arrays.setAll(identity, i -> i);
+        final int[] noDelta = new int[values.length];
+        Arrays.fill(noDelta, -1);
+        return new IncrementalOrdinalMap(OrdinalMap.build(null, values, PackedInts.DEFAULT), segmentKeys.clone(), identity, identity,
+            null, new int[0], noDelta, null, null, null, null);
+    }
+
+    /**
+     * Extends the base of the given map with the segments that it doesn't have, or returns <code>null</code> if a segment of
+     * the base doesn't exist anymore or if the new segments have too many terms.
+     */
+    private static IncrementalOrdinalMap extend(IncrementalOrdinalMap previous, SortedSetDocValues[] values,
+                                                Object[] segmentKeys) throws IOException {
+        final Map<Object, Integer> segments = new HashMap<>();
+        for (int i = 0; i < segmentKeys.length; i++) {
+            if (segmentKeys[i] == null) {
+                return null;
+            }
+            segments.put(segmentKeys[i], i);
+        }
+        final Object[] baseKeys = previous.baseKeys;
+        final int[] baseToSegment = new int[baseKeys.length];
+        final int[] segmentToBase = new int[values.length];
+        Arrays.fill(segmentToBase, -1);
+        for (int i = 0; i < baseKeys.length; i++) {
+            final Integer segment = baseKeys[i] == null ? null : segments.get(baseKeys[i]);
+            if (segment == null) {
+                // the segment was merged away, its terms might not exist anymore
+                return null;
+            }
+            baseToSegment[i] = segment;
+            segmentToBase[segment] = i;
+        }
+        final int[] deltaToSegment = new int[values.length - baseKeys.length];
+        final int[] segmentToDelta = new int[values.length];
+        Arrays.fill(segmentToDelta, -1);
+        final SortedSetDocValues[] deltaValues = new SortedSetDocValues[deltaToSegment.length];
+        for (int i = 0, d = 0; i < values.length; i++) {
+            if (segmentToBase[i] == -1) {
+                deltaToSegment[d] = i;
+                segmentToDelta[i] = d;
+                deltaValues[d++] = values[i];
+            }
+        }
+        final OrdinalMap base = previous.base;
+        if (deltaValues.length == 0) {
+            return new IncrementalOrdinalMap(base, baseKeys, baseToSegment, segmentToBase, null, deltaToSegment, segmentToDelta,
+                null, null, null, null);
+        }
+        final OrdinalMap delta = OrdinalMap.build(null, deltaValues, PackedInts.DEFAULT);
+        if (delta.getValueCount() > base.getValueCount() / MAX_DELTA_RATIO) {
+            return null;
+        }
+
+        final PackedLongValues.Builder deltaToGlobalOrds = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+        final PackedLongValues.Builder insertionPoints = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+        final PackedLongValues.Builder newTermGlobalOrds = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+        final PackedLongValues.Builder newTermDeltaOrds = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+        final BytesRefBuilder term = new BytesRefBuilder();
+        long numNewTerms = 0;
+        long from = 0;
+        for (long ord = 0; ord < delta.getValueCount(); ord++) {
+            term.copyBytes(deltaValues[delta.getFirstSegmentNumber(ord)].lookupOrd(delta.getFirstSegmentOrd(ord)));
+            // the terms of the delta are sorted, so the next term can't be inserted before the previous one
+            long low = from;
+            long high = base.getValueCount() - 1;
+            boolean found = false;
+            while (low <= high) {
+                final long mid = (low + high) >>> 1;
+                final int cmp = lookupBaseOrd(base, baseToSegment, values, mid).compareTo(term.get());
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    low = mid;
+                    found = true;
+                    break;
+                }
+            }
+            // all new terms so far sort before this one
+            deltaToGlobalOrds.add(low + numNewTerms);
+            if (found) {
+                from = low + 1;
+            } else {
+                insertionPoints.add(low);
+                newTermGlobalOrds.add(low + numNewTerms);
+                newTermDeltaOrds.add(ord);
+                numNewTerms++;
+                from = low;
+            }
+        }
+        final PackedLongValues[] baseToGlobalOrds = numNewTerms == 0 ? null :
+            shiftBaseOrds(base, baseToSegment, values, insertionPoints.build());
+        return new IncrementalOrdinalMap(base, baseKeys, baseToSegment, segmentToBase, delta, deltaToSegment, segmentToDelta,
+            deltaToGlobalOrds.build(), baseToGlobalOrds, newTermGlobalOrds.build(), newTermDeltaOrds.build());
+    }
+
+    /**
+     * Maps the ordinals of every segment of the base to global ordinals, given the sorted positions in the base at which new
+     * terms are inserted.
+     */
+    private static PackedLongValues[] shiftBaseOrds(OrdinalMap base, int[] baseToSegment, SortedSetDocValues[] values,
+                                                    PackedLongValues insertionPoints) {
+        final PackedLongValues[] baseToGlobalOrds = new PackedLongValues[baseToSegment.length];
+        for (int i = 0; i < baseToSegment.length; i++) {
+            final LongValues baseOrds = base.getGlobalOrds(i);
+            final long valueCount = values[baseToSegment[i]].getValueCount();
+            final PackedLongValues.Builder globalOrds = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+            // both the ordinals of the segment and the insertion points are sorted, so they are merged in a single pass
+            long shift = 0;
+            for (long ord = 0; ord < valueCount; ord++) {
+                final long baseOrd = baseOrds.get(ord);
+                // every new term that is inserted at or before this ordinal shifts it by one
+                while (shift < insertionPoints.size() && insertionPoints.get(shift) <= baseOrd) {
+                    shift++;
+                }
+                globalOrds.add(baseOrd + shift);
+            }
+            baseToGlobalOrds[i] = globalOrds.build();
+        }
+        return baseToGlobalOrds;
+    }
+
+    private static BytesRef lookupBaseOrd(OrdinalMap base, int[] baseToSegment, SortedSetDocValues[] values,
+                                          long baseOrd) throws IOException {
+        final int segment = baseToSegment[base.getFirstSegmentNumber(baseOrd)];
+        return values[segment].lookupOrd(base.getFirstSegmentOrd(baseOrd));
+    }
+
+    /**
+     * Returns <code>true</code> if this map extends a previous build rather than being built from scratch.
+     */
+    public boolean isIncremental() {
+        return delta != null;
+    }
+
+    /**
+     * Returns <code>true</code> if the global ordinals of this map are the ones of an {@link OrdinalMap} over the segments in
+     * reader order, see {@link #getOrdinalMap()}.
+     */
+    boolean isOrdinalMap() {
+        if (delta != null) {
+            return false;
+        }
+        for (int i = 0; i < baseToSegment.length; i++) {
+            if (baseToSegment[i] != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the {@link OrdinalMap} this map extends.
+     */
+    OrdinalMap getOrdinalMap() {
+        return base;
+    }
+
+    /**
+     * Returns the total number of unique terms in the global ordinal space.
+     */
+    public long getValueCount() {
+        return valueCount;
+    }
+
+    /**
+     * Returns the mapping from the ordinals of the given segment to global ordinals.
+     */
+    public LongValues getGlobalOrds(int segmentIndex) {
+        if (segmentToBase[segmentIndex] != -1) {
+            if (baseToGlobalOrds == null) {
+                return base.getGlobalOrds(segmentToBase[segmentIndex]);
+            }
+            return baseToGlobalOrds[segmentToBase[segmentIndex]];
+        }
+        final LongValues deltaOrds = delta.getGlobalOrds(segmentToDelta[segmentIndex]);
+        return new LongValues() {
+            @Override
+            public long get(long index) {
+                return deltaToGlobalOrds.get(deltaOrds.get(index));
+            }
+        };
+    }
+
+    /**
+     * Returns the term of the given global ordinal.
+     * @param values the values of every segment of the reader, in reader order
+     */
+    public BytesRef lookupOrd(long globalOrd, SortedSetDocValues[] values) throws IOException {
+        long baseOrd = globalOrd;
+        if (newTermGlobalOrds != null && newTermGlobalOrds.size() > 0) {
+            final long numLess = countLessThanOrEqual(newTermGlobalOrds, globalOrd - 1);
+            if (numLess < newTermGlobalOrds.size() && newTermGlobalOrds.get(numLess) == globalOrd) {
+                final long deltaOrd = newTermDeltaOrds.get(numLess);
+                final int segment = deltaToSegment[delta.getFirstSegmentNumber(deltaOrd)];
+                return values[segment].lookupOrd(delta.getFirstSegmentOrd(deltaOrd));
+            }
+            baseOrd -= numLess;
+        }
+        return lookupBaseOrd(base, baseToSegment, values, baseOrd);
+    }
+
+    /**
+     * Returns the number of values of the given sorted values that are less than or equal to <code>value</code>.
+     */
+    private static long countLessThanOrEqual(PackedLongValues sorted, long value) {
+        long low = 0;
+        long high = sorted.size() - 1;
+        while (low <= high) {
+            final long mid = (low + high) >>> 1;
+            if (sorted.get(mid) <= value) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        long size = BASE_RAM_BYTES_USED + base.ramBytesUsed() + RamUsageEstimator.shallowSizeOf(baseKeys)
+            + RamUsageEstimator.sizeOf(baseToSegment) + RamUsageEstimator.sizeOf(segmentToBase)
+            + RamUsageEstimator.sizeOf(deltaToSegment) + RamUsageEstimator.sizeOf(segmentToDelta);
+        if (delta != null) {
+            size += delta.ramBytesUsed() + deltaToGlobalOrds.ramBytesUsed() + newTermGlobalOrds.ramBytesUsed()
+                + newTermDeltaOrds.ramBytesUsed();
+        }
+        if (baseToGlobalOrds != null) {
+            size += RamUsageEstimator.shallowSizeOf(baseToGlobalOrds);
+            for (PackedLongValues globalOrds : baseToGlobalOrds) {
+                size += globalOrds.ramBytesUsed();
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.index.fielddata.ordinals;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.elasticsearch.common.lucene.index.ElasticsearchDirectoryReader;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.index.shard.ShardUtils;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the global ordinals that were last built for every shard of a field, so that the global ordinals of the next reader
+ * of the shard can be built incrementally from them. The global ordinals of a reader are only kept until the reader is closed,
+ * which means that they are only reused if the next reader builds its global ordinals before, as it is the case when global
+ * ordinals are loaded eagerly on refresh.
+ */
+public final class PreviousGlobalOrdinals {
+
+    private final ConcurrentMap<ShardId, IncrementalOrdinalMap> ordinalMaps = ConcurrentCollections.newConcurrentMap();
+
+    /**
+     * Returns the global ordinals that were last built for the shard of the given reader, or <code>null</code> if there are none.
+     */
+    IncrementalOrdinalMap get(DirectoryReader reader) {
+        final ShardId shardId = ShardUtils.extractShardId(reader);
+        return shardId == null ? null : ordinalMaps.get(shardId);
+    }
+
+    /**
+     * Records the global ordinals that were built for the given reader until the reader is closed.
+     */
+    void put(DirectoryReader reader, IncrementalOrdinalMap ordinalMap) {
+        final ShardId shardId = ShardUtils.extractShardId(reader);
+        if (shardId == null) {
+            return;
+        }
+        ordinalMaps.put(shardId, ordinalMap);
+        // only remove the global ordinals of this reader, a newer reader might have replaced them already
+        ElasticsearchDirectoryReader.addReaderCloseListener(reader, key -> ordinalMaps.remove(shardId, ordinalMap));
+    }
+
+    /**
+     * Returns the number of shards that have global ordinals.
+     */
+    int size() {
+        return ordinalMaps.size();
+    }
+}
@@ -32,6 +32,7 @@ import org.elasticsearch.index.fielddata.AtomicOrdinalsFieldData;
 import org.elasticsearch.index.fielddata.IndexFieldDataCache;
 import org.elasticsearch.index.fielddata.IndexOrdinalsFieldData;
 import org.elasticsearch.index.fielddata.ordinals.GlobalOrdinalsBuilder;
+import org.elasticsearch.index.fielddata.ordinals.PreviousGlobalOrdinals;
 import org.elasticsearch.indices.breaker.CircuitBreakerService;
 
 import java.io.IOException;
@@ -42,6 +43,7 @@ public abstract class AbstractIndexOrdinalsFieldData extends AbstractIndexFieldD
     private final double minFrequency, maxFrequency;
     private final int minSegmentSize;
     protected final CircuitBreakerService breakerService;
+    private final PreviousGlobalOrdinals previousGlobalOrdinals;
 
     protected AbstractIndexOrdinalsFieldData(IndexSettings indexSettings, String fieldName,
             IndexFieldDataCache cache, CircuitBreakerService breakerService,
@@ -51,6 +53,7 @@ public abstract class AbstractIndexOrdinalsFieldData extends AbstractIndexFieldD
         this.minFrequency = minFrequency;
         this.maxFrequency = maxFrequency;
         this.minSegmentSize = minSegmentSize;
+        this.previousGlobalOrdinals = indexSettings.isIncrementalGlobalOrdinalsEnabled() ? new PreviousGlobalOrdinals() : null;
     }
 
     @Override
@@ -96,7 +99,7 @@ public abstract class AbstractIndexOrdinalsFieldData extends AbstractIndexFieldD
     @Override
     public IndexOrdinalsFieldData localGlobalDirect(DirectoryReader indexReader) throws Exception {
         return GlobalOrdinalsBuilder.build(indexReader, this, indexSettings, breakerService, logger,
-                AbstractAtomicOrdinalsFieldData.DEFAULT_SCRIPT_FUNCTION);
+                AbstractAtomicOrdinalsFieldData.DEFAULT_SCRIPT_FUNCTION, previousGlobalOrdinals);
     }
 
     @Override
@@ -433,6 +433,14 @@ public abstract class MappedFieldType extends FieldType {
         this.eagerGlobalOrdinals = eagerGlobalOrdinals;
     }
 
+    /**
+     * Whether the per-segment field data of this field is expensive to build, in which case the warmer loads it for every new
+     * segment so that searches do not have to build it.
+     */
+    public boolean eagerFieldData() {
+        return false;
+    }
+
     /** Return a {@link DocValueFormat} that can be used to display and parse
      *  values as returned by the fielddata API.
      *  The default implementation returns a {@link DocValueFormat#RAW}. */
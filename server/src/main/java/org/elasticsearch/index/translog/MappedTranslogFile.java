@@ -0,0 +1,114 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.translog;
+
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.MMapDirectory;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.util.concurrent.AbstractRefCounted;
+import org.elasticsearch.core.internal.io.IOUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * A memory mapped view of a complete translog file. The file is mapped through {@link MMapDirectory} so that it can be unmapped
+ * before the mapping is garbage collected. Reading from an unmapped file crashes the JVM, so reads hold a reference to the mapping
+ * and the file is only unmapped once the {@link TranslogReader} that owns the mapping is closed and no read is in flight anymore.
+ * Reads that come after that return <code>false</code> so that callers can fall back to reading from the file channel.
+ */
+final class MappedTranslogFile extends AbstractRefCounted {
+
+    private final IndexInput input;
+
+    private MappedTranslogFile(Path path, IndexInput input) {
+        super("mapped translog [" + path + "]");
+        this.input = input;
+    }
+
+    static MappedTranslogFile map(Path path) throws IOException {
+        try (MMapDirectory directory = new MMapDirectory(path.getParent())) {
+            return new MappedTranslogFile(path, directory.openInput(path.getFileName().toString(), IOContext.DEFAULT));
+        }
+    }
+
+    /**
+     * Returns a new input to read from the mapping with {@link #read(IndexInput, long, ByteBuffer)}, since inputs are stateful and
+     * can't be shared by concurrent readers. Returns <code>null</code> if the file is unmapped already.
+     */
+    @Nullable
+    IndexInput newInput() {
+        if (tryIncRef() == false) {
+            return null;
+        }
+        try {
+            return input.clone();
+        } finally {
+            decRef();
+        }
+    }
+
+    /**
+     * Reads bytes at the given position of the mapping into the given heap buffer, filling it, using the given input that was
+     * returned by {@link #newInput()}. Returns <code>false</code> without reading anything if the file is unmapped already.
+     */
+    boolean read(IndexInput in, long position, ByteBuffer buffer) throws IOException {
+        if (tryIncRef() == false) {
+            return false;
+        }
+        try {
+            readBytes(in, position, buffer);
+            return true;
+        } finally {
+            decRef();
+        }
+    }
+
+    /**
+     * Reads bytes at the given position of the mapping into the given heap buffer, filling it, using a new input. Returns
+     * <code>false</code> without reading anything if the file is unmapped already.
+     */
+    boolean read(long position, ByteBuffer buffer) throws IOException {
+        if (tryIncRef() == false) {
+            return false;
+        }
+        try {
+            readBytes(input.clone(), position, buffer);
+            return true;
+        } finally {
+            decRef();
+        }
+    }
+
+    private static void readBytes(IndexInput in, long position, ByteBuffer buffer) throws IOException {
+        assert buffer.hasArray() : "only heap buffers are supported";
+        in.seek(position);
+            in.readBytes(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        buffer.position(buffer.limit());
+    }
+
+    @Override
+    protected void closeInternal() {
+        // no reads are in flight anymore, so unmapping is safe
+        IOUtils.closeWhileHandlingException(input);
+    }
+}
@@ -22,6 +22,7 @@ package org.elasticsearch.index.translog;
 import org.apache.logging.log4j.message.ParameterizedMessage;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.MMapDirectory;
 import org.elasticsearch.Version;
 import org.elasticsearch.common.UUIDs;
 import org.elasticsearch.common.bytes.BytesArray;
@@ -303,12 +304,30 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
                 Translog.parseIdFromFileName(path) + " but got: " + checkpoint.generation;
             TranslogReader reader = TranslogReader.open(channel, path, checkpoint, translogUUID);
             channel = null;
-            return reader;
+            return maybeMapReader(reader);
         } finally {
             IOUtils.close(channel);
         }
     }
 
+    /**
+     * Returns a reader that reads from a memory mapped view of the given complete translog generation if mapping translog files is
+     * enabled for the index. Falls back to the given reader if the file can't be mapped.
+     */
+    private TranslogReader maybeMapReader(TranslogReader reader) {
+        if (indexSettings().isTranslogMMapEnabled() == false || MMapDirectory.UNMAP_SUPPORTED == false) {
+            // without unmapping deleted generations would keep their disk space until the mappings are garbage collected
+            return reader;
+        }
+        try {
+            return reader.closeIntoMappedReader();
+        } catch (IOException e) {
+            logger.warn(() -> new ParameterizedMessage("failed to memory map translog [{}], reading it through its channel",
+                reader.path()), e);
+            return reader;
+        }
+    }
+
     /**
      * Extracts the translog generation from a file name.
      *
@@ -1649,7 +1668,7 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
     public void rollGeneration() throws IOException {
         try (Releasable ignored = writeLock.acquire()) {
             try {
-                final TranslogReader reader = current.closeIntoReader();
+                final TranslogReader reader = maybeMapReader(current.closeIntoReader());
                 readers.add(reader);
                 assert Checkpoint.read(location.resolve(CHECKPOINT_FILE_NAME)).generation == current.getGeneration();
                 copyCheckpointTo(location.resolve(getCommitCheckpointFileName(current.getGeneration())));
@@ -20,6 +20,8 @@
 package org.elasticsearch.index.translog;
 
 import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.MMapDirectory;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.Channels;
 import org.elasticsearch.core.internal.io.IOUtils;
 import org.elasticsearch.index.seqno.SequenceNumbers;
@@ -43,6 +45,9 @@ public class TranslogReader extends BaseTranslogReader implements Closeable {
     private final int totalOperations;
     private final Checkpoint checkpoint;
     protected final AtomicBoolean closed = new AtomicBoolean(false);
+    // a memory mapped view of the translog file that operations are read from instead of the channel, if the file is mapped
+    @Nullable
+    private final MappedTranslogFile mapping;
 
     /**
      * Create a translog writer against the specified translog file channel.
@@ -53,10 +58,16 @@ public class TranslogReader extends BaseTranslogReader implements Closeable {
      * @param header     the header of the translog file
      */
     TranslogReader(final Checkpoint checkpoint, final FileChannel channel, final Path path, final TranslogHeader header) {
+        this(checkpoint, channel, path, header, null);
+    }
+
+    private TranslogReader(final Checkpoint checkpoint, final FileChannel channel, final Path path, final TranslogHeader header,
+                           @Nullable final MappedTranslogFile mapping) {
         super(checkpoint.generation, channel, path, header);
         this.length = checkpoint.offset;
         this.totalOperations = checkpoint.numOps;
         this.checkpoint = checkpoint;
+        this.mapping = mapping;
     }
 
     /**
@@ -75,12 +86,35 @@ public class TranslogReader extends BaseTranslogReader implements Closeable {
         return new TranslogReader(checkpoint, channel, path, header);
     }
 
+    /**
+     * Closes current reader and creates a new one over the same file channel that reads operations from a memory mapped view of
+     * the translog file. The file is mapped through {@link MMapDirectory} so that it is unmapped once the new reader is closed and
+     * the reads of its snapshots are done. If the file can't be mapped this reader is left open and the exception is rethrown.
+     */
+    TranslogReader closeIntoMappedReader() throws IOException {
+        assert mapping == null : "translog [" + path + "] is already mapped";
+        final MappedTranslogFile newMapping = MappedTranslogFile.map(path);
+        if (closed.compareAndSet(false, true)) {
+            return new TranslogReader(checkpoint, channel, path, header, newMapping);
+        } else {
+            newMapping.decRef();
+            throw new AlreadyClosedException(toString() + " is already closed");
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if operations are read from a memory mapped view of the translog file.
+     */
+    boolean isMapped() {
+        return mapping != null;
+    }
+
     /**
      * Closes current reader and creates new one with new checkoint and same file channel
      */
     TranslogReader closeIntoTrimmedReader(long aboveSeqNo, ChannelFactory channelFactory) throws IOException {
         if (closed.compareAndSet(false, true)) {
-            Closeable toCloseOnFailure = channel;
+            Closeable[] toCloseOnFailure = new Closeable[] {channel, this::releaseMapping};
             final TranslogReader newReader;
             try {
                 if (aboveSeqNo < checkpoint.trimmedAboveSeqNo
@@ -94,11 +128,11 @@ public class TranslogReader extends BaseTranslogReader implements Closeable {
                     IOUtils.fsync(checkpointFile, false);
                     IOUtils.fsync(checkpointFile.getParent(), true);
 
-                    newReader = new TranslogReader(newCheckpoint, channel, path, header);
+                    newReader = new TranslogReader(newCheckpoint, channel, path, header, mapping);
                 } else {
-                    newReader = new TranslogReader(checkpoint, channel, path, header);
+                    newReader = new TranslogReader(checkpoint, channel, path, header, mapping);
                 }
-                toCloseOnFailure = null;
+                toCloseOnFailure = new Closeable[0];
                 return newReader;
             } finally {
                 IOUtils.close(toCloseOnFailure);
@@ -112,6 +146,11 @@ public class TranslogReader extends BaseTranslogReader implements Closeable {
         return length;
     }
 
+    @Override
+    public TranslogSnapshot newSnapshot() {
+        return new TranslogSnapshot(this, sizeInBytes(), mapping);
+    }
+
     public int totalOperations() {
         return totalOperations;
     }
@@ -132,13 +171,23 @@ public class TranslogReader extends BaseTranslogReader implements Closeable {
             throw new IOException("read requested before position of first ops. pos [" + position + "] first op on: [" +
                 getFirstOperationOffset() + "]");
         }
-        Channels.readFromFileChannelWithEofException(channel, position, buffer);
+        if (mapping == null || mapping.read(position, buffer) == false) {
+            // once the file is unmapped this fails since the channel is closed too
+            Channels.readFromFileChannelWithEofException(channel, position, buffer);
+        }
     }
 
     @Override
     public final void close() throws IOException {
         if (closed.compareAndSet(false, true)) {
-            channel.close();
+            IOUtils.close(channel, this::releaseMapping);
+        }
+    }
+
+    private void releaseMapping() {
+        if (mapping != null) {
+            // the file is unmapped once the reads of the snapshots of this reader that are in flight are done
+            mapping.decRef();
         }
     }
 
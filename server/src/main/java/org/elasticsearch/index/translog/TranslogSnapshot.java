@@ -18,6 +18,8 @@
  */
 package org.elasticsearch.index.translog;
 
+import org.apache.lucene.store.IndexInput;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.Channels;
 import org.elasticsearch.index.seqno.SequenceNumbers;
 
@@ -36,12 +38,27 @@ final class TranslogSnapshot extends BaseTranslogReader {
     private int skippedOperations;
     private int readOperations;
     private BufferedChecksumStreamInput reuse;
+    @Nullable
+    private final MappedTranslogFile mapping;
+    // the input of this snapshot to read from the mapping, null if the file is not or no longer mapped
+    @Nullable
+    private final IndexInput mappedInput;
 
     /**
      * Create a snapshot of translog file channel.
      */
     TranslogSnapshot(final BaseTranslogReader reader, final long length) {
+        this(reader, length, null);
+    }
+
+    /**
+     * Create a snapshot of a translog file that reads from the given memory mapped view rather than from the file channel, if not null
+     * and as long as the file is mapped.
+     */
+    TranslogSnapshot(final BaseTranslogReader reader, final long length, @Nullable final MappedTranslogFile mapping) {
         super(reader.generation, reader.channel, reader.path, reader.header);
+        this.mapping = mapping;
+        this.mappedInput = mapping == null ? null : mapping.newInput();
         this.length = length;
         this.totalOperations = reader.totalOperations();
         this.checkpoint = reader.getCheckpoint();
@@ -101,7 +118,10 @@ final class TranslogSnapshot extends BaseTranslogReader {
             throw new IOException("read requested before position of first ops. pos [" + position + "] first op on: [" +
                 getFirstOperationOffset() + "], generation: [" + getGeneration() + "], path: [" + path + "]");
         }
-        Channels.readFromFileChannelWithEofException(channel, position, buffer);
+        if (mappedInput == null || mapping.read(mappedInput, position, buffer) == false) {
+            // once the file is unmapped this fails since the channel is closed too
+            Channels.readFromFileChannelWithEofException(channel, position, buffer);
+        }
     }
 
     @Override
@@ -32,11 +32,13 @@ import org.apache.lucene.search.QueryCachingPolicy;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.ScorerSupplier;
 import org.apache.lucene.search.Weight;
+import org.elasticsearch.common.CheckedSupplier;
 import org.elasticsearch.common.lucene.ShardCoreKeyMap;
 import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Setting.Property;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.index.cache.query.CostAwareQueryCachingPolicy;
 import org.elasticsearch.index.cache.query.QueryCacheStats;
 import org.elasticsearch.index.shard.ShardId;
 
@@ -73,6 +75,9 @@ public class IndicesQueryCache implements QueryCache, Closeable {
     // See onDocIdSetEviction for more info
     private final Map<Object, StatsAndCount> stats2 = new IdentityHashMap<>();
 
+    // the hits and cached doc id sets of the query whose scorer is currently created on this thread
+    private final ThreadLocal<CacheEvents> cacheEvents = new ThreadLocal<>();
+
     public IndicesQueryCache(Settings settings) {
         final ByteSizeValue size = INDICES_CACHE_QUERY_SIZE_SETTING.get(settings);
         final int count = INDICES_CACHE_QUERY_COUNT_SETTING.get(settings);
@@ -121,16 +126,56 @@ public class IndicesQueryCache implements QueryCache, Closeable {
         final Weight in = cache.doCache(weight, policy);
         // We wrap the weight to track the readers it sees and map them with
         // the shards they belong to
-        return new CachingWeightWrapper(in);
+        final CostAwareQueryCachingPolicy costAwarePolicy =
+            policy instanceof CostAwareQueryCachingPolicy ? (CostAwareQueryCachingPolicy) policy : null;
+        return new CachingWeightWrapper(in, costAwarePolicy);
+    }
+
+    /**
+     * The hits and cached doc id sets that the cache reported while creating a scorer.
+     */
+    private static class CacheEvents {
+        boolean hit;
+        boolean cached;
+        long ramBytesUsed;
     }
 
     private class CachingWeightWrapper extends Weight {
 
         private final Weight in;
+        // reports the cost of caching the query, or null if the policy doesn't need it
+        private final CostAwareQueryCachingPolicy costAwarePolicy;
 
-        protected CachingWeightWrapper(Weight in) {
+        protected CachingWeightWrapper(Weight in, CostAwareQueryCachingPolicy costAwarePolicy) {
             super(in.getQuery());
             this.in = in;
+            this.costAwarePolicy = costAwarePolicy;
+        }
+
+        /**
+         * Creates a scorer and reports whether it was served from the cache or how long it took to build and cache the
+         * doc id set of the query to the policy. The cache builds the doc id set while the scorer is created.
+         */
+        private <T> T trackCost(CheckedSupplier<T, IOException> scorerSupplier) throws IOException {
+            if (costAwarePolicy == null) {
+                return scorerSupplier.get();
+            }
+            // queries that are nested in this query may create their scorers while this one is created
+            final CacheEvents outerEvents = cacheEvents.get();
+            final CacheEvents events = new CacheEvents();
+            cacheEvents.set(events);
+            final long startTimeInNanos = System.nanoTime();
+            try {
+                return scorerSupplier.get();
+            } finally {
+                final long tookInNanos = System.nanoTime() - startTimeInNanos;
+                cacheEvents.set(outerEvents);
+                if (events.cached) {
+                    costAwarePolicy.onCache(in.getQuery(), tookInNanos, events.ramBytesUsed);
+                } else if (events.hit) {
+                    costAwarePolicy.onHit(in.getQuery());
+                }
+            }
         }
 
         @Override
@@ -147,19 +192,19 @@ public class IndicesQueryCache implements QueryCache, Closeable {
         @Override
         public Scorer scorer(LeafReaderContext context) throws IOException {
             shardKeyMap.add(context.reader());
-            return in.scorer(context);
+            return trackCost(() -> in.scorer(context));
         }
 
         @Override
         public ScorerSupplier scorerSupplier(LeafReaderContext context) throws IOException {
             shardKeyMap.add(context.reader());
-            return in.scorerSupplier(context);
+            return trackCost(() -> in.scorerSupplier(context));
         }
 
         @Override
         public BulkScorer bulkScorer(LeafReaderContext context) throws IOException {
             shardKeyMap.add(context.reader());
-            return in.bulkScorer(context);
+            return trackCost(() -> in.bulkScorer(context));
         }
 
         @Override
@@ -294,6 +339,12 @@ public class IndicesQueryCache implements QueryCache, Closeable {
                 stats2.put(readerCoreKey, statsAndCount);
             }
             statsAndCount.count += 1;
+
+            final CacheEvents events = cacheEvents.get();
+            if (events != null) {
+                events.cached = true;
+                events.ramBytesUsed += ramBytesUsed;
+            }
         }
 
         @Override
@@ -324,6 +375,11 @@ public class IndicesQueryCache implements QueryCache, Closeable {
             super.onHit(readerCoreKey, filter);
             final Stats shardStats = getStats(readerCoreKey);
             shardStats.hitCount += 1;
+
+            final CacheEvents events = cacheEvents.get();
+            if (events != null) {
+                events.hit = true;
+            }
         }
 
         @Override
@@ -74,6 +74,12 @@ public final class IndicesRequestCache implements RemovalListener<IndicesRequest
      */
     public static final Setting<Boolean> INDEX_CACHE_REQUEST_ENABLED_SETTING =
         Setting.boolSetting("index.requests.cache.enable", true, Property.Dynamic, Property.IndexScope);
+    /**
+     * A setting to cache the aggregation results of size 0 requests per segment, so that a refresh only invalidates the
+     * results of the segments it changed.
+     */
+    public static final Setting<Boolean> INDEX_CACHE_REQUEST_SEGMENT_AGGREGATIONS_SETTING =
+        Setting.boolSetting("index.requests.cache.segment_aggregations.enable", false, Property.Dynamic, Property.IndexScope);
     public static final Setting<ByteSizeValue> INDICES_CACHE_QUERY_SIZE =
         Setting.memorySizeSetting("indices.requests.cache.size", "1%", Property.NodeScope);
     public static final Setting<TimeValue> INDICES_CACHE_QUERY_EXPIRE =
@@ -143,6 +149,31 @@ public final class IndicesRequestCache implements RemovalListener<IndicesRequest
         return value;
     }
 
+    /**
+     * Same as {@link #getOrCompute(CacheEntity, Supplier, DirectoryReader, BytesReference, Supplier)} but for a value that only
+     * depends on a single segment. The entry is keyed on the cache helper of the segment reader, which changes when documents of
+     * the segment are deleted, and is cleaned up once the segment reader is closed.
+     */
+    BytesReference getOrCompute(CacheEntity cacheEntity, Supplier<BytesReference> loader,
+                                IndexReader.CacheHelper segmentCacheHelper, BytesReference cacheKey) throws Exception {
+        final Key key =  new Key(cacheEntity, segmentCacheHelper.getKey(), cacheKey);
+        Loader cacheLoader = new Loader(cacheEntity, loader);
+        BytesReference value = cache.computeIfAbsent(key, cacheLoader);
+        if (cacheLoader.isLoaded()) {
+            key.entity.onMiss();
+            CleanupKey cleanupKey = new CleanupKey(cacheEntity, segmentCacheHelper.getKey());
+            if (!registeredClosedListeners.containsKey(cleanupKey)) {
+                Boolean previous = registeredClosedListeners.putIfAbsent(cleanupKey, Boolean.TRUE);
+                if (previous == null) {
+                    segmentCacheHelper.addClosedListener(cleanupKey);
+                }
+            }
+        } else {
+            key.entity.onHit();
+        }
+        return value;
+    }
+
     /**
      * Invalidates the given the cache entry for the given key and it's context
      * @param cacheEntity the cache entity to invalidate for
@@ -23,9 +23,15 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.message.ParameterizedMessage;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PointValues;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.LockObtainFailedException;
 import org.apache.lucene.util.CollectionUtil;
+import org.apache.lucene.util.NumericUtils;
 import org.apache.lucene.util.RamUsageEstimator;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.ResourceAlreadyExistsException;
@@ -45,6 +51,7 @@ import org.elasticsearch.cluster.routing.ShardRouting;
 import org.elasticsearch.common.CheckedFunction;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
 import org.elasticsearch.common.io.FileSystemUtils;
@@ -87,10 +94,13 @@ import org.elasticsearch.index.engine.InternalEngineFactory;
 import org.elasticsearch.index.fielddata.IndexFieldDataCache;
 import org.elasticsearch.index.flush.FlushStats;
 import org.elasticsearch.index.get.GetStats;
+import org.elasticsearch.index.mapper.MappedFieldType;
 import org.elasticsearch.index.mapper.MapperService;
 import org.elasticsearch.index.merge.MergeStats;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryRewriteContext;
+import org.elasticsearch.index.query.QueryShardContext;
+import org.elasticsearch.index.query.Rewriteable;
 import org.elasticsearch.index.recovery.RecoveryStats;
 import org.elasticsearch.index.refresh.RefreshStats;
 import org.elasticsearch.index.search.stats.SearchStats;
@@ -112,7 +122,20 @@ import org.elasticsearch.indices.recovery.RecoveryState;
 import org.elasticsearch.plugins.PluginsService;
 import org.elasticsearch.repositories.RepositoriesService;
 import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.search.SearchService;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.AggregationPhase;
+import org.elasticsearch.search.aggregations.AggregatorFactories;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.SearchContextAggregations;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeSpillCache;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregator.BucketCountThresholds;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregatorFactory;
+import org.elasticsearch.search.aggregations.support.ValuesSourceAggregationBuilder;
+import org.elasticsearch.search.fetch.subphase.DocValueFieldsContext;
 import org.elasticsearch.search.internal.AliasFilter;
+import org.elasticsearch.search.internal.FilteredSearchContext;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.search.internal.ShardSearchRequest;
 import org.elasticsearch.search.query.QueryPhase;
@@ -121,8 +144,11 @@ import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -160,6 +186,9 @@ public class IndicesService extends AbstractLifecycleComponent
     public static final Setting<TimeValue> INDICES_CACHE_CLEAN_INTERVAL_SETTING =
         Setting.positiveTimeSetting("indices.cache.cleanup_interval", TimeValue.timeValueMinutes(1), Property.NodeScope);
     private static final boolean ENFORCE_MAX_SHARDS_PER_NODE;
+    // the maximum number of distinct values per segment of the fields of terms aggregations that are collected per segment,
+    // as a multiple of their shard size
+    static final int MAX_SEGMENT_TERMS_PER_SHARD_SIZE = 10;
 
     static {
         final String ENFORCE_SHARD_LIMIT_KEY = "es.enforce_max_shards_per_node";
@@ -202,6 +231,8 @@ public class IndicesService extends AbstractLifecycleComponent
     private final TimeValue cleanInterval;
     private final IndicesRequestCache indicesRequestCache;
     private final IndicesQueryCache indicesQueryCache;
+    private final TranslogGroupCommitService translogGroupCommitService;
+    private final CompositeSpillCache compositeSpillCache;
     private final MetaStateService metaStateService;
     private final Collection<Function<IndexSettings, Optional<EngineFactory>>> engineFactoryProviders;
     private final Map<String, Function<IndexSettings, IndexStore>> indexStoreFactories;
@@ -230,6 +261,7 @@ public class IndicesService extends AbstractLifecycleComponent
         this.indexNameExpressionResolver = indexNameExpressionResolver;
         this.indicesRequestCache = new IndicesRequestCache(settings);
         this.indicesQueryCache = new IndicesQueryCache(settings);
+        this.translogGroupCommitService = new TranslogGroupCommitService(settings, threadPool);
         this.mapperRegistry = mapperRegistry;
         this.namedWriteableRegistry = namedWriteableRegistry;
         indexingMemoryController = new IndexingMemoryController(settings, threadPool,
@@ -248,8 +280,10 @@ public class IndicesService extends AbstractLifecycleComponent
                 circuitBreakerService.getBreaker(CircuitBreaker.FIELDDATA).addWithoutBreaking(-sizeInBytes);
             }
         });
+        this.compositeSpillCache = createCompositeSpillCache(settings, nodeEnv, threadPool);
         this.cleanInterval = INDICES_CACHE_CLEAN_INTERVAL_SETTING.get(settings);
-        this.cacheCleaner = new CacheCleaner(indicesFieldDataCache, indicesRequestCache,  logger, threadPool, this.cleanInterval);
+        this.cacheCleaner = new CacheCleaner(indicesFieldDataCache, indicesRequestCache, compositeSpillCache, logger, threadPool,
+            this.cleanInterval);
         this.metaStateService = metaStateService;
         this.engineFactoryProviders = engineFactoryProviders;
 
@@ -263,6 +297,26 @@ public class IndicesService extends AbstractLifecycleComponent
         this.indexStoreFactories = indexStoreFactories;
     }
 
+    /**
+     * Creates the cache of the composite buckets that are spilled to disk in the folder of the node, or returns <code>null</code> if
+     * the node has no data folder.
+     */
+    private static CompositeSpillCache createCompositeSpillCache(Settings settings, NodeEnvironment nodeEnv, ThreadPool threadPool) {
+        if (nodeEnv.hasNodeFile() == false) {
+            return null;
+        }
+        final Path path = nodeEnv.nodeDataPaths()[0].resolve(CompositeSpillCache.FOLDER_NAME);
+        try {
+            // removes the buckets that were left over by a node that was not stopped properly
+            IOUtils.rm(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new CompositeSpillCache(path, CompositeSpillCache.MAX_SIZE_SETTING.get(settings).getBytes(),
+            CompositeSpillCache.MAX_KEEP_ALIVE_SETTING.get(settings), CompositeSpillCache.DEFAULT_MAX_BUCKETS_IN_MEMORY,
+            threadPool::relativeTimeInMillis);
+    }
+
     @Override
     protected void doStop() {
         ExecutorService indicesStopExecutor =
@@ -299,7 +353,8 @@ public class IndicesService extends AbstractLifecycleComponent
             indicesFieldDataCache,
             cacheCleaner,
             indicesRequestCache,
-            indicesQueryCache);
+            indicesQueryCache,
+            compositeSpillCache);
     }
 
     /**
@@ -527,7 +582,9 @@ public class IndicesService extends AbstractLifecycleComponent
                 indicesQueryCache,
                 mapperRegistry,
                 indicesFieldDataCache,
-                namedWriteableRegistry
+                namedWriteableRegistry,
+                translogGroupCommitService,
+                compositeSpillCache
         );
     }
 
@@ -1128,14 +1185,17 @@ public class IndicesService extends AbstractLifecycleComponent
         private final TimeValue interval;
         private final AtomicBoolean closed = new AtomicBoolean(false);
         private final IndicesRequestCache requestCache;
+        private final CompositeSpillCache compositeSpillCache;
 
         CacheCleaner(IndicesFieldDataCache cache,
                      IndicesRequestCache requestCache,
+                     @Nullable CompositeSpillCache compositeSpillCache,
                      Logger logger,
                      ThreadPool threadPool,
                      TimeValue interval) {
             this.cache = cache;
             this.requestCache = requestCache;
+            this.compositeSpillCache = compositeSpillCache;
             this.logger = logger;
             this.threadPool = threadPool;
             this.interval = interval;
@@ -1162,6 +1222,14 @@ public class IndicesService extends AbstractLifecycleComponent
             } catch (Exception e) {
                 logger.warn("Exception during periodic request cache cleanup:", e);
             }
+
+            if (compositeSpillCache != null) {
+                try {
+                    compositeSpillCache.removeExpired();
+                } catch (Exception e) {
+                    logger.warn("Exception during periodic composite spill cache cleanup:", e);
+                }
+            }
             // Reschedule itself to run again if not closed
             if (closed.get() == false) {
                 threadPool.schedule(interval, ThreadPool.Names.SAME, this);
@@ -1220,6 +1288,360 @@ public class IndicesService extends AbstractLifecycleComponent
     }
 
 
+    /**
+     * Can the aggregation results of the shard request be cached per segment? Unlike the result of the whole shard, the result of
+     * a segment survives refreshes that don't touch the segment, and it can be shared by requests that only depend on the current
+     * time through a range query that matches all documents of the segment.
+     */
+    public boolean canCacheSegmentAggregations(ShardSearchRequest request, SearchContext context) {
+        if (request.scroll() != null || SearchType.QUERY_THEN_FETCH != context.searchType()) {
+            return false;
+        }
+        IndexSettings settings = context.indexShard().indexSettings();
+        if (settings.getValue(IndicesRequestCache.INDEX_CACHE_REQUEST_SEGMENT_AGGREGATIONS_SETTING) == false
+                || Boolean.FALSE.equals(request.requestCache())) {
+            return false;
+        }
+        // the aggregations of a segment are collected with the query alone
+        if (context.size() != 0 || context.aggregations() == null || request.source() == null
+                || request.source().aggregations() == null || context.getProfilers() != null || context.minimumScore() != null
+                || context.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER
+                || SearchService.NO_TIMEOUT.equals(context.timeout()) == false) {
+            return false;
+        }
+        if (AggregationPhase.canCollectPerSegment(request.source().aggregations()) == false) {
+            return false;
+        }
+        try {
+            if (hasBoundedSegmentTerms(request.source().aggregations().getAggregatorFactories(), context) == false) {
+                return false;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // unlike the query, the aggregations are not rewritten per segment so they must not depend on the current time themselves
+        final QueryShardContext aggregationsContext = new QueryShardContext(context.getQueryShardContext());
+        try {
+            request.source().aggregations().build(new AggregationsSearchContext(context, aggregationsContext, context.aggregations()),
+                null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return aggregationsContext.isCachable();
+    }
+
+    /**
+     * Returns <code>true</code> if the aggregations of the shard request can be collected by aggregators of their own on every leaf
+     * slice of a concurrent search and reduced to the aggregations of the shard, which requires the same aggregations as
+     * {@link #canCacheSegmentAggregations(ShardSearchRequest, SearchContext)} without any script, since the lookup of the search
+     * context that scripts read documents from is not thread-safe.
+     */
+    public boolean canCollectAggregationsPerSlice(ShardSearchRequest request, SearchContext context) {
+        if (context.aggregations() == null || request.source() == null || request.source().aggregations() == null
+                || context.getProfilers() != null || context.searcher().getSliceCount() <= 1) {
+            return false;
+        }
+        final Collection<AggregationBuilder> aggregations = request.source().aggregations().getAggregatorFactories();
+        if (AggregationPhase.canCollectPerSegment(request.source().aggregations()) == false || hasScripts(aggregations)) {
+            return false;
+        }
+        try {
+            return hasBoundedSegmentTerms(aggregations, context);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean hasScripts(Collection<AggregationBuilder> aggregations) {
+        for (AggregationBuilder aggregation : aggregations) {
+            if (aggregation instanceof ValuesSourceAggregationBuilder
+                    && ((ValuesSourceAggregationBuilder<?, ?>) aggregation).script() != null) {
+                return true;
+            }
+            if (hasScripts(aggregation.getSubAggregations())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns <code>true</code> if the number of distinct values of the fields of the given terms aggregations is bounded by a
+     * multiple of their shard size on every segment. Terms aggregations keep all terms of a segment when they are collected per
+     * segment, see {@link #segmentAggregations(AggregatorFactories.Builder)}, so collecting a field with many more terms than the
+     * shard returns would build and cache buckets for terms that are trimmed right away.
+     */
+    private static boolean hasBoundedSegmentTerms(Collection<AggregationBuilder> aggregations, SearchContext context) throws IOException {
+        for (AggregationBuilder aggregation : aggregations) {
+            if (aggregation instanceof TermsAggregationBuilder) {
+                final TermsAggregationBuilder terms = (TermsAggregationBuilder) aggregation;
+                if (terms.field() == null || terms.script() != null) {
+                    // the number of distinct values of a script is unknown
+                    return false;
+                }
+                final MappedFieldType fieldType = context.getQueryShardContext().fieldMapper(terms.field());
+                if (fieldType != null) {
+                    final BucketCountThresholds bucketCountThresholds = TermsAggregatorFactory.shardBucketCountThresholds(
+                        new BucketCountThresholds(terms.minDocCount(), terms.shardMinDocCount(), terms.size(), terms.shardSize()),
+                        terms.order(), context.numberOfShards() == 1);
+                    final long maxTerms = (long) bucketCountThresholds.getShardSize() * MAX_SEGMENT_TERMS_PER_SHARD_SIZE;
+                    for (LeafReaderContext leaf : context.searcher().getIndexReader().leaves()) {
+                        if (maxSegmentTerms(leaf.reader(), fieldType.name()) > maxTerms) {
+                            return false;
+                        }
+                    }
+                }
+            }
+            if (hasBoundedSegmentTerms(aggregation.getSubAggregations(), context) == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns an upper bound of the number of distinct values of the given field in the given segment.
+     */
+    private static long maxSegmentTerms(LeafReader reader, String field) throws IOException {
+        final FieldInfo fieldInfo = reader.getFieldInfos().fieldInfo(field);
+        if (fieldInfo == null) {
+            return 0;
+        }
+        switch (fieldInfo.getDocValuesType()) {
+            case SORTED:
+                return reader.getSortedDocValues(field).getValueCount();
+            case SORTED_SET:
+                return reader.getSortedSetDocValues(field).getValueCount();
+            default:
+                // numeric values have no ordinals, but the range of their sortable encoding bounds their number too
+                return Math.min(reader.maxDoc(), pointsRange(reader.getPointValues(field)));
+        }
+    }
+
+    /**
+     * Returns the number of distinct values between the minimum and the maximum value of the given one dimensional points, or
+     * {@link Long#MAX_VALUE} if that can't be told from their encoding.
+     */
+    private static long pointsRange(@Nullable PointValues values) throws IOException {
+        if (values == null || values.getMinPackedValue().length != values.getBytesPerDimension()) {
+            return Long.MAX_VALUE;
+        }
+        final long range;
+        switch (values.getBytesPerDimension()) {
+            case Integer.BYTES:
+                range = (long) NumericUtils.sortableBytesToInt(values.getMaxPackedValue(), 0)
+                    - NumericUtils.sortableBytesToInt(values.getMinPackedValue(), 0);
+                break;
+            case Long.BYTES:
+                range = NumericUtils.sortableBytesToLong(values.getMaxPackedValue(), 0)
+                    - NumericUtils.sortableBytesToLong(values.getMinPackedValue(), 0);
+                break;
+            default:
+                return Long.MAX_VALUE;
+        }
+        // the range of longs overflows if it is above Long.MAX_VALUE
+        return range < 0 || range == Long.MAX_VALUE ? Long.MAX_VALUE : range + 1;
+    }
+
+    /**
+     * Collects the aggregations of the shard request segment by segment, reusing the cached results of every segment that
+     * didn't change since they were computed. See {@link #canCacheSegmentAggregations(ShardSearchRequest, SearchContext)}.
+     */
+    public void enableSegmentAggregationsCache(ShardSearchRequest request, SearchContext context) {
+        assert canCacheSegmentAggregations(request, context);
+        final IndexShardCacheEntity cacheEntity = new IndexShardCacheEntity(context.indexShard());
+        final CircuitBreaker breaker = circuitBreakerService.getBreaker(CircuitBreaker.REQUEST);
+        final AggregatorFactories segmentFactories;
+        try {
+            // the buckets of every segment count towards the maximum number of buckets of the request
+            segmentFactories = segmentAggregations(request.source().aggregations()).build(context, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        final SegmentCacheKeys cacheKeys = new SegmentCacheKeys(request, context.getQueryShardContext());
+        context.aggregations().segmentAggregationsCache((leaf, loader) -> {
+            final IndexReader.CacheHelper cacheHelper = leaf.reader().getReaderCacheHelper();
+            final BytesReference cacheKey = cacheHelper == null ? null : cacheKeys.cacheKey(leaf);
+            if (cacheKey == null) {
+                return loader.get();
+            }
+            final InternalAggregations[] loaded = new InternalAggregations[1];
+            final BytesReference bytesReference = indicesRequestCache.getOrCompute(cacheEntity, () -> {
+                // see cacheShardLevelResult for the expected size
+                try (BytesStreamOutput out = new BytesStreamOutput(512)) {
+                    loaded[0] = loader.get();
+                    loaded[0].writeTo(out);
+                    return out.bytes();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, cacheHelper, cacheKey);
+            // the results of all segments are held until they are reduced at the end of the query phase
+            breaker.addEstimateBytesAndMaybeBreak(bytesReference.length(), "<segment_aggregations>");
+            context.addReleasable(() -> breaker.addWithoutBreaking(-bytesReference.length()), SearchContext.Lifetime.PHASE);
+            if (loaded[0] != null) {
+                return loaded[0];
+            }
+            try (StreamInput in = new NamedWriteableAwareStreamInput(bytesReference.streamInput(), namedWriteableRegistry)) {
+                return InternalAggregations.readAggregations(in);
+            }
+        }, segmentFactories);
+    }
+
+    /**
+     * Collects the aggregations of the shard request with aggregators of their own on every leaf slice of the query phase, so that
+     * the slices can be searched concurrently. See {@link #canCollectAggregationsPerSlice(ShardSearchRequest, SearchContext)}.
+     */
+    public void enableSliceAggregations(ShardSearchRequest request, SearchContext context) {
+        assert canCollectAggregationsPerSlice(request, context);
+        try {
+            // the buckets of every slice count towards the maximum number of buckets of the request
+            context.aggregations().sliceFactories(segmentAggregations(request.source().aggregations()).build(context, null));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns a copy of the requested aggregations that collects a single segment. Its terms aggregations keep all terms of the
+     * segment, so that the results of all segments reduce to the exact counts of the shard before they are trimmed to the shard
+     * size. They use a hash map of the terms rather than global ordinals, whose memory is proportional to the terms of the whole
+     * shard. The number of terms they keep is bounded, see {@link #hasBoundedSegmentTerms(Collection, SearchContext)}.
+     */
+    private AggregatorFactories.Builder segmentAggregations(AggregatorFactories.Builder aggregations) throws IOException {
+        final AggregatorFactories.Builder copy;
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            aggregations.writeTo(out);
+            try (StreamInput in = new NamedWriteableAwareStreamInput(out.bytes().streamInput(), namedWriteableRegistry)) {
+                copy = new AggregatorFactories.Builder(in);
+            }
+        }
+        keepAllTerms(copy.getAggregatorFactories());
+        return copy;
+    }
+
+    private static void keepAllTerms(Collection<AggregationBuilder> aggregations) {
+        for (AggregationBuilder aggregation : aggregations) {
+            if (aggregation instanceof TermsAggregationBuilder) {
+                ((TermsAggregationBuilder) aggregation).shardSize(Integer.MAX_VALUE).shardMinDocCount(0).executionHint("map");
+            }
+            keepAllTerms(aggregation.getSubAggregations());
+        }
+    }
+
+    /**
+     * Computes the keys of the aggregation results of a request on the segments of the shard. The query and the alias filter are
+     * rewritten against every segment first, which turns a range query that matches all values of the segment into one without
+     * bounds. A segment that a range relative to the current time only partially matches can't be cached since the documents it
+     * matches change over time. The rewrites of all segments share a single context, and the cachability of the rewritten queries
+     * is only checked once for all segments whose queries are rewritten the same.
+     */
+    private static final class SegmentCacheKeys {
+        private final ShardSearchRequest request;
+        private final QueryShardContext queryShardContext;
+        private final SegmentRewriteContext rewriteContext;
+        private final Map<List<QueryBuilder>, Boolean> cachable = new HashMap<>();
+
+        SegmentCacheKeys(ShardSearchRequest request, QueryShardContext queryShardContext) {
+            this.request = request;
+            this.queryShardContext = queryShardContext;
+            this.rewriteContext = new SegmentRewriteContext(queryShardContext);
+        }
+
+        /**
+         * Returns the key of the aggregation results of the request on the given segment, or <code>null</code> if they can't be
+         * cached. Not thread-safe, the segments of a shard are collected one after the other.
+         */
+        BytesReference cacheKey(LeafReaderContext leaf) throws IOException {
+            rewriteContext.reader = leaf.reader();
+            final QueryBuilder query = request.source().query() == null ? null
+                : Rewriteable.rewrite(request.source().query(), rewriteContext, true);
+            final QueryBuilder aliasFilter = request.getAliasFilter().getQueryBuilder() == null ? null
+                : Rewriteable.rewrite(request.getAliasFilter().getQueryBuilder(), rewriteContext, true);
+            if (isCachable(query, aliasFilter) == false) {
+                return null;
+            }
+            try (BytesStreamOutput out = new BytesStreamOutput()) {
+                out.writeStringArray(request.types());
+                out.writeOptionalNamedWriteable(query);
+                out.writeOptionalNamedWriteable(aliasFilter);
+                request.source().aggregations().writeTo(out);
+                return new BytesArray(out.bytes().toBytesRef(), true);
+            }
+        }
+
+        private boolean isCachable(QueryBuilder query, QueryBuilder aliasFilter) throws IOException {
+            final List<QueryBuilder> key = Arrays.asList(query, aliasFilter);
+            Boolean isCachable = cachable.get(key);
+            if (isCachable == null) {
+                // a context that is not cachable anymore can't be reused, but there are few distinct rewritten queries
+                final QueryShardContext context = new QueryShardContext(queryShardContext);
+                if (query != null) {
+                    context.toQuery(query);
+                }
+                if (aliasFilter != null) {
+                    context.toQuery(aliasFilter);
+                }
+                isCachable = context.isCachable();
+                cachable.put(key, isCachable);
+            }
+            return isCachable;
+        }
+    }
+
+    /**
+     * A query shard context that rewrites queries against a single segment of the shard.
+     */
+    private static final class SegmentRewriteContext extends QueryShardContext {
+        private IndexReader reader;
+
+        SegmentRewriteContext(QueryShardContext source) {
+            super(source);
+        }
+
+        @Override
+        public IndexReader getIndexReader() {
+            return reader;
+        }
+    }
+
+    /**
+     * A search context that builds aggregations with its own query shard context and aggregation context, to tell whether they can
+     * be cached or to collect a single segment.
+     */
+    private static final class AggregationsSearchContext extends FilteredSearchContext {
+        private final SearchContext in;
+        private final QueryShardContext queryShardContext;
+        private final SearchContextAggregations aggregations;
+
+        AggregationsSearchContext(SearchContext in, QueryShardContext queryShardContext, SearchContextAggregations aggregations) {
+            super(in);
+            this.in = in;
+            this.queryShardContext = queryShardContext;
+            this.aggregations = aggregations;
+        }
+
+        @Override
+        public QueryShardContext getQueryShardContext() {
+            return queryShardContext;
+        }
+
+        @Override
+        public SearchContextAggregations aggregations() {
+            return aggregations;
+        }
+
+        @Override
+        public DocValueFieldsContext docValueFieldsContext() {
+            return in.docValueFieldsContext();
+        }
+
+        @Override
+        public SearchContext docValueFieldsContext(DocValueFieldsContext docValueFieldsContext) {
+            return in.docValueFieldsContext(docValueFieldsContext);
+        }
+    }
+
     /**
      * Loads the cache result, computing it if needed by executing the query phase and otherwise deserializing the cached
      * value into the {@link SearchContext#queryResult() context's query result}. The combination of load + compute allows
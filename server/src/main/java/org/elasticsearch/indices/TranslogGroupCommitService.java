@@ -0,0 +1,177 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.CheckedConsumer;
+import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.index.translog.Translog;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * A node level service that batches translog sync requests and runs them on the {@link ThreadPool.Names#FLUSH} thread pool
+ * rather than on the indexing threads. Shards batch their own sync requests on the thread that wins the drain by default,
+ * so a node that hosts many shards that are indexed with request durability blocks many indexing threads on fsyncs. With group
+ * commit enabled the sync requests of a translog that arrive while it is synced are batched and the translog is synced at most
+ * once more, up to the highest requested location. The translogs of different shards are synced concurrently, bounded by the
+ * size of the thread pool, and the listeners of a translog are notified as soon as this translog is synced.
+ */
+public final class TranslogGroupCommitService {
+
+    public static final Setting<Boolean> GROUP_COMMIT_ENABLED_SETTING =
+        Setting.boolSetting("indices.translog.group_commit.enabled", false, Property.NodeScope);
+
+    private static final Logger logger = LogManager.getLogger(TranslogGroupCommitService.class);
+
+    private final boolean enabled;
+    private final Executor executor;
+    // syncers are compared by identity, like the method references that shards pass
+    private final ConcurrentMap<CheckedConsumer<Stream<Translog.Location>, IOException>, TranslogSyncs> translogs =
+        ConcurrentCollections.newConcurrentMap();
+
+    public TranslogGroupCommitService(Settings settings, ThreadPool threadPool) {
+        this.enabled = GROUP_COMMIT_ENABLED_SETTING.get(settings);
+        this.executor = threadPool.executor(ThreadPool.Names.FLUSH);
+    }
+
+    /**
+     * Returns <code>true</code> if sync requests are batched and run on the flush thread pool
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Syncs the given location of a translog with the underlying storage unless already synced. The caller thread never
+     * runs the fsync: it is run on the flush thread pool together with the other pending locations of the same translog.
+     *
+     * @param syncer   syncs the translog up to the given locations. Requests are grouped by the identity of the syncer so
+     *                 callers must pass the same instance for the same translog.
+     * @param location the location to sync
+     * @param listener notified once the location is synced or syncing the translog failed
+     */
+    public void sync(CheckedConsumer<Stream<Translog.Location>, IOException> syncer, Translog.Location location,
+                     Consumer<Exception> listener) {
+        TranslogSyncs syncs;
+        do {
+            syncs = translogs.computeIfAbsent(syncer, TranslogSyncs::new);
+        } while (syncs.add(location, listener) == false);
+    }
+
+    /**
+     * The pending sync requests of a translog. At most one sync per translog is running or scheduled at a time, the requests
+     * that arrive in the meantime are synced by the next one. The syncs of a translog are removed once no request is pending.
+     */
+    private final class TranslogSyncs extends AbstractRunnable {
+        private final CheckedConsumer<Stream<Translog.Location>, IOException> syncer;
+        private List<Tuple<Translog.Location, Consumer<Exception>>> pending = new ArrayList<>();
+        private boolean scheduled;
+        private boolean removed;
+        // the requests of the running sync, only accessed by the thread that runs it
+        private List<Tuple<Translog.Location, Consumer<Exception>>> batch;
+
+        TranslogSyncs(CheckedConsumer<Stream<Translog.Location>, IOException> syncer) {
+            this.syncer = syncer;
+        }
+
+        /**
+         * Adds a request and schedules a sync unless one is already scheduled. Returns <code>false</code> if these syncs
+         * were removed, in which case the request must be added to new ones.
+         */
+        boolean add(Translog.Location location, Consumer<Exception> listener) {
+            synchronized (this) {
+                if (removed) {
+                    return false;
+                }
+                pending.add(new Tuple<>(location, listener));
+                if (scheduled) {
+                    return true;
+                }
+                scheduled = true;
+            }
+            executor.execute(this);
+            return true;
+        }
+
+        @Override
+        protected void doRun() throws IOException {
+            synchronized (this) {
+                batch = pending;
+                pending = new ArrayList<>();
+            }
+            syncer.accept(batch.stream().map(Tuple::v1));
+            notifyListeners(batch, null);
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            final List<Tuple<Translog.Location, Consumer<Exception>>> failed;
+            if (batch != null) {
+                failed = batch;
+            } else {
+                // the sync was rejected
+                synchronized (this) {
+                    failed = pending;
+                    pending = new ArrayList<>();
+                }
+            }
+            logger.debug("failed to sync translog", e);
+            notifyListeners(failed, e);
+        }
+
+        @Override
+        public void onAfter() {
+            batch = null;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    removed = true;
+                    translogs.remove(syncer, this);
+                    return;
+                }
+            }
+            // the requests that arrived during the sync are synced by another task so that other translogs get a turn
+            executor.execute(this);
+        }
+
+        private void notifyListeners(List<Tuple<Translog.Location, Consumer<Exception>>> requests, Exception e) {
+            for (Tuple<Translog.Location, Consumer<Exception>> request : requests) {
+                try {
+                    request.v2().accept(e);
+                } catch (Exception ex) {
+                    logger.warn("failed to notify callback", ex);
+                }
+            }
+        }
+    }
+}
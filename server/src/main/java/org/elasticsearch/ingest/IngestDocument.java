@@ -63,8 +63,16 @@ public final class IngestDocument {
 
     public IngestDocument(String index, String type, String id, String routing,
                           Long version, VersionType versionType, Map<String, Object> source) {
-        this.sourceAndMetadata = new HashMap<>();
-        this.sourceAndMetadata.putAll(source);
+        this(new HashMap<>(source), index, type, id, routing, version, versionType);
+    }
+
+    /**
+     * Creates a document whose source and metadata are held by {@code sourceAndMetadata}, which initially only contains the
+     * source. This allows the source to be a {@link LazySourceMap} rather than a copy of the parsed source.
+     */
+    IngestDocument(Map<String, Object> sourceAndMetadata, String index, String type, String id, String routing,
+                   Long version, VersionType versionType) {
+        this.sourceAndMetadata = sourceAndMetadata;
         this.sourceAndMetadata.put(MetaData.INDEX.getFieldName(), index);
         this.sourceAndMetadata.put(MetaData.TYPE.getFieldName(), type);
         this.sourceAndMetadata.put(MetaData.ID.getFieldName(), id);
@@ -29,6 +29,7 @@ import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.ingest.DeletePipelineRequest;
 import org.elasticsearch.action.ingest.PutPipelineRequest;
 import org.elasticsearch.action.support.master.AcknowledgedResponse;
+import org.elasticsearch.client.Requests;
 import org.elasticsearch.cluster.AckedClusterStateUpdateTask;
 import org.elasticsearch.cluster.ClusterChangedEvent;
 import org.elasticsearch.cluster.ClusterState;
@@ -38,8 +39,15 @@ import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.regex.Regex;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.env.Environment;
 import org.elasticsearch.gateway.GatewayService;
@@ -59,8 +67,11 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Holder class for several ingest related services.
@@ -69,6 +80,18 @@ public class IngestService implements ClusterStateApplier {
 
     public static final String NOOP_PIPELINE_NAME = "_none";
 
+    /**
+     * The maximum number of chunks of a bulk request that may execute their pipelines concurrently. Bulk requests are executed by a
+     * single task if this is {@code 1}.
+     */
+    public static final Setting<Integer> BULK_MAX_CONCURRENT_CHUNKS_SETTING =
+        Setting.intSetting("ingest.bulk.max_concurrent_chunks", 1, 1, Property.Dynamic, Property.NodeScope);
+    /**
+     * The number of documents of a bulk request whose pipelines are executed by the same task.
+     */
+    public static final Setting<Integer> BULK_CHUNK_SIZE_SETTING =
+        Setting.intSetting("ingest.bulk.chunk_size", 128, 1, Property.Dynamic, Property.NodeScope);
+
     private final ClusterService clusterService;
     private final ScriptService scriptService;
     private final Map<String, Processor.Factory> processorFactories;
@@ -79,6 +102,8 @@ public class IngestService implements ClusterStateApplier {
     private volatile Map<String, Pipeline> pipelines = new HashMap<>();
     private final ThreadPool threadPool;
     private final IngestMetric totalMetrics = new IngestMetric();
+    private volatile int bulkMaxConcurrentChunks = BULK_MAX_CONCURRENT_CHUNKS_SETTING.getDefault(Settings.EMPTY);
+    private volatile int bulkChunkSize = BULK_CHUNK_SIZE_SETTING.getDefault(Settings.EMPTY);
 
     public IngestService(ClusterService clusterService, ThreadPool threadPool,
                          Environment env, ScriptService scriptService, AnalysisRegistry analysisRegistry,
@@ -112,6 +137,21 @@ public class IngestService implements ClusterStateApplier {
         return Collections.unmodifiableMap(processorFactories);
     }
 
+    public void registerClusterSettingsListeners(ClusterSettings clusterSettings) {
+        bulkMaxConcurrentChunks = clusterSettings.get(BULK_MAX_CONCURRENT_CHUNKS_SETTING);
+        clusterSettings.addSettingsUpdateConsumer(BULK_MAX_CONCURRENT_CHUNKS_SETTING, this::setBulkMaxConcurrentChunks);
+        bulkChunkSize = clusterSettings.get(BULK_CHUNK_SIZE_SETTING);
+        clusterSettings.addSettingsUpdateConsumer(BULK_CHUNK_SIZE_SETTING, this::setBulkChunkSize);
+    }
+
+    void setBulkMaxConcurrentChunks(int bulkMaxConcurrentChunks) {
+        this.bulkMaxConcurrentChunks = bulkMaxConcurrentChunks;
+    }
+
+    void setBulkChunkSize(int bulkChunkSize) {
+        this.bulkChunkSize = bulkChunkSize;
+    }
+
     public ClusterService getClusterService() {
         return clusterService;
     }
@@ -374,10 +414,28 @@ public class IngestService implements ClusterStateApplier {
         ExceptionsHelper.rethrowAndSuppress(exceptions);
     }
 
+    /**
+     * Executes the pipelines of the index requests in {@code actionRequests}. Failed and dropped items are passed to
+     * {@code itemFailureHandler} and {@code itemDroppedHandler} in the order of the requests. If
+     * {@link #BULK_MAX_CONCURRENT_CHUNKS_SETTING} is greater than one, the requests are split into chunks whose pipelines execute
+     * concurrently and the handlers are only called once all chunks are done, after {@code actionRequests} was iterated.
+     */
     public void executeBulkRequest(Iterable<DocWriteRequest<?>> actionRequests,
         BiConsumer<IndexRequest, Exception> itemFailureHandler, Consumer<Exception> completionHandler,
         Consumer<IndexRequest> itemDroppedHandler) {
 
+        if (bulkMaxConcurrentChunks > 1) {
+            List<IndexRequest> indexRequests = new ArrayList<>();
+            for (DocWriteRequest<?> actionRequest : actionRequests) {
+                IndexRequest indexRequest = TransportBulkAction.getIndexWriteRequest(actionRequest);
+                if (indexRequest != null && NOOP_PIPELINE_NAME.equals(indexRequest.getPipeline()) == false) {
+                    indexRequests.add(indexRequest);
+                }
+            }
+            executeBulkRequestInChunks(indexRequests, itemFailureHandler, completionHandler, itemDroppedHandler);
+            return;
+        }
+
         threadPool.executor(ThreadPool.Names.WRITE).execute(new AbstractRunnable() {
 
             @Override
@@ -413,6 +471,155 @@ public class IngestService implements ClusterStateApplier {
         });
     }
 
+    private void executeBulkRequestInChunks(List<IndexRequest> indexRequests,
+        BiConsumer<IndexRequest, Exception> itemFailureHandler, Consumer<Exception> completionHandler,
+        Consumer<IndexRequest> itemDroppedHandler) {
+
+        if (indexRequests.isEmpty()) {
+            completionHandler.accept(null);
+            return;
+        }
+        final BulkChunks chunks = new BulkChunks(indexRequests, bulkChunkSize, itemFailureHandler, completionHandler, itemDroppedHandler);
+        chunks.executeNext(Math.min(bulkMaxConcurrentChunks, chunks.numChunks));
+    }
+
+    /**
+     * The chunks of a bulk request, of which at most {@link #BULK_MAX_CONCURRENT_CHUNKS_SETTING} are executing on the write thread
+     * pool at the same time. Every chunk that completes submits the next one. Chunks are submitted straight to the thread pool so that
+     * its bounded queue rejects them when the node is overloaded, in which case the remaining chunks are skipped and the bulk request
+     * fails with the rejection.
+     */
+    private final class BulkChunks {
+
+        private final List<IndexRequest> indexRequests;
+        private final int chunkSize;
+        private final int numChunks;
+        private final BiConsumer<IndexRequest, Exception> itemFailureHandler;
+        private final Consumer<Exception> completionHandler;
+        private final Consumer<IndexRequest> itemDroppedHandler;
+        // the outcome of every item is recorded by the chunk that executes it and only handed to the handlers, in order, once
+        // all chunks are done, decrementing the number of pending chunks publishes the outcomes of a chunk
+        private final Exception[] failures;
+        private final boolean[] dropped;
+        private final AtomicInteger nextChunk = new AtomicInteger();
+        private final AtomicInteger pendingChunks;
+        // the number of chunks to submit, the thread that raises it from zero submits chunks until it drops back to zero so that
+        // chunks that complete or are rejected on the submitting thread do not recurse into submitting the next one
+        private final AtomicInteger chunksToSubmit = new AtomicInteger();
+        private final AtomicReference<Exception> chunkFailure = new AtomicReference<>();
+        // chunks are submitted by the threads of other chunks, so they restore the context of the bulk request
+        private final Supplier<ThreadContext.StoredContext> context = threadPool.getThreadContext().newRestorableContext(false);
+
+        BulkChunks(List<IndexRequest> indexRequests, int chunkSize, BiConsumer<IndexRequest, Exception> itemFailureHandler,
+                   Consumer<Exception> completionHandler, Consumer<IndexRequest> itemDroppedHandler) {
+            this.indexRequests = indexRequests;
+            this.chunkSize = chunkSize;
+            this.numChunks = (indexRequests.size() + chunkSize - 1) / chunkSize;
+            this.itemFailureHandler = itemFailureHandler;
+            this.completionHandler = completionHandler;
+            this.itemDroppedHandler = itemDroppedHandler;
+            this.failures = new Exception[indexRequests.size()];
+            this.dropped = new boolean[indexRequests.size()];
+            this.pendingChunks = new AtomicInteger(numChunks);
+        }
+
+        void executeNext(int count) {
+            if (chunksToSubmit.getAndAdd(count) != 0) {
+                // another thread is submitting chunks and picks these up
+                return;
+            }
+            int toSubmit = count;
+            do {
+                for (int i = 0; i < toSubmit; i++) {
+                    submitNextChunk();
+                }
+                toSubmit = chunksToSubmit.addAndGet(-toSubmit);
+            } while (toSubmit != 0);
+        }
+
+        private void submitNextChunk() {
+            while (true) {
+                final int chunk = nextChunk.getAndIncrement();
+                if (chunk >= numChunks) {
+                    return;
+                }
+                if (chunkFailure.get() == null) {
+                    threadPool.executor(ThreadPool.Names.WRITE).execute(new Chunk(chunk * chunkSize,
+                        Math.min(indexRequests.size(), (chunk + 1) * chunkSize)));
+                    return;
+                }
+                // the bulk request already failed, e.g. because a chunk was rejected, so the remaining chunks are skipped
+                onChunkDone();
+            }
+        }
+
+        private void onChunkDone() {
+            if (pendingChunks.decrementAndGet() > 0) {
+                return;
+            }
+            try (ThreadContext.StoredContext ignore = context.get()) {
+                Exception failure = chunkFailure.get();
+                if (failure != null) {
+                    completionHandler.accept(failure);
+                    return;
+                }
+                for (int i = 0; i < indexRequests.size(); i++) {
+                    if (failures[i] != null) {
+                        itemFailureHandler.accept(indexRequests.get(i), failures[i]);
+                    } else if (dropped[i]) {
+                        itemDroppedHandler.accept(indexRequests.get(i));
+                    }
+                }
+                completionHandler.accept(null);
+            }
+        }
+
+        private final class Chunk extends AbstractRunnable {
+
+            private final int from;
+            private final int to;
+
+            Chunk(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                if (chunkFailure.compareAndSet(null, e) == false) {
+                    chunkFailure.get().addSuppressed(e);
+                }
+            }
+
+            @Override
+            protected void doRun() {
+                try (ThreadContext.StoredContext ignore = context.get()) {
+                    for (int i = from; i < to; i++) {
+                        final int slot = i;
+                        IndexRequest indexRequest = indexRequests.get(slot);
+                        String pipelineId = indexRequest.getPipeline();
+                        try {
+                            Pipeline pipeline = pipelines.get(pipelineId);
+                            if (pipeline == null) {
+                                throw new IllegalArgumentException("pipeline with id [" + pipelineId + "] does not exist");
+                            }
+                            innerExecute(indexRequest, pipeline, droppedRequest -> dropped[slot] = true);
+                            indexRequest.setPipeline(NOOP_PIPELINE_NAME);
+                        } catch (Exception e) {
+                            failures[slot] = e;
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public void onAfter() {
+                onChunkDone();
+                executeNext(1);
+            }
+        }
+    }
+
     public IngestStats stats() {
         IngestStats.Builder statsBuilder = new IngestStats.Builder();
         statsBuilder.addTotalMetrics(totalMetrics);
@@ -468,8 +675,8 @@ public class IngestService implements ClusterStateApplier {
             String routing = indexRequest.routing();
             Long version = indexRequest.version();
             VersionType versionType = indexRequest.versionType();
-            Map<String, Object> sourceAsMap = indexRequest.sourceAsMap();
-            IngestDocument ingestDocument = new IngestDocument(index, type, id, routing, version, versionType, sourceAsMap);
+            LazySourceMap source = new LazySourceMap(indexRequest.source(), indexRequest.getContentType());
+            IngestDocument ingestDocument = new IngestDocument(source, index, type, id, routing, version, versionType);
             if (pipeline.execute(ingestDocument) == null) {
                 itemDroppedHandler.accept(indexRequest);
             } else {
@@ -484,7 +691,10 @@ public class IngestService implements ClusterStateApplier {
                 if (metadataMap.get(IngestDocument.MetaData.VERSION_TYPE) != null) {
                     indexRequest.versionType(VersionType.fromString((String) metadataMap.get(IngestDocument.MetaData.VERSION_TYPE)));
                 }
-                indexRequest.source(ingestDocument.getSourceAndMetadata());
+                // the fields that processors did not touch are copied from the original source
+                XContentBuilder builder = XContentFactory.contentBuilder(Requests.INDEX_CONTENT_TYPE);
+                source.toXContent(builder);
+                indexRequest.source(builder);
             }
         } catch (Exception e) {
             totalMetrics.ingestFailed();
@@ -0,0 +1,219 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.ingest;
+
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.LoggingDeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The source of a document that is being ingested, backed by the bytes of the index request.
+ *
+ * The top level fields of the source are read when the map is first accessed. Objects and arrays are not parsed into maps and
+ * lists at that point but are kept as bytes that are only parsed when a processor gets or replaces them, or when the entries of
+ * the map are iterated. {@link #toXContent(XContentBuilder)} copies the objects and arrays that were never parsed as raw fields
+ * rather than serializing them again.
+ */
+final class LazySourceMap extends AbstractMap<String, Object> {
+
+    private final BytesReference source;
+    private final XContentType xContentType;
+    private Map<String, Object> values;
+    // the number of values that are still raw bytes, all values are parsed once this drops to zero
+    private int rawValues;
+
+    LazySourceMap(BytesReference source, XContentType xContentType) {
+        this.source = source;
+        this.xContentType = xContentType;
+    }
+
+    @Override
+    public Object get(Object key) {
+        Map<String, Object> values = values();
+        Object value = values.get(key);
+        if (value instanceof RawValue) {
+            value = ((RawValue) value).parse(xContentType);
+            values.put((String) key, value);
+            rawValues--;
+        }
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return values().containsKey(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        // the previous value is returned without being parsed since callers of put hardly ever look at it
+        Object previous = values().put(key, value);
+        if (previous instanceof RawValue) {
+            rawValues--;
+        }
+        return previous;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        Object previous = values().remove(key);
+        if (previous instanceof RawValue) {
+            rawValues--;
+        }
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return values().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return values().isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        values().clear();
+        rawValues = 0;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        Map<String, Object> values = values();
+        if (rawValues > 0) {
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                if (entry.getValue() instanceof RawValue) {
+                    entry.setValue(((RawValue) entry.getValue()).parse(xContentType));
+                }
+            }
+            rawValues = 0;
+        }
+        return values.entrySet();
+    }
+
+    /**
+     * Returns {@code true} if the object or array of the field {@code key} is still unparsed.
+     */
+    boolean isRaw(String key) {
+        return values().get(key) instanceof RawValue;
+    }
+
+    /**
+     * Writes the source as an object. Unparsed fields are written as raw fields, all other fields are serialized from their values.
+     */
+    void toXContent(XContentBuilder builder) throws IOException {
+        builder.startObject();
+        for (Map.Entry<String, Object> entry : values().entrySet()) {
+            if (entry.getValue() instanceof RawValue) {
+                try (InputStream stream = ((RawValue) entry.getValue()).bytes.streamInput()) {
+                    builder.rawField(entry.getKey(), stream, xContentType);
+                }
+            } else {
+                builder.field(entry.getKey(), entry.getValue());
+            }
+        }
+        builder.endObject();
+    }
+
+    private Map<String, Object> values() {
+        if (values == null) {
+            try {
+                values = readTopLevelFields();
+            } catch (IOException e) {
+                throw new ElasticsearchParseException("failed to parse source", e);
+            }
+        }
+        return values;
+    }
+
+    private Map<String, Object> readTopLevelFields() throws IOException {
+        Map<String, Object> values = new LinkedHashMap<>();
+        try (InputStream stream = source.streamInput();
+             XContentParser parser = xContentType.xContent()
+                 .createParser(NamedXContentRegistry.EMPTY, LoggingDeprecationHandler.INSTANCE, stream)) {
+            XContentParser.Token token = parser.nextToken();
+            if (token != XContentParser.Token.START_OBJECT) {
+                throw new ElasticsearchParseException("source must be an object but found [{}]", token);
+            }
+            while ((token = parser.nextToken()) == XContentParser.Token.FIELD_NAME) {
+                String field = parser.currentName();
+                token = parser.nextToken();
+                Object value;
+                if (token == XContentParser.Token.START_OBJECT || token == XContentParser.Token.START_ARRAY) {
+                    try (XContentBuilder builder = XContentBuilder.builder(xContentType.xContent())) {
+                        builder.copyCurrentStructure(parser);
+                        value = new RawValue(BytesReference.bytes(builder));
+                    }
+                } else if (token == XContentParser.Token.VALUE_STRING) {
+                    value = parser.text();
+                } else if (token == XContentParser.Token.VALUE_NUMBER) {
+                    value = parser.numberValue();
+                } else if (token == XContentParser.Token.VALUE_BOOLEAN) {
+                    value = parser.booleanValue();
+                } else if (token == XContentParser.Token.VALUE_EMBEDDED_OBJECT) {
+                    value = parser.binaryValue();
+                } else {
+                    value = null;
+                }
+                if (values.put(field, value) instanceof RawValue) {
+                    rawValues--;
+                }
+                if (value instanceof RawValue) {
+                    rawValues++;
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * An object or array of the source that was not parsed yet.
+     */
+    private static final class RawValue {
+        private final BytesReference bytes;
+
+        RawValue(BytesReference bytes) {
+            this.bytes = bytes;
+        }
+
+        Object parse(XContentType xContentType) {
+            try (InputStream stream = bytes.streamInput();
+                 XContentParser parser = xContentType.xContent()
+                     .createParser(NamedXContentRegistry.EMPTY, LoggingDeprecationHandler.INSTANCE, stream)) {
+                return parser.nextToken() == XContentParser.Token.START_OBJECT ? parser.map() : parser.list();
+            } catch (IOException e) {
+                throw new ElasticsearchParseException("failed to parse source", e);
+            }
+        }
+    }
+}
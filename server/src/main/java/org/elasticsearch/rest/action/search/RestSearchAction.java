@@ -35,6 +35,7 @@ import org.elasticsearch.rest.action.RestActions;
 import org.elasticsearch.rest.action.RestStatusToXContentListener;
 import org.elasticsearch.search.Scroll;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.columnar.ColumnarResponse;
 import org.elasticsearch.search.fetch.StoredFieldsContext;
 import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
 import org.elasticsearch.search.internal.SearchContext;
@@ -106,6 +107,10 @@ public class RestSearchAction extends BaseRestHandler {
         request.withContentOrSourceParamParserOrNull(parser ->
             parseSearchRequest(searchRequest, request, parser, setSize));
 
+        if (ColumnarResponse.isRequested(request)) {
+            ColumnarResponse.validate(searchRequest);
+            return channel -> client.search(searchRequest, new RestColumnarResponseListener(channel));
+        }
         return channel -> client.search(searchRequest, new RestStatusToXContentListener<>(channel));
     }
 
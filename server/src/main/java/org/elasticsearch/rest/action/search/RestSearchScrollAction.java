@@ -27,6 +27,7 @@ import org.elasticsearch.rest.RestController;
 import org.elasticsearch.rest.RestRequest;
 import org.elasticsearch.rest.action.RestStatusToXContentListener;
 import org.elasticsearch.search.Scroll;
+import org.elasticsearch.search.columnar.ColumnarResponse;
 
 import java.io.IOException;
 import java.util.Collections;
@@ -72,6 +73,9 @@ public class RestSearchScrollAction extends BaseRestHandler {
                     throw new IllegalArgumentException("Failed to parse request body", e);
                 }
             }});
+        if (ColumnarResponse.isRequested(request)) {
+            return channel -> client.searchScroll(searchScrollRequest, new RestColumnarResponseListener(channel));
+        }
         return channel -> client.searchScroll(searchScrollRequest, new RestStatusToXContentListener<>(channel));
     }
 
@@ -146,6 +146,15 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
     public static final Setting<Boolean> DEFAULT_ALLOW_PARTIAL_SEARCH_RESULTS =
             Setting.boolSetting("search.default_allow_partial_results", true, Property.Dynamic, Property.NodeScope);
 
+    /**
+     * Enables concurrent search of the segments of a shard. The segments are partitioned into slices that are collected in
+     * parallel on the {@link Names#SEARCH_SLICE} thread pool, whose size bounds the number of slices in flight on the node.
+     */
+    public static final Setting<Boolean> CONCURRENT_SEGMENT_SEARCH_SETTING =
+        Setting.boolSetting("search.concurrent_segment_search.enabled", false, Property.Dynamic, Property.NodeScope);
+    public static final Setting<Integer> CONCURRENT_SEGMENT_SEARCH_MIN_DOCS_PER_SLICE_SETTING =
+        Setting.intSetting("search.concurrent_segment_search.min_docs_per_slice", 100_000, 1, Property.Dynamic, Property.NodeScope);
+
     public static final Setting<Integer> MAX_OPEN_SCROLL_CONTEXT =
         Setting.intSetting("search.max_open_scroll_context", 500, 0, Property.Dynamic, Property.NodeScope);
 
@@ -178,6 +187,10 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
 
     private volatile boolean lowLevelCancellation;
 
+    private volatile boolean concurrentSegmentSearch;
+
+    private volatile int minDocsPerSlice;
+
     private volatile int maxOpenScrollContext;
 
     private final Cancellable keepAliveReaper;
@@ -225,6 +238,13 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
 
         lowLevelCancellation = LOW_LEVEL_CANCELLATION_SETTING.get(settings);
         clusterService.getClusterSettings().addSettingsUpdateConsumer(LOW_LEVEL_CANCELLATION_SETTING, this::setLowLevelCancellation);
+
+        concurrentSegmentSearch = CONCURRENT_SEGMENT_SEARCH_SETTING.get(settings);
+        clusterService.getClusterSettings().addSettingsUpdateConsumer(CONCURRENT_SEGMENT_SEARCH_SETTING, this::setConcurrentSegmentSearch);
+
+        minDocsPerSlice = CONCURRENT_SEGMENT_SEARCH_MIN_DOCS_PER_SLICE_SETTING.get(settings);
+        clusterService.getClusterSettings().addSettingsUpdateConsumer(CONCURRENT_SEGMENT_SEARCH_MIN_DOCS_PER_SLICE_SETTING,
+            this::setMinDocsPerSlice);
     }
 
     private void validateKeepAlives(TimeValue defaultKeepAlive, TimeValue maxKeepAlive) {
@@ -261,6 +281,14 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         this.lowLevelCancellation = lowLevelCancellation;
     }
 
+    private void setConcurrentSegmentSearch(boolean concurrentSegmentSearch) {
+        this.concurrentSegmentSearch = concurrentSegmentSearch;
+    }
+
+    private void setMinDocsPerSlice(int minDocsPerSlice) {
+        this.minDocsPerSlice = minDocsPerSlice;
+    }
+
     @Override
     public void afterIndexRemoved(Index index, IndexSettings indexSettings, IndexRemovalReason reason) {
         // once an index is removed due to deletion or closing, we can just clean up all the pending search context information
@@ -341,6 +369,13 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
      */
     private void loadOrExecuteQueryPhase(final ShardSearchRequest request, final SearchContext context) throws Exception {
         final boolean canCache = indicesService.canCache(request, context);
+        if (indicesService.canCacheSegmentAggregations(request, context)) {
+            // also used to compute the result of the shard if it is not cached itself
+            indicesService.enableSegmentAggregationsCache(request, context);
+        } else if (indicesService.canCollectAggregationsPerSlice(request, context)) {
+            // lets the leaf slices of the shard be searched concurrently
+            indicesService.enableSliceAggregations(request, context);
+        }
         context.getQueryShardContext().freezeContext();
         if (canCache) {
             indicesService.loadIntoContext(request, context, queryPhase);
@@ -660,6 +695,10 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
             }
             contextScrollKeepAlive(context, keepAlive);
             context.lowLevelCancellation(lowLevelCancellation);
+            if (concurrentSegmentSearch) {
+                context.searcher().setSliceExecutor(threadPool.executor(Names.SEARCH_SLICE),
+                    threadPool.info(Names.SEARCH_SLICE).getMax(), minDocsPerSlice);
+            }
         } catch (Exception e) {
             context.close();
             throw ExceptionsHelper.convertToRuntime(e);
@@ -18,12 +18,38 @@
  */
 package org.elasticsearch.search.aggregations;
 
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.Query;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.lucene.search.Queries;
 import org.elasticsearch.search.SearchPhase;
+import org.elasticsearch.search.aggregations.bucket.InternalSingleBucketAggregation;
+import org.elasticsearch.search.aggregations.bucket.filter.FilterAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.filter.FiltersAggregationBuilder;
 import org.elasticsearch.search.aggregations.bucket.global.GlobalAggregator;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.histogram.HistogramAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.missing.MissingAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.nested.NestedAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.nested.ReverseNestedAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.range.DateRangeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.range.RangeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.terms.InternalTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregator.BucketCountThresholds;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregatorFactory;
+import org.elasticsearch.search.aggregations.metrics.AvgAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.CardinalityAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.ExtendedStatsAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.MaxAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.MinAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.PercentileRanksAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.PercentilesAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.PercentilesMethod;
+import org.elasticsearch.search.aggregations.metrics.StatsAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.SumAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.ValueCountAggregationBuilder;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.pipeline.SiblingPipelineAggregator;
 import org.elasticsearch.search.internal.SearchContext;
@@ -33,14 +59,33 @@ import org.elasticsearch.search.query.QueryPhaseExecutionException;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Aggregation phase of a search request, used to collect aggregations
  */
 public class AggregationPhase implements SearchPhase {
 
+    /**
+     * The aggregations whose results of all segments of a shard reduce to the same result as collecting the whole shard at once.
+     * Terms aggregations only do if the segments keep all their terms, see {@link SearchContextAggregations#segmentFactories()}, and
+     * are trimmed to the shard size after the reduce, see {@link #reduceToShard(InternalAggregations, Collection, boolean)}.
+     */
+    private static final Set<String> SEGMENT_MERGEABLE_AGGREGATIONS = new HashSet<>(Arrays.asList(
+        TermsAggregationBuilder.NAME, DateHistogramAggregationBuilder.NAME, HistogramAggregationBuilder.NAME,
+        RangeAggregationBuilder.NAME, DateRangeAggregationBuilder.NAME, FilterAggregationBuilder.NAME, FiltersAggregationBuilder.NAME,
+        MissingAggregationBuilder.NAME, NestedAggregationBuilder.NAME, ReverseNestedAggregationBuilder.NAME,
+        AvgAggregationBuilder.NAME, SumAggregationBuilder.NAME, MinAggregationBuilder.NAME, MaxAggregationBuilder.NAME,
+        StatsAggregationBuilder.NAME, ExtendedStatsAggregationBuilder.NAME, ValueCountAggregationBuilder.NAME,
+        CardinalityAggregationBuilder.NAME, PercentilesAggregationBuilder.NAME, PercentileRanksAggregationBuilder.NAME));
+
     @Inject
     public AggregationPhase() {
     }
@@ -59,7 +104,13 @@ public class AggregationPhase implements SearchPhase {
                     }
                 }
                 context.aggregations().aggregators(aggregators);
-                if (!collectors.isEmpty()) {
+                if (context.aggregations().segmentAggregationsCache() != null) {
+                    // the aggregations are collected segment by segment once the query phase is done
+                    assert collectors.size() == aggregators.length : "global aggregations can't be collected per segment";
+                } else if (context.aggregations().sliceFactories() != null) {
+                    // the aggregations of every leaf slice are collected by aggregators of their own, see QueryPhase
+                    assert collectors.size() == aggregators.length : "global aggregations can't be collected per slice";
+                } else if (!collectors.isEmpty()) {
                     Collector collector = MultiBucketCollector.wrap(collectors);
                     ((BucketCollector)collector).preCollection();
                     if (context.getProfilers() != null) {
@@ -122,17 +173,24 @@ public class AggregationPhase implements SearchPhase {
             }
         }
 
-        List<InternalAggregation> aggregations = new ArrayList<>(aggregators.length);
-        context.aggregations().resetBucketMultiConsumer();
-        for (Aggregator aggregator : context.aggregations().aggregators()) {
-            try {
-                aggregator.postCollection();
-                aggregations.add(aggregator.buildAggregation(0));
-            } catch (IOException e) {
-                throw new AggregationExecutionException("Failed to build aggregation [" + aggregator.name() + "]", e);
+        final SegmentAggregationsCache segmentAggregationsCache = context.aggregations().segmentAggregationsCache();
+        if (segmentAggregationsCache != null) {
+            context.queryResult().aggregations(executePerSegment(context, segmentAggregationsCache));
+        } else if (context.aggregations().sliceFactories() != null) {
+            context.queryResult().aggregations(reduceSlices(context));
+        } else {
+            List<InternalAggregation> aggregations = new ArrayList<>(aggregators.length);
+            context.aggregations().resetBucketMultiConsumer();
+            for (Aggregator aggregator : context.aggregations().aggregators()) {
+                try {
+                    aggregator.postCollection();
+                    aggregations.add(aggregator.buildAggregation(0));
+                } catch (IOException e) {
+                    throw new AggregationExecutionException("Failed to build aggregation [" + aggregator.name() + "]", e);
+                }
             }
+            context.queryResult().aggregations(new InternalAggregations(aggregations));
         }
-        context.queryResult().aggregations(new InternalAggregations(aggregations));
         try {
             List<PipelineAggregator> pipelineAggregators = context.aggregations().factories().createPipelineAggregators();
             List<SiblingPipelineAggregator> siblingPipelineAggregators = new ArrayList<>(pipelineAggregators.size());
@@ -155,4 +213,174 @@ public class AggregationPhase implements SearchPhase {
         context.queryCollectors().remove(AggregationPhase.class);
     }
 
+    /**
+     * Loads or collects the aggregations of every segment of the shard and reduces them to the aggregations of the shard.
+     */
+    private InternalAggregations executePerSegment(SearchContext context, SegmentAggregationsCache cache) {
+        final AggregatorFactories factories = context.aggregations().segmentFactories();
+        final List<InternalAggregations> segmentAggregations = new ArrayList<>();
+        try {
+            for (LeafReaderContext leaf : context.searcher().getIndexReader().leaves()) {
+                segmentAggregations.add(cache.getOrCompute(leaf, () -> collectSegment(context, factories, leaf)));
+            }
+            if (segmentAggregations.isEmpty()) {
+                // build the empty aggregations of the shard
+                segmentAggregations.add(collectSegment(context, factories, null));
+            }
+        } catch (Exception e) {
+            throw new QueryPhaseExecutionException(context, "Failed to execute aggregations per segment", e);
+        } finally {
+            context.clearReleasables(SearchContext.Lifetime.COLLECTION);
+        }
+        return reduceToShard(context, segmentAggregations);
+    }
+
+    /**
+     * Builds the aggregations of every leaf slice that the query phase collected and reduces them to the aggregations of the shard.
+     */
+    private InternalAggregations reduceSlices(SearchContext context) {
+        final List<InternalAggregations> sliceAggregations = new ArrayList<>();
+        try {
+            for (Aggregator[] aggregators : context.aggregations().sliceAggregators()) {
+                // the buckets of every slice are bounded by the maximum number of buckets of the request on their own
+                context.aggregations().resetBucketMultiConsumer();
+                List<InternalAggregation> aggregations = new ArrayList<>(aggregators.length);
+                for (Aggregator aggregator : aggregators) {
+                    aggregator.postCollection();
+                    aggregations.add(aggregator.buildAggregation(0));
+                }
+                sliceAggregations.add(new InternalAggregations(aggregations));
+            }
+            if (sliceAggregations.isEmpty()) {
+                // build the empty aggregations of the shard
+                sliceAggregations.add(collectSegment(context, context.aggregations().sliceFactories(), null));
+            }
+        } catch (IOException e) {
+            throw new AggregationExecutionException("Failed to build the aggregations of the leaf slices", e);
+        }
+        return reduceToShard(context, sliceAggregations);
+    }
+
+    /**
+     * Reduces the aggregations of parts of the shard, collected by aggregators whose terms aggregations keep all buckets, to the
+     * aggregations of the shard.
+     */
+    private static InternalAggregations reduceToShard(SearchContext context, List<InternalAggregations> aggregations) {
+        // a partial reduce keeps all buckets like the aggregators of the shard do, and doesn't run any of the scripts that need the
+        // script service since these only run on the final reduce
+        final InternalAggregations reduced = InternalAggregations.reduce(aggregations,
+            new InternalAggregation.ReduceContext(context.bigArrays(), null, false));
+        return reduceToShard(reduced, context.request().source().aggregations().getAggregatorFactories(),
+            context.numberOfShards() == 1);
+    }
+
+    /**
+     * Collects the aggregations of the given segment with aggregators created by the given factories, or builds the empty
+     * aggregations if the segment is <code>null</code>.
+     */
+    private static InternalAggregations collectSegment(SearchContext context, AggregatorFactories factories,
+                                                       LeafReaderContext leaf) throws IOException {
+        // the aggregators are released with the other aggregators of the search phase
+        final Aggregator[] aggregators = factories.createTopLevelAggregators();
+        // the buckets of every segment are bounded by the maximum number of buckets of the request on their own
+        context.aggregations().resetBucketMultiConsumer();
+        BucketCollector collector = MultiBucketCollector.wrap(Arrays.asList(aggregators));
+        collector.preCollection();
+        if (leaf != null) {
+            context.searcher().search(context.query(), leaf, collector);
+        }
+        collector.postCollection();
+        List<InternalAggregation> aggregations = new ArrayList<>(aggregators.length);
+        for (Aggregator aggregator : aggregators) {
+            aggregations.add(aggregator.buildAggregation(0));
+        }
+        return new InternalAggregations(aggregations);
+    }
+
+    /**
+     * Trims the terms aggregations of the reduced aggregations of all segments to the buckets that the aggregators of the shard return,
+     * see {@link InternalTerms#reduceToShardSize(int, long)}.
+     *
+     * @param aggregations the reduced aggregations of all segments
+     * @param builders     the requested aggregations
+     * @param singleShard  whether the search targets a single shard
+     */
+    static InternalAggregations reduceToShard(InternalAggregations aggregations, Collection<AggregationBuilder> builders,
+                                              boolean singleShard) {
+        final Map<String, AggregationBuilder> builderByName = new HashMap<>();
+        for (AggregationBuilder builder : builders) {
+            builderByName.put(builder.getName(), builder);
+        }
+        final List<InternalAggregation> reduced = new ArrayList<>();
+        for (Aggregation aggregation : aggregations) {
+            final AggregationBuilder builder = builderByName.get(aggregation.getName());
+            assert builder != null : "no aggregation builder for [" + aggregation.getName() + "]";
+            reduced.add(reduceToShard((InternalAggregation) aggregation, builder, singleShard));
+        }
+        return new InternalAggregations(reduced);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static InternalAggregation reduceToShard(InternalAggregation aggregation, AggregationBuilder builder, boolean singleShard) {
+        if (aggregation instanceof InternalTerms) {
+            final TermsAggregationBuilder terms = (TermsAggregationBuilder) builder;
+            final BucketCountThresholds bucketCountThresholds = TermsAggregatorFactory.shardBucketCountThresholds(
+                new BucketCountThresholds(terms.minDocCount(), terms.shardMinDocCount(), terms.size(), terms.shardSize()),
+                terms.order(), singleShard);
+            aggregation = ((InternalTerms<?, ?>) aggregation).reduceToShardSize(bucketCountThresholds.getShardSize(),
+                bucketCountThresholds.getShardMinDocCount());
+        }
+        final Collection<AggregationBuilder> subBuilders = builder.getSubAggregations();
+        if (subBuilders.isEmpty()) {
+            return aggregation;
+        }
+        if (aggregation instanceof InternalMultiBucketAggregation) {
+            @SuppressWarnings("rawtypes")
+            InternalMultiBucketAggregation multiBucketsAgg = (InternalMultiBucketAggregation) aggregation;
+            List<InternalMultiBucketAggregation.InternalBucket> newBuckets = new ArrayList<>();
+            for (Object bucket : multiBucketsAgg.getBuckets()) {
+                InternalMultiBucketAggregation.InternalBucket internalBucket = (InternalMultiBucketAggregation.InternalBucket) bucket;
+                InternalAggregations subAggregations = reduceToShard((InternalAggregations) internalBucket.getAggregations(),
+                    subBuilders, singleShard);
+                newBuckets.add(multiBucketsAgg.createBucket(subAggregations, internalBucket));
+            }
+            return multiBucketsAgg.create(newBuckets);
+        } else if (aggregation instanceof InternalSingleBucketAggregation) {
+            InternalSingleBucketAggregation singleBucketAgg = (InternalSingleBucketAggregation) aggregation;
+            return singleBucketAgg.create(reduceToShard(singleBucketAgg.getAggregations(), subBuilders, singleShard));
+        }
+        return aggregation;
+    }
+
+    /**
+     * Returns <code>true</code> if the given aggregations can be collected per segment and reduced to the aggregations of the shard.
+     */
+    public static boolean canCollectPerSegment(AggregatorFactories.Builder aggregations) {
+        return canCollectPerSegment(aggregations.getAggregatorFactories());
+    }
+
+    private static boolean canCollectPerSegment(Collection<AggregationBuilder> aggregations) {
+        for (AggregationBuilder aggregation : aggregations) {
+            if (SEGMENT_MERGEABLE_AGGREGATIONS.contains(aggregation.getType()) == false) {
+                return false;
+            }
+            if (aggregation instanceof TermsAggregationBuilder && ((TermsAggregationBuilder) aggregation).minDocCount() == 0) {
+                // the terms without any matching document are looked up in the whole shard, not in a single segment
+                return false;
+            }
+            if (aggregation instanceof PercentilesAggregationBuilder
+                    && ((PercentilesAggregationBuilder) aggregation).method() != PercentilesMethod.HDR) {
+                // merging the t-digests of the segments doesn't give the same result as collecting the shard into a single one
+                return false;
+            }
+            if (aggregation instanceof PercentileRanksAggregationBuilder
+                    && ((PercentileRanksAggregationBuilder) aggregation).method() != PercentilesMethod.HDR) {
+                return false;
+            }
+            if (canCollectPerSegment(aggregation.getSubAggregations()) == false) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -18,6 +18,8 @@
  */
 package org.elasticsearch.search.aggregations;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.IntConsumer;
 
 import static org.elasticsearch.search.aggregations.MultiBucketConsumerService.MultiBucketConsumer;
@@ -30,6 +32,10 @@ public class SearchContextAggregations {
     private final AggregatorFactories factories;
     private final MultiBucketConsumer multiBucketConsumer;
     private Aggregator[] aggregators;
+    private SegmentAggregationsCache segmentAggregationsCache;
+    private AggregatorFactories segmentFactories;
+    private AggregatorFactories sliceFactories;
+    private final List<Aggregator[]> sliceAggregators = new ArrayList<>();
 
     /**
      * Creates a new aggregation context with the parsed aggregator factories
@@ -64,6 +70,64 @@ public class SearchContextAggregations {
         return multiBucketConsumer;
     }
 
+    /**
+     * Returns the cache that the aggregations of every segment are collected through, or <code>null</code> if the aggregations
+     * are collected for the whole shard at once.
+     */
+    public SegmentAggregationsCache segmentAggregationsCache() {
+        return segmentAggregationsCache;
+    }
+
+    /**
+     * Returns the factories of the aggregators that collect a single segment, see
+     * {@link #segmentAggregationsCache(SegmentAggregationsCache, AggregatorFactories)}.
+     */
+    public AggregatorFactories segmentFactories() {
+        return segmentFactories;
+    }
+
+    /**
+     * Collects the aggregations segment by segment through the given cache, with aggregators created by the given factories. Their
+     * terms aggregations must keep all buckets so that the results of the segments reduce to the exact result of the shard.
+     */
+    public void segmentAggregationsCache(SegmentAggregationsCache segmentAggregationsCache, AggregatorFactories segmentFactories) {
+        this.segmentAggregationsCache = segmentAggregationsCache;
+        this.segmentFactories = segmentFactories;
+    }
+
+    /**
+     * Returns the factories of the aggregators that collect a single leaf slice of a concurrent search, or <code>null</code> if the
+     * aggregations are collected by the top level aggregators, see {@link #sliceFactories(AggregatorFactories)}.
+     */
+    public AggregatorFactories sliceFactories() {
+        return sliceFactories;
+    }
+
+    /**
+     * Collects the aggregations of every leaf slice of the query phase with aggregators of their own created by the given
+     * factories, so that the slices can be collected concurrently. Like the factories of
+     * {@link #segmentAggregationsCache(SegmentAggregationsCache, AggregatorFactories)}, their terms aggregations must keep all
+     * buckets so that the results of the slices reduce to the exact result of the shard.
+     */
+    public void sliceFactories(AggregatorFactories sliceFactories) {
+        this.sliceFactories = sliceFactories;
+    }
+
+    /**
+     * Returns the top level aggregators of every leaf slice collected so far, see {@link #sliceFactories(AggregatorFactories)}.
+     */
+    public List<Aggregator[]> sliceAggregators() {
+        return sliceAggregators;
+    }
+
+    /**
+     * Registers the top level aggregators of a leaf slice. The aggregators of all slices are created by the searching thread
+     * before the slices are collected.
+     */
+    public void addSliceAggregators(Aggregator[] aggregators) {
+        sliceAggregators.add(aggregators);
+    }
+
     void resetBucketMultiConsumer() {
         multiBucketConsumer.reset();
     }
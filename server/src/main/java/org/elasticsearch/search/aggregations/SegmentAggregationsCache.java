@@ -0,0 +1,38 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.search.aggregations;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.elasticsearch.common.CheckedSupplier;
+
+import java.io.IOException;
+
+/**
+ * A cache for the aggregation results of a single segment of a shard.
+ */
+@FunctionalInterface
+public interface SegmentAggregationsCache {
+
+    /**
+     * Returns the aggregation results of the given segment, computing them with the given loader if they are not cached or
+     * can't be cached for the current request.
+     */
+    InternalAggregations getOrCompute(LeafReaderContext leaf, CheckedSupplier<InternalAggregations, IOException> loader)
+        throws Exception;
+}
@@ -19,9 +19,11 @@
 
 package org.elasticsearch.search.aggregations.bucket.composite;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.ParseField;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.ObjectParser;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentParser;
@@ -43,6 +45,7 @@ public class CompositeAggregationBuilder extends AbstractAggregationBuilder<Comp
     public static final ParseField AFTER_FIELD_NAME = new ParseField("after");
     public static final ParseField SIZE_FIELD_NAME = new ParseField("size");
     public static final ParseField SOURCES_FIELD_NAME = new ParseField("sources");
+    public static final ParseField KEEP_ALIVE_FIELD_NAME = new ParseField("keep_alive");
 
     private static final ObjectParser<CompositeAggregationBuilder, Void> PARSER;
     static {
@@ -51,6 +54,9 @@ public class CompositeAggregationBuilder extends AbstractAggregationBuilder<Comp
         PARSER.declareObject(CompositeAggregationBuilder::aggregateAfter, (parser, context) -> parser.map(), AFTER_FIELD_NAME);
         PARSER.declareObjectArray(CompositeAggregationBuilder::setSources,
             (p, c) -> CompositeValuesSourceParserHelper.fromXContent(p), SOURCES_FIELD_NAME);
+        PARSER.declareField(CompositeAggregationBuilder::keepAlive,
+            (p, c) -> TimeValue.parseTimeValue(p.text(), KEEP_ALIVE_FIELD_NAME.getPreferredName()),
+            KEEP_ALIVE_FIELD_NAME, ObjectParser.ValueType.STRING);
     }
     public static CompositeAggregationBuilder parse(String aggregationName, XContentParser parser) throws IOException {
         return PARSER.parse(parser, new CompositeAggregationBuilder(aggregationName), null);
@@ -59,6 +65,7 @@ public class CompositeAggregationBuilder extends AbstractAggregationBuilder<Comp
     private List<CompositeValuesSourceBuilder<?>> sources;
     private Map<String, Object> after;
     private int size = 10;
+    private TimeValue keepAlive;
 
     private CompositeAggregationBuilder(String name) {
         this(name, null);
@@ -76,6 +83,7 @@ public class CompositeAggregationBuilder extends AbstractAggregationBuilder<Comp
         this.sources = new ArrayList<>(clone.sources);
         this.after = clone.after;
         this.size = clone.size;
+        this.keepAlive = clone.keepAlive;
     }
 
     @Override
@@ -95,6 +103,9 @@ public class CompositeAggregationBuilder extends AbstractAggregationBuilder<Comp
         if (in.readBoolean()) {
             this.after = in.readMap();
         }
+        if (in.getVersion().onOrAfter(Version.V_7_0_0)) {
+            this.keepAlive = in.readOptionalTimeValue();
+        }
     }
 
     @Override
@@ -108,6 +119,9 @@ public class CompositeAggregationBuilder extends AbstractAggregationBuilder<Comp
         if (after != null) {
             out.writeMap(after);
         }
+        if (out.getVersion().onOrAfter(Version.V_7_0_0)) {
+            out.writeOptionalTimeValue(keepAlive);
+        }
     }
 
     @Override
@@ -151,12 +165,36 @@ public class CompositeAggregationBuilder extends AbstractAggregationBuilder<Comp
         return size;
     }
 
+    /**
+     * Sets how long the composite buckets of a shard should be kept on disk. If set, each shard collects all its
+     * composite buckets in a single pass and spills them to disk in sorted order so that the next pages of the same
+     * request, with the same point-in-time reader, are read from disk instead of searching the shard again.
+     * This option cannot be used with sub-aggregations. Defaults to {@code null}.
+     */
+    public CompositeAggregationBuilder keepAlive(TimeValue keepAlive) {
+        if (keepAlive != null && keepAlive.millis() <= 0) {
+            throw new IllegalArgumentException("[" + KEEP_ALIVE_FIELD_NAME.getPreferredName() + "] must be positive, got " + keepAlive);
+        }
+        this.keepAlive = keepAlive;
+        return this;
+    }
+
+    /**
+     * @return how long the composite buckets of a shard are kept on disk or <code>null</code> if they are not spilled.
+     */
+    public TimeValue keepAlive() {
+        return keepAlive;
+    }
+
     @Override
     protected AggregatorFactory<?> doBuild(SearchContext context, AggregatorFactory<?> parent,
                                            AggregatorFactories.Builder subfactoriesBuilder) throws IOException {
         if (parent != null) {
             throw new IllegalArgumentException("[composite] aggregation cannot be used with a parent aggregation");
         }
+        if (keepAlive != null && subfactoriesBuilder.count() > 0) {
+            throw new IllegalArgumentException("[" + KEEP_ALIVE_FIELD_NAME.getPreferredName() + "] cannot be used with sub-aggregations");
+        }
         CompositeValuesSourceConfig[] configs = new CompositeValuesSourceConfig[sources.size()];
         for (int i = 0; i < configs.length; i++) {
             configs[i] = sources.get(i).build(context);
@@ -190,7 +228,8 @@ public class CompositeAggregationBuilder extends AbstractAggregationBuilder<Comp
         } else {
             afterKey = null;
         }
-        return new CompositeAggregationFactory(name, context, parent, subfactoriesBuilder, metaData, size, configs, afterKey);
+        return new CompositeAggregationFactory(name, context, parent, subfactoriesBuilder, metaData, size, configs, afterKey,
+            keepAlive, sources);
     }
 
 
@@ -206,13 +245,16 @@ public class CompositeAggregationBuilder extends AbstractAggregationBuilder<Comp
         if (after != null) {
             CompositeAggregation.buildCompositeMap(AFTER_FIELD_NAME.getPreferredName(), after, builder);
         }
+        if (keepAlive != null) {
+            builder.field(KEEP_ALIVE_FIELD_NAME.getPreferredName(), keepAlive.getStringRep());
+        }
         builder.endObject();
         return builder;
     }
 
     @Override
     protected int doHashCode() {
-        return Objects.hash(sources, size, after);
+        return Objects.hash(sources, size, after, keepAlive);
     }
 
     @Override
@@ -220,6 +262,7 @@ public class CompositeAggregationBuilder extends AbstractAggregationBuilder<Comp
         CompositeAggregationBuilder other = (CompositeAggregationBuilder) obj;
         return size == other.size &&
             Objects.equals(sources, other.sources) &&
-            Objects.equals(after, other.after);
+            Objects.equals(after, other.after) &&
+            Objects.equals(keepAlive, other.keepAlive);
     }
 }
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.search.aggregations.bucket.composite;
 
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.AggregatorFactories;
 import org.elasticsearch.search.aggregations.AggregatorFactory;
@@ -33,20 +34,25 @@ class CompositeAggregationFactory extends AggregatorFactory<CompositeAggregation
     private final int size;
     private final CompositeValuesSourceConfig[] sources;
     private final CompositeKey afterKey;
+    private final TimeValue keepAlive;
+    private final List<CompositeValuesSourceBuilder<?>> sourceBuilders;
 
     CompositeAggregationFactory(String name, SearchContext context, AggregatorFactory<?> parent,
                                 AggregatorFactories.Builder subFactoriesBuilder, Map<String, Object> metaData,
-                                int size, CompositeValuesSourceConfig[] sources, CompositeKey afterKey) throws IOException {
+                                int size, CompositeValuesSourceConfig[] sources, CompositeKey afterKey,
+                                TimeValue keepAlive, List<CompositeValuesSourceBuilder<?>> sourceBuilders) throws IOException {
         super(name, context, parent, subFactoriesBuilder, metaData);
         this.size = size;
         this.sources = sources;
         this.afterKey = afterKey;
+        this.keepAlive = keepAlive;
+        this.sourceBuilders = sourceBuilders;
     }
 
     @Override
     protected Aggregator createInternal(Aggregator parent, boolean collectsFromSingleBucket,
                                         List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
         return new CompositeAggregator(name, factories, context, parent, pipelineAggregators, metaData,
-            size, sources, afterKey);
+            size, sources, afterKey, keepAlive, sourceBuilders);
     }
 }
@@ -20,8 +20,10 @@
 package org.elasticsearch.search.aggregations.bucket.composite;
 
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FilterDirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.BulkScorer;
 import org.apache.lucene.search.CollectionTerminatedException;
 import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.DocIdSetIterator;
@@ -29,8 +31,13 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
 import org.apache.lucene.util.RoaringDocIdSet;
+import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.lucene.index.ElasticsearchDirectoryReader;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.aggregations.Aggregator;
@@ -44,6 +51,8 @@ import org.elasticsearch.search.aggregations.bucket.BucketsAggregator;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.support.ValuesSource;
 import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.internal.ShardSearchRequest;
+import org.elasticsearch.tasks.TaskCancelledException;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -55,6 +64,11 @@ import java.util.function.LongUnaryOperator;
 import java.util.stream.Collectors;
 
 final class CompositeAggregator extends BucketsAggregator {
+    /**
+     * The minimum number of bytes that are reserved at once in the {@link CompositeSpillCache} while buckets are spilled.
+     */
+    private static final long SPILL_RESERVATION_BYTES = 1024 * 1024;
+
     private final int size;
     private final SortedDocsProducer sortedDocsProducer;
     private final List<String> sourceNames;
@@ -62,34 +76,118 @@ final class CompositeAggregator extends BucketsAggregator {
     private final List<DocValueFormat> formats;
 
     private final SingleDimensionValuesSource<?>[] sources;
-    private final CompositeValuesCollectorQueue queue;
+    private CompositeValuesCollectorQueue queue;
 
     private final List<Entry> entries = new ArrayList<>();
     private LeafReaderContext currentLeaf;
     private RoaringDocIdSet.Builder docIdSetBuilder;
     private BucketCollector deferredCollectors;
 
+    private final TimeValue keepAlive;
+    private final CompositeSpillCache spillCache;
+    private final Object spillKey;
+    private final CompositeKey spillAfterKey;
+    private SpilledBuckets.Builder spillBuilder;
+    private long spillReservedBytes;
+    private boolean spillAborted;
+    private SpilledBuckets spilledBuckets;
+
     CompositeAggregator(String name, AggregatorFactories factories, SearchContext context, Aggregator parent,
                         List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData,
-                        int size, CompositeValuesSourceConfig[] sourceConfigs, CompositeKey rawAfterKey) throws IOException {
+                        int size, CompositeValuesSourceConfig[] sourceConfigs, CompositeKey rawAfterKey,
+                        TimeValue keepAlive, List<CompositeValuesSourceBuilder<?>> sourceBuilders) throws IOException {
         super(name, factories, context, parent, pipelineAggregators, metaData);
         this.size = size;
         this.sourceNames = Arrays.stream(sourceConfigs).map(CompositeValuesSourceConfig::name).collect(Collectors.toList());
         this.reverseMuls = Arrays.stream(sourceConfigs).mapToInt(CompositeValuesSourceConfig::reverseMul).toArray();
         this.formats = Arrays.stream(sourceConfigs).map(CompositeValuesSourceConfig::format).collect(Collectors.toList());
+        this.keepAlive = keepAlive;
+        this.spillCache = getSpillCacheOrNull(context, keepAlive);
+        if (spillCache != null) {
+            spillCache.checkKeepAlive(keepAlive);
+        }
+        // the sources can hold the buckets of a page or, if they are spilled, the buckets kept in memory before they are spilled
+        final int sourcesSize = spillCache != null ? Math.max(size, spillCache.maxBucketsInMemory()) : size;
         this.sources = new SingleDimensionValuesSource[sourceConfigs.length];
         for (int i = 0; i < sourceConfigs.length; i++) {
             this.sources[i] = createValuesSource(context.bigArrays(), context.searcher().getIndexReader(),
-                context.query(), sourceConfigs[i], size, i);
+                context.query(), sourceConfigs[i], sourcesSize, i);
         }
-        this.queue = new CompositeValuesCollectorQueue(context.bigArrays(), sources, size, rawAfterKey);
-        this.sortedDocsProducer = sources[0].createSortedDocsProducerOrNull(context.searcher().getIndexReader(), context.query());
+        final Object key = spillCache != null ? spillKey(context.request(), sourceBuilders) : null;
+        final SpilledBuckets acquired = spillCache != null ?
+            spillCache.acquire(context.searcher().getIndexReader().getReaderCacheHelper(), key) : null;
+        if (acquired != null) {
+            this.spilledBuckets = acquired;
+            this.queue = new CompositeValuesCollectorQueue(context.bigArrays(), sources, size, null);
+            this.sortedDocsProducer = null;
+            this.spillKey = key;
+            this.spillAfterKey = rawAfterKey == null ? null : parseAfterKey(rawAfterKey);
+        } else if (spillCache != null && rawAfterKey == null) {
+            // only the first page spills the buckets, the next pages page through the documents if the reader changed since then
+            // so that a shard that is refreshed often does not spill all its buckets again for every page
+            this.queue = new CompositeValuesCollectorQueue(context.bigArrays(), sources, spillCache.maxBucketsInMemory(), null);
+            this.sortedDocsProducer = null;
+            this.spillKey = key;
+            this.spillAfterKey = null;
+            this.spillBuilder = new SpilledBuckets.Builder(spillCache.directory());
+        } else {
+            this.queue = new CompositeValuesCollectorQueue(context.bigArrays(), sources, size, rawAfterKey);
+            this.sortedDocsProducer = sources[0].createSortedDocsProducerOrNull(context.searcher().getIndexReader(), context.query());
+            this.spillKey = null;
+            this.spillAfterKey = null;
+        }
+    }
+
+    /**
+     * Returns the cache of the spilled composite buckets if the buckets of this aggregation should be spilled to disk,
+     * <code>null</code> otherwise.
+     */
+    private static CompositeSpillCache getSpillCacheOrNull(SearchContext context, TimeValue keepAlive) {
+        if (keepAlive == null || context.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER
+                || context.request() == null || context.request().source() == null) {
+            return null;
+        }
+        IndexReader reader = context.searcher().getIndexReader();
+        if (reader.getReaderCacheHelper() == null ||
+                (reader instanceof FilterDirectoryReader && reader instanceof ElasticsearchDirectoryReader == false)) {
+            // spilled buckets are shared by all requests on the same reader so they cannot be built
+            // from a wrapped reader that restricts the documents or fields that a request can see
+            return null;
+        }
+        return context.compositeSpillCache();
+    }
+
+    /**
+     * Returns the key of the buckets spilled for the provided request. It is made of the query of the request as it was sent rather
+     * than the rewritten query, in which the current time is resolved, so that the next pages of the request, which are bound to
+     * the same point-in-time reader, read the same buckets.
+     */
+    private static Object spillKey(ShardSearchRequest request, List<CompositeValuesSourceBuilder<?>> sourceBuilders) {
+        return Arrays.asList(request.source().query(), request.getAliasFilter(), Arrays.asList(request.types()), sourceBuilders);
+    }
+
+    /**
+     * Parses the values of the provided after key like the sources do, e.g. formatted dates.
+     */
+    private CompositeKey parseAfterKey(CompositeKey rawAfterKey) {
+        assert rawAfterKey.size() == sources.length;
+        Comparable<?>[] values = new Comparable<?>[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i].setAfter(rawAfterKey.get(i));
+            values[i] = sources[i].getAfter();
+        }
+        return new CompositeKey(values);
     }
 
     @Override
     protected void doClose() {
         Releasables.close(queue);
         Releasables.close(sources);
+        Releasables.close(spillBuilder);
+        releaseSpillReservation();
+        if (spilledBuckets != null) {
+            spilledBuckets.decRef();
+        }
     }
 
     @Override
@@ -107,6 +205,22 @@ final class CompositeAggregator extends BucketsAggregator {
     @Override
     public InternalAggregation buildAggregation(long zeroBucket) throws IOException {
         assert zeroBucket == 0L;
+        if (spillBuilder != null) {
+            spillQueue();
+        }
+        if (spillBuilder != null) {
+            spilledBuckets = spillBuilder.build();
+            spillBuilder = null;
+            releaseSpillReservation();
+            if (context.queryResult().searchTimedOut() == false) {
+                spillCache.put(context.searcher().getIndexReader().getReaderCacheHelper(), spillKey, spilledBuckets, keepAlive);
+            }
+        } else if (spillAborted) {
+            collectPage();
+        }
+        if (spilledBuckets != null) {
+            return buildSpilledAggregation();
+        }
         consumeBucketsAndMaybeBreak(queue.size());
 
         if (deferredCollectors != NO_OP_COLLECTOR) {
@@ -128,6 +242,102 @@ final class CompositeAggregator extends BucketsAggregator {
             pipelineAggregators(), metaData());
     }
 
+    /**
+     * Reads the page after the after key from the spilled buckets.
+     */
+    private InternalAggregation buildSpilledAggregation() throws IOException {
+        BytesRef after = null;
+        if (spillAfterKey != null) {
+            BytesRefBuilder builder = new BytesRefBuilder();
+            CompositeKeyEncoder.encode(spillAfterKey, reverseMuls, builder);
+            after = builder.get();
+        }
+        List<Tuple<BytesRef, Long>> page = spilledBuckets.readPage(after, size);
+        consumeBucketsAndMaybeBreak(page.size());
+        List<InternalComposite.InternalBucket> buckets = new ArrayList<>(page.size());
+        for (Tuple<BytesRef, Long> bucket : page) {
+            CompositeKey key = CompositeKeyEncoder.decode(bucket.v1(), reverseMuls);
+            buckets.add(new InternalComposite.InternalBucket(sourceNames, formats, key, reverseMuls, bucket.v2(),
+                InternalAggregations.EMPTY));
+        }
+        CompositeKey lastBucket = buckets.isEmpty() ? null : buckets.get(buckets.size() - 1).getRawKey();
+        return new InternalComposite(name, size, sourceNames, formats, buckets, lastBucket, reverseMuls,
+            pipelineAggregators(), metaData());
+    }
+
+    /**
+     * Writes the buckets of the queue as a sorted run of the spilled buckets and clears the queue. The spill is aborted if
+     * its disk space cannot be reserved in the {@link CompositeSpillCache}.
+     */
+    private void spillQueue() throws IOException {
+        BytesRefBuilder builder = new BytesRefBuilder();
+        for (int slot : queue.getSortedSlot()) {
+            CompositeKeyEncoder.encode(queue.toCompositeKey(slot), reverseMuls, builder);
+            spillBuilder.add(builder.get(), queue.getDocCount(slot));
+            if (reserveSpillBytes() == false) {
+                abortSpill();
+                return;
+            }
+        }
+        spillBuilder.endRun();
+        queue.clear();
+    }
+
+    /**
+     * Reserves the disk space needed to build the buckets spilled so far, returns <code>false</code> if it does not fit
+     * in the maximum size of the {@link CompositeSpillCache}.
+     */
+    private boolean reserveSpillBytes() {
+        final long needed = spillBuilder.sizeInBytes() * SpilledBuckets.Builder.DISK_USAGE_FACTOR;
+        if (needed <= spillReservedBytes) {
+            return true;
+        }
+        final long bytes = Math.max(needed - spillReservedBytes, SPILL_RESERVATION_BYTES);
+        if (spillCache.tryReserve(bytes) == false) {
+            return false;
+        }
+        spillReservedBytes += bytes;
+        return true;
+    }
+
+    private void releaseSpillReservation() {
+        if (spillReservedBytes > 0) {
+            spillCache.release(spillReservedBytes);
+            spillReservedBytes = 0;
+        }
+    }
+
+    /**
+     * Discards the buckets spilled so far, the collection stops and the page is collected in memory when the aggregation is built.
+     */
+    private void abortSpill() {
+        Releasables.close(spillBuilder);
+        spillBuilder = null;
+        releaseSpillReservation();
+        spillAborted = true;
+        queue.clear();
+    }
+
+    /**
+     * Collects the page in memory after the spill was aborted, like an aggregation without <code>keep_alive</code> does.
+     */
+    private void collectPage() throws IOException {
+        final CompositeValuesCollectorQueue spillQueue = queue;
+        queue = new CompositeValuesCollectorQueue(context.bigArrays(), sources, size, null);
+        Releasables.close(spillQueue);
+        final Weight weight = context.searcher().createWeight(context.searcher().rewrite(context.query()),
+            ScoreMode.COMPLETE_NO_SCORES, 1f);
+        for (LeafReaderContext ctx : context.searcher().getIndexReader().leaves()) {
+            if (context.isCancelled()) {
+                throw new TaskCancelledException("cancelled");
+            }
+            final BulkScorer scorer = weight.bulkScorer(ctx);
+            if (scorer != null) {
+                scorer.score(queue.getLeafCollector(ctx, getFirstPassCollector(null)), ctx.reader().getLiveDocs());
+            }
+        }
+    }
+
     @Override
     public InternalAggregation buildEmptyAggregation() {
         return new InternalComposite(name, size, sourceNames, formats, Collections.emptyList(), null, reverseMuls,
@@ -146,6 +356,11 @@ final class CompositeAggregator extends BucketsAggregator {
     @Override
     protected LeafBucketCollector getLeafCollector(LeafReaderContext ctx, LeafBucketCollector sub) throws IOException {
         finishLeaf();
+        if (spilledBuckets != null || spillAborted) {
+            // the page is read from the buckets that were spilled by a previous request
+            // or collected again in memory because the spill was aborted
+            throw new CollectionTerminatedException();
+        }
         boolean fillDocIdSet = deferredCollectors != NO_OP_COLLECTOR;
         if (sortedDocsProducer != null) {
             /*
@@ -174,6 +389,9 @@ final class CompositeAggregator extends BucketsAggregator {
                 @Override
                 public void collect(int doc, long zeroBucket) throws IOException {
                     assert zeroBucket == 0L;
+                    if (spillAborted) {
+                        throw new CollectionTerminatedException();
+                    }
                     inner.collect(doc);
                 }
             };
@@ -189,6 +407,10 @@ final class CompositeAggregator extends BucketsAggregator {
 
             @Override
             public void collect(int doc, long bucket) throws IOException {
+                if (spillBuilder != null && queue.isFull() && queue.compareCurrent() == null) {
+                    // the candidate is a new bucket, spill the buckets in the queue to make room for it
+                    spillQueue();
+                }
                 int slot = queue.addIfCompetitive();
                 if (slot != -1) {
                     if (builder != null && lastDoc != doc) {
@@ -0,0 +1,140 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.NumericUtils;
+
+/**
+ * Encodes {@link CompositeKey}s into bytes that sort in the same order as the composite buckets, so that buckets can be
+ * sorted and merged on disk without decoding their keys. Every value starts with a marker that sorts missing values first,
+ * numbers are written as sortable big endian longs and binary values are escaped and terminated so that no encoded value
+ * is the prefix of another. The bytes of a value in descending order are inverted.
+ */
+final class CompositeKeyEncoder {
+    private static final byte MISSING = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte BYTES = 3;
+
+    private CompositeKeyEncoder() {}
+
+    /**
+     * Encodes the provided <code>key</code> in <code>builder</code>.
+     */
+    static void encode(CompositeKey key, int[] reverseMuls, BytesRefBuilder builder) {
+        assert key.size() == reverseMuls.length;
+        builder.clear();
+        for (int i = 0; i < key.size(); i++) {
+            final int start = builder.length();
+            final Comparable<?> value = key.get(i);
+            if (value == null) {
+                builder.append(MISSING);
+            } else if (value instanceof Long) {
+                builder.append(LONG);
+                appendLong(builder, (Long) value);
+            } else if (value instanceof Double) {
+                builder.append(DOUBLE);
+                appendLong(builder, NumericUtils.doubleToSortableLong((Double) value));
+            } else if (value instanceof BytesRef) {
+                builder.append(BYTES);
+                final BytesRef bytes = (BytesRef) value;
+                for (int j = 0; j < bytes.length; j++) {
+                    final byte b = bytes.bytes[bytes.offset + j];
+                    builder.append(b);
+                    if (b == 0) {
+                        builder.append((byte) 0xFF);
+                    }
+                }
+                builder.append((byte) 0);
+                builder.append((byte) 0);
+            } else {
+                throw new IllegalArgumentException("Cannot encode composite value of type [" + value.getClass().getSimpleName() + "]");
+            }
+            if (reverseMuls[i] < 0) {
+                final byte[] bytes = builder.bytes();
+                for (int j = start; j < builder.length(); j++) {
+                    bytes[j] = (byte) ~bytes[j];
+                }
+            }
+        }
+    }
+
+    private static void appendLong(BytesRefBuilder builder, long value) {
+        final long sortable = value ^ Long.MIN_VALUE;
+        for (int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+            builder.append((byte) (sortable >>> shift));
+        }
+    }
+
+    /**
+     * Decodes a {@link CompositeKey} that was encoded with {@link #encode}.
+     */
+    static CompositeKey decode(BytesRef encoded, int[] reverseMuls) {
+        final byte[] bytes = encoded.bytes;
+        final Comparable<?>[] values = new Comparable<?>[reverseMuls.length];
+        int pos = encoded.offset;
+        for (int i = 0; i < values.length; i++) {
+            final int mask = reverseMuls[i] < 0 ? 0xFF : 0;
+            final byte marker = (byte) (bytes[pos++] ^ mask);
+            switch (marker) {
+                case MISSING:
+                    values[i] = null;
+                    break;
+
+                case LONG:
+                    values[i] = readLong(bytes, pos, mask);
+                    pos += Long.BYTES;
+                    break;
+
+                case DOUBLE:
+                    values[i] = NumericUtils.sortableLongToDouble(readLong(bytes, pos, mask));
+                    pos += Long.BYTES;
+                    break;
+
+                case BYTES:
+                    final BytesRefBuilder value = new BytesRefBuilder();
+                    while (true) {
+                        final byte b = (byte) (bytes[pos++] ^ mask);
+                        if (b == 0 && (byte) (bytes[pos++] ^ mask) == 0) {
+                            break;
+                        }
+                        value.append(b);
+                    }
+                    values[i] = value.toBytesRef();
+                    break;
+
+                default:
+                    throw new IllegalStateException("Unknown composite value marker [" + marker + "]");
+            }
+        }
+        assert pos == encoded.offset + encoded.length;
+        return new CompositeKey(values);
+    }
+
+    private static long readLong(byte[] bytes, int pos, int mask) {
+        long sortable = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            sortable = (sortable << Byte.SIZE) | ((bytes[pos + i] ^ mask) & 0xFF);
+        }
+        return sortable ^ Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.core.internal.io.IOUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the composite buckets that a composite aggregation with a <code>keep_alive</code> spilled to disk, so that the next
+ * pages of the same request can be read from disk instead of searching the shard again. Buckets are bound to the
+ * point-in-time reader that produced them: they are removed when this reader is closed or when they were not accessed
+ * for their keep alive, which {@link #removeExpired()} checks periodically. The files of all indices of a node are written in a
+ * directory that is dedicated to this cache, and the buckets that were accessed the least recently are removed when their total
+ * size exceeds {@link #MAX_SIZE_SETTING}. Aggregations reserve the disk space of the buckets that they are spilling with
+ * {@link #tryReserve(long)} so that the limit also applies to the files that are being written.
+ */
+public final class CompositeSpillCache implements Closeable {
+    /**
+     * The default number of composite buckets that an aggregation keeps in memory before it spills them to disk.
+     */
+    public static final int DEFAULT_MAX_BUCKETS_IN_MEMORY = 10000;
+
+    /**
+     * The maximum size on disk of the spilled buckets of a node.
+     */
+    public static final Setting<ByteSizeValue> MAX_SIZE_SETTING = Setting.byteSizeSetting("indices.composite_spill.max_size",
+        new ByteSizeValue(1, ByteSizeUnit.GB), Property.NodeScope);
+
+    /**
+     * The maximum keep alive of the spilled buckets of an aggregation.
+     */
+    public static final Setting<TimeValue> MAX_KEEP_ALIVE_SETTING = Setting.positiveTimeSetting("indices.composite_spill.max_keep_alive",
+        TimeValue.timeValueHours(1), Property.NodeScope);
+
+    /**
+     * The name of the folder of the spilled buckets in the folder of the node.
+     */
+    public static final String FOLDER_NAME = "_composite";
+
+    private static final Logger logger = LogManager.getLogger(CompositeSpillCache.class);
+
+    private final Path path;
+    private final long maxSizeInBytes;
+    private final TimeValue maxKeepAlive;
+    private final int maxBucketsInMemory;
+    private final LongSupplier relativeTimeInMillis;
+    private final Map<Key, Entry> entries = ConcurrentCollections.newConcurrentMap();
+    private final Set<IndexReader.CacheKey> readers = ConcurrentCollections.newConcurrentSet();
+    private final AtomicLong sizeInBytes = new AtomicLong();
+    private long reservedBytes;
+    private Directory directory;
+    private boolean closed;
+
+    /**
+     * @param path the directory of the spilled buckets, which is created the first time they are written and removed when the cache
+     *             is closed, so it must not be used by anything else
+     * @param maxSizeInBytes the maximum size on disk of the spilled buckets
+     * @param maxKeepAlive the maximum keep alive of the spilled buckets
+     * @param maxBucketsInMemory the number of buckets that an aggregation keeps in memory before it spills them
+     * @param relativeTimeInMillis the clock of the keep alives
+     */
+    public CompositeSpillCache(Path path, long maxSizeInBytes, TimeValue maxKeepAlive, int maxBucketsInMemory,
+                               LongSupplier relativeTimeInMillis) {
+        if (maxBucketsInMemory < 1) {
+            throw new IllegalArgumentException("[maxBucketsInMemory] must be greater than 0, got " + maxBucketsInMemory);
+        }
+        this.path = path;
+        this.maxSizeInBytes = maxSizeInBytes;
+        this.maxKeepAlive = maxKeepAlive;
+        this.maxBucketsInMemory = maxBucketsInMemory;
+        this.relativeTimeInMillis = relativeTimeInMillis;
+    }
+
+    /**
+     * The number of buckets that an aggregation keeps in memory before it spills them to disk.
+     */
+    int maxBucketsInMemory() {
+        return maxBucketsInMemory;
+    }
+
+    /**
+     * Checks that the provided keep alive is not greater than {@link #MAX_KEEP_ALIVE_SETTING}.
+     */
+    void checkKeepAlive(TimeValue keepAlive) {
+        if (keepAlive.millis() > maxKeepAlive.millis()) {
+            throw new IllegalArgumentException(
+                "Keep alive for composite aggregation (" + keepAlive + ") is too large. " +
+                    "It must be less than (" + maxKeepAlive + "). " +
+                    "This limit can be set by changing the [" + MAX_KEEP_ALIVE_SETTING.getKey() + "] node setting.");
+        }
+    }
+
+    /**
+     * The directory where buckets are spilled.
+     */
+    synchronized Directory directory() throws IOException {
+        if (closed) {
+            throw new IllegalStateException("composite spill cache is closed");
+        }
+        if (directory == null) {
+            Files.createDirectories(path);
+            directory = FSDirectory.open(path);
+        }
+        return directory;
+    }
+
+    /**
+     * Returns the buckets spilled for <code>key</code> from the provided reader, or <code>null</code> if there are none.
+     * The caller must release the returned buckets.
+     */
+    SpilledBuckets acquire(IndexReader.CacheHelper reader, Object key) {
+        removeExpired();
+        final Entry entry = entries.get(new Key(reader.getKey(), key));
+        if (entry != null && entry.buckets.tryIncRef()) {
+            entry.lastAccessTime = relativeTimeInMillis.getAsLong();
+            return entry.buckets;
+        }
+        return null;
+    }
+
+    /**
+     * Keeps the buckets spilled for <code>key</code> from the provided reader for the next requests.
+     */
+    void put(IndexReader.CacheHelper reader, Object key, SpilledBuckets buckets, TimeValue keepAlive) {
+        final IndexReader.CacheKey readerKey = reader.getKey();
+        if (readers.add(readerKey)) {
+            reader.addClosedListener(this::onClose);
+        }
+        buckets.incRef();
+        sizeInBytes.addAndGet(buckets.sizeInBytes());
+        final Entry previous = entries.put(new Key(readerKey, key),
+            new Entry(buckets, keepAlive.millis(), relativeTimeInMillis.getAsLong()));
+        if (previous != null) {
+            sizeInBytes.addAndGet(-previous.buckets.sizeInBytes());
+            previous.buckets.decRef();
+        }
+        evictToMaxSize();
+        synchronized (this) {
+            if (closed) {
+                clear();
+            }
+        }
+    }
+
+    /**
+     * Reserves <code>bytes</code> on disk for buckets that are being spilled. The buckets that were accessed the least recently
+     * are removed to make room for them if needed. Returns <code>false</code> if the reservation does not fit in
+     * {@link #MAX_SIZE_SETTING}, in which case the buckets must not be spilled. Reservations must be released with
+     * {@link #release(long)} once the buckets are kept in this cache or discarded.
+     */
+    synchronized boolean tryReserve(long bytes) {
+        if (closed || reservedBytes + bytes > maxSizeInBytes) {
+            return false;
+        }
+        reservedBytes += bytes;
+        evictToMaxSize();
+        return true;
+    }
+
+    /**
+     * Releases bytes that were reserved with {@link #tryReserve(long)}.
+     */
+    synchronized void release(long bytes) {
+        reservedBytes -= bytes;
+        assert reservedBytes >= 0 : "released more bytes than reserved: " + reservedBytes;
+    }
+
+    /**
+     * The number of spilled buckets kept in this cache.
+     */
+    int count() {
+        return entries.size();
+    }
+
+    /**
+     * The size on disk of the spilled buckets kept in this cache.
+     */
+    long sizeInBytes() {
+        return sizeInBytes.get();
+    }
+
+    /**
+     * The size on disk reserved for the buckets that are being spilled.
+     */
+    synchronized long reservedBytes() {
+        return reservedBytes;
+    }
+
+    /**
+     * Removes the buckets that were not accessed for their keep alive.
+     */
+    public void removeExpired() {
+        final long now = relativeTimeInMillis.getAsLong();
+        for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+            if (now - entry.getValue().lastAccessTime > entry.getValue().keepAlive) {
+                remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Removes the buckets that were accessed the least recently until the spilled buckets and the reservations fit in the maximum
+     * size. The files of the removed buckets are deleted once the requests that read them are done.
+     */
+    private synchronized void evictToMaxSize() {
+        while (sizeInBytes.get() + reservedBytes > maxSizeInBytes) {
+            Map.Entry<Key, Entry> oldest = null;
+            for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+                if (oldest == null || entry.getValue().lastAccessTime < oldest.getValue().lastAccessTime) {
+                    oldest = entry;
+                }
+            }
+            if (oldest == null) {
+                break;
+            }
+            remove(oldest.getKey(), oldest.getValue());
+        }
+    }
+
+    private void onClose(IndexReader.CacheKey readerKey) {
+        readers.remove(readerKey);
+        for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+            if (entry.getKey().readerKey == readerKey) {
+                remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void remove(Key key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            sizeInBytes.addAndGet(-entry.buckets.sizeInBytes());
+            entry.buckets.decRef();
+        }
+    }
+
+    private void clear() {
+        for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+            remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed == false) {
+            closed = true;
+            clear();
+            if (directory != null) {
+                try {
+                    IOUtils.close(directory);
+                    IOUtils.rm(path);
+                } catch (IOException e) {
+                    logger.warn(() -> new ParameterizedMessage("failed to remove spilled composite buckets in [{}]", path), e);
+                }
+            }
+        }
+    }
+
+    private static final class Key {
+        final IndexReader.CacheKey readerKey;
+        final Object key;
+
+        Key(IndexReader.CacheKey readerKey, Object key) {
+            this.readerKey = readerKey;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key other = (Key) o;
+            return readerKey == other.readerKey && Objects.equals(key, other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * readerKey.hashCode() + Objects.hashCode(key);
+        }
+    }
+
+    private static final class Entry {
+        final SpilledBuckets buckets;
+        final long keepAlive;
+        volatile long lastAccessTime;
+
+        Entry(SpilledBuckets buckets, long keepAlive, long lastAccessTime) {
+            this.buckets = buckets;
+            this.keepAlive = keepAlive;
+            this.lastAccessTime = lastAccessTime;
+        }
+    }
+}
@@ -234,6 +234,13 @@ final class CompositeValuesCollectorQueue implements Releasable {
         return newSlot;
     }
 
+    /**
+     * Removes all the composite buckets from the queue, the slots are reused by the next candidates.
+     */
+    void clear() {
+        keys.clear();
+    }
+
     @Override
     public void close() {
         Releasables.close(docCounts);
@@ -0,0 +1,269 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.OfflineSorter;
+import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.util.concurrent.AbstractRefCounted;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The composite buckets of a shard, sorted by their encoded key (see {@link CompositeKeyEncoder}) and written to a file.
+ * The keys and file pointers of every {@link #INDEX_INTERVAL}th bucket are kept in memory so that a page can be read after
+ * any key without reading the file from the start. The file is deleted when the last reference is released.
+ */
+final class SpilledBuckets extends AbstractRefCounted {
+    static final int INDEX_INTERVAL = 128;
+    private static final String TEMP_FILE_PREFIX = "composite";
+    private static final int SORT_BUFFER_MB = 16;
+
+    private final Directory directory;
+    private final String fileName;
+    private final long numBuckets;
+    private final long sizeInBytes;
+    private final BytesRef[] indexKeys;
+    private final long[] indexPointers;
+
+    private SpilledBuckets(Directory directory, String fileName, long numBuckets, long sizeInBytes, BytesRef[] indexKeys,
+                           long[] indexPointers) {
+        super("spilled_buckets");
+        this.directory = directory;
+        this.fileName = fileName;
+        this.numBuckets = numBuckets;
+        this.sizeInBytes = sizeInBytes;
+        this.indexKeys = indexKeys;
+        this.indexPointers = indexPointers;
+    }
+
+    /**
+     * The number of buckets in the file.
+     */
+    long numBuckets() {
+        return numBuckets;
+    }
+
+    /**
+     * The size of the file on disk.
+     */
+    long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * Reads up to <code>size</code> buckets whose encoded key is greater than <code>after</code>, or the first
+     * <code>size</code> buckets if <code>after</code> is null. Returns the encoded keys and the document counts of the buckets.
+     */
+    List<Tuple<BytesRef, Long>> readPage(BytesRef after, int size) throws IOException {
+        final List<Tuple<BytesRef, Long>> page = new ArrayList<>();
+        if (numBuckets == 0) {
+            return page;
+        }
+        int block = 0;
+        if (after != null) {
+            // starts from the last indexed key that is less than or equal to the after key
+            final int index = Arrays.binarySearch(indexKeys, after);
+            block = index >= 0 ? index : Math.max(0, -index - 2);
+        }
+        try (IndexInput in = directory.openInput(fileName, IOContext.READONCE)) {
+            in.seek(indexPointers[block]);
+            final BytesRefBuilder key = new BytesRefBuilder();
+            for (long i = (long) block * INDEX_INTERVAL; i < numBuckets && page.size() < size; i++) {
+                final int length = in.readVInt();
+                key.grow(length);
+                key.setLength(length);
+                in.readBytes(key.bytes(), 0, length);
+                final long docCount = in.readVLong();
+                if (after == null || key.get().compareTo(after) > 0) {
+                    page.add(new Tuple<>(key.toBytesRef(), docCount));
+                }
+            }
+        }
+        return page;
+    }
+
+    @Override
+    protected void closeInternal() {
+        IOUtils.deleteFilesIgnoringExceptions(directory, fileName);
+    }
+
+    /**
+     * Builds {@link SpilledBuckets} from runs of buckets. The buckets of a run must be added in sorted order but the same
+     * key can appear in several runs, in which case the document counts are summed. If there is more than one run, they are
+     * sorted on disk with an {@link OfflineSorter}.
+     */
+    static final class Builder implements Releasable {
+        /**
+         * The maximum disk usage of a build relative to {@link #sizeInBytes()}: the runs, the sorted copy of the runs and
+         * the merged buckets are on disk at the same time.
+         */
+        static final int DISK_USAGE_FACTOR = 3;
+
+        private final Directory directory;
+        private final IndexOutput runsOutput;
+        private final OfflineSorter.ByteSequencesWriter runsWriter;
+        private final BytesRefBuilder record = new BytesRefBuilder();
+        private int numRuns;
+        private boolean runIsEmpty = true;
+        private boolean built;
+
+        Builder(Directory directory) throws IOException {
+            this.directory = directory;
+            this.runsOutput = directory.createTempOutput(TEMP_FILE_PREFIX, "runs", IOContext.DEFAULT);
+            this.runsWriter = new OfflineSorter.ByteSequencesWriter(runsOutput);
+        }
+
+        /**
+         * Adds a bucket to the current run.
+         */
+        void add(BytesRef key, long docCount) throws IOException {
+            assert built == false;
+            record.copyBytes(key);
+            for (int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+                record.append((byte) (docCount >>> shift));
+            }
+            runsWriter.write(record.get());
+            runIsEmpty = false;
+        }
+
+        /**
+         * The size of the runs written so far.
+         */
+        long sizeInBytes() {
+            return runsOutput.getFilePointer();
+        }
+
+        /**
+         * Ends the current run, the next buckets start a new sorted run.
+         */
+        void endRun() {
+            if (runIsEmpty == false) {
+                numRuns++;
+                runIsEmpty = true;
+            }
+        }
+
+        /**
+         * Merges the runs into {@link SpilledBuckets}. The returned buckets hold a reference that must be released by the caller.
+         */
+        SpilledBuckets build() throws IOException {
+            assert built == false;
+            built = true;
+            endRun();
+            CodecUtil.writeFooter(runsOutput);
+            runsWriter.close();
+            final String runsFileName = runsOutput.getName();
+            String sortedFileName = runsFileName;
+            try {
+                if (numRuns > 1) {
+                    // the records start with the encoded key and all encoded keys are prefix free
+                    // so the byte order of the records is the order of their keys
+                    final OfflineSorter sorter = new OfflineSorter(directory, TEMP_FILE_PREFIX, OfflineSorter.DEFAULT_COMPARATOR,
+                        OfflineSorter.BufferSize.megabytes(SORT_BUFFER_MB), OfflineSorter.MAX_TEMPFILES, -1, null, 0);
+                    sortedFileName = sorter.sort(runsFileName);
+                }
+                return merge(sortedFileName);
+            } finally {
+                IOUtils.deleteFilesIgnoringExceptions(directory, runsFileName, sortedFileName);
+            }
+        }
+
+        private SpilledBuckets merge(String sortedFileName) throws IOException {
+            BytesRef[] indexKeys = new BytesRef[0];
+            long[] indexPointers = new long[0];
+            long numBuckets = 0;
+            boolean success = false;
+            final IndexOutput output = directory.createTempOutput(TEMP_FILE_PREFIX, "buckets", IOContext.DEFAULT);
+            try (ChecksumIndexInput input = directory.openChecksumInput(sortedFileName, IOContext.READONCE);
+                 OfflineSorter.ByteSequencesReader reader = new OfflineSorter.ByteSequencesReader(input, sortedFileName)) {
+                final BytesRefBuilder current = new BytesRefBuilder();
+                long currentDocCount = -1;
+                for (BytesRef next = reader.next(); ; next = reader.next()) {
+                    final BytesRef key = next == null ? null : new BytesRef(next.bytes, next.offset, next.length - Long.BYTES);
+                    if (currentDocCount >= 0 && (key == null || key.equals(current.get()) == false)) {
+                        if (numBuckets % INDEX_INTERVAL == 0) {
+                            final int index = (int) (numBuckets / INDEX_INTERVAL);
+                            indexKeys = ArrayUtil.grow(indexKeys, index + 1);
+                            indexPointers = ArrayUtil.grow(indexPointers, index + 1);
+                            indexKeys[index] = current.toBytesRef();
+                            indexPointers[index] = output.getFilePointer();
+                        }
+                        output.writeVInt(current.length());
+                        output.writeBytes(current.bytes(), 0, current.length());
+                        output.writeVLong(currentDocCount);
+                        numBuckets++;
+                        currentDocCount = -1;
+                    }
+                    if (key == null) {
+                        break;
+                    }
+                    if (currentDocCount == -1) {
+                        current.copyBytes(key);
+                        currentDocCount = 0;
+                    }
+                    currentDocCount += readLong(next.bytes, next.offset + key.length);
+                }
+                final long sizeInBytes = output.getFilePointer();
+                output.close();
+                final int numIndexKeys = (int) ((numBuckets + INDEX_INTERVAL - 1) / INDEX_INTERVAL);
+                SpilledBuckets buckets = new SpilledBuckets(directory, output.getName(), numBuckets, sizeInBytes,
+                    Arrays.copyOf(indexKeys, numIndexKeys), Arrays.copyOf(indexPointers, numIndexKeys));
+                success = true;
+                return buckets;
+            } finally {
+                if (success == false) {
+                    IOUtils.closeWhileHandlingException(output);
+                    IOUtils.deleteFilesIgnoringExceptions(directory, output.getName());
+                }
+            }
+        }
+
+        private static long readLong(byte[] bytes, int pos) {
+            long value = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                value = (value << Byte.SIZE) | (bytes[pos + i] & 0xFF);
+            }
+            return value;
+        }
+
+        @Override
+        public void close() {
+            if (built == false) {
+                built = true;
+                IOUtils.closeWhileHandlingException(runsWriter);
+                IOUtils.deleteFilesIgnoringExceptions(directory, runsOutput.getName());
+            }
+        }
+    }
+}
@@ -66,10 +66,10 @@ public class FiltersAggregatorFactory extends AggregatorFactory<FiltersAggregato
      * created if the aggregation collects documents reducing the overhead of
      * the aggregation in the case where no documents are collected.
      * 
-     * Note that as aggregations are initialsed and executed in a serial manner,
-     * no concurrency considerations are necessary here.
+     * This is synchronized since the leaf slices of a concurrent search collect
+     * their own aggregators of the same factory in parallel.
      */
-    public Weight[] getWeights() {
+    public synchronized Weight[] getWeights() {
         if (weights == null) {
             try {
                 IndexSearcher contextSearcher = context.searcher();
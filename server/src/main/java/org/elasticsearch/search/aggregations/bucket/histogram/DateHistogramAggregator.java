@@ -18,14 +18,27 @@
  */
 package org.elasticsearch.search.aggregations.bucket.histogram;
 
+import org.apache.lucene.document.LongPoint;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PointValues;
 import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexOrDocValuesQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PointRangeQuery;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.util.CollectionUtil;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.rounding.Rounding;
 import org.elasticsearch.common.util.LongHash;
+import org.elasticsearch.index.cache.rollup.SegmentRollup;
+import org.elasticsearch.index.cache.rollup.SegmentRollupCache;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.AggregatorFactories;
@@ -35,12 +48,14 @@ import org.elasticsearch.search.aggregations.InternalOrder;
 import org.elasticsearch.search.aggregations.LeafBucketCollector;
 import org.elasticsearch.search.aggregations.LeafBucketCollectorBase;
 import org.elasticsearch.search.aggregations.bucket.BucketsAggregator;
+import org.elasticsearch.search.aggregations.metrics.RollupMetricsAggregator;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.support.ValuesSource;
 import org.elasticsearch.search.internal.SearchContext;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -48,6 +63,11 @@ import java.util.Map;
 /**
  * An aggregator for date values. Every date is rounded down using a configured
  * {@link Rounding}.
+ * <p>
+ * If the segments of the index are rolled up by the field of the histogram (see {@link SegmentRollupCache}), the buckets of
+ * a top-level histogram are computed from the rollup of every segment whose documents all match the query, together with
+ * the metrics sub-aggregations that can aggregate rolled up values. This is only possible if every rolled up interval
+ * falls into a single bucket of the histogram, e.g. for hourly rollups and daily buckets.
  *
  * @see Rounding
  */
@@ -66,10 +86,14 @@ class DateHistogramAggregator extends BucketsAggregator {
     private final LongHash bucketOrds;
     private long offset;
 
+    // the rollups of the segments and the range of dates that the query matches, or null if rollups can't be used
+    private final SegmentRollupCache rollups;
+    private final long[] rollupDateRange;
+
     DateHistogramAggregator(String name, AggregatorFactories factories, Rounding rounding, Rounding shardRounding,
             long offset, BucketOrder order, boolean keyed,
             long minDocCount, @Nullable ExtendedBounds extendedBounds, @Nullable ValuesSource.Numeric valuesSource,
-            DocValueFormat formatter, SearchContext aggregationContext,
+            DocValueFormat formatter, @Nullable SegmentRollupCache rollups, SearchContext aggregationContext,
             Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
 
         super(name, factories, aggregationContext, parent, pipelineAggregators, metaData);
@@ -84,6 +108,59 @@ class DateHistogramAggregator extends BucketsAggregator {
         this.formatter = formatter;
 
         bucketOrds = new LongHash(1, aggregationContext.bigArrays());
+        final long[] dateRange = rollups == null ? null : rollupDateRange(aggregationContext, rollups.dateField());
+        if (dateRange != null && Arrays.stream(subAggregators)
+                .allMatch(agg -> agg instanceof RollupMetricsAggregator && ((RollupMetricsAggregator) agg).rollupField() != null)) {
+            this.rollups = rollups;
+            this.rollupDateRange = dateRange;
+        } else {
+            this.rollups = null;
+            this.rollupDateRange = null;
+        }
+    }
+
+    /**
+     * Returns the range of dates that the query of the given context matches if it matches all documents within this range,
+     * or {@code null} if it filters documents in other ways.
+     */
+    private static long[] rollupDateRange(SearchContext context, String dateField) {
+        if (context.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER || context.minimumScore() != null) {
+            return null;
+        }
+        return dateRange(context.query(), dateField);
+    }
+
+    static long[] dateRange(Query query, String dateField) {
+        if (query == null || query instanceof MatchAllDocsQuery) {
+            return new long[] { Long.MIN_VALUE, Long.MAX_VALUE };
+        } else if (query instanceof ConstantScoreQuery) {
+            return dateRange(((ConstantScoreQuery) query).getQuery(), dateField);
+        } else if (query instanceof BoostQuery) {
+            return dateRange(((BoostQuery) query).getQuery(), dateField);
+        } else if (query instanceof IndexOrDocValuesQuery) {
+            return dateRange(((IndexOrDocValuesQuery) query).getIndexQuery(), dateField);
+        } else if (query instanceof PointRangeQuery) {
+            final PointRangeQuery rangeQuery = (PointRangeQuery) query;
+            if (rangeQuery.getField().equals(dateField) && rangeQuery.getNumDims() == 1 && rangeQuery.getBytesPerDim() == Long.BYTES) {
+                return new long[] {
+                    LongPoint.decodeDimension(rangeQuery.getLowerPoint(), 0), LongPoint.decodeDimension(rangeQuery.getUpperPoint(), 0) };
+            }
+        } else if (query instanceof BooleanQuery && ((BooleanQuery) query).clauses().isEmpty() == false) {
+            final long[] range = new long[] { Long.MIN_VALUE, Long.MAX_VALUE };
+            for (BooleanClause clause : ((BooleanQuery) query).clauses()) {
+                if (clause.isRequired() == false || clause.isProhibited()) {
+                    return null;
+                }
+                final long[] clauseRange = dateRange(clause.getQuery(), dateField);
+                if (clauseRange == null) {
+                    return null;
+                }
+                range[0] = Math.max(range[0], clauseRange[0]);
+                range[1] = Math.min(range[1], clauseRange[1]);
+            }
+            return range;
+        }
+        return null;
     }
 
     @Override
@@ -100,6 +177,13 @@ class DateHistogramAggregator extends BucketsAggregator {
         if (valuesSource == null) {
             return LeafBucketCollector.NO_OP_COLLECTOR;
         }
+        if (rollups != null && ctx.reader().getLiveDocs() == null) {
+            final SegmentRollup rollup = rollups.getRollup(ctx);
+            if (rollup != null && collectRollup(ctx, rollup)) {
+                // the whole segment has been aggregated
+                throw new CollectionTerminatedException();
+            }
+        }
         final SortedNumericDocValues values = valuesSource.longValues(ctx);
         return new LeafBucketCollectorBase(sub, values) {
             @Override
@@ -132,6 +216,50 @@ class DateHistogramAggregator extends BucketsAggregator {
         };
     }
 
+    /**
+     * Aggregates the rollup of the given segment in place of its documents if all its documents match the query and the
+     * rollup can be aggregated by this histogram and its sub-aggregations.
+     *
+     * @return whether the rollup has been aggregated
+     */
+    private boolean collectRollup(LeafReaderContext ctx, SegmentRollup rollup) throws IOException {
+        if (rollupDateRange[0] != Long.MIN_VALUE || rollupDateRange[1] != Long.MAX_VALUE) {
+            final PointValues points = ctx.reader().getPointValues(rollups.dateField());
+            if (points != null && (LongPoint.decodeDimension(points.getMinPackedValue(), 0) < rollupDateRange[0]
+                    || LongPoint.decodeDimension(points.getMaxPackedValue(), 0) > rollupDateRange[1])) {
+                return false;
+            }
+        }
+        final SegmentRollup.Metric[] metrics = new SegmentRollup.Metric[subAggregators.length];
+        for (int i = 0; i < subAggregators.length; i++) {
+            metrics[i] = rollup.metric(((RollupMetricsAggregator) subAggregators[i]).rollupField());
+            if (metrics[i] == null) {
+                return false;
+            }
+        }
+        final long[] keys = new long[rollup.numRows()];
+        for (int row = 0; row < keys.length; row++) {
+            final long start = rollup.key(row);
+            keys[row] = shardRounding.round(start - offset) + offset;
+            if (keys[row] != shardRounding.round(start + rollup.interval() - 1 - offset) + offset) {
+                // the interval spans several buckets
+                return false;
+            }
+        }
+        for (int row = 0; row < keys.length; row++) {
+            long bucketOrd = bucketOrds.add(keys[row]);
+            if (bucketOrd < 0) { // already seen
+                bucketOrd = -1 - bucketOrd;
+            }
+            incrementBucketDocCount(bucketOrd, Math.toIntExact(rollup.docCount(row)));
+            for (int i = 0; i < subAggregators.length; i++) {
+                ((RollupMetricsAggregator) subAggregators[i]).collectRollup(bucketOrd, metrics[i].valueCount(row),
+                    metrics[i].sum(row), metrics[i].min(row), metrics[i].max(row));
+            }
+        }
+        return true;
+    }
+
     @Override
     public InternalAggregation buildAggregation(long owningBucketOrdinal) throws IOException {
         assert owningBucketOrdinal == 0;
@@ -20,6 +20,7 @@
 package org.elasticsearch.search.aggregations.bucket.histogram;
 
 import org.elasticsearch.common.rounding.Rounding;
+import org.elasticsearch.index.cache.rollup.SegmentRollupCache;
 import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.AggregatorFactories;
 import org.elasticsearch.search.aggregations.AggregatorFactory;
@@ -77,7 +78,19 @@ public final class DateHistogramAggregatorFactory
     private Aggregator createAggregator(ValuesSource.Numeric valuesSource, Aggregator parent, List<PipelineAggregator> pipelineAggregators,
             Map<String, Object> metaData) throws IOException {
         return new DateHistogramAggregator(name, factories, rounding, shardRounding, offset, order, keyed, minDocCount, extendedBounds,
-                valuesSource, config.format(), context, parent, pipelineAggregators, metaData);
+                valuesSource, config.format(), segmentRollups(valuesSource, parent), context, parent, pipelineAggregators, metaData);
+    }
+
+    /**
+     * Returns the rollups of the segments if they summarize the field of this histogram, which is only useful for top-level
+     * histograms since sub-aggregations only see a subset of the documents of a segment.
+     */
+    private SegmentRollupCache segmentRollups(ValuesSource.Numeric valuesSource, Aggregator parent) {
+        final SegmentRollupCache rollups = context.segmentRollupCache();
+        if (valuesSource == null || parent != null || rollups == null || rollups.enabled() == false) {
+            return null;
+        }
+        return rollups.dateField().equals(config.rawFieldName()) ? rollups : null;
     }
 
     @Override
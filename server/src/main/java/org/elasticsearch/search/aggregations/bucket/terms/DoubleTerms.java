@@ -138,7 +138,7 @@ public class DoubleTerms extends InternalMappedTerms<DoubleTerms, DoubleTerms.Bu
     }
 
     @Override
-    protected DoubleTerms create(String name, List<Bucket> buckets, long docCountError, long otherDocCount) {
+    protected DoubleTerms create(String name, List<Bucket> buckets, int shardSize, long docCountError, long otherDocCount) {
         return new DoubleTerms(name, order, requiredSize, minDocCount, pipelineAggregators(), getMetaData(), format,
                 shardSize, showTermDocCountError, otherDocCount, buckets, docCountError);
     }
@@ -27,6 +27,7 @@ import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.BucketOrder;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -81,6 +82,32 @@ public abstract class InternalMappedTerms<A extends InternalTerms<A, B>, B exten
         out.writeList(buckets);
     }
 
+    @Override
+    protected A create(String name, List<B> buckets, long docCountError, long otherDocCount) {
+        return create(name, buckets, shardSize, docCountError, otherDocCount);
+    }
+
+    protected abstract A create(String name, List<B> buckets, int shardSize, long docCountError, long otherDocCount);
+
+    @Override
+    public A reduceToShardSize(int shardSize, long shardMinDocCount) {
+        final List<B> ordered = new ArrayList<>(buckets.size());
+        long otherDocCount = this.otherDocCount;
+        for (B bucket : buckets) {
+            if (bucket.getDocCount() >= shardMinDocCount) {
+                ordered.add(bucket);
+            } else {
+                otherDocCount += bucket.getDocCount();
+            }
+        }
+        ordered.sort(order.comparator(null));
+        for (int i = shardSize; i < ordered.size(); i++) {
+            otherDocCount += ordered.get(i).getDocCount();
+        }
+        final List<B> top = new ArrayList<>(ordered.subList(0, Math.min(shardSize, ordered.size())));
+        return create(name, top, shardSize, docCountError, otherDocCount);
+    }
+
     @Override
     protected void setDocCountError(long docCountError) {
         this.docCountError = docCountError;
@@ -314,6 +314,13 @@ public abstract class InternalTerms<A extends InternalTerms<A, B>, B extends Int
         return create(name, Arrays.asList(list), docCountError, otherDocCount);
     }
 
+    /**
+     * Keeps the top {@code shardSize} buckets with at least {@code shardMinDocCount} documents in the order of the terms, like the
+     * aggregator of a shard does, and adds the doc counts of the other buckets to the sum of other doc counts. Used to turn the terms
+     * that were collected segment by segment without a limit on the number of buckets into the terms of the shard.
+     */
+    public abstract A reduceToShardSize(int shardSize, long shardMinDocCount);
+
     protected abstract void setDocCountError(long docCountError);
 
     protected abstract int getShardSize();
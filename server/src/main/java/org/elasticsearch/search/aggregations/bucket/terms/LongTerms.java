@@ -138,7 +138,7 @@ public class LongTerms extends InternalMappedTerms<LongTerms, LongTerms.Bucket>
     }
 
     @Override
-    protected LongTerms create(String name, List<Bucket> buckets, long docCountError, long otherDocCount) {
+    protected LongTerms create(String name, List<Bucket> buckets, int shardSize, long docCountError, long otherDocCount) {
         return new LongTerms(name, order, requiredSize, minDocCount, pipelineAggregators(), getMetaData(), format, shardSize,
                 showTermDocCountError, otherDocCount, buckets, docCountError);
     }
@@ -18,11 +18,22 @@
  */
 package org.elasticsearch.search.aggregations.bucket.terms;
 
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PointValues;
 import org.apache.lucene.index.SortedNumericDocValues;
 import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.util.LongHash;
+import org.elasticsearch.index.mapper.DateFieldMapper;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.NumberFieldMapper;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.AggregatorFactories;
@@ -34,32 +45,76 @@ import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.BucketOrder;
 import org.elasticsearch.search.aggregations.InternalOrder;
 import org.elasticsearch.search.aggregations.support.ValuesSource;
+import org.elasticsearch.search.aggregations.support.ValuesSourceConfig;
 import org.elasticsearch.search.internal.SearchContext;
 
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 import static java.util.Collections.emptyList;
 
 public class LongTermsAggregator extends TermsAggregator {
 
+    /**
+     * The maximum number of distinct values that the range of a field may span in order to be aggregated with
+     * direct indexed buckets rather than hashed buckets.
+     */
+    static final int MAX_DENSE_RANGE = 1024;
+
     protected final ValuesSource.Numeric valuesSource;
     protected final LongHash bucketOrds;
     private boolean showTermDocCountError;
     private LongFilter longFilter;
+    // when set, all values are known to be in this range and the bucket ordinal of a value is its offset from the minimum
+    private final DenseRange denseRange;
+    // the bucket ordinals of the dense range that the filter accepts, or null if there is no filter
+    private final FixedBitSet acceptedDenseOrds;
 
     public LongTermsAggregator(String name, AggregatorFactories factories, ValuesSource.Numeric valuesSource, DocValueFormat format,
             BucketOrder order, BucketCountThresholds bucketCountThresholds, SearchContext aggregationContext, Aggregator parent,
             SubAggCollectionMode subAggCollectMode, boolean showTermDocCountError, IncludeExclude.LongFilter longFilter,
             List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
+        this(name, factories, valuesSource, format, order, bucketCountThresholds, aggregationContext, parent, subAggCollectMode,
+            showTermDocCountError, longFilter, null, pipelineAggregators, metaData);
+    }
+
+    LongTermsAggregator(String name, AggregatorFactories factories, ValuesSource.Numeric valuesSource, DocValueFormat format,
+            BucketOrder order, BucketCountThresholds bucketCountThresholds, SearchContext aggregationContext, Aggregator parent,
+            SubAggCollectionMode subAggCollectMode, boolean showTermDocCountError, IncludeExclude.LongFilter longFilter,
+            @Nullable DenseRange denseRange, List<PipelineAggregator> pipelineAggregators,
+            Map<String, Object> metaData) throws IOException {
         super(name, factories, aggregationContext, parent, bucketCountThresholds, order, format, subAggCollectMode, pipelineAggregators,
                 metaData);
         this.valuesSource = valuesSource;
         this.showTermDocCountError = showTermDocCountError;
         this.longFilter = longFilter;
         bucketOrds = new LongHash(1, aggregationContext.bigArrays());
+        this.denseRange = denseRange;
+        if (denseRange != null) {
+            grow(denseRange.size());
+            if (longFilter != null) {
+                acceptedDenseOrds = new FixedBitSet(denseRange.size());
+                for (int ord = 0; ord < denseRange.size(); ord++) {
+                    if (longFilter.accept(denseRange.min + ord)) {
+                        acceptedDenseOrds.set(ord);
+                    }
+                }
+            } else {
+                acceptedDenseOrds = null;
+            }
+        } else {
+            acceptedDenseOrds = null;
+        }
+    }
+
+    /**
+     * Whether buckets are indexed directly by the offset of their value in the range of the field rather than hashed.
+     */
+    boolean isDense() {
+        return denseRange != null;
     }
 
     @Override
@@ -77,6 +132,9 @@ public class LongTermsAggregator extends TermsAggregator {
     @Override
     public LeafBucketCollector getLeafCollector(LeafReaderContext ctx,
             final LeafBucketCollector sub) throws IOException {
+        if (denseRange != null) {
+            return getDenseLeafCollector(ctx, sub);
+        }
         final SortedNumericDocValues values = getValues(valuesSource, ctx);
         return new LeafBucketCollectorBase(sub, values) {
             @Override
@@ -107,6 +165,62 @@ public class LongTermsAggregator extends TermsAggregator {
         };
     }
 
+    private LeafBucketCollector getDenseLeafCollector(LeafReaderContext ctx, final LeafBucketCollector sub) throws IOException {
+        final SortedNumericDocValues values = getValues(valuesSource, ctx);
+        final PointValues pointValues = ctx.reader().getPointValues(denseRange.field);
+        if (pointValues != null && Arrays.equals(pointValues.getMinPackedValue(), pointValues.getMaxPackedValue())) {
+            // all documents of the segment have the same value, no need to read it
+            final int bucketOrd = denseRange.ord(denseRange.converter.apply(pointValues.getMinPackedValue()).longValue());
+            if (acceptedDenseOrds != null && acceptedDenseOrds.get(bucketOrd) == false) {
+                return LeafBucketCollector.NO_OP_COLLECTOR;
+            }
+            return new LeafBucketCollectorBase(sub, values) {
+                @Override
+                public void collect(int doc, long owningBucketOrdinal) throws IOException {
+                    assert owningBucketOrdinal == 0;
+                    if (values.advanceExact(doc)) {
+                        collectExistingBucket(sub, doc, bucketOrd);
+                    }
+                }
+            };
+        }
+        final NumericDocValues singleton = DocValues.unwrapSingleton(values);
+        if (singleton != null) {
+            return new LeafBucketCollectorBase(sub, values) {
+                @Override
+                public void collect(int doc, long owningBucketOrdinal) throws IOException {
+                    assert owningBucketOrdinal == 0;
+                    if (singleton.advanceExact(doc)) {
+                        final int bucketOrd = denseRange.ord(singleton.longValue());
+                        if (acceptedDenseOrds == null || acceptedDenseOrds.get(bucketOrd)) {
+                            collectExistingBucket(sub, doc, bucketOrd);
+                        }
+                    }
+                }
+            };
+        }
+        return new LeafBucketCollectorBase(sub, values) {
+            @Override
+            public void collect(int doc, long owningBucketOrdinal) throws IOException {
+                assert owningBucketOrdinal == 0;
+                if (values.advanceExact(doc)) {
+                    final int valuesCount = values.docValueCount();
+                    int previous = -1;
+                    for (int i = 0; i < valuesCount; ++i) {
+                        // values are sorted so duplicates are adjacent
+                        final int bucketOrd = denseRange.ord(values.nextValue());
+                        if (bucketOrd != previous) {
+                            if (acceptedDenseOrds == null || acceptedDenseOrds.get(bucketOrd)) {
+                                collectExistingBucket(sub, doc, bucketOrd);
+                            }
+                            previous = bucketOrd;
+                        }
+                    }
+                }
+            }
+        };
+    }
+
     @Override
     public InternalAggregation buildAggregation(long owningBucketOrdinal) throws IOException {
         assert owningBucketOrdinal == 0;
@@ -130,16 +244,22 @@ public class LongTermsAggregator extends TermsAggregator {
             }
         }
 
-        final int size = (int) Math.min(bucketOrds.size(), bucketCountThresholds.getShardSize());
+        final long numBucketOrds = denseRange != null ? denseRange.size() : bucketOrds.size();
+        final int size = (int) Math.min(numBucketOrds, bucketCountThresholds.getShardSize());
         long otherDocCount = 0;
         BucketPriorityQueue<LongTerms.Bucket> ordered = new BucketPriorityQueue<>(size, order.comparator(this));
         LongTerms.Bucket spare = null;
-        for (long i = 0; i < bucketOrds.size(); i++) {
+        for (long i = 0; i < numBucketOrds; i++) {
+            final int docCount = bucketDocCount(i);
+            if (denseRange != null && docCount == 0) {
+                // unlike hashed buckets, dense buckets exist for values that no document matched
+                continue;
+            }
             if (spare == null) {
                 spare = new LongTerms.Bucket(0, 0, null, showTermDocCountError, 0, format);
             }
-            spare.term = bucketOrds.get(i);
-            spare.docCount = bucketDocCount(i);
+            spare.term = denseRange != null ? denseRange.min + i : bucketOrds.get(i);
+            spare.docCount = docCount;
             otherDocCount += spare.docCount;
             spare.bucketOrd = i;
             if (bucketCountThresholds.getShardMinDocCount() <= spare.docCount) {
@@ -184,4 +304,73 @@ public class LongTermsAggregator extends TermsAggregator {
         Releasables.close(bucketOrds);
     }
 
+    /**
+     * Returns the range of the values of the field that the given config aggregates if it is small enough for its buckets to be
+     * indexed directly, or <code>null</code> otherwise. The range is read from the minimum and maximum of the indexed points of the
+     * field, which may include deleted documents but bound all values that the aggregation can ever collect.
+     */
+    static DenseRange getDenseRangeOrNull(SearchContext context, BucketCountThresholds bucketCountThresholds,
+                                          ValuesSourceConfig<?> config) throws IOException {
+        if (bucketCountThresholds.getMinDocCount() == 0) {
+            // buckets are filled in with the values of all documents, hashing keeps track of which values exist
+            return null;
+        }
+        if (config.fieldContext() == null || config.script() != null || config.missing() != null) {
+            return null;
+        }
+        final MappedFieldType fieldType = config.fieldContext().fieldType();
+        if (fieldType == null || fieldType.indexOptions() == IndexOptions.NONE) {
+            return null;
+        }
+        final Function<byte[], Number> converter;
+        if (fieldType instanceof NumberFieldMapper.NumberFieldType) {
+            converter = ((NumberFieldMapper.NumberFieldType) fieldType)::parsePoint;
+        } else if (fieldType.getClass() == DateFieldMapper.DateFieldType.class) {
+            converter = (in) -> LongPoint.decodeDimension(in, 0);
+        } else {
+            return null;
+        }
+        final String field = config.fieldContext().field();
+        final IndexReader reader = context.searcher().getIndexReader();
+        final byte[] minPackedValue = PointValues.getMinPackedValue(reader, field);
+        final byte[] maxPackedValue = PointValues.getMaxPackedValue(reader, field);
+        if (minPackedValue == null || maxPackedValue == null) {
+            return null;
+        }
+        final long min = converter.apply(minPackedValue).longValue();
+        final long max = converter.apply(maxPackedValue).longValue();
+        final long range = max - min;
+        // a negative range means that the difference overflowed
+        if (range < 0 || range >= MAX_DENSE_RANGE) {
+            return null;
+        }
+        return new DenseRange(field, converter, min, max);
+    }
+
+    /**
+     * The range of the values of a field whose values are aggregated with direct indexed buckets.
+     */
+    static final class DenseRange {
+        final String field;
+        final Function<byte[], Number> converter;
+        final long min;
+        final long max;
+
+        DenseRange(String field, Function<byte[], Number> converter, long min, long max) {
+            assert max >= min && max - min < MAX_DENSE_RANGE;
+            this.field = field;
+            this.converter = converter;
+            this.min = min;
+            this.max = max;
+        }
+
+        int size() {
+            return (int) (max - min + 1);
+        }
+
+        int ord(long value) {
+            assert value >= min && value <= max : "value [" + value + "] is not in [" + min + ", " + max + "]";
+            return (int) (value - min);
+        }
+    }
 }
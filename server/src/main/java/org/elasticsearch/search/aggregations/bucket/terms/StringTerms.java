@@ -141,7 +141,7 @@ public class StringTerms extends InternalMappedTerms<StringTerms, StringTerms.Bu
     }
 
     @Override
-    protected StringTerms create(String name, List<Bucket> buckets, long docCountError, long otherDocCount) {
+    protected StringTerms create(String name, List<Bucket> buckets, int shardSize, long docCountError, long otherDocCount) {
         return new StringTerms(name, order, requiredSize, minDocCount, pipelineAggregators(), getMetaData(), format, shardSize,
                 showTermDocCountError, otherDocCount, buckets, docCountError);
     }
@@ -109,22 +109,32 @@ public class TermsAggregatorFactory extends ValuesSourceAggregatorFactory<Values
         }
     }
 
-    @Override
-    protected Aggregator doCreateInternal(ValuesSource valuesSource, Aggregator parent, boolean collectsFromSingleBucket,
-            List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
-        if (collectsFromSingleBucket == false) {
-            return asMultiBucketAggregator(this, context, parent);
-        }
-        BucketCountThresholds bucketCountThresholds = new BucketCountThresholds(this.bucketCountThresholds);
+    /**
+     * Returns the bucket count thresholds that the aggregator of a shard uses for the requested ones.
+     */
+    public static BucketCountThresholds shardBucketCountThresholds(BucketCountThresholds requested, BucketOrder order,
+                                                                   boolean singleShard) {
+        BucketCountThresholds bucketCountThresholds = new BucketCountThresholds(requested);
         if (InternalOrder.isKeyOrder(order) == false
                 && bucketCountThresholds.getShardSize() == TermsAggregationBuilder.DEFAULT_BUCKET_COUNT_THRESHOLDS.getShardSize()) {
             // The user has not made a shardSize selection. Use default
             // heuristic to avoid any wrong-ranking caused by distributed
             // counting
             bucketCountThresholds.setShardSize(BucketUtils.suggestShardSideQueueSize(bucketCountThresholds.getRequiredSize(),
-                    context.numberOfShards() == 1));
+                    singleShard));
         }
         bucketCountThresholds.ensureValidity();
+        return bucketCountThresholds;
+    }
+
+    @Override
+    protected Aggregator doCreateInternal(ValuesSource valuesSource, Aggregator parent, boolean collectsFromSingleBucket,
+            List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
+        if (collectsFromSingleBucket == false) {
+            return asMultiBucketAggregator(this, context, parent);
+        }
+        BucketCountThresholds bucketCountThresholds = shardBucketCountThresholds(this.bucketCountThresholds, order,
+            context.numberOfShards() == 1);
         if (valuesSource instanceof ValuesSource.Bytes) {
             ExecutionMode execution = null;
             if (executionHint != null) {
@@ -184,8 +194,10 @@ public class TermsAggregatorFactory extends ValuesSourceAggregatorFactory<Values
             if (includeExclude != null) {
                 longFilter = includeExclude.convertToLongFilter(config.format());
             }
+            final LongTermsAggregator.DenseRange denseRange =
+                    LongTermsAggregator.getDenseRangeOrNull(context, bucketCountThresholds, config);
             return new LongTermsAggregator(name, factories, (ValuesSource.Numeric) valuesSource, config.format(), order,
-                    bucketCountThresholds, context, parent, cm, showTermDocCountError, longFilter, pipelineAggregators,
+                    bucketCountThresholds, context, parent, cm, showTermDocCountError, longFilter, denseRange, pipelineAggregators,
                     metaData);
         }
 
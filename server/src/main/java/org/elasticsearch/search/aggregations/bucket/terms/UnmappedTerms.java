@@ -93,6 +93,11 @@ public class UnmappedTerms extends InternalTerms<UnmappedTerms, UnmappedTerms.Bu
         throw new UnsupportedOperationException("not supported for UnmappedTerms");
     }
 
+    @Override
+    public UnmappedTerms reduceToShardSize(int shardSize, long shardMinDocCount) {
+        return this;
+    }
+
     @Override
     public InternalAggregation doReduce(List<InternalAggregation> aggregations, ReduceContext reduceContext) {
         return new UnmappedTerms(name, order, requiredSize, minDocCount, pipelineAggregators(), metaData);
@@ -32,13 +32,14 @@ import org.elasticsearch.search.aggregations.LeafBucketCollector;
 import org.elasticsearch.search.aggregations.LeafBucketCollectorBase;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.support.ValuesSource;
+import org.elasticsearch.search.aggregations.support.ValuesSourceConfig;
 import org.elasticsearch.search.internal.SearchContext;
 
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
-class AvgAggregator extends NumericMetricsAggregator.SingleValue {
+class AvgAggregator extends NumericMetricsAggregator.SingleValue implements RollupMetricsAggregator {
 
     final ValuesSource.Numeric valuesSource;
 
@@ -46,12 +47,15 @@ class AvgAggregator extends NumericMetricsAggregator.SingleValue {
     DoubleArray sums;
     DoubleArray compensations;
     DocValueFormat format;
+    final String rollupField;
 
-    AvgAggregator(String name, ValuesSource.Numeric valuesSource, DocValueFormat formatter, SearchContext context,
-            Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
+    AvgAggregator(String name, ValuesSourceConfig<ValuesSource.Numeric> config, ValuesSource.Numeric valuesSource,
+            SearchContext context, Aggregator parent, List<PipelineAggregator> pipelineAggregators,
+            Map<String, Object> metaData) throws IOException {
         super(name, context, parent, pipelineAggregators, metaData);
         this.valuesSource = valuesSource;
-        this.format = formatter;
+        this.format = config.format();
+        this.rollupField = valuesSource == null ? null : config.rawFieldName();
         if (valuesSource != null) {
             final BigArrays bigArrays = context.bigArrays();
             counts = bigArrays.newLongArray(1, true);
@@ -106,6 +110,30 @@ class AvgAggregator extends NumericMetricsAggregator.SingleValue {
         };
     }
 
+    @Override
+    public String rollupField() {
+        return rollupField;
+    }
+
+    @Override
+    public void collectRollup(long bucket, long valueCount, double sum, double min, double max) {
+        final BigArrays bigArrays = context.bigArrays();
+        counts = bigArrays.grow(counts, bucket + 1);
+        sums = bigArrays.grow(sums, bucket + 1);
+        compensations = bigArrays.grow(compensations, bucket + 1);
+        counts.increment(bucket, valueCount);
+        double currentSum = sums.get(bucket);
+        if (Double.isFinite(sum) == false) {
+            sums.set(bucket, currentSum + sum);
+        } else if (Double.isFinite(currentSum)) {
+            double compensation = compensations.get(bucket);
+            double corrected = sum - compensation;
+            double newSum = currentSum + corrected;
+            compensations.set(bucket, (newSum - currentSum) - corrected);
+            sums.set(bucket, newSum);
+        }
+    }
+
     @Override
     public double metric(long owningBucketOrd) {
         if (valuesSource == null || owningBucketOrd >= sums.size()) {
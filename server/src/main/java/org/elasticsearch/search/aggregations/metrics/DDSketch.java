@@ -0,0 +1,466 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.search.aggregations.metrics;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.DoubleArray;
+import org.elasticsearch.common.util.LongArray;
+import org.elasticsearch.common.util.ObjectArray;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Quantile sketches for several buckets, based on the DDSketch algorithm
+ * (Masson, Rim and Lee, "DDSketch: A Fast and Fully-Mergeable Quantile Sketch with Relative-Error Guarantees").
+ *
+ * Values are counted in logarithmically sized bins so that the value that is returned for any quantile is within the configured
+ * relative accuracy of the exact value. Positive and negative values are counted in separate bins, values close to zero in a
+ * dedicated counter. The bins of every bucket are a contiguous range of counts that is stored in a {@link LongArray} and that
+ * grows on demand up to a maximum number of bins. If the values of a bucket span more bins than that, the bins of the smallest
+ * magnitudes are collapsed, which keeps the accuracy guarantee for the quantiles of the largest magnitudes and bounds the memory
+ * usage of every bucket to {@code 2 * maxBins} longs. Merging two sketches only sums their counts.
+ */
+public final class DDSketch implements Releasable {
+
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+    public static final int DEFAULT_MAX_BINS = 2048;
+    static final int INITIAL_BINS = 16;
+
+    private final double relativeAccuracy;
+    private final int maxBins;
+    private final double gamma;
+    private final double logGamma;
+    // values below this threshold are counted as zeros since their index would not be accurate anymore
+    private final double minIndexableValue;
+    private final BigArrays bigArrays;
+    private Store positives;
+    private Store negatives;
+    private LongArray zeroCounts;
+    private DoubleArray mins;
+    private DoubleArray maxs;
+
+    public DDSketch(double relativeAccuracy, int maxBins, BigArrays bigArrays, long initialBucketCount) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("relative accuracy must be in (0, 1), got [" + relativeAccuracy + "]");
+        }
+        if (maxBins < INITIAL_BINS) {
+            throw new IllegalArgumentException("max bins must be >= " + INITIAL_BINS + ", got [" + maxBins + "]");
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.maxBins = maxBins;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.minIndexableValue = Double.MIN_NORMAL * gamma;
+        this.bigArrays = bigArrays;
+        boolean success = false;
+        try {
+            positives = new Store(bigArrays, maxBins, initialBucketCount);
+            negatives = new Store(bigArrays, maxBins, initialBucketCount);
+            zeroCounts = bigArrays.newLongArray(initialBucketCount);
+            mins = bigArrays.newDoubleArray(initialBucketCount, false);
+            mins.fill(0, mins.size(), Double.POSITIVE_INFINITY);
+            maxs = bigArrays.newDoubleArray(initialBucketCount, false);
+            maxs.fill(0, maxs.size(), Double.NEGATIVE_INFINITY);
+            success = true;
+        } finally {
+            if (success == false) {
+                Releasables.close(positives, negatives, zeroCounts, mins, maxs);
+            }
+        }
+    }
+
+    public double relativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    public int maxBins() {
+        return maxBins;
+    }
+
+    public long maxBucket() {
+        return zeroCounts.size();
+    }
+
+    private void ensureCapacity(long numBuckets) {
+        positives.ensureCapacity(numBuckets);
+        negatives.ensureCapacity(numBuckets);
+        zeroCounts = bigArrays.grow(zeroCounts, numBuckets);
+        final long minsSize = mins.size();
+        mins = bigArrays.grow(mins, numBuckets);
+        mins.fill(minsSize, mins.size(), Double.POSITIVE_INFINITY);
+        final long maxsSize = maxs.size();
+        maxs = bigArrays.grow(maxs, numBuckets);
+        maxs.fill(maxsSize, maxs.size(), Double.NEGATIVE_INFINITY);
+    }
+
+    private long index(double value) {
+        return (long) Math.ceil(Math.log(value) / logGamma);
+    }
+
+    private double value(long index) {
+        // the value in the middle of the bin in terms of relative error
+        return 2 * Math.exp(index * logGamma) / (gamma + 1);
+    }
+
+    /**
+     * Adds a value to the sketch of the given bucket.
+     */
+    public void add(long bucket, double value) {
+        if (Double.isNaN(value)) {
+            throw new IllegalArgumentException("Cannot add NaN to a sketch");
+        }
+        ensureCapacity(bucket + 1);
+        if (value >= minIndexableValue) {
+            positives.add(bucket, index(value), 1);
+        } else if (value <= -minIndexableValue) {
+            negatives.add(bucket, index(-value), 1);
+        } else {
+            zeroCounts.increment(bucket, 1);
+        }
+        mins.set(bucket, Math.min(mins.get(bucket), value));
+        maxs.set(bucket, Math.max(maxs.get(bucket), value));
+    }
+
+    /**
+     * Merges the sketch of bucket {@code otherBucket} of {@code other} into the sketch of bucket {@code thisBucket}.
+     */
+    public void merge(long thisBucket, DDSketch other, long otherBucket) {
+        if (relativeAccuracy != other.relativeAccuracy || maxBins != other.maxBins) {
+            throw new IllegalArgumentException("Cannot merge sketches with different relative accuracies or max bins");
+        }
+        if (otherBucket >= other.maxBucket()) {
+            return;
+        }
+        ensureCapacity(thisBucket + 1);
+        positives.merge(thisBucket, other.positives, otherBucket);
+        negatives.merge(thisBucket, other.negatives, otherBucket);
+        zeroCounts.increment(thisBucket, other.zeroCounts.get(otherBucket));
+        mins.set(thisBucket, Math.min(mins.get(thisBucket), other.mins.get(otherBucket)));
+        maxs.set(thisBucket, Math.max(maxs.get(thisBucket), other.maxs.get(otherBucket)));
+    }
+
+    /**
+     * Returns the number of values that have been added to the sketch of the given bucket.
+     */
+    public long count(long bucket) {
+        if (bucket >= maxBucket()) {
+            return 0;
+        }
+        return negatives.count(bucket) + zeroCounts.get(bucket) + positives.count(bucket);
+    }
+
+    /**
+     * Returns the value at the given quantile, between 0 and 1, of the sketch of the given bucket, or {@link Double#NaN} if the
+     * sketch is empty.
+     */
+    public double quantile(long bucket, double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("quantile must be in [0, 1], got [" + quantile + "]");
+        }
+        final long count = count(bucket);
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (quantile == 0) {
+            return mins.get(bucket);
+        } else if (quantile == 1) {
+            return maxs.get(bucket);
+        }
+        final long rank = (long) (quantile * (count - 1));
+        final long negativeCount = negatives.count(bucket);
+        final double value;
+        if (rank < negativeCount) {
+            // negative values are sorted by decreasing magnitude
+            value = -value(negatives.indexAtRank(bucket, negativeCount - 1 - rank));
+        } else if (rank < negativeCount + zeroCounts.get(bucket)) {
+            value = 0;
+        } else {
+            value = value(positives.indexAtRank(bucket, rank - negativeCount - zeroCounts.get(bucket)));
+        }
+        return Math.max(mins.get(bucket), Math.min(maxs.get(bucket), value));
+    }
+
+    @Override
+    public void close() {
+        Releasables.close(positives, negatives, zeroCounts, mins, maxs);
+    }
+
+    public int hashCode(long bucket) {
+        return Objects.hash(relativeAccuracy, maxBins, count(bucket), bucket < maxBucket() ? zeroCounts.get(bucket) : 0,
+            positives.hashCode(bucket), negatives.hashCode(bucket));
+    }
+
+    public boolean equals(long bucket, DDSketch other) {
+        if (relativeAccuracy != other.relativeAccuracy || maxBins != other.maxBins) {
+            return false;
+        }
+        if (count(bucket) == 0 || other.count(bucket) == 0) {
+            return count(bucket) == other.count(bucket);
+        }
+        return zeroCounts.get(bucket) == other.zeroCounts.get(bucket)
+            && mins.get(bucket) == other.mins.get(bucket)
+            && maxs.get(bucket) == other.maxs.get(bucket)
+            && positives.equals(bucket, other.positives)
+            && negatives.equals(bucket, other.negatives);
+    }
+
+    public void writeTo(long bucket, StreamOutput out) throws IOException {
+        out.writeDouble(relativeAccuracy);
+        out.writeVInt(maxBins);
+        if (count(bucket) == 0) {
+            out.writeBoolean(false);
+            return;
+        }
+        out.writeBoolean(true);
+        out.writeVLong(zeroCounts.get(bucket));
+        out.writeDouble(mins.get(bucket));
+        out.writeDouble(maxs.get(bucket));
+        positives.writeTo(bucket, out);
+        negatives.writeTo(bucket, out);
+    }
+
+    public static DDSketch readFrom(StreamInput in, BigArrays bigArrays) throws IOException {
+        final double relativeAccuracy = in.readDouble();
+        final int maxBins = in.readVInt();
+        final DDSketch sketch = new DDSketch(relativeAccuracy, maxBins, bigArrays, 1);
+        if (in.readBoolean()) {
+            sketch.zeroCounts.set(0, in.readVLong());
+            sketch.mins.set(0, in.readDouble());
+            sketch.maxs.set(0, in.readDouble());
+            sketch.positives.readFrom(0, in);
+            sketch.negatives.readFrom(0, in);
+        }
+        return sketch;
+    }
+
+    /**
+     * The bins of values of the same sign for all buckets. The bins of a bucket are a window of contiguous indices that starts at
+     * the offset of the bucket.
+     */
+    private static final class Store implements Releasable {
+
+        private final BigArrays bigArrays;
+        private final int maxBins;
+        // allocated on the first value of every bucket
+        private ObjectArray<LongArray> bins;
+        private LongArray offsets;
+
+        Store(BigArrays bigArrays, int maxBins, long initialBucketCount) {
+            this.bigArrays = bigArrays;
+            this.maxBins = maxBins;
+            boolean success = false;
+            try {
+                bins = bigArrays.newObjectArray(initialBucketCount);
+                offsets = bigArrays.newLongArray(initialBucketCount);
+                success = true;
+            } finally {
+                if (success == false) {
+                    Releasables.close(bins, offsets);
+                }
+            }
+        }
+
+        void ensureCapacity(long numBuckets) {
+            bins = bigArrays.grow(bins, numBuckets);
+            offsets = bigArrays.grow(offsets, numBuckets);
+        }
+
+        private LongArray bins(long bucket) {
+            return bucket < bins.size() ? bins.get(bucket) : null;
+        }
+
+        void add(long bucket, long index, long count) {
+            LongArray bucketBins = bins.get(bucket);
+            if (bucketBins == null) {
+                bucketBins = bigArrays.newLongArray(INITIAL_BINS);
+                bins.set(bucket, bucketBins);
+                // leave room on both sides of the first value
+                offsets.set(bucket, index - INITIAL_BINS / 2);
+            }
+            long offset = offsets.get(bucket);
+            if ((index < offset && bucketBins.size() < maxBins) || index >= offset + bucketBins.size()) {
+                bucketBins = resize(bucket, bucketBins, offset, index);
+                offset = offsets.get(bucket);
+            }
+            // indices below the window have been collapsed into its first bin
+            bucketBins.increment(Math.max(index, offset) - offset, count);
+        }
+
+        /**
+         * Grows the window of bins of the given bucket so that it contains {@code index}, or shifts it if that would exceed the
+         * maximum number of bins, in which case the counts that fall out of the window are added to its first bin.
+         */
+        private LongArray resize(long bucket, LongArray bucketBins, long offset, long index) {
+            final long lowest = Math.min(offset, index);
+            final long highest = Math.max(offset + bucketBins.size() - 1, index);
+            final long newSize;
+            final long newOffset;
+            if (highest - lowest + 1 <= maxBins) {
+                newSize = Math.min(maxBins, Math.max(highest - lowest + 1, bucketBins.size() * 2));
+                // leave room on the side the window grows to
+                newOffset = index < offset ? highest - newSize + 1 : lowest;
+            } else {
+                newSize = maxBins;
+                newOffset = highest - maxBins + 1;
+            }
+            final LongArray newBins = bigArrays.newLongArray(newSize);
+            try {
+                for (long i = 0; i < bucketBins.size(); ++i) {
+                    final long count = bucketBins.get(i);
+                    if (count != 0) {
+                        newBins.increment(Math.max(offset + i, newOffset) - newOffset, count);
+                    }
+                }
+            } finally {
+                Releasables.close(bucketBins);
+            }
+            bins.set(bucket, newBins);
+            offsets.set(bucket, newOffset);
+            return newBins;
+        }
+
+        void merge(long thisBucket, Store other, long otherBucket) {
+            final LongArray otherBins = other.bins(otherBucket);
+            if (otherBins == null) {
+                return;
+            }
+            final long otherOffset = other.offsets.get(otherBucket);
+            if (bins.get(thisBucket) == null) {
+                // fast path: copy the bins as-is
+                final LongArray copy = bigArrays.newLongArray(otherBins.size());
+                for (long i = 0; i < otherBins.size(); ++i) {
+                    copy.set(i, otherBins.get(i));
+                }
+                bins.set(thisBucket, copy);
+                offsets.set(thisBucket, otherOffset);
+                return;
+            }
+            for (long i = 0; i < otherBins.size(); ++i) {
+                final long count = otherBins.get(i);
+                if (count != 0) {
+                    add(thisBucket, otherOffset + i, count);
+                }
+            }
+        }
+
+        long count(long bucket) {
+            final LongArray bucketBins = bins(bucket);
+            long count = 0;
+            for (long i = 0; bucketBins != null && i < bucketBins.size(); ++i) {
+                count += bucketBins.get(i);
+            }
+            return count;
+        }
+
+        /**
+         * Returns the index of the bin that contains the value of the given rank, counted from the smallest magnitude.
+         */
+        long indexAtRank(long bucket, long rank) {
+            final LongArray bucketBins = bins.get(bucket);
+            long count = 0;
+            for (long i = 0; i < bucketBins.size(); ++i) {
+                count += bucketBins.get(i);
+                if (count > rank) {
+                    return offsets.get(bucket) + i;
+                }
+            }
+            throw new IllegalArgumentException("rank [" + rank + "] is greater than the number of values [" + count + "]");
+        }
+
+        /**
+         * Returns the non-empty range of the bins of the given bucket, or {@code null} if it doesn't have any value.
+         */
+        private long[] trimmedBins(long bucket) {
+            final LongArray bucketBins = bins(bucket);
+            if (bucketBins == null) {
+                return null;
+            }
+            long from = 0;
+            long to = bucketBins.size();
+            while (from < to && bucketBins.get(from) == 0) {
+                from++;
+            }
+            while (to > from && bucketBins.get(to - 1) == 0) {
+                to--;
+            }
+            if (from == to) {
+                return null;
+            }
+            final long[] trimmed = new long[Math.toIntExact(to - from + 1)];
+            // the first slot holds the index of the first non-empty bin
+            trimmed[0] = offsets.get(bucket) + from;
+            for (long i = from; i < to; ++i) {
+                trimmed[Math.toIntExact(i - from + 1)] = bucketBins.get(i);
+            }
+            return trimmed;
+        }
+
+        int hashCode(long bucket) {
+            return Arrays.hashCode(trimmedBins(bucket));
+        }
+
+        boolean equals(long bucket, Store other) {
+            return Arrays.equals(trimmedBins(bucket), other.trimmedBins(bucket));
+        }
+
+        void writeTo(long bucket, StreamOutput out) throws IOException {
+            final long[] trimmed = trimmedBins(bucket);
+            if (trimmed == null) {
+                out.writeVInt(0);
+                return;
+            }
+            out.writeVInt(trimmed.length - 1);
+            out.writeZLong(trimmed[0]);
+            for (int i = 1; i < trimmed.length; ++i) {
+                out.writeVLong(trimmed[i]);
+            }
+        }
+
+        void readFrom(long bucket, StreamInput in) throws IOException {
+            final int size = in.readVInt();
+            if (size == 0) {
+                return;
+            }
+            if (size > maxBins) {
+                throw new IllegalArgumentException("number of bins [" + size + "] is greater than the max bins [" + maxBins + "]");
+            }
+            final long offset = in.readZLong();
+            final LongArray bucketBins = bigArrays.newLongArray(size);
+            bins.set(bucket, bucketBins);
+            offsets.set(bucket, offset);
+            for (long i = 0; i < size; ++i) {
+                bucketBins.set(i, in.readVLong());
+            }
+        }
+
+        @Override
+        public void close() {
+            for (long i = 0; i < bins.size(); ++i) {
+                Releasables.close(bins.get(i));
+            }
+            Releasables.close(bins, offsets);
+        }
+    }
+}
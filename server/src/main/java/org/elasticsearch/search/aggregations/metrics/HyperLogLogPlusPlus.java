@@ -19,21 +19,21 @@
 
 package org.elasticsearch.search.aggregations.metrics;
 
-import org.apache.lucene.util.BytesRef;
+import com.carrotsearch.hppc.BitMixer;
 import org.apache.lucene.util.LongBitSet;
 import org.apache.lucene.util.packed.PackedInts;
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.util.BigArrays;
-import org.elasticsearch.common.util.ByteArray;
-import org.elasticsearch.common.util.ByteUtils;
 import org.elasticsearch.common.util.IntArray;
+import org.elasticsearch.common.util.LongArray;
+import org.elasticsearch.common.util.ObjectArray;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -47,6 +47,9 @@ import java.util.Set;
  *
  * This implementation is different from the original implementation in that it uses a hash table instead of a sorted list for linear
  * counting. Although this requires more space and makes hyperloglog (which is less accurate) used sooner, this is also considerably faster.
+ * The hash table of a bucket starts small and grows with the number of distinct values, and the registers of hyperloglog are only
+ * allocated once a bucket switches to it, so that many buckets with few distinct values each take little memory. Registers are packed
+ * by {@value #REGISTERS_PER_WORD} on 6 bits in longs, which allows to merge the registers of a long at once.
  *
  * Trying to understand what this class does without having read the paper is considered adventurous.
  */
@@ -60,6 +63,27 @@ public final class HyperLogLogPlusPlus implements Releasable {
     private static final float MAX_LOAD_FACTOR = 0.75f;
     private static final int P2 = 25;
     private static final int BIAS_K = 6;
+    private static final int INITIAL_HASH_SET_CAPACITY = 16;
+
+    // run lengths are at most 64 - MIN_PRECISION + 1, so they fit on 6 bits
+    static final int REGISTER_BITS = 6;
+    static final int REGISTERS_PER_WORD = Long.SIZE / REGISTER_BITS;
+    private static final long REGISTER_MASK = (1L << REGISTER_BITS) - 1;
+    private static final long EVEN_REGISTERS;
+    private static final long EVEN_GUARDS;
+    static {
+        long registers = 0;
+        long guards = 0;
+        for (int i = 0; i < REGISTERS_PER_WORD; i += 2) {
+            registers |= REGISTER_MASK << (i * REGISTER_BITS);
+            // the lowest bit of the following (odd) register
+            guards |= 1L << ((i + 1) * REGISTER_BITS);
+        }
+        EVEN_REGISTERS = registers;
+        EVEN_GUARDS = guards;
+    }
+    private static final long ODD_REGISTERS = EVEN_REGISTERS << REGISTER_BITS;
+    private static final long ODD_GUARDS = EVEN_GUARDS << REGISTER_BITS;
 
     /**
      * Compute the required precision so that <code>count</code> distinct entries would be counted with linear counting.
@@ -76,7 +100,7 @@ public final class HyperLogLogPlusPlus implements Releasable {
      * Return the expected per-bucket memory usage for the given precision.
      */
     public static long memoryUsage(int precision) {
-        return 1L << precision;
+        return (long) wordsPerBucket(precision) * Long.BYTES;
     }
 
     // these static tables come from the appendix of the paper
@@ -753,9 +777,14 @@ public final class HyperLogLogPlusPlus implements Releasable {
 
     private final BigArrays bigArrays;
     private final OpenBitSet algorithm;
-    private ByteArray runLens;
-    private final Hashset hashSet;
+    // the hash set of every bucket that uses linear counting, allocated on the first value and grown on demand
+    private ObjectArray<IntArray> hashSets;
+    private IntArray sizes;
+    // the registers of every bucket that uses hyperloglog, allocated when the bucket is upgraded
+    private ObjectArray<LongArray> registers;
     private final int p, m;
+    private final int maxHashSetCapacity;
+    private final int hashSetThreshold;
     private final double alphaMM;
 
     public HyperLogLogPlusPlus(int precision, BigArrays bigArrays, long initialBucketCount) {
@@ -769,8 +798,20 @@ public final class HyperLogLogPlusPlus implements Releasable {
         m = 1 << p;
         this.bigArrays = bigArrays;
         algorithm = new OpenBitSet();
-        runLens = bigArrays.newByteArray(initialBucketCount << p);
-        hashSet = new Hashset(initialBucketCount);
+        // the hash set never takes more memory than the bytes registers that this class used to use for every bucket
+        maxHashSetCapacity = m / 4;
+        hashSetThreshold = (int) (maxHashSetCapacity * MAX_LOAD_FACTOR);
+        boolean success = false;
+        try {
+            hashSets = bigArrays.newObjectArray(initialBucketCount);
+            sizes = bigArrays.newIntArray(initialBucketCount);
+            registers = bigArrays.newObjectArray(initialBucketCount);
+            success = true;
+        } finally {
+            if (success == false) {
+                Releasables.close(hashSets, sizes, registers);
+            }
+        }
         final double alpha;
         switch (p) {
         case 4:
@@ -791,11 +832,13 @@ public final class HyperLogLogPlusPlus implements Releasable {
     }
 
     public long maxBucket() {
-        return runLens.size() >>> p;
+        return hashSets.size();
     }
 
     private void ensureCapacity(long numBuckets) {
-        runLens = bigArrays.grow(runLens, numBuckets << p);
+        hashSets = bigArrays.grow(hashSets, numBuckets);
+        sizes = bigArrays.grow(sizes, numBuckets);
+        registers = bigArrays.grow(registers, numBuckets);
     }
 
     public void merge(long thisBucket, HyperLogLogPlusPlus other, long otherBucket) {
@@ -804,27 +847,29 @@ public final class HyperLogLogPlusPlus implements Releasable {
         }
         ensureCapacity(thisBucket + 1);
         if (other.algorithm.get(otherBucket) == LINEAR_COUNTING) {
-            final IntArray values = other.hashSet.values(otherBucket);
-            try {
-                for (long i = 0; i < values.size(); ++i) {
-                    final int encoded = values.get(i);
-                    if (algorithm.get(thisBucket) == LINEAR_COUNTING) {
-                        collectLcEncoded(thisBucket, encoded);
-                    } else {
-                        collectHllEncoded(thisBucket, encoded);
-                    }
+            final IntArray hashSet = other.hashSet(otherBucket);
+            if (hashSet == null) {
+                return;
+            }
+            for (long i = 0; i < hashSet.size(); ++i) {
+                final int encoded = hashSet.get(i);
+                if (encoded == 0) {
+                    continue;
+                }
+                if (algorithm.get(thisBucket) == LINEAR_COUNTING) {
+                    collectLcEncoded(thisBucket, encoded);
+                } else {
+                    collectHllEncoded(thisBucket, encoded);
                 }
-            } finally {
-                Releasables.close(values);
             }
         } else {
             if (algorithm.get(thisBucket) != HYPERLOGLOG) {
                 upgradeToHll(thisBucket);
             }
-            final long thisStart = thisBucket << p;
-            final long otherStart = otherBucket << p;
-            for (int i = 0; i < m; ++i) {
-                runLens.set(thisStart + i, (byte) Math.max(runLens.get(thisStart + i), other.runLens.get(otherStart + i)));
+            final LongArray thisRegisters = registers.get(thisBucket);
+            final LongArray otherRegisters = other.registers.get(otherBucket);
+            for (long i = 0; i < thisRegisters.size(); ++i) {
+                thisRegisters.set(i, maxRegisters(thisRegisters.get(i), otherRegisters.get(i)));
             }
         }
     }
@@ -844,8 +889,8 @@ public final class HyperLogLogPlusPlus implements Releasable {
     }
 
     private void collectLcEncoded(long bucket, int encoded) {
-        final int newSize = hashSet.add(bucket, encoded);
-        if (newSize > hashSet.threshold) {
+        final int newSize = addToHashSet(bucket, encoded);
+        if (newSize > hashSetThreshold) {
             upgradeToHll(bucket);
         }
     }
@@ -863,8 +908,14 @@ public final class HyperLogLogPlusPlus implements Releasable {
     }
 
     private void collectHll(long bucket, long index, int runLen) {
-        final long bucketIndex = (bucket << p) + index;
-        runLens.set(bucketIndex, (byte) Math.max(runLen, runLens.get(bucketIndex)));
+        assert runLen <= REGISTER_MASK;
+        final LongArray bucketRegisters = registers.get(bucket);
+        final long word = index / REGISTERS_PER_WORD;
+        final int shift = (int) (index % REGISTERS_PER_WORD) * REGISTER_BITS;
+        final long value = bucketRegisters.get(word);
+        if (((value >>> shift) & REGISTER_MASK) < runLen) {
+            bucketRegisters.set(word, (value & ~(REGISTER_MASK << shift)) | ((long) runLen << shift));
+        }
     }
 
     public long cardinality(long bucket) {
@@ -877,18 +928,23 @@ public final class HyperLogLogPlusPlus implements Releasable {
 
     private long cardinalityLc(long bucket) {
         final long m = 1 << P2;
-        final long v = m - hashSet.size(bucket);
+        final long v = m - hashSetSize(bucket);
         return linearCounting(m, v);
     }
 
     private long cardinalityHll(long bucket) {
+        final LongArray bucketRegisters = registers.get(bucket);
         double inverseSum = 0;
         int zeros = 0;
-        for (long i = bucket << p, end = i + m; i < end; ++i) {
-            final int runLen = runLens.get(i);
-            inverseSum += 1. / (1L << runLen);
-            if (runLen == 0) {
-                ++zeros;
+        for (int i = 0; i < m; ) {
+            long value = bucketRegisters.get(i / REGISTERS_PER_WORD);
+            for (int j = 0; j < REGISTERS_PER_WORD && i < m; ++j, ++i) {
+                final int runLen = (int) (value & REGISTER_MASK);
+                value >>>= REGISTER_BITS;
+                inverseSum += 1. / (1L << runLen);
+                if (runLen == 0) {
+                    ++zeros;
+                }
             }
         }
         double e1 = alphaMM / inverseSum;
@@ -908,19 +964,48 @@ public final class HyperLogLogPlusPlus implements Releasable {
 
     void upgradeToHll(long bucket) {
         ensureCapacity(bucket + 1);
-        final IntArray values = hashSet.values(bucket);
-        try {
-            runLens.fill(bucket << p, (bucket << p) + m, (byte) 0);
-            for (long i = 0; i < values.size(); ++i) {
-                final int encoded = values.get(i);
-                collectHllEncoded(bucket, encoded);
+        registers.set(bucket, bigArrays.newLongArray(wordsPerBucket(p)));
+        algorithm.set(bucket);
+        final IntArray hashSet = hashSets.set(bucket, null);
+        sizes.set(bucket, 0);
+        if (hashSet != null) {
+            try {
+                for (long i = 0; i < hashSet.size(); ++i) {
+                    final int encoded = hashSet.get(i);
+                    if (encoded != 0) {
+                        collectHllEncoded(bucket, encoded);
+                    }
+                }
+            } finally {
+                Releasables.close(hashSet);
             }
-            algorithm.set(bucket);
-        } finally {
-            Releasables.close(values);
         }
     }
 
+    /**
+     * Returns the number of longs that hold the registers of a bucket.
+     */
+    static int wordsPerBucket(int p) {
+        return ((1 << p) + REGISTERS_PER_WORD - 1) / REGISTERS_PER_WORD;
+    }
+
+    /**
+     * Computes the maximum of every register of two words of packed registers at once. Even and odd registers are handled
+     * separately so that every register has a spare bit above it, which records if the subtraction of the other register
+     * borrowed from it.
+     */
+    static long maxRegisters(long a, long b) {
+        return maxLanes(a & EVEN_REGISTERS, b & EVEN_REGISTERS, EVEN_GUARDS)
+            | maxLanes(a & ODD_REGISTERS, b & ODD_REGISTERS, ODD_GUARDS);
+    }
+
+    private static long maxLanes(long a, long b, long guards) {
+        // the guard bit of a lane survives iff the register of a is greater than or equal to the register of b
+        final long ge = ((a | guards) - b) & guards;
+        final long mask = ge - (ge >>> REGISTER_BITS);
+        return (a & mask) | (b & ~mask);
+    }
+
     static long linearCounting(long m, long v) {
         return Math.round(m * Math.log((double) m / v));
     }
@@ -1017,28 +1102,34 @@ public final class HyperLogLogPlusPlus implements Releasable {
 
     @Override
     public void close() {
-        Releasables.close(runLens, hashSet.sizes);
+        for (long i = 0; i < hashSets.size(); ++i) {
+            Releasables.close(hashSets.get(i));
+        }
+        for (long i = 0; i < registers.size(); ++i) {
+            Releasables.close(registers.get(i));
+        }
+        Releasables.close(hashSets, sizes, registers);
     }
 
     private Object getComparableData(long bucket) {
         if (algorithm.get(bucket) == LINEAR_COUNTING) {
             Set<Integer> values = new HashSet<>();
-            try (IntArray hashSetValues = hashSet.values(bucket)) {
-                for (long i = 0; i < hashSetValues.size(); i++) {
-                    values.add(hashSetValues.get(i));
+            final IntArray hashSet = hashSet(bucket);
+            if (hashSet != null) {
+                for (long i = 0; i < hashSet.size(); i++) {
+                    if (hashSet.get(i) != 0) {
+                        values.add(hashSet.get(i));
+                    }
                 }
             }
             return values;
         } else {
-            Map<Byte, Integer> values = new HashMap<>();
-            for (long i = 0; i < runLens.size(); i++) {
-                byte runLength = runLens.get((bucket << p) + i);
-                Integer numOccurances = values.get(runLength);
-                if (numOccurances == null) {
-                    values.put(runLength, 1);
-                } else {
-                    values.put(runLength, numOccurances + 1);
-                }
+            Map<Integer, Integer> values = new HashMap<>();
+            final LongArray bucketRegisters = registers.get(bucket);
+            for (int i = 0; i < m; i++) {
+                final long word = bucketRegisters.get(i / REGISTERS_PER_WORD);
+                final int runLength = (int) ((word >>> ((i % REGISTERS_PER_WORD) * REGISTER_BITS)) & REGISTER_MASK);
+                values.merge(runLength, 1, Integer::sum);
             }
             return values;
         }
@@ -1055,113 +1146,102 @@ public final class HyperLogLogPlusPlus implements Releasable {
     }
 
     /**
-     * We are actually using HyperLogLog's runLens array but interpreting it as a hash set for linear counting.
+     * Returns the hash set of the given bucket, or <code>null</code> if it doesn't have one. Empty slots are <code>0</code>.
      */
-    private class Hashset {
-
-        private final int capacity;
-        private final int threshold;
-        private final int mask;
-        private IntArray sizes;
-        private final BytesRef readSpare;
-        private final ByteBuffer writeSpare;
-
-        Hashset(long initialBucketCount) {
-            capacity = m / 4; // because ints take 4 bytes
-            threshold = (int) (capacity * MAX_LOAD_FACTOR);
-            mask = capacity - 1;
-            sizes = bigArrays.newIntArray(initialBucketCount);
-            readSpare = new BytesRef();
-            writeSpare = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
-        }
-
-        private long index(long bucket, int index) {
-            return (bucket << p) + (index << 2);
-        }
-
-        private int get(long bucket, int index) {
-            runLens.get(index(bucket, index), 4, readSpare);
-            return ByteUtils.readIntLE(readSpare.bytes, readSpare.offset);
-        }
-
-        private void set(long bucket, int index, int value) {
-            writeSpare.putInt(0, value);
-            runLens.set(index(bucket, index), writeSpare.array(), 0, 4);
-        }
+    private IntArray hashSet(long bucket) {
+        return bucket < hashSets.size() ? hashSets.get(bucket) : null;
+    }
 
-        private int recomputedSize(long bucket) {
-            int size = 0;
-            for (int i = 0; i <= mask; ++i) {
-                final int v = get(bucket, i);
-                if (v != 0) {
-                    ++size;
-                }
-            }
-            return size;
-        }
+    private int hashSetSize(long bucket) {
+        return bucket < sizes.size() ? sizes.get(bucket) : 0;
+    }
 
-        public int size(long bucket) {
-            if (bucket >= sizes.size()) {
-                return 0;
-            }
-            final int size = sizes.get(bucket);
-            assert size == recomputedSize(bucket);
-            return size;
+    /**
+     * Add <code>k</code> to the hash set associated with <code>bucket</code>. Return {@code -1} if the value was already in the set
+     * or the new set size if it was added.
+     */
+    private int addToHashSet(long bucket, int k) {
+        assert k != 0;
+        IntArray hashSet = hashSets.get(bucket);
+        if (hashSet == null) {
+            hashSet = bigArrays.newIntArray(Math.min(INITIAL_HASH_SET_CAPACITY, maxHashSetCapacity));
+            hashSets.set(bucket, hashSet);
+        } else if (hashSet.size() < maxHashSetCapacity && sizes.get(bucket) >= hashSet.size() * MAX_LOAD_FACTOR) {
+            hashSet = rehash(bucket, hashSet);
         }
-
-        /**
-         * Add <code>k</code> to the hash table associated with <code>bucket</code>. Return {@code -1} if the value was already in the set
-         * or the new set size if it was added.
-         */
-        public int add(long bucket, int k) {
-            sizes = bigArrays.grow(sizes, bucket + 1);
-            assert k != 0;
-            for (int i = (k & mask);; i = (i + 1) & mask) {
-                final int v = get(bucket, i);
-                if (v == 0) {
-                    // means unused, take it!
-                    set(bucket, i, k);
-                    return sizes.increment(bucket, 1);
-                } else if (v == k) {
-                    // k is already in the set
-                    return -1;
-                }
+        final int mask = (int) hashSet.size() - 1;
+        for (int i = BitMixer.mix32(k) & mask;; i = (i + 1) & mask) {
+            final int v = hashSet.get(i);
+            if (v == 0) {
+                // means unused, take it!
+                hashSet.set(i, k);
+                return sizes.increment(bucket, 1);
+            } else if (v == k) {
+                // k is already in the set
+                return -1;
             }
         }
+    }
 
-        public IntArray values(final long bucket) {
-            final int size = size(bucket);
-            final IntArray values = bigArrays.newIntArray(size);
-            if (size == 0) {
-                return values;
-            }
-            int i = 0;
-            for (int j = 0; j < capacity; ++j) {
-                final int k = get(bucket, j);
+    private IntArray rehash(long bucket, IntArray hashSet) {
+        final IntArray newHashSet = bigArrays.newIntArray(hashSet.size() * 2);
+        final int mask = (int) newHashSet.size() - 1;
+        try {
+            for (long i = 0; i < hashSet.size(); ++i) {
+                final int k = hashSet.get(i);
                 if (k != 0) {
-                    values.set(i++, k);
+                    int slot = BitMixer.mix32(k) & mask;
+                    while (newHashSet.get(slot) != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    newHashSet.set(slot, k);
                 }
             }
-            assert i == values.size();
-            return values;
+        } finally {
+            Releasables.close(hashSet);
         }
-
+        hashSets.set(bucket, newHashSet);
+        return newHashSet;
     }
 
     public void writeTo(long bucket, StreamOutput out) throws IOException {
         out.writeVInt(p);
         if (algorithm.get(bucket) == LINEAR_COUNTING) {
             out.writeBoolean(LINEAR_COUNTING);
-            try (IntArray hashes = hashSet.values(bucket)) {
-                out.writeVLong(hashes.size());
-                for (long i = 0; i < hashes.size(); ++i) {
-                    out.writeInt(hashes.get(i));
+            final long[] hashes = new long[hashSetSize(bucket)];
+            final IntArray hashSet = hashSet(bucket);
+            for (long i = 0, j = 0; hashSet != null && i < hashSet.size(); ++i) {
+                if (hashSet.get(i) != 0) {
+                    hashes[(int) j++] = Integer.toUnsignedLong(hashSet.get(i));
+                }
+            }
+            if (out.getVersion().onOrAfter(Version.V_7_0_0)) {
+                // sorted hashes are written as variable-length deltas
+                Arrays.sort(hashes);
+                out.writeVInt(hashes.length);
+                long previous = 0;
+                for (long hash : hashes) {
+                    out.writeVLong(hash - previous);
+                    previous = hash;
+                }
+            } else {
+                out.writeVLong(hashes.length);
+                for (long hash : hashes) {
+                    out.writeInt((int) hash);
                 }
             }
         } else {
             out.writeBoolean(HYPERLOGLOG);
-            for (long i = bucket << p, end = i + m; i < end; ++i) {
-                out.writeByte(runLens.get(i));
+            final LongArray bucketRegisters = registers.get(bucket);
+            if (out.getVersion().onOrAfter(Version.V_7_0_0)) {
+                for (long i = 0; i < bucketRegisters.size(); ++i) {
+                    out.writeLong(bucketRegisters.get(i));
+                }
+            } else {
+                for (int i = 0; i < m; ++i) {
+                    final long word = bucketRegisters.get(i / REGISTERS_PER_WORD);
+                    out.writeByte((byte) ((word >>> ((i % REGISTERS_PER_WORD) * REGISTER_BITS)) & REGISTER_MASK));
+                }
             }
         }
     }
@@ -1172,15 +1252,31 @@ public final class HyperLogLogPlusPlus implements Releasable {
         final boolean algorithm = in.readBoolean();
         if (algorithm == LINEAR_COUNTING) {
             counts.algorithm.clear(0);
-            final long size = in.readVLong();
-            for (long i = 0; i < size; ++i) {
-                final int encoded = in.readInt();
-                counts.hashSet.add(0, encoded);
+            if (in.getVersion().onOrAfter(Version.V_7_0_0)) {
+                final int size = in.readVInt();
+                long hash = 0;
+                for (int i = 0; i < size; ++i) {
+                    hash += in.readVLong();
+                    counts.addToHashSet(0, (int) hash);
+                }
+            } else {
+                final long size = in.readVLong();
+                for (long i = 0; i < size; ++i) {
+                    final int encoded = in.readInt();
+                    counts.addToHashSet(0, encoded);
+                }
             }
         } else {
-            counts.algorithm.set(0);
-            for (int i = 0; i < counts.m; ++i) {
-                counts.runLens.set(i, in.readByte());
+            counts.upgradeToHll(0);
+            final LongArray bucketRegisters = counts.registers.get(0);
+            if (in.getVersion().onOrAfter(Version.V_7_0_0)) {
+                for (long i = 0; i < bucketRegisters.size(); ++i) {
+                    bucketRegisters.set(i, in.readLong());
+                }
+            } else {
+                for (int i = 0; i < counts.m; ++i) {
+                    counts.collectHll(0, i, in.readByte());
+                }
             }
         }
         return counts;
@@ -48,13 +48,14 @@ import java.util.function.Function;
 
 import static org.elasticsearch.search.aggregations.metrics.MinAggregator.getPointReaderOrNull;
 
-class MaxAggregator extends NumericMetricsAggregator.SingleValue {
+class MaxAggregator extends NumericMetricsAggregator.SingleValue implements RollupMetricsAggregator {
 
     final ValuesSource.Numeric valuesSource;
     final DocValueFormat formatter;
 
     final String pointField;
     final Function<byte[], Number> pointConverter;
+    final String rollupField;
 
     DoubleArray maxes;
 
@@ -71,6 +72,7 @@ class MaxAggregator extends NumericMetricsAggregator.SingleValue {
             maxes.fill(0, maxes.size(), Double.NEGATIVE_INFINITY);
         }
         this.formatter = config.format();
+        this.rollupField = valuesSource == null ? null : config.rawFieldName();
         this.pointConverter = getPointReaderOrNull(context, parent, config);
         if (pointConverter != null) {
             pointField = config.fieldContext().field();
@@ -133,6 +135,21 @@ class MaxAggregator extends NumericMetricsAggregator.SingleValue {
         };
     }
 
+    @Override
+    public String rollupField() {
+        return rollupField;
+    }
+
+    @Override
+    public void collectRollup(long bucket, long valueCount, double sum, double min, double max) {
+        if (bucket >= maxes.size()) {
+            long from = maxes.size();
+            maxes = context.bigArrays().grow(maxes, bucket + 1);
+            maxes.fill(from, maxes.size(), Double.NEGATIVE_INFINITY);
+        }
+        maxes.set(bucket, Math.max(maxes.get(bucket), max));
+    }
+
     @Override
     public double metric(long owningBucketOrd) {
         if (valuesSource == null || owningBucketOrd >= maxes.size()) {
@@ -51,13 +51,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 
-class MinAggregator extends NumericMetricsAggregator.SingleValue {
+class MinAggregator extends NumericMetricsAggregator.SingleValue implements RollupMetricsAggregator {
 
     final ValuesSource.Numeric valuesSource;
     final DocValueFormat format;
 
     final String pointField;
     final Function<byte[], Number> pointConverter;
+    final String rollupField;
 
     DoubleArray mins;
 
@@ -75,6 +76,7 @@ class MinAggregator extends NumericMetricsAggregator.SingleValue {
             mins.fill(0, mins.size(), Double.POSITIVE_INFINITY);
         }
         this.format = config.format();
+        this.rollupField = valuesSource == null ? null : config.rawFieldName();
         this.pointConverter = getPointReaderOrNull(context, parent, config);
         if (pointConverter != null) {
             pointField = config.fieldContext().field();
@@ -136,6 +138,21 @@ class MinAggregator extends NumericMetricsAggregator.SingleValue {
         };
     }
 
+    @Override
+    public String rollupField() {
+        return rollupField;
+    }
+
+    @Override
+    public void collectRollup(long bucket, long valueCount, double sum, double min, double max) {
+        if (bucket >= mins.size()) {
+            long from = mins.size();
+            mins = context.bigArrays().grow(mins, bucket + 1);
+            mins.fill(from, mins.size(), Double.POSITIVE_INFINITY);
+        }
+        mins.set(bucket, Math.min(mins.get(bucket), min));
+    }
+
     @Override
     public double metric(long owningBucketOrd) {
         if (valuesSource == null || owningBucketOrd >= mins.size()) {
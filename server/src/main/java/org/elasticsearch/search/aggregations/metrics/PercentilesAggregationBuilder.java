@@ -19,6 +19,7 @@
 
 package org.elasticsearch.search.aggregations.metrics;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.ParseField;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -53,6 +54,7 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
     public static final ParseField METHOD_FIELD = new ParseField("method");
     public static final ParseField COMPRESSION_FIELD = new ParseField("compression");
     public static final ParseField NUMBER_SIGNIFICANT_DIGITS_FIELD = new ParseField("number_of_significant_value_digits");
+    public static final ParseField RELATIVE_ACCURACY_FIELD = new ParseField("relative_accuracy");
 
     private static class TDigestOptions {
         Double compression;
@@ -76,6 +78,17 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
                 NUMBER_SIGNIFICANT_DIGITS_FIELD);
     }
 
+    private static class DDSketchOptions {
+        Double relativeAccuracy;
+    }
+
+    private static final ObjectParser<DDSketchOptions, Void> DDSKETCH_OPTIONS_PARSER =
+            new ObjectParser<>(PercentilesMethod.DDSKETCH.getParseField().getPreferredName(), DDSketchOptions::new);
+    static {
+        DDSKETCH_OPTIONS_PARSER.declareDouble((opts, relativeAccuracy) -> opts.relativeAccuracy = relativeAccuracy,
+                RELATIVE_ACCURACY_FIELD);
+    }
+
     private static final ObjectParser<InternalBuilder, Void> PARSER;
     static {
         PARSER = new ObjectParser<>(PercentilesAggregationBuilder.NAME);
@@ -100,6 +113,13 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
                 b.numberOfSignificantValueDigits(v.numberOfSigDigits);
             }
         }, HDR_OPTIONS_PARSER::parse, PercentilesMethod.HDR.getParseField(), ObjectParser.ValueType.OBJECT);
+
+        PARSER.declareField((b, v) -> {
+            b.method(PercentilesMethod.DDSKETCH);
+            if (v.relativeAccuracy != null) {
+                b.relativeAccuracy(v.relativeAccuracy);
+            }
+        }, DDSKETCH_OPTIONS_PARSER::parse, PercentilesMethod.DDSKETCH.getParseField(), ObjectParser.ValueType.OBJECT);
     }
 
     public static AggregationBuilder parse(String aggregationName, XContentParser parser) throws IOException {
@@ -116,6 +136,7 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
         returnedAgg.keyed(internal.keyed());
         returnedAgg.compression(internal.compression());
         returnedAgg.numberOfSignificantValueDigits(internal.numberOfSignificantValueDigits());
+        returnedAgg.relativeAccuracy(internal.relativeAccuracy());
         return returnedAgg;
     }
 
@@ -129,6 +150,7 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
     private PercentilesMethod method = PercentilesMethod.TDIGEST;
     private int numberOfSignificantValueDigits = 3;
     private double compression = 100.0;
+    private double relativeAccuracy = DDSketch.DEFAULT_RELATIVE_ACCURACY;
     private boolean keyed = true;
 
     public PercentilesAggregationBuilder(String name) {
@@ -142,6 +164,7 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
         this.method = clone.method;
         this.numberOfSignificantValueDigits = clone.numberOfSignificantValueDigits;
         this.compression = clone.compression;
+        this.relativeAccuracy = clone.relativeAccuracy;
         this.keyed = clone.keyed;
     }
 
@@ -160,6 +183,9 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
         numberOfSignificantValueDigits = in.readVInt();
         compression = in.readDouble();
         method = PercentilesMethod.readFromStream(in);
+        if (in.getVersion().onOrAfter(Version.V_7_0_0)) {
+            relativeAccuracy = in.readDouble();
+        }
     }
 
     @Override
@@ -168,7 +194,14 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
         out.writeBoolean(keyed);
         out.writeVInt(numberOfSignificantValueDigits);
         out.writeDouble(compression);
+        if (method == PercentilesMethod.DDSKETCH && out.getVersion().before(Version.V_7_0_0)) {
+            throw new IllegalArgumentException("[method] [" + method + "] is not supported on nodes before version ["
+                    + Version.V_7_0_0 + "]: [" + name + "]");
+        }
         method.writeTo(out);
+        if (out.getVersion().onOrAfter(Version.V_7_0_0)) {
+            out.writeDouble(relativeAccuracy);
+        }
     }
 
     /**
@@ -250,6 +283,26 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
         return compression;
     }
 
+    /**
+     * Expert: set the relative accuracy of the returned values, between 0 and 1 exclusive. Lower values improve accuracy but
+     * also memory usage. Only relevant when using {@link PercentilesMethod#DDSKETCH}.
+     */
+    public PercentilesAggregationBuilder relativeAccuracy(double relativeAccuracy) {
+        if (relativeAccuracy <= 0.0 || relativeAccuracy >= 1.0) {
+            throw new IllegalArgumentException(
+                    "[relative_accuracy] must be greater than 0 and less than 1. Found [" + relativeAccuracy + "] in [" + name + "]");
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        return this;
+    }
+
+    /**
+     * Expert: get the relative accuracy of the returned values. Only relevant when using {@link PercentilesMethod#DDSKETCH}.
+     */
+    public double relativeAccuracy() {
+        return relativeAccuracy;
+    }
+
     public PercentilesAggregationBuilder method(PercentilesMethod method) {
         if (method == null) {
             throw new IllegalArgumentException("[method] must not be null: [" + name + "]");
@@ -272,6 +325,9 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
         case HDR:
             return new HDRPercentilesAggregatorFactory(name, config, percents, numberOfSignificantValueDigits, keyed, context, parent,
                     subFactoriesBuilder, metaData);
+        case DDSKETCH:
+            return new DDSketchPercentilesAggregatorFactory(name, config, percents, relativeAccuracy, keyed, context, parent,
+                    subFactoriesBuilder, metaData);
         default:
             throw new IllegalStateException("Illegal method [" + method + "]");
         }
@@ -284,6 +340,8 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
         builder.startObject(method.toString());
         if (method == PercentilesMethod.TDIGEST) {
             builder.field(COMPRESSION_FIELD.getPreferredName(), compression);
+        } else if (method == PercentilesMethod.DDSKETCH) {
+            builder.field(RELATIVE_ACCURACY_FIELD.getPreferredName(), relativeAccuracy);
         } else {
             builder.field(NUMBER_SIGNIFICANT_DIGITS_FIELD.getPreferredName(), numberOfSignificantValueDigits);
         }
@@ -305,6 +363,9 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
         case TDIGEST:
             equalSettings = Objects.equals(compression, other.compression);
             break;
+        case DDSKETCH:
+            equalSettings = Objects.equals(relativeAccuracy, other.relativeAccuracy);
+            break;
         default:
             throw new IllegalStateException("Illegal method [" + method.toString() + "]");
         }
@@ -321,6 +382,8 @@ public class PercentilesAggregationBuilder extends LeafOnly<ValuesSource.Numeric
             return Objects.hash(Arrays.hashCode(percents), keyed, numberOfSignificantValueDigits, method);
         case TDIGEST:
             return Objects.hash(Arrays.hashCode(percents), keyed, compression, method);
+        case DDSKETCH:
+            return Objects.hash(Arrays.hashCode(percents), keyed, relativeAccuracy, method);
         default:
             throw new IllegalStateException("Illegal method [" + method.toString() + "]");
         }
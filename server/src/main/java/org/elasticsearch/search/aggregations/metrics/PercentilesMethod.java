@@ -37,7 +37,12 @@ public enum PercentilesMethod implements Writeable {
     /**
      * The HDRHistogram method of calculating percentiles
      */
-    HDR("hdr", "HDR");
+    HDR("hdr", "HDR"),
+    /**
+     * The DDSketch method of calculating percentiles, which guarantees a relative accuracy of the returned values with a
+     * bounded memory usage. It is only supported by the percentiles aggregation.
+     */
+    DDSKETCH("ddsketch");
 
     private final ParseField parseField;
 
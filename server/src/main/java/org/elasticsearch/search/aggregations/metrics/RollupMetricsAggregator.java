@@ -0,0 +1,46 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.metrics;
+
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.index.cache.rollup.SegmentRollup;
+
+/**
+ * A metrics aggregator that can aggregate the summaries of a {@link SegmentRollup} in place of the documents they summarize.
+ */
+public interface RollupMetricsAggregator {
+
+    /**
+     * The field whose summaries this aggregator can aggregate, or {@code null} if it can't aggregate summaries.
+     */
+    @Nullable
+    String rollupField();
+
+    /**
+     * Aggregates the summary of the values of {@link #rollupField()} of some documents into the given bucket.
+     *
+     * @param bucket the ordinal of the bucket
+     * @param valueCount the number of values
+     * @param sum the sum of the values
+     * @param min the minimum value, {@link Double#POSITIVE_INFINITY} if there is no value
+     * @param max the maximum value, {@link Double#NEGATIVE_INFINITY} if there is no value
+     */
+    void collectRollup(long bucket, long valueCount, double sum, double min, double max);
+}
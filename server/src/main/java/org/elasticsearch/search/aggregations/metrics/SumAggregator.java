@@ -31,25 +31,29 @@ import org.elasticsearch.search.aggregations.LeafBucketCollector;
 import org.elasticsearch.search.aggregations.LeafBucketCollectorBase;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.support.ValuesSource;
+import org.elasticsearch.search.aggregations.support.ValuesSourceConfig;
 import org.elasticsearch.search.internal.SearchContext;
 
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
-class SumAggregator extends NumericMetricsAggregator.SingleValue {
+class SumAggregator extends NumericMetricsAggregator.SingleValue implements RollupMetricsAggregator {
 
     private final ValuesSource.Numeric valuesSource;
     private final DocValueFormat format;
+    private final String rollupField;
 
     private DoubleArray sums;
     private DoubleArray compensations;
 
-    SumAggregator(String name, ValuesSource.Numeric valuesSource, DocValueFormat formatter, SearchContext context,
-            Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
+    SumAggregator(String name, ValuesSourceConfig<ValuesSource.Numeric> config, ValuesSource.Numeric valuesSource,
+            SearchContext context, Aggregator parent, List<PipelineAggregator> pipelineAggregators,
+            Map<String, Object> metaData) throws IOException {
         super(name, context, parent, pipelineAggregators, metaData);
         this.valuesSource = valuesSource;
-        this.format = formatter;
+        this.format = config.format();
+        this.rollupField = valuesSource == null ? null : config.rawFieldName();
         if (valuesSource != null) {
             sums = context.bigArrays().newDoubleArray(1, true);
             compensations = context.bigArrays().newDoubleArray(1, true);
@@ -99,6 +103,27 @@ class SumAggregator extends NumericMetricsAggregator.SingleValue {
         };
     }
 
+    @Override
+    public String rollupField() {
+        return rollupField;
+    }
+
+    @Override
+    public void collectRollup(long bucket, long valueCount, double sum, double min, double max) {
+        sums = context.bigArrays().grow(sums, bucket + 1);
+        compensations = context.bigArrays().grow(compensations, bucket + 1);
+        double currentSum = sums.get(bucket);
+        if (Double.isFinite(sum) == false) {
+            sums.set(bucket, currentSum + sum);
+        } else if (Double.isFinite(currentSum)) {
+            double compensation = compensations.get(bucket);
+            double corrected = sum - compensation;
+            double newSum = currentSum + corrected;
+            compensations.set(bucket, (newSum - currentSum) - corrected);
+            sums.set(bucket, newSum);
+        }
+    }
+
     @Override
     public double metric(long owningBucketOrd) {
         if (valuesSource == null || owningBucketOrd >= sums.size()) {
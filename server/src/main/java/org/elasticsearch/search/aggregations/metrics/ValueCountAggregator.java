@@ -29,6 +29,7 @@ import org.elasticsearch.search.aggregations.LeafBucketCollector;
 import org.elasticsearch.search.aggregations.LeafBucketCollectorBase;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.aggregations.support.ValuesSource;
+import org.elasticsearch.search.aggregations.support.ValuesSourceConfig;
 import org.elasticsearch.search.internal.SearchContext;
 
 import java.io.IOException;
@@ -41,19 +42,21 @@ import java.util.Map;
  * This aggregator works in a multi-bucket mode, that is, when serves as a sub-aggregator, a single aggregator instance aggregates the
  * counts for all buckets owned by the parent aggregator)
  */
-class ValueCountAggregator extends NumericMetricsAggregator.SingleValue {
+class ValueCountAggregator extends NumericMetricsAggregator.SingleValue implements RollupMetricsAggregator {
 
     final ValuesSource valuesSource;
+    final String rollupField;
 
     // a count per bucket
     LongArray counts;
 
-    ValueCountAggregator(String name, ValuesSource valuesSource,
+    ValueCountAggregator(String name, ValuesSourceConfig<ValuesSource> config, ValuesSource valuesSource,
             SearchContext aggregationContext, Aggregator parent, List<PipelineAggregator> pipelineAggregators,
             Map<String, Object> metaData)
             throws IOException {
         super(name, aggregationContext, parent, pipelineAggregators, metaData);
         this.valuesSource = valuesSource;
+        this.rollupField = valuesSource == null ? null : config.rawFieldName();
         if (valuesSource != null) {
             counts = context.bigArrays().newLongArray(1, true);
         }
@@ -80,6 +83,17 @@ class ValueCountAggregator extends NumericMetricsAggregator.SingleValue {
         };
     }
 
+    @Override
+    public String rollupField() {
+        return rollupField;
+    }
+
+    @Override
+    public void collectRollup(long bucket, long valueCount, double sum, double min, double max) {
+        counts = context.bigArrays().grow(counts, bucket + 1);
+        counts.increment(bucket, valueCount);
+    }
+
     @Override
     public double metric(long owningBucketOrd) {
         return (valuesSource == null || owningBucketOrd >= counts.size()) ? 0 : counts.get(owningBucketOrd);
@@ -42,12 +42,12 @@ class ValueCountAggregatorFactory extends ValuesSourceAggregatorFactory<ValuesSo
     @Override
     protected Aggregator createUnmapped(Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData)
             throws IOException {
-        return new ValueCountAggregator(name, null, context, parent, pipelineAggregators, metaData);
+        return new ValueCountAggregator(name, config, null, context, parent, pipelineAggregators, metaData);
     }
 
     @Override
     protected Aggregator doCreateInternal(ValuesSource valuesSource, Aggregator parent, boolean collectsFromSingleBucket,
             List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
-        return new ValueCountAggregator(name, valuesSource, context, parent, pipelineAggregators, metaData);
+        return new ValueCountAggregator(name, config, valuesSource, context, parent, pipelineAggregators, metaData);
     }
 }
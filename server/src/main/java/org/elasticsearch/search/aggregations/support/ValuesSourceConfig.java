@@ -219,6 +219,18 @@ public class ValuesSourceConfig<VS extends ValuesSource> {
         return format;
     }
 
+    /**
+     * The name of the field whose values are aggregated as they are indexed, or {@code null} if the values don't come from a
+     * field or are modified by a script or a missing value.
+     */
+    @Nullable
+    public String rawFieldName() {
+        if (fieldContext == null || script != null || missing != null) {
+            return null;
+        }
+        return fieldContext.field();
+    }
+
     /** Get a value source given its configuration. A return value of null indicates that
      *  no value source could be built. */
     @Nullable
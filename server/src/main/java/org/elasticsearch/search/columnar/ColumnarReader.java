@@ -0,0 +1,301 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.search.columnar;
+
+import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.search.columnar.ColumnarTable.Type;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes a response written in the format of {@link ColumnarResponse}. Every column is read into an array of its type
+ * so that the values of a row are accessed without boxing, keywords share the strings of their dictionary and objects
+ * are kept as their JSON.
+ */
+public final class ColumnarReader {
+
+    private final Map<String, String> metadata;
+    private final List<Table> tables;
+
+    private ColumnarReader(Map<String, String> metadata, List<Table> tables) {
+        this.metadata = metadata;
+        this.tables = tables;
+    }
+
+    /**
+     * Reads a whole response.
+     */
+    public static ColumnarReader read(BytesReference bytes) throws IOException {
+        try (StreamInput in = bytes.streamInput()) {
+            byte[] magic = new byte[ColumnarResponse.MAGIC.length];
+            in.readBytes(magic, 0, magic.length);
+            if (Arrays.equals(ColumnarResponse.MAGIC, magic) == false) {
+                throw new IllegalArgumentException("not a columnar response");
+            }
+            byte version = in.readByte();
+            if (version != ColumnarResponse.VERSION) {
+                throw new IllegalArgumentException("unsupported columnar format version [" + version + "], expected ["
+                    + ColumnarResponse.VERSION + "]");
+            }
+            Map<String, String> metadata = readMetadata(in);
+            int numTables = in.readVInt();
+            List<Table> tables = new ArrayList<>(numTables);
+            for (int i = 0; i < numTables; i++) {
+                tables.add(Table.read(in));
+            }
+            return new ColumnarReader(metadata, Collections.unmodifiableList(tables));
+        }
+    }
+
+    public Map<String, String> metadata() {
+        return metadata;
+    }
+
+    public List<Table> tables() {
+        return tables;
+    }
+
+    /**
+     * Returns the table with the provided name, or {@code null} if there is none.
+     */
+    public Table table(String name) {
+        for (Table table : tables) {
+            if (table.name.equals(name)) {
+                return table;
+            }
+        }
+        return null;
+    }
+
+    private static Map<String, String> readMetadata(StreamInput in) throws IOException {
+        int size = in.readVInt();
+        Map<String, String> metadata = new LinkedHashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            metadata.put(readUTF8(in), readUTF8(in));
+        }
+        return Collections.unmodifiableMap(metadata);
+    }
+
+    private static String readUTF8(StreamInput in) throws IOException {
+        return in.readBytesRef().utf8ToString();
+    }
+
+    /**
+     * Reads one bit per row, least significant bit first.
+     */
+    private static FixedBitSet readBitset(StreamInput in, int rows) throws IOException {
+        FixedBitSet bits = new FixedBitSet(rows);
+        for (int offset = 0; offset < rows; offset += 8) {
+            int b = in.readByte() & 0xFF;
+            for (int bit = 0; bit < 8 && offset + bit < rows; bit++) {
+                if ((b & (1 << bit)) != 0) {
+                    bits.set(offset + bit);
+                }
+            }
+        }
+        return bits;
+    }
+
+    public static final class Table {
+        private final String name;
+        private final Map<String, String> metadata;
+        private final int rows;
+        private final Map<String, Column> columns;
+
+        private Table(String name, Map<String, String> metadata, int rows, Map<String, Column> columns) {
+            this.name = name;
+            this.metadata = metadata;
+            this.rows = rows;
+            this.columns = columns;
+        }
+
+        static Table read(StreamInput in) throws IOException {
+            String name = readUTF8(in);
+            Map<String, String> metadata = readMetadata(in);
+            int rows = in.readVInt();
+            int numColumns = in.readVInt();
+            Map<String, Column> columns = new LinkedHashMap<>(numColumns);
+            for (int i = 0; i < numColumns; i++) {
+                columns.put(readUTF8(in), Column.read(in, rows));
+            }
+            return new Table(name, metadata, rows, Collections.unmodifiableMap(columns));
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public Map<String, String> metadata() {
+            return metadata;
+        }
+
+        public int rows() {
+            return rows;
+        }
+
+        public Map<String, Column> columns() {
+            return columns;
+        }
+
+        /**
+         * Returns the column with the provided name, or {@code null} if there is none.
+         */
+        public Column column(String name) {
+            return columns.get(name);
+        }
+    }
+
+    public static final class Column {
+        private final Type type;
+        // null if all rows have a value
+        private final FixedBitSet valid;
+        private final long[] longs;
+        private final double[] doubles;
+        private final FixedBitSet booleans;
+        private final String[] strings;
+
+        private Column(Type type, FixedBitSet valid, long[] longs, double[] doubles, FixedBitSet booleans, String[] strings) {
+            this.type = type;
+            this.valid = valid;
+            this.longs = longs;
+            this.doubles = doubles;
+            this.booleans = booleans;
+            this.strings = strings;
+        }
+
+        static Column read(StreamInput in, int rows) throws IOException {
+            Type type = Type.fromId(in.readByte());
+            FixedBitSet valid = in.readBoolean() ? readBitset(in, rows) : null;
+            switch (type) {
+                case LONG:
+                    long[] longs = new long[rows];
+                    for (int row = 0; row < rows; row++) {
+                        longs[row] = in.readLong();
+                    }
+                    return new Column(type, valid, longs, null, null, null);
+                case DOUBLE:
+                    double[] doubles = new double[rows];
+                    for (int row = 0; row < rows; row++) {
+                        doubles[row] = in.readDouble();
+                    }
+                    return new Column(type, valid, null, doubles, null, null);
+                case BOOLEAN:
+                    return new Column(type, valid, null, null, readBitset(in, rows), null);
+                case KEYWORD:
+                    String[] terms = new String[in.readVInt()];
+                    for (int i = 0; i < terms.length; i++) {
+                        terms[i] = readUTF8(in);
+                    }
+                    String[] keywords = new String[rows];
+                    for (int row = 0; row < rows; row++) {
+                        if (valid == null || valid.get(row)) {
+                            keywords[row] = terms[in.readVInt()];
+                        }
+                    }
+                    return new Column(type, valid, null, null, null, keywords);
+                case OBJECT:
+                    String[] objects = new String[rows];
+                    for (int row = 0; row < rows; row++) {
+                        if (valid == null || valid.get(row)) {
+                            objects[row] = readUTF8(in);
+                        }
+                    }
+                    return new Column(type, valid, null, null, null, objects);
+                default:
+                    throw new IllegalStateException("unknown column type [" + type + "]");
+            }
+        }
+
+        public Type type() {
+            return type;
+        }
+
+        public boolean isNull(int row) {
+            return valid != null && valid.get(row) == false;
+        }
+
+        /**
+         * Returns the value of a {@link Type#LONG} column, {@code 0} for null rows.
+         */
+        public long getLong(int row) {
+            checkType(Type.LONG);
+            return longs[row];
+        }
+
+        /**
+         * Returns the value of a {@link Type#DOUBLE} column, {@code 0} for null rows.
+         */
+        public double getDouble(int row) {
+            checkType(Type.DOUBLE);
+            return doubles[row];
+        }
+
+        /**
+         * Returns the value of a {@link Type#BOOLEAN} column, {@code false} for null rows.
+         */
+        public boolean getBoolean(int row) {
+            checkType(Type.BOOLEAN);
+            return booleans.get(row);
+        }
+
+        /**
+         * Returns the value of a {@link Type#KEYWORD} column, or the JSON of the value of an {@link Type#OBJECT} column,
+         * {@code null} for null rows.
+         */
+        public String getString(int row) {
+            if (type != Type.KEYWORD && type != Type.OBJECT) {
+                throw new IllegalStateException("column of type [" + type + "] doesn't hold strings");
+            }
+            return strings[row];
+        }
+
+        /**
+         * Returns the value of a row boxed, or {@code null} for null rows.
+         */
+        public Object get(int row) {
+            if (isNull(row)) {
+                return null;
+            }
+            switch (type) {
+                case LONG:
+                    return longs[row];
+                case DOUBLE:
+                    return doubles[row];
+                case BOOLEAN:
+                    return booleans.get(row);
+                default:
+                    return strings[row];
+            }
+        }
+
+        private void checkType(Type expected) {
+            if (type != expected) {
+                throw new IllegalStateException("column of type [" + type + "] is not of type [" + expected + "]");
+            }
+        }
+    }
+}
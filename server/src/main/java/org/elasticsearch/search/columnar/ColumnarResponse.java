@@ -0,0 +1,269 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.search.columnar;
+
+import org.apache.lucene.search.TotalHits.Relation;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.document.DocumentField;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.LoggingDeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.aggregations.Aggregation;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.PipelineAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregation;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.NumericMetricsAggregation;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Encodes search responses in a binary, columnar format that clients which read many hits or buckets can decode without
+ * parsing one object per row. A response is made of:
+ * <ul>
+ *     <li>the {@link #MAGIC} bytes and the {@link #VERSION} of the format</li>
+ *     <li>key/value pairs of metadata, like {@code took} or {@code _scroll_id}</li>
+ *     <li>a number of {@link ColumnarTable}s, {@code hits} for the search hits and one per composite aggregation</li>
+ * </ul>
+ * Numbers are big endian, counts and lengths are variable length ints and strings are prefixed with the length of their
+ * UTF-8 bytes. Only composite aggregations with single value metric sub-aggregations can be encoded, requests for other
+ * aggregations are rejected. {@link ColumnarReader} decodes the responses and the layout is documented in
+ * {@code docs/reference/search/columnar-format.asciidoc}.
+ */
+public final class ColumnarResponse {
+
+    public static final String MEDIA_TYPE = "application/vnd.elasticsearch+columnar";
+    public static final String FORMAT = "columnar";
+    public static final byte[] MAGIC = new byte[] { 'E', 'S', 'C', 'F' };
+    public static final byte VERSION = 1;
+
+    public static final String HITS_TABLE = "hits";
+    public static final String DOC_COUNT_COLUMN = "doc_count";
+
+    private ColumnarResponse() {}
+
+    /**
+     * Returns {@code true} if the request asks for a columnar response, either with the {@code format} parameter or
+     * with its {@code Accept} header.
+     */
+    public static boolean isRequested(RestRequest request) {
+        String format = request.param("format");
+        if (format != null) {
+            return FORMAT.equals(format.toLowerCase(Locale.ROOT));
+        }
+        return isMediaType(request.header("Accept"));
+    }
+
+    /**
+     * Returns {@code true} if {@code mediaType} is the columnar media type, optionally followed by parameters.
+     */
+    public static boolean isMediaType(String mediaType) {
+        if (mediaType == null) {
+            return false;
+        }
+        String lowerCase = mediaType.trim().toLowerCase(Locale.ROOT);
+        return lowerCase.equals(MEDIA_TYPE) || lowerCase.startsWith(MEDIA_TYPE + ";");
+    }
+
+    /**
+     * Rejects search requests with top level aggregations that the columnar format can't encode, before they are
+     * executed.
+     */
+    public static void validate(SearchRequest request) {
+        SearchSourceBuilder source = request.source();
+        if (source == null || source.aggregations() == null) {
+            return;
+        }
+        for (AggregationBuilder aggregation : source.aggregations().getAggregatorFactories()) {
+            if (aggregation instanceof CompositeAggregationBuilder == false) {
+                throw unsupportedAggregation(aggregation.getName(), aggregation.getType());
+            }
+        }
+        if (source.aggregations().getPipelineAggregatorFactories().isEmpty() == false) {
+            PipelineAggregationBuilder aggregation = source.aggregations().getPipelineAggregatorFactories().iterator().next();
+            throw unsupportedAggregation(aggregation.getName(), aggregation.getType());
+        }
+    }
+
+    /**
+     * Encodes the hits of a search response and its composite aggregations.
+     *
+     * @throws IllegalArgumentException if the response has other aggregations
+     */
+    public static BytesReference encode(SearchResponse response) throws IOException {
+        List<String[]> metadata = new ArrayList<>();
+        metadata.add(new String[] { "took", Long.toString(response.getTook().millis()) });
+        metadata.add(new String[] { "timed_out", Boolean.toString(response.isTimedOut()) });
+        metadata.add(new String[] { "total_shards", Integer.toString(response.getTotalShards()) });
+        metadata.add(new String[] { "successful_shards", Integer.toString(response.getSuccessfulShards()) });
+        metadata.add(new String[] { "failed_shards", Integer.toString(response.getFailedShards()) });
+        SearchHits hits = response.getHits();
+        if (hits.getTotalHits() != null) {
+            metadata.add(new String[] { "total_hits", Long.toString(hits.getTotalHits().value) });
+            metadata.add(new String[] { "total_hits_relation", hits.getTotalHits().relation == Relation.EQUAL_TO ? "eq" : "gte" });
+        }
+        if (Float.isNaN(hits.getMaxScore()) == false) {
+            metadata.add(new String[] { "max_score", Float.toString(hits.getMaxScore()) });
+        }
+        if (response.getScrollId() != null) {
+            metadata.add(new String[] { "_scroll_id", response.getScrollId() });
+        }
+
+        List<ColumnarTable> tables = new ArrayList<>();
+        tables.add(hitsTable(hits));
+        Aggregations aggregations = response.getAggregations();
+        if (aggregations != null) {
+            for (Aggregation aggregation : aggregations) {
+                if (aggregation instanceof CompositeAggregation == false) {
+                    throw unsupportedAggregation(aggregation.getName(), aggregation.getType());
+                }
+                tables.add(compositeTable((CompositeAggregation) aggregation));
+            }
+        }
+        return encode(metadata, tables);
+    }
+
+    /**
+     * Encodes the provided metadata and tables.
+     */
+    public static BytesReference encode(List<String[]> metadata, List<ColumnarTable> tables) throws IOException {
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            out.writeBytes(MAGIC);
+            out.writeByte(VERSION);
+            out.writeVInt(metadata.size());
+            for (String[] entry : metadata) {
+                writeUTF8(out, entry[0]);
+                writeUTF8(out, entry[1]);
+            }
+            out.writeVInt(tables.size());
+            for (ColumnarTable table : tables) {
+                table.writeTo(out);
+            }
+            return out.bytes();
+        }
+    }
+
+    /**
+     * Builds a table with the metadata fields, the flattened {@code _source} and the {@code fields} of every hit.
+     */
+    static ColumnarTable hitsTable(SearchHits hits) throws IOException {
+        ColumnarTable table = new ColumnarTable(HITS_TABLE);
+        for (SearchHit hit : hits.getHits()) {
+            table.newRow();
+            table.set("_index", hit.getIndex());
+            table.set("_id", hit.getId());
+            if (Float.isNaN(hit.getScore()) == false) {
+                table.set("_score", hit.getScore());
+            }
+            BytesReference source = hit.getSourceRef();
+            if (source != null) {
+                // the content type of the source is detected like SourceLookup does, it isn't known at this point
+                try (XContentParser parser = XContentHelper.createParser(NamedXContentRegistry.EMPTY,
+                        LoggingDeprecationHandler.INSTANCE, source)) {
+                    if (parser.nextToken() == XContentParser.Token.START_OBJECT) {
+                        flatten(table, null, parser);
+                    }
+                }
+            }
+            for (DocumentField field : hit.getFields().values()) {
+                List<Object> values = field.getValues();
+                table.set(field.getName(), values.size() == 1 ? values.get(0) : values);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Builds a table with a column per source of the composite key, a {@link #DOC_COUNT_COLUMN} column and a column
+     * per single value metric sub-aggregation.
+     *
+     * @throws IllegalArgumentException if a bucket has other sub-aggregations
+     */
+    static ColumnarTable compositeTable(CompositeAggregation aggregation) throws IOException {
+        ColumnarTable table = new ColumnarTable(aggregation.getName());
+        if (aggregation.afterKey() != null) {
+            try (XContentBuilder builder = XContentFactory.jsonBuilder()) {
+                builder.map(aggregation.afterKey());
+                table.metadata("after_key", Strings.toString(builder));
+            }
+        }
+        for (CompositeAggregation.Bucket bucket : aggregation.getBuckets()) {
+            table.newRow();
+            for (Map.Entry<String, Object> key : bucket.getKey().entrySet()) {
+                table.set(key.getKey(), key.getValue());
+            }
+            table.set(DOC_COUNT_COLUMN, bucket.getDocCount());
+            for (Aggregation sub : bucket.getAggregations()) {
+                if (sub instanceof NumericMetricsAggregation.SingleValue == false) {
+                    throw new IllegalArgumentException("format [" + FORMAT + "] only supports single value metrics under ["
+                        + CompositeAggregationBuilder.NAME + "] aggregations but [" + sub.getName() + "] is a [" + sub.getType()
+                        + "] aggregation");
+                }
+                double value = ((NumericMetricsAggregation.SingleValue) sub).value();
+                table.set(sub.getName(), Double.isFinite(value) ? value : null);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Sets a column per leaf field of the object the parser is on, streaming the values rather than parsing the whole
+     * object into a map. Arrays are leaves, they are set as lists.
+     */
+    private static void flatten(ColumnarTable table, String prefix, XContentParser parser) throws IOException {
+        for (XContentParser.Token token = parser.nextToken(); token != XContentParser.Token.END_OBJECT; token = parser.nextToken()) {
+            String path = prefix == null ? parser.currentName() : prefix + "." + parser.currentName();
+            token = parser.nextToken();
+            if (token == XContentParser.Token.START_OBJECT) {
+                flatten(table, path, parser);
+            } else if (token == XContentParser.Token.START_ARRAY) {
+                table.set(path, parser.list());
+            } else {
+                table.set(path, parser.objectText());
+            }
+        }
+    }
+
+    private static IllegalArgumentException unsupportedAggregation(String name, String type) {
+        return new IllegalArgumentException("format [" + FORMAT + "] only supports [" + CompositeAggregationBuilder.NAME
+            + "] aggregations at the top level but [" + name + "] is a [" + type + "] aggregation");
+    }
+
+    static void writeUTF8(StreamOutput out, String value) throws IOException {
+        out.writeBytesRef(new BytesRef(value));
+    }
+}
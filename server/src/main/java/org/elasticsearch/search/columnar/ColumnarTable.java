@@ -0,0 +1,427 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.search.columnar;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A table of rows that is encoded column by column. Rows are added one at a time with {@link #newRow()} and
+ * {@link #set(String, Object)}, columns are created the first time a value is set for them and are null for the rows
+ * before. The type of every column is picked from all of its values:
+ * <ul>
+ *     <li>{@link Type#LONG} if all values are integral numbers, as fixed width longs</li>
+ *     <li>{@link Type#DOUBLE} if all values are numbers and the integral ones are within &plusmn;2<sup>53</sup>, as
+ *     fixed width doubles</li>
+ *     <li>{@link Type#BOOLEAN} if all values are booleans, as a bitset</li>
+ *     <li>{@link Type#KEYWORD} for other scalars, including numbers that a double can't hold exactly, as a dictionary
+ *     of distinct values followed by the ordinal of every row</li>
+ *     <li>{@link Type#OBJECT} if any value is a list or an object, as the JSON representation of every value</li>
+ * </ul>
+ * Columns hold their values in an array of the type they have so far and convert it when a value of another type is
+ * set. Columns that contain nulls are preceded by a validity bitset. Fixed width columns write a placeholder for null
+ * rows, other columns skip them. {@link ColumnarReader} decodes the tables.
+ */
+public final class ColumnarTable {
+
+    public enum Type {
+        LONG((byte) 0),
+        DOUBLE((byte) 1),
+        BOOLEAN((byte) 2),
+        KEYWORD((byte) 3),
+        OBJECT((byte) 4);
+
+        private final byte id;
+
+        Type(byte id) {
+            this.id = id;
+        }
+
+        public byte id() {
+            return id;
+        }
+
+        public static Type fromId(byte id) {
+            switch (id) {
+                case 0:
+                    return LONG;
+                case 1:
+                    return DOUBLE;
+                case 2:
+                    return BOOLEAN;
+                case 3:
+                    return KEYWORD;
+                case 4:
+                    return OBJECT;
+                default:
+                    throw new IllegalArgumentException("unknown column type [" + id + "]");
+            }
+        }
+    }
+
+    /**
+     * The largest magnitude of the longs that a double holds exactly.
+     */
+    static final long MAX_EXACT_DOUBLE = 1L << 53;
+
+    private final String name;
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+    private final Map<String, String> metadata = new LinkedHashMap<>();
+    private int rows = 0;
+
+    public ColumnarTable(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public Collection<String> columns() {
+        return columns.keySet();
+    }
+
+    /**
+     * Adds a key/value pair that describes the table, like the {@code after_key} of a composite aggregation.
+     */
+    public void metadata(String key, String value) {
+        metadata.put(key, value);
+    }
+
+    /**
+     * Starts a new row, values that are not set for it are null.
+     */
+    public void newRow() {
+        rows++;
+    }
+
+    /**
+     * Sets the value of the column {@code column} for the current row, replacing the value it already has.
+     */
+    public void set(String column, Object value) {
+        if (rows == 0) {
+            throw new IllegalStateException("no row was started");
+        }
+        Column col = columns.computeIfAbsent(column, k -> new Column());
+        col.set(rows - 1, value);
+    }
+
+    /**
+     * Returns the type the column {@code column} will be written with, or {@code null} if it doesn't exist or
+     * has no non-null value.
+     */
+    public Type type(String column) {
+        Column col = columns.get(column);
+        return col == null ? null : col.type;
+    }
+
+    /**
+     * Returns the value of the column {@code column} for the given row as the type of the column holds it, or
+     * {@code null} if it has none.
+     */
+    Object value(String column, int row) {
+        Column col = columns.get(column);
+        return col == null || col.isSet(row) == false ? null : col.get(row);
+    }
+
+    public void writeTo(StreamOutput out) throws IOException {
+        ColumnarResponse.writeUTF8(out, name);
+        out.writeVInt(metadata.size());
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            ColumnarResponse.writeUTF8(out, entry.getKey());
+            ColumnarResponse.writeUTF8(out, entry.getValue());
+        }
+        out.writeVInt(rows);
+        out.writeVInt(columns.size());
+        for (Map.Entry<String, Column> entry : columns.entrySet()) {
+            ColumnarResponse.writeUTF8(out, entry.getKey());
+            entry.getValue().writeTo(out, rows);
+        }
+    }
+
+    private static final class Column {
+        private Type type = null;
+        private FixedBitSet valid = new FixedBitSet(0);
+        // only the array of the current type is allocated, keywords are kept as strings and objects as they were set
+        private long[] longs;
+        private double[] doubles;
+        private FixedBitSet booleans;
+        private Object[] objects;
+
+        boolean isSet(int row) {
+            return row < valid.length() && valid.get(row);
+        }
+
+        void set(int row, Object value) {
+            valid = FixedBitSet.ensureCapacity(valid, row);
+            if (value == null) {
+                // the value of the current row is replaced, the type it had is kept
+                valid.clear(row);
+                return;
+            }
+            Type valueType = typeOf(value);
+            if (valueType == Type.LONG && type == Type.DOUBLE && isExactDouble(((Number) value).longValue()) == false) {
+                valueType = Type.KEYWORD;
+            }
+            Type newType = merge(type, valueType);
+            if (newType == Type.DOUBLE && type == Type.LONG && longsAreExactDoubles() == false) {
+                newType = Type.KEYWORD;
+            }
+            if (newType != type) {
+                convert(newType);
+            }
+            valid.set(row);
+            switch (type) {
+                case LONG:
+                    longs = ArrayUtil.grow(longs, row + 1);
+                    longs[row] = ((Number) value).longValue();
+                    break;
+                case DOUBLE:
+                    doubles = ArrayUtil.grow(doubles, row + 1);
+                    doubles[row] = ((Number) value).doubleValue();
+                    break;
+                case BOOLEAN:
+                    booleans = FixedBitSet.ensureCapacity(booleans, row);
+                    if ((Boolean) value) {
+                        booleans.set(row);
+                    } else {
+                        booleans.clear(row);
+                    }
+                    break;
+                case KEYWORD:
+                    objects = ArrayUtil.grow(objects, row + 1);
+                    objects[row] = value.toString();
+                    break;
+                case OBJECT:
+                    objects = ArrayUtil.grow(objects, row + 1);
+                    objects[row] = value;
+                    break;
+                default:
+                    throw new IllegalStateException("unknown column type [" + type + "]");
+            }
+        }
+
+        /**
+         * Returns the value of a row that is set, boxed.
+         */
+        Object get(int row) {
+            switch (type) {
+                case LONG:
+                    return longs[row];
+                case DOUBLE:
+                    return doubles[row];
+                case BOOLEAN:
+                    return booleans.get(row);
+                default:
+                    return objects[row];
+            }
+        }
+
+        private boolean longsAreExactDoubles() {
+            for (int row = 0; row < valid.length(); row++) {
+                if (valid.get(row) && isExactDouble(longs[row]) == false) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Moves the values that are set to an array of the provided type. A column only ever widens, so the values are
+         * either numbers that become doubles, or scalars that become keywords or objects.
+         */
+        private void convert(Type newType) {
+            int size = valid.length();
+            long[] newLongs = null;
+            double[] newDoubles = null;
+            FixedBitSet newBooleans = null;
+            Object[] newObjects = null;
+            switch (newType) {
+                case LONG:
+                    newLongs = new long[size];
+                    break;
+                case DOUBLE:
+                    newDoubles = new double[size];
+                    break;
+                case BOOLEAN:
+                    newBooleans = new FixedBitSet(size);
+                    break;
+                default:
+                    newObjects = new Object[size];
+                    break;
+            }
+            if (type != null) {
+                for (int row = 0; row < size; row++) {
+                    if (valid.get(row) == false) {
+                        continue;
+                    }
+                    Object value = get(row);
+                    if (newType == Type.DOUBLE) {
+                        newDoubles[row] = ((Number) value).doubleValue();
+                    } else if (newType == Type.KEYWORD) {
+                        newObjects[row] = value.toString();
+                    } else {
+                        newObjects[row] = value;
+                    }
+                }
+            }
+            longs = newLongs;
+            doubles = newDoubles;
+            booleans = newBooleans;
+            objects = newObjects;
+            type = newType;
+        }
+
+        void writeTo(StreamOutput out, int rows) throws IOException {
+            // the type of an all null column does not matter, it is only made of a validity bitset
+            Type type = this.type == null ? Type.KEYWORD : this.type;
+            int nulls = rows - valid.cardinality();
+            out.writeByte(type.id());
+            out.writeBoolean(nulls > 0);
+            if (nulls > 0) {
+                writeBitset(out, rows, this::isSet);
+            }
+            switch (type) {
+                case LONG:
+                    for (int row = 0; row < rows; row++) {
+                        out.writeLong(isSet(row) ? longs[row] : 0L);
+                    }
+                    break;
+                case DOUBLE:
+                    for (int row = 0; row < rows; row++) {
+                        out.writeDouble(isSet(row) ? doubles[row] : 0d);
+                    }
+                    break;
+                case BOOLEAN:
+                    writeBitset(out, rows, row -> isSet(row) && booleans.get(row));
+                    break;
+                case KEYWORD:
+                    writeKeywords(out, rows);
+                    break;
+                case OBJECT:
+                    for (int row = 0; row < rows; row++) {
+                        if (isSet(row)) {
+                            ColumnarResponse.writeUTF8(out, toJson(objects[row]));
+                        }
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("unknown column type [" + type + "]");
+            }
+        }
+
+        private void writeKeywords(StreamOutput out, int rows) throws IOException {
+            Map<String, Integer> dictionary = new HashMap<>();
+            int[] ords = new int[rows];
+            for (int row = 0; row < rows; row++) {
+                if (isSet(row)) {
+                    ords[row] = dictionary.computeIfAbsent((String) objects[row], k -> dictionary.size());
+                }
+            }
+            String[] terms = new String[dictionary.size()];
+            for (Map.Entry<String, Integer> entry : dictionary.entrySet()) {
+                terms[entry.getValue()] = entry.getKey();
+            }
+            out.writeVInt(terms.length);
+            for (String term : terms) {
+                ColumnarResponse.writeUTF8(out, term);
+            }
+            for (int row = 0; row < rows; row++) {
+                if (isSet(row)) {
+                    out.writeVInt(ords[row]);
+                }
+            }
+        }
+    }
+
+    private interface RowPredicate {
+        boolean test(int row);
+    }
+
+    /**
+     * Writes one bit per row, least significant bit first.
+     */
+    private static void writeBitset(StreamOutput out, int rows, RowPredicate predicate) throws IOException {
+        for (int offset = 0; offset < rows; offset += 8) {
+            int b = 0;
+            for (int bit = 0; bit < 8 && offset + bit < rows; bit++) {
+                if (predicate.test(offset + bit)) {
+                    b |= 1 << bit;
+                }
+            }
+            out.writeByte((byte) b);
+        }
+    }
+
+    static boolean isExactDouble(long value) {
+        return value >= -MAX_EXACT_DOUBLE && value <= MAX_EXACT_DOUBLE;
+    }
+
+    static Type typeOf(Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return Type.LONG;
+        } else if (value instanceof Double || value instanceof Float) {
+            return Type.DOUBLE;
+        } else if (value instanceof Boolean) {
+            return Type.BOOLEAN;
+        } else if (value instanceof Map || value instanceof Iterable || value instanceof Object[]) {
+            return Type.OBJECT;
+        }
+        return Type.KEYWORD;
+    }
+
+    /**
+     * Returns the type of a column of type {@code current} once a value of type {@code other} is added to it. Longs and
+     * doubles merge to {@link Type#DOUBLE}, the caller falls back to {@link Type#KEYWORD} if one of the longs is not
+     * an exact double.
+     */
+    static Type merge(Type current, Type other) {
+        if (current == null || current == other) {
+            return other;
+        }
+        if (current == Type.OBJECT || other == Type.OBJECT) {
+            return Type.OBJECT;
+        }
+        if ((current == Type.LONG && other == Type.DOUBLE) || (current == Type.DOUBLE && other == Type.LONG)) {
+            return Type.DOUBLE;
+        }
+        return Type.KEYWORD;
+    }
+
+    private static String toJson(Object value) throws IOException {
+        try (XContentBuilder builder = XContentFactory.jsonBuilder()) {
+            builder.value(value);
+            return Strings.toString(builder);
+        }
+    }
+}
@@ -26,6 +26,7 @@ import org.apache.lucene.index.TermStates;
 import org.apache.lucene.search.BulkScorer;
 import org.apache.lucene.search.CollectionStatistics;
 import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
 import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
@@ -35,7 +36,9 @@ import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.TermStatistics;
 import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.ThreadInterruptedException;
 import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.search.dfs.AggregatedDfs;
 import org.elasticsearch.search.profile.Timer;
@@ -45,8 +48,14 @@ import org.elasticsearch.search.profile.query.QueryProfiler;
 import org.elasticsearch.search.profile.query.QueryTimingType;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Context-aware extension of {@link IndexSearcher}.
@@ -66,6 +75,11 @@ public class ContextIndexSearcher extends IndexSearcher implements Releasable {
     private QueryProfiler profiler;
 
     private Runnable checkCancelled;
+    private Runnable checkSegmentCancelled;
+
+    private Executor sliceExecutor;
+
+    private List<List<LeafReaderContext>> leafSlices;
 
     public ContextIndexSearcher(Engine.Searcher searcher,
             QueryCache queryCache, QueryCachingPolicy queryCachingPolicy) {
@@ -93,6 +107,44 @@ public class ContextIndexSearcher extends IndexSearcher implements Releasable {
         this.checkCancelled = checkCancelled;
     }
 
+    /**
+     * Set a {@link Runnable} that checks whether the search was cancelled, which {@link #checkSegmentCancelled()} runs. Unlike
+     * {@link #setCheckCancelled(Runnable)} it is only run once per segment so it is set for all searches.
+     */
+    public void setCheckSegmentCancelled(Runnable checkSegmentCancelled) {
+        this.checkSegmentCancelled = checkSegmentCancelled;
+    }
+
+    /**
+     * Checks whether the search was cancelled or timed out, for queries that do expensive work on every segment when their
+     * weight is created.
+     */
+    public void checkSegmentCancelled() {
+        if (checkSegmentCancelled != null) {
+            checkSegmentCancelled.run();
+        }
+        if (checkCancelled != null) {
+            checkCancelled.run();
+        }
+    }
+
+    /**
+     * Enables concurrent search of the leaves of this searcher: {@link #search(Query, CollectorManager)} partitions the leaves
+     * into at most <code>maxSliceCount</code> slices of at least <code>minDocsPerSlice</code> documents and searches them in
+     * parallel on the provided <code>executor</code>.
+     */
+    public void setSliceExecutor(Executor executor, int maxSliceCount, int minDocsPerSlice) {
+        this.sliceExecutor = executor;
+        this.leafSlices = slices(getIndexReader().leaves(), maxSliceCount, minDocsPerSlice);
+    }
+
+    /**
+     * Returns the number of leaf slices that {@link #search(Query, CollectorManager)} searches concurrently.
+     */
+    public int getSliceCount() {
+        return sliceExecutor == null ? 1 : leafSlices.size();
+    }
+
     public void setAggregatedDfs(AggregatedDfs aggregatedDfs) {
         this.aggregatedDfs = aggregatedDfs;
     }
@@ -177,6 +229,124 @@ public class ContextIndexSearcher extends IndexSearcher implements Releasable {
         super.search(leaves, cancellableWeight, collector);
     }
 
+    /**
+     * Collects the documents of a single leaf of this searcher that match the given query.
+     */
+    public void search(Query query, LeafReaderContext leaf, Collector collector) throws IOException {
+        final Weight weight = createWeight(rewrite(query), collector.scoreMode(), 1f);
+        search(Collections.singletonList(leaf), weight, collector);
+    }
+
+    /**
+     * Searches the leaf slices configured with {@link #setSliceExecutor} concurrently, one collector per slice. The slices
+     * are dispatched to the slice executor while the calling thread runs the slices that have not been picked up yet,
+     * so that a saturated executor degrades to a sequential search rather than blocking the caller.
+     */
+    @Override
+    public <C extends Collector, T> T search(Query query, CollectorManager<C, T> collectorManager) throws IOException {
+        if (getSliceCount() <= 1) {
+            return super.search(query, collectorManager);
+        }
+        final List<C> collectors = new ArrayList<>(leafSlices.size());
+        for (int i = 0; i < leafSlices.size(); i++) {
+            collectors.add(collectorManager.newCollector());
+        }
+        final ScoreMode scoreMode = collectors.get(0).scoreMode();
+        for (C collector : collectors) {
+            if (collector.scoreMode() != scoreMode) {
+                throw new IllegalStateException("CollectorManager does not always produce collectors with the same score mode");
+            }
+        }
+        final Weight weight = createWeight(rewrite(query), scoreMode, 1f);
+        final AtomicBoolean failed = new AtomicBoolean();
+        final List<FutureTask<C>> tasks = new ArrayList<>(leafSlices.size());
+        for (int i = 0; i < leafSlices.size(); i++) {
+            final List<LeafReaderContext> leaves = leafSlices.get(i);
+            final C collector = collectors.get(i);
+            tasks.add(new FutureTask<>(() -> {
+                // slices that have not started yet are skipped once another slice failed
+                if (failed.get() == false) {
+                    try {
+                        search(leaves, weight, collector);
+                    } catch (Exception e) {
+                        failed.set(true);
+                        throw e;
+                    }
+                }
+                return collector;
+            }));
+        }
+        // the first slice is always searched by the calling thread
+        for (FutureTask<C> task : tasks.subList(1, tasks.size())) {
+            try {
+                sliceExecutor.execute(task);
+            } catch (EsRejectedExecutionException e) {
+                // the slice is searched by the calling thread below
+            }
+        }
+        for (FutureTask<C> task : tasks) {
+            // no-op if the slice has already been picked up by the executor
+            task.run();
+        }
+        // wait for all slices, even on failure, so that no slice is still reading from the searcher when we return
+        Throwable failure = null;
+        for (FutureTask<C> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                throw new ThreadInterruptedException(e);
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            }
+        }
+        if (failure != null) {
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            throw new RuntimeException(failure);
+        }
+        return collectorManager.reduce(collectors);
+    }
+
+    /**
+     * Partitions the provided <code>leaves</code> into at most <code>maxSliceCount</code> slices of consecutive leaves
+     * holding at least <code>minDocsPerSlice</code> documents each (except for the last one). Slices preserve the leaf order
+     * so that hits from different slices can be tie-broken by slice index like they would be by doc id on a sequential search.
+     */
+    static List<List<LeafReaderContext>> slices(List<LeafReaderContext> leaves, int maxSliceCount, int minDocsPerSlice) {
+        long totalDocs = 0;
+        for (LeafReaderContext leaf : leaves) {
+            totalDocs += leaf.reader().maxDoc();
+        }
+        final long sliceCount = Math.min(Math.min(maxSliceCount, leaves.size()), totalDocs / Math.max(1, minDocsPerSlice));
+        if (sliceCount <= 1) {
+            return Collections.singletonList(leaves);
+        }
+        final long docsPerSlice = (totalDocs + sliceCount - 1) / sliceCount;
+        final List<List<LeafReaderContext>> slices = new ArrayList<>();
+        List<LeafReaderContext> slice = new ArrayList<>();
+        long sliceDocs = 0;
+        for (LeafReaderContext leaf : leaves) {
+            slice.add(leaf);
+            sliceDocs += leaf.reader().maxDoc();
+            if (sliceDocs >= docsPerSlice && slices.size() < sliceCount - 1) {
+                slices.add(slice);
+                slice = new ArrayList<>();
+                sliceDocs = 0;
+            }
+        }
+        if (slice.isEmpty() == false) {
+            slices.add(slice);
+        }
+        return slices;
+    }
+
     @Override
     public Explanation explain(Query query, int doc) throws IOException {
         if (aggregatedDfs != null) {
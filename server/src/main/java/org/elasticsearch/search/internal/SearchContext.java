@@ -34,10 +34,12 @@ import org.elasticsearch.common.util.concurrent.AbstractRefCounted;
 import org.elasticsearch.common.util.concurrent.RefCounted;
 import org.elasticsearch.common.util.iterable.Iterables;
 import org.elasticsearch.index.cache.bitset.BitsetFilterCache;
+import org.elasticsearch.index.cache.rollup.SegmentRollupCache;
 import org.elasticsearch.index.fielddata.IndexFieldData;
 import org.elasticsearch.index.mapper.MappedFieldType;
 import org.elasticsearch.index.mapper.MapperService;
 import org.elasticsearch.index.mapper.ObjectMapper;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeSpillCache;
 import org.elasticsearch.search.collapse.CollapseContext;
 import org.elasticsearch.index.query.ParsedQuery;
 import org.elasticsearch.index.query.QueryShardContext;
@@ -210,6 +212,10 @@ public abstract class SearchContext extends AbstractRefCounted implements Releas
 
     public abstract BitsetFilterCache bitsetFilterCache();
 
+    public abstract SegmentRollupCache segmentRollupCache();
+
+    public abstract CompositeSpillCache compositeSpillCache();
+
     public abstract <IFD extends IndexFieldData<?>> IFD getForField(MappedFieldType fieldType);
 
     public abstract TimeValue timeout();
@@ -339,9 +345,10 @@ public abstract class SearchContext extends AbstractRefCounted implements Releas
 
     /**
      * Schedule the release of a resource. The time when {@link Releasable#close()} will be called on this object
-     * is function of the provided {@link Lifetime}.
+     * is function of the provided {@link Lifetime}. Resources may be scheduled concurrently by the aggregators of the
+     * leaf slices of a concurrent search.
      */
-    public void addReleasable(Releasable releasable, Lifetime lifetime) {
+    public synchronized void addReleasable(Releasable releasable, Lifetime lifetime) {
         if (clearables == null) {
             clearables = new EnumMap<>(Lifetime.class);
         }
@@ -354,8 +361,11 @@ public abstract class SearchContext extends AbstractRefCounted implements Releas
     }
 
     public void clearReleasables(Lifetime lifetime) {
-        if (clearables != null) {
-            List<List<Releasable>>releasables = new ArrayList<>();
+        List<List<Releasable>>releasables = new ArrayList<>();
+        synchronized (this) {
+            if (clearables == null) {
+                return;
+            }
             for (Lifetime lc : Lifetime.values()) {
                 if (lc.compareTo(lifetime) > 0) {
                     break;
@@ -365,8 +375,8 @@ public abstract class SearchContext extends AbstractRefCounted implements Releas
                     releasables.add(remove);
                 }
             }
-            Releasables.close(Iterables.flatten(releasables));
         }
+        Releasables.close(Iterables.flatten(releasables));
     }
 
     /**
@@ -27,6 +27,7 @@ import org.apache.lucene.search.FilterLeafCollector;
 import org.apache.lucene.search.LeafCollector;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A {@link Collector} that early terminates collection after <code>maxCountHits</code> docs have been collected.
@@ -39,7 +40,7 @@ public class EarlyTerminatingCollector extends FilterCollector {
     }
 
     private final int maxCountHits;
-    private int numCollected;
+    private final AtomicInteger numCollected;
     private boolean forceTermination;
 
     /**
@@ -50,14 +51,28 @@ public class EarlyTerminatingCollector extends FilterCollector {
      *                         that is not caught by other {@link Collector} or with a {@link CollectionTerminatedException} otherwise.
      */
     EarlyTerminatingCollector(final Collector delegate, int maxCountHits, boolean forceTermination) {
+        this(delegate, new AtomicInteger(), maxCountHits, forceTermination);
+    }
+
+    /**
+     * Ctr
+     * @param delegate The delegated collector.
+     * @param numCollected The number of documents collected so far, shared by the collectors of all the leaf slices that are
+     *                     collected concurrently so that they collect <code>maxCountHits</code> documents in total.
+     * @param maxCountHits The number of documents to collect before termination.
+     * @param forceTermination Whether the collection should be terminated with an exception ({@link EarlyTerminationException})
+     *                         that is not caught by other {@link Collector} or with a {@link CollectionTerminatedException} otherwise.
+     */
+    EarlyTerminatingCollector(final Collector delegate, AtomicInteger numCollected, int maxCountHits, boolean forceTermination) {
         super(delegate);
+        this.numCollected = numCollected;
         this.maxCountHits = maxCountHits;
         this.forceTermination = forceTermination;
     }
 
     @Override
     public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
-        if (numCollected >= maxCountHits) {
+        if (numCollected.get() >= maxCountHits) {
             if (forceTermination) {
                 throw new EarlyTerminationException("early termination [CountBased]");
             } else {
@@ -67,7 +82,7 @@ public class EarlyTerminatingCollector extends FilterCollector {
         return new FilterLeafCollector(super.getLeafCollector(context)) {
             @Override
             public void collect(int doc) throws IOException {
-                if (++numCollected > maxCountHits) {
+                if (numCollected.incrementAndGet() > maxCountHits) {
                     if (forceTermination) {
                         throw new EarlyTerminationException("early termination [CountBased]");
                     } else {
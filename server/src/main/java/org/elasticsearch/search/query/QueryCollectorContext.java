@@ -20,6 +20,7 @@
 package org.elasticsearch.search.query;
 
 import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MultiCollector;
 import org.apache.lucene.search.Query;
@@ -27,14 +28,20 @@ import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.Weight;
 import org.elasticsearch.common.lucene.MinimumScoreCollector;
 import org.elasticsearch.common.lucene.search.FilteredCollector;
+import org.elasticsearch.search.aggregations.Aggregator;
+import org.elasticsearch.search.aggregations.BucketCollector;
+import org.elasticsearch.search.aggregations.MultiBucketCollector;
+import org.elasticsearch.search.aggregations.SearchContextAggregations;
 import org.elasticsearch.search.profile.query.InternalProfileCollector;
 import org.elasticsearch.tasks.TaskCancelledException;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BooleanSupplier;
 
 import static org.elasticsearch.search.profile.query.CollectorResult.REASON_SEARCH_CANCELLED;
@@ -56,6 +63,14 @@ abstract class QueryCollectorContext {
      */
     abstract Collector create(Collector in) throws IOException;
 
+    /**
+     * Returns true if {@link #create(Collector)} can be called once per leaf slice in order to collect the slices
+     * concurrently, the collectors of all slices being merged in {@link #postProcess(QuerySearchResult)}.
+     */
+    boolean supportsConcurrentCollection() {
+        return false;
+    }
+
     /**
      * Wraps this collector with a profiler
      */
@@ -83,6 +98,38 @@ abstract class QueryCollectorContext {
         return collector;
     }
 
+    /**
+     * Returns true if all the provided <code>collectors</code> support concurrent collection.
+     */
+    static boolean supportsConcurrentCollection(List<QueryCollectorContext> collectors) {
+        for (QueryCollectorContext ctx : collectors) {
+            if (ctx.supportsConcurrentCollection() == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a {@link CollectorManager} that builds a new collector tree from the provided <code>collectors</code>
+     * for each leaf slice. The results are merged when the collector contexts are post-processed.
+     * @param collectors Ordered list of collector context that all support concurrent collection
+     */
+    static CollectorManager<Collector, Void> createQueryCollectorManager(List<QueryCollectorContext> collectors) {
+        assert supportsConcurrentCollection(collectors);
+        return new CollectorManager<Collector, Void>() {
+            @Override
+            public Collector newCollector() throws IOException {
+                return createQueryCollector(collectors);
+            }
+
+            @Override
+            public Void reduce(Collection<Collector> collectors) {
+                return null;
+            }
+        };
+    }
+
     /**
      * Creates the collector tree from the provided <code>collectors</code> and wraps each collector with a profiler
      * @param collectors Ordered list of collector context
@@ -105,6 +152,11 @@ abstract class QueryCollectorContext {
             Collector create(Collector in) {
                 return new MinimumScoreCollector(in, minScore);
             }
+
+            @Override
+            boolean supportsConcurrentCollection() {
+                return true;
+            }
         };
     }
 
@@ -118,6 +170,11 @@ abstract class QueryCollectorContext {
                 final Weight filterWeight = searcher.createWeight(searcher.rewrite(query), ScoreMode.COMPLETE_NO_SCORES, 1f);
                 return new FilteredCollector(in, filterWeight);
             }
+
+            @Override
+            boolean supportsConcurrentCollection() {
+                return true;
+            }
         };
     }
 
@@ -150,6 +207,28 @@ abstract class QueryCollectorContext {
         };
     }
 
+    /**
+     * Creates a collector that collects the aggregations of each leaf slice with aggregators of its own, which are reduced to the
+     * aggregations of the shard once all slices are collected, see {@link SearchContextAggregations#sliceFactories()}.
+     */
+    static QueryCollectorContext createSliceAggregationsCollectorContext(SearchContextAggregations aggregations) {
+        return new QueryCollectorContext(REASON_SEARCH_MULTI) {
+            @Override
+            Collector create(Collector in) throws IOException {
+                final Aggregator[] aggregators = aggregations.sliceFactories().createTopLevelAggregators();
+                aggregations.addSliceAggregators(aggregators);
+                final BucketCollector collector = MultiBucketCollector.wrap(Arrays.asList(aggregators));
+                collector.preCollection();
+                return MultiCollector.wrap(in, collector);
+            }
+
+            @Override
+            boolean supportsConcurrentCollection() {
+                return true;
+            }
+        };
+    }
+
     /**
      * Creates a collector that throws {@link TaskCancelledException} if the search is cancelled
      */
@@ -159,21 +238,31 @@ abstract class QueryCollectorContext {
             Collector create(Collector in) throws IOException {
                 return new CancellableCollector(cancelled, in);
             }
+
+            @Override
+            boolean supportsConcurrentCollection() {
+                return true;
+            }
         };
     }
 
     /**
-     * Creates collector limiting the collection to the first <code>numHits</code> documents
+     * Creates collector limiting the collection to the first <code>numHits</code> documents. The collectors of all leaf slices
+     * share the same count so that they collect <code>numHits</code> documents in total, unless <code>collectInOrder</code>
+     * requires the first <code>numHits</code> documents in doc id order, which only a sequential collection returns.
      */
-    static QueryCollectorContext createEarlyTerminationCollectorContext(int numHits) {
+    static QueryCollectorContext createEarlyTerminationCollectorContext(int numHits, boolean collectInOrder) {
         return new QueryCollectorContext(REASON_SEARCH_TERMINATE_AFTER_COUNT) {
-            private EarlyTerminatingCollector collector;
+            private final AtomicInteger numCollected = new AtomicInteger();
 
             @Override
             Collector create(Collector in) throws IOException {
-                assert collector == null;
-                this.collector = new EarlyTerminatingCollector(in, numHits, true);
-                return collector;
+                return new EarlyTerminatingCollector(in, numCollected, numHits, true);
+            }
+
+            @Override
+            boolean supportsConcurrentCollection() {
+                return collectInOrder == false;
             }
         };
     }
@@ -67,6 +67,7 @@ import static org.elasticsearch.search.query.QueryCollectorContext.createEarlyTe
 import static org.elasticsearch.search.query.QueryCollectorContext.createFilteredCollectorContext;
 import static org.elasticsearch.search.query.QueryCollectorContext.createMinScoreCollectorContext;
 import static org.elasticsearch.search.query.QueryCollectorContext.createMultiCollectorContext;
+import static org.elasticsearch.search.query.QueryCollectorContext.createSliceAggregationsCollectorContext;
 import static org.elasticsearch.search.query.TopDocsCollectorContext.createTopDocsCollectorContext;
 
 
@@ -112,6 +113,12 @@ public class QueryPhase implements SearchPhase {
         // here to make sure it happens during the QUERY phase
         aggregationPhase.preProcess(searchContext);
         final ContextIndexSearcher searcher = searchContext.searcher();
+        final SearchTask task = searchContext.getTask();
+        searcher.setCheckSegmentCancelled(() -> {
+            if (task.isCancelled()) {
+                throw new TaskCancelledException("cancelled");
+            }
+        });
         boolean rescore = execute(searchContext, searchContext.searcher(), searcher::setCheckCancelled);
 
         if (rescore) { // only if we do a regular search
@@ -145,6 +152,8 @@ public class QueryPhase implements SearchPhase {
             assert query == searcher.rewrite(query); // already rewritten
 
             final ScrollContext scrollContext = searchContext.scrollContext();
+            // whether terminate_after must collect the first documents in doc id order
+            boolean terminateAfterInOrder = false;
             if (scrollContext != null) {
                 if (scrollContext.totalHits == null) {
                     // first round
@@ -166,6 +175,7 @@ public class QueryPhase implements SearchPhase {
                         }
                         // ... and stop collecting after ${size} matches
                         searchContext.terminateAfter(searchContext.size());
+                        terminateAfterInOrder = true;
                         searchContext.trackTotalHits(false);
                     } else if (canEarlyTerminate(reader, searchContext.sort())) {
                         // now this gets interesting: since the search sort is a prefix of the index sort, we can directly
@@ -188,7 +198,7 @@ public class QueryPhase implements SearchPhase {
             if (searchContext.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER) {
                 // add terminate_after before the filter collectors
                 // it will only be applied on documents accepted by these filter collectors
-                collectors.add(createEarlyTerminationCollectorContext(searchContext.terminateAfter()));
+                collectors.add(createEarlyTerminationCollectorContext(searchContext.terminateAfter(), terminateAfterInOrder));
                 // this collector can filter documents during the collection
                 hasFilterCollector = true;
             }
@@ -203,6 +213,10 @@ public class QueryPhase implements SearchPhase {
                 // plug in additional collectors, like aggregations
                 collectors.add(createMultiCollectorContext(searchContext.queryCollectors().values()));
             }
+            if (searchContext.aggregations() != null && searchContext.aggregations().sliceFactories() != null) {
+                // the aggregations of every leaf slice are collected by aggregators of their own
+                collectors.add(createSliceAggregationsCollectorContext(searchContext.aggregations()));
+            }
             if (searchContext.minimumScore() != null) {
                 // apply the minimum score after multi collector so we filter aggs as well
                 collectors.add(createMinScoreCollectorContext(searchContext.minimumScore()));
@@ -264,17 +278,30 @@ public class QueryPhase implements SearchPhase {
             // add the top docs collector, the first collector context in the chain
             collectors.addFirst(topDocsFactory);
 
+            // the leaf slices of the shard can be collected concurrently if no collector in the chain shares state across segments
+            final boolean searchConcurrently = doProfile == false
+                && searcher instanceof ContextIndexSearcher
+                && ((ContextIndexSearcher) searcher).getSliceCount() > 1
+                && QueryCollectorContext.supportsConcurrentCollection(collectors);
+
             final Collector queryCollector;
             if (doProfile) {
                 InternalProfileCollector profileCollector = QueryCollectorContext.createQueryCollectorWithProfiler(collectors);
                 searchContext.getProfilers().getCurrentQueryProfiler().setCollector(profileCollector);
                 queryCollector = profileCollector;
+            } else if (searchConcurrently) {
+                // one collector per leaf slice is created by the collector manager
+                queryCollector = null;
             } else {
                queryCollector = QueryCollectorContext.createQueryCollector(collectors);
             }
 
             try {
-                searcher.search(query, queryCollector);
+                if (searchConcurrently) {
+                    searcher.search(query, QueryCollectorContext.createQueryCollectorManager(collectors));
+                } else {
+                    searcher.search(query, queryCollector);
+                }
             } catch (EarlyTerminatingCollector.EarlyTerminationException e) {
                 queryResult.terminatedEarly(true);
             } catch (TimeExceededException e) {
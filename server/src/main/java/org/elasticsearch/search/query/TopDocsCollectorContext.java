@@ -35,6 +35,7 @@ import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopDocsCollector;
 import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopFieldDocs;
 import org.apache.lucene.search.TopScoreDocCollector;
 import org.apache.lucene.search.TotalHitCountCollector;
 import org.apache.lucene.search.TotalHits;
@@ -53,6 +54,8 @@ import org.elasticsearch.search.rescore.RescoreContext;
 import org.elasticsearch.search.sort.SortAndFormats;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.function.Supplier;
 
@@ -85,8 +88,9 @@ abstract class TopDocsCollectorContext extends QueryCollectorContext {
     }
 
     static class EmptyTopDocsCollectorContext extends TopDocsCollectorContext {
-        private final Collector collector;
-        private final Supplier<TotalHits> hitCountSupplier;
+        private final boolean trackTotalHits;
+        private final int hitCount;
+        private final List<TotalHitCountCollector> hitCountCollectors = new ArrayList<>();
 
         /**
          * Ctr
@@ -98,32 +102,43 @@ abstract class TopDocsCollectorContext extends QueryCollectorContext {
         private EmptyTopDocsCollectorContext(IndexReader reader, Query query,
                                              boolean trackTotalHits, boolean hasFilterCollector) throws IOException {
             super(REASON_SEARCH_COUNT, 0);
-            if (trackTotalHits) {
-                TotalHitCountCollector hitCountCollector = new TotalHitCountCollector();
-                // implicit total hit counts are valid only when there is no filter collector in the chain
-                int hitCount =  hasFilterCollector ? -1 : shortcutTotalHitCount(reader, query);
-                if (hitCount == -1) {
-                    this.collector = hitCountCollector;
-                    this.hitCountSupplier = () -> new TotalHits(hitCountCollector.getTotalHits(), TotalHits.Relation.EQUAL_TO);
-                } else {
-                    this.collector = new EarlyTerminatingCollector(hitCountCollector, 0, false);
-                    this.hitCountSupplier = () -> new TotalHits(hitCount, TotalHits.Relation.EQUAL_TO);
-                }
-            } else {
-                this.collector = new EarlyTerminatingCollector(new TotalHitCountCollector(), 0, false);
-                // for bwc hit count is set to 0, it will be converted to -1 by the coordinating node
-                this.hitCountSupplier = () -> new TotalHits(0, TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO);
-            }
+            this.trackTotalHits = trackTotalHits;
+            // implicit total hit counts are valid only when there is no filter collector in the chain
+            this.hitCount = trackTotalHits && hasFilterCollector == false ? shortcutTotalHitCount(reader, query) : -1;
         }
 
+        @Override
         Collector create(Collector in) {
             assert in == null;
-            return collector;
+            TotalHitCountCollector hitCountCollector = new TotalHitCountCollector();
+            if (trackTotalHits && hitCount == -1) {
+                hitCountCollectors.add(hitCountCollector);
+                return hitCountCollector;
+            } else {
+                return new EarlyTerminatingCollector(hitCountCollector, 0, false);
+            }
+        }
+
+        @Override
+        boolean supportsConcurrentCollection() {
+            return true;
         }
 
         @Override
         void postProcess(QuerySearchResult result) {
-            final TotalHits totalHitCount = hitCountSupplier.get();
+            final TotalHits totalHitCount;
+            if (trackTotalHits == false) {
+                // for bwc hit count is set to 0, it will be converted to -1 by the coordinating node
+                totalHitCount = new TotalHits(0, TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO);
+            } else if (hitCount == -1) {
+                long count = 0;
+                for (TotalHitCountCollector hitCountCollector : hitCountCollectors) {
+                    count += hitCountCollector.getTotalHits();
+                }
+                totalHitCount = new TotalHits(count, TotalHits.Relation.EQUAL_TO);
+            } else {
+                totalHitCount = new TotalHits(hitCount, TotalHits.Relation.EQUAL_TO);
+            }
             result.topDocs(new TopDocsAndMaxScore(new TopDocs(totalHitCount, Lucene.EMPTY_SCORE_DOCS), Float.NaN), null);
         }
     }
@@ -185,7 +200,11 @@ abstract class TopDocsCollectorContext extends QueryCollectorContext {
         }
 
         private final @Nullable SortAndFormats sortAndFormats;
-        private final Collector collector;
+        private final @Nullable ScoreDoc searchAfter;
+        private final int hitCountThreshold;
+        private final boolean trackMaxScore;
+        private final List<TopDocsCollector<?>> topDocsCollectors = new ArrayList<>();
+        private final List<MaxScoreCollector> maxScoreCollectors = new ArrayList<>();
         private final Supplier<TotalHits> totalHitsSupplier;
         private final Supplier<TopDocs> topDocsSupplier;
         private final Supplier<Float> maxScoreSupplier;
@@ -211,17 +230,17 @@ abstract class TopDocsCollectorContext extends QueryCollectorContext {
                                               boolean hasFilterCollector) throws IOException {
             super(REASON_SEARCH_TOP_HITS, numHits);
             this.sortAndFormats = sortAndFormats;
+            this.searchAfter = searchAfter;
+            this.trackMaxScore = trackMaxScore;
 
             // implicit total hit counts are valid only when there is no filter collector in the chain
             final int hitCount = hasFilterCollector ? -1 : shortcutTotalHitCount(reader, query);
-            final TopDocsCollector<?> topDocsCollector;
+            topDocsSupplier = new CachedSupplier<>(this::mergeTopDocs);
             if (hitCount == -1 && trackTotalHits) {
-                topDocsCollector = createCollector(sortAndFormats, numHits, searchAfter, Integer.MAX_VALUE);
-                topDocsSupplier = new CachedSupplier<>(topDocsCollector::topDocs);
+                hitCountThreshold = Integer.MAX_VALUE;
                 totalHitsSupplier = () -> topDocsSupplier.get().totalHits;
             } else {
-                topDocsCollector = createCollector(sortAndFormats, numHits, searchAfter, 1); // don't compute hit counts via the collector
-                topDocsSupplier = new CachedSupplier<>(topDocsCollector::topDocs);
+                hitCountThreshold = 1; // don't compute hit counts via the collector
                 if (hitCount == -1) {
                     assert trackTotalHits == false;
                     totalHitsSupplier = () -> new TotalHits(0, TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO);
@@ -229,7 +248,6 @@ abstract class TopDocsCollectorContext extends QueryCollectorContext {
                     totalHitsSupplier = () -> new TotalHits(hitCount, TotalHits.Relation.EQUAL_TO);
                 }
             }
-            MaxScoreCollector maxScoreCollector = null;
             if (sortAndFormats == null) {
                 maxScoreSupplier = () -> {
                     TopDocs topDocs = topDocsSupplier.get();
@@ -240,18 +258,68 @@ abstract class TopDocsCollectorContext extends QueryCollectorContext {
                     }
                 };
             } else if (trackMaxScore) {
-                maxScoreCollector = new MaxScoreCollector();
-                maxScoreSupplier = maxScoreCollector::getMaxScore;
+                maxScoreSupplier = () -> {
+                    float maxScore = Float.NaN;
+                    for (MaxScoreCollector maxScoreCollector : maxScoreCollectors) {
+                        float score = maxScoreCollector.getMaxScore();
+                        if (Float.isNaN(maxScore) || score > maxScore) {
+                            maxScore = score;
+                        }
+                    }
+                    return maxScore;
+                };
             } else {
                 maxScoreSupplier = () -> Float.NaN;
             }
-            this.collector = MultiCollector.wrap(topDocsCollector, maxScoreCollector);
         }
 
         @Override
         Collector create(Collector in) {
             assert in == null;
-            return collector;
+            final TopDocsCollector<?> topDocsCollector = createCollector(sortAndFormats, numHits, searchAfter, hitCountThreshold);
+            topDocsCollectors.add(topDocsCollector);
+            MaxScoreCollector maxScoreCollector = null;
+            if (sortAndFormats != null && trackMaxScore) {
+                maxScoreCollector = new MaxScoreCollector();
+                maxScoreCollectors.add(maxScoreCollector);
+            }
+            return MultiCollector.wrap(topDocsCollector, maxScoreCollector);
+        }
+
+        @Override
+        boolean supportsConcurrentCollection() {
+            return true;
+        }
+
+        /**
+         * Merges the top docs of the collectors created for each leaf slice. Slices are created in index order so
+         * ties are broken on the slice index and then on the rank within the slice, which is equivalent to the doc id
+         * tie-break of a sequential collection.
+         */
+        private TopDocs mergeTopDocs() {
+            assert topDocsCollectors.isEmpty() == false;
+            if (topDocsCollectors.size() == 1) {
+                return topDocsCollectors.get(0).topDocs();
+            }
+            final TopDocs merged;
+            if (sortAndFormats == null) {
+                final TopDocs[] sliceTopDocs = new TopDocs[topDocsCollectors.size()];
+                for (int i = 0; i < sliceTopDocs.length; i++) {
+                    sliceTopDocs[i] = topDocsCollectors.get(i).topDocs();
+                }
+                merged = TopDocs.merge(0, numHits, sliceTopDocs, true);
+            } else {
+                final TopFieldDocs[] sliceTopDocs = new TopFieldDocs[topDocsCollectors.size()];
+                for (int i = 0; i < sliceTopDocs.length; i++) {
+                    sliceTopDocs[i] = (TopFieldDocs) topDocsCollectors.get(i).topDocs();
+                }
+                merged = TopDocs.merge(sortAndFormats.sort, 0, numHits, sliceTopDocs, true);
+            }
+            // the shard index is set by the coordinating node
+            for (ScoreDoc scoreDoc : merged.scoreDocs) {
+                scoreDoc.shardIndex = -1;
+            }
+            return merged;
         }
 
         @Override
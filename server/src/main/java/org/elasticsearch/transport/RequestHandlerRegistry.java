@@ -32,6 +32,7 @@ public class RequestHandlerRegistry<Request extends TransportRequest> {
     private final TransportRequestHandler<Request> handler;
     private final boolean forceExecution;
     private final boolean canTripCircuitBreaker;
+    private final boolean sliceMessageBytes;
     private final String executor;
     private final TaskManager taskManager;
     private final Writeable.Reader<Request> requestReader;
@@ -39,11 +40,18 @@ public class RequestHandlerRegistry<Request extends TransportRequest> {
     public RequestHandlerRegistry(String action, Writeable.Reader<Request> requestReader, TaskManager taskManager,
                                   TransportRequestHandler<Request> handler, String executor, boolean forceExecution,
                                   boolean canTripCircuitBreaker) {
+        this(action, requestReader, taskManager, handler, executor, forceExecution, canTripCircuitBreaker, false);
+    }
+
+    public RequestHandlerRegistry(String action, Writeable.Reader<Request> requestReader, TaskManager taskManager,
+                                  TransportRequestHandler<Request> handler, String executor, boolean forceExecution,
+                                  boolean canTripCircuitBreaker, boolean sliceMessageBytes) {
         this.action = action;
         this.requestReader = requestReader;
         this.handler = handler;
         this.forceExecution = forceExecution;
         this.canTripCircuitBreaker = canTripCircuitBreaker;
+        this.sliceMessageBytes = sliceMessageBytes;
         this.executor = executor;
         this.taskManager = taskManager;
     }
@@ -77,6 +85,14 @@ public class RequestHandlerRegistry<Request extends TransportRequest> {
         return canTripCircuitBreaker;
     }
 
+    /**
+     * Returns {@code true} if the bytes references of requests should be read as slices of a single copy of the message rather than
+     * copied one by one, see {@link org.elasticsearch.common.bytes.BytesReference#slicingStreamInput()}.
+     */
+    public boolean sliceMessageBytes() {
+        return sliceMessageBytes;
+    }
+
     public String getExecutor() {
         return executor;
     }
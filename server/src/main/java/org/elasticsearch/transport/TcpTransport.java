@@ -23,6 +23,7 @@ import com.carrotsearch.hppc.IntSet;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.lucene.util.ArrayUtil;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.Version;
 import org.elasticsearch.action.ActionListener;
@@ -37,6 +38,7 @@ import org.elasticsearch.common.bytes.CompositeBytesReference;
 import org.elasticsearch.common.collect.MapBuilder;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
 import org.elasticsearch.common.component.Lifecycle;
+import org.elasticsearch.common.compress.CompressionScheme;
 import org.elasticsearch.common.compress.Compressor;
 import org.elasticsearch.common.compress.CompressorFactory;
 import org.elasticsearch.common.compress.NotCompressedException;
@@ -142,6 +144,7 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
     // connections while no connect operations is going on
     private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
     private final boolean compressAllResponses;
+    private final CompressionScheme compressionScheme;
     private volatile BoundTransportAddress boundAddress;
     private final String transportName;
 
@@ -167,6 +170,7 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
         this.circuitBreakerService = circuitBreakerService;
         this.namedWriteableRegistry = namedWriteableRegistry;
         this.compressAllResponses = TransportSettings.TRANSPORT_COMPRESS.get(settings);
+        this.compressionScheme = TransportSettings.TRANSPORT_COMPRESSION_SCHEME.get(settings);
         this.networkService = networkService;
         this.transportName = transportName;
         this.transportLogger = new TransportLogger();
@@ -718,18 +722,19 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
 
         status = TransportStatus.setRequest(status);
         ReleasableBytesStreamOutput bStream = new ReleasableBytesStreamOutput(bigArrays);
-        final CompressibleBytesOutputStream stream = new CompressibleBytesOutputStream(bStream, compressMessage);
+        // we pick the smallest of the 2, to support both backward and forward compatibility
+        // note, this is the only place we need to do this, since from here on, we use the serialized version
+        // as the version to use also when the node receiving this request will send the response with
+        final Version version = Version.min(this.version, channelVersion);
+        // the version of the channel is negotiated by the handshake, so it tells whether the other node can read our compression scheme
+        final CompressibleBytesOutputStream stream =
+            new CompressibleBytesOutputStream(bStream, compressMessage, compressionScheme.compressor(version));
         boolean addedReleaseListener = false;
         try {
             if (compressMessage) {
                 status = TransportStatus.setCompress(status);
             }
 
-            // we pick the smallest of the 2, to support both backward and forward compatibility
-            // note, this is the only place we need to do this, since from here on, we use the serialized version
-            // as the version to use also when the node receiving this request will send the response with
-            Version version = Version.min(this.version, channelVersion);
-
             stream.setVersion(version);
             threadPool.getThreadContext().writeTo(stream);
             if (version.onOrAfter(Version.V_6_3_0)) {
@@ -830,7 +835,8 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
 
         status = TransportStatus.setResponse(status);
         ReleasableBytesStreamOutput bStream = new ReleasableBytesStreamOutput(bigArrays);
-        CompressibleBytesOutputStream stream = new CompressibleBytesOutputStream(bStream, compressMessage);
+        CompressibleBytesOutputStream stream =
+            new CompressibleBytesOutputStream(bStream, compressMessage, compressionScheme.compressor(nodeVersion));
         boolean addedReleaseListener = false;
         try {
             if (compressMessage) {
@@ -1126,7 +1132,7 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
                     if (TransportStatus.isError(status)) {
                         handlerResponseError(streamIn, handler);
                     } else {
-                        handleResponse(remoteAddress, streamIn, handler);
+                        handleResponse(remoteAddress, streamIn, messageLengthBytes, handler);
                     }
                     // Check the entire message has been read
                     final int nextByte = streamIn.read();
@@ -1161,11 +1167,12 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
     }
 
     private <T extends TransportResponse> void handleResponse(InetSocketAddress remoteAddress, final StreamInput stream,
-                                                              final TransportResponseHandler<T> handler) {
+                                                              int messageLengthBytes, final TransportResponseHandler<T> handler) {
         final T response;
         try {
             response = handler.read(stream);
             response.remoteAddress(new TransportAddress(remoteAddress));
+            response.messageSize(messageLengthBytes);
         } catch (Exception e) {
             handleException(handler, new TransportSerializationException(
                 "Failed to deserialize response from handler [" + handler.getClass().getName() + "]", e));
@@ -1239,10 +1246,11 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
                 }
                 transportChannel = new TcpTransportChannel(this, channel, transportName, action, requestId, version, features, profileName,
                     messageLengthBytes, TransportStatus.isCompress(status));
-                final TransportRequest request = reg.newRequest(stream);
+                final StreamInput requestStream = reg.sliceMessageBytes() ? copyForSlicing(stream, messageLengthBytes) : stream;
+                final TransportRequest request = reg.newRequest(requestStream);
                 request.remoteAddress(new TransportAddress(remoteAddress));
                 // in case we throw an exception, i.e. when the limit is hit, we don't want to verify
-                validateRequest(stream, requestId, action);
+                validateRequest(requestStream, requestId, action);
                 threadPool.executor(reg.getExecutor()).execute(new RequestHandler(reg, request, transportChannel));
             }
         } catch (Exception e) {
@@ -1261,6 +1269,27 @@ public abstract class TcpTransport extends AbstractLifecycleComponent implements
         return action;
     }
 
+    /**
+     * Copies the rest of the message into a single buffer that the request owns, so that its bytes references can be read as slices of
+     * the buffer rather than copied one by one while the message is released once it is handled.
+     */
+    private StreamInput copyForSlicing(StreamInput stream, int messageLengthBytes) throws IOException {
+        // the rest of an uncompressed message fits in its length, only compressed messages need to grow the buffer
+        byte[] bytes = new byte[messageLengthBytes];
+        int length = 0;
+        int read;
+        while ((read = stream.read(bytes, length, bytes.length - length)) != -1) {
+            length += read;
+            if (length == bytes.length) {
+                bytes = ArrayUtil.grow(bytes, length + 1);
+            }
+        }
+        final BytesReference message = new BytesArray(bytes, 0, length);
+        final StreamInput copy = new NamedWriteableAwareStreamInput(message.slicingStreamInput(), namedWriteableRegistry);
+        copy.setVersion(stream.getVersion());
+        return copy;
+    }
+
     // This template method is needed to inject custom error checking logic in tests.
     protected void validateRequest(StreamInput stream, long requestId, String action) throws IOException {
         final int nextByte = stream.read();
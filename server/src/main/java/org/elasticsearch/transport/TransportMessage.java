@@ -30,6 +30,7 @@ import java.io.IOException;
 public abstract class TransportMessage implements Streamable, Writeable {
 
     private TransportAddress remoteAddress;
+    private int messageSize = -1;
 
     public void remoteAddress(TransportAddress remoteAddress) {
         this.remoteAddress = remoteAddress;
@@ -39,6 +40,21 @@ public abstract class TransportMessage implements Streamable, Writeable {
         return remoteAddress;
     }
 
+    /**
+     * Sets the size in bytes of the transport message that this message was read from.
+     */
+    public void messageSize(int messageSize) {
+        this.messageSize = messageSize;
+    }
+
+    /**
+     * Returns the size in bytes of the transport message that this message was read from, or <code>-1</code> if it was not
+     * received from the network.
+     */
+    public int messageSize() {
+        return messageSize;
+    }
+
     /**
      * Constructs a new empty transport message
      */
@@ -826,10 +826,28 @@ public class TransportService extends AbstractLifecycleComponent implements Tran
                                                                           String executor, boolean forceExecution,
                                                                           boolean canTripCircuitBreaker,
                                                                           TransportRequestHandler<Request> handler) {
+        registerRequestHandler(action, request, executor, forceExecution, canTripCircuitBreaker, false, handler);
+    }
+
+    /**
+     * Registers a new request handler
+     *
+     * @param action                The action the request handler is associated with
+     * @param request               The request class that will be used to construct new instances for streaming
+     * @param executor              The executor the request handling will be executed on
+     * @param forceExecution        Force execution on the executor queue and never reject it
+     * @param canTripCircuitBreaker Check the request size and raise an exception in case the limit is breached.
+     * @param sliceMessageBytes     Copy the message once and read the bytes references of the request as slices of the copy
+     * @param handler               The handler itself that implements the request handling
+     */
+    public <Request extends TransportRequest> void registerRequestHandler(String action, Supplier<Request> request,
+                                                                          String executor, boolean forceExecution,
+                                                                          boolean canTripCircuitBreaker, boolean sliceMessageBytes,
+                                                                          TransportRequestHandler<Request> handler) {
         validateActionName(action);
         handler = interceptor.interceptHandler(action, executor, forceExecution, handler);
-        RequestHandlerRegistry<Request> reg = new RequestHandlerRegistry<>(
-            action, Streamable.newWriteableReader(request), taskManager, handler, executor, forceExecution, canTripCircuitBreaker);
+        RequestHandlerRegistry<Request> reg = new RequestHandlerRegistry<>(action, Streamable.newWriteableReader(request), taskManager,
+            handler, executor, forceExecution, canTripCircuitBreaker, sliceMessageBytes);
         transport.registerRequestHandler(reg);
     }
 
@@ -128,6 +128,42 @@ public class BulkRequestModifierTests extends ESTestCase {
         }
     }
 
+    public void testMarkItemsAfterIteration() {
+        BulkRequest originalBulkRequest = new BulkRequest();
+        for (int i = 0; i < 32; i++) {
+            originalBulkRequest.add(new IndexRequest("index", "type", String.valueOf(i)));
+        }
+
+        TransportBulkAction.BulkRequestModifier modifier = new TransportBulkAction.BulkRequestModifier(originalBulkRequest);
+        List<IndexRequest> indexRequests = new ArrayList<>();
+        while (modifier.hasNext()) {
+            indexRequests.add((IndexRequest) modifier.next());
+        }
+        // items of pipelines that were executed concurrently are marked in order once the iteration is done
+        for (int i = 0; i < indexRequests.size(); i++) {
+            if (i % 3 == 0) {
+                modifier.markItemAsFailed(indexRequests.get(i), new RuntimeException());
+            } else if (i % 3 == 1) {
+                modifier.markItemAsDropped(indexRequests.get(i));
+            }
+        }
+
+        BulkRequest bulkRequest = modifier.getBulkRequest();
+        assertThat(bulkRequest.requests().size(), Matchers.equalTo(10));
+        for (DocWriteRequest<?> request : bulkRequest.requests()) {
+            assertThat(Integer.parseInt(request.id()) % 3, Matchers.equalTo(2));
+        }
+        assertThat(modifier.itemResponses.size(), Matchers.equalTo(22));
+        for (int i = 0; i < modifier.itemResponses.size(); i++) {
+            BulkItemResponse response = modifier.itemResponses.get(i);
+            int slot = (i / 2) * 3 + i % 2;
+            assertThat(response.getItemId(), Matchers.equalTo(slot));
+            assertThat(response.isFailed(), is(slot % 3 == 0));
+        }
+        expectThrows(IllegalArgumentException.class,
+            () -> modifier.markItemAsFailed(new IndexRequest("index", "type", "0"), new RuntimeException()));
+    }
+
     public void testNoFailures() {
         BulkRequest originalBulkRequest = new BulkRequest();
         for (int i = 0; i < 32; i++) {
@@ -0,0 +1,195 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.bulk;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
+import org.elasticsearch.action.support.replication.ReplicationResponse;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.threadpool.TestThreadPool;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.After;
+import org.junit.Before;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.elasticsearch.test.ClusterServiceUtils.createClusterService;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class BulkShardRequestCoalescerTests extends ESTestCase {
+
+    private ThreadPool threadPool;
+    private ClusterService clusterService;
+    private List<Tuple<BulkShardRequest, ActionListener<BulkShardResponse>>> sent;
+    private BulkShardRequestCoalescer coalescer;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        threadPool = new TestThreadPool("BulkShardRequestCoalescerTests");
+        clusterService = createClusterService(threadPool);
+        sent = new CopyOnWriteArrayList<>();
+        coalescer = new BulkShardRequestCoalescer(clusterService, threadPool,
+            (request, listener) -> sent.add(new Tuple<>(request, listener)));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ThreadPool.terminate(threadPool, 30, TimeUnit.SECONDS);
+        threadPool = null;
+        clusterService.close();
+        super.tearDown();
+    }
+
+    public void testDisabledByDefault() {
+        BulkShardRequest first = shardRequest(0, RefreshPolicy.NONE, 0);
+        BulkShardRequest second = shardRequest(0, RefreshPolicy.NONE, 1);
+        coalescer.execute(first, new PlainActionFuture<>());
+        coalescer.execute(second, new PlainActionFuture<>());
+        assertThat(sent.size(), equalTo(2));
+        assertThat(sent.get(0).v1(), sameInstance(first));
+        assertThat(sent.get(1).v1(), sameInstance(second));
+        assertThat(coalescer.activeShards(), equalTo(0));
+    }
+
+    public void testMergesRequestsWhileShardRequestIsInFlight() throws Exception {
+        applySettings("1h", 4);
+        BulkShardRequest first = shardRequest(0, RefreshPolicy.NONE, 7);
+        PlainActionFuture<BulkShardResponse> firstFuture = new PlainActionFuture<>();
+        coalescer.execute(first, firstFuture);
+        // the first request for the shard is not delayed
+        assertThat(sent.size(), equalTo(1));
+        assertThat(sent.get(0).v1(), sameInstance(first));
+
+        PlainActionFuture<BulkShardResponse> secondFuture = new PlainActionFuture<>();
+        coalescer.execute(shardRequest(0, RefreshPolicy.NONE, 3, 5), secondFuture);
+        PlainActionFuture<BulkShardResponse> otherShardFuture = new PlainActionFuture<>();
+        coalescer.execute(shardRequest(1, RefreshPolicy.NONE, 0), otherShardFuture);
+        assertThat(sent.size(), equalTo(2));
+        assertThat(sent.get(1).v1().shardId().id(), equalTo(1));
+
+        PlainActionFuture<BulkShardResponse> thirdFuture = new PlainActionFuture<>();
+        coalescer.execute(shardRequest(0, RefreshPolicy.NONE, 1, 2), thirdFuture);
+        // the batch is sent once it reaches the maximum number of items
+        assertThat(sent.size(), equalTo(3));
+        BulkShardRequest merged = sent.get(2).v1();
+        assertThat(merged.items().length, equalTo(4));
+        for (int i = 0; i < merged.items().length; i++) {
+            assertThat(merged.items()[i].id(), equalTo(i));
+        }
+        assertThat(merged.items()[3].request().id(), equalTo("2"));
+
+        ReplicationResponse.ShardInfo shardInfo = new ReplicationResponse.ShardInfo(2, 2);
+        BulkShardResponse mergedResponse = new BulkShardResponse(merged.shardId(), new BulkItemResponse[] {
+            itemResponse(merged.shardId(), 0, "3"),
+            itemResponse(merged.shardId(), 1, "5"),
+            new BulkItemResponse(2, DocWriteRequest.OpType.INDEX,
+                new BulkItemResponse.Failure("index", "_doc", "1", new IllegalArgumentException("boom"))),
+            itemResponse(merged.shardId(), 3, "2")
+        });
+        mergedResponse.setShardInfo(shardInfo);
+        sent.get(2).v2().onResponse(mergedResponse);
+
+        BulkShardResponse second = secondFuture.get();
+        assertThat(second.getResponses().length, equalTo(2));
+        assertThat(second.getResponses()[0].getItemId(), equalTo(3));
+        assertThat(second.getResponses()[0].getId(), equalTo("3"));
+        assertThat(second.getResponses()[1].getItemId(), equalTo(5));
+        assertThat(second.getShardInfo(), sameInstance(shardInfo));
+        BulkShardResponse third = thirdFuture.get();
+        assertThat(third.getResponses()[0].getItemId(), equalTo(1));
+        assertThat(third.getResponses()[0].isFailed(), equalTo(true));
+        assertThat(third.getResponses()[0].getFailure().getCause().getMessage(), equalTo("boom"));
+        assertThat(third.getResponses()[1].getItemId(), equalTo(2));
+        assertThat(third.getResponses()[1].getId(), equalTo("2"));
+
+        assertThat(firstFuture.isDone(), equalTo(false));
+        sent.get(0).v2().onFailure(new IllegalStateException("failed"));
+        sent.get(1).v2().onFailure(new IllegalStateException("failed"));
+        expectThrows(Exception.class, firstFuture::actionGet);
+        assertThat(coalescer.activeShards(), equalTo(0));
+    }
+
+    public void testSendsBatchAfterWindow() throws Exception {
+        applySettings("10ms", 1000);
+        coalescer.execute(shardRequest(0, RefreshPolicy.NONE, 0), new PlainActionFuture<>());
+        BulkShardRequest second = shardRequest(0, RefreshPolicy.NONE, 1);
+        PlainActionFuture<BulkShardResponse> secondFuture = new PlainActionFuture<>();
+        coalescer.execute(second, secondFuture);
+        assertBusy(() -> assertThat(sent.size(), equalTo(2)));
+        // a batch of a single request sends that request as is
+        assertThat(sent.get(1).v1(), sameInstance(second));
+
+        sent.get(1).v2().onFailure(new IllegalStateException("failed"));
+        assertThat(expectThrows(IllegalStateException.class, secondFuture::actionGet).getMessage(), equalTo("failed"));
+        sent.get(0).v2().onResponse(new BulkShardResponse(new ShardId("index", "_na_", 0), new BulkItemResponse[0]));
+        assertThat(coalescer.activeShards(), equalTo(0));
+    }
+
+    public void testOnlyMergesRequestsWithSameParameters() {
+        applySettings("1h", 3);
+        coalescer.execute(shardRequest(0, RefreshPolicy.NONE, 0), new PlainActionFuture<>());
+        coalescer.execute(shardRequest(0, RefreshPolicy.NONE, 1), new PlainActionFuture<>());
+        coalescer.execute(shardRequest(0, RefreshPolicy.WAIT_UNTIL, 2), new PlainActionFuture<>());
+        ThreadContext threadContext = threadPool.getThreadContext();
+        try (ThreadContext.StoredContext ignore = threadContext.stashContext()) {
+            threadContext.putHeader("user", "other");
+            coalescer.execute(shardRequest(0, RefreshPolicy.NONE, 3), new PlainActionFuture<>());
+        }
+        // requests with another refresh policy or other headers are not held back by the ones in flight
+        assertThat(sent.size(), equalTo(3));
+        coalescer.execute(shardRequest(0, RefreshPolicy.NONE, 4, 5), new PlainActionFuture<>());
+        assertThat(sent.size(), equalTo(4));
+        assertThat(sent.get(3).v1().items().length, equalTo(3));
+        assertThat(sent.get(3).v1().getRefreshPolicy(), equalTo(RefreshPolicy.NONE));
+    }
+
+    private void applySettings(String window, int maxItems) {
+        clusterService.getClusterSettings().applySettings(Settings.builder()
+            .put(BulkShardRequestCoalescer.WINDOW_SETTING.getKey(), window)
+            .put(BulkShardRequestCoalescer.MAX_ITEMS_SETTING.getKey(), maxItems)
+            .build());
+    }
+
+    private static BulkShardRequest shardRequest(int shard, RefreshPolicy refreshPolicy, int... itemIds) {
+        BulkItemRequest[] items = new BulkItemRequest[itemIds.length];
+        for (int i = 0; i < itemIds.length; i++) {
+            IndexRequest request = new IndexRequest("index", "_doc", Integer.toString(itemIds[i])).source("field", "value");
+            items[i] = new BulkItemRequest(itemIds[i], request);
+        }
+        return new BulkShardRequest(new ShardId("index", "_na_", shard), refreshPolicy, items);
+    }
+
+    private static BulkItemResponse itemResponse(ShardId shardId, int itemId, String id) {
+        return new BulkItemResponse(itemId, DocWriteRequest.OpType.INDEX, new IndexResponse(shardId, "_doc", id, 1, 1, 1, true));
+    }
+}
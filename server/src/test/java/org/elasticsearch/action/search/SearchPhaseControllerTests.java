@@ -29,12 +29,17 @@ import org.apache.lucene.search.TotalHits;
 import org.apache.lucene.search.TotalHits.Relation;
 import org.apache.lucene.search.grouping.CollapseTopFieldDocs;
 import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
 import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.common.lucene.search.TopDocsAndMaxScore;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.text.Text;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.common.util.concurrent.AtomicArray;
 import org.elasticsearch.index.Index;
+import org.elasticsearch.indices.breaker.HierarchyCircuitBreakerService;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
@@ -65,6 +70,7 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.not;
@@ -459,6 +465,128 @@ public class SearchPhaseControllerTests extends ESTestCase {
         assertNull(reduce.sortedTopDocs.collapseValues);
     }
 
+    public void testConsumerAccountsAggsOnRequestBreaker() {
+        CircuitBreaker breaker = newRequestBreaker("100mb");
+        int expectedNumResults = randomIntBetween(3, 100);
+        int bufferSize = randomIntBetween(2, expectedNumResults - 1);
+        SearchPhaseController.QueryPhaseResultConsumer consumer = new SearchPhaseController.QueryPhaseResultConsumer(
+            searchPhaseController, expectedNumResults, bufferSize, false, true, breaker, Long.MAX_VALUE);
+        int max = 0;
+        for (int i = 0; i < expectedNumResults; i++) {
+            int number = randomIntBetween(1, 1000);
+            max = Math.max(max, number);
+            consumer.consumeResult(newAggsOnlyResult(i, number));
+            assertThat(consumer.getAccountedBytes(), greaterThan(0L));
+            assertEquals(consumer.getAccountedBytes(), breaker.getUsed());
+        }
+        SearchPhaseController.ReducedQueryPhase reduce = consumer.reduce();
+        InternalMax internalMax = (InternalMax) reduce.aggregations.asList().get(0);
+        assertEquals(max, internalMax.getValue(), 0.0D);
+        assertEquals(0, consumer.getAccountedBytes());
+        assertEquals(0, breaker.getUsed());
+    }
+
+    public void testConsumerEagerlyReducesLargeAggs() {
+        CircuitBreaker breaker = newRequestBreaker("100mb");
+        int expectedNumResults = randomIntBetween(3, 100);
+        SearchPhaseController.QueryPhaseResultConsumer consumer = new SearchPhaseController.QueryPhaseResultConsumer(
+            searchPhaseController, expectedNumResults, expectedNumResults - 1, false, true, breaker, 1);
+        int max = 0;
+        for (int i = 0; i < expectedNumResults; i++) {
+            int number = randomIntBetween(1, 1000);
+            max = Math.max(max, number);
+            consumer.consumeResult(newAggsOnlyResult(i, number));
+            // all results have the same size and the reduced result is accounted with the size of all results it replaces, so
+            // the buffered results are reduced as soon as they are as large as all previous results
+            final int numReducePhases = 31 - Integer.numberOfLeadingZeros(i + 1);
+            assertEquals(numReducePhases, consumer.getNumReducePhases());
+            assertEquals(i + 2 - (1 << numReducePhases), consumer.getNumBuffered());
+            assertEquals(consumer.getAccountedBytes(), breaker.getUsed());
+        }
+        SearchPhaseController.ReducedQueryPhase reduce = consumer.reduce();
+        assertEquals(32 - Integer.numberOfLeadingZeros(expectedNumResults), reduce.numReducePhases);
+        InternalMax internalMax = (InternalMax) reduce.aggregations.asList().get(0);
+        assertEquals(max, internalMax.getValue(), 0.0D);
+        assertEquals(0, breaker.getUsed());
+    }
+
+    public void testConsumerBreaksOnLargeAggs() {
+        CircuitBreaker breaker = newRequestBreaker("10b");
+        int expectedNumResults = randomIntBetween(3, 100);
+        int bufferSize = randomIntBetween(2, expectedNumResults - 1);
+        SearchPhaseController.QueryPhaseResultConsumer consumer = new SearchPhaseController.QueryPhaseResultConsumer(
+            searchPhaseController, expectedNumResults, bufferSize, false, true, breaker, Long.MAX_VALUE);
+        // the result that trips the breaker fails the search right away
+        expectThrows(CircuitBreakingException.class, () -> consumer.consumeResult(newAggsOnlyResult(0, randomIntBetween(1, 1000))));
+        assertEquals(0, breaker.getUsed());
+        for (int i = 1; i < expectedNumResults; i++) {
+            // all later results are dropped
+            consumer.consumeResult(newAggsOnlyResult(i, randomIntBetween(1, 1000)));
+            assertEquals(0, breaker.getUsed());
+        }
+        expectThrows(CircuitBreakingException.class, consumer::reduce);
+        consumer.close();
+        assertEquals(0, breaker.getUsed());
+        assertEquals(1, breaker.getTrippedCount());
+    }
+
+    public void testConsumerAccountsTransportMessageSize() {
+        CircuitBreaker breaker = newRequestBreaker("100mb");
+        int expectedNumResults = randomIntBetween(3, 100);
+        int bufferSize = randomIntBetween(2, expectedNumResults - 1);
+        SearchPhaseController.QueryPhaseResultConsumer consumer = new SearchPhaseController.QueryPhaseResultConsumer(
+            searchPhaseController, expectedNumResults, bufferSize, false, true, breaker, Long.MAX_VALUE);
+        QuerySearchResult result = newAggsOnlyResult(0, randomIntBetween(1, 1000));
+        // the result of a remote shard is accounted with the size of the message it was read from
+        final int messageSize = randomIntBetween(1, 1 << 20);
+        result.messageSize(messageSize);
+        consumer.consumeResult(result);
+        assertEquals(messageSize, consumer.getAccountedBytes());
+        assertEquals(messageSize, breaker.getUsed());
+        consumer.close();
+        assertEquals(0, breaker.getUsed());
+    }
+
+    public void testConsumerReleasesBreakerOnClose() {
+        CircuitBreaker breaker = newRequestBreaker("100mb");
+        int expectedNumResults = randomIntBetween(3, 100);
+        int bufferSize = randomIntBetween(2, expectedNumResults - 1);
+        SearchPhaseController.QueryPhaseResultConsumer consumer = new SearchPhaseController.QueryPhaseResultConsumer(
+            searchPhaseController, expectedNumResults, bufferSize, false, true, breaker, randomLongBetween(1, Long.MAX_VALUE));
+        int numResults = randomIntBetween(1, expectedNumResults - 1);
+        for (int i = 0; i < numResults; i++) {
+            consumer.consumeResult(newAggsOnlyResult(i, randomIntBetween(1, 1000)));
+        }
+        assertThat(breaker.getUsed(), greaterThan(0L));
+        consumer.close();
+        assertEquals(0, breaker.getUsed());
+        // results that arrive after the search completed are dropped
+        consumer.consumeResult(newAggsOnlyResult(numResults, randomIntBetween(1, 1000)));
+        assertEquals(0, breaker.getUsed());
+    }
+
+    private static CircuitBreaker newRequestBreaker(String limit) {
+        Settings settings = Settings.builder()
+            .put(HierarchyCircuitBreakerService.USE_REAL_MEMORY_USAGE_SETTING.getKey(), false)
+            .put(HierarchyCircuitBreakerService.REQUEST_CIRCUIT_BREAKER_LIMIT_SETTING.getKey(), limit)
+            .build();
+        return new HierarchyCircuitBreakerService(settings, new ClusterSettings(settings, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS))
+            .getBreaker(CircuitBreaker.REQUEST);
+    }
+
+    private static QuerySearchResult newAggsOnlyResult(int shardIndex, int number) {
+        QuerySearchResult result = new QuerySearchResult(shardIndex,
+            new SearchShardTarget("node", new Index("a", "b"), shardIndex, null));
+        result.topDocs(new TopDocsAndMaxScore(new TopDocs(new TotalHits(1, TotalHits.Relation.EQUAL_TO), new ScoreDoc[0]), number),
+            new DocValueFormat[0]);
+        InternalAggregations aggs = new InternalAggregations(Arrays.asList(new InternalMax("test", (double) number,
+            DocValueFormat.RAW, Collections.emptyList(), Collections.emptyMap())));
+        result.aggregations(aggs);
+        result.setShardIndex(shardIndex);
+        result.size(0);
+        return result;
+    }
+
     public void testNewSearchPhaseResults() {
         for (int i = 0; i < 10; i++) {
             int expectedNumResults = randomIntBetween(1, 10);
@@ -19,9 +19,13 @@
 package org.elasticsearch.common.bytes;
 
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.NamedWriteableAwareStreamInput;
+import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
+import org.elasticsearch.common.io.stream.StreamInput;
 import org.hamcrest.Matchers;
 
 import java.io.IOException;
+import java.util.Collections;
 
 public class BytesArrayTests extends AbstractBytesReferenceTestCase {
 
@@ -66,4 +70,28 @@ public class BytesArrayTests extends AbstractBytesReferenceTestCase {
         BytesArray pbr = (BytesArray) newBytesReferenceWithOffsetOfZero(length);
         assertEquals(0, pbr.offset());
     }
+
+    public void testSlicingStreamInputSharesArray() throws IOException {
+        BytesStreamOutput out = new BytesStreamOutput();
+        out.writeString("header");
+        out.writeBytesReference(new BytesArray("document"));
+        out.writeVInt(42);
+        BytesArray message = new BytesArray(BytesReference.toBytes(out.bytes()));
+
+        StreamInput in = message.slicingStreamInput();
+        assertEquals("header", in.readString());
+        BytesReference document = in.readBytesReference();
+        assertEquals("document", document.utf8ToString());
+        assertSame(message.array(), ((BytesArray) document).array());
+        assertEquals(42, in.readVInt());
+
+        StreamInput namedWriteableAwareIn = new NamedWriteableAwareStreamInput(message.slicingStreamInput(),
+            new NamedWriteableRegistry(Collections.emptyList()));
+        namedWriteableAwareIn.readString();
+        assertSame(message.array(), ((BytesArray) namedWriteableAwareIn.readBytesReference()).array());
+
+        StreamInput copyingIn = message.streamInput();
+        copyingIn.readString();
+        assertNotSame(message.array(), ((BytesArray) copyingIn.readBytesReference()).array());
+    }
 }
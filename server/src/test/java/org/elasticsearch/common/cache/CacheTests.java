@@ -49,6 +49,7 @@ import java.util.stream.Collectors;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
 public class CacheTests extends ESTestCase {
     private int numberOfEntries;
@@ -914,6 +915,88 @@ public class CacheTests extends ESTestCase {
         assertEquals(500, cache.count());
     }
 
+    // block an eviction in the removal listener while it holds the LRU lock, then check that hits don't wait for it
+    public void testGetDoesNotBlockOnLruLock() throws Exception {
+        final CountDownLatch evicting = new CountDownLatch(1);
+        final CountDownLatch releaseEviction = new CountDownLatch(1);
+        final Cache<Integer, String> cache =
+                CacheBuilder.<Integer, String>builder()
+                        .setMaximumWeight(1)
+                        .removalListener(notification -> {
+                            evicting.countDown();
+                            try {
+                                releaseEviction.await();
+                            } catch (InterruptedException e) {
+                                throw new AssertionError(e);
+                            }
+                        })
+                        .build();
+        cache.put(0, "0");
+        final Thread thread = new Thread(() -> cache.put(1, "1"));
+        thread.start();
+        try {
+            evicting.await();
+            for (int i = 0; i < 2 * Cache.ReadBuffer.SIZE; i++) {
+                assertEquals("1", cache.get(1));
+            }
+        } finally {
+            releaseEviction.countDown();
+            thread.join();
+        }
+        assertEquals(1, cache.count());
+        assertEquals(1, cache.stats().getEvictions());
+    }
+
+    // concurrently read and write a bounded cache, then check that the LRU list is consistent with the count and weight
+    public void testConcurrentReads() throws BrokenBarrierException, InterruptedException {
+        final int numberOfThreads = randomIntBetween(2, 32);
+        final int maximumWeight = randomIntBetween(1, numberOfEntries);
+        final Cache<Integer, String> cache =
+                CacheBuilder.<Integer, String>builder()
+                        .setMaximumWeight(maximumWeight)
+                        .build();
+
+        final CyclicBarrier barrier = new CyclicBarrier(1 + numberOfThreads);
+        for (int i = 0; i < numberOfThreads; i++) {
+            final Thread thread = new Thread(() -> {
+                try {
+                    barrier.await();
+                    Random random = new Random(random().nextLong());
+                    for (int j = 0; j < numberOfEntries; j++) {
+                        Integer key = random.nextInt(numberOfEntries);
+                        if (random.nextInt(10) == 0) {
+                            cache.put(key, Integer.toString(key));
+                        } else {
+                            String value = cache.get(key);
+                            if (value != null) {
+                                assertEquals(Integer.toString(key), value);
+                            }
+                        }
+                    }
+                    barrier.await();
+                } catch (BrokenBarrierException | InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            });
+            thread.start();
+        }
+
+        // wait for all threads to be ready
+        barrier.await();
+        // wait for all threads to finish
+        barrier.await();
+
+        cache.refresh();
+        assertThat(cache.weight(), lessThanOrEqualTo((long) maximumWeight));
+        Set<Integer> keys = new HashSet<>();
+        for (Integer key : cache.keys()) {
+            assertTrue("duplicate key in the LRU list: " + key, keys.add(key));
+            assertEquals(Integer.toString(key), cache.get(key));
+        }
+        assertEquals(keys.size(), cache.count());
+        assertEquals(cache.count(), cache.weight());
+    }
+
     public void testRemoveUsingValuesIterator() {
         final List<RemovalNotification<Integer, String>> removalNotifications = new ArrayList<>();
         Cache<Integer, String> cache =
@@ -0,0 +1,130 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.common.compress;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * Runs the streaming compression tests of {@link DeflateCompressTests} against the {@link LZ4Compressor}.
+ */
+public class LZ4CompressTests extends DeflateCompressTests {
+
+    @Override
+    protected Compressor newCompressor() {
+        return new LZ4Compressor();
+    }
+
+    public void testBlockRoundTrip() throws IOException {
+        final byte[] bytes = new byte[randomIntBetween(0, LZ4Compressor.BLOCK_SIZE)];
+        // a small alphabet and repeated runs exercise long literals, long matches and overlapping matches
+        final int alphabet = randomIntBetween(1, 256);
+        for (int i = 0; i < bytes.length; ) {
+            final int run = randomIntBetween(1, 300);
+            final byte b = (byte) randomInt(alphabet - 1);
+            for (int j = 0; j < run && i < bytes.length; j++, i++) {
+                bytes[i] = rarely() ? (byte) randomInt(alphabet - 1) : b;
+            }
+        }
+        final int offset = randomIntBetween(0, 10);
+        final byte[] compressed = new byte[offset + LZ4Compressor.LZ4.maxCompressedLength(bytes.length)];
+        final int compressedLength = LZ4Compressor.LZ4.compress(bytes, 0, bytes.length, compressed, offset,
+            new int[LZ4Compressor.LZ4.HASH_TABLE_SIZE]);
+        final byte[] restored = new byte[bytes.length];
+        LZ4Compressor.LZ4.decompress(compressed, offset, compressedLength, restored, 0, restored.length);
+        assertArrayEquals(bytes, restored);
+    }
+
+    public void testCompressesRepetitions() throws IOException {
+        final byte[] bytes = new byte[100000];
+        Arrays.fill(bytes, (byte) 'a');
+        final BytesStreamOutput out = new BytesStreamOutput();
+        try (StreamOutput compressedOut = CompressorFactory.LZ4.streamOutput(out)) {
+            compressedOut.writeBytes(bytes);
+        }
+        assertTrue(CompressorFactory.LZ4.isCompressed(out.bytes()));
+        assertSame(CompressorFactory.LZ4, CompressorFactory.compressor(out.bytes()));
+        assertThat(out.bytes().length(), lessThan(bytes.length / 100));
+        assertEquals(new BytesArray(bytes), CompressorFactory.uncompress(out.bytes()));
+    }
+
+    public void testFlushedBytesCanBeRead() throws IOException {
+        final BytesStreamOutput out = new BytesStreamOutput();
+        final StreamOutput compressedOut = CompressorFactory.LZ4.streamOutput(out);
+        compressedOut.writeString("foo");
+        compressedOut.flush();
+        try (StreamInput in = CompressorFactory.LZ4.streamInput(out.bytes().streamInput())) {
+            assertEquals("foo", in.readString());
+        }
+        compressedOut.writeString("bar");
+        compressedOut.close();
+        try (StreamInput in = CompressorFactory.LZ4.streamInput(out.bytes().streamInput())) {
+            assertEquals("foo", in.readString());
+            assertEquals("bar", in.readString());
+            assertEquals(-1, in.read());
+        }
+    }
+
+    public void testCorruptedBlock() throws IOException {
+        final byte[] bytes = new byte[1000];
+        Arrays.fill(bytes, (byte) 'a');
+        final byte[] compressed = new byte[LZ4Compressor.LZ4.maxCompressedLength(bytes.length)];
+        final int compressedLength = LZ4Compressor.LZ4.compress(bytes, 0, bytes.length, compressed, 0,
+            new int[LZ4Compressor.LZ4.HASH_TABLE_SIZE]);
+        // a match that points before the start of the block
+        final byte[] invalidOffset = Arrays.copyOf(compressed, compressedLength);
+        invalidOffset[2] = (byte) 0xFF;
+        invalidOffset[3] = (byte) 0xFF;
+        expectThrows(IOException.class, () -> LZ4Compressor.LZ4.decompress(invalidOffset, 0, invalidOffset.length,
+            new byte[bytes.length], 0, bytes.length));
+        // a truncated block
+        expectThrows(IOException.class, () -> LZ4Compressor.LZ4.decompress(compressed, 0, compressedLength - 1,
+            new byte[bytes.length], 0, bytes.length));
+    }
+
+    public void testNotLZ4() {
+        final BytesReference notCompressed = new BytesArray("{\"foo\":\"bar\"}");
+        assertFalse(CompressorFactory.LZ4.isCompressed(notCompressed));
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+            () -> CompressorFactory.LZ4.streamInput(notCompressed.streamInput()));
+        assertEquals("Input stream is not compressed with LZ4!", e.getMessage());
+    }
+
+    public void testCompressionScheme() {
+        assertSame(CompressionScheme.LZ4, CompressionScheme.fromString("lz4"));
+        assertSame(CompressionScheme.DEFLATE, CompressionScheme.fromString("deflate"));
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> CompressionScheme.fromString("zstd"));
+        assertEquals("unknown compression scheme [zstd], must be one of [deflate, lz4]", e.getMessage());
+
+        assertSame(CompressorFactory.LZ4, CompressionScheme.LZ4.compressor(Version.CURRENT));
+        assertSame(CompressorFactory.COMPRESSOR, CompressionScheme.LZ4.compressor(Version.CURRENT.minimumCompatibilityVersion()));
+        assertSame(CompressorFactory.COMPRESSOR, CompressionScheme.DEFLATE.compressor(Version.CURRENT));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.lucene.uid;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.index.mapper.IdFieldMapper;
+import org.elasticsearch.index.mapper.Uid;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+public class IdBloomFilterTests extends ESTestCase {
+
+    public void testNoFalseNegatives() throws Exception {
+        Set<String> ids = new HashSet<>();
+        int numDocs = randomIntBetween(1, 5000);
+        while (ids.size() < numDocs) {
+            ids.add(randomBoolean() ? randomAlphaOfLengthBetween(1, 20) : Integer.toString(randomIntBetween(0, Integer.MAX_VALUE)));
+        }
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(Lucene.STANDARD_ANALYZER))) {
+            for (String id : ids) {
+                Document doc = new Document();
+                doc.add(new Field(IdFieldMapper.NAME, Uid.encodeId(id), IdFieldMapper.Defaults.FIELD_TYPE));
+                writer.addDocument(doc);
+            }
+            writer.forceMerge(1);
+            try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                LeafReader leaf = reader.leaves().get(0).reader();
+                IdBloomFilter filter = IdBloomFilter.build(leaf.terms(IdFieldMapper.NAME), leaf.maxDoc());
+                for (String id : ids) {
+                    assertTrue(id, filter.mightContain(Uid.encodeId(id)));
+                }
+                int falsePositives = 0;
+                int numLookups = 10000;
+                for (int i = 0; i < numLookups; i++) {
+                    String id = randomAlphaOfLength(21);
+                    if (filter.mightContain(Uid.encodeId(id))) {
+                        falsePositives++;
+                    }
+                }
+                // the expected false positive rate is a bit less than 1%
+                assertThat(falsePositives, lessThan(numLookups / 20));
+                assertThat(filter.ramBytesUsed(), greaterThan((long) numDocs * IdBloomFilter.BITS_PER_TERM / Byte.SIZE));
+            }
+        }
+    }
+
+    public void testMightContainWithOffset() throws Exception {
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(Lucene.STANDARD_ANALYZER))) {
+            Document doc = new Document();
+            doc.add(new Field(IdFieldMapper.NAME, new BytesRef("foo"), IdFieldMapper.Defaults.FIELD_TYPE));
+            writer.addDocument(doc);
+            try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                LeafReader leaf = reader.leaves().get(0).reader();
+                IdBloomFilter filter = IdBloomFilter.build(leaf.terms(IdFieldMapper.NAME), leaf.maxDoc());
+                assertTrue(filter.mightContain(new BytesRef("xxfooyy".getBytes("UTF-8"), 2, 3)));
+            }
+        }
+    }
+}
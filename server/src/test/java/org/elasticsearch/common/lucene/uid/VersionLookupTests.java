@@ -118,4 +118,49 @@ public class VersionLookupTests extends ESTestCase {
         writer.close();
         dir.close();
     }
+
+    /**
+     * test version lookup with an id filter loaded for the segment
+     */
+    public void testWithIdFilter() throws Exception {
+        Directory dir = newDirectory();
+        IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(Lucene.STANDARD_ANALYZER)
+                .setMergePolicy(NoMergePolicy.INSTANCE));
+        int numDocs = randomIntBetween(1, 100);
+        for (int i = 0; i < numDocs; i++) {
+            Document doc = new Document();
+            doc.add(new Field(IdFieldMapper.NAME, Integer.toString(i), IdFieldMapper.Defaults.FIELD_TYPE));
+            doc.add(new NumericDocValuesField(VersionFieldMapper.NAME, i + 1));
+            writer.addDocument(doc);
+        }
+        DirectoryReader reader = DirectoryReader.open(writer);
+        LeafReaderContext segment = reader.leaves().get(0);
+        IdBloomFilter filter = VersionsAndSeqNoResolver.loadIdFilter(segment.reader(), IdFieldMapper.NAME);
+        assertNotNull(filter);
+        assertSame(filter, VersionsAndSeqNoResolver.getIdFilter(segment.reader()));
+        assertSame(filter, VersionsAndSeqNoResolver.loadIdFilter(segment.reader(), IdFieldMapper.NAME));
+        PerThreadIDVersionAndSeqNoLookup lookup = new PerThreadIDVersionAndSeqNoLookup(segment.reader(), IdFieldMapper.NAME);
+        for (int i = 0; i < numDocs; i++) {
+            DocIdAndVersion result = lookup.lookupVersion(new BytesRef(Integer.toString(i)), randomBoolean(), segment);
+            assertNotNull(result);
+            assertEquals(i + 1, result.version);
+            assertEquals(i, result.docId);
+        }
+        for (int i = numDocs; i < numDocs + 100; i++) {
+            assertNull(lookup.lookupVersion(new BytesRef(Integer.toString(i)), randomBoolean(), segment));
+            assertNull(lookup.lookupSeqNo(new BytesRef(Integer.toString(i)), segment));
+        }
+        // the filter is shared with readers that have more deletes
+        assertTrue(writer.tryDeleteDocument(reader, 0) >= 0);
+        DirectoryReader newReader = DirectoryReader.openIfChanged(reader, writer);
+        assertNotNull(newReader);
+        assertSame(filter, VersionsAndSeqNoResolver.getIdFilter(newReader.leaves().get(0).reader()));
+        reader.close();
+        assertSame(filter, VersionsAndSeqNoResolver.getIdFilter(newReader.leaves().get(0).reader()));
+        writer.close();
+        newReader.close();
+        // and removed once the segment is closed
+        assertNull(VersionsAndSeqNoResolver.idFilters.get(segment.reader().getCoreCacheHelper().getKey()));
+        dir.close();
+    }
 }
@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class ReleasableLockTests extends ESTestCase {
@@ -78,6 +79,21 @@ public class ReleasableLockTests extends ESTestCase {
         }
     }
 
+    public void testTryAcquire() throws InterruptedException {
+        final ReleasableLock lock = new ReleasableLock(new ReentrantLock());
+        try (ReleasableLock acquired = lock.tryAcquire()) {
+            assertSame(lock, acquired);
+            assertTrue(lock.isHeldByCurrentThread());
+            final Thread thread = new Thread(() -> {
+                assertNull(lock.tryAcquire());
+                assertFalse(lock.isHeldByCurrentThread());
+            });
+            thread.start();
+            thread.join();
+        }
+        assertFalse(lock.isHeldByCurrentThread());
+    }
+
     private void acquire(final ReleasableLock lockToAcquire, final ReleasableLock otherLock) {
         try (@SuppressWarnings("unused") Releasable outer = lockToAcquire.acquire()) {
             assertTrue(lockToAcquire.isHeldByCurrentThread());
@@ -37,11 +37,16 @@ import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.BitSet;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.SparseFixedBitSet;
+import org.elasticsearch.common.breaker.CircuitBreaker;
 import org.elasticsearch.common.lucene.index.ElasticsearchDirectoryReader;
+import org.elasticsearch.common.settings.ClusterSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.core.internal.io.IOUtils;
 import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.breaker.HierarchyCircuitBreakerService;
 import org.elasticsearch.test.ESTestCase;
 import org.elasticsearch.test.IndexSettingsModule;
 
@@ -50,6 +55,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
 
 public class BitSetFilterCacheTests extends ESTestCase {
 
@@ -179,6 +185,66 @@ public class BitSetFilterCacheTests extends ESTestCase {
         assertEquals(0, stats.get());
     }
 
+    public void testOffHeapDenseBitSets() throws IOException {
+        IndexWriter writer = new IndexWriter(
+                new RAMDirectory(),
+                new IndexWriterConfig(new StandardAnalyzer()).setMergePolicy(new LogByteSizeMergePolicy())
+        );
+        final int numDocs = randomIntBetween(200, 1000);
+        for (int i = 0; i < numDocs; i++) {
+            Document document = new Document();
+            document.add(new StringField("dense", "value", Field.Store.NO));
+            if (i == 0) {
+                document.add(new StringField("sparse", "value", Field.Store.NO));
+            }
+            writer.addDocument(document);
+        }
+        writer.commit();
+        writer.forceMerge(1);
+        DirectoryReader reader = DirectoryReader.open(writer);
+        reader = ElasticsearchDirectoryReader.wrap(reader, new ShardId("test", "_na_", 0));
+
+        final AtomicLong offHeapBytes = new AtomicLong();
+        IndexSettings indexSettings = IndexSettingsModule.newIndexSettings("test", Settings.builder()
+            .put(BitsetFilterCache.INDEX_OFF_HEAP_FIXED_BITSET_FILTERS_SETTING.getKey(), true).build());
+        CircuitBreaker breaker = new HierarchyCircuitBreakerService(Settings.EMPTY,
+            new ClusterSettings(Settings.EMPTY, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS)).getBreaker(CircuitBreaker.ACCOUNTING);
+        BitsetFilterCache cache = new BitsetFilterCache(indexSettings, new BitsetFilterCache.Listener() {
+            @Override
+            public void onCache(ShardId shardId, Accountable accountable) {
+                if (accountable instanceof OffHeapFixedBitSet) {
+                    offHeapBytes.addAndGet(((OffHeapFixedBitSet) accountable).offHeapBytesUsed());
+                }
+            }
+
+            @Override
+            public void onRemoval(ShardId shardId, Accountable accountable) {
+                if (accountable instanceof OffHeapFixedBitSet) {
+                    offHeapBytes.addAndGet(-((OffHeapFixedBitSet) accountable).offHeapBytesUsed());
+                }
+            }
+        }, breaker);
+        BitSetProducer dense = cache.getBitSetProducer(new TermQuery(new Term("dense", "value")));
+        assertThat(dense.getBitSet(reader.leaves().get(0)), instanceOf(OffHeapFixedBitSet.class));
+        assertThat(matchCount(dense, reader), equalTo(numDocs));
+        final long expectedBytes = (long) DirectPagePool.numPages(FixedBitSet.bits2words(numDocs)) * DirectPagePool.PAGE_SIZE_IN_BYTES;
+        assertThat(offHeapBytes.get(), equalTo(expectedBytes));
+        assertThat(breaker.getUsed(), equalTo(expectedBytes));
+
+        // sparse bit sets are compressed and stay on heap
+        BitSetProducer sparse = cache.getBitSetProducer(new TermQuery(new Term("sparse", "value")));
+        assertThat(sparse.getBitSet(reader.leaves().get(0)), instanceOf(SparseFixedBitSet.class));
+        assertThat(matchCount(sparse, reader), equalTo(1));
+
+        IOUtils.close(reader, writer);
+        assertEquals(0, offHeapBytes.get());
+        // the pages of the closed segment are kept for the next bit sets and stay accounted until the cache is closed
+        assertThat(cache.getPagePool().freePages(), equalTo((int) (expectedBytes / DirectPagePool.PAGE_SIZE_IN_BYTES)));
+        assertThat(breaker.getUsed(), equalTo(expectedBytes));
+        cache.close();
+        assertEquals(0, breaker.getUsed());
+    }
+
     public void testSetNullListener() {
         try {
             new BitsetFilterCache(INDEX_SETTINGS, null);
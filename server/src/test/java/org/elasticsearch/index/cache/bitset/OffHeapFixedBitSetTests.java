@@ -0,0 +1,130 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.cache.bitset;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.breaker.NoopCircuitBreaker;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.indices.breaker.HierarchyCircuitBreakerService;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+
+public class OffHeapFixedBitSetTests extends ESTestCase {
+
+    public void testSameAsFixedBitSet() throws IOException {
+        final DirectPagePool pool = new DirectPagePool(new NoopCircuitBreaker(CircuitBreaker.ACCOUNTING), 1000);
+        final int numBits = randomIntBetween(1, 100000);
+        final FixedBitSet expected = randomFixedBitSet(numBits);
+        final OffHeapFixedBitSet actual = OffHeapFixedBitSet.of(new BitSetIterator(expected, expected.cardinality()), numBits, pool);
+        assertSameBits(expected, actual);
+        assertEquals((long) DirectPagePool.numPages(FixedBitSet.bits2words(numBits)) * DirectPagePool.PAGE_SIZE_IN_BYTES,
+            actual.offHeapBytesUsed());
+    }
+
+    public void testRecycledPagesAreReused() throws IOException {
+        final CircuitBreaker breaker = new HierarchyCircuitBreakerService(Settings.EMPTY,
+            new ClusterSettings(Settings.EMPTY, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS)).getBreaker(CircuitBreaker.ACCOUNTING);
+        final DirectPagePool pool = new DirectPagePool(breaker, 4);
+        final int numBits = randomIntBetween(DirectPagePool.LONGS_PER_PAGE * 64 + 1, DirectPagePool.LONGS_PER_PAGE * 64 * 3);
+        final OffHeapFixedBitSet first = OffHeapFixedBitSet.of(DocIdSetIterator.all(numBits), numBits, pool);
+        assertEquals(first.offHeapBytesUsed(), breaker.getUsed());
+        first.recycle();
+        // recycling twice is a no-op
+        first.recycle();
+        assertEquals(first.offHeapBytesUsed() / DirectPagePool.PAGE_SIZE_IN_BYTES, pool.freePages());
+        assertEquals(first.offHeapBytesUsed(), breaker.getUsed());
+
+        // the bits of the previous bit set don't leak into the next one
+        final FixedBitSet expected = randomFixedBitSet(numBits);
+        final OffHeapFixedBitSet second = OffHeapFixedBitSet.of(new BitSetIterator(expected, expected.cardinality()), numBits, pool);
+        assertSameBits(expected, second);
+        assertEquals(0, pool.freePages());
+        assertEquals(second.offHeapBytesUsed(), breaker.getUsed());
+
+        // the pages of a bit set that might still be read are not reused
+        second.discard();
+        second.recycle();
+        assertEquals(0, pool.freePages());
+        assertEquals(0, breaker.getUsed());
+
+        // the pool only keeps up to its maximum number of free pages
+        final OffHeapFixedBitSet third = OffHeapFixedBitSet.of(DocIdSetIterator.all(numBits * 4), numBits * 4, pool);
+        third.recycle();
+        assertEquals(4, pool.freePages());
+        assertEquals(4 * DirectPagePool.PAGE_SIZE_IN_BYTES, breaker.getUsed());
+        pool.close();
+        assertEquals(0, pool.freePages());
+        assertEquals(0, breaker.getUsed());
+    }
+
+    public void testBreakerIsChargedBeforeAllocation() throws IOException {
+        final CircuitBreaker breaker = new HierarchyCircuitBreakerService(Settings.builder()
+            .put(HierarchyCircuitBreakerService.ACCOUNTING_CIRCUIT_BREAKER_LIMIT_SETTING.getKey(), "10kb").build(),
+            new ClusterSettings(Settings.EMPTY, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS)).getBreaker(CircuitBreaker.ACCOUNTING);
+        final DirectPagePool pool = new DirectPagePool(breaker, 10);
+        final int numBits = DirectPagePool.LONGS_PER_PAGE * 64 * 4;
+        expectThrows(CircuitBreakingException.class, () -> OffHeapFixedBitSet.of(DocIdSetIterator.all(numBits), numBits, pool));
+        assertEquals(0, breaker.getUsed());
+        assertEquals(0, pool.freePages());
+    }
+
+    public void testEmpty() throws IOException {
+        final DirectPagePool pool = new DirectPagePool(new NoopCircuitBreaker(CircuitBreaker.ACCOUNTING), 1000);
+        final int numBits = randomIntBetween(1, 1000);
+        final OffHeapFixedBitSet bitSet = OffHeapFixedBitSet.of(DocIdSetIterator.empty(), numBits, pool);
+        assertEquals(0, bitSet.cardinality());
+        assertEquals(DocIdSetIterator.NO_MORE_DOCS, bitSet.nextSetBit(0));
+        assertEquals(-1, bitSet.prevSetBit(numBits - 1));
+    }
+
+    public void testReadOnly() throws IOException {
+        final DirectPagePool pool = new DirectPagePool(new NoopCircuitBreaker(CircuitBreaker.ACCOUNTING), 1000);
+        final int numBits = randomIntBetween(1, 1000);
+        final OffHeapFixedBitSet bitSet = OffHeapFixedBitSet.of(DocIdSetIterator.all(numBits), numBits, pool);
+        assertEquals(numBits, bitSet.cardinality());
+        expectThrows(UnsupportedOperationException.class, () -> bitSet.set(0));
+        expectThrows(UnsupportedOperationException.class, () -> bitSet.clear(0));
+    }
+
+    private static FixedBitSet randomFixedBitSet(int numBits) {
+        final FixedBitSet bitSet = new FixedBitSet(numBits);
+        final int numSetBits = randomIntBetween(0, numBits);
+        for (int i = 0; i < numSetBits; i++) {
+            bitSet.set(randomInt(numBits - 1));
+        }
+        return bitSet;
+    }
+
+    private static void assertSameBits(FixedBitSet expected, OffHeapFixedBitSet actual) {
+        assertEquals(expected.length(), actual.length());
+        assertEquals(expected.cardinality(), actual.cardinality());
+        for (int i = 0; i < expected.length(); i++) {
+            assertEquals(expected.get(i), actual.get(i));
+            assertEquals(expected.nextSetBit(i), actual.nextSetBit(i));
+            assertEquals(expected.prevSetBit(i), actual.prevSetBit(i));
+        }
+    }
+}
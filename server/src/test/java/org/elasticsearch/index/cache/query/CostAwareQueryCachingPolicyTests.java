@@ -0,0 +1,161 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.cache.query;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DisjunctionMaxQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryCachingPolicy;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.UsageTrackingQueryCachingPolicy;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.greaterThan;
+
+public class CostAwareQueryCachingPolicyTests extends ESTestCase {
+
+    private static Query filter(int id) {
+        return new BooleanQuery.Builder()
+            .add(new TermQuery(new Term("foo", "bar" + id)), BooleanClause.Occur.FILTER)
+            .add(new TermQuery(new Term("foo", "baz" + id)), BooleanClause.Occur.FILTER)
+            .build();
+    }
+
+    private static Query disjunction(int id) {
+        return new DisjunctionMaxQuery(Arrays.asList(new TermQuery(new Term("foo", "bar" + id)),
+            new TermQuery(new Term("foo", "baz" + id))), 0f);
+    }
+
+    private static int usesToCache(QueryCachingPolicy policy, Query query) throws IOException {
+        for (int uses = 1; uses < 100; uses++) {
+            policy.onUse(query);
+            if (policy.shouldCache(query)) {
+                return uses;
+            }
+        }
+        throw new AssertionError("query was never cached");
+    }
+
+    public void testUnmeasuredFiltersAreCachedByUsage() throws IOException {
+        final Query query = filter(0);
+        final int expected = usesToCache(new UsageTrackingQueryCachingPolicy(), query);
+        assertEquals(expected, usesToCache(new CostAwareQueryCachingPolicy(), query));
+    }
+
+    public void testAdmissionByBenefitPerByte() throws IOException {
+        final Query expensive = filter(0);
+        final Query cheap = filter(1);
+        final int usesByFrequency = usesToCache(new UsageTrackingQueryCachingPolicy(), expensive);
+        assertThat(usesByFrequency, greaterThan(CostAwareQueryCachingPolicy.MIN_FREQUENCY_TO_CACHE_VALUABLE));
+
+        final CostAwareQueryCachingPolicy policy = new CostAwareQueryCachingPolicy();
+        // 100ns per byte and 0.01ns per byte
+        policy.onCache(expensive, 100_000, 1_000);
+        policy.onCache(cheap, 10, 1_000);
+        assertEquals(CostAwareQueryCachingPolicy.MIN_FREQUENCY_TO_CACHE_VALUABLE, usesToCache(policy, expensive));
+        assertEquals(2 * usesByFrequency, usesToCache(policy, cheap));
+    }
+
+    public void testUncachedFiltersAreEstimatedByType() throws IOException {
+        final int booleanUsesByFrequency = usesToCache(new UsageTrackingQueryCachingPolicy(), filter(2));
+        assertThat(booleanUsesByFrequency, greaterThan(CostAwareQueryCachingPolicy.MIN_FREQUENCY_TO_CACHE_VALUABLE));
+        final int disjunctionUsesByFrequency = usesToCache(new UsageTrackingQueryCachingPolicy(), disjunction(2));
+
+        final CostAwareQueryCachingPolicy policy = new CostAwareQueryCachingPolicy();
+        policy.onCache(filter(0), 100_000, 1_000);
+        policy.onCache(disjunction(1), 10, 1_000);
+        // neither filter has been cached, but filters of their type have
+        assertEquals(CostAwareQueryCachingPolicy.MIN_FREQUENCY_TO_CACHE_VALUABLE, usesToCache(policy, filter(2)));
+        assertEquals(2 * disjunctionUsesByFrequency, usesToCache(policy, disjunction(2)));
+    }
+
+    public void testTotalsDecay() {
+        final CostAwareQueryCachingPolicy policy = new CostAwareQueryCachingPolicy();
+        for (int i = 0; i < CostAwareQueryCachingPolicy.DECAY_INTERVAL; i++) {
+            policy.onCache(filter(0), 1_000, 1_000);
+        }
+        assertEquals(1d, policy.averageBenefitPerByte(), 0d);
+        // the counters have been halved, so the next filter weighs twice as much as it would have without decay
+        policy.onCache(filter(1), 3_000_000, 1_000);
+        final double expected = (double) (CostAwareQueryCachingPolicy.DECAY_INTERVAL / 2 * 1_000 + 3_000_000)
+            / (CostAwareQueryCachingPolicy.DECAY_INTERVAL / 2 * 1_000 + 1_000);
+        assertEquals(expected, policy.averageBenefitPerByte(), 0.0001d);
+    }
+
+    public void testLongFiltersAreTruncated() {
+        final BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (int i = 0; i < CostAwareQueryCachingPolicy.MAX_FILTER_LENGTH; i++) {
+            builder.add(new TermQuery(new Term("foo", "bar" + i)), BooleanClause.Occur.FILTER);
+        }
+        final Query query = builder.build();
+        final CostAwareQueryCachingPolicy policy = new CostAwareQueryCachingPolicy();
+        policy.onCache(query, 1_000, 100);
+        final String filter = policy.filterStats().get(0).getFilter();
+        assertEquals(query.toString().substring(0, CostAwareQueryCachingPolicy.MAX_FILTER_LENGTH) + "...", filter);
+    }
+
+    public void testHitsIncreaseTheBenefit() throws IOException {
+        final Query first = filter(0);
+        final Query second = filter(1);
+        final CostAwareQueryCachingPolicy policy = new CostAwareQueryCachingPolicy();
+        policy.onCache(first, 1_000, 1_000);
+        policy.onCache(second, 1_000, 1_000);
+        // the same cost, but the second filter is reused
+        for (int i = 0; i < 10; i++) {
+            policy.onHit(second);
+        }
+        assertEquals(CostAwareQueryCachingPolicy.MIN_FREQUENCY_TO_CACHE_VALUABLE, usesToCache(policy, second));
+        assertThat(usesToCache(policy, first), greaterThan(CostAwareQueryCachingPolicy.MIN_FREQUENCY_TO_CACHE_VALUABLE));
+    }
+
+    public void testFilterStats() {
+        final CostAwareQueryCachingPolicy policy = new CostAwareQueryCachingPolicy();
+        assertTrue(policy.filterStats().isEmpty());
+        // hits of filters that haven't been cached are ignored
+        policy.onHit(filter(0));
+        assertTrue(policy.filterStats().isEmpty());
+
+        final int numFilters = randomIntBetween(1, 2 * QueryCacheStats.MAX_FILTERS);
+        for (int i = 0; i < numFilters; i++) {
+            policy.onCache(filter(i), 1_000, 100);
+            for (int j = 0; j < i; j++) {
+                policy.onHit(filter(i));
+            }
+        }
+        final List<FilterCacheStats> stats = policy.filterStats();
+        assertEquals(Math.min(numFilters, QueryCacheStats.MAX_FILTERS), stats.size());
+        for (int i = 0; i < stats.size(); i++) {
+            // the filters with the most hits saved the most time
+            final int id = numFilters - 1 - i;
+            final FilterCacheStats filter = stats.get(i);
+            assertEquals(filter(id).toString(), filter.getFilter());
+            assertEquals(id, filter.getHitCount());
+            assertEquals(1, filter.getCacheCount());
+            assertEquals(1_000, filter.getBuildTimeInNanos());
+            assertEquals(100, filter.getMemorySizeInBytes());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.cache.query;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.test.VersionUtils;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class QueryCacheStatsTests extends ESTestCase {
+
+    public void testAddMergesFilters() {
+        final QueryCacheStats first = new QueryCacheStats(10, 1, 2, 3, 4);
+        first.addFilters(Arrays.asList(new FilterCacheStats("a", 1, 1, 100, 10), new FilterCacheStats("b", 5, 1, 100, 10)));
+        final QueryCacheStats second = new QueryCacheStats(10, 1, 2, 3, 4);
+        second.addFilters(Collections.singletonList(new FilterCacheStats("a", 9, 1, 100, 10)));
+        first.add(second);
+
+        assertEquals(20, first.getMemorySizeInBytes());
+        assertEquals(2, first.getHitCount());
+        assertEquals(Arrays.asList(new FilterCacheStats("a", 10, 2, 200, 20), new FilterCacheStats("b", 5, 1, 100, 10)),
+            first.getFilters());
+    }
+
+    public void testAddKeepsTheFiltersThatSavedTheMostTime() {
+        final QueryCacheStats stats = new QueryCacheStats();
+        final int numFilters = QueryCacheStats.MAX_FILTERS + randomIntBetween(1, 10);
+        for (int i = 0; i < numFilters; i++) {
+            final QueryCacheStats shardStats = new QueryCacheStats();
+            shardStats.addFilters(Collections.singletonList(new FilterCacheStats(Integer.toString(i), i, 1, 100, 10)));
+            stats.add(shardStats);
+        }
+        assertEquals(QueryCacheStats.MAX_FILTERS, stats.getFilters().size());
+        for (int i = 0; i < QueryCacheStats.MAX_FILTERS; i++) {
+            assertEquals(Integer.toString(numFilters - 1 - i), stats.getFilters().get(i).getFilter());
+        }
+    }
+
+    public void testSerialization() throws IOException {
+        final QueryCacheStats stats = new QueryCacheStats(randomNonNegativeLong(), randomNonNegativeLong(),
+            randomNonNegativeLong(), randomNonNegativeLong(), randomNonNegativeLong());
+        stats.addFilters(Collections.singletonList(new FilterCacheStats(randomAlphaOfLength(10), randomNonNegativeLong(),
+            randomLongBetween(1, 1000), randomNonNegativeLong(), randomNonNegativeLong())));
+        final Version version = VersionUtils.randomVersion(random());
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            out.setVersion(version);
+            stats.writeTo(out);
+            try (StreamInput in = out.bytes().streamInput()) {
+                in.setVersion(version);
+                final QueryCacheStats read = new QueryCacheStats();
+                read.readFrom(in);
+                assertEquals(stats.getMemorySizeInBytes(), read.getMemorySizeInBytes());
+                assertEquals(stats.getHitCount(), read.getHitCount());
+                assertEquals(stats.getMissCount(), read.getMissCount());
+                assertEquals(stats.getCacheCount(), read.getCacheCount());
+                assertEquals(stats.getCacheSize(), read.getCacheSize());
+                if (version.onOrAfter(Version.V_7_0_0)) {
+                    assertEquals(stats.getFilters(), read.getFilters());
+                } else {
+                    assertTrue(read.getFilters().isEmpty());
+                }
+            }
+        }
+    }
+}
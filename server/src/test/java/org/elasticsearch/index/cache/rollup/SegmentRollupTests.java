@@ -0,0 +1,136 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.cache.rollup;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.NumericUtils;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.fielddata.IndexNumericFieldData;
+import org.elasticsearch.index.fielddata.plain.SortedNumericDVIndexFieldData;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.Collections;
+
+public class SegmentRollupTests extends ESTestCase {
+
+    private static final Index INDEX = new Index("test", "_na_");
+
+    public void testBuild() throws IOException {
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig())) {
+            // two documents in [0, 1000), none in [1000, 2000) and one in [2000, 3000), the last document has no date
+            addDocument(writer, 10L, 1.5, 2.5);
+            addDocument(writer, 999L, -3.0);
+            addDocument(writer, 2500L);
+            addDocument(writer, null, 42.0);
+            try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                assertEquals(1, reader.leaves().size());
+                SegmentRollup rollup = SegmentRollup.build(reader.leaves().get(0), 1000, 10,
+                    new SortedNumericDVIndexFieldData(INDEX, "date", IndexNumericFieldData.NumericType.LONG),
+                    Collections.singletonMap("value",
+                        new SortedNumericDVIndexFieldData(INDEX, "value", IndexNumericFieldData.NumericType.DOUBLE)));
+                assertNotNull(rollup);
+                assertEquals(1000, rollup.interval());
+                assertEquals(2, rollup.numRows());
+                assertNull(rollup.metric("other"));
+                SegmentRollup.Metric metric = rollup.metric("value");
+
+                assertEquals(0, rollup.key(0));
+                assertEquals(2, rollup.docCount(0));
+                assertEquals(3, metric.valueCount(0));
+                assertEquals(1.0, metric.sum(0), 0d);
+                assertEquals(-3.0, metric.min(0), 0d);
+                assertEquals(2.5, metric.max(0), 0d);
+
+                assertEquals(2000, rollup.key(1));
+                assertEquals(1, rollup.docCount(1));
+                assertEquals(0, metric.valueCount(1));
+                assertEquals(0, metric.sum(1), 0d);
+                assertEquals(Double.POSITIVE_INFINITY, metric.min(1), 0d);
+                assertEquals(Double.NEGATIVE_INFINITY, metric.max(1), 0d);
+                assertTrue(rollup.ramBytesUsed() > 0);
+            }
+        }
+    }
+
+    public void testNegativeDates() throws IOException {
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig())) {
+            addDocument(writer, -1L);
+            addDocument(writer, -1000L);
+            addDocument(writer, -1001L);
+            try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                SegmentRollup rollup = SegmentRollup.build(reader.leaves().get(0), 1000, 10,
+                    new SortedNumericDVIndexFieldData(INDEX, "date", IndexNumericFieldData.NumericType.LONG), Collections.emptyMap());
+                assertEquals(2, rollup.numRows());
+                assertEquals(-2000, rollup.key(0));
+                assertEquals(1, rollup.docCount(0));
+                assertEquals(-1000, rollup.key(1));
+                assertEquals(2, rollup.docCount(1));
+            }
+        }
+    }
+
+    public void testMultiValuedDates() throws IOException {
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig())) {
+            Document document = new Document();
+            document.add(new SortedNumericDocValuesField("date", 1));
+            document.add(new SortedNumericDocValuesField("date", 2));
+            writer.addDocument(document);
+            try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                assertNull(SegmentRollup.build(reader.leaves().get(0), 1000, 10,
+                    new SortedNumericDVIndexFieldData(INDEX, "date", IndexNumericFieldData.NumericType.LONG), Collections.emptyMap()));
+            }
+        }
+    }
+
+    public void testMaxRows() throws IOException {
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig())) {
+            addDocument(writer, 10L);
+            addDocument(writer, 1010L);
+            addDocument(writer, 2010L);
+            try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                SortedNumericDVIndexFieldData dates =
+                    new SortedNumericDVIndexFieldData(INDEX, "date", IndexNumericFieldData.NumericType.LONG);
+                assertEquals(3, SegmentRollup.build(reader.leaves().get(0), 1000, 3, dates, Collections.emptyMap()).numRows());
+                assertNull(SegmentRollup.build(reader.leaves().get(0), 1000, 2, dates, Collections.emptyMap()));
+            }
+        }
+    }
+
+    private static void addDocument(IndexWriter writer, Long date, double... values) throws IOException {
+        Document document = new Document();
+        if (date != null) {
+            document.add(new SortedNumericDocValuesField("date", date));
+        }
+        for (double value : values) {
+            document.add(new SortedNumericDocValuesField("value", NumericUtils.doubleToSortableLong(value)));
+        }
+        writer.addDocument(document);
+    }
+}
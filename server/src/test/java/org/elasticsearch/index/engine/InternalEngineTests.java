@@ -87,6 +87,7 @@ import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.common.lucene.index.ElasticsearchDirectoryReader;
+import org.elasticsearch.common.lucene.uid.IdBloomFilter;
 import org.elasticsearch.common.lucene.uid.Versions;
 import org.elasticsearch.common.lucene.uid.VersionsAndSeqNoResolver;
 import org.elasticsearch.common.lucene.uid.VersionsAndSeqNoResolver.DocIdAndSeqNo;
@@ -3878,7 +3879,8 @@ public class InternalEngineTests extends EngineTestCase {
         Randomness.shuffle(operations);
         Settings.Builder settings = Settings.builder()
             .put(defaultSettings.getSettings())
-            .put(IndexSettings.INDEX_SOFT_DELETES_SETTING.getKey(), true);
+            .put(IndexSettings.INDEX_SOFT_DELETES_SETTING.getKey(), true)
+            .put(IndexSettings.INDEX_ID_BLOOM_FILTER_SETTING.getKey(), randomBoolean());
         final IndexMetaData indexMetaData = IndexMetaData.builder(defaultSettings.getIndexMetaData()).settings(settings).build();
         final IndexSettings indexSettings = IndexSettingsModule.newIndexSettings(indexMetaData);
         Map<String, Engine.Operation> latestOps = new HashMap<>(); // id -> latest seq_no
@@ -3928,6 +3930,39 @@ public class InternalEngineTests extends EngineTestCase {
         }
     }
 
+    public void testIdBloomFilterLoadedForNewSegments() throws Exception {
+        Settings.Builder settings = Settings.builder()
+            .put(defaultSettings.getSettings())
+            .put(IndexSettings.INDEX_ID_BLOOM_FILTER_SETTING.getKey(), true);
+        final IndexMetaData indexMetaData = IndexMetaData.builder(defaultSettings.getIndexMetaData()).settings(settings).build();
+        final IndexSettings indexSettings = IndexSettingsModule.newIndexSettings(indexMetaData);
+        try (Store store = createStore();
+             InternalEngine engine = createEngine(config(indexSettings, store, createTempDir(), newMergePolicy(), null))) {
+            int numDocs = between(1, 100);
+            for (int i = 0; i < numDocs; i++) {
+                engine.index(indexForDoc(createParsedDoc(Integer.toString(i), null)));
+                if (rarely()) {
+                    engine.refresh("test");
+                }
+            }
+            engine.refresh("test");
+            if (randomBoolean()) {
+                engine.forceMerge(true, 1, false, false, false);
+                engine.refresh("test");
+            }
+            try (Searcher searcher = engine.acquireSearcher("test", randomFrom(Engine.SearcherScope.values()))) {
+                for (LeafReaderContext leaf : searcher.reader().leaves()) {
+                    IdBloomFilter filter = VersionsAndSeqNoResolver.getIdFilter(leaf.reader());
+                    assertNotNull(filter);
+                }
+                for (int i = 0; i < numDocs; i++) {
+                    assertNotNull(VersionsAndSeqNoResolver.loadDocIdAndVersion(searcher.reader(), newUid(Integer.toString(i)), true));
+                }
+                assertNull(VersionsAndSeqNoResolver.loadDocIdAndVersion(searcher.reader(), newUid(Integer.toString(numDocs)), true));
+            }
+        }
+    }
+
     /**
      * A sequence number generator that will generate a sequence number and if {@code stall} is set to true will wait on the barrier and the
      * referenced latch before returning. If the local checkpoint should advance (because {@code stall} is false, then the value of
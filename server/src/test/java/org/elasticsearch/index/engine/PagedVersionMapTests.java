@@ -0,0 +1,150 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.index.engine;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.TestUtil;
+import org.elasticsearch.index.translog.Translog;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class PagedVersionMapTests extends ESTestCase {
+
+    public void testPutGetRemove() {
+        PagedVersionMap map = new PagedVersionMap(randomIntBetween(0, 100));
+        Map<BytesRef, VersionValue> expected = new HashMap<>();
+        int iters = randomIntBetween(100, 5000);
+        List<BytesRef> uids = new ArrayList<>();
+        for (int i = 0; i < randomIntBetween(10, 1000); i++) {
+            uids.add(new BytesRef(TestUtil.randomSimpleString(random(), 1, 20)));
+        }
+        for (int i = 0; i < iters; i++) {
+            BytesRef uid = randomFrom(uids);
+            switch (randomInt(2)) {
+                case 0:
+                    VersionValue value = randomVersionValue();
+                    assertThat(map.put(uid, value), equalTo(expected.put(uid, value)));
+                    break;
+                case 1:
+                    assertThat(map.remove(uid), equalTo(expected.remove(uid)));
+                    break;
+                case 2:
+                    assertThat(map.get(uid), equalTo(expected.get(uid)));
+                    break;
+                default:
+                    throw new AssertionError();
+            }
+            assertEquals(expected.size(), map.size());
+            assertEquals(expected.isEmpty(), map.isEmpty());
+        }
+        assertEquals(expected, map);
+        for (BytesRef uid : uids) {
+            assertThat(map.get(uid), equalTo(expected.get(uid)));
+            assertEquals(expected.containsKey(uid), map.containsKey(uid));
+        }
+    }
+
+    public void testRoundTripValues() {
+        PagedVersionMap map = new PagedVersionMap(0);
+        BytesRef uid = new BytesRef("1");
+        IndexVersionValue withoutLocation = new IndexVersionValue(null, randomNonNegativeLong(), randomNonNegativeLong(),
+            randomNonNegativeLong());
+        assertThat(map.put(uid, withoutLocation), nullValue());
+        assertThat(map.get(uid), equalTo(withoutLocation));
+        assertThat(map.get(uid).getLocation(), nullValue());
+
+        Translog.Location location = new Translog.Location(randomNonNegativeLong(), randomNonNegativeLong(), randomInt());
+        IndexVersionValue withLocation = new IndexVersionValue(location, randomNonNegativeLong(), randomNonNegativeLong(),
+            randomNonNegativeLong());
+        assertThat(map.put(uid, withLocation), equalTo(withoutLocation));
+        assertThat(map.get(uid).getLocation(), equalTo(location));
+
+        DeleteVersionValue delete = new DeleteVersionValue(randomNonNegativeLong(), randomNonNegativeLong(), randomNonNegativeLong(),
+            randomNonNegativeLong());
+        assertThat(map.put(uid, delete), equalTo(withLocation));
+        assertThat(map.get(uid), equalTo(delete));
+        assertTrue(map.get(uid).isDelete());
+        assertThat(map.remove(uid), equalTo(delete));
+        assertThat(map.get(uid), nullValue());
+        assertEquals(0, map.size());
+    }
+
+    public void testConcurrentAccess() throws InterruptedException {
+        PagedVersionMap map = new PagedVersionMap(randomIntBetween(0, 100));
+        int numThreads = randomIntBetween(2, 5);
+        int numUidsPerThread = randomIntBetween(100, 2000);
+        Thread[] threads = new Thread[numThreads];
+        CountDownLatch startGun = new CountDownLatch(1);
+        for (int t = 0; t < numThreads; t++) {
+            final int threadId = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    startGun.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                // every thread works on its own uids so the expected values are deterministic
+                for (int i = 0; i < numUidsPerThread; i++) {
+                    BytesRef uid = new BytesRef(threadId + "_" + i);
+                    IndexVersionValue value = new IndexVersionValue(null, i, i, threadId);
+                    assertThat(map.put(uid, value), nullValue());
+                    assertThat(map.get(uid), equalTo(value));
+                    if (i % 2 == 0) {
+                        assertThat(map.remove(uid), equalTo(value));
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        startGun.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(numThreads * (numUidsPerThread / 2), map.size());
+        for (int t = 0; t < numThreads; t++) {
+            for (int i = 0; i < numUidsPerThread; i++) {
+                VersionValue value = map.get(new BytesRef(t + "_" + i));
+                if (i % 2 == 0) {
+                    assertThat(value, nullValue());
+                } else {
+                    assertThat(value, equalTo(new IndexVersionValue(null, i, i, t)));
+                }
+            }
+        }
+    }
+
+    private VersionValue randomVersionValue() {
+        if (randomBoolean()) {
+            return new DeleteVersionValue(randomNonNegativeLong(), randomNonNegativeLong(), randomNonNegativeLong(),
+                randomNonNegativeLong());
+        }
+        Translog.Location location = randomBoolean() ? null
+            : new Translog.Location(randomNonNegativeLong(), randomNonNegativeLong(), randomInt());
+        return new IndexVersionValue(location, randomNonNegativeLong(), randomNonNegativeLong(), randomNonNegativeLong());
+    }
+}
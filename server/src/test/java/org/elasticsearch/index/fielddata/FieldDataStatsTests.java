@@ -18,8 +18,11 @@
  */
 package org.elasticsearch.index.fielddata;
 
+import com.carrotsearch.hppc.ObjectLongHashMap;
+import org.elasticsearch.Version;
 import org.elasticsearch.common.FieldMemoryStats;
 import org.elasticsearch.common.FieldMemoryStatsTests;
+import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.test.ESTestCase;
@@ -30,8 +33,9 @@ public class FieldDataStatsTests extends ESTestCase {
 
     public void testSerialize() throws IOException {
         FieldMemoryStats map = randomBoolean() ? null : FieldMemoryStatsTests.randomFieldMemoryStats();
+        GlobalOrdinalsStats globalOrdinals = randomBoolean() ? null : randomGlobalOrdinalsStats();
         FieldDataStats stats = new FieldDataStats(randomNonNegativeLong(), randomNonNegativeLong(), map == null ? null :
-            map);
+            map, globalOrdinals);
         BytesStreamOutput out = new BytesStreamOutput();
         stats.writeTo(out);
         FieldDataStats read = new FieldDataStats();
@@ -41,5 +45,47 @@ public class FieldDataStatsTests extends ESTestCase {
         assertEquals(stats.evictions, read.evictions);
         assertEquals(stats.memorySize, read.memorySize);
         assertEquals(stats.getFields(), read.getFields());
+        assertEquals(stats.getGlobalOrdinals(), read.getGlobalOrdinals());
+    }
+
+    public void testSerializeBeforeGlobalOrdinalsStats() throws IOException {
+        FieldDataStats stats = new FieldDataStats(randomNonNegativeLong(), randomNonNegativeLong(), null,
+            randomGlobalOrdinalsStats());
+        BytesStreamOutput out = new BytesStreamOutput();
+        out.setVersion(Version.V_6_6_0);
+        stats.writeTo(out);
+        FieldDataStats read = new FieldDataStats();
+        StreamInput input = out.bytes().streamInput();
+        input.setVersion(Version.V_6_6_0);
+        read.readFrom(input);
+        assertEquals(-1, input.read());
+        assertEquals(stats.memorySize, read.memorySize);
+        assertNull(read.getGlobalOrdinals());
+    }
+
+    public void testGlobalOrdinalsOmittedWhenEmpty() throws IOException {
+        FieldDataStats stats = new FieldDataStats(1, 2, null);
+        assertEquals("{\"fielddata\":{\"memory_size_in_bytes\":1,\"evictions\":2}}", Strings.toString(stats, false, false));
+
+        ObjectLongHashMap<String> fieldBuildTimes = new ObjectLongHashMap<>();
+        fieldBuildTimes.put("field", 3);
+        stats.add(new FieldDataStats(0, 0, null, new GlobalOrdinalsStats(3, fieldBuildTimes)));
+        stats.add(new FieldDataStats(0, 0, null, new GlobalOrdinalsStats(4, null)));
+        assertEquals(7, stats.getGlobalOrdinals().getBuildTimeInMillis());
+        assertEquals(3, stats.getGlobalOrdinals().getFieldBuildTimeInMillis("field"));
+        assertEquals("{\"fielddata\":{\"memory_size_in_bytes\":1,\"evictions\":2,\"global_ordinals\":{\"build_time_in_millis\":7,"
+            + "\"fields\":{\"field\":{\"build_time_in_millis\":3}}}}}", Strings.toString(stats, false, false));
+    }
+
+    private static GlobalOrdinalsStats randomGlobalOrdinalsStats() {
+        ObjectLongHashMap<String> fieldBuildTimes = null;
+        if (randomBoolean()) {
+            fieldBuildTimes = new ObjectLongHashMap<>();
+            int numFields = randomIntBetween(0, 5);
+            for (int i = 0; i < numFields; i++) {
+                fieldBuildTimes.put(randomAlphaOfLength(5), randomNonNegativeLong());
+            }
+        }
+        return new GlobalOrdinalsStats(randomNonNegativeLong(), fieldBuildTimes);
     }
 }
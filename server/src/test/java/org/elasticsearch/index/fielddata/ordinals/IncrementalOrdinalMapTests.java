@@ -0,0 +1,256 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.index.fielddata.ordinals;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.OrdinalMap;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.packed.PackedInts;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.lucene.index.ElasticsearchDirectoryReader;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.fielddata.AtomicOrdinalsFieldData;
+import org.elasticsearch.index.fielddata.plain.AbstractAtomicOrdinalsFieldData;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.breaker.HierarchyCircuitBreakerService;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.test.IndexSettingsModule;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Collections;
+
+public class IncrementalOrdinalMapTests extends ESTestCase {
+
+    private static final String FIELD = "field";
+
+    public void testExtendWithNewSegments() throws IOException {
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE))) {
+            final int numTerms = randomIntBetween(500, 1000);
+            final int numBaseSegments = randomIntBetween(2, 5);
+            for (int i = 0; i < numBaseSegments; i++) {
+                addSegment(writer, i, numTerms, randomIntBetween(1000, 2000));
+            }
+            IncrementalOrdinalMap previous;
+            try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                previous = buildAndCheck(reader, null);
+                assertFalse(previous.isIncremental());
+            }
+            final int numIterations = randomIntBetween(1, 4);
+            for (int i = 0; i < numIterations; i++) {
+                // new segments mostly repeat the terms of the base and add a few new ones
+                addSegment(writer, numBaseSegments + i, numTerms + 10, randomIntBetween(1, 3));
+                try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                    final IncrementalOrdinalMap map = buildAndCheck(reader, previous);
+                    assertTrue(map.isIncremental());
+                    previous = map;
+                }
+            }
+            // a refresh without new segments reuses the base as is
+            try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                final IncrementalOrdinalMap map = buildAndCheck(reader, previous);
+                assertEquals(previous.isIncremental(), map.isIncremental());
+            }
+        }
+    }
+
+    public void testRebuildWhenDeltaIsLarge() throws IOException {
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE))) {
+            addSegment(writer, 0, 100, 100);
+            addSegment(writer, 1, 100, 100);
+            final IncrementalOrdinalMap previous;
+            try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                previous = buildAndCheck(reader, null);
+            }
+            addSegment(writer, 2, 10000, 1000);
+            try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                assertFalse(buildAndCheck(reader, previous).isIncremental());
+            }
+        }
+    }
+
+    public void testRebuildWhenBaseSegmentIsGone() throws IOException {
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE))) {
+            addSegment(writer, 0, 1000, 500);
+            addSegment(writer, 1, 1000, 500);
+            addSegment(writer, 2, 1000, 500);
+            final IncrementalOrdinalMap previous;
+            try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                previous = buildAndCheck(reader, null);
+            }
+            // deleting all documents of a segment drops it
+            writer.deleteDocuments(new Term("segment", "1"));
+            addSegment(writer, 3, 1000, 5);
+            try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                assertEquals(3, reader.leaves().size());
+                assertFalse(buildAndCheck(reader, previous).isIncremental());
+            }
+        }
+    }
+
+    public void testPreviousGlobalOrdinalsAreRemovedOnClose() throws IOException {
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE))) {
+            addSegment(writer, 0, 100, 10);
+            addSegment(writer, 1, 100, 10);
+            final PreviousGlobalOrdinals previousGlobalOrdinals = new PreviousGlobalOrdinals();
+            final ShardId shardId = new ShardId("index", "_na_", 0);
+            final IncrementalOrdinalMap map;
+            try (DirectoryReader first = ElasticsearchDirectoryReader.wrap(DirectoryReader.open(writer), shardId)) {
+                assertNull(previousGlobalOrdinals.get(first));
+                map = buildAndCheck(first, null);
+                previousGlobalOrdinals.put(first, map);
+                addSegment(writer, 2, 100, 1);
+                try (DirectoryReader second = ElasticsearchDirectoryReader.wrap(DirectoryReader.open(writer), shardId)) {
+                    assertSame(map, previousGlobalOrdinals.get(second));
+                    previousGlobalOrdinals.put(second, buildAndCheck(second, map));
+                    first.close();
+                    // the global ordinals of the second reader are not removed when the first one closes
+                    assertEquals(1, previousGlobalOrdinals.size());
+                    assertNotSame(map, previousGlobalOrdinals.get(second));
+                }
+                assertEquals(0, previousGlobalOrdinals.size());
+            }
+        }
+    }
+
+    public void testLazyOrdinalMapIsAccountedUntilReaderIsClosed() throws IOException {
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE))) {
+            addSegment(writer, 0, 100, 50);
+            addSegment(writer, 1, 100, 50);
+            final IncrementalOrdinalMap previous;
+            try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                previous = buildAndCheck(reader, null);
+            }
+            addSegment(writer, 2, 110, 2);
+            final CircuitBreaker breaker = new HierarchyCircuitBreakerService(Settings.EMPTY,
+                new ClusterSettings(Settings.EMPTY, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS)).getBreaker(CircuitBreaker.FIELDDATA);
+            final DirectoryReader reader = DirectoryReader.open(writer);
+            try {
+                final IncrementalOrdinalMap map = buildAndCheck(reader, previous);
+                assertTrue(map.isIncremental());
+                final AtomicOrdinalsFieldData[] atomicFD = new AtomicOrdinalsFieldData[reader.leaves().size()];
+                for (int i = 0; i < atomicFD.length; i++) {
+                    atomicFD[i] = atomicFieldData(reader.leaves().get(i).reader());
+                }
+                final GlobalOrdinalsIndexFieldData fieldData = new GlobalOrdinalsIndexFieldData(
+                    IndexSettingsModule.newIndexSettings("index", Settings.EMPTY), FIELD, atomicFD, map, 0, 0,
+                    AbstractAtomicOrdinalsFieldData.DEFAULT_SCRIPT_FUNCTION, breaker, reader.getReaderCacheHelper());
+                assertEquals(0, breaker.getUsed());
+                final OrdinalMap ordinalMap = fieldData.getOrdinalMap();
+                assertEquals(map.getValueCount(), ordinalMap.getValueCount());
+                assertEquals(ordinalMap.ramBytesUsed(), breaker.getUsed());
+                // the map is only built and accounted once
+                assertSame(ordinalMap, fieldData.getOrdinalMap());
+                assertEquals(ordinalMap.ramBytesUsed(), breaker.getUsed());
+            } finally {
+                reader.close();
+            }
+            assertEquals(0, breaker.getUsed());
+        }
+    }
+
+    private static AtomicOrdinalsFieldData atomicFieldData(LeafReader reader) {
+        return new AbstractAtomicOrdinalsFieldData(AbstractAtomicOrdinalsFieldData.DEFAULT_SCRIPT_FUNCTION) {
+            @Override
+            public SortedSetDocValues getOrdinalsValues() {
+                try {
+                    return DocValues.getSortedSet(reader, FIELD);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public long ramBytesUsed() {
+                return 0;
+            }
+
+            @Override
+            public Collection<Accountable> getChildResources() {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private static void addSegment(IndexWriter writer, int segment, int numTerms, int numDocs) throws IOException {
+        for (int i = 0; i < numDocs; i++) {
+            final Document doc = new Document();
+            doc.add(new StringField("segment", Integer.toString(segment), Field.Store.NO));
+            final int numValues = randomIntBetween(0, 3);
+            for (int j = 0; j < numValues; j++) {
+                doc.add(new SortedSetDocValuesField(FIELD, new BytesRef(Integer.toString(randomInt(numTerms - 1)))));
+            }
+            writer.addDocument(doc);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Builds the global ordinals of the given reader and checks that they are the same as the ones of an {@link OrdinalMap}.
+     */
+    private static IncrementalOrdinalMap buildAndCheck(DirectoryReader reader, IncrementalOrdinalMap previous) throws IOException {
+        final SortedSetDocValues[] values = new SortedSetDocValues[reader.leaves().size()];
+        final Object[] keys = new Object[reader.leaves().size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = DocValues.getSortedSet(reader.leaves().get(i).reader(), FIELD);
+            keys[i] = reader.leaves().get(i).reader().getCoreCacheHelper().getKey();
+        }
+        final IncrementalOrdinalMap map = IncrementalOrdinalMap.build(values, keys, previous);
+        final OrdinalMap expected = OrdinalMap.build(null, values, PackedInts.DEFAULT);
+        assertEquals(expected.getValueCount(), map.getValueCount());
+        for (int i = 0; i < values.length; i++) {
+            final LongValues expectedGlobalOrds = expected.getGlobalOrds(i);
+            final LongValues globalOrds = map.getGlobalOrds(i);
+            for (long ord = 0; ord < values[i].getValueCount(); ord++) {
+                assertEquals(expectedGlobalOrds.get(ord), globalOrds.get(ord));
+            }
+        }
+        for (long globalOrd = 0; globalOrd < expected.getValueCount(); globalOrd++) {
+            final BytesRef expectedTerm = BytesRef.deepCopyOf(
+                values[expected.getFirstSegmentNumber(globalOrd)].lookupOrd(expected.getFirstSegmentOrd(globalOrd)));
+            assertEquals(expectedTerm, map.lookupOrd(globalOrd, values));
+        }
+        return map;
+    }
+}
@@ -66,6 +66,7 @@ import org.elasticsearch.index.mapper.SourceToParse;
 import org.elasticsearch.index.seqno.SequenceNumbers;
 import org.elasticsearch.index.translog.Translog;
 import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.indices.TranslogGroupCommitService;
 import org.elasticsearch.indices.breaker.CircuitBreakerService;
 import org.elasticsearch.indices.breaker.CircuitBreakerStats;
 import org.elasticsearch.indices.recovery.RecoveryState;
@@ -644,7 +645,7 @@ public class IndexShardIT extends ESSingleNodeTestCase {
             shard.store(), indexService.getIndexSortSupplier(), indexService.cache(), indexService.mapperService(),
             indexService.similarityService(), shard.getEngineFactory(), indexService.getIndexEventListener(), wrapper,
             indexService.getThreadPool(), indexService.getBigArrays(), null, Collections.emptyList(), Arrays.asList(listeners),
-            () -> {}, cbs);
+            () -> {}, cbs, new TranslogGroupCommitService(Settings.EMPTY, indexService.getThreadPool()));
         return newShard;
     }
 
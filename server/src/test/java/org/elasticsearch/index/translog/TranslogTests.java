@@ -31,6 +31,7 @@ import org.apache.lucene.mockfile.FilterFileChannel;
 import org.apache.lucene.mockfile.FilterFileSystemProvider;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.ByteArrayDataOutput;
+import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.store.MockDirectoryWrapper;
 import org.apache.lucene.util.LineFileDocs;
 import org.apache.lucene.util.LuceneTestCase;
@@ -233,6 +234,7 @@ public class TranslogTests extends ESTestCase {
             // only randomize between nog age retention and a long one, so failures will have a chance of reproducing
             .put(IndexSettings.INDEX_TRANSLOG_RETENTION_AGE_SETTING.getKey(), randomBoolean() ? "-1ms" : "1h")
             .put(IndexSettings.INDEX_TRANSLOG_RETENTION_SIZE_SETTING.getKey(), randomIntBetween(-1, 2048) + "b")
+            .put(IndexSettings.INDEX_TRANSLOG_MMAP_SETTING.getKey(), randomBoolean())
             .build();
         return getTranslogConfig(path, settings);
     }
@@ -615,6 +617,79 @@ public class TranslogTests extends ESTestCase {
         assertNull(translog.readOperation(new Location(100, 0, 0)));
     }
 
+    public void testMappedReaders() throws IOException {
+        assumeTrue("test requires unmapping support", MMapDirectory.UNMAP_SUPPORTED);
+        final Settings settings = Settings.builder()
+            .put(IndexMetaData.SETTING_VERSION_CREATED, org.elasticsearch.Version.CURRENT)
+            .put(IndexSettings.INDEX_TRANSLOG_MMAP_SETTING.getKey(), true)
+            .build();
+        final Path path = createTempDir();
+        final List<Translog.Operation> ops = new ArrayList<>();
+        final List<Translog.Location> locations = new ArrayList<>();
+        final int numGenerations = randomIntBetween(1, 5);
+        final TranslogConfig config = getTranslogConfig(path, settings);
+        final String translogUUID;
+        try (Translog mappedTranslog = createTranslog(config)) {
+            translogUUID = mappedTranslog.getTranslogUUID();
+            int seqNo = 0;
+            for (int gen = 0; gen < numGenerations; gen++) {
+                for (int i = randomIntBetween(1, 20); i > 0; i--) {
+                    final byte[] source = randomByteArrayOfLength(randomIntBetween(1, 4096));
+                    locations.add(addToTranslogAndList(mappedTranslog, ops,
+                        new Translog.Index("test", Integer.toString(seqNo), seqNo, primaryTerm.get(), source)));
+                    seqNo++;
+                }
+                mappedTranslog.rollGeneration();
+            }
+            // the initial empty generation is rolled too
+            assertThat(mappedTranslog.getReaders().size(), equalTo(numGenerations + 1));
+            for (TranslogReader reader : mappedTranslog.getReaders()) {
+                assertTrue(reader.isMapped());
+            }
+            try (Translog.Snapshot snapshot = mappedTranslog.newSnapshot()) {
+                assertThat(snapshot, containsOperationsInAnyOrder(ops));
+            }
+            for (int i = 0; i < ops.size(); i++) {
+                assertEquals(ops.get(i), mappedTranslog.readOperation(locations.get(i)));
+            }
+        }
+        // recovered generations are mapped too
+        try (Translog reopened = openTranslog(config, translogUUID)) {
+            for (TranslogReader reader : reopened.getReaders()) {
+                assertTrue(reader.isMapped());
+            }
+            try (Translog.Snapshot snapshot = reopened.newSnapshot()) {
+                assertThat(snapshot, containsOperationsInAnyOrder(ops));
+            }
+        }
+    }
+
+    public void testMappedReadersAreNotReadAfterClose() throws IOException {
+        assumeTrue("test requires unmapping support", MMapDirectory.UNMAP_SUPPORTED);
+        final Settings settings = Settings.builder()
+            .put(IndexMetaData.SETTING_VERSION_CREATED, org.elasticsearch.Version.CURRENT)
+            .put(IndexSettings.INDEX_TRANSLOG_MMAP_SETTING.getKey(), true)
+            .build();
+        final Translog mappedTranslog = createTranslog(getTranslogConfig(createTempDir(), settings));
+        final int numOps = randomIntBetween(2, 20);
+        for (int i = 0; i < numOps; i++) {
+            mappedTranslog.add(new Translog.Index("test", Integer.toString(i), i, primaryTerm.get(), new byte[]{1}));
+        }
+        mappedTranslog.rollGeneration();
+        final Translog.Snapshot snapshot = mappedTranslog.newSnapshot();
+        assertNotNull(snapshot.next());
+        // closing the translog must not unmap the generation under the snapshot, which then fails to read instead of crashing
+        mappedTranslog.close();
+        final Exception e = expectThrows(Exception.class, () -> {
+            Translog.Operation op;
+            do {
+                op = snapshot.next();
+            } while (op != null);
+        });
+        assertTrue(e.toString(), e instanceof IOException || e instanceof AlreadyClosedException);
+        snapshot.close();
+    }
+
     public void testSnapshotWithNewTranslog() throws IOException {
         List<Closeable> toClose = new ArrayList<>();
         try {
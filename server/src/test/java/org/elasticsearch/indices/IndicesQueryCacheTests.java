@@ -40,13 +40,18 @@ import org.apache.lucene.store.Directory;
 import org.elasticsearch.core.internal.io.IOUtils;
 import org.elasticsearch.common.lucene.index.ElasticsearchDirectoryReader;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.cache.query.CostAwareQueryCachingPolicy;
+import org.elasticsearch.index.cache.query.FilterCacheStats;
 import org.elasticsearch.index.cache.query.QueryCacheStats;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.test.ESTestCase;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Set;
 
+import static org.hamcrest.Matchers.greaterThan;
+
 public class IndicesQueryCacheTests extends ESTestCase {
 
     private static class DummyQuery extends Query {
@@ -350,6 +355,45 @@ public class IndicesQueryCacheTests extends ESTestCase {
         cache.close(); // this triggers some assertions
     }
 
+    public void testReportsCostsToCostAwarePolicy() throws IOException {
+        Directory dir = newDirectory();
+        IndexWriter w = new IndexWriter(dir, newIndexWriterConfig());
+        w.addDocument(new Document());
+        DirectoryReader r = DirectoryReader.open(w);
+        w.close();
+        ShardId shard = new ShardId("index", "_na_", 0);
+        r = ElasticsearchDirectoryReader.wrap(r, shard);
+        IndexSearcher s = new IndexSearcher(r);
+        CostAwareQueryCachingPolicy policy = new CostAwareQueryCachingPolicy();
+        s.setQueryCachingPolicy(policy);
+
+        Settings settings = Settings.builder()
+                .put(IndicesQueryCache.INDICES_QUERIES_CACHE_ALL_SEGMENTS_SETTING.getKey(), true)
+                .build();
+        IndicesQueryCache cache = new IndicesQueryCache(settings);
+        s.setQueryCache(cache);
+
+        // search until the policy caches the query
+        while (cache.getStats(shard).getCacheCount() == 0) {
+            assertEquals(1, s.count(new DummyQuery(0)));
+        }
+        assertEquals(1, s.count(new DummyQuery(0)));
+        assertEquals(1, s.count(new DummyQuery(0)));
+
+        List<FilterCacheStats> filters = policy.filterStats();
+        assertEquals(1, filters.size());
+        FilterCacheStats filter = filters.get(0);
+        assertEquals(new DummyQuery(0).toString(), filter.getFilter());
+        assertEquals(1, filter.getCacheCount());
+        assertEquals(2, filter.getHitCount());
+        assertThat(filter.getBuildTimeInNanos(), greaterThan(0L));
+        assertThat(filter.getMemorySizeInBytes(), greaterThan(0L));
+
+        IOUtils.close(r, dir);
+        cache.onClose(shard);
+        cache.close();
+    }
+
     private static class DummyWeight extends Weight {
 
         private final Weight weight;
@@ -21,16 +21,21 @@ package org.elasticsearch.indices;
 
 import org.elasticsearch.action.admin.indices.alias.Alias;
 import org.elasticsearch.action.admin.indices.forcemerge.ForceMergeResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.MergePolicyConfig;
 import org.elasticsearch.index.cache.request.RequestCacheStats;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
 import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
 import org.elasticsearch.search.aggregations.bucket.histogram.Histogram.Bucket;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.elasticsearch.test.ESIntegTestCase;
 import org.elasticsearch.test.hamcrest.ElasticsearchAssertions;
 import org.elasticsearch.test.junit.annotations.TestLogging;
@@ -45,7 +50,9 @@ import java.util.List;
 import static org.elasticsearch.search.aggregations.AggregationBuilders.dateHistogram;
 import static org.elasticsearch.search.aggregations.AggregationBuilders.dateRange;
 import static org.elasticsearch.search.aggregations.AggregationBuilders.filter;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.terms;
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchResponse;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
@@ -414,6 +421,131 @@ public class IndicesRequestCacheIT extends ESIntegTestCase {
         assertCacheState(client, "index", 2, 2);
     }
 
+    public void testSegmentAggregationsCache() throws Exception {
+        Client client = client();
+        assertAcked(client.admin().indices().prepareCreate("index").addMapping("type", "d", "type=date")
+            .setSettings(Settings.builder().put(IndicesRequestCache.INDEX_CACHE_REQUEST_ENABLED_SETTING.getKey(), false)
+                .put(IndicesRequestCache.INDEX_CACHE_REQUEST_SEGMENT_AGGREGATIONS_SETTING.getKey(), true)
+                .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1).put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+                // one segment per refresh below
+                .put(IndexSettings.INDEX_REFRESH_INTERVAL_SETTING.getKey(), -1)
+                .put(MergePolicyConfig.INDEX_MERGE_ENABLED, false)).get());
+        ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        // all documents of the first segment are in the last week
+        client.prepareIndex("index", "type", "1").setSource("d", now.minusDays(2)).get();
+        client.prepareIndex("index", "type", "2").setSource("d", now.minusDays(3)).get();
+        refresh("index");
+        // some documents of the second segment are in the last week
+        client.prepareIndex("index", "type", "3").setSource("d", now.minusDays(1)).get();
+        client.prepareIndex("index", "type", "4").setSource("d", now.minusDays(10)).get();
+        refresh("index");
+        assertCacheState(client, "index", 0, 0);
+
+        final SearchResponse r1 = searchLastWeekPerDay(client);
+        assertThat(r1.getHits().getTotalHits().value, equalTo(3L));
+        // the second segment can't be cached since the documents it matches change over time
+        assertCacheState(client, "index", 0, 1);
+
+        final SearchResponse r2 = searchLastWeekPerDay(client);
+        assertThat(r2.getHits().getTotalHits().value, equalTo(3L));
+        assertCacheState(client, "index", 1, 1);
+
+        // a new segment only needs to be collected itself
+        client.prepareIndex("index", "type", "5").setSource("d", now.minusDays(2)).get();
+        refresh("index");
+        final SearchResponse r3 = searchLastWeekPerDay(client);
+        assertThat(r3.getHits().getTotalHits().value, equalTo(4L));
+        assertCacheState(client, "index", 2, 2);
+    }
+
+    public void testSegmentAggregationsCacheReturnsSameTerms() throws Exception {
+        Client client = client();
+        assertAcked(client.admin().indices().prepareCreate("index").addMapping("type", "k", "type=keyword", "n", "type=long")
+            .setSettings(Settings.builder().put(IndicesRequestCache.INDEX_CACHE_REQUEST_ENABLED_SETTING.getKey(), false)
+                .put(IndicesRequestCache.INDEX_CACHE_REQUEST_SEGMENT_AGGREGATIONS_SETTING.getKey(), true)
+                .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 2).put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+                .put(IndexSettings.INDEX_REFRESH_INTERVAL_SETTING.getKey(), -1)
+                .put(MergePolicyConfig.INDEX_MERGE_ENABLED, false)).get());
+        int id = 0;
+        for (int segment = 0; segment < 4; segment++) {
+            // every segment has its own most frequent terms, so the top terms of a shard are not the top terms of its segments
+            BulkRequestBuilder bulk = client.prepareBulk();
+            for (int term = 0; term < 20; term++) {
+                int count = randomIntBetween(0, 3) + (term % 4 == segment ? 5 : 0);
+                for (int i = 0; i < count; i++) {
+                    bulk.add(client.prepareIndex("index", "type", Integer.toString(id++))
+                        .setSource("k", "term" + term, "n", randomIntBetween(0, 9)));
+                }
+            }
+            assertNoFailures(bulk.get());
+            refresh("index");
+        }
+
+        // the first search collects the segments, the second one loads them from the cache
+        for (int i = 0; i < 2; i++) {
+            SearchResponse perSegment = searchTopTerms(client, null);
+            SearchResponse perShard = searchTopTerms(client, false);
+            assertEquals(Strings.toString(perShard.getAggregations()), Strings.toString(perSegment.getAggregations()));
+        }
+        RequestCacheStats requestCacheStats = client.admin().indices().prepareStats("index").setRequestCache(true).get().getTotal()
+            .getRequestCache();
+        assertThat(requestCacheStats.getHitCount(), greaterThan(0L));
+        assertEquals(requestCacheStats.getHitCount(), requestCacheStats.getMissCount());
+    }
+
+    public void testSegmentAggregationsCacheSkipsHighCardinalityTerms() throws Exception {
+        Client client = client();
+        assertAcked(client.admin().indices().prepareCreate("index").addMapping("type", "k", "type=keyword")
+            .setSettings(Settings.builder().put(IndicesRequestCache.INDEX_CACHE_REQUEST_ENABLED_SETTING.getKey(), false)
+                .put(IndicesRequestCache.INDEX_CACHE_REQUEST_SEGMENT_AGGREGATIONS_SETTING.getKey(), true)
+                .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1).put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+                .put(IndexSettings.INDEX_REFRESH_INTERVAL_SETTING.getKey(), -1)).get());
+        final int shardSize = randomIntBetween(1, 5);
+        final int numTerms = shardSize * IndicesService.MAX_SEGMENT_TERMS_PER_SHARD_SIZE + randomIntBetween(1, 10);
+        BulkRequestBuilder bulk = client.prepareBulk();
+        for (int i = 0; i < numTerms; i++) {
+            bulk.add(client.prepareIndex("index", "type", Integer.toString(i)).setSource("k", "term" + i));
+        }
+        assertNoFailures(bulk.get());
+        refresh("index");
+
+        // the segment has too many terms to keep them all, so the shard is collected at once and is not cached
+        for (int i = 0; i < 2; i++) {
+            SearchResponse response = client.prepareSearch("index").setSearchType(SearchType.QUERY_THEN_FETCH).setSize(0)
+                .addAggregation(terms("k").field("k").size(1).shardSize(shardSize))
+                .get();
+            assertSearchResponse(response);
+            Terms terms = response.getAggregations().get("k");
+            assertEquals(1, terms.getBuckets().size());
+        }
+        assertCacheState(client, "index", 0, 0);
+    }
+
+    private static SearchResponse searchTopTerms(Client client, Boolean requestCache) {
+        SearchResponse response = client.prepareSearch("index").setSearchType(SearchType.QUERY_THEN_FETCH).setSize(0)
+            .setRequestCache(requestCache)
+            .addAggregation(terms("k").field("k").size(3).shardSize(4).showTermDocCountError(true)
+                .subAggregation(terms("n").field("n").size(2).shardSize(2).showTermDocCountError(true)))
+            .get();
+        assertSearchResponse(response);
+        return response;
+    }
+
+    private static SearchResponse searchLastWeekPerDay(Client client) {
+        SearchResponse response = client.prepareSearch("index").setSearchType(SearchType.QUERY_THEN_FETCH).setSize(0)
+            .setQuery(QueryBuilders.rangeQuery("d").gte("now-7d"))
+            .addAggregation(dateHistogram("histo").field("d").dateHistogramInterval(DateHistogramInterval.DAY))
+            .get();
+        assertSearchResponse(response);
+        Histogram histogram = response.getAggregations().get("histo");
+        long docCount = 0;
+        for (Histogram.Bucket bucket : histogram.getBuckets()) {
+            docCount += bucket.getDocCount();
+        }
+        assertEquals(response.getHits().getTotalHits().value, docCount);
+        return response;
+    }
+
     private static void assertCacheState(Client client, String index, long expectedHits, long expectedMisses) {
         RequestCacheStats requestCacheStats = client.admin().indices().prepareStats(index).setRequestCache(true).get().getTotal()
                 .getRequestCache();
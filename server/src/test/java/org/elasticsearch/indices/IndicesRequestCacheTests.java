@@ -26,6 +26,7 @@ import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.TermQuery;
@@ -108,6 +109,68 @@ public class IndicesRequestCacheTests extends ESTestCase {
         assertEquals(0, cache.numRegisteredCloseListeners());
     }
 
+    public void testSegmentCache() throws Exception {
+        ShardRequestCache requestCacheStats = new ShardRequestCache();
+        IndicesRequestCache cache = new IndicesRequestCache(Settings.EMPTY);
+        Directory dir = newDirectory();
+        IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE));
+
+        writer.addDocument(newDoc(0, "foo"));
+        writer.addDocument(newDoc(1, "bar"));
+        DirectoryReader reader = ElasticsearchDirectoryReader.wrap(DirectoryReader.open(writer), new ShardId("foo", "bar", 1));
+        TermQueryBuilder termQuery = new TermQueryBuilder("id", "0");
+        BytesReference termBytes = XContentHelper.toXContent(termQuery, XContentType.JSON, false);
+        AtomicBoolean indexShard = new AtomicBoolean(true);
+        TestEntity entity = new TestEntity(requestCacheStats, indexShard);
+        assertEquals(1, reader.leaves().size());
+        IndexReader.CacheHelper segmentCacheHelper = reader.leaves().get(0).reader().getReaderCacheHelper();
+
+        Loader loader = new Loader(reader, 0);
+        BytesReference value = cache.getOrCompute(entity, loader, segmentCacheHelper, termBytes);
+        assertEquals("foo", value.streamInput().readString());
+        assertFalse(loader.loadedFromCache);
+        assertEquals(1, requestCacheStats.stats().getMissCount());
+        assertEquals(1, cache.count());
+        assertEquals(1, cache.numRegisteredCloseListeners());
+
+        // a new segment doesn't invalidate the entry of the existing one
+        writer.addDocument(newDoc(2, "baz"));
+        DirectoryReader secondReader = DirectoryReader.openIfChanged(reader);
+        assertEquals(2, secondReader.leaves().size());
+        assertSame(segmentCacheHelper.getKey(), secondReader.leaves().get(0).reader().getReaderCacheHelper().getKey());
+        loader = new Loader(secondReader, 0);
+        value = cache.getOrCompute(entity, loader, secondReader.leaves().get(0).reader().getReaderCacheHelper(), termBytes);
+        assertEquals("foo", value.streamInput().readString());
+        assertTrue(loader.loadedFromCache);
+        assertEquals(1, requestCacheStats.stats().getHitCount());
+
+        // the segment is still used by the second reader
+        reader.close();
+        cache.cleanCache();
+        assertEquals(1, cache.count());
+
+        // a delete changes the reader of the segment
+        writer.deleteDocuments(new Term("id", "1"));
+        DirectoryReader thirdReader = DirectoryReader.openIfChanged(secondReader);
+        IndexReader.CacheHelper deletesCacheHelper = thirdReader.leaves().get(0).reader().getReaderCacheHelper();
+        assertNotSame(segmentCacheHelper.getKey(), deletesCacheHelper.getKey());
+        loader = new Loader(thirdReader, 0);
+        value = cache.getOrCompute(entity, loader, deletesCacheHelper, termBytes);
+        assertEquals("foo", value.streamInput().readString());
+        assertFalse(loader.loadedFromCache);
+        assertEquals(2, requestCacheStats.stats().getMissCount());
+        assertEquals(2, cache.count());
+
+        // closing the last reader of a segment cleans its entries, the writer pools segment readers too
+        IOUtils.close(secondReader, thirdReader, writer);
+        cache.cleanCache();
+        assertEquals(0, cache.count());
+        assertEquals(0, requestCacheStats.stats().getMemorySize().bytesAsInt());
+        assertEquals(0, cache.numRegisteredCloseListeners());
+
+        IOUtils.close(dir, cache);
+    }
+
     public void testCacheDifferentReaders() throws Exception {
         IndicesRequestCache cache = new IndicesRequestCache(Settings.EMPTY);
         AtomicBoolean indexShard =  new AtomicBoolean(true);
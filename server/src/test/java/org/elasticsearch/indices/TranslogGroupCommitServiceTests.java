@@ -0,0 +1,195 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.indices;
+
+import org.elasticsearch.common.CheckedConsumer;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.translog.Translog;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.threadpool.TestThreadPool;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.After;
+import org.junit.Before;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class TranslogGroupCommitServiceTests extends ESTestCase {
+
+    private ThreadPool threadPool;
+
+    @Before
+    public void setUpThreadPool() {
+        // at least two flush threads so that a slow fsync does not block the fsyncs of other translogs
+        threadPool = new TestThreadPool(getTestName(), Settings.builder().put("thread_pool.flush.max", randomIntBetween(2, 4)).build());
+    }
+
+    @After
+    public void tearDownThreadPool() {
+        ThreadPool.terminate(threadPool, 10, TimeUnit.SECONDS);
+    }
+
+    public void testDisabledByDefault() {
+        assertFalse(new TranslogGroupCommitService(Settings.EMPTY, threadPool).isEnabled());
+        assertTrue(new TranslogGroupCommitService(Settings.builder()
+            .put(TranslogGroupCommitService.GROUP_COMMIT_ENABLED_SETTING.getKey(), true).build(), threadPool).isEnabled());
+    }
+
+    public void testSyncsAllTranslogs() throws Exception {
+        TranslogGroupCommitService service = newService();
+        int numTranslogs = randomIntBetween(1, 10);
+        List<RecordingSyncer> syncers = new ArrayList<>();
+        for (int i = 0; i < numTranslogs; i++) {
+            syncers.add(new RecordingSyncer());
+        }
+        int numThreads = randomIntBetween(2, 8);
+        int numRequestsPerThread = randomIntBetween(10, 500);
+        CountDownLatch synced = new CountDownLatch(numThreads * numRequestsPerThread);
+        List<Exception> failures = new CopyOnWriteArrayList<>();
+        CountDownLatch startGun = new CountDownLatch(1);
+        Thread[] threads = new Thread[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    startGun.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                for (int i = 0; i < numRequestsPerThread; i++) {
+                    RecordingSyncer syncer = randomFrom(syncers);
+                    Translog.Location location = syncer.nextLocation();
+                    service.sync(syncer, location, e -> {
+                        if (e != null) {
+                            failures.add(e);
+                        } else if (syncer.syncedOffset.get() < location.translogLocation) {
+                            failures.add(new IllegalStateException("location " + location + " was not synced"));
+                        }
+                        synced.countDown();
+                    });
+                }
+            });
+            threads[t].start();
+        }
+        startGun.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(synced.await(30, TimeUnit.SECONDS));
+        assertThat(failures, equalTo(new ArrayList<>()));
+        int totalSyncs = 0;
+        for (RecordingSyncer syncer : syncers) {
+            totalSyncs += syncer.numSyncs.get();
+        }
+        assertThat(totalSyncs, greaterThan(0));
+        assertThat(totalSyncs, lessThanOrEqualTo(numThreads * numRequestsPerThread));
+    }
+
+    public void testFailureOnlyFailsRequestsOfTheSameTranslog() throws Exception {
+        TranslogGroupCommitService service = newService();
+        IOException failure = new IOException("boom");
+        RecordingSyncer good = new RecordingSyncer();
+        CheckedConsumer<Stream<Translog.Location>, IOException> bad = locations -> {
+            throw failure;
+        };
+        CountDownLatch done = new CountDownLatch(2);
+        AtomicReference<Exception> goodResult = new AtomicReference<>(new Exception("not called"));
+        AtomicReference<Exception> badResult = new AtomicReference<>();
+        service.sync(bad, new Translog.Location(1, 1, 1), e -> {
+            badResult.set(e);
+            done.countDown();
+        });
+        service.sync(good, good.nextLocation(), e -> {
+            goodResult.set(e);
+            done.countDown();
+        });
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertThat(badResult.get(), sameInstance(failure));
+        assertThat(goodResult.get(), nullValue());
+        assertThat(good.numSyncs.get(), equalTo(1));
+    }
+
+    public void testNotifiesListenersOnceTheirTranslogIsSynced() throws Exception {
+        TranslogGroupCommitService service = newService();
+        CountDownLatch slowSyncStarted = new CountDownLatch(1);
+        CountDownLatch releaseSlowSync = new CountDownLatch(1);
+        CheckedConsumer<Stream<Translog.Location>, IOException> slow = locations -> {
+            slowSyncStarted.countDown();
+            try {
+                releaseSlowSync.await();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        };
+        AtomicReference<Exception> slowResult = new AtomicReference<>(new Exception("not called"));
+        CountDownLatch slowSynced = new CountDownLatch(1);
+        service.sync(slow, new Translog.Location(1, 1, 1), e -> {
+            slowResult.set(e);
+            slowSynced.countDown();
+        });
+        assertTrue(slowSyncStarted.await(30, TimeUnit.SECONDS));
+        try {
+            // the fsync of another translog does not wait for the slow one, nor do its listeners
+            RecordingSyncer fast = new RecordingSyncer();
+            CountDownLatch fastSynced = new CountDownLatch(1);
+            service.sync(fast, fast.nextLocation(), e -> fastSynced.countDown());
+            assertTrue(fastSynced.await(30, TimeUnit.SECONDS));
+            assertThat(slowSynced.getCount(), equalTo(1L));
+        } finally {
+            releaseSlowSync.countDown();
+        }
+        assertTrue(slowSynced.await(30, TimeUnit.SECONDS));
+        assertThat(slowResult.get(), nullValue());
+    }
+
+    private TranslogGroupCommitService newService() {
+        return new TranslogGroupCommitService(Settings.builder()
+            .put(TranslogGroupCommitService.GROUP_COMMIT_ENABLED_SETTING.getKey(), true).build(), threadPool);
+    }
+
+    private static final class RecordingSyncer implements CheckedConsumer<Stream<Translog.Location>, IOException> {
+        private final AtomicLong nextOffset = new AtomicLong();
+        private final AtomicLong syncedOffset = new AtomicLong(-1);
+        private final AtomicInteger numSyncs = new AtomicInteger();
+
+        Translog.Location nextLocation() {
+            return new Translog.Location(0, nextOffset.getAndIncrement(), 1);
+        }
+
+        @Override
+        public void accept(Stream<Translog.Location> locations) {
+            numSyncs.incrementAndGet();
+            long max = locations.mapToLong(location -> location.translogLocation).max().getAsLong();
+            syncedOffset.accumulateAndGet(max, Math::max);
+        }
+    }
+}
@@ -39,7 +39,11 @@ import org.elasticsearch.cluster.metadata.MetaData;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
 import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.common.util.concurrent.ThreadContext;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.VersionType;
 import org.elasticsearch.plugins.IngestPlugin;
@@ -49,6 +53,7 @@ import org.hamcrest.CustomTypeSafeMatcher;
 import org.mockito.ArgumentMatcher;
 import org.mockito.invocation.InvocationOnMock;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
@@ -57,6 +62,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
@@ -747,6 +753,125 @@ public class IngestServiceTests extends ESTestCase {
         verify(completionHandler, times(1)).accept(null);
     }
 
+    public void testBulkRequestExecutionInChunks() {
+        ThreadPool threadPool = mock(ThreadPool.class);
+        when(threadPool.executor(anyString())).thenReturn(EsExecutors.newDirectExecutorService());
+        when(threadPool.getThreadContext()).thenReturn(new ThreadContext(Settings.EMPTY));
+        Processor processor = new AbstractProcessor("tag") {
+            @Override
+            public IngestDocument execute(IngestDocument ingestDocument) {
+                String action = ingestDocument.getFieldValue("action", String.class);
+                if ("fail".equals(action)) {
+                    throw new IllegalStateException("failed");
+                }
+                return "drop".equals(action) ? null : ingestDocument;
+            }
+
+            @Override
+            public String getType() {
+                return "mock";
+            }
+        };
+        IngestService ingestService = new IngestService(mock(ClusterService.class), threadPool, null, null,
+            null, Collections.singletonList(new IngestPlugin() {
+            @Override
+            public Map<String, Processor.Factory> getProcessors(final Processor.Parameters parameters) {
+                return Collections.singletonMap("mock", (factories, tag, config) -> processor);
+            }
+        }));
+        ingestService.setBulkMaxConcurrentChunks(randomIntBetween(2, 4));
+        ingestService.setBulkChunkSize(randomIntBetween(1, 5));
+        PutPipelineRequest putRequest = new PutPipelineRequest("_id",
+            new BytesArray("{\"processors\": [{\"mock\" : {}}]}"), XContentType.JSON);
+        ClusterState clusterState = ClusterState.builder(new ClusterName("_name")).build();
+        ClusterState previousClusterState = clusterState;
+        clusterState = IngestService.innerPut(putRequest, clusterState);
+        ingestService.applyClusterState(new ClusterChangedEvent("", clusterState, previousClusterState));
+
+        BulkRequest bulkRequest = new BulkRequest();
+        List<IndexRequest> expectedFailures = new ArrayList<>();
+        List<IndexRequest> expectedDrops = new ArrayList<>();
+        int numRequests = scaledRandomIntBetween(8, 64);
+        for (int i = 0; i < numRequests; i++) {
+            if (randomBoolean()) {
+                bulkRequest.add(new DeleteRequest("_index", "_type", Integer.toString(i)));
+                continue;
+            }
+            String action = randomFrom("index", "fail", "drop");
+            IndexRequest indexRequest = new IndexRequest("_index", "_type", Integer.toString(i)).setPipeline("_id");
+            indexRequest.source(Requests.INDEX_CONTENT_TYPE, "action", action);
+            if ("fail".equals(action)) {
+                expectedFailures.add(indexRequest);
+            } else if ("drop".equals(action)) {
+                expectedDrops.add(indexRequest);
+            }
+            bulkRequest.add(indexRequest);
+        }
+
+        List<IndexRequest> failures = new ArrayList<>();
+        List<IndexRequest> drops = new ArrayList<>();
+        SetOnce<Exception> completion = new SetOnce<>();
+        ingestService.executeBulkRequest(bulkRequest.requests(), (request, e) -> failures.add(request),
+            e -> completion.set(e == null ? new Exception("completed") : e), drops::add);
+
+        assertThat(completion.get().getMessage(), equalTo("completed"));
+        assertThat(failures, equalTo(expectedFailures));
+        assertThat(drops, equalTo(expectedDrops));
+        for (DocWriteRequest<?> request : bulkRequest.requests()) {
+            if (request instanceof IndexRequest && expectedFailures.contains(request) == false) {
+                assertThat(((IndexRequest) request).getPipeline(), equalTo(IngestService.NOOP_PIPELINE_NAME));
+            }
+        }
+    }
+
+    public void testBulkRequestExecutionInChunksRejected() {
+        ThreadPool threadPool = mock(ThreadPool.class);
+        ExecutorService executorService = mock(ExecutorService.class);
+        int accepted = randomIntBetween(0, 4);
+        AtomicInteger submitted = new AtomicInteger();
+        // runs the first chunks on the submitting thread and then rejects them like a full write thread pool
+        doAnswer(invocation -> {
+            AbstractRunnable chunk = (AbstractRunnable) invocation.getArguments()[0];
+            if (submitted.incrementAndGet() <= accepted) {
+                chunk.run();
+            } else {
+                try {
+                    chunk.onRejection(new EsRejectedExecutionException("rejected"));
+                } finally {
+                    chunk.onAfter();
+                }
+            }
+            return null;
+        }).when(executorService).execute(any(Runnable.class));
+        when(threadPool.executor(anyString())).thenReturn(executorService);
+        when(threadPool.getThreadContext()).thenReturn(new ThreadContext(Settings.EMPTY));
+        IngestService ingestService = new IngestService(mock(ClusterService.class), threadPool, null, null,
+            null, Collections.singletonList(DUMMY_PLUGIN));
+        ingestService.setBulkMaxConcurrentChunks(2);
+        ingestService.setBulkChunkSize(1);
+        PutPipelineRequest putRequest = new PutPipelineRequest("_id",
+            new BytesArray("{\"processors\": []}"), XContentType.JSON);
+        ClusterState clusterState = ClusterState.builder(new ClusterName("_name")).build();
+        ClusterState previousClusterState = clusterState;
+        clusterState = IngestService.innerPut(putRequest, clusterState);
+        ingestService.applyClusterState(new ClusterChangedEvent("", clusterState, previousClusterState));
+
+        BulkRequest bulkRequest = new BulkRequest();
+        for (int i = 0; i < 8; i++) {
+            bulkRequest.add(new IndexRequest("_index", "_type", Integer.toString(i)).source(emptyMap()).setPipeline("_id"));
+        }
+        @SuppressWarnings("unchecked")
+        BiConsumer<IndexRequest, Exception> requestItemErrorHandler = mock(BiConsumer.class);
+        @SuppressWarnings("unchecked")
+        Consumer<Exception> completionHandler = mock(Consumer.class);
+        ingestService.executeBulkRequest(bulkRequest.requests(), requestItemErrorHandler, completionHandler, indexReq -> {});
+
+        // the chunks after the rejected one are not submitted and the bulk request fails with the rejection
+        assertThat(submitted.get(), equalTo(accepted + 1));
+        verify(requestItemErrorHandler, never()).accept(any(), any());
+        verify(completionHandler, times(1)).accept(any(EsRejectedExecutionException.class));
+    }
+
     public void testStats() throws Exception {
         final Processor processor = mock(Processor.class);
         final Processor processorFailure = mock(Processor.class);
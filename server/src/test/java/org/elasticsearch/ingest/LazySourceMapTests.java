@@ -0,0 +1,117 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.ingest;
+
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.equalTo;
+
+public class LazySourceMapTests extends ESTestCase {
+
+    private static final String SOURCE =
+        "{\"message\":\"hello\",\"count\":3,\"ok\":true,\"none\":null,\"host\":{\"name\":\"a\",\"ip\":[1,2]},\"tags\":[\"x\",\"y\"]}";
+
+    public void testGet() {
+        LazySourceMap map = new LazySourceMap(new BytesArray(SOURCE), XContentType.JSON);
+        assertEquals(6, map.size());
+        assertEquals("hello", map.get("message"));
+        assertEquals(3, map.get("count"));
+        assertEquals(true, map.get("ok"));
+        assertTrue(map.containsKey("none"));
+        assertNull(map.get("none"));
+        assertTrue(map.isRaw("host"));
+        assertTrue(map.isRaw("tags"));
+
+        Map<String, Object> host = new HashMap<>();
+        host.put("name", "a");
+        host.put("ip", Arrays.asList(1, 2));
+        assertEquals(host, map.get("host"));
+        assertFalse(map.isRaw("host"));
+        assertTrue(map.isRaw("tags"));
+    }
+
+    public void testEquivalentToParsedSource() {
+        LazySourceMap map = new LazySourceMap(new BytesArray(SOURCE), XContentType.JSON);
+        Map<String, Object> parsed = XContentHelper.convertToMap(new BytesArray(SOURCE), false, XContentType.JSON).v2();
+        assertEquals(parsed, map);
+        assertEquals(map, parsed);
+        assertFalse(map.isRaw("host"));
+        assertFalse(map.isRaw("tags"));
+    }
+
+    public void testPutAndRemove() throws IOException {
+        LazySourceMap map = new LazySourceMap(new BytesArray(SOURCE), XContentType.JSON);
+        map.put("message", "bye");
+        map.put("added", Collections.singletonMap("a", 1));
+        assertNotNull(map.remove("tags"));
+        @SuppressWarnings("unchecked")
+        List<Object> ips = (List<Object>) ((Map<String, Object>) map.get("host")).get("ip");
+        ips.add(3);
+
+        assertThat(toJson(map),
+            equalTo("{\"message\":\"bye\",\"count\":3,\"ok\":true,\"none\":null,\"host\":{\"name\":\"a\",\"ip\":[1,2,3]},\"added\":{\"a\":1}}"));
+    }
+
+    public void testUntouchedFieldsAreCopied() throws IOException {
+        LazySourceMap map = new LazySourceMap(new BytesArray(SOURCE), XContentType.JSON);
+        map.put("message", "bye");
+        assertTrue(map.isRaw("host"));
+        assertThat(toJson(map), equalTo(SOURCE.replace("hello", "bye")));
+    }
+
+    public void testOtherContentType() throws IOException {
+        XContentType xContentType = randomFrom(XContentType.SMILE, XContentType.CBOR, XContentType.YAML);
+        BytesReference source;
+        try (XContentBuilder builder = XContentFactory.contentBuilder(xContentType)) {
+            builder.map(XContentHelper.convertToMap(new BytesArray(SOURCE), true, XContentType.JSON).v2());
+            source = BytesReference.bytes(builder);
+        }
+        LazySourceMap map = new LazySourceMap(source, xContentType);
+        assertThat(toJson(map), equalTo(SOURCE));
+        assertEquals(XContentHelper.convertToMap(new BytesArray(SOURCE), false, XContentType.JSON).v2(), map);
+    }
+
+    public void testInvalidSource() {
+        LazySourceMap map = new LazySourceMap(new BytesArray("[1, 2]"), XContentType.JSON);
+        expectThrows(ElasticsearchParseException.class, () -> map.get("a"));
+    }
+
+    private static String toJson(LazySourceMap map) throws IOException {
+        try (XContentBuilder builder = XContentFactory.jsonBuilder()) {
+            map.toXContent(builder);
+            return Strings.toString(builder);
+        }
+    }
+}
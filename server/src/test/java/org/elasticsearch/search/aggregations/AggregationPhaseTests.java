@@ -0,0 +1,103 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations;
+
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.aggregations.bucket.global.GlobalAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.terms.LongTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.AvgAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.PercentilesAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.PercentilesMethod;
+import org.elasticsearch.search.aggregations.metrics.TopHitsAggregationBuilder;
+import org.elasticsearch.search.aggregations.support.ValueType;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+
+public class AggregationPhaseTests extends ESTestCase {
+
+    public void testCanCollectPerSegment() {
+        assertTrue(AggregationPhase.canCollectPerSegment(AggregatorFactories.builder()
+            .addAggregator(new DateHistogramAggregationBuilder("histo").field("timestamp")
+                .subAggregation(new TermsAggregationBuilder("terms", ValueType.STRING).field("host")
+                    .subAggregation(new AvgAggregationBuilder("avg").field("duration"))))));
+        assertFalse(AggregationPhase.canCollectPerSegment(AggregatorFactories.builder()
+            .addAggregator(new GlobalAggregationBuilder("global"))));
+        assertFalse(AggregationPhase.canCollectPerSegment(AggregatorFactories.builder()
+            .addAggregator(new TermsAggregationBuilder("terms", ValueType.STRING).field("host")
+                .subAggregation(new TopHitsAggregationBuilder("hits")))));
+        assertTrue(AggregationPhase.canCollectPerSegment(AggregatorFactories.builder()
+            .addAggregator(new TermsAggregationBuilder("terms", ValueType.STRING).field("host").shardMinDocCount(2))));
+        assertFalse(AggregationPhase.canCollectPerSegment(AggregatorFactories.builder()
+            .addAggregator(new TermsAggregationBuilder("terms", ValueType.STRING).field("host").minDocCount(0))));
+        assertFalse(AggregationPhase.canCollectPerSegment(AggregatorFactories.builder()
+            .addAggregator(new PercentilesAggregationBuilder("percentiles").field("duration"))));
+        assertTrue(AggregationPhase.canCollectPerSegment(AggregatorFactories.builder()
+            .addAggregator(new PercentilesAggregationBuilder("percentiles").field("duration").method(PercentilesMethod.HDR))));
+    }
+
+    public void testReduceToShard() {
+        final LongTerms inner = newTerms("inner", 0, InternalAggregations.EMPTY, 1, 3, 2, 5);
+        final LongTerms outer = newTerms("outer", 4, new InternalAggregations(Collections.singletonList(inner)), 10, 8, 1, 2, 7);
+        final Collection<AggregationBuilder> builders = Collections.singletonList(new TermsAggregationBuilder("outer", ValueType.LONG)
+            .size(2).shardSize(3).minDocCount(2).shardMinDocCount(2)
+            .subAggregation(new TermsAggregationBuilder("inner", ValueType.LONG).size(1).shardSize(2)));
+
+        final InternalAggregations reduced = AggregationPhase.reduceToShard(new InternalAggregations(Collections.singletonList(outer)),
+            builders, false);
+        final LongTerms reducedOuter = reduced.get("outer");
+        assertEquals(Arrays.asList(10L, 8L, 7L), docCounts(reducedOuter));
+        // the other buckets and the one below the shard minimum doc count are added to the other doc count
+        assertEquals(4 + 2 + 1, reducedOuter.getSumOfOtherDocCounts());
+        assertEquals(0, reducedOuter.getDocCountError());
+        for (LongTerms.Bucket bucket : reducedOuter.getBuckets()) {
+            final LongTerms reducedInner = bucket.getAggregations().get("inner");
+            assertEquals(Arrays.asList(5L, 3L), docCounts(reducedInner));
+            assertEquals(1 + 2, reducedInner.getSumOfOtherDocCounts());
+        }
+    }
+
+    private static List<Long> docCounts(LongTerms terms) {
+        final List<Long> docCounts = new ArrayList<>();
+        for (LongTerms.Bucket bucket : terms.getBuckets()) {
+            docCounts.add(bucket.getDocCount());
+        }
+        return docCounts;
+    }
+
+    private static LongTerms newTerms(String name, long otherDocCount, InternalAggregations subAggregations, long... docCounts) {
+        final List<LongTerms.Bucket> buckets = new ArrayList<>();
+        for (int i = 0; i < docCounts.length; i++) {
+            buckets.add(new LongTerms.Bucket(i, docCounts[i], subAggregations, false, 0, DocValueFormat.RAW));
+        }
+        // the terms of the segments are collected without a shard size
+        return new LongTerms(name, BucketOrder.compound(BucketOrder.count(false), BucketOrder.key(true)), 10, 1, emptyList(),
+            emptyMap(), DocValueFormat.RAW, Integer.MAX_VALUE, false, otherDocCount, buckets, 0);
+    }
+}
@@ -64,6 +64,7 @@ import org.elasticsearch.search.aggregations.metrics.InternalAvgTests;
 import org.elasticsearch.search.aggregations.metrics.InternalCardinalityTests;
 import org.elasticsearch.search.aggregations.metrics.InternalGeoBoundsTests;
 import org.elasticsearch.search.aggregations.metrics.InternalGeoCentroidTests;
+import org.elasticsearch.search.aggregations.metrics.InternalDDSketchPercentilesTests;
 import org.elasticsearch.search.aggregations.metrics.InternalHDRPercentilesRanksTests;
 import org.elasticsearch.search.aggregations.metrics.InternalHDRPercentilesTests;
 import org.elasticsearch.search.aggregations.metrics.InternalTDigestPercentilesRanksTests;
@@ -110,6 +111,7 @@ public class AggregationsTests extends ESTestCase {
         aggsTests.add(new InternalTDigestPercentilesRanksTests());
         aggsTests.add(new InternalHDRPercentilesTests());
         aggsTests.add(new InternalHDRPercentilesRanksTests());
+        aggsTests.add(new InternalDDSketchPercentilesTests());
         aggsTests.add(new InternalPercentilesBucketTests());
         aggsTests.add(new InternalMinTests());
         aggsTests.add(new InternalMaxTests());
@@ -0,0 +1,89 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations;
+
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.MergePolicyConfig;
+import org.elasticsearch.search.SearchService;
+import org.elasticsearch.test.ESIntegTestCase;
+
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.filter;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.histogram;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.sum;
+import static org.elasticsearch.search.aggregations.AggregationBuilders.terms;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchResponse;
+
+public class SliceAggregationsIT extends ESIntegTestCase {
+
+    public void testSameAggregationsAsSequentialSearch() throws Exception {
+        assertAcked(prepareCreate("index").addMapping("type", "k", "type=keyword", "n", "type=long")
+            .setSettings(Settings.builder()
+                .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 1).put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)
+                .put(IndexSettings.INDEX_REFRESH_INTERVAL_SETTING.getKey(), -1)
+                .put(MergePolicyConfig.INDEX_MERGE_ENABLED, false)).get());
+        int id = 0;
+        for (int segment = 0; segment < 4; segment++) {
+            // every segment has its own most frequent terms, so the top terms of the shard are not the top terms of its slices
+            BulkRequestBuilder bulk = client().prepareBulk();
+            for (int term = 0; term < 20; term++) {
+                int count = randomIntBetween(0, 3) + (term % 4 == segment ? 5 : 0);
+                for (int i = 0; i < count; i++) {
+                    bulk.add(client().prepareIndex("index", "type", Integer.toString(id++))
+                        .setSource("k", "term" + term, "n", randomIntBetween(0, 9)));
+                }
+            }
+            assertNoFailures(bulk.get());
+            refresh("index");
+        }
+
+        final SearchResponse sequential = searchAggregations();
+        try {
+            assertAcked(client().admin().cluster().prepareUpdateSettings().setTransientSettings(Settings.builder()
+                .put(SearchService.CONCURRENT_SEGMENT_SEARCH_SETTING.getKey(), true)
+                .put(SearchService.CONCURRENT_SEGMENT_SEARCH_MIN_DOCS_PER_SLICE_SETTING.getKey(), 1)));
+            final SearchResponse concurrent = searchAggregations();
+            assertEquals(Strings.toString(sequential.getAggregations()), Strings.toString(concurrent.getAggregations()));
+        } finally {
+            assertAcked(client().admin().cluster().prepareUpdateSettings().setTransientSettings(Settings.builder()
+                .putNull(SearchService.CONCURRENT_SEGMENT_SEARCH_SETTING.getKey())
+                .putNull(SearchService.CONCURRENT_SEGMENT_SEARCH_MIN_DOCS_PER_SLICE_SETTING.getKey())));
+        }
+    }
+
+    private static SearchResponse searchAggregations() {
+        // the shard result must not be loaded from the request cache
+        SearchResponse response = client().prepareSearch("index").setSize(0).setRequestCache(false)
+            .addAggregation(terms("k").field("k").size(3).shardSize(4)
+                .subAggregation(terms("n").field("n").size(2).shardSize(2)))
+            .addAggregation(histogram("h").field("n").interval(3).subAggregation(sum("s").field("n")))
+            .addAggregation(filter("f", termQuery("k", "term0")).subAggregation(sum("s").field("n")))
+            .get();
+        assertSearchResponse(response);
+        return response;
+    }
+}
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.search.aggregations.bucket.composite;
 
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.script.Script;
 import org.elasticsearch.search.aggregations.BaseAggregationTestCase;
 import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
@@ -98,6 +99,10 @@ public class CompositeAggregationBuilderTests extends BaseAggregationTestCase<Co
                     throw new AssertionError("wrong branch");
             }
         }
-        return new CompositeAggregationBuilder(randomAlphaOfLength(10), sources);
+        CompositeAggregationBuilder builder = new CompositeAggregationBuilder(randomAlphaOfLength(10), sources);
+        if (randomBoolean()) {
+            builder.keepAlive(TimeValue.timeValueSeconds(randomIntBetween(1, 3600)));
+        }
+        return builder;
     }
 }
@@ -39,6 +39,9 @@ import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.NumericUtils;
 import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.mapper.ContentPath;
 import org.elasticsearch.index.mapper.DateFieldMapper;
 import org.elasticsearch.index.mapper.IpFieldMapper;
@@ -46,6 +49,7 @@ import org.elasticsearch.index.mapper.KeywordFieldMapper;
 import org.elasticsearch.index.mapper.MappedFieldType;
 import org.elasticsearch.index.mapper.Mapper;
 import org.elasticsearch.index.mapper.NumberFieldMapper;
+import org.elasticsearch.index.query.MatchAllQueryBuilder;
 import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.AggregatorTestCase;
 import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
@@ -56,6 +60,9 @@ import org.elasticsearch.search.aggregations.metrics.MaxAggregationBuilder;
 import org.elasticsearch.search.aggregations.metrics.TopHits;
 import org.elasticsearch.search.aggregations.metrics.TopHitsAggregationBuilder;
 import org.elasticsearch.search.aggregations.support.ValueType;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.internal.ShardSearchRequest;
 import org.elasticsearch.search.sort.SortOrder;
 import org.joda.time.DateTimeZone;
 import org.junit.After;
@@ -63,6 +70,7 @@ import org.junit.Before;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -79,10 +87,14 @@ import java.util.function.Supplier;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class CompositeAggregatorTests extends AggregatorTestCase {
     private static MappedFieldType[] FIELD_TYPES;
+    private CompositeSpillCache spillCache;
 
     @Override
     @Before
@@ -127,6 +139,17 @@ public class CompositeAggregatorTests extends AggregatorTestCase {
         FIELD_TYPES = null;
     }
 
+    @Override
+    protected SearchContext createSearchContext(IndexSearcher indexSearcher, IndexSettings indexSettings) {
+        SearchContext searchContext = super.createSearchContext(indexSearcher, indexSettings);
+        // spilled buckets are keyed by the query of the request, the tests that spill buckets match all documents
+        ShardSearchRequest request = mock(ShardSearchRequest.class);
+        when(request.source()).thenReturn(new SearchSourceBuilder().query(new MatchAllQueryBuilder()));
+        when(request.types()).thenReturn(Strings.EMPTY_ARRAY);
+        when(searchContext.request()).thenReturn(request);
+        return searchContext;
+    }
+
     public void testUnmappedField() throws Exception {
         final List<Map<String, List<Object>>> dataset = new ArrayList<>();
         dataset.addAll(
@@ -1745,6 +1768,139 @@ public class CompositeAggregatorTests extends AggregatorTestCase {
         );
     }
 
+    public void testKeepAlive() throws Exception {
+        final String[] keywords = new String[] {"a", "b", "ab", "a\u0000", "a\u0000b", "c", ""};
+        try (Directory directory = newDirectory()) {
+            try (RandomIndexWriter indexWriter = new RandomIndexWriter(random(), directory)) {
+                Document document = new Document();
+                int numDocs = randomIntBetween(1, 500);
+                for (int i = 0; i < numDocs; i++) {
+                    Map<String, List<Object>> fields = new HashMap<>();
+                    if (randomBoolean()) {
+                        fields.put("keyword", Arrays.asList(randomSubsetOf(randomIntBetween(1, 2), (Object[]) keywords).toArray()));
+                    }
+                    if (randomBoolean()) {
+                        fields.put("long", Collections.singletonList((long) randomIntBetween(-20, 20)));
+                    }
+                    if (randomBoolean()) {
+                        fields.put("double", Collections.singletonList(randomDoubleBetween(-50, 50, true)));
+                    }
+                    addToDocument(document, fields);
+                    indexWriter.addDocument(document);
+                    document.clear();
+                }
+            }
+            try (IndexReader indexReader = DirectoryReader.open(directory)) {
+                IndexSearcher indexSearcher = new IndexSearcher(indexReader);
+                for (int i = 0; i < 5; i++) {
+                    List<CompositeValuesSourceBuilder<?>> sources = new ArrayList<>();
+                    for (String field : randomSubsetOf(randomIntBetween(1, 3), "keyword", "long", "double")) {
+                        final CompositeValuesSourceBuilder<?> source;
+                        if (field.equals("double")) {
+                            source = new HistogramValuesSourceBuilder(field).field(field).interval(randomIntBetween(1, 20));
+                        } else {
+                            source = new TermsValuesSourceBuilder(field).field(field);
+                        }
+                        source.order(randomFrom(SortOrder.values())).missingBucket(randomBoolean());
+                        sources.add(source);
+                    }
+                    int size = randomIntBetween(1, 20);
+                    List<String> expected = searchAllPages(indexSearcher, sources, size, null);
+                    List<String> actual = searchAllPages(indexSearcher, sources, size, TimeValue.timeValueMinutes(1));
+                    assertEquals(expected, actual);
+                }
+                assertThat(compositeSpillCache().count(), greaterThan(0));
+            }
+            // spilled buckets are removed when their reader is closed
+            assertEquals(0, compositeSpillCache().count());
+        }
+    }
+
+    public void testKeepAliveWithSubAggregations() throws Exception {
+        final List<Map<String, List<Object>>> dataset = new ArrayList<>();
+        dataset.add(createDocument("keyword", "a", "long", 1L));
+        IllegalArgumentException exc = expectThrows(IllegalArgumentException.class,
+            () -> executeTestCase(false, new MatchAllDocsQuery(), dataset,
+                () -> new CompositeAggregationBuilder("name", Collections.singletonList(new TermsValuesSourceBuilder("keyword")
+                    .field("keyword")))
+                    .keepAlive(TimeValue.timeValueMinutes(1))
+                    .subAggregation(new MaxAggregationBuilder("max").field("long")),
+                (result) -> {}
+            ));
+        assertThat(exc.getMessage(), containsString("[keep_alive] cannot be used with sub-aggregations"));
+    }
+
+    public void testKeepAliveAboveMaximum() throws Exception {
+        final List<Map<String, List<Object>>> dataset = new ArrayList<>();
+        dataset.add(createDocument("keyword", "a"));
+        IllegalArgumentException exc = expectThrows(IllegalArgumentException.class,
+            () -> executeTestCase(false, new MatchAllDocsQuery(), dataset,
+                () -> new CompositeAggregationBuilder("name", Collections.singletonList(new TermsValuesSourceBuilder("keyword")
+                    .field("keyword")))
+                    .keepAlive(TimeValue.timeValueHours(2)),
+                (result) -> {}
+            ));
+        assertThat(exc.getMessage(), containsString("Keep alive for composite aggregation (2h) is too large"));
+    }
+
+    public void testKeepAliveAboveMaxSize() throws Exception {
+        try (Directory directory = newDirectory()) {
+            try (RandomIndexWriter indexWriter = new RandomIndexWriter(random(), directory)) {
+                Document document = new Document();
+                for (int i = 0; i < 50; i++) {
+                    addToDocument(document, createDocument("keyword", "key" + i));
+                    indexWriter.addDocument(document);
+                    document.clear();
+                }
+            }
+            final Path path = createTempDir().resolve(CompositeSpillCache.FOLDER_NAME);
+            try (IndexReader indexReader = DirectoryReader.open(directory);
+                 CompositeSpillCache cache = new CompositeSpillCache(path, 1, TimeValue.timeValueHours(1), 10, () -> 0L)) {
+                spillCache = cache;
+                IndexSearcher indexSearcher = new IndexSearcher(indexReader);
+                List<CompositeValuesSourceBuilder<?>> sources =
+                    Collections.singletonList(new TermsValuesSourceBuilder("keyword").field("keyword"));
+                List<String> expected = searchAllPages(indexSearcher, sources, 7, null);
+                List<String> actual = searchAllPages(indexSearcher, sources, 7, TimeValue.timeValueMinutes(1));
+                assertEquals(50, expected.size());
+                assertEquals(expected, actual);
+                // the buckets do not fit in the maximum size so the spill is aborted and the pages are collected in memory
+                assertEquals(0, cache.count());
+                assertEquals(0, cache.reservedBytes());
+            } finally {
+                spillCache = null;
+            }
+        }
+    }
+
+    @Override
+    protected CompositeSpillCache compositeSpillCache() {
+        return spillCache != null ? spillCache : super.compositeSpillCache();
+    }
+
+    /**
+     * Pages through all the composite buckets and returns their keys and document counts.
+     */
+    private List<String> searchAllPages(IndexSearcher searcher, List<CompositeValuesSourceBuilder<?>> sources,
+                                        int size, TimeValue keepAlive) throws IOException {
+        List<String> buckets = new ArrayList<>();
+        Map<String, Object> after = null;
+        while (true) {
+            CompositeAggregationBuilder builder = new CompositeAggregationBuilder("name", sources)
+                .size(size)
+                .keepAlive(keepAlive)
+                .aggregateAfter(after);
+            InternalComposite result = search(searcher, new MatchAllDocsQuery(), builder, FIELD_TYPES);
+            for (InternalComposite.InternalBucket bucket : result.getBuckets()) {
+                buckets.add(bucket.getKeyAsString() + "=" + bucket.getDocCount());
+            }
+            if (result.getBuckets().size() < size) {
+                return buckets;
+            }
+            after = result.afterKey();
+        }
+    }
+
     private void testSearchCase(List<Query> queries,
                                 List<Map<String, List<Object>>> dataset,
                                 Supplier<CompositeAggregationBuilder> create,
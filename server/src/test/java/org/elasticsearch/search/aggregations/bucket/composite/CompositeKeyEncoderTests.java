@@ -0,0 +1,90 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CompositeKeyEncoderTests extends ESTestCase {
+    public void testEncodedKeysSortLikeCompositeKeys() {
+        final int numSources = randomIntBetween(1, 4);
+        final int[] reverseMuls = new int[numSources];
+        final int[] types = new int[numSources];
+        for (int i = 0; i < numSources; i++) {
+            reverseMuls[i] = randomBoolean() ? 1 : -1;
+            types[i] = randomIntBetween(0, 2);
+        }
+        final List<CompositeKey> keys = new ArrayList<>();
+        final List<BytesRef> encodedKeys = new ArrayList<>();
+        final int numKeys = randomIntBetween(1, 200);
+        for (int i = 0; i < numKeys; i++) {
+            Comparable<?>[] values = new Comparable<?>[numSources];
+            for (int j = 0; j < numSources; j++) {
+                if (rarely()) {
+                    values[j] = null;
+                } else if (types[j] == 0) {
+                    values[j] = randomBoolean() ? randomLong() : (long) randomIntBetween(-3, 3);
+                } else if (types[j] == 1) {
+                    values[j] = randomBoolean() ? randomDouble() * randomIntBetween(-1000, 1000) : (double) randomIntBetween(-3, 3);
+                } else {
+                    byte[] bytes = new byte[randomIntBetween(0, 3)];
+                    for (int k = 0; k < bytes.length; k++) {
+                        bytes[k] = (byte) (int) randomFrom(0, 1, 0xFF, (int) 'a');
+                    }
+                    values[j] = new BytesRef(bytes);
+                }
+            }
+            CompositeKey key = new CompositeKey(values);
+            BytesRefBuilder builder = new BytesRefBuilder();
+            CompositeKeyEncoder.encode(key, reverseMuls, builder);
+            assertEquals(key, CompositeKeyEncoder.decode(builder.get(), reverseMuls));
+            keys.add(key);
+            encodedKeys.add(builder.toBytesRef());
+        }
+        for (int i = 0; i < numKeys; i++) {
+            for (int j = 0; j < numKeys; j++) {
+                assertEquals(Integer.signum(compare(keys.get(i), keys.get(j), reverseMuls)),
+                    Integer.signum(encodedKeys.get(i).compareTo(encodedKeys.get(j))));
+            }
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compare(CompositeKey first, CompositeKey second, int[] reverseMuls) {
+        for (int i = 0; i < first.size(); i++) {
+            final int cmp;
+            if (first.get(i) == null) {
+                cmp = second.get(i) == null ? 0 : -1 * reverseMuls[i];
+            } else if (second.get(i) == null) {
+                cmp = reverseMuls[i];
+            } else {
+                cmp = ((Comparable) first.get(i)).compareTo(second.get(i)) * reverseMuls[i];
+            }
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.greaterThan;
+
+public class CompositeSpillCacheTests extends ESTestCase {
+    public void testKeepAlive() throws IOException {
+        final Path path = createTempDir().resolve(CompositeSpillCache.FOLDER_NAME);
+        final AtomicLong time = new AtomicLong();
+        try (Directory directory = newDirectory();
+             IndexWriter writer = new IndexWriter(directory, newIndexWriterConfig());
+             IndexReader reader = DirectoryReader.open(writer);
+             CompositeSpillCache cache = new CompositeSpillCache(path, Long.MAX_VALUE, TimeValue.timeValueHours(1), 10, time::get)) {
+            final IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+            assertNull(cache.acquire(cacheHelper, "key"));
+
+            final SpilledBuckets buckets = newSpilledBuckets(cache.directory());
+            cache.put(cacheHelper, "key", buckets, TimeValue.timeValueMillis(100));
+            buckets.decRef();
+            assertEquals(1, cache.count());
+            assertNull(cache.acquire(cacheHelper, "other_key"));
+
+            time.set(100);
+            assertSame(buckets, cache.acquire(cacheHelper, "key"));
+            buckets.decRef();
+
+            // the access extends the keep alive
+            time.set(200);
+            assertSame(buckets, cache.acquire(cacheHelper, "key"));
+            buckets.decRef();
+
+            time.set(301);
+            assertNull(cache.acquire(cacheHelper, "key"));
+            assertEquals(0, cache.count());
+            assertEquals(0, numSpilledFiles(cache.directory()));
+        }
+        assertFalse(Files.exists(path));
+    }
+
+    public void testRemovesBucketsOfClosedReaders() throws IOException {
+        final Path path = createTempDir().resolve(CompositeSpillCache.FOLDER_NAME);
+        try (Directory directory = newDirectory();
+             IndexWriter writer = new IndexWriter(directory, newIndexWriterConfig());
+             CompositeSpillCache cache = new CompositeSpillCache(path, Long.MAX_VALUE, TimeValue.timeValueHours(1), 10, () -> 0L)) {
+            final SpilledBuckets buckets;
+            try (IndexReader reader = DirectoryReader.open(writer)) {
+                buckets = newSpilledBuckets(cache.directory());
+                cache.put(reader.getReaderCacheHelper(), "key", buckets, TimeValue.timeValueMinutes(1));
+                assertEquals(1, cache.count());
+                assertSame(buckets, cache.acquire(reader.getReaderCacheHelper(), "key"));
+            }
+            assertEquals(0, cache.count());
+            // the buckets are still referenced by the request that acquired them and by the test
+            buckets.decRef();
+            assertEquals(1, numSpilledFiles(cache.directory()));
+            buckets.decRef();
+            assertEquals(0, numSpilledFiles(cache.directory()));
+        }
+    }
+
+    public void testRemoveExpired() throws IOException {
+        final Path path = createTempDir().resolve(CompositeSpillCache.FOLDER_NAME);
+        final AtomicLong time = new AtomicLong();
+        try (Directory directory = newDirectory();
+             IndexWriter writer = new IndexWriter(directory, newIndexWriterConfig());
+             IndexReader reader = DirectoryReader.open(writer);
+             CompositeSpillCache cache = new CompositeSpillCache(path, Long.MAX_VALUE, TimeValue.timeValueHours(1), 10, time::get)) {
+            final SpilledBuckets buckets = newSpilledBuckets(cache.directory());
+            cache.put(reader.getReaderCacheHelper(), "key", buckets, TimeValue.timeValueMillis(100));
+            buckets.decRef();
+            cache.removeExpired();
+            assertEquals(1, cache.count());
+
+            // expired buckets are removed without any other request
+            time.set(101);
+            cache.removeExpired();
+            assertEquals(0, cache.count());
+            assertEquals(0, cache.sizeInBytes());
+            assertEquals(0, numSpilledFiles(cache.directory()));
+        }
+    }
+
+    public void testMaxSize() throws IOException {
+        final Path path = createTempDir().resolve(CompositeSpillCache.FOLDER_NAME);
+        final AtomicLong time = new AtomicLong();
+        final long bucketsSize;
+        try (Directory directory = newDirectory()) {
+            final SpilledBuckets buckets = newSpilledBuckets(directory);
+            bucketsSize = buckets.sizeInBytes();
+            buckets.decRef();
+        }
+        assertThat(bucketsSize, greaterThan(0L));
+        try (Directory directory = newDirectory();
+             IndexWriter writer = new IndexWriter(directory, newIndexWriterConfig());
+             IndexReader reader = DirectoryReader.open(writer);
+             CompositeSpillCache cache = new CompositeSpillCache(path, 2 * bucketsSize, TimeValue.timeValueHours(1), 10, time::get)) {
+            final IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+            for (String key : new String[] {"first", "second"}) {
+                final SpilledBuckets buckets = newSpilledBuckets(cache.directory());
+                cache.put(cacheHelper, key, buckets, TimeValue.timeValueMinutes(1));
+                buckets.decRef();
+                time.incrementAndGet();
+            }
+            assertEquals(2 * bucketsSize, cache.sizeInBytes());
+
+            // the first buckets are the least recently accessed ones once the second buckets are read
+            final SpilledBuckets first = cache.acquire(cacheHelper, "first");
+            final SpilledBuckets second = cache.acquire(cacheHelper, "second");
+            time.incrementAndGet();
+            cache.acquire(cacheHelper, "second").decRef();
+            final SpilledBuckets third = newSpilledBuckets(cache.directory());
+            cache.put(cacheHelper, "third", third, TimeValue.timeValueMinutes(1));
+            third.decRef();
+            assertEquals(2, cache.count());
+            assertEquals(2 * bucketsSize, cache.sizeInBytes());
+            assertNull(cache.acquire(cacheHelper, "first"));
+            // the file of evicted buckets is deleted once the request that reads them is done
+            assertEquals(3, numSpilledFiles(cache.directory()));
+            first.decRef();
+            second.decRef();
+            assertEquals(2, numSpilledFiles(cache.directory()));
+        }
+        assertFalse(Files.exists(path));
+    }
+
+    public void testReservations() throws IOException {
+        final Path path = createTempDir().resolve(CompositeSpillCache.FOLDER_NAME);
+        final AtomicLong time = new AtomicLong();
+        final long bucketsSize;
+        try (Directory directory = newDirectory()) {
+            final SpilledBuckets buckets = newSpilledBuckets(directory);
+            bucketsSize = buckets.sizeInBytes();
+            buckets.decRef();
+        }
+        try (Directory directory = newDirectory();
+             IndexWriter writer = new IndexWriter(directory, newIndexWriterConfig());
+             IndexReader reader = DirectoryReader.open(writer);
+             CompositeSpillCache cache = new CompositeSpillCache(path, 2 * bucketsSize, TimeValue.timeValueHours(1), 10, time::get)) {
+            final IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+            final SpilledBuckets buckets = newSpilledBuckets(cache.directory());
+            cache.put(cacheHelper, "key", buckets, TimeValue.timeValueMinutes(1));
+            buckets.decRef();
+
+            // reservations that do not fit in the maximum size are rejected without removing any buckets
+            assertFalse(cache.tryReserve(2 * bucketsSize + 1));
+            assertEquals(1, cache.count());
+            assertEquals(0, cache.reservedBytes());
+
+            // reservations remove the buckets that were accessed the least recently to make room
+            assertTrue(cache.tryReserve(2 * bucketsSize));
+            assertEquals(0, cache.count());
+            assertEquals(2 * bucketsSize, cache.reservedBytes());
+            assertFalse(cache.tryReserve(1));
+            cache.release(2 * bucketsSize);
+            assertEquals(0, cache.reservedBytes());
+            assertTrue(cache.tryReserve(1));
+            cache.release(1);
+        }
+    }
+
+    public void testCheckKeepAlive() throws IOException {
+        final Path path = createTempDir().resolve(CompositeSpillCache.FOLDER_NAME);
+        try (CompositeSpillCache cache = new CompositeSpillCache(path, Long.MAX_VALUE, TimeValue.timeValueMinutes(10), 10, () -> 0L)) {
+            cache.checkKeepAlive(TimeValue.timeValueMinutes(10));
+            IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+                () -> cache.checkKeepAlive(TimeValue.timeValueMinutes(11)));
+            assertEquals("Keep alive for composite aggregation (11m) is too large. It must be less than (10m). " +
+                "This limit can be set by changing the [indices.composite_spill.max_keep_alive] node setting.", e.getMessage());
+        }
+    }
+
+    static long numSpilledFiles(Directory directory) throws IOException {
+        return Arrays.stream(directory.listAll()).filter(name -> name.startsWith("composite")).count();
+    }
+
+    private static SpilledBuckets newSpilledBuckets(Directory directory) throws IOException {
+        try (SpilledBuckets.Builder builder = new SpilledBuckets.Builder(directory)) {
+            builder.add(new BytesRef("a"), 1);
+            return builder.build();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.composite;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class SpilledBucketsTests extends ESTestCase {
+    public void testMergeRuns() throws IOException {
+        try (Directory directory = newDirectory()) {
+            final TreeMap<BytesRef, Long> expected = new TreeMap<>();
+            final SpilledBuckets buckets;
+            try (SpilledBuckets.Builder builder = new SpilledBuckets.Builder(directory)) {
+                int numRuns = randomIntBetween(0, 5);
+                for (int i = 0; i < numRuns; i++) {
+                    final TreeMap<BytesRef, Long> run = new TreeMap<>();
+                    int numBuckets = randomIntBetween(0, 300);
+                    for (int j = 0; j < numBuckets; j++) {
+                        run.put(new BytesRef(randomAlphaOfLengthBetween(0, 3)), (long) randomIntBetween(1, 10));
+                    }
+                    for (Map.Entry<BytesRef, Long> bucket : run.entrySet()) {
+                        builder.add(bucket.getKey(), bucket.getValue());
+                        expected.merge(bucket.getKey(), bucket.getValue(), Long::sum);
+                    }
+                    builder.endRun();
+                }
+                buckets = builder.build();
+            }
+            try {
+                assertEquals(expected.size(), buckets.numBuckets());
+                List<Tuple<BytesRef, Long>> all = buckets.readPage(null, Integer.MAX_VALUE);
+                assertEquals(expected.size(), all.size());
+                int pos = 0;
+                for (Map.Entry<BytesRef, Long> bucket : expected.entrySet()) {
+                    assertEquals(bucket.getKey(), all.get(pos).v1());
+                    assertEquals(bucket.getValue(), all.get(pos).v2());
+                    pos++;
+                }
+
+                // pages after keys that are not in the buckets
+                for (int i = 0; i < 10; i++) {
+                    BytesRef after = new BytesRef(randomAlphaOfLengthBetween(0, 4));
+                    int size = randomIntBetween(1, 50);
+                    List<Tuple<BytesRef, Long>> page = buckets.readPage(after, size);
+                    List<BytesRef> expectedKeys = new ArrayList<>(expected.tailMap(after, false).keySet());
+                    assertEquals(Math.min(size, expectedKeys.size()), page.size());
+                    for (int j = 0; j < page.size(); j++) {
+                        assertEquals(expectedKeys.get(j), page.get(j).v1());
+                    }
+                }
+            } finally {
+                buckets.decRef();
+            }
+            assertEquals(0, CompositeSpillCacheTests.numSpilledFiles(directory));
+        }
+    }
+
+    public void testRemovesFilesOnClose() throws IOException {
+        try (Directory directory = newDirectory()) {
+            try (SpilledBuckets.Builder builder = new SpilledBuckets.Builder(directory)) {
+                builder.add(new BytesRef("a"), 1);
+                builder.endRun();
+            }
+            assertEquals(0, CompositeSpillCacheTests.numSpilledFiles(directory));
+        }
+    }
+}
@@ -25,22 +25,40 @@ import org.apache.lucene.document.SortedNumericDocValuesField;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexOrDocValuesQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.MatchNoDocsQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.Directory;
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.cache.rollup.SegmentRollupCache;
 import org.elasticsearch.index.mapper.DateFieldMapper;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.NumberFieldMapper;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.AggregatorTestCase;
+import org.elasticsearch.search.aggregations.MultiBucketConsumerService.MultiBucketConsumer;
 import org.elasticsearch.search.aggregations.MultiBucketConsumerService.TooManyBucketsException;
+import org.elasticsearch.search.aggregations.metrics.NumericMetricsAggregation;
 
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
+import static org.elasticsearch.search.aggregations.MultiBucketConsumerService.DEFAULT_MAX_BUCKETS;
+
 public class DateHistogramAggregatorTests extends AggregatorTestCase {
 
     private static final String DATE_FIELD = "date";
@@ -369,6 +387,116 @@ public class DateHistogramAggregatorTests extends AggregatorTestCase {
             histogram -> {}, 5));
     }
 
+    public void testSegmentRollups() throws IOException {
+        final long start = asLong("2018-01-01");
+        final long day = TimeUnit.DAYS.toMillis(1);
+        try (Directory directory = newDirectory()) {
+            try (RandomIndexWriter indexWriter = new RandomIndexWriter(random(), directory)) {
+                final int numDocs = randomIntBetween(100, 500);
+                for (int i = 0; i < numDocs; i++) {
+                    if (rarely()) {
+                        indexWriter.commit();
+                    }
+                    Document document = new Document();
+                    long instant = start + randomLongBetween(0, 40 * day);
+                    document.add(new SortedNumericDocValuesField(DATE_FIELD, instant));
+                    document.add(new LongPoint(DATE_FIELD, instant));
+                    for (int j = randomIntBetween(0, 2); j > 0; j--) {
+                        document.add(new SortedNumericDocValuesField("value", randomIntBetween(-1000, 1000)));
+                    }
+                    indexWriter.addDocument(document);
+                }
+            }
+
+            try (IndexReader indexReader = DirectoryReader.open(directory)) {
+                IndexSearcher indexSearcher = new IndexSearcher(indexReader);
+                DateFieldMapper.DateFieldType dateFieldType = new DateFieldMapper.Builder(DATE_FIELD).fieldType();
+                dateFieldType.setHasDocValues(true);
+                dateFieldType.setName(DATE_FIELD);
+                MappedFieldType valueFieldType = new NumberFieldMapper.NumberFieldType(NumberFieldMapper.NumberType.LONG);
+                valueFieldType.setHasDocValues(true);
+                valueFieldType.setName("value");
+                IndexSettings rollupSettings = new IndexSettings(IndexMetaData.builder("_index").settings(Settings.builder()
+                        .put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+                        .put(SegmentRollupCache.INDEX_SEGMENT_ROLLUP_DATE_FIELD_SETTING.getKey(), DATE_FIELD)
+                        .put(SegmentRollupCache.INDEX_SEGMENT_ROLLUP_INTERVAL_SETTING.getKey(), "1h")
+                        .putList(SegmentRollupCache.INDEX_SEGMENT_ROLLUP_METRICS_SETTING.getKey(), "value"))
+                    .numberOfShards(1).numberOfReplicas(0).creationDate(System.currentTimeMillis()).build(), Settings.EMPTY);
+
+                // hourly rollups can only be used by intervals that are multiples of an hour
+                DateHistogramInterval interval = randomFrom(DateHistogramInterval.HOUR, DateHistogramInterval.DAY,
+                    DateHistogramInterval.WEEK, DateHistogramInterval.MONTH, DateHistogramInterval.days(3),
+                    DateHistogramInterval.minutes(30));
+                DateHistogramAggregationBuilder aggregationBuilder = new DateHistogramAggregationBuilder("_name")
+                    .field(DATE_FIELD)
+                    .dateHistogramInterval(interval)
+                    .subAggregation(AggregationBuilders.min("min").field("value"))
+                    .subAggregation(AggregationBuilders.max("max").field("value"))
+                    .subAggregation(AggregationBuilders.sum("sum").field("value"))
+                    .subAggregation(AggregationBuilders.avg("avg").field("value"))
+                    .subAggregation(AggregationBuilders.count("count").field("value"));
+                Query query = randomFrom(new MatchAllDocsQuery(),
+                    LongPoint.newRangeQuery(DATE_FIELD, start + randomLongBetween(0, 10 * day), start + randomLongBetween(20, 50) * day));
+
+                InternalDateHistogram expected = collect(query, aggregationBuilder, indexSearcher, createIndexSettings(),
+                    dateFieldType, valueFieldType);
+                InternalDateHistogram actual = collect(query, aggregationBuilder, indexSearcher, rollupSettings,
+                    dateFieldType, valueFieldType);
+                assertEquals(expected.getBuckets().size(), actual.getBuckets().size());
+                for (int i = 0; i < expected.getBuckets().size(); i++) {
+                    InternalDateHistogram.Bucket expectedBucket = expected.getBuckets().get(i);
+                    InternalDateHistogram.Bucket actualBucket = actual.getBuckets().get(i);
+                    assertEquals(expectedBucket.getKey(), actualBucket.getKey());
+                    assertEquals(expectedBucket.getDocCount(), actualBucket.getDocCount());
+                    for (String name : Arrays.asList("min", "max", "sum", "avg", "count")) {
+                        NumericMetricsAggregation.SingleValue expectedMetric = expectedBucket.getAggregations().get(name);
+                        NumericMetricsAggregation.SingleValue actualMetric = actualBucket.getAggregations().get(name);
+                        assertEquals(name, expectedMetric.value(), actualMetric.value(), 0d);
+                    }
+                }
+            }
+        }
+    }
+
+    public void testRollupDateRange() {
+        final long[] all = new long[] { Long.MIN_VALUE, Long.MAX_VALUE };
+        assertArrayEquals(all, DateHistogramAggregator.dateRange(null, DATE_FIELD));
+        assertArrayEquals(all, DateHistogramAggregator.dateRange(new MatchAllDocsQuery(), DATE_FIELD));
+
+        Query range = new IndexOrDocValuesQuery(LongPoint.newRangeQuery(DATE_FIELD, 10, 100),
+            SortedNumericDocValuesField.newSlowRangeQuery(DATE_FIELD, 10, 100));
+        assertArrayEquals(new long[] { 10, 100 }, DateHistogramAggregator.dateRange(range, DATE_FIELD));
+        assertArrayEquals(new long[] { 10, 100 }, DateHistogramAggregator.dateRange(new ConstantScoreQuery(range), DATE_FIELD));
+        assertNull(DateHistogramAggregator.dateRange(range, INSTANT_FIELD));
+
+        Query bool = new BooleanQuery.Builder()
+            .add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST)
+            .add(range, BooleanClause.Occur.FILTER)
+            .add(LongPoint.newRangeQuery(DATE_FIELD, 50, 200), BooleanClause.Occur.FILTER)
+            .build();
+        assertArrayEquals(new long[] { 50, 100 }, DateHistogramAggregator.dateRange(bool, DATE_FIELD));
+
+        // queries that filter on anything else than the date can't use rollups
+        assertNull(DateHistogramAggregator.dateRange(new TermQuery(new Term(DATE_FIELD, "foo")), DATE_FIELD));
+        assertNull(DateHistogramAggregator.dateRange(new BooleanQuery.Builder()
+            .add(range, BooleanClause.Occur.SHOULD)
+            .build(), DATE_FIELD));
+        assertNull(DateHistogramAggregator.dateRange(new BooleanQuery.Builder()
+            .add(range, BooleanClause.Occur.FILTER)
+            .add(new TermQuery(new Term("foo", "bar")), BooleanClause.Occur.MUST_NOT)
+            .build(), DATE_FIELD));
+    }
+
+    private InternalDateHistogram collect(Query query, DateHistogramAggregationBuilder aggregationBuilder, IndexSearcher indexSearcher,
+                                          IndexSettings indexSettings, MappedFieldType... fieldTypes) throws IOException {
+        DateHistogramAggregator aggregator = createAggregator(query, aggregationBuilder, indexSearcher, indexSettings,
+            new MultiBucketConsumer(DEFAULT_MAX_BUCKETS), fieldTypes);
+        aggregator.preCollection();
+        indexSearcher.search(query, aggregator);
+        aggregator.postCollection();
+        return (InternalDateHistogram) aggregator.buildAggregation(0L);
+    }
+
     private void testSearchCase(Query query, List<String> dataset,
                                 Consumer<DateHistogramAggregationBuilder> configure,
                                 Consumer<Histogram> verify) throws IOException {
@@ -21,6 +21,7 @@ package org.elasticsearch.search.aggregations.bucket.terms;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.InetAddressPoint;
+import org.apache.lucene.document.LongPoint;
 import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.SortedNumericDocValuesField;
@@ -80,11 +81,15 @@ import org.elasticsearch.search.sort.ScoreSortBuilder;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
@@ -528,6 +533,99 @@ public class TermsAggregatorTests extends AggregatorTestCase {
         termsAggregatorWithNestedMaxAgg(ValueType.LONG, fieldType, Integer::longValue, val -> new NumericDocValuesField("field", val));
     }
 
+    public void testDenseLongTerms() throws Exception {
+        final long min = randomLongBetween(-1000, 1000);
+        final int range = randomIntBetween(1, 100);
+        final long[] includes = randomBoolean() ? null : new long[] { min, min + range - 1, min + randomInt(range - 1) };
+        final Map<Long, Integer> expected = new TreeMap<>();
+        try (Directory directory = newDirectory()) {
+            try (RandomIndexWriter indexWriter = new RandomIndexWriter(random(), directory)) {
+                final int numDocs = randomIntBetween(1, 200);
+                for (int i = 0; i < numDocs; i++) {
+                    Document document = new Document();
+                    // the first documents pin the range of values, a segment may only contain a single value
+                    final long[] values = i == 0 ? new long[] { min } : i == 1 ? new long[] { min + range - 1 }
+                        : new long[randomIntBetween(0, 3)];
+                    for (int j = i < 2 ? 1 : 0; j < values.length; j++) {
+                        values[j] = min + randomInt(range - 1);
+                    }
+                    final Set<Long> uniqueValues = new HashSet<>();
+                    for (long value : values) {
+                        document.add(new LongPoint("field", value));
+                        document.add(new SortedNumericDocValuesField("field", value));
+                        uniqueValues.add(value);
+                    }
+                    for (long value : uniqueValues) {
+                        if (includes == null || Arrays.stream(includes).anyMatch(include -> include == value)) {
+                            expected.merge(value, 1, Integer::sum);
+                        }
+                    }
+                    indexWriter.addDocument(document);
+                    if (rarely()) {
+                        indexWriter.commit();
+                    }
+                }
+                try (IndexReader indexReader = maybeWrapReaderEs(indexWriter.getReader())) {
+                    IndexSearcher indexSearcher = newIndexSearcher(indexReader);
+                    MappedFieldType fieldType = new NumberFieldMapper.NumberFieldType(NumberFieldMapper.NumberType.LONG);
+                    fieldType.setName("field");
+                    fieldType.setHasDocValues(true);
+                    TermsAggregationBuilder aggregationBuilder = new TermsAggregationBuilder("_name", ValueType.LONG)
+                        .field("field")
+                        .size(range)
+                        .order(BucketOrder.key(true));
+                    if (includes != null) {
+                        aggregationBuilder.includeExclude(new IncludeExclude(includes, null));
+                    }
+                    Aggregator aggregator = createAggregator(aggregationBuilder, indexSearcher, fieldType);
+                    assertThat(aggregator, instanceOf(LongTermsAggregator.class));
+                    assertTrue(((LongTermsAggregator) aggregator).isDense());
+                    aggregator.preCollection();
+                    indexSearcher.search(new MatchAllDocsQuery(), aggregator);
+                    aggregator.postCollection();
+                    Terms result = (Terms) aggregator.buildAggregation(0L);
+                    assertEquals(expected.size(), result.getBuckets().size());
+                    Iterator<Map.Entry<Long, Integer>> expectedIterator = expected.entrySet().iterator();
+                    for (Terms.Bucket bucket : result.getBuckets()) {
+                        Map.Entry<Long, Integer> entry = expectedIterator.next();
+                        assertEquals(entry.getKey(), bucket.getKey());
+                        assertEquals((long) entry.getValue(), bucket.getDocCount());
+                    }
+                }
+            }
+        }
+    }
+
+    public void testLongTermsNotDenseOnWideRange() throws Exception {
+        try (Directory directory = newDirectory()) {
+            try (RandomIndexWriter indexWriter = new RandomIndexWriter(random(), directory)) {
+                for (long value : new long[] { 0, LongTermsAggregator.MAX_DENSE_RANGE }) {
+                    Document document = new Document();
+                    document.add(new LongPoint("field", value));
+                    document.add(new SortedNumericDocValuesField("field", value));
+                    indexWriter.addDocument(document);
+                }
+                try (IndexReader indexReader = maybeWrapReaderEs(indexWriter.getReader())) {
+                    IndexSearcher indexSearcher = newIndexSearcher(indexReader);
+                    MappedFieldType fieldType = new NumberFieldMapper.NumberFieldType(NumberFieldMapper.NumberType.LONG);
+                    fieldType.setName("field");
+                    fieldType.setHasDocValues(true);
+                    TermsAggregationBuilder aggregationBuilder = new TermsAggregationBuilder("_name", ValueType.LONG)
+                        .field("field");
+                    LongTermsAggregator aggregator = createAggregator(aggregationBuilder, indexSearcher, fieldType);
+                    assertFalse(aggregator.isDense());
+
+                    // buckets of values that don't match any document can't be told apart from hashed buckets
+                    aggregationBuilder = new TermsAggregationBuilder("_name", ValueType.LONG)
+                        .field("field")
+                        .minDocCount(0);
+                    aggregator = createAggregator(aggregationBuilder, indexSearcher, fieldType);
+                    assertFalse(aggregator.isDense());
+                }
+            }
+        }
+    }
+
     public void testDoubleTermsAggregator() throws Exception {
         BiFunction<Double, Boolean, IndexableField> luceneFieldFactory = (val, mv) -> {
             if (mv) {
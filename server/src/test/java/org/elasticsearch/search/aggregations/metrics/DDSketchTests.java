@@ -0,0 +1,138 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.search.aggregations.metrics;
+
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class DDSketchTests extends ESTestCase {
+
+    public void testRelativeAccuracy() {
+        final double relativeAccuracy = randomFrom(0.005, 0.01, 0.05);
+        final int numValues = randomIntBetween(1, 10000);
+        final double[] values = new double[numValues];
+        try (DDSketch sketch = new DDSketch(relativeAccuracy, DDSketch.DEFAULT_MAX_BINS, BigArrays.NON_RECYCLING_INSTANCE, 1)) {
+            for (int i = 0; i < numValues; ++i) {
+                values[i] = randomBoolean() ? randomDoubleBetween(-1000, 1000, true) : Math.exp(randomDoubleBetween(-10, 10, true));
+                sketch.add(0, values[i]);
+            }
+            Arrays.sort(values);
+            assertEquals(numValues, sketch.count(0));
+            for (double quantile : new double[] { 0, 0.01, 0.25, 0.5, 0.75, 0.99, 1 }) {
+                final double expected = values[(int) (quantile * (numValues - 1))];
+                // leave some room for rounding errors
+                final double maxError = relativeAccuracy * Math.abs(expected) * (1 + 1e-9);
+                assertThat(Math.abs(sketch.quantile(0, quantile) - expected), lessThanOrEqualTo(maxError));
+            }
+        }
+    }
+
+    public void testZerosAndNegatives() {
+        try (DDSketch sketch = new DDSketch(0.01, DDSketch.DEFAULT_MAX_BINS, BigArrays.NON_RECYCLING_INSTANCE, 1)) {
+            sketch.add(0, -100);
+            sketch.add(0, -10);
+            sketch.add(0, 0);
+            sketch.add(0, 10);
+            sketch.add(0, 100);
+            assertEquals(-100, sketch.quantile(0, 0), 0);
+            assertEquals(-10, sketch.quantile(0, 0.25), 0.1);
+            assertEquals(0, sketch.quantile(0, 0.5), 0);
+            assertEquals(10, sketch.quantile(0, 0.75), 0.1);
+            assertEquals(100, sketch.quantile(0, 1), 0);
+            assertTrue(Double.isNaN(sketch.quantile(1, 0.5)));
+        }
+    }
+
+    public void testMerge() {
+        final int numBuckets = randomIntBetween(2, 10);
+        try (DDSketch single = new DDSketch(0.01, DDSketch.DEFAULT_MAX_BINS, BigArrays.NON_RECYCLING_INSTANCE, 1);
+             DDSketch multi = new DDSketch(0.01, DDSketch.DEFAULT_MAX_BINS, BigArrays.NON_RECYCLING_INSTANCE, 1);
+             DDSketch merged = new DDSketch(0.01, DDSketch.DEFAULT_MAX_BINS, BigArrays.NON_RECYCLING_INSTANCE, 1)) {
+            final int numValues = randomIntBetween(1, 1000);
+            for (int i = 0; i < numValues; ++i) {
+                final double value = randomDoubleBetween(-1e6, 1e6, true);
+                single.add(0, value);
+                multi.add(randomInt(numBuckets - 1), value);
+            }
+            for (int bucket = 0; bucket < numBuckets; ++bucket) {
+                merged.merge(0, multi, bucket);
+            }
+            assertTrue(single.equals(0, merged));
+            assertEquals(single.hashCode(0), merged.hashCode(0));
+            for (double quantile : new double[] { 0, 0.1, 0.5, 0.9, 1 }) {
+                assertEquals(single.quantile(0, quantile), merged.quantile(0, quantile), 0);
+            }
+        }
+    }
+
+    public void testCollapseBoundsBins() {
+        final int maxBins = randomIntBetween(DDSketch.INITIAL_BINS, 64);
+        try (DDSketch sketch = new DDSketch(0.01, maxBins, BigArrays.NON_RECYCLING_INSTANCE, 1)) {
+            // every power of two needs ~35 bins with a relative accuracy of 1%
+            for (int i = 0; i < 1000; ++i) {
+                sketch.add(0, Math.scalb(1.0, i % 64));
+            }
+            assertEquals(1000, sketch.count(0));
+            // the highest values keep their accuracy
+            final double max = Math.scalb(1.0, 63);
+            assertEquals(max, sketch.quantile(0, 1), max * 0.01);
+            // the lowest values are collapsed into the lowest bin but the minimum is still exact
+            assertThat(sketch.quantile(0, 0.01), greaterThan(2.0));
+            assertEquals(1.0, sketch.quantile(0, 0), 0);
+        }
+    }
+
+    public void testSerialization() throws IOException {
+        try (DDSketch sketch = new DDSketch(randomFrom(0.001, 0.01, 0.1), DDSketch.DEFAULT_MAX_BINS,
+                BigArrays.NON_RECYCLING_INSTANCE, 1)) {
+            final int numValues = randomIntBetween(0, 1000);
+            for (int i = 0; i < numValues; ++i) {
+                sketch.add(0, randomDoubleBetween(-1e3, 1e6, true));
+            }
+            try (BytesStreamOutput out = new BytesStreamOutput()) {
+                sketch.writeTo(0, out);
+                try (StreamInput in = out.bytes().streamInput();
+                     DDSketch read = DDSketch.readFrom(in, BigArrays.NON_RECYCLING_INSTANCE)) {
+                    assertTrue(sketch.equals(0, read));
+                    assertEquals(sketch.hashCode(0), read.hashCode(0));
+                    assertEquals(sketch.quantile(0, 0.5), read.quantile(0, 0.5), 0);
+                }
+            }
+        }
+    }
+
+    public void testInvalidArguments() {
+        expectThrows(IllegalArgumentException.class,
+            () -> new DDSketch(randomFrom(0.0, 1.0), DDSketch.DEFAULT_MAX_BINS, BigArrays.NON_RECYCLING_INSTANCE, 1));
+        expectThrows(IllegalArgumentException.class,
+            () -> new DDSketch(0.01, DDSketch.INITIAL_BINS - 1, BigArrays.NON_RECYCLING_INSTANCE, 1));
+        try (DDSketch sketch = new DDSketch(0.01, DDSketch.DEFAULT_MAX_BINS, BigArrays.NON_RECYCLING_INSTANCE, 1)) {
+            expectThrows(IllegalArgumentException.class, () -> sketch.add(0, Double.NaN));
+            expectThrows(IllegalArgumentException.class, () -> sketch.quantile(0, 1.5));
+        }
+    }
+}
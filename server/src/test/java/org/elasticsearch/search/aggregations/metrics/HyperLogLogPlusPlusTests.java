@@ -21,13 +21,23 @@ package org.elasticsearch.search.aggregations.metrics;
 
 import com.carrotsearch.hppc.BitMixer;
 import com.carrotsearch.hppc.IntHashSet;
+import org.elasticsearch.Version;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.indices.breaker.HierarchyCircuitBreakerService;
 import org.elasticsearch.search.aggregations.metrics.HyperLogLogPlusPlus;
 import org.elasticsearch.test.ESTestCase;
 
+import java.io.IOException;
+
 import static org.elasticsearch.search.aggregations.metrics.HyperLogLogPlusPlus.MAX_PRECISION;
 import static org.elasticsearch.search.aggregations.metrics.HyperLogLogPlusPlus.MIN_PRECISION;
 import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.lessThan;
 
 public class HyperLogLogPlusPlusTests extends ESTestCase {
     public void testEncodeDecode() {
@@ -127,4 +137,69 @@ public class HyperLogLogPlusPlusTests extends ESTestCase {
         assertEquals(18, HyperLogLogPlusPlus.precisionFromThreshold(100000));
         assertEquals(18, HyperLogLogPlusPlus.precisionFromThreshold(1000000));
     }
+
+    public void testMaxRegisters() {
+        final int iters = scaledRandomIntBetween(1000, 10000);
+        for (int i = 0; i < iters; ++i) {
+            long a = 0;
+            long b = 0;
+            long expected = 0;
+            for (int j = 0; j < HyperLogLogPlusPlus.REGISTERS_PER_WORD; ++j) {
+                final long x = randomIntBetween(0, 63);
+                final long y = randomBoolean() ? x : randomIntBetween(0, 63);
+                final int shift = j * HyperLogLogPlusPlus.REGISTER_BITS;
+                a |= x << shift;
+                b |= y << shift;
+                expected |= Math.max(x, y) << shift;
+            }
+            assertEquals(expected, HyperLogLogPlusPlus.maxRegisters(a, b));
+            assertEquals(expected, HyperLogLogPlusPlus.maxRegisters(b, a));
+        }
+    }
+
+    public void testSerialization() throws IOException {
+        final int p = randomIntBetween(MIN_PRECISION, MAX_PRECISION);
+        final HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(p, BigArrays.NON_RECYCLING_INSTANCE, 1);
+        final long bucket = randomInt(10);
+        final int numValues = randomBoolean() ? randomIntBetween(0, 10) : randomIntBetween(1, 100000);
+        for (int i = 0; i < numValues; ++i) {
+            counts.collect(bucket, BitMixer.mix64(randomInt()));
+        }
+        final Version version = randomBoolean() ? Version.CURRENT : Version.V_6_6_0;
+        final BytesStreamOutput out = new BytesStreamOutput();
+        out.setVersion(version);
+        counts.writeTo(bucket, out);
+        final StreamInput in = out.bytes().streamInput();
+        in.setVersion(version);
+        final HyperLogLogPlusPlus read = HyperLogLogPlusPlus.readFrom(in, BigArrays.NON_RECYCLING_INSTANCE);
+        assertEquals(-1, in.read());
+        assertEquals(counts.cardinality(bucket), read.cardinality(0));
+        final HyperLogLogPlusPlus copy = new HyperLogLogPlusPlus(p, BigArrays.NON_RECYCLING_INSTANCE, 1);
+        copy.merge(0, counts, bucket);
+        assertTrue(copy.equals(0, read));
+        assertEquals(copy.hashCode(0), read.hashCode(0));
+    }
+
+    public void testFewValuesPerBucketTakeLittleMemory() {
+        final Settings settings = Settings.builder()
+            .put(HierarchyCircuitBreakerService.USE_REAL_MEMORY_USAGE_SETTING.getKey(), false)
+            .build();
+        final HierarchyCircuitBreakerService breakerService = new HierarchyCircuitBreakerService(settings,
+            new ClusterSettings(settings, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS));
+        final BigArrays bigArrays = new BigArrays(null, breakerService, CircuitBreaker.REQUEST).withCircuitBreaking();
+        final int p = randomIntBetween(12, MAX_PRECISION);
+        final int numBuckets = randomIntBetween(1000, 5000);
+        try (HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(p, bigArrays, 1)) {
+            for (int bucket = 0; bucket < numBuckets; ++bucket) {
+                final int numValues = randomIntBetween(1, 5);
+                for (int i = 0; i < numValues; ++i) {
+                    counts.collect(bucket, BitMixer.mix64(randomInt()));
+                }
+                assertThat((double) counts.cardinality(bucket), closeTo(numValues, 1));
+            }
+            final long used = breakerService.getBreaker(CircuitBreaker.REQUEST).getUsed();
+            assertThat(used, lessThan(numBuckets * HyperLogLogPlusPlus.memoryUsage(p) / 10));
+        }
+        assertEquals(0, breakerService.getBreaker(CircuitBreaker.REQUEST).getUsed());
+    }
 }
@@ -49,4 +49,9 @@ public class PercentileRanksTests extends BaseAggregationTestCase<PercentileRank
         return factory;
     }
 
+    public void testDDSketchIsNotSupported() {
+        PercentileRanksAggregationBuilder builder = new PercentileRanksAggregationBuilder("testAgg", new double[] { 1.0 });
+        IllegalArgumentException ex = expectThrows(IllegalArgumentException.class, () -> builder.method(PercentilesMethod.DDSKETCH));
+        assertEquals("[method] [ddsketch] is not supported by [percentile_ranks]: [testAgg]", ex.getMessage());
+    }
 }
@@ -51,6 +51,12 @@ public class PercentilesTests extends BaseAggregationTestCase<PercentilesAggrega
         if (randomBoolean()) {
             factory.compression(randomIntBetween(1, 50000));
         }
+        if (randomBoolean()) {
+            factory.relativeAccuracy(randomDoubleBetween(0.0001, 0.5, true));
+        }
+        if (randomBoolean()) {
+            factory.method(randomFrom(PercentilesMethod.values()));
+        }
         String field = randomNumericField();
         randomFieldOrScript(factory, field);
         if (randomBoolean()) {
@@ -91,4 +97,11 @@ public class PercentilesTests extends BaseAggregationTestCase<PercentilesAggrega
                 () -> PercentilesAggregationBuilder.parse("myPercentiles", parser));
         assertThat(ExceptionsHelper.detailedMessage(e), containsString("[percentiles] failed to parse field [hdr]"));
     }
+
+    public void testInvalidRelativeAccuracyThrows() {
+        PercentilesAggregationBuilder builder = new PercentilesAggregationBuilder("testAgg");
+        IllegalArgumentException ex = expectThrows(IllegalArgumentException.class,
+            () -> builder.relativeAccuracy(randomFrom(0.0, 1.0, -randomDouble())));
+        assertThat(ex.getMessage(), containsString("[relative_accuracy] must be greater than 0 and less than 1"));
+    }
 }
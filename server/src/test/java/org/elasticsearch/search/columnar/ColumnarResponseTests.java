@@ -0,0 +1,227 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.columnar;
+
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.document.DocumentField;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregation;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.TermsValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.InternalMax;
+import org.elasticsearch.search.aggregations.metrics.InternalTopHits;
+import org.elasticsearch.search.aggregations.pipeline.MaxBucketPipelineAggregationBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.test.rest.FakeRestRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Collections.emptyList;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ColumnarResponseTests extends ESTestCase {
+
+    public void testHitsTable() throws IOException {
+        SearchHit first = new SearchHit(1, "1", new Text("_doc"),
+            Collections.singletonMap("date", new DocumentField("date", Collections.singletonList(42L))));
+        first.score(1.5f);
+        first.sourceRef(new BytesArray(
+            "{\"user\":{\"name\":\"kimchy\",\"age\":42},\"tags\":[\"a\",\"b\"],\"empty\":null,\"active\":true}"));
+        SearchHit second = new SearchHit(2, "2", new Text("_doc"), Collections.emptyMap());
+        // the content type of the source is detected
+        XContentBuilder source = XContentFactory.smileBuilder().startObject()
+            .startObject("user").field("name", "s").endObject()
+            .field("score", 2.5)
+            .endObject();
+        second.sourceRef(BytesReference.bytes(source));
+        SearchHit third = new SearchHit(3, "3", new Text("_doc"), Collections.emptyMap());
+
+        ColumnarTable table = ColumnarResponse.hitsTable(
+            new SearchHits(new SearchHit[] { first, second, third }, new TotalHits(3, TotalHits.Relation.EQUAL_TO), 1.5f));
+        assertEquals(ColumnarResponse.HITS_TABLE, table.name());
+        assertEquals(3, table.rows());
+        assertEquals("1", table.value("_id", 0));
+        assertEquals(1.5d, table.value("_score", 0));
+        assertEquals("kimchy", table.value("user.name", 0));
+        assertEquals(42L, table.value("user.age", 0));
+        assertEquals(Arrays.asList("a", "b"), table.value("tags", 0));
+        assertNull(table.value("empty", 0));
+        assertEquals(true, table.value("active", 0));
+        assertEquals(42L, table.value("date", 0));
+
+        assertEquals("2", table.value("_id", 1));
+        assertNull(table.value("_score", 1));
+        assertEquals("s", table.value("user.name", 1));
+        assertEquals(2.5, table.value("score", 1));
+
+        assertEquals("3", table.value("_id", 2));
+        assertNull(table.value("user.name", 2));
+
+        assertEquals(ColumnarTable.Type.LONG, table.type("user.age"));
+        assertEquals(ColumnarTable.Type.OBJECT, table.type("tags"));
+        assertEquals(ColumnarTable.Type.BOOLEAN, table.type("active"));
+        assertNull(table.type("empty"));
+    }
+
+    public void testCompositeTable() throws IOException {
+        Map<String, Object> key = new LinkedHashMap<>();
+        key.put("term", "a");
+        key.put("histo", 10L);
+        CompositeAggregation.Bucket bucket = mock(CompositeAggregation.Bucket.class);
+        when(bucket.getKey()).thenReturn(key);
+        when(bucket.getDocCount()).thenReturn(3L);
+        when(bucket.getAggregations()).thenReturn(new Aggregations(Arrays.asList(
+            new InternalMax("max", 5.0, DocValueFormat.RAW, emptyList(), null),
+            new InternalMax("empty_max", Double.NEGATIVE_INFINITY, DocValueFormat.RAW, emptyList(), null))));
+        CompositeAggregation aggregation = mock(CompositeAggregation.class);
+        when(aggregation.getName()).thenReturn("composite");
+        when(aggregation.afterKey()).thenReturn(key);
+        doReturn(Collections.singletonList(bucket)).when(aggregation).getBuckets();
+
+        ColumnarTable table = ColumnarResponse.compositeTable(aggregation);
+        assertEquals("composite", table.name());
+        assertEquals(1, table.rows());
+        assertEquals(Arrays.asList("term", "histo", ColumnarResponse.DOC_COUNT_COLUMN, "max", "empty_max"),
+            new ArrayList<>(table.columns()));
+        assertEquals("a", table.value("term", 0));
+        assertEquals(10L, table.value("histo", 0));
+        assertEquals(3L, table.value(ColumnarResponse.DOC_COUNT_COLUMN, 0));
+        assertEquals(5.0, table.value("max", 0));
+        // metrics without a value are null rather than infinite
+        assertNull(table.value("empty_max", 0));
+
+        ColumnarReader.Table decoded = ColumnarReader.read(ColumnarResponse.encode(emptyList(), Collections.singletonList(table)))
+            .table("composite");
+        assertEquals(Collections.singletonMap("after_key", "{\"term\":\"a\",\"histo\":10}"), decoded.metadata());
+        assertEquals(3L, decoded.column(ColumnarResponse.DOC_COUNT_COLUMN).getLong(0));
+    }
+
+    public void testCompositeTableRejectsOtherSubAggregations() {
+        CompositeAggregation.Bucket bucket = mock(CompositeAggregation.Bucket.class);
+        when(bucket.getKey()).thenReturn(Collections.singletonMap("term", "a"));
+        when(bucket.getAggregations()).thenReturn(new Aggregations(Collections.singletonList(
+            new InternalTopHits("top", 0, 1, null, SearchHits.empty(), emptyList(), null))));
+        CompositeAggregation aggregation = mock(CompositeAggregation.class);
+        when(aggregation.getName()).thenReturn("composite");
+        doReturn(Collections.singletonList(bucket)).when(aggregation).getBuckets();
+
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> ColumnarResponse.compositeTable(aggregation));
+        assertEquals("format [columnar] only supports single value metrics under [composite] aggregations but [top] is a "
+            + "[top_hits] aggregation", e.getMessage());
+    }
+
+    public void testEncodeSearchResponse() throws IOException {
+        SearchHit hit = new SearchHit(1, "1", new Text("_doc"), Collections.emptyMap());
+        hit.sourceRef(new BytesArray("{\"field\":\"value\"}"));
+        SearchHits hits = new SearchHits(new SearchHit[] { hit }, new TotalHits(1, TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO),
+            Float.NaN);
+        SearchResponse response = new SearchResponse(new InternalSearchResponse(hits, null, null, null, false, null, 1),
+            "scroll", 2, 2, 0, 7, ShardSearchFailure.EMPTY_ARRAY, SearchResponse.Clusters.EMPTY);
+
+        ColumnarReader reader = ColumnarReader.read(ColumnarResponse.encode(response));
+        Map<String, String> expectedMetadata = new LinkedHashMap<>();
+        expectedMetadata.put("took", "7");
+        expectedMetadata.put("timed_out", "false");
+        expectedMetadata.put("total_shards", "2");
+        expectedMetadata.put("successful_shards", "2");
+        expectedMetadata.put("failed_shards", "0");
+        expectedMetadata.put("total_hits", "1");
+        expectedMetadata.put("total_hits_relation", "gte");
+        expectedMetadata.put("_scroll_id", "scroll");
+        assertEquals(expectedMetadata, reader.metadata());
+
+        assertEquals(1, reader.tables().size());
+        ColumnarReader.Table table = reader.tables().get(0);
+        assertEquals(ColumnarResponse.HITS_TABLE, table.name());
+        assertEquals(Collections.emptyMap(), table.metadata());
+        assertEquals(1, table.rows());
+        assertTrue(table.column("_index").isNull(0));
+        assertEquals("1", table.column("_id").getString(0));
+        assertEquals("value", table.column("field").getString(0));
+    }
+
+    public void testEncodeRejectsOtherAggregations() {
+        SearchHits hits = new SearchHits(new SearchHit[0], new TotalHits(0, TotalHits.Relation.EQUAL_TO), Float.NaN);
+        InternalAggregations aggregations = new InternalAggregations(
+            Collections.singletonList(new InternalMax("max", 1.0, DocValueFormat.RAW, emptyList(), null)));
+        SearchResponse response = new SearchResponse(new InternalSearchResponse(hits, aggregations, null, null, false, null, 1),
+            null, 1, 1, 0, 1, ShardSearchFailure.EMPTY_ARRAY, SearchResponse.Clusters.EMPTY);
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> ColumnarResponse.encode(response));
+        assertEquals("format [columnar] only supports [composite] aggregations at the top level but [max] is a [max] aggregation",
+            e.getMessage());
+    }
+
+    public void testValidate() {
+        ColumnarResponse.validate(new SearchRequest());
+        ColumnarResponse.validate(new SearchRequest().source(new SearchSourceBuilder().aggregation(
+            new CompositeAggregationBuilder("composite", Collections.singletonList(new TermsValuesSourceBuilder("term").field("f"))))));
+
+        SearchRequest terms = new SearchRequest().source(new SearchSourceBuilder().aggregation(new TermsAggregationBuilder("terms",
+            null).field("f")));
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> ColumnarResponse.validate(terms));
+        assertEquals("format [columnar] only supports [composite] aggregations at the top level but [terms] is a [terms] aggregation",
+            e.getMessage());
+
+        SearchRequest pipeline = new SearchRequest().source(new SearchSourceBuilder()
+            .aggregation(new MaxBucketPipelineAggregationBuilder("max_bucket", "composite>_count")));
+        expectThrows(IllegalArgumentException.class, () -> ColumnarResponse.validate(pipeline));
+    }
+
+    public void testIsRequested() {
+        assertTrue(ColumnarResponse.isRequested(request(Collections.singletonMap("format", "COLUMNAR"), null)));
+        assertTrue(ColumnarResponse.isRequested(request(Collections.emptyMap(), ColumnarResponse.MEDIA_TYPE + "; version=1")));
+        assertFalse(ColumnarResponse.isRequested(request(Collections.emptyMap(), "application/json")));
+        assertFalse(ColumnarResponse.isRequested(request(Collections.emptyMap(), null)));
+        // the format parameter takes precedence over the Accept header
+        assertFalse(ColumnarResponse.isRequested(request(Collections.singletonMap("format", "json"), ColumnarResponse.MEDIA_TYPE)));
+    }
+
+    private RestRequest request(Map<String, String> params, String accept) {
+        FakeRestRequest.Builder builder = new FakeRestRequest.Builder(xContentRegistry()).withParams(new HashMap<>(params));
+        if (accept != null) {
+            builder.withHeaders(Collections.singletonMap("Accept", Collections.singletonList(accept)));
+        }
+        return builder.build();
+    }
+}
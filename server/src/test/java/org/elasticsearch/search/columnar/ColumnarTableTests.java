@@ -0,0 +1,204 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.search.columnar;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class ColumnarTableTests extends ESTestCase {
+
+    public void testTypes() {
+        ColumnarTable table = new ColumnarTable("test");
+        table.newRow();
+        table.set("long", 1);
+        table.set("double", 1L);
+        table.set("keyword", "a");
+        table.set("mixed", true);
+        table.set("object", 1);
+        table.newRow();
+        table.set("long", 2L);
+        table.set("double", 1.5f);
+        table.set("keyword", "b");
+        table.set("mixed", "x");
+        table.set("object", Arrays.asList(1, 2));
+        table.set("null", null);
+        assertEquals(2, table.rows());
+        assertEquals(ColumnarTable.Type.LONG, table.type("long"));
+        assertEquals(ColumnarTable.Type.DOUBLE, table.type("double"));
+        assertEquals(ColumnarTable.Type.KEYWORD, table.type("keyword"));
+        assertEquals(ColumnarTable.Type.KEYWORD, table.type("mixed"));
+        assertEquals(ColumnarTable.Type.OBJECT, table.type("object"));
+        assertNull(table.type("null"));
+        assertNull(table.type("missing"));
+    }
+
+    public void testSetBeforeNewRow() {
+        ColumnarTable table = new ColumnarTable("test");
+        expectThrows(IllegalStateException.class, () -> table.set("a", 1));
+    }
+
+    public void testEncoding() throws IOException {
+        ColumnarTable table = new ColumnarTable("test");
+        table.metadata("key", "value");
+        String[] keywords = new String[] { "foo", "bar", "foo", null, "baz" };
+        for (int i = 0; i < keywords.length; i++) {
+            table.newRow();
+            if (i != 1) {
+                table.set("long", (long) i);
+            }
+            table.set("keyword", keywords[i]);
+            table.set("boolean", i % 2 == 0);
+        }
+
+        BytesReference bytes = ColumnarResponse.encode(Collections.singletonList(new String[] { "took", "3" }),
+            Collections.singletonList(table));
+        try (StreamInput in = bytes.streamInput()) {
+            byte[] magic = new byte[4];
+            in.readBytes(magic, 0, magic.length);
+            assertArrayEquals(ColumnarResponse.MAGIC, magic);
+            assertEquals(ColumnarResponse.VERSION, in.readByte());
+            assertEquals(1, in.readVInt());
+            assertEquals("took", in.readBytesRef().utf8ToString());
+            assertEquals("3", in.readBytesRef().utf8ToString());
+            assertEquals(1, in.readVInt());
+
+            assertEquals("test", in.readBytesRef().utf8ToString());
+            assertEquals(1, in.readVInt());
+            assertEquals("key", in.readBytesRef().utf8ToString());
+            assertEquals("value", in.readBytesRef().utf8ToString());
+            assertEquals(keywords.length, in.readVInt());
+            assertEquals(3, in.readVInt());
+
+            assertEquals("long", in.readBytesRef().utf8ToString());
+            assertEquals(ColumnarTable.Type.LONG.id(), in.readByte());
+            assertTrue(in.readBoolean());
+            assertEquals(0b11101, in.readByte());
+            for (int i = 0; i < keywords.length; i++) {
+                assertEquals(i == 1 ? 0L : i, in.readLong());
+            }
+
+            assertEquals("keyword", in.readBytesRef().utf8ToString());
+            assertEquals(ColumnarTable.Type.KEYWORD.id(), in.readByte());
+            assertTrue(in.readBoolean());
+            assertEquals(0b10111, in.readByte());
+            assertEquals(3, in.readVInt());
+            assertEquals("foo", in.readBytesRef().utf8ToString());
+            assertEquals("bar", in.readBytesRef().utf8ToString());
+            assertEquals("baz", in.readBytesRef().utf8ToString());
+            assertEquals(0, in.readVInt());
+            assertEquals(1, in.readVInt());
+            assertEquals(0, in.readVInt());
+            assertEquals(2, in.readVInt());
+
+            assertEquals("boolean", in.readBytesRef().utf8ToString());
+            assertEquals(ColumnarTable.Type.BOOLEAN.id(), in.readByte());
+            assertFalse(in.readBoolean());
+            assertEquals(0b10101, in.readByte());
+            assertEquals(0, in.available());
+        }
+    }
+
+    public void testLongsAndDoubles() throws IOException {
+        ColumnarTable table = new ColumnarTable("test");
+        table.newRow();
+        table.set("exact", 1L);
+        table.set("large", ColumnarTable.MAX_EXACT_DOUBLE + 1);
+        table.set("large_last", 1.5d);
+        table.newRow();
+        table.set("exact", 2.5d);
+        table.set("large", 2.5d);
+        table.set("large_last", Long.MAX_VALUE);
+        // longs are only widened to doubles if they are exact doubles, numbers are keywords otherwise
+        assertEquals(ColumnarTable.Type.DOUBLE, table.type("exact"));
+        assertEquals(ColumnarTable.Type.KEYWORD, table.type("large"));
+        assertEquals(ColumnarTable.Type.KEYWORD, table.type("large_last"));
+
+        ColumnarReader.Table decoded = roundTrip(table);
+        assertEquals(1d, decoded.column("exact").getDouble(0), 0d);
+        assertEquals(2.5d, decoded.column("exact").getDouble(1), 0d);
+        assertEquals(Long.toString(ColumnarTable.MAX_EXACT_DOUBLE + 1), decoded.column("large").getString(0));
+        assertEquals("2.5", decoded.column("large").getString(1));
+        assertEquals("1.5", decoded.column("large_last").getString(0));
+        assertEquals(Long.toString(Long.MAX_VALUE), decoded.column("large_last").getString(1));
+    }
+
+    public void testRoundTrip() throws IOException {
+        ColumnarTable table = new ColumnarTable("test");
+        table.metadata("key", "value");
+        int rows = randomIntBetween(1, 100);
+        Object[][] expected = new Object[5][rows];
+        for (int row = 0; row < rows; row++) {
+            table.newRow();
+            expected[0][row] = randomBoolean() ? null : randomLong();
+            expected[1][row] = randomBoolean() ? null : randomDouble();
+            expected[2][row] = randomBoolean() ? null : randomBoolean();
+            expected[3][row] = randomBoolean() ? null : randomFrom("a", "b", "c");
+            expected[4][row] = randomBoolean() ? null : Collections.singletonList(row);
+            for (int column = 0; column < expected.length; column++) {
+                table.set("c" + column, expected[column][row]);
+            }
+        }
+
+        ColumnarReader.Table decoded = roundTrip(table);
+        assertEquals("test", decoded.name());
+        assertEquals(Collections.singletonMap("key", "value"), decoded.metadata());
+        assertEquals(rows, decoded.rows());
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < expected.length; column++) {
+                ColumnarReader.Column decodedColumn = decoded.column("c" + column);
+                Object value = expected[column][row];
+                assertEquals(value == null, decodedColumn.isNull(row));
+                if (value == null) {
+                    assertNull(decodedColumn.get(row));
+                } else if (column == 4) {
+                    assertEquals(ColumnarTable.Type.OBJECT, decodedColumn.type());
+                    assertEquals("[" + row + "]", decodedColumn.getString(row));
+                } else {
+                    assertEquals(value, decodedColumn.get(row));
+                }
+            }
+        }
+    }
+
+    public void testReadNotColumnar() {
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+            () -> ColumnarReader.read(new BytesArray("{\"took\":1}")));
+        assertEquals("not a columnar response", e.getMessage());
+    }
+
+    private static ColumnarReader.Table roundTrip(ColumnarTable table) throws IOException {
+        ColumnarReader reader = ColumnarReader.read(ColumnarResponse.encode(Collections.emptyList(), Collections.singletonList(table)));
+        assertEquals(Collections.emptyMap(), reader.metadata());
+        assertEquals(1, reader.tables().size());
+        return reader.table(table.name());
+    }
+
+    public void testMediaType() {
+        assertTrue(ColumnarResponse.isMediaType(ColumnarResponse.MEDIA_TYPE));
+        assertTrue(ColumnarResponse.isMediaType(ColumnarResponse.MEDIA_TYPE + "; version=1"));
+        assertFalse(ColumnarResponse.isMediaType("application/json"));
+        assertFalse(ColumnarResponse.isMediaType(null));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.internal;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.store.Directory;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class ContextIndexSearcherTests extends ESTestCase {
+
+    public void testSlices() throws Exception {
+        try (Directory dir = newDirectory();
+             IndexWriter w = new IndexWriter(dir, newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE))) {
+            final int numSegments = randomIntBetween(1, 20);
+            for (int i = 0; i < numSegments; i++) {
+                final int numDocs = randomIntBetween(1, 50);
+                for (int j = 0; j < numDocs; j++) {
+                    w.addDocument(new Document());
+                }
+                w.commit();
+            }
+            try (DirectoryReader reader = DirectoryReader.open(w)) {
+                final List<LeafReaderContext> leaves = reader.leaves();
+                final int maxSliceCount = randomIntBetween(1, 10);
+                final int minDocsPerSlice = randomIntBetween(1, 100);
+                final List<List<LeafReaderContext>> slices = ContextIndexSearcher.slices(leaves, maxSliceCount, minDocsPerSlice);
+
+                assertThat(slices.size(), greaterThanOrEqualTo(1));
+                assertThat(slices.size(), lessThanOrEqualTo(Math.max(1, Math.min(maxSliceCount, leaves.size()))));
+                // slices are made of consecutive leaves
+                List<LeafReaderContext> flattened = new ArrayList<>();
+                for (List<LeafReaderContext> slice : slices) {
+                    assertFalse(slice.isEmpty());
+                    flattened.addAll(slice);
+                }
+                assertEquals(leaves, flattened);
+                if (slices.size() > 1) {
+                    for (List<LeafReaderContext> slice : slices.subList(0, slices.size() - 1)) {
+                        int sliceDocs = slice.stream().mapToInt(leaf -> leaf.reader().maxDoc()).sum();
+                        assertThat(sliceDocs, greaterThanOrEqualTo(minDocsPerSlice));
+                    }
+                }
+            }
+        }
+    }
+
+    public void testSingleSliceWhenNotEnoughDocs() throws Exception {
+        try (Directory dir = newDirectory();
+             IndexWriter w = new IndexWriter(dir, new IndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE))) {
+            for (int i = 0; i < 5; i++) {
+                w.addDocument(new Document());
+                w.commit();
+            }
+            try (DirectoryReader reader = DirectoryReader.open(w)) {
+                assertEquals(1, ContextIndexSearcher.slices(reader.leaves(), 4, 10).size());
+                assertEquals(1, ContextIndexSearcher.slices(reader.leaves(), 1, 1).size());
+                assertEquals(5, ContextIndexSearcher.slices(reader.leaves(), 8, 1).size());
+                assertEquals(2, ContextIndexSearcher.slices(reader.leaves(), 8, 2).size());
+            }
+        }
+    }
+}
@@ -51,14 +51,18 @@ import org.apache.lucene.search.TotalHitCountCollector;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.store.Directory;
 import org.elasticsearch.action.search.SearchTask;
+import org.elasticsearch.common.lucene.search.TopDocsAndMaxScore;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.query.ParsedQuery;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.IndexShardTestCase;
 import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.internal.ContextIndexSearcher;
 import org.elasticsearch.search.internal.ScrollContext;
 import org.elasticsearch.search.sort.SortAndFormats;
 import org.elasticsearch.test.TestSearchContext;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -67,6 +71,7 @@ import java.util.List;
 
 import static org.hamcrest.Matchers.anyOf;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.instanceOf;
 
@@ -538,6 +543,157 @@ public class QueryPhaseTests extends IndexShardTestCase {
         dir.close();
     }
 
+    public void testConcurrentSegmentSearch() throws Exception {
+        Directory dir = newDirectory();
+        IndexWriterConfig iwc = newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE);
+        RandomIndexWriter w = new RandomIndexWriter(random(), dir, iwc);
+        final int numDocs = scaledRandomIntBetween(200, 500);
+        for (int i = 0; i < numDocs; ++i) {
+            Document doc = new Document();
+            if (randomBoolean()) {
+                doc.add(new StringField("foo", "bar", Store.NO));
+            }
+            if (randomBoolean()) {
+                doc.add(new StringField("foo", "baz", Store.NO));
+            }
+            doc.add(new NumericDocValuesField("rank", randomIntBetween(0, 10)));
+            w.addDocument(doc);
+            if (rarely()) {
+                w.commit();
+            }
+        }
+        final IndexReader reader = w.getReader();
+        w.close();
+
+        Engine.Searcher engineSearcher = new Engine.Searcher("test", new IndexSearcher(reader), () -> {});
+        ContextIndexSearcher concurrentSearcher = new ContextIndexSearcher(engineSearcher,
+            IndexSearcher.getDefaultQueryCache(), IndexSearcher.getDefaultQueryCachingPolicy());
+        concurrentSearcher.setSliceExecutor(threadPool.executor(ThreadPool.Names.SEARCH_SLICE), randomIntBetween(2, 8), 1);
+        IndexSearcher sequentialSearcher = new IndexSearcher(reader);
+
+        final Sort sort = new Sort(new SortField("rank", SortField.Type.INT));
+        final Query[] queries = new Query[] {
+            new MatchAllDocsQuery(),
+            new TermQuery(new Term("foo", "bar")),
+            new BooleanQuery.Builder()
+                .add(new TermQuery(new Term("foo", "bar")), Occur.SHOULD)
+                .add(new TermQuery(new Term("foo", "baz")), Occur.SHOULD)
+                .build()
+        };
+        for (Query query : queries) {
+            for (int size : new int[] {0, 1, 10, numDocs}) {
+                for (boolean sorted : new boolean[] {false, true}) {
+                    TestSearchContext sequentialContext = newConcurrentTestContext(query, size, sorted ? sort : null);
+                    QueryPhase.execute(sequentialContext, sequentialSearcher, checkCancelled -> {});
+                    TestSearchContext concurrentContext = newConcurrentTestContext(query, size, sorted ? sort : null);
+                    QueryPhase.execute(concurrentContext, concurrentSearcher, checkCancelled -> {});
+
+                    TopDocsAndMaxScore expected = sequentialContext.queryResult().topDocs();
+                    TopDocsAndMaxScore actual = concurrentContext.queryResult().topDocs();
+                    assertEquals(expected.topDocs.totalHits, actual.topDocs.totalHits);
+                    assertEquals(expected.maxScore, actual.maxScore, 0f);
+                    assertEquals(expected.topDocs.scoreDocs.length, actual.topDocs.scoreDocs.length);
+                    for (int i = 0; i < expected.topDocs.scoreDocs.length; i++) {
+                        assertEquals(expected.topDocs.scoreDocs[i].doc, actual.topDocs.scoreDocs[i].doc);
+                        assertEquals(expected.topDocs.scoreDocs[i].score, actual.topDocs.scoreDocs[i].score, 0f);
+                        assertEquals(-1, actual.topDocs.scoreDocs[i].shardIndex);
+                        if (sorted) {
+                            assertArrayEquals(((FieldDoc) expected.topDocs.scoreDocs[i]).fields,
+                                ((FieldDoc) actual.topDocs.scoreDocs[i]).fields);
+                        }
+                    }
+                }
+            }
+        }
+        reader.close();
+        dir.close();
+    }
+
+    public void testConcurrentSegmentSearchFallsBackToSequential() throws Exception {
+        Directory dir = newDirectory();
+        IndexWriterConfig iwc = newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE);
+        RandomIndexWriter w = new RandomIndexWriter(random(), dir, iwc);
+        final int numDocs = scaledRandomIntBetween(100, 200);
+        for (int i = 0; i < numDocs; ++i) {
+            w.addDocument(new Document());
+            if (i % 10 == 0) {
+                w.commit();
+            }
+        }
+        final IndexReader reader = w.getReader();
+        w.close();
+
+        Engine.Searcher engineSearcher = new Engine.Searcher("test", new IndexSearcher(reader), () -> {});
+        ContextIndexSearcher searcher = new ContextIndexSearcher(engineSearcher,
+            IndexSearcher.getDefaultQueryCache(), IndexSearcher.getDefaultQueryCachingPolicy());
+        // slices must never be searched on the executor when the collector chain is not sliceable
+        searcher.setSliceExecutor(r -> {
+            throw new AssertionError("should not search concurrently");
+        }, 4, 1);
+        assertThat(searcher.getSliceCount(), greaterThan(1));
+
+        TestSearchContext context = newConcurrentTestContext(new MatchAllDocsQuery(), 10, null);
+        final TotalHitCountCollector totalHitCountCollector = new TotalHitCountCollector();
+        context.queryCollectors().put(TotalHitCountCollector.class, totalHitCountCollector);
+        QueryPhase.execute(context, searcher, checkCancelled -> {});
+        assertThat(totalHitCountCollector.getTotalHits(), equalTo(numDocs));
+        assertThat(context.queryResult().topDocs().topDocs.totalHits.value, equalTo((long) numDocs));
+        context.queryCollectors().clear();
+
+        // the first documents in doc id order can only be collected sequentially
+        assertFalse(QueryCollectorContext.createEarlyTerminationCollectorContext(1, true).supportsConcurrentCollection());
+        reader.close();
+        dir.close();
+    }
+
+    public void testConcurrentSegmentSearchTerminateAfter() throws Exception {
+        Directory dir = newDirectory();
+        IndexWriterConfig iwc = newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE);
+        RandomIndexWriter w = new RandomIndexWriter(random(), dir, iwc);
+        final int numDocs = scaledRandomIntBetween(100, 200);
+        for (int i = 0; i < numDocs; ++i) {
+            w.addDocument(new Document());
+            if (i % 10 == 0) {
+                w.commit();
+            }
+        }
+        final IndexReader reader = w.getReader();
+        w.close();
+
+        Engine.Searcher engineSearcher = new Engine.Searcher("test", new IndexSearcher(reader), () -> {});
+        ContextIndexSearcher searcher = new ContextIndexSearcher(engineSearcher,
+            IndexSearcher.getDefaultQueryCache(), IndexSearcher.getDefaultQueryCachingPolicy());
+        searcher.setSliceExecutor(threadPool.executor(ThreadPool.Names.SEARCH_SLICE), randomIntBetween(2, 8), 1);
+        assertThat(searcher.getSliceCount(), greaterThan(1));
+        assertTrue(QueryCollectorContext.createEarlyTerminationCollectorContext(1, false).supportsConcurrentCollection());
+
+        for (int terminateAfter : new int[] {1, 10, numDocs - 1}) {
+            for (int size : new int[] {0, 1, 10}) {
+                TestSearchContext context = newConcurrentTestContext(new MatchAllDocsQuery(), size, null);
+                context.terminateAfter(terminateAfter);
+                QueryPhase.execute(context, searcher, checkCancelled -> {});
+                // the slices share the number of documents to collect
+                assertTrue(context.queryResult().terminatedEarly());
+                assertThat(context.queryResult().topDocs().topDocs.totalHits.value, equalTo((long) terminateAfter));
+                assertThat(context.queryResult().topDocs().topDocs.scoreDocs.length, equalTo(Math.min(size, terminateAfter)));
+            }
+        }
+        reader.close();
+        dir.close();
+    }
+
+    private TestSearchContext newConcurrentTestContext(Query query, int size, Sort sort) {
+        TestSearchContext context = new TestSearchContext(null, indexShard);
+        context.parsedQuery(new ParsedQuery(query));
+        context.setSize(size);
+        context.setTask(new SearchTask(123L, "", "", "", null, Collections.emptyMap()));
+        if (sort != null) {
+            context.sort(new SortAndFormats(sort, new DocValueFormat[] {DocValueFormat.RAW}));
+            context.trackScores(true);
+        }
+        return context;
+    }
+
     private static IndexSearcher getAssertingEarlyTerminationSearcher(IndexReader reader, int size) {
         return new IndexSearcher(reader) {
             protected void search(List<LeafReaderContext> leaves, Weight weight, Collector collector) throws IOException {
@@ -20,6 +20,7 @@
 package org.elasticsearch.transport;
 
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.compress.Compressor;
 import org.elasticsearch.common.compress.CompressorFactory;
 import org.elasticsearch.common.io.stream.BytesStream;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
@@ -33,7 +34,7 @@ public class CompressibleBytesOutputStreamTests extends ESTestCase {
 
     public void testStreamWithoutCompression() throws IOException {
         BytesStream bStream = new ZeroOutOnCloseStream();
-        CompressibleBytesOutputStream stream = new CompressibleBytesOutputStream(bStream, false);
+        CompressibleBytesOutputStream stream = new CompressibleBytesOutputStream(bStream, false, CompressorFactory.COMPRESSOR);
 
         byte[] expectedBytes = randomBytes(randomInt(30));
         stream.write(expectedBytes);
@@ -57,17 +58,19 @@ public class CompressibleBytesOutputStreamTests extends ESTestCase {
     }
 
     public void testStreamWithCompression() throws IOException {
+        final Compressor compressor = randomFrom(CompressorFactory.COMPRESSOR, CompressorFactory.LZ4);
         BytesStream bStream = new ZeroOutOnCloseStream();
-        CompressibleBytesOutputStream stream = new CompressibleBytesOutputStream(bStream, true);
+        CompressibleBytesOutputStream stream = new CompressibleBytesOutputStream(bStream, true, compressor);
 
         byte[] expectedBytes = randomBytes(randomInt(30));
         stream.write(expectedBytes);
 
         BytesReference bytesRef = stream.materializeBytes();
 
-        assertTrue(CompressorFactory.COMPRESSOR.isCompressed(bytesRef));
+        assertTrue(compressor.isCompressed(bytesRef));
+        assertSame(compressor, CompressorFactory.compressor(bytesRef));
 
-        StreamInput streamInput = CompressorFactory.COMPRESSOR.streamInput(bytesRef.streamInput());
+        StreamInput streamInput = compressor.streamInput(bytesRef.streamInput());
         byte[] actualBytes = new byte[expectedBytes.length];
         streamInput.readBytes(actualBytes, 0, expectedBytes.length);
 
@@ -83,7 +86,7 @@ public class CompressibleBytesOutputStreamTests extends ESTestCase {
 
     public void testCompressionWithCallingMaterializeFails() throws IOException {
         BytesStream bStream = new ZeroOutOnCloseStream();
-        CompressibleBytesOutputStream stream = new CompressibleBytesOutputStream(bStream, true);
+        CompressibleBytesOutputStream stream = new CompressibleBytesOutputStream(bStream, true, CompressorFactory.COMPRESSOR);
 
         byte[] expectedBytes = randomBytes(between(1, 30));
         stream.write(expectedBytes);
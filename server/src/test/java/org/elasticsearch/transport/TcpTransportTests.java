@@ -24,6 +24,8 @@ import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.support.PlainActionFuture;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.compress.CompressionScheme;
+import org.elasticsearch.common.compress.Compressor;
 import org.elasticsearch.common.compress.CompressorFactory;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.io.stream.StreamInput;
@@ -186,11 +188,17 @@ public class TcpTransportTests extends ESTestCase {
 
     public void testCompressRequest() throws IOException {
         final boolean compressed = randomBoolean();
+        final CompressionScheme compressionScheme = randomFrom(CompressionScheme.values());
+        // the version negotiated by the handshake
+        final Version channelVersion = randomFrom(Version.CURRENT, Version.CURRENT.minimumCompatibilityVersion());
         Req request = new Req(randomRealisticUnicodeOfLengthBetween(10, 100));
         ThreadPool threadPool = new TestThreadPool(TcpTransportTests.class.getName());
         AtomicReference<BytesReference> messageCaptor = new AtomicReference<>();
         try {
-            TcpTransport transport = new TcpTransport("test", Settings.EMPTY, Version.CURRENT, threadPool,
+            Settings settings = Settings.builder()
+                .put(TransportSettings.TRANSPORT_COMPRESSION_SCHEME.getKey(), compressionScheme.toString())
+                .build();
+            TcpTransport transport = new TcpTransport("test", settings, Version.CURRENT, threadPool,
                 PageCacheRecycler.NON_RECYCLING_INSTANCE, new NoneCircuitBreakerService(), null, null) {
 
                 @Override
@@ -217,7 +225,7 @@ public class TcpTransportTests extends ESTestCase {
                     for (int i = 0; i < numConnections; ++i) {
                         fakeChannels.add(new FakeTcpChannel(false, messageCaptor));
                     }
-                    listener.onResponse(new NodeChannels(node, fakeChannels, profile, Version.CURRENT));
+                    listener.onResponse(new NodeChannels(node, fakeChannels, profile, channelVersion));
                     return () -> CloseableChannel.closeChannels(fakeChannels, false);
                 }
             };
@@ -245,13 +253,20 @@ public class TcpTransportTests extends ESTestCase {
             assertEquals(42, requestId);
             byte status = streamIn.readByte();
             Version version = Version.fromId(streamIn.readInt());
-            assertEquals(Version.CURRENT, version);
+            assertEquals(channelVersion, version);
             assertEquals(compressed, TransportStatus.isCompress(status));
             if (compressed) {
                 final int bytesConsumed = TcpHeader.HEADER_SIZE;
-                streamIn = CompressorFactory.compressor(reference.slice(bytesConsumed, reference.length() - bytesConsumed))
-                    .streamInput(streamIn);
+                final Compressor compressor =
+                    CompressorFactory.compressor(reference.slice(bytesConsumed, reference.length() - bytesConsumed));
+                if (compressionScheme == CompressionScheme.LZ4 && channelVersion.onOrAfter(Version.V_7_0_0)) {
+                    assertSame(CompressorFactory.LZ4, compressor);
+                } else {
+                    // older nodes can't read lz4
+                    assertSame(CompressorFactory.COMPRESSOR, compressor);
                 }
+                streamIn = compressor.streamInput(streamIn);
+            }
             threadPool.getThreadContext().readHeaders(streamIn);
             assertThat(streamIn.readStringArray(), equalTo(new String[0])); // features
             assertEquals("foobar", streamIn.readString());
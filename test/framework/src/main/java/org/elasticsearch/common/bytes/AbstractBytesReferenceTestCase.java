@@ -138,6 +138,21 @@ public abstract class AbstractBytesReferenceTestCase extends ESTestCase {
             si.readBytes(targetBuf, 0, length * 2));
     }
 
+    public void testSlicingStreamInput() throws IOException {
+        int length = randomIntBetween(10, scaledRandomIntBetween(PAGE_SIZE * 2, PAGE_SIZE * 20));
+        BytesReference pbr = newBytesReference(length);
+        StreamInput si = pbr.slicingStreamInput();
+        int offset = randomIntBetween(0, length / 2);
+        si.skip(offset);
+        int sliceLength = randomIntBetween(1, length - offset - 1);
+        BytesReference slice = si.readBytesReference(sliceLength);
+        assertEquals(pbr.slice(offset, sliceLength), slice);
+        assertEquals(pbr.get(offset + sliceLength), si.readByte());
+        assertEquals(length - offset - sliceLength - 1, si.available());
+        assertSame(BytesArray.EMPTY, si.readBytesReference(0));
+        expectThrows(EOFException.class, () -> si.readBytesReference(length));
+    }
+
     public void testStreamInputMarkAndReset() throws IOException {
         int length = randomIntBetween(10, scaledRandomIntBetween(PAGE_SIZE * 2, PAGE_SIZE * 20));
         BytesReference pbr = newBytesReference(length);
@@ -39,13 +39,16 @@ import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.lucene.index.ElasticsearchDirectoryReader;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.text.Text;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.MockBigArrays;
 import org.elasticsearch.common.util.MockPageCacheRecycler;
+import org.elasticsearch.core.internal.io.IOUtils;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.cache.bitset.BitsetFilterCache;
 import org.elasticsearch.index.cache.bitset.BitsetFilterCache.Listener;
 import org.elasticsearch.index.cache.query.DisabledQueryCache;
+import org.elasticsearch.index.cache.rollup.SegmentRollupCache;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.fielddata.IndexFieldDataCache;
 import org.elasticsearch.index.fielddata.IndexFieldDataService;
@@ -66,6 +69,7 @@ import org.elasticsearch.indices.fielddata.cache.IndicesFieldDataCache;
 import org.elasticsearch.mock.orig.Mockito;
 import org.elasticsearch.script.ScriptService;
 import org.elasticsearch.search.aggregations.MultiBucketConsumerService.MultiBucketConsumer;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeSpillCache;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.elasticsearch.search.fetch.FetchPhase;
 import org.elasticsearch.search.fetch.subphase.DocValueFieldsFetchSubPhase;
@@ -73,11 +77,13 @@ import org.elasticsearch.search.fetch.subphase.FetchSourceSubPhase;
 import org.elasticsearch.search.internal.ContextIndexSearcher;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.search.lookup.SearchLookup;
+import org.elasticsearch.search.query.QuerySearchResult;
 import org.elasticsearch.test.ESTestCase;
 import org.elasticsearch.test.InternalAggregationTestCase;
 import org.junit.After;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -103,6 +109,7 @@ import static org.mockito.Mockito.when;
 public abstract class AggregatorTestCase extends ESTestCase {
     private static final String NESTEDFIELD_PREFIX = "nested_";
     private List<Releasable> releasables = new ArrayList<>();
+    private CompositeSpillCache compositeSpillCache;
     private static final String TYPE_NAME = "type";
 
     protected AggregatorFactory<?> createAggregatorFactory(AggregationBuilder aggregationBuilder,
@@ -136,6 +143,7 @@ public abstract class AggregatorTestCase extends ESTestCase {
         when(searchContext.aggregations())
             .thenReturn(new SearchContextAggregations(AggregatorFactories.EMPTY, bucketConsumer));
         when(searchContext.query()).thenReturn(query);
+        when(searchContext.minimumScore()).thenReturn(null);
         when(searchContext.bigArrays()).thenReturn(new MockBigArrays(new MockPageCacheRecycler(Settings.EMPTY), circuitBreakerService));
         // TODO: now just needed for top_hits, this will need to be revised for other agg unit tests:
         MapperService mapperService = mapperServiceMock();
@@ -165,6 +173,10 @@ public abstract class AggregatorTestCase extends ESTestCase {
 
         registerFieldTypes(queryShardContext, searchContext, mapperService,
             circuitBreakerService, fieldNameToType);
+        when(searchContext.segmentRollupCache()).thenReturn(
+            new SegmentRollupCache(indexSettings, mapperService, ifds::getForField, circuitBreakerService));
+        when(searchContext.compositeSpillCache()).thenReturn(compositeSpillCache());
+        when(searchContext.queryResult()).thenReturn(new QuerySearchResult());
 
         return aggregationBuilder.build(searchContext, null);
     }
@@ -187,6 +199,7 @@ public abstract class AggregatorTestCase extends ESTestCase {
             MappedFieldType fieldType = entry.getValue();
 
             when(queryShardContext.fieldMapper(fieldName)).thenReturn(fieldType);
+            when(mapperService.fullName(fieldName)).thenReturn(fieldType);
             when(searchContext.smartNameFieldType(fieldName)).thenReturn(fieldType);
         }
 
@@ -466,9 +479,23 @@ public abstract class AggregatorTestCase extends ESTestCase {
         }
     }
 
+    /**
+     * Returns the cache of spilled composite buckets, shared by all the searches of a test.
+     */
+    protected CompositeSpillCache compositeSpillCache() {
+        if (compositeSpillCache == null) {
+            final Path path = createTempDir();
+            compositeSpillCache = new CompositeSpillCache(path, Long.MAX_VALUE, TimeValue.timeValueHours(1), randomIntBetween(1, 100),
+                () -> TimeValue.nsecToMSec(System.nanoTime()));
+        }
+        return compositeSpillCache;
+    }
+
     @After
-    private void cleanupReleasables() {
+    private void cleanupReleasables() throws IOException {
         Releasables.close(releasables);
         releasables.clear();
+        IOUtils.close(compositeSpillCache);
+        compositeSpillCache = null;
     }
 }
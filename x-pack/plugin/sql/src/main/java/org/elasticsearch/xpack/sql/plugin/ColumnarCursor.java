@@ -0,0 +1,103 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License;
+ * you may not use this file except in compliance with the Elastic License.
+ */
+package org.elasticsearch.xpack.sql.plugin;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.xpack.sql.session.Configuration;
+import org.elasticsearch.xpack.sql.session.Cursor;
+import org.elasticsearch.xpack.sql.session.RowSet;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The cursor of a response in the columnar format, which carries the names and types of the columns of the first page
+ * since the following pages don't have them
+ */
+public class ColumnarCursor implements Cursor {
+    public static final String NAME = "c";
+
+    private final Cursor delegate;
+    private final List<String> names;
+    private final List<String> types;
+
+    /**
+     * If the newCursor is empty, returns an empty cursor. Otherwise, creates a new
+     * ColumnarCursor that wraps the newCursor.
+     */
+    public static Cursor wrap(Cursor newCursor, List<String> names, List<String> types) {
+        if (newCursor == EMPTY) {
+            return EMPTY;
+        }
+        return new ColumnarCursor(newCursor, names, types);
+    }
+
+    private ColumnarCursor(Cursor delegate, List<String> names, List<String> types) {
+        this.delegate = delegate;
+        this.names = names;
+        this.types = types;
+    }
+
+    public ColumnarCursor(StreamInput in) throws IOException {
+        delegate = in.readNamedWriteable(Cursor.class);
+        names = in.readList(StreamInput::readString);
+        types = in.readList(StreamInput::readString);
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeNamedWriteable(delegate);
+        out.writeStringList(names);
+        out.writeStringList(types);
+    }
+
+    public List<String> names() {
+        return names;
+    }
+
+    public List<String> types() {
+        return types;
+    }
+
+    @Override
+    public void nextPage(Configuration cfg, Client client, NamedWriteableRegistry registry, ActionListener<RowSet> listener) {
+        delegate.nextPage(cfg, client, registry, listener);
+    }
+
+    @Override
+    public void clear(Configuration cfg, Client client, ActionListener<Boolean> listener) {
+        delegate.clear(cfg, client, listener);
+    }
+
+    @Override
+    public String getWriteableName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ColumnarCursor that = (ColumnarCursor) o;
+        return Objects.equals(delegate, that.delegate) &&
+                Objects.equals(names, that.names) &&
+                Objects.equals(types, that.types);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(delegate, names, types);
+    }
+}
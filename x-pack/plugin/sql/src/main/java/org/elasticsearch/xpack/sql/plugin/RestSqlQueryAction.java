@@ -9,6 +9,8 @@ package org.elasticsearch.xpack.sql.plugin;
 import org.apache.logging.log4j.LogManager;
 import org.elasticsearch.Version;
 import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.logging.DeprecationLogger;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
@@ -21,15 +23,23 @@ import org.elasticsearch.rest.RestRequest;
 import org.elasticsearch.rest.RestResponse;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.rest.action.RestResponseListener;
+import org.elasticsearch.search.columnar.ColumnarResponse;
+import org.elasticsearch.search.columnar.ColumnarTable;
 import org.elasticsearch.xpack.sql.action.SqlQueryAction;
 import org.elasticsearch.xpack.sql.action.SqlQueryRequest;
 import org.elasticsearch.xpack.sql.action.SqlQueryResponse;
+import org.elasticsearch.xpack.sql.proto.ColumnInfo;
 import org.elasticsearch.xpack.sql.proto.Protocol;
 import org.elasticsearch.xpack.sql.session.Cursor;
 import org.elasticsearch.xpack.sql.session.Cursors;
+import org.elasticsearch.xpack.sql.util.DateUtils;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import static org.elasticsearch.rest.RestRequest.Method.GET;
 import static org.elasticsearch.rest.RestRequest.Method.POST;
@@ -83,6 +93,25 @@ public class RestSqlQueryAction extends BaseRestHandler {
         }
         assert accept != null : "The Content-Type header is required";
 
+        /*
+         * The columnar format is picked before XContent since its media type
+         * would otherwise be rejected as an unknown text format.
+         */
+        if (isColumnar(accept)) {
+            Cursor cursor = Cursors.decodeFromString(sqlRequest.cursor());
+            if (cursor != Cursor.EMPTY && cursor instanceof ColumnarCursor == false) {
+                // only the first page has the names of the columns, the next ones get them from the cursor
+                throw new IllegalArgumentException("format [" + ColumnarResponse.FORMAT
+                    + "] can only be used to page through a cursor that was returned in that format");
+            }
+            return channel -> client.execute(SqlQueryAction.INSTANCE, sqlRequest, new RestResponseListener<SqlQueryResponse>(channel) {
+                @Override
+                public RestResponse buildResponse(SqlQueryResponse response) throws Exception {
+                    return new BytesRestResponse(RestStatus.OK, ColumnarResponse.MEDIA_TYPE, toColumnar(cursor, response));
+                }
+            });
+        }
+
         /*
          * Second, we pick the actual content type to use by first parsing the
          * string from the previous step as an {@linkplain XContent} value. If
@@ -126,6 +155,54 @@ public class RestSqlQueryAction extends BaseRestHandler {
         });
     }
 
+    /**
+     * Returns {@code true} if the format or media type asks for a columnar response.
+     */
+    static boolean isColumnar(String accept) {
+        return ColumnarResponse.FORMAT.equalsIgnoreCase(accept) || ColumnarResponse.isMediaType(accept);
+    }
+
+    /**
+     * Encodes the rows of the response as a single {@code rows} table, with the Elasticsearch type of every column
+     * as {@code type.<column>} metadata of the table and the cursor of the next page as response metadata. The columns
+     * of the pages after the first one are taken from the {@link ColumnarCursor} of the request.
+     */
+    static BytesReference toColumnar(Cursor cursor, SqlQueryResponse response) throws IOException {
+        final List<String> names;
+        final List<String> types;
+        if (cursor instanceof ColumnarCursor) {
+            names = ((ColumnarCursor) cursor).names();
+            types = ((ColumnarCursor) cursor).types();
+        } else {
+            if (response.columns() == null) {
+                throw new IllegalArgumentException("format [" + ColumnarResponse.FORMAT + "] requires the columns of the response");
+            }
+            names = new ArrayList<>();
+            types = new ArrayList<>();
+            for (ColumnInfo column : response.columns()) {
+                names.add(column.name());
+                types.add(column.esType());
+            }
+        }
+        ColumnarTable table = new ColumnarTable("rows");
+        for (int i = 0; i < names.size(); i++) {
+            table.metadata("type." + names.get(i), types.get(i));
+        }
+        for (List<Object> row : response.rows()) {
+            table.newRow();
+            for (int i = 0; i < row.size(); i++) {
+                Object value = row.get(i);
+                table.set(names.get(i), value instanceof ZonedDateTime ? DateUtils.toString((ZonedDateTime) value) : value);
+            }
+        }
+        List<String[]> metadata = new ArrayList<>();
+        if (Strings.hasText(response.cursor())) {
+            Cursor next = ColumnarCursor.wrap(Cursors.decodeFromString(response.cursor()), names, types);
+            metadata.add(new String[] { "cursor", Cursors.encodeToString(Version.CURRENT, next) });
+        }
+        return ColumnarResponse.encode(metadata, Collections.singletonList(table));
+    }
+
     @Override
     public String getName() {
         return "sql_query";
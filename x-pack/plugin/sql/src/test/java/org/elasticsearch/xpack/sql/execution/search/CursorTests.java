@@ -16,6 +16,7 @@ import org.elasticsearch.xpack.sql.TestUtils;
 import org.elasticsearch.xpack.sql.action.CliFormatter;
 import org.elasticsearch.xpack.sql.action.SqlQueryResponse;
 import org.elasticsearch.xpack.sql.plugin.CliFormatterCursor;
+import org.elasticsearch.xpack.sql.plugin.ColumnarCursor;
 import org.elasticsearch.xpack.sql.proto.ColumnInfo;
 import org.elasticsearch.xpack.sql.proto.Mode;
 import org.elasticsearch.xpack.sql.session.Cursor;
@@ -86,7 +87,9 @@ public class CursorTests extends ESTestCase {
                         return ScrollCursorTests.randomScrollCursor();
                     }
 
-                }
+                },
+                () -> ColumnarCursor.wrap(ScrollCursorTests.randomScrollCursor(),
+                    Collections.singletonList(randomAlphaOfLength(5)), Collections.singletonList("keyword"))
         );
         return cursorSupplier.get();
     }
@@ -0,0 +1,103 @@
+/*
+ * Copyright Elasticsearch B.V. and/or licensed to Elasticsearch B.V. under one
+ * or more contributor license agreements. Licensed under the Elastic License;
+ * you may not use this file except in compliance with the Elastic License.
+ */
+package org.elasticsearch.xpack.sql.plugin;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.search.columnar.ColumnarResponse;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.xpack.sql.action.SqlQueryResponse;
+import org.elasticsearch.xpack.sql.execution.search.ScrollCursor;
+import org.elasticsearch.xpack.sql.execution.search.ScrollCursorTests;
+import org.elasticsearch.xpack.sql.proto.ColumnInfo;
+import org.elasticsearch.xpack.sql.proto.Mode;
+import org.elasticsearch.xpack.sql.session.Cursor;
+import org.elasticsearch.xpack.sql.session.Cursors;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyMap;
+
+public class RestSqlQueryActionTests extends ESTestCase {
+
+    public void testIsColumnar() {
+        assertTrue(RestSqlQueryAction.isColumnar("columnar"));
+        assertTrue(RestSqlQueryAction.isColumnar("COLUMNAR"));
+        assertTrue(RestSqlQueryAction.isColumnar(ColumnarResponse.MEDIA_TYPE));
+        assertTrue(RestSqlQueryAction.isColumnar(ColumnarResponse.MEDIA_TYPE + "; charset=utf-8"));
+        assertFalse(RestSqlQueryAction.isColumnar("json"));
+        assertFalse(RestSqlQueryAction.isColumnar("text/plain"));
+        assertFalse(RestSqlQueryAction.isColumnar(null));
+    }
+
+    public void testColumnsAreCarriedToNextPages() throws IOException {
+        ScrollCursor scrollCursor = ScrollCursorTests.randomScrollCursor();
+        SqlQueryResponse firstPage = new SqlQueryResponse(Cursors.encodeToString(Version.CURRENT, scrollCursor), Mode.PLAIN,
+            asList(new ColumnInfo("test", "name", "keyword"), new ColumnInfo("test", "age", "integer")),
+            asList(asList("kimchy", 42), asList("s", 30)));
+        Decoded first = Decoded.read(RestSqlQueryAction.toColumnar(Cursor.EMPTY, firstPage));
+        assertEquals(2, first.rows);
+        Map<String, String> expectedTypes = new LinkedHashMap<>();
+        expectedTypes.put("type.name", "keyword");
+        expectedTypes.put("type.age", "integer");
+        assertEquals(expectedTypes, first.tableMetadata);
+
+        Cursor cursor = Cursors.decodeFromString(first.metadata.get("cursor"));
+        assertEquals(ColumnarCursor.wrap(scrollCursor, asList("name", "age"), asList("keyword", "integer")), cursor);
+
+        // the next pages don't have columns, their names come from the cursor
+        SqlQueryResponse lastPage = new SqlQueryResponse("", Mode.PLAIN, null, asList(asList("other", 7)));
+        Decoded last = Decoded.read(RestSqlQueryAction.toColumnar(cursor, lastPage));
+        assertEquals(1, last.rows);
+        assertEquals(expectedTypes, last.tableMetadata);
+        assertEquals(emptyMap(), last.metadata);
+    }
+
+    public void testPageWithoutColumnsRequiresColumnarCursor() {
+        SqlQueryResponse page = new SqlQueryResponse("", Mode.PLAIN, null, asList(asList("other", 7)));
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+            () -> RestSqlQueryAction.toColumnar(ScrollCursorTests.randomScrollCursor(), page));
+        assertEquals("format [columnar] requires the columns of the response", e.getMessage());
+    }
+
+    /**
+     * The metadata of a columnar response that has a single table, as well as the metadata and the number of rows of that table.
+     */
+    private static final class Decoded {
+        private Map<String, String> metadata;
+        private Map<String, String> tableMetadata;
+        private int rows;
+
+        static Decoded read(BytesReference bytes) throws IOException {
+            try (StreamInput in = bytes.streamInput()) {
+                byte[] magic = new byte[ColumnarResponse.MAGIC.length];
+                in.readBytes(magic, 0, magic.length);
+                assertArrayEquals(ColumnarResponse.MAGIC, magic);
+                assertEquals(ColumnarResponse.VERSION, in.readByte());
+                Decoded decoded = new Decoded();
+                decoded.metadata = readMetadata(in);
+                assertEquals(1, in.readVInt());
+                assertEquals("rows", in.readBytesRef().utf8ToString());
+                decoded.tableMetadata = readMetadata(in);
+                decoded.rows = in.readVInt();
+                return decoded;
+            }
+        }
+
+        private static Map<String, String> readMetadata(StreamInput in) throws IOException {
+            Map<String, String> metadata = new LinkedHashMap<>();
+            int size = in.readVInt();
+            for (int i = 0; i < size; i++) {
+                metadata.put(in.readBytesRef().utf8ToString(), in.readBytesRef().utf8ToString());
+            }
+            return metadata;
+        }
+    }
+}